@@ -9,4 +9,16 @@ engine = create_engine(
 )
 SessionLocal = sessionmaker(autocommit=False, autoflush=False, bind=engine)
 
+# تطبيق سطح المكتب يحفظ إصدار المخطط في PRAGMA user_version، وترحيله رقم 6 حول مبالغ الدفتر
+# والأرصدة من REAL بالجنيه إلى INTEGER بالقروش. قاعدة أنشأها الـ API وحده تبقى بالجنيه.
+# يُقرأ مرة عند التشغيل: أعد تشغيل الـ API بعد ترقية قاعدة مشتركة من تطبيق سطح المكتب.
+MINOR_UNITS_SCHEMA_VERSION = 6
+
+def _stored_money_scale():
+    with engine.connect() as conn:
+        version = conn.exec_driver_sql("PRAGMA user_version").scalar() or 0
+    return 100 if version >= MINOR_UNITS_SCHEMA_VERSION else 1
+
+MONEY_SCALE = _stored_money_scale()
+
 Base = declarative_base()
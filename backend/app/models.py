@@ -1,6 +1,29 @@
 from sqlalchemy import Column, Integer, String, Boolean, Text, Float, Date, ForeignKey
 from sqlalchemy.orm import relationship
-from app.database import Base
+from sqlalchemy.types import TypeDecorator
+from app.database import Base, MONEY_SCALE
+
+class MinorUnits(TypeDecorator):
+    """
+    عمود مبلغ يُكتب ويُقرأ بالجنيه أياً كان التخزين: بالقروش (INTEGER) في قاعدة رحّلها تطبيق سطح
+    المكتب، أو بالجنيه كما هو في قاعدة الـ API القديمة (راجع MONEY_SCALE في database.py).
+    استخدم type_coerce(expr, MinorUnits) مع التعبيرات الحسابية على هذه الأعمدة حتى يُحول ناتجها أيضاً.
+    """
+    impl = Float
+    cache_ok = True
+
+    def load_dialect_impl(self, dialect):
+        return dialect.type_descriptor(Integer() if MONEY_SCALE > 1 else Float())
+
+    def process_bind_param(self, value, dialect):
+        if value is None or MONEY_SCALE == 1:
+            return value
+        return int(round(value * MONEY_SCALE))
+
+    def process_result_value(self, value, dialect):
+        if value is None or MONEY_SCALE == 1:
+            return value
+        return value / MONEY_SCALE
 
 class Crop(Base):
     __tablename__ = "crops"
@@ -28,7 +51,7 @@ class FinancialAccount(Base):
     account_id = Column(Integer, primary_key=True, index=True)
     account_name = Column(String, unique=True, nullable=False)
     account_type = Column(String, nullable=False)
-    current_balance = Column(Float, default=0.0)
+    current_balance = Column(MinorUnits, default=0.0)
     is_active = Column(Boolean, default=True)
 
 class Purchase(Base):
@@ -79,8 +102,8 @@ class GeneralLedger(Base):
     entry_id = Column(Integer, primary_key=True, index=True)
     entry_date = Column(Date, nullable=False)
     account_id = Column(Integer, ForeignKey("financial_accounts.account_id"), nullable=False)
-    debit = Column(Float, default=0.0)
-    credit = Column(Float, default=0.0)
+    debit = Column(MinorUnits, default=0.0)
+    credit = Column(MinorUnits, default=0.0)
     description = Column(String)
     source_type = Column(String) # e.g., 'PURCHASE', 'SALE'
     source_id = Column(Integer) # e.g., purchase_id, sale_id
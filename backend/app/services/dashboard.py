@@ -1,10 +1,10 @@
 from sqlalchemy.orm import Session
-from sqlalchemy import func
+from sqlalchemy import func, type_coerce
 from app import models
 
 def get_dashboard_kpis(db: Session):
     total_revenue = db.query(func.sum(models.Sale.total_sale_amount)).scalar() or 0
-    total_cogs = db.query(func.sum(models.GeneralLedger.debit)).filter(models.GeneralLedger.account_id == 50101).scalar() or 0
+    total_cogs = db.query(type_coerce(func.sum(models.GeneralLedger.debit), models.MinorUnits)).filter(models.GeneralLedger.account_id == 50101).scalar() or 0
     inventory_value = db.query(func.sum(models.Inventory.current_stock_kg * models.Inventory.average_cost_per_kg)).scalar() or 0
     
     return {
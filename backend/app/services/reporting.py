@@ -1,5 +1,5 @@
 from sqlalchemy.orm import Session, joinedload
-from sqlalchemy import func, and_
+from sqlalchemy import func, and_, type_coerce
 from datetime import date, timedelta
 
 from app import models
@@ -15,8 +15,8 @@ def generate_trial_balance(db: Session):
         db.query(
             models.FinancialAccount.account_id,
             models.FinancialAccount.account_name,
-            func.sum(models.GeneralLedger.debit).label('total_debit'),
-            func.sum(models.GeneralLedger.credit).label('total_credit')
+            type_coerce(func.sum(models.GeneralLedger.debit), models.MinorUnits).label('total_debit'),
+            type_coerce(func.sum(models.GeneralLedger.credit), models.MinorUnits).label('total_credit')
         )
         .join(models.GeneralLedger, models.FinancialAccount.account_id == models.GeneralLedger.account_id)
         .group_by(models.FinancialAccount.account_id, models.FinancialAccount.account_name)
@@ -32,7 +32,7 @@ def generate_balance_sheet(db: Session, end_date: date):
         models.FinancialAccount.account_id,
         models.FinancialAccount.account_name,
         models.FinancialAccount.account_type,
-        (func.sum(models.GeneralLedger.debit) - func.sum(models.GeneralLedger.credit)).label('balance')
+        type_coerce(func.sum(models.GeneralLedger.debit) - func.sum(models.GeneralLedger.credit), models.MinorUnits).label('balance')
     ).join(models.GeneralLedger, models.FinancialAccount.account_id == models.GeneralLedger.account_id)\
      .filter(models.GeneralLedger.entry_date <= end_date)\
      .group_by(models.FinancialAccount.account_id, models.FinancialAccount.account_name, models.FinancialAccount.account_type)\
@@ -87,7 +87,7 @@ def generate_equity_statement(db: Session, start_date: date, end_date: date):
     Generates an equity statement for a given period.
     """
     # 1. Calculate Beginning Equity
-    beginning_equity_balance = db.query(func.sum(models.GeneralLedger.credit - models.GeneralLedger.debit))\
+    beginning_equity_balance = db.query(type_coerce(func.sum(models.GeneralLedger.credit - models.GeneralLedger.debit), models.MinorUnits))\
         .join(models.FinancialAccount, models.FinancialAccount.account_id == models.GeneralLedger.account_id)\
         .filter(models.FinancialAccount.account_type == 'EQUITY')\
         .filter(models.GeneralLedger.entry_date < start_date)\
@@ -130,7 +130,7 @@ def generate_income_statement(db: Session, start_date: date, end_date: date):
         db.query(
             models.FinancialAccount.account_type,
             models.FinancialAccount.account_name,
-            func.sum(models.GeneralLedger.credit - models.GeneralLedger.debit).label('balance')
+            type_coerce(func.sum(models.GeneralLedger.credit - models.GeneralLedger.debit), models.MinorUnits).label('balance')
         )
         .join(models.GeneralLedger, models.FinancialAccount.account_id == models.GeneralLedger.account_id)
         .filter(models.FinancialAccount.account_type.in_(['REVENUE', 'EXPENSE']))
@@ -0,0 +1,69 @@
+package accounting.benchmark;
+
+import accounting.util.ImprovedDataManager;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.logging.LogManager;
+
+/**
+ * قاعدة بيانات القياس: تُنشأ مرة لكل تجربة وتُملأ ببيانات مولدة بالحجم المطلوب
+ *
+ * storage = memory لقاعدة في الذاكرة، و file لملف SQLite مؤقت على القرص
+ * (يقيس أثر المزامنة مع القرص في عمليات الترحيل).
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    @Param({"memory", "file"})
+    public String storage;
+
+    /** عدد فواتير البيع في البيانات المولدة (والمشتريات والدفعات بالتناسب) */
+    @Param({"2000"})
+    public int documents;
+
+    @Param({"42"})
+    public long seed;
+
+    private Path databaseFile;
+    private BenchmarkDataset dataset;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        // سجلات INFO لكل قيد تطغى على زمن العمليات المقاسة
+        LogManager.getLogManager().reset();
+
+        String jdbcUrl;
+        if ("file".equals(storage)) {
+            databaseFile = Files.createTempFile("agri-bench-", ".db");
+            jdbcUrl = "jdbc:sqlite:" + databaseFile.toAbsolutePath();
+        } else {
+            jdbcUrl = "jdbc:sqlite:file:agri-bench-" + System.nanoTime() + "?mode=memory&cache=shared";
+        }
+        ImprovedDataManager.reinitializeForTest(jdbcUrl);
+        ImprovedDataManager.getInstance();
+        dataset = BenchmarkDataset.populate(documents, seed);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        ImprovedDataManager.getInstance().shutdown();
+        if (databaseFile != null) {
+            Files.deleteIfExists(databaseFile);
+            Files.deleteIfExists(Path.of(databaseFile + "-wal"));
+            Files.deleteIfExists(Path.of(databaseFile + "-shm"));
+        }
+    }
+
+    public BenchmarkDataset getDataset() {
+        return dataset;
+    }
+}
@@ -0,0 +1,118 @@
+package accounting.benchmark;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.PurchaseDataService;
+import accounting.util.SyntheticDataGenerator;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * بيانات القياس: تُولد عبر SyntheticDataGenerator على سنتين حتى تكون القيود والأرصدة
+ * متسقة وتوزيع العملاء واقعياً. السنتان تنتهيان في تاريخ ثابت (ANCHOR) لا في اليوم، فنفس
+ * البذرة تعطي نفس البيانات أياً كان يوم التشغيل ويمكن مقارنة نتائج التشغيلات.
+ */
+public class BenchmarkDataset {
+
+    private static final int DAYS = 730;
+    /** "اليوم" في بيانات القياس: آخر أيام البيانات المولدة وتاريخ المستندات الجديدة والتقارير */
+    public static final LocalDate ANCHOR = LocalDate.of(2025, 6, 30);
+
+    private final List<Crop> crops = new ArrayList<>();
+    private final List<Contact> suppliers = new ArrayList<>();
+    private final List<Contact> customers = new ArrayList<>();
+    private FinancialAccount cashAccount;
+    private Contact busiestCustomer;
+
+    private BenchmarkDataset() {
+    }
+
+    public static BenchmarkDataset populate(int documents, long seed) throws SQLException {
+        BenchmarkDataset dataset = new BenchmarkDataset();
+        SyntheticDataGenerator.Config config = new SyntheticDataGenerator.Config()
+            .seed(seed)
+            .startDate(ANCHOR.minusDays(DAYS))
+            .days(DAYS)
+            .salesPerDay((double) documents / DAYS)
+            .crops(5)
+            .suppliers(Math.max(2, documents / 200))
+            .customers(Math.max(5, documents / 40));
+        new SyntheticDataGenerator(config).generate(null);
+
+        dataset.cashAccount = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        dataset.crops.addAll(new CropDataService().getAllActiveCrops());
+        for (Contact contact : new ContactDataService().getAllContacts()) {
+            if (contact.isSupplier()) {
+                dataset.suppliers.add(contact);
+            } else if (contact.isCustomer()) {
+                dataset.customers.add(contact);
+            }
+        }
+        // المولد يمنح العميل الأول معظم الحركات فيكون لكشف حسابه حجم واقعي
+        dataset.busiestCustomer = dataset.customers.stream()
+            .filter(c -> "عميل 1".equals(c.getName())).findFirst().orElseThrow();
+
+        // مخزون إضافي كبير لكل محصول حتى لا تنفد الكميات أثناء قياس الترحيل
+        PurchaseDataService purchaseDataService = new PurchaseDataService();
+        for (Crop crop : dataset.crops) {
+            purchaseDataService.addPurchase(dataset.newPurchase(crop, dataset.suppliers.get(0), ANCHOR, 1_000_000_000.0, 2.0), null, 0);
+        }
+        return dataset;
+    }
+
+    public PurchaseRecord newPurchase(Crop crop, Contact supplier, LocalDate date, double quantity, double unitPrice) {
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(date);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(unitPrice);
+        purchase.setTotalCost(quantity * unitPrice);
+        purchase.setInvoiceNumber("BP-" + date + "-" + supplier.getContactId());
+        return purchase;
+    }
+
+    public SaleRecord newSale(Crop crop, Contact customer, LocalDate date, double quantity, double unitPrice, String invoice) {
+        SaleRecord sale = new SaleRecord();
+        sale.setCrop(crop);
+        sale.setCustomer(customer);
+        sale.setSaleDate(date);
+        sale.setQuantitySoldKg(quantity);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(unitPrice);
+        sale.setTotalSaleAmount(quantity * unitPrice);
+        sale.setSaleInvoiceNumber(invoice);
+        return sale;
+    }
+
+    public Payment newPayment(Contact contact, String type, LocalDate date, double amount) {
+        Payment payment = new Payment();
+        payment.setContact(contact);
+        payment.setPaymentAccount(cashAccount);
+        payment.setPaymentDate(date);
+        payment.setAmount(amount);
+        payment.setPaymentType(type);
+        payment.setDescription("سند قياس");
+        return payment;
+    }
+
+    public List<Crop> getCrops() { return crops; }
+    public List<Contact> getSuppliers() { return suppliers; }
+    public List<Contact> getCustomers() { return customers; }
+    public FinancialAccount getCashAccount() { return cashAccount; }
+    public Contact getBusiestCustomer() { return busiestCustomer; }
+}
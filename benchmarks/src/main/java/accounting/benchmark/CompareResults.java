@@ -0,0 +1,78 @@
+package accounting.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * مقارنة ملفي نتائج JMH بصيغة JSON (إصدار سابق وإصدار حالي)
+ *
+ *   java -cp target/benchmarks.jar accounting.benchmark.CompareResults baseline.json current.json [threshold%]
+ *
+ * يطبع نسبة التغير لكل قياس، ويخرج برمز 1 إذا تجاوز أي قياس حد التراجع (10% افتراضياً)
+ * بأكثر من هامش الخطأ المعلن للقياسين.
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: CompareResults <baseline.json> <current.json> [threshold-percent]");
+            System.exit(2);
+        }
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+        Map<String, double[]> baseline = load(Path.of(args[0]));
+        Map<String, double[]> current = load(Path.of(args[1]));
+
+        int regressions = 0;
+        for (Map.Entry<String, double[]> entry : current.entrySet()) {
+            double[] before = baseline.get(entry.getKey());
+            double[] after = entry.getValue();
+            if (before == null) {
+                System.out.printf(Locale.US, "%-90s %12.3f  (new)%n", entry.getKey(), after[0]);
+                continue;
+            }
+            // كل القياسات هنا زمن لكل عملية: الزيادة تراجع
+            double change = (after[0] - before[0]) / before[0] * 100.0;
+            boolean beyondNoise = after[0] - after[1] > before[0] + before[1];
+            boolean regression = change > threshold && beyondNoise;
+            if (regression) {
+                regressions++;
+            }
+            System.out.printf(Locale.US, "%-90s %12.3f -> %12.3f  %+7.1f%%%s%n",
+                entry.getKey(), before[0], after[0], change, regression ? "  REGRESSION" : "");
+        }
+        System.exit(regressions > 0 ? 1 : 0);
+    }
+
+    /** benchmark + params -> {score, scoreError} */
+    private static Map<String, double[]> load(Path file) throws IOException {
+        Map<String, double[]> scores = new TreeMap<>();
+        JsonArray results = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonArray();
+        for (JsonElement element : results) {
+            JsonObject result = element.getAsJsonObject();
+            StringBuilder key = new StringBuilder(result.get("benchmark").getAsString());
+            if (result.has("params")) {
+                for (Map.Entry<String, JsonElement> param : new TreeMap<>(result.getAsJsonObject("params").asMap()).entrySet()) {
+                    key.append(' ').append(param.getKey()).append('=').append(param.getValue().getAsString());
+                }
+            }
+            JsonObject metric = result.getAsJsonObject("primaryMetric");
+            double error = metric.get("scoreError").isJsonPrimitive() && metric.get("scoreError").getAsJsonPrimitive().isNumber()
+                ? metric.get("scoreError").getAsDouble() : 0.0;
+            scores.put(key.toString(), new double[] {metric.get("score").getAsDouble(), Double.isNaN(error) ? 0.0 : error});
+        }
+        return scores;
+    }
+}
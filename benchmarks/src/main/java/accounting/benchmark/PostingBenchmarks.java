@@ -0,0 +1,74 @@
+package accounting.benchmark;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * زمن ترحيل المستندات كاملة (القيود والأرصدة والمخزون وكشوف الحساب والبنود المفتوحة)
+ * في معاملة واحدة لكل مستند. كل استدعاء يضيف مستنداً جديداً، فالقاعدة تكبر أثناء القياس
+ * كما في الاستخدام الفعلي.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PostingBenchmarks {
+
+    private SaleDataService saleDataService;
+    private PurchaseDataService purchaseDataService;
+    private PaymentDataService paymentDataService;
+    private BenchmarkDataset dataset;
+    private Crop crop;
+    private Contact customer;
+    private Contact supplier;
+    private LocalDate today;
+    private int sequence;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        saleDataService = new SaleDataService();
+        purchaseDataService = new PurchaseDataService();
+        paymentDataService = new PaymentDataService();
+        dataset = database.getDataset();
+        crop = dataset.getCrops().get(0);
+        customer = dataset.getCustomers().get(dataset.getCustomers().size() - 1);
+        supplier = dataset.getSuppliers().get(dataset.getSuppliers().size() - 1);
+        today = BenchmarkDataset.ANCHOR;
+    }
+
+    @Benchmark
+    public int addSale() throws SQLException {
+        return saleDataService.addSale(dataset.newSale(crop, customer, today, 5.0, 4.0, "BM-S-" + (++sequence)),
+            dataset.getCashAccount(), 10.0);
+    }
+
+    @Benchmark
+    public int addPurchase() throws SQLException {
+        return purchaseDataService.addPurchase(dataset.newPurchase(crop, supplier, today, 5.0, 2.0), dataset.getCashAccount(), 5.0);
+    }
+
+    @Benchmark
+    public int addPayment() throws SQLException {
+        return paymentDataService.addPayment(dataset.newPayment(customer, "RECEIVE", today, 15.0));
+    }
+}
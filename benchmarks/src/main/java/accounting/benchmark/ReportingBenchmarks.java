@@ -0,0 +1,70 @@
+package accounting.benchmark;
+
+import accounting.model.DetailedTransactionEntry;
+import accounting.model.TrialBalanceEntry;
+import accounting.service.FinancialSummaryService;
+import accounting.service.ReportDataService;
+import accounting.util.SmartAlertSystem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * زمن التقارير الأكثر استخداماً على البيانات المولدة (قراءة فقط)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportingBenchmarks {
+
+    private FinancialSummaryService financialSummaryService;
+    private ReportDataService reportDataService;
+    private SmartAlertSystem smartAlertSystem;
+    private int busiestCustomerId;
+    private LocalDate today;
+
+    @Setup(Level.Trial)
+    public void setUp(BenchmarkDatabase database) {
+        financialSummaryService = new FinancialSummaryService();
+        reportDataService = new ReportDataService();
+        smartAlertSystem = new SmartAlertSystem();
+        busiestCustomerId = database.getDataset().getBusiestCustomer().getContactId();
+        today = BenchmarkDataset.ANCHOR;
+    }
+
+    @Benchmark
+    public List<TrialBalanceEntry> trialBalance() throws SQLException {
+        return financialSummaryService.getTrialBalance(today);
+    }
+
+    @Benchmark
+    public Object balanceSheet() throws SQLException {
+        return financialSummaryService.getBalanceSheet(today);
+    }
+
+    @Benchmark
+    public List<DetailedTransactionEntry> contactStatement() throws SQLException {
+        return reportDataService.getDetailedContactStatement(busiestCustomerId, today.minusYears(1), today);
+    }
+
+    @Benchmark
+    public List<SmartAlertSystem.SmartAlert> smartAlerts() {
+        return smartAlertSystem.getAllActiveAlerts();
+    }
+}
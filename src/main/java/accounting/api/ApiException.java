@@ -0,0 +1,28 @@
+package accounting.api;
+
+/**
+ * خطأ في الطلب يُعاد للعميل برمز HTTP محدد ورسالة {"detail": ...}
+ */
+public class ApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int status;
+
+    public ApiException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public static ApiException badRequest(String message) {
+        return new ApiException(400, message);
+    }
+
+    public static ApiException notFound(String message) {
+        return new ApiException(404, message);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,360 @@
+package accounting.api;
+
+import accounting.model.BalanceSheet;
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.PurchaseReturn;
+import accounting.model.SaleRecord;
+import accounting.model.SaleReturn;
+import accounting.service.AccountDirectory;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.DashboardService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.FinancialSummaryService;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.LedgerIntegrityService;
+import accounting.service.OpenItemService;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.ReportDataService;
+import accounting.service.SaleDataService;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * نقاط /api/v1: نفس مسارات وحقول الخادم القديم (backend/) لكن فوق خدمات التطبيق نفسها،
+ * فيمر كل ترحيل بنفس منطق القيود والمخزون والذمم الذي تستخدمه الواجهة
+ */
+class ApiRoutes {
+
+    private static final int DEFAULT_LIMIT = 500;
+    private static final int MAX_LIMIT = 5_000;
+
+    private final ContactDataService contactDataService = new ContactDataService();
+    private final CropDataService cropDataService = new CropDataService();
+    private final FinancialAccountDataService accountDataService = new FinancialAccountDataService();
+    private final SaleDataService saleDataService = new SaleDataService();
+    private final PurchaseDataService purchaseDataService = new PurchaseDataService();
+    private final PaymentDataService paymentDataService = new PaymentDataService();
+    private final FinancialTransactionDataService transactionDataService = new FinancialTransactionDataService();
+    private final FinancialSummaryService summaryService = new FinancialSummaryService();
+    private final ReportDataService reportDataService = new ReportDataService();
+    private final DashboardService dashboardService = new DashboardService();
+    private final OpenItemService openItemService = new OpenItemService();
+    private final LedgerIntegrityService integrityService = new LedgerIntegrityService();
+
+    void register(ApiServer server) {
+        server.get("/health", request -> Map.of("status", "ok"));
+
+        // --- البيانات الأساسية ---
+        server.get("/contacts", request -> contactDataService.getAllContacts());
+        server.get("/contacts/{contactId}", request -> requireContact(request.pathInt("contactId")));
+        server.post("/contacts", this::createContact);
+        server.put("/contacts/{contactId}", this::updateContact);
+
+        server.get("/crops", request -> cropDataService.getAllActiveCrops());
+        server.get("/crops/{cropId}", request -> requireCrop(request.pathInt("cropId")));
+        server.post("/crops", this::createCrop);
+
+        server.get("/financial-accounts", request -> accountDataService.getAllAccounts());
+        server.get("/financial-accounts/search", request -> AccountDirectory.search(
+            request.query("q"), request.queryLimit(20, 100)));
+        server.get("/financial-accounts/{accountId}", request -> requireAccount(request.pathInt("accountId")));
+
+        server.get("/inventory", request -> cropDataService.getAllCropStatistics());
+
+        // --- المستندات ---
+        server.get("/sales", request -> limit(saleDataService.getSales(
+            request.queryDate("from", null), request.queryDate("to", null),
+            request.queryInt("crop_id"), request.queryInt("customer_id"), request.query("q")), request));
+        server.get("/sales/{saleId}", request -> requireFound(saleDataService.getSaleById(request.pathInt("saleId")), "Sale"));
+        server.post("/sales", this::createSale);
+        server.delete("/sales/{saleId}", request -> Map.of("deleted", saleDataService.deleteSale(request.pathInt("saleId"))));
+        server.post("/sales/{saleId}/returns", this::createSaleReturn);
+
+        server.get("/purchases", request -> limit(purchaseDataService.getPurchases(
+            request.queryDate("from", null), request.queryDate("to", null),
+            request.queryInt("crop_id"), request.queryInt("supplier_id"), request.query("q")), request));
+        server.get("/purchases/{purchaseId}", request -> requireFound(purchaseDataService.getPurchaseById(request.pathInt("purchaseId")), "Purchase"));
+        server.post("/purchases", this::createPurchase);
+        server.delete("/purchases/{purchaseId}", request -> Map.of("deleted", purchaseDataService.deletePurchase(request.pathInt("purchaseId"))));
+        server.post("/purchases/{purchaseId}/returns", this::createPurchaseReturn);
+
+        server.post("/payments", this::createPayment);
+        server.delete("/payments/{paymentId}", request -> Map.of("deleted", paymentDataService.deletePayment(request.pathInt("paymentId"))));
+
+        server.post("/expenses", request -> Map.of("transaction_ref", transactionDataService.addExpense(
+            request.requireDate("expense_date"), request.requireDouble("amount"), request.requireString("description"),
+            request.requireInt("expense_account_id"), request.requireInt("payment_account_id"))));
+
+        server.get("/journal/journal-entries", request -> limit(transactionDataService.getGeneralLedgerEntries(
+            request.queryDate("from", LocalDate.now().withDayOfMonth(1)), request.queryDate("to", LocalDate.now())), request));
+        server.post("/journal/journal-entries", request -> Map.of("transaction_ref", transactionDataService.addJournalEntry(
+            requireAccount(request.requireInt("debit_account_id")), requireAccount(request.requireInt("credit_account_id")),
+            request.requireDate("entry_date"), request.optString("description", ""), request.requireDouble("amount"))));
+        server.post("/journal/compound-entries", this::createCompoundEntry);
+
+        // --- الذمم والتقارير ---
+        server.get("/contacts/{contactId}/open-invoices", request -> openItemService.getOpenInvoices(
+            request.pathInt("contactId"), side(request)));
+        server.getCached("/receivables", request -> openItemService.getContactBalances(OpenItemService.SIDE_RECEIVABLE));
+        server.getCached("/payables", request -> openItemService.getContactBalances(OpenItemService.SIDE_PAYABLE));
+
+        server.getCached("/reports/trial-balance", request -> summaryService.getTrialBalance(
+            request.queryDate("to", LocalDate.now())));
+        server.getCached("/reports/income-statement", request -> summaryService.getIncomeStatement(
+            request.queryDate("from", LocalDate.now().withDayOfYear(1)), request.queryDate("to", LocalDate.now())));
+        server.getCached("/reports/balance-sheet", this::balanceSheet);
+        server.getCached("/reports/general-ledger", request -> limit(transactionDataService.getGeneralLedgerEntries(
+            request.queryDate("from", LocalDate.now().withDayOfMonth(1)), request.queryDate("to", LocalDate.now())), request));
+        server.getCached("/reports/contact-statement/{contactId}", request -> reportDataService.getDetailedContactStatement(
+            request.pathInt("contactId"), request.queryDate("from", LocalDate.now().minusYears(1)), request.queryDate("to", LocalDate.now())));
+        server.getCached("/reports/dashboard-kpis", request -> dashboardService.getDashboardSummary());
+        server.getCached("/reports/kpi-series", request -> dashboardService.getKpiSeries(
+            request.queryInt("days") == null ? 30 : Math.min(366, request.queryInt("days"))));
+        server.get("/reports/integrity-issues", request -> integrityService.getOpenIssues());
+    }
+
+    // --- البيانات الأساسية ---
+
+    private Object createContact(ApiServer.Request request) throws SQLException, IOException {
+        Contact contact = new Contact(0, request.requireString("name"), request.optString("phone", ""),
+            request.optString("address", ""), request.optBoolean("is_supplier", false), request.optBoolean("is_customer", false));
+        return contactDataService.addContact(contact).orElseThrow(() -> new SQLException("Creating contact failed."));
+    }
+
+    private Object updateContact(ApiServer.Request request) throws SQLException, IOException {
+        Contact contact = requireContact(request.pathInt("contactId"));
+        contact.setName(request.optString("name", contact.getName()));
+        contact.setPhone(request.optString("phone", contact.getPhone()));
+        contact.setAddress(request.optString("address", contact.getAddress()));
+        contact.setSupplier(request.optBoolean("is_supplier", contact.isSupplier()));
+        contact.setCustomer(request.optBoolean("is_customer", contact.isCustomer()));
+        contactDataService.updateContact(contact);
+        return contact;
+    }
+
+    /**
+     * conversion_factors يقبل رقماً لكل وحدة (كالخادم القديم) أو قائمة أرقام
+     */
+    private Object createCrop(ApiServer.Request request) throws SQLException, IOException {
+        List<String> units = new ArrayList<>();
+        JsonElement unitsJson = request.body().get("allowed_pricing_units");
+        if (unitsJson != null && unitsJson.isJsonArray()) {
+            unitsJson.getAsJsonArray().forEach(unit -> units.add(ApiServer.jsonValue("allowed_pricing_units", unit, JsonElement::getAsString)));
+        }
+        if (units.isEmpty()) {
+            units.add("كيلو");
+        }
+        Map<String, List<Double>> factors = new HashMap<>();
+        JsonElement factorsJson = request.body().get("conversion_factors");
+        if (factorsJson != null && factorsJson.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> entry : factorsJson.getAsJsonObject().entrySet()) {
+                List<Double> values = new ArrayList<>();
+                if (entry.getValue().isJsonArray()) {
+                    entry.getValue().getAsJsonArray().forEach(value -> values.add(ApiServer.jsonValue("conversion_factors", value, JsonElement::getAsDouble)));
+                } else {
+                    values.add(ApiServer.jsonValue("conversion_factors", entry.getValue(), JsonElement::getAsDouble));
+                }
+                factors.put(entry.getKey(), values);
+            }
+        }
+        int cropId = cropDataService.addCrop(new Crop(0, request.requireString("crop_name"), units, factors));
+        return cropDataService.getCropById(cropId);
+    }
+
+    // --- المستندات ---
+
+    private Object createSale(ApiServer.Request request) throws SQLException, IOException {
+        Crop crop = requireCrop(request.requireInt("crop_id"));
+        SaleRecord sale = new SaleRecord();
+        sale.setCrop(crop);
+        sale.setCustomer(requireContact(request.requireInt("customer_id")));
+        sale.setSaleDate(request.requireDate("sale_date"));
+        sale.setQuantitySoldKg(request.requireDouble("quantity_sold_kg"));
+        sale.setSellingPricingUnit(request.optString("selling_pricing_unit", crop.getAllowedPricingUnits().get(0)));
+        sale.setSpecificSellingFactor(positiveFactor(crop, sale.getSellingPricingUnit()));
+        sale.setSellingUnitPrice(request.requireDouble("selling_unit_price"));
+        sale.setTotalSaleAmount(request.optDouble("total_sale_amount",
+            sale.getQuantitySoldKg() / sale.getSpecificSellingFactor() * sale.getSellingUnitPrice()));
+        sale.setSaleInvoiceNumber(request.optString("sale_invoice_number", null));
+        sale.setNotes(request.optString("notes", null));
+
+        double amountReceived = request.optDouble("amount_received", 0);
+        FinancialAccount account = paymentAccount(request, amountReceived);
+        saleDataService.addSale(sale, account, amountReceived);
+        return saleDataService.getSaleById(sale.getSaleId());
+    }
+
+    private Object createPurchase(ApiServer.Request request) throws SQLException, IOException {
+        Crop crop = requireCrop(request.requireInt("crop_id"));
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(requireContact(request.requireInt("supplier_id")));
+        purchase.setPurchaseDate(request.requireDate("purchase_date"));
+        purchase.setQuantityKg(request.requireDouble("quantity_kg"));
+        purchase.setPricingUnit(request.optString("pricing_unit", crop.getAllowedPricingUnits().get(0)));
+        purchase.setSpecificFactor(positiveFactor(crop, purchase.getPricingUnit()));
+        purchase.setUnitPrice(request.requireDouble("unit_price"));
+        purchase.setTotalCost(request.optDouble("total_cost",
+            purchase.getQuantityKg() / purchase.getSpecificFactor() * purchase.getUnitPrice()));
+        purchase.setInvoiceNumber(request.optString("invoice_number", null));
+        purchase.setNotes(request.optString("notes", null));
+
+        double amountPaid = request.optDouble("amount_paid", 0);
+        FinancialAccount account = paymentAccount(request, amountPaid);
+        purchaseDataService.addPurchase(purchase, account, amountPaid);
+        return purchaseDataService.getPurchaseById(purchase.getPurchaseId());
+    }
+
+    private Object createSaleReturn(ApiServer.Request request) throws SQLException, IOException {
+        SaleRecord original = requireFound(saleDataService.getSaleById(request.pathInt("saleId")), "Sale");
+        SaleReturn saleReturn = new SaleReturn();
+        saleReturn.setOriginalSale(original);
+        saleReturn.setReturnDate(request.requireDate("return_date"));
+        saleReturn.setQuantityKg(request.requireDouble("quantity_kg"));
+        saleReturn.setReturnReason(request.optString("return_reason", ""));
+        saleReturn.setRefundAmount(request.optDouble("refund_amount", saleReturn.getQuantityKg() * original.getSellingUnitPrice()
+            / original.getSpecificSellingFactor()));
+        int returnId = saleDataService.addSaleReturn(saleReturn);
+        return Map.of("return_id", returnId, "transaction_ref", "SAL-RTN-" + returnId);
+    }
+
+    private Object createPurchaseReturn(ApiServer.Request request) throws SQLException, IOException {
+        PurchaseRecord original = requireFound(purchaseDataService.getPurchaseById(request.pathInt("purchaseId")), "Purchase");
+        PurchaseReturn purchaseReturn = new PurchaseReturn();
+        purchaseReturn.setOriginalPurchase(original);
+        purchaseReturn.setReturnDate(request.requireDate("return_date"));
+        purchaseReturn.setQuantityKg(request.requireDouble("quantity_kg"));
+        purchaseReturn.setReturnReason(request.optString("return_reason", ""));
+        purchaseReturn.setReturnedCost(request.optDouble("returned_cost", purchaseReturn.getQuantityKg() * original.getUnitPrice()
+            / original.getSpecificFactor()));
+        int returnId = purchaseDataService.addPurchaseReturn(purchaseReturn);
+        return Map.of("return_id", returnId, "transaction_ref", "PUR-RTN-" + returnId);
+    }
+
+    /**
+     * allocations اختياري: {"<رقم الفاتورة>": مبلغ}، والباقي يُوزع على أقدم الفواتير
+     */
+    private Object createPayment(ApiServer.Request request) throws SQLException, IOException {
+        String type = request.requireString("payment_type");
+        if (!"RECEIVE".equals(type) && !"PAY".equals(type)) {
+            throw ApiException.badRequest("payment_type must be RECEIVE or PAY");
+        }
+        Payment payment = new Payment();
+        payment.setContact(requireContact(request.requireInt("contact_id")));
+        payment.setPaymentAccount(requireAccount(request.requireInt("payment_account_id")));
+        payment.setPaymentDate(request.requireDate("payment_date"));
+        payment.setAmount(request.requireDouble("amount"));
+        payment.setPaymentType(type);
+        payment.setDescription(request.optString("description", ""));
+
+        Map<Integer, Double> allocations = null;
+        JsonElement allocationsJson = request.body().get("allocations");
+        if (allocationsJson != null && allocationsJson.isJsonObject()) {
+            allocations = new LinkedHashMap<>();
+            for (Map.Entry<String, JsonElement> entry : allocationsJson.getAsJsonObject().entrySet()) {
+                allocations.put(Integer.valueOf(entry.getKey()), ApiServer.jsonValue("allocations", entry.getValue(), JsonElement::getAsDouble));
+            }
+        }
+        int paymentId = paymentDataService.addPayment(payment, allocations);
+        return Map.of("payment_id", paymentId, "transaction_ref", "PAY-" + paymentId);
+    }
+
+    private Object createCompoundEntry(ApiServer.Request request) throws SQLException, IOException {
+        JsonElement linesJson = request.body().get("lines");
+        if (linesJson == null || !linesJson.isJsonArray()) {
+            throw ApiException.badRequest("lines must be an array");
+        }
+        List<FinancialTransactionDataService.JournalLine> lines = new ArrayList<>();
+        for (JsonElement element : linesJson.getAsJsonArray()) {
+            if (!element.isJsonObject() || !element.getAsJsonObject().has("account_id")) {
+                throw ApiException.badRequest("each line needs account_id and debit or credit");
+            }
+            JsonObject line = element.getAsJsonObject();
+            lines.add(new FinancialTransactionDataService.JournalLine(
+                ApiServer.jsonValue("account_id", line.get("account_id"), JsonElement::getAsInt),
+                line.has("debit") ? ApiServer.jsonValue("debit", line.get("debit"), JsonElement::getAsDouble) : 0,
+                line.has("credit") ? ApiServer.jsonValue("credit", line.get("credit"), JsonElement::getAsDouble) : 0,
+                line.has("description") ? ApiServer.jsonValue("description", line.get("description"), JsonElement::getAsString) : null));
+        }
+        return Map.of("transaction_ref", transactionDataService.addCompoundJournalEntry(
+            request.requireDate("entry_date"), request.optString("description", ""), lines));
+    }
+
+    // --- التقارير ---
+
+    private Object balanceSheet(ApiServer.Request request) throws SQLException {
+        BalanceSheet sheet = summaryService.getBalanceSheet(request.queryDate("to", LocalDate.now()));
+        JsonObject json = new JsonObject();
+        json.add("assets", ApiServer.GSON.toJsonTree(sheet.getAssets()));
+        json.add("liabilities", ApiServer.GSON.toJsonTree(sheet.getLiabilities()));
+        json.add("equity", ApiServer.GSON.toJsonTree(sheet.getEquity()));
+        json.addProperty("retained_earnings", sheet.getRetainedEarnings());
+        json.addProperty("total_assets", sheet.getTotalAssets());
+        json.addProperty("total_liabilities", sheet.getTotalLiabilities());
+        json.addProperty("total_equity", sheet.getTotalEquity());
+        json.addProperty("total_liabilities_and_equity", sheet.getTotalLiabilitiesAndEquity());
+        return json;
+    }
+
+    // --- مساعدات ---
+
+    private Contact requireContact(int contactId) throws SQLException {
+        return contactDataService.findById(contactId).orElseThrow(() -> ApiException.notFound("Contact " + contactId + " not found"));
+    }
+
+    private Crop requireCrop(int cropId) throws SQLException {
+        return requireFound(cropDataService.getCropById(cropId), "Crop " + cropId);
+    }
+
+    private FinancialAccount requireAccount(int accountId) throws SQLException {
+        return requireFound(accountDataService.getAccountById(accountId), "Financial account " + accountId);
+    }
+
+    private static <T> T requireFound(T value, String what) {
+        if (value == null) {
+            throw ApiException.notFound(what + " not found");
+        }
+        return value;
+    }
+
+    /**
+     * حساب الدفع مطلوب فقط عند وجود مبلغ مدفوع/محصل؛ الافتراضي الخزينة الرئيسية
+     */
+    private FinancialAccount paymentAccount(ApiServer.Request request, double amount) throws SQLException, IOException {
+        if (amount <= 0) {
+            return null;
+        }
+        Integer accountId = request.optInt("payment_account_id");
+        return requireAccount(accountId != null ? accountId : 10101);
+    }
+
+    private static double positiveFactor(Crop crop, String unit) {
+        double factor = crop.getFirstConversionFactor(unit);
+        return factor > 0 ? factor : 1.0;
+    }
+
+    private static String side(ApiServer.Request request) {
+        String side = request.query("side");
+        return side == null ? OpenItemService.SIDE_RECEIVABLE : side.toUpperCase();
+    }
+
+    private static <T> List<T> limit(List<T> rows, ApiServer.Request request) {
+        int limit = request.queryLimit(DEFAULT_LIMIT, MAX_LIMIT);
+        return rows.size() <= limit ? rows : rows.subList(0, limit);
+    }
+}
@@ -0,0 +1,479 @@
+package accounting.api;
+
+import accounting.service.LedgerIntegrityMonitor;
+import accounting.service.RecurringJournalService;
+import accounting.util.AppMetrics;
+import accounting.util.ImprovedDataManager;
+import accounting.util.MetricsExporter;
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * وضع الخادم بدون واجهة: يعرض خدمات التطبيق عبر JSON/HTTP تحت /api/v1
+ *
+ * كل طلب يُنفذ في خيط افتراضي (virtual thread)، فآلاف الطلبات المتزامنة لا تكلف
+ * إلا انتظارها لاتصال من التجميع. الكتابة (POST/PUT/DELETE) تمر بكاتب واحد
+ * (قفل عادل) لأن SQLite يقبل كاتباً واحداً في كل لحظة، فلا تتسابق المعاملات
+ * على القفل ولا تفشل بـ SQLITE_BUSY. نتائج التقارير تُخزن مؤقتاً لفترة قصيرة
+ * وتُلغى عند أي كتابة عبر الخادم.
+ *
+ * التشغيل:
+ *   java -m accounting.improved/accounting.gui.ImprovedAccountingApp --headless [--port=8000]
+ *
+ * الإعدادات من خصائص النظام:
+ *   accounting.api.port=8000, accounting.api.host=127.0.0.1
+ *   accounting.api.token=...        (إن وُجد يُطلب Authorization: Bearer <token>، وهو شرط للاستماع على عنوان غير محلي)
+ *   accounting.api.corsOrigin=...   (أصل المتصفح المسموح له؛ بدونه لا تُرسل ترويسات CORS)
+ *   accounting.api.cacheMillis=2000 (0 لإيقاف التخزين المؤقت للتقارير)
+ */
+public class ApiServer {
+
+    private static final Logger LOGGER = Logger.getLogger(ApiServer.class.getName());
+    private static final String PREFIX = "/api/v1";
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    private static final int MAX_CACHED_RESPONSES = 500;
+
+    static final Gson GSON = new GsonBuilder()
+        .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_UNDERSCORES)
+        .registerTypeAdapter(LocalDate.class, new LocalDateAdapter().nullSafe())
+        .serializeSpecialFloatingPointValues()
+        .disableHtmlEscaping()
+        .create();
+
+    private final List<Route> routes = new ArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock(true);
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private final Map<String, CachedResponse> responseCache = new ConcurrentHashMap<>();
+    private final long cacheMillis = Long.getLong("accounting.api.cacheMillis", 2_000L);
+    private final String token = blankToNull(System.getProperty("accounting.api.token"));
+    private final String corsOrigin = blankToNull(System.getProperty("accounting.api.corsOrigin"));
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public ApiServer() {
+        new ApiRoutes().register(this);
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value;
+    }
+
+    /**
+     * تشغيل الخادم؛ المنفذ 0 يختار منفذاً متاحاً. يعيد المنفذ الفعلي.
+     * الخادم يكتب في الدفاتر، فلا يستمع على عنوان غير محلي إلا مع accounting.api.token
+     */
+    public synchronized int start(String host, int port) throws IOException {
+        if (token == null && !InetAddress.getByName(host).isLoopbackAddress()) {
+            throw new IllegalStateException("Refusing to listen on " + host
+                + " without accounting.api.token; set a token or bind to 127.0.0.1");
+        }
+        server = HttpServer.create(new InetSocketAddress(host, port), 1024);
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        LOGGER.info("API server listening on http://" + host + ":" + server.getAddress().getPort() + PREFIX);
+        return server.getAddress().getPort();
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdown();
+            server = null;
+        }
+    }
+
+    void get(String path, Handler handler) {
+        routes.add(new Route("GET", path, handler, false));
+    }
+
+    /** تقرير قابل للتخزين المؤقت */
+    void getCached(String path, Handler handler) {
+        routes.add(new Route("GET", path, handler, true));
+    }
+
+    void post(String path, Handler handler) {
+        routes.add(new Route("POST", path, handler, false));
+    }
+
+    void put(String path, Handler handler) {
+        routes.add(new Route("PUT", path, handler, false));
+    }
+
+    void delete(String path, Handler handler) {
+        routes.add(new Route("DELETE", path, handler, false));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (corsOrigin != null) {
+                exchange.getResponseHeaders().set("Access-Control-Allow-Origin", corsOrigin);
+                exchange.getResponseHeaders().set("Vary", "Origin");
+            }
+            if ("OPTIONS".equals(exchange.getRequestMethod())) {
+                if (corsOrigin != null) {
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, PUT, DELETE, OPTIONS");
+                    exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, Authorization");
+                }
+                exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            if (token != null && !("Bearer " + token).equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+                sendJson(exchange, 401, detail("Not authenticated"));
+                return;
+            }
+
+            String path = exchange.getRequestURI().getPath();
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            if (!path.startsWith(PREFIX)) {
+                sendJson(exchange, 404, detail("Not Found"));
+                return;
+            }
+            String relative = path.substring(PREFIX.length());
+
+            boolean pathMatched = false;
+            for (Route route : routes) {
+                Matcher matcher = route.pattern.matcher(relative);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                pathMatched = true;
+                if (route.method.equals(exchange.getRequestMethod())) {
+                    dispatch(exchange, route, matcher);
+                    return;
+                }
+            }
+            sendJson(exchange, pathMatched ? 405 : 404, detail(pathMatched ? "Method Not Allowed" : "Not Found"));
+        }
+    }
+
+    private void dispatch(HttpExchange exchange, Route route, Matcher matcher) throws IOException {
+        String operation = "api." + route.method.toLowerCase() + route.template.replaceAll("[{}/]+", ".");
+        try (AppMetrics.Operation op = AppMetrics.begin(operation)) {
+            String cacheKey = route.cached && cacheMillis > 0 ? exchange.getRequestURI().toString() : null;
+            if (cacheKey != null) {
+                CachedResponse cached = responseCache.get(cacheKey);
+                if (cached != null && cached.generation == writeGeneration.get() && cached.expiresAt > System.currentTimeMillis()) {
+                    send(exchange, 200, cached.body);
+                    op.succeeded();
+                    return;
+                }
+            }
+
+            Request request = new Request(exchange, matcher, route.parameterNames);
+            Object result;
+            int status = 200;
+            if ("GET".equals(route.method)) {
+                long generation = writeGeneration.get();
+                result = route.handler.handle(request);
+                byte[] body = GSON.toJson(result).getBytes(StandardCharsets.UTF_8);
+                if (cacheKey != null) {
+                    if (responseCache.size() >= MAX_CACHED_RESPONSES) {
+                        responseCache.clear();
+                    }
+                    responseCache.put(cacheKey, new CachedResponse(generation, System.currentTimeMillis() + cacheMillis, body));
+                }
+                send(exchange, 200, body);
+                op.succeeded();
+                return;
+            }
+
+            writeLock.lock();
+            try {
+                result = route.handler.handle(request);
+            } finally {
+                writeGeneration.incrementAndGet();
+                writeLock.unlock();
+            }
+            if ("POST".equals(route.method)) {
+                status = 201;
+            }
+            sendJson(exchange, status, result);
+            op.succeeded();
+        } catch (ApiException e) {
+            sendJson(exchange, e.getStatus(), detail(e.getMessage()));
+        } catch (JsonParseException | IllegalArgumentException | DateTimeParseException e) {
+            sendJson(exchange, 400, detail("Invalid request: " + e.getMessage()));
+        } catch (SQLException e) {
+            // رسالة SQLite تكشف الجداول والقيود؛ تبقى في السجل ويأخذ العميل وصفاً عاماً
+            boolean constraint = e.getMessage() != null && e.getMessage().contains("constraint");
+            LOGGER.log(constraint ? Level.FINE : Level.WARNING, "API request failed: " + exchange.getRequestURI(), e);
+            sendJson(exchange, constraint ? 422 : 500,
+                detail(constraint ? "Request conflicts with existing data" : "Database error"));
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "API request failed: " + exchange.getRequestURI(), e);
+            sendJson(exchange, 500, detail("Internal server error"));
+        }
+    }
+
+    private static Map<String, String> detail(String message) {
+        return Map.of("detail", message == null ? "" : message);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        send(exchange, status, GSON.toJson(body).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * نقطة الدخول لوضع الخادم
+     */
+    public static void main(String[] args) throws IOException {
+        int port = Integer.getInteger("accounting.api.port", 8000);
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            }
+        }
+        String host = System.getProperty("accounting.api.host", "127.0.0.1");
+
+        ImprovedDataManager.getInstance();
+        ImprovedDataManager.warmUpCaches();
+        RecurringJournalService.postDueOnStartup();
+        MetricsExporter.start();
+        LedgerIntegrityMonitor.startDefault();
+        ApiServer apiServer = new ApiServer();
+        apiServer.start(host, port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop();
+            MetricsExporter.stop();
+            ImprovedDataManager.getInstance().shutdown();
+        }, "api-shutdown"));
+    }
+
+    @FunctionalInterface
+    interface Handler {
+        Object handle(Request request) throws Exception;
+    }
+
+    private static final class Route {
+        private static final Pattern PARAMETER = Pattern.compile("\\{(\\w+)}");
+
+        private final String method;
+        private final String template;
+        private final Pattern pattern;
+        private final List<String> parameterNames = new ArrayList<>();
+        private final Handler handler;
+        private final boolean cached;
+
+        Route(String method, String template, Handler handler, boolean cached) {
+            this.method = method;
+            this.template = template;
+            this.handler = handler;
+            this.cached = cached;
+            Matcher matcher = PARAMETER.matcher(template);
+            StringBuilder regex = new StringBuilder();
+            int last = 0;
+            while (matcher.find()) {
+                regex.append(Pattern.quote(template.substring(last, matcher.start()))).append("([^/]+)");
+                parameterNames.add(matcher.group(1));
+                last = matcher.end();
+            }
+            regex.append(Pattern.quote(template.substring(last)));
+            this.pattern = Pattern.compile(regex.toString());
+        }
+    }
+
+    private record CachedResponse(long generation, long expiresAt, byte[] body) {
+    }
+
+    /**
+     * قراءة قيمة JSON بالنوع المطلوب؛ Gson يرمي IllegalStateException أو UnsupportedOperationException
+     * للنوع الخاطئ (مصفوفة أو كائن بدل رقم)، وهذا خطأ في الطلب لا في الخادم
+     */
+    static <T> T jsonValue(String field, JsonElement value, Function<JsonElement, T> reader) {
+        try {
+            return reader.apply(value);
+        } catch (IllegalStateException | UnsupportedOperationException | NumberFormatException e) {
+            throw ApiException.badRequest(field + " has an invalid value");
+        }
+    }
+
+    /**
+     * طلب HTTP بعد المطابقة: معاملات المسار والاستعلام وجسم JSON
+     */
+    static final class Request {
+        private final HttpExchange exchange;
+        private final Map<String, String> pathParameters = new HashMap<>();
+        private final Map<String, String> queryParameters = new HashMap<>();
+        private JsonObject body;
+
+        private Request(HttpExchange exchange, Matcher matcher, List<String> names) {
+            this.exchange = exchange;
+            for (int i = 0; i < names.size(); i++) {
+                pathParameters.put(names.get(i), URLDecoder.decode(matcher.group(i + 1), StandardCharsets.UTF_8));
+            }
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String pair : query.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) {
+                        queryParameters.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                    }
+                }
+            }
+        }
+
+        int pathInt(String name) {
+            try {
+                return Integer.parseInt(pathParameters.get(name));
+            } catch (NumberFormatException e) {
+                throw ApiException.badRequest(name + " must be an integer");
+            }
+        }
+
+        String query(String name) {
+            String value = queryParameters.get(name);
+            return value == null || value.isBlank() ? null : value;
+        }
+
+        Integer queryInt(String name) {
+            String value = query(name);
+            return value == null ? null : Integer.valueOf(value);
+        }
+
+        LocalDate queryDate(String name, LocalDate defaultValue) {
+            String value = query(name);
+            return value == null ? defaultValue : LocalDate.parse(value);
+        }
+
+        int queryLimit(int defaultValue, int max) {
+            Integer value = queryInt("limit");
+            return value == null ? defaultValue : Math.max(1, Math.min(max, value));
+        }
+
+        JsonObject body() throws IOException {
+            if (body == null) {
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                if (contentType == null || !contentType.toLowerCase().startsWith("application/json")) {
+                    // يمنع نماذج المتصفح من صفحات أخرى من الكتابة دون طلب CORS تمهيدي
+                    throw new ApiException(415, "Content-Type must be application/json");
+                }
+                try (InputStream in = exchange.getRequestBody()) {
+                    byte[] bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+                    if (bytes.length > MAX_BODY_BYTES) {
+                        throw new ApiException(413, "Request body too large");
+                    }
+                    JsonElement parsed = JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8));
+                    if (!parsed.isJsonObject()) {
+                        throw ApiException.badRequest("Request body must be a JSON object");
+                    }
+                    body = parsed.getAsJsonObject();
+                }
+            }
+            return body;
+        }
+
+        int requireInt(String field) throws IOException {
+            JsonElement value = body().get(field);
+            if (value == null || value.isJsonNull()) {
+                throw ApiException.badRequest(field + " is required");
+            }
+            return jsonValue(field, value, JsonElement::getAsInt);
+        }
+
+        double requireDouble(String field) throws IOException {
+            JsonElement value = body().get(field);
+            if (value == null || value.isJsonNull()) {
+                throw ApiException.badRequest(field + " is required");
+            }
+            return jsonValue(field, value, JsonElement::getAsDouble);
+        }
+
+        String requireString(String field) throws IOException {
+            String value = optString(field, null);
+            if (value == null || value.isBlank()) {
+                throw ApiException.badRequest(field + " is required");
+            }
+            return value;
+        }
+
+        LocalDate requireDate(String field) throws IOException {
+            return LocalDate.parse(requireString(field));
+        }
+
+        Integer optInt(String field) throws IOException {
+            JsonElement value = body().get(field);
+            return value == null || value.isJsonNull() ? null : jsonValue(field, value, JsonElement::getAsInt);
+        }
+
+        double optDouble(String field, double defaultValue) throws IOException {
+            JsonElement value = body().get(field);
+            return value == null || value.isJsonNull() ? defaultValue : jsonValue(field, value, JsonElement::getAsDouble);
+        }
+
+        String optString(String field, String defaultValue) throws IOException {
+            JsonElement value = body().get(field);
+            return value == null || value.isJsonNull() ? defaultValue : jsonValue(field, value, JsonElement::getAsString);
+        }
+
+        boolean optBoolean(String field, boolean defaultValue) throws IOException {
+            JsonElement value = body().get(field);
+            return value == null || value.isJsonNull() ? defaultValue : jsonValue(field, value, JsonElement::getAsBoolean);
+        }
+    }
+
+    private static final class LocalDateAdapter extends TypeAdapter<LocalDate> {
+        @Override
+        public void write(JsonWriter out, LocalDate value) throws IOException {
+            out.value(value.toString());
+        }
+
+        @Override
+        public LocalDate read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            return LocalDate.parse(in.nextString());
+        }
+    }
+}
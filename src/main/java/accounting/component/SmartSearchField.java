@@ -4,6 +4,7 @@ import java.util.function.Consumer;
 
 import org.kordamp.ikonli.javafx.FontIcon;
 
+import javafx.animation.PauseTransition;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.geometry.Pos;
@@ -11,9 +12,13 @@ import javafx.scene.control.Label;
 import javafx.scene.control.TextField;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.util.Duration;
 
 /**
  * Smart Search Field with icon and enhanced functionality
+ *
+ * The search callback fires once typing pauses (debounce), or immediately on Enter,
+ * so listeners that query or filter do not run on every keystroke.
  */
 public class SmartSearchField extends VBox {
     
@@ -22,6 +27,7 @@ public class SmartSearchField extends VBox {
     private FontIcon searchIcon;
     private Consumer<String> onSearchChanged;
     private ObservableList<String> searchHistory;
+    private final PauseTransition debounce = new PauseTransition(Duration.millis(250));
     
     public SmartSearchField(String title, String placeholder) {
         this.searchHistory = FXCollections.observableArrayList();
@@ -62,21 +68,12 @@ public class SmartSearchField extends VBox {
     }
     
     private void setupEventHandlers() {
-        // Real-time search
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            if (onSearchChanged != null) {
-                onSearchChanged.accept(newValue);
-            }
-            
-            // Add to history if not empty and not already present
-            if (newValue != null && !newValue.trim().isEmpty() && !searchHistory.contains(newValue)) {
-                searchHistory.add(0, newValue); // Add to beginning
-                
-                // Keep only last 10 searches
-                if (searchHistory.size() > 10) {
-                    searchHistory.remove(searchHistory.size() - 1);
-                }
-            }
+        // Search once typing pauses; Enter searches right away
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> debounce.playFromStart());
+        debounce.setOnFinished(e -> fireSearch());
+        searchField.setOnAction(e -> {
+            debounce.stop();
+            fireSearch();
         });
         
         // Focus/unfocus styling
@@ -89,6 +86,23 @@ public class SmartSearchField extends VBox {
         });
     }
     
+    private void fireSearch() {
+        String text = searchField.getText();
+        if (onSearchChanged != null) {
+            onSearchChanged.accept(text);
+        }
+
+        // Add to history if not empty and not already present (settled searches only, not every prefix)
+        if (text != null && !text.trim().isEmpty() && !searchHistory.contains(text)) {
+            searchHistory.add(0, text); // Add to beginning
+
+            // Keep only last 10 searches
+            if (searchHistory.size() > 10) {
+                searchHistory.remove(searchHistory.size() - 1);
+            }
+        }
+    }
+
     // Public API
     public String getSearchText() {
         return searchField.getText();
@@ -105,6 +119,13 @@ public class SmartSearchField extends VBox {
     public void setOnSearchChanged(Consumer<String> callback) {
         this.onSearchChanged = callback;
     }
+
+    /**
+     * Quiet period after the last keystroke before the search callback fires
+     */
+    public void setDebounce(Duration delay) {
+        debounce.setDuration(delay);
+    }
     
     public ObservableList<String> getSearchHistory() {
         return searchHistory;
@@ -2,7 +2,10 @@ package accounting.controller;
 
 import accounting.model.Contact;
 import accounting.service.ContactDataService;
+import accounting.service.DocumentBatchService;
 import accounting.util.ErrorHandler;
+import accounting.util.SearchPipeline;
+import accounting.util.SearchText;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.collections.transformation.FilteredList;
@@ -15,16 +18,23 @@ import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
+import javafx.geometry.Insets;
+import javafx.geometry.NodeOrientation;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.kordamp.ikonli.javafx.FontIcon;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.sql.SQLException;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.ResourceBundle;
+import java.util.Set;
 
 public class ContactManagementController implements javafx.fxml.Initializable {
 
@@ -42,6 +52,11 @@ public class ContactManagementController implements javafx.fxml.Initializable {
     private ContactDataService contactDataService;
     private ObservableList<Contact> contactList = FXCollections.observableArrayList();
     private FilteredList<Contact> filteredData;
+    /** مفتاح بحث مُطبع لكل جهة (الاسم والهاتف) يُحسب عند التحميل */
+    private volatile List<Map.Entry<Contact, String>> searchKeys = List.of();
+    /** الجهات المطابقة لنص البحث الحالي، أو null عند عدم البحث */
+    private Set<Contact> searchMatches;
+    private SearchPipeline<String, Set<Contact>> contactSearch;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
@@ -62,20 +77,23 @@ public class ContactManagementController implements javafx.fxml.Initializable {
     private void setupFilters() {
         filteredData = new FilteredList<>(contactList, p -> true);
 
-        searchField.textProperty().addListener((obs, oldVal, newVal) -> applyFilters());
+        // المطابقة تجري في خيط خلفي بعد توقف الكتابة؛ الواجهة تطبق المجموعة الجاهزة فقط
+        contactSearch = new SearchPipeline<>(query -> SearchText.matching(searchKeys, query), (query, matches) -> {
+            searchMatches = query.isEmpty() ? null : matches;
+            applyFilters();
+        });
+        searchField.textProperty().addListener((obs, oldVal, newVal) -> contactSearch.submit(SearchText.normalize(newVal)));
         filterToggleGroup.selectedToggleProperty().addListener((obs, oldVal, newVal) -> applyFilters());
 
         contactTable.setItems(filteredData);
     }
 
     private void applyFilters() {
-        String searchText = searchField.getText();
+        Set<Contact> matches = searchMatches;
         ToggleButton selectedToggle = (ToggleButton) filterToggleGroup.getSelectedToggle();
 
         filteredData.setPredicate(contact -> {
-            boolean searchMatch = (searchText == null || searchText.isEmpty())
-                || contact.getName().toLowerCase().contains(searchText.toLowerCase())
-                || (contact.getPhone() != null && contact.getPhone().contains(searchText));
+            boolean searchMatch = matches == null || matches.contains(contact);
 
             boolean filterMatch = (selectedToggle == allFilterButton)
                 || (selectedToggle == customersFilterButton && contact.isCustomer())
@@ -92,7 +110,15 @@ public class ContactManagementController implements javafx.fxml.Initializable {
                 return contactDataService.getAllContacts();
             }
         };
-        loadDataTask.setOnSucceeded(e -> contactList.setAll(loadDataTask.getValue()));
+        loadDataTask.setOnSucceeded(e -> {
+            List<Contact> contacts = loadDataTask.getValue();
+            searchKeys = contacts.stream()
+                .map(contact -> Map.entry(contact, SearchText.key(contact.getName(), contact.getPhone())))
+                .toList();
+            contactList.setAll(contacts);
+            contactSearch.invalidate();
+            contactSearch.submitNow(SearchText.normalize(searchField.getText()));
+        });
         loadDataTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل قائمة جهات التعامل.", (Exception) loadDataTask.getException()));
         new Thread(loadDataTask).start();
     }
@@ -177,6 +203,73 @@ public class ContactManagementController implements javafx.fxml.Initializable {
         }
     }
 
+    /**
+     * طباعة كشوف حساب الشهر السابق لجهات التعامل الظاهرة في الجدول دفعة واحدة
+     */
+    @FXML
+    private void handleBatchStatements() {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("اختر مجلد حفظ الكشوف");
+        File directory = chooser.showDialog(contactTable.getScene().getWindow());
+        if (directory == null) {
+            return;
+        }
+
+        LocalDate toDate = LocalDate.now().withDayOfMonth(1).minusDays(1);
+        LocalDate fromDate = toDate.withDayOfMonth(1);
+        List<Integer> contactIds = filteredData.stream().map(Contact::getContactId).toList();
+        DocumentBatchService batchService = new DocumentBatchService();
+
+        Task<DocumentBatchService.BatchResult> batchTask = new Task<>() {
+            @Override
+            protected DocumentBatchService.BatchResult call() throws Exception {
+                updateMessage("جاري التحضير...");
+                return batchService.renderStatements(contactIds, fromDate, toDate, directory.toPath(),
+                    (completed, total) -> {
+                        updateProgress(completed, total);
+                        updateMessage("تم " + completed + " من " + total);
+                    },
+                    this::isCancelled);
+            }
+        };
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(320);
+        progressBar.progressProperty().bind(batchTask.progressProperty());
+        Label statusLabel = new Label();
+        statusLabel.textProperty().bind(batchTask.messageProperty());
+        Button cancelButton = new Button("إلغاء");
+        cancelButton.getStyleClass().add("danger");
+        cancelButton.setOnAction(e -> batchTask.cancel());
+
+        VBox content = new VBox(10, statusLabel, progressBar, cancelButton);
+        content.setPadding(new Insets(20));
+        content.setNodeOrientation(NodeOrientation.RIGHT_TO_LEFT);
+        Stage progressStage = new Stage();
+        progressStage.setTitle("كشوف نهاية الشهر");
+        progressStage.initModality(Modality.WINDOW_MODAL);
+        progressStage.initOwner(contactTable.getScene().getWindow());
+        progressStage.setScene(new Scene(content));
+
+        batchTask.setOnSucceeded(e -> {
+            progressStage.close();
+            DocumentBatchService.BatchResult result = batchTask.getValue();
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("كشوف نهاية الشهر");
+            alert.setHeaderText(null);
+            alert.setContentText("تم حفظ " + result.getFiles().size() + " كشف حساب في: " + directory.getAbsolutePath());
+            alert.showAndWait();
+        });
+        batchTask.setOnCancelled(e -> progressStage.close());
+        batchTask.setOnFailed(e -> {
+            progressStage.close();
+            ErrorHandler.showException("خطأ", "فشل توليد كشوف الحساب.", (Exception) batchTask.getException());
+        });
+
+        progressStage.show();
+        new Thread(batchTask).start();
+    }
+
     private void handleViewStatement(Contact contact) {
         try {
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/fxml/ContactStatementView.fxml"));
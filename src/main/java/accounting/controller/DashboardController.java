@@ -5,6 +5,7 @@ import accounting.util.ErrorHandler;
 import accounting.formatter.FormatUtils;
 import javafx.animation.*;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
@@ -12,6 +13,7 @@ import javafx.scene.chart.AreaChart;
 import javafx.scene.chart.BarChart;
 import javafx.scene.chart.PieChart;
 import javafx.scene.chart.XYChart;
+import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
 import javafx.scene.control.ListView;
@@ -38,6 +40,7 @@ public class DashboardController {
     @FXML private BarChart<String, Number> cashFlowChart;
     @FXML private StackPane doughnutChartContainer;
     @FXML private ListView<String> recentActivityListView;
+    @FXML private Button rebuildKpisButton;
 
     private DashboardService dashboardService;
 
@@ -95,6 +98,27 @@ public class DashboardController {
         loadRecentActivity();
     }
 
+    @FXML
+    private void handleRebuildKpis() {
+        rebuildKpisButton.setDisable(true);
+        Task<Void> rebuildTask = new Task<>() {
+            @Override
+            protected Void call() throws Exception {
+                dashboardService.rebuildKpiStore();
+                return null;
+            }
+        };
+        rebuildTask.setOnSucceeded(e -> {
+            rebuildKpisButton.setDisable(false);
+            loadDashboardData();
+        });
+        rebuildTask.setOnFailed(e -> {
+            rebuildKpisButton.setDisable(false);
+            ErrorHandler.showException("Dashboard Error", "Failed to rebuild KPI data.", (Exception) rebuildTask.getException());
+        });
+        new Thread(rebuildTask).start();
+    }
+
     private void loadKpiData() {
         try {
             DashboardService.DashboardSummary summary = dashboardService.getDashboardSummary();
@@ -158,7 +182,7 @@ public class DashboardController {
             valueLabel.getStyleClass().add("doughnut-chart-value");
             centerLabel.getChildren().addAll(titleLabel, valueLabel);
 
-            doughnutChartContainer.getChildren().addAll(pieChart, hole, centerLabel);
+            doughnutChartContainer.getChildren().setAll(pieChart, hole, centerLabel);
 
         } catch (Exception e) {
             ErrorHandler.showException("Dashboard Error", "Failed to load expense breakdown data.", e);
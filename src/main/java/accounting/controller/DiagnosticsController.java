@@ -0,0 +1,124 @@
+package accounting.controller;
+
+import accounting.util.QueryMetrics;
+import accounting.util.QueryMetrics.PoolWaitStats;
+import accounting.util.QueryMetrics.QueryStats;
+import accounting.util.QueryMetrics.SlowQuery;
+import javafx.collections.FXCollections;
+import javafx.fxml.FXML;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableCell;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.cell.PropertyValueFactory;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * شاشة تشخيص الأداء: مقاييس الاستعلامات من QueryMetrics (قراءة من الذاكرة فقط)
+ */
+public class DiagnosticsController {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    @FXML private Button refreshButton;
+    @FXML private Button resetButton;
+    @FXML private Label statusLabel;
+    @FXML private Label poolWaitLabel;
+
+    @FXML private TableView<QueryStats> queryTable;
+    @FXML private TableColumn<QueryStats, String> sqlColumn;
+    @FXML private TableColumn<QueryStats, Long> countColumn;
+    @FXML private TableColumn<QueryStats, Double> totalColumn;
+    @FXML private TableColumn<QueryStats, Double> averageColumn;
+    @FXML private TableColumn<QueryStats, Double> p50Column;
+    @FXML private TableColumn<QueryStats, Double> p95Column;
+    @FXML private TableColumn<QueryStats, Double> p99Column;
+    @FXML private TableColumn<QueryStats, Double> maxColumn;
+    @FXML private TableColumn<QueryStats, Long> rowsColumn;
+    @FXML private TableColumn<QueryStats, Long> errorsColumn;
+
+    @FXML private TableView<SlowQuery> slowQueryTable;
+    @FXML private TableColumn<SlowQuery, LocalDateTime> slowTimeColumn;
+    @FXML private TableColumn<SlowQuery, Double> slowMillisColumn;
+    @FXML private TableColumn<SlowQuery, Long> slowRowsColumn;
+    @FXML private TableColumn<SlowQuery, String> slowSqlColumn;
+    @FXML private TableColumn<SlowQuery, String> slowParamsColumn;
+
+    private final QueryMetrics metrics = QueryMetrics.getInstance();
+
+    @FXML
+    public void initialize() {
+        setupQueryTable();
+        setupSlowQueryTable();
+
+        refreshButton.setOnAction(e -> refresh());
+        resetButton.setOnAction(e -> {
+            metrics.reset();
+            refresh();
+        });
+        refresh();
+    }
+
+    private void setupQueryTable() {
+        sqlColumn.setCellValueFactory(new PropertyValueFactory<>("sql"));
+        countColumn.setCellValueFactory(new PropertyValueFactory<>("count"));
+        totalColumn.setCellValueFactory(new PropertyValueFactory<>("totalMillis"));
+        averageColumn.setCellValueFactory(new PropertyValueFactory<>("averageMillis"));
+        p50Column.setCellValueFactory(new PropertyValueFactory<>("p50Millis"));
+        p95Column.setCellValueFactory(new PropertyValueFactory<>("p95Millis"));
+        p99Column.setCellValueFactory(new PropertyValueFactory<>("p99Millis"));
+        maxColumn.setCellValueFactory(new PropertyValueFactory<>("maxMillis"));
+        rowsColumn.setCellValueFactory(new PropertyValueFactory<>("rows"));
+        errorsColumn.setCellValueFactory(new PropertyValueFactory<>("errors"));
+
+        totalColumn.setCellFactory(column -> millisCell());
+        averageColumn.setCellFactory(column -> millisCell());
+        p50Column.setCellFactory(column -> millisCell());
+        p95Column.setCellFactory(column -> millisCell());
+        p99Column.setCellFactory(column -> millisCell());
+        maxColumn.setCellFactory(column -> millisCell());
+    }
+
+    private void setupSlowQueryTable() {
+        slowTimeColumn.setCellValueFactory(new PropertyValueFactory<>("timestamp"));
+        slowMillisColumn.setCellValueFactory(new PropertyValueFactory<>("millis"));
+        slowRowsColumn.setCellValueFactory(new PropertyValueFactory<>("rows"));
+        slowSqlColumn.setCellValueFactory(new PropertyValueFactory<>("sql"));
+        slowParamsColumn.setCellValueFactory(new PropertyValueFactory<>("parameterShape"));
+
+        slowMillisColumn.setCellFactory(column -> millisCell());
+        slowTimeColumn.setCellFactory(column -> new TableCell<>() {
+            @Override
+            protected void updateItem(LocalDateTime item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(item == null || empty ? null : TIME_FORMAT.format(item));
+            }
+        });
+    }
+
+    private <S> TableCell<S, Double> millisCell() {
+        return new TableCell<>() {
+            @Override
+            protected void updateItem(Double item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(item == null || empty ? null : String.format(Locale.US, "%.2f", item));
+            }
+        };
+    }
+
+    private void refresh() {
+        queryTable.setItems(FXCollections.observableArrayList(metrics.getQueryStats()));
+        slowQueryTable.setItems(FXCollections.observableArrayList(metrics.getSlowQueries()));
+
+        statusLabel.setText(metrics.isEnabled()
+            ? "التتبع مفعل - حد الاستعلام البطيء: " + metrics.getSlowQueryThresholdMillis() + " م.ث"
+            : "التتبع متوقف (accounting.sql.instrumentation=false)");
+        PoolWaitStats poolWait = metrics.getPoolWaitStats();
+        poolWaitLabel.setText(String.format(Locale.US, "انتظار الاتصال: %d طلب، متوسط %.2f م.ث، p99 %.2f م.ث، أقصى %.2f م.ث",
+            poolWait.getCount(), poolWait.getAverageMillis(), poolWait.getP99Millis(), poolWait.getMaxMillis()));
+    }
+}
@@ -21,7 +21,6 @@ import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 import java.util.ResourceBundle;
-import java.util.stream.Collectors;
 
 import javafx.concurrent.Task;
 import javafx.scene.control.ProgressIndicator;
@@ -97,18 +96,7 @@ public class FinancialLedgerController implements Initializable {
         Task<List<LedgerEntry>> loadLedgerTask = new Task<>() {
             @Override
             protected List<LedgerEntry> call() throws Exception {
-                List<LedgerEntry> allEntries = transactionService.getGeneralLedgerEntries(null, null);
-                
-                List<LedgerEntry> accountEntries = allEntries.stream()
-                    .filter(entry -> entry.getDescription().contains(account.getAccountName()))
-                    .collect(Collectors.toList());
-
-                double runningBalance = 0;
-                for (LedgerEntry entry : accountEntries) {
-                    runningBalance += entry.getDebit() - entry.getCredit();
-                    entry.setBalance(runningBalance);
-                }
-                return accountEntries;
+                return transactionService.getAccountLedgerEntries(account.getAccountId());
             }
         };
 
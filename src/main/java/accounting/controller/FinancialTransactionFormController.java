@@ -1,7 +1,7 @@
 package accounting.controller;
 
 import accounting.model.FinancialAccount;
-import accounting.service.FinancialAccountDataService;
+import accounting.service.AccountDirectory;
 import accounting.service.FinancialTransactionDataService;
 import javafx.collections.FXCollections;
 import javafx.fxml.FXML;
@@ -28,19 +28,20 @@ public class FinancialTransactionFormController implements BaseFormController {
     private boolean okClicked = false;
 
     private FinancialTransactionDataService transactionDataService;
-    private FinancialAccountDataService accountDataService;
 
     @FXML
     private void initialize() {
         this.transactionDataService = new FinancialTransactionDataService();
-        this.accountDataService = new FinancialAccountDataService();
         loadAccountData();
         transactionDatePicker.setValue(LocalDate.now());
     }
 
     private void loadAccountData() {
         try {
-            List<FinancialAccount> accounts = accountDataService.getAllAccounts();
+            // الحسابات القابلة للترحيل فقط، من دليل الحسابات في الذاكرة
+            List<FinancialAccount> accounts = AccountDirectory.search("", Integer.MAX_VALUE).stream()
+                .map(AccountDirectory.Entry::toAccount)
+                .toList();
             debitAccountComboBox.setItems(FXCollections.observableArrayList(accounts));
             creditAccountComboBox.setItems(FXCollections.observableArrayList(accounts));
         } catch (SQLException e) {
@@ -70,6 +71,8 @@ public class FinancialTransactionFormController implements BaseFormController {
                 transactionDataService.addJournalEntry(debitAccount, creditAccount, date, description, amount);
                 okClicked = true;
                 dialogStage.close();
+            } catch (IllegalArgumentException e) {
+                showErrorAlert("قيد مرفوض", e.getMessage());
             } catch (SQLException e) {
                 showErrorAlert("خطأ في الحفظ", "فشل حفظ القيد اليومي.\n" + e.getMessage());
                 e.printStackTrace();
@@ -2,10 +2,12 @@ package accounting.controller;
 
 import accounting.model.LedgerEntry;
 import accounting.util.ErrorHandler;
+import accounting.util.LazyTableDataSource;
 import accounting.service.FinancialTransactionDataService;
+import accounting.service.FinancialTransactionDataService.LedgerTotals;
+import accounting.formatter.CellTextCache;
 import accounting.formatter.FormatUtils;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
@@ -14,9 +16,7 @@ import javafx.scene.paint.Color;
 import javafx.scene.control.Tooltip;
 
 import java.net.URL;
-import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.List;
 import java.util.ResourceBundle;
 
 public class GeneralLedgerController implements Initializable {
@@ -38,12 +38,12 @@ public class GeneralLedgerController implements Initializable {
 
     // Services and Data
     private FinancialTransactionDataService transactionService;
-    private ObservableList<LedgerEntry> ledgerEntries;
+    private LazyTableDataSource<LedgerEntry> ledgerEntries;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         this.transactionService = new FinancialTransactionDataService();
-        this.ledgerEntries = FXCollections.observableArrayList();
+        this.ledgerEntries = new LazyTableDataSource<>();
         
         setupTable();
         setupEventHandlers();
@@ -56,8 +56,6 @@ public class GeneralLedgerController implements Initializable {
     }
 
     private void setupTable() {
-        ledgerTable.setItems(ledgerEntries);
-
         dateColumn.setCellValueFactory(new PropertyValueFactory<>("date"));
         refColumn.setCellValueFactory(new PropertyValueFactory<>("reference"));
         descriptionColumn.setCellValueFactory(new PropertyValueFactory<>("description"));
@@ -68,7 +66,14 @@ public class GeneralLedgerController implements Initializable {
         formatDateCell(dateColumn);
         formatCurrencyCell(debitColumn);
         formatCurrencyCell(creditColumn);
-    
+
+        // السطور تُجلب صفحةً صفحة والترتيب يتم في SQL
+        ledgerEntries.sortable(dateColumn, "date")
+            .sortable(refColumn, "reference")
+            .sortable(descriptionColumn, "description")
+            .sortable(debitColumn, "debit")
+            .sortable(creditColumn, "credit")
+            .bind(ledgerTable);
     }
 
     private void setupEventHandlers() {
@@ -81,22 +86,29 @@ public class GeneralLedgerController implements Initializable {
     }
 
     private void loadData() {
-        try {
-            List<LedgerEntry> data = transactionService.getGeneralLedgerEntries(
-                fromDatePicker.getValue(),
-                toDatePicker.getValue()
-            );
-            ledgerEntries.setAll(data);
-
-            updateTotals();
-        } catch (SQLException e) {
-            ErrorHandler.showException("خطأ في تحميل البيانات", "لا يمكن تحميل قيود دفتر الأستاذ العام.", e);
-        }
+        LocalDate from = fromDatePicker.getValue();
+        LocalDate to = toDatePicker.getValue();
+
+        ledgerEntries.load(
+            () -> transactionService.getGeneralLedgerTotals(from, to).getCount(),
+            page -> transactionService.getGeneralLedgerPage(from, to, page)
+        );
+
+        Task<LedgerTotals> totalsTask = new Task<>() {
+            @Override
+            protected LedgerTotals call() throws Exception {
+                return transactionService.getGeneralLedgerTotals(from, to);
+            }
+        };
+        totalsTask.setOnSucceeded(e -> updateTotals(totalsTask.getValue()));
+        totalsTask.setOnFailed(e -> ErrorHandler.showException("خطأ في تحميل البيانات",
+            "لا يمكن تحميل قيود دفتر الأستاذ العام.", (Exception) totalsTask.getException()));
+        new Thread(totalsTask).start();
     }
-    
-    private void updateTotals() {
-        double totalDebit = ledgerEntries.stream().mapToDouble(LedgerEntry::getDebit).sum();
-        double totalCredit = ledgerEntries.stream().mapToDouble(LedgerEntry::getCredit).sum();
+
+    private void updateTotals(LedgerTotals totals) {
+        double totalDebit = totals.getTotalDebit();
+        double totalCredit = totals.getTotalCredit();
 
         totalDebitLabel.setText("مدين: " + FormatUtils.formatCurrency(totalDebit));
         totalCreditLabel.setText("دائن: " + FormatUtils.formatCurrency(totalCredit));
@@ -112,17 +124,13 @@ public class GeneralLedgerController implements Initializable {
     }
 
     private void formatDateCell(TableColumn<LedgerEntry, LocalDate> column) {
-        column.setCellFactory(col -> new TableCell<>() {
-            @Override
-            protected void updateItem(LocalDate item, boolean empty) {
-                super.updateItem(item, empty);
-                setText(empty ? null : FormatUtils.formatDateForDisplay(item));
-            }
-        });
+        column.setCellFactory(col -> FormatUtils.createDateCell());
     }
 
     private void formatCurrencyCell(TableColumn<LedgerEntry, Double> column) {
         column.setCellFactory(col -> new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
@@ -130,7 +138,7 @@ public class GeneralLedgerController implements Initializable {
                     setText("");
                     setStyle(""); // Clear any previous style
                 } else {
-                    setText(FormatUtils.formatCurrency(item));
+                    setText(text.of(item));
                     if (item < 0) {
                         setStyle("-fx-text-fill: red; -fx-font-weight: bold;");
                     } else {
@@ -1,8 +1,12 @@
 package accounting.controller;
 
+import accounting.model.Warehouse;
 import accounting.service.CropDataService;
 import accounting.service.CropDataService.CropStatistics;
+import accounting.service.WarehouseService;
 import accounting.util.ErrorHandler;
+import accounting.util.SearchPipeline;
+import accounting.util.SearchText;
 import accounting.formatter.FormatUtils;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -22,8 +26,12 @@ import org.kordamp.ikonli.javafx.FontIcon;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,13 +44,31 @@ public class InventoryController implements javafx.fxml.Initializable {
     @FXML private Button refreshButton;
     @FXML private Label totalInventoryValueLabel;
     @FXML private Button addAdjustmentButton;
+    @FXML private ComboBox<Warehouse> warehouseComboBox;
+
+    /** خيار "كل المخازن" في قائمة المخازن */
+    private static final Warehouse ALL_WAREHOUSES = new Warehouse(0, "كل المخازن", true);
 
     private CropDataService cropDataService;
+    private WarehouseService warehouseService;
+    /** أرصدة كل محصول في المخازن، لتوزيع البطاقة عند عرض كل المخازن */
+    private Map<Integer, Map<Integer, Double>> positionsByCrop = Map.of();
+    private Map<Integer, String> warehouseNames = Map.of();
     private ObservableList<CropStatistics> inventoryList = FXCollections.observableArrayList();
+    private final FilteredList<CropStatistics> filteredData = new FilteredList<>(inventoryList, p -> true);
+    /** مفتاح بحث مُطبع لاسم كل محصول يُحسب عند التحميل */
+    private volatile List<Map.Entry<CropStatistics, String>> searchKeys = List.of();
+    private SearchPipeline<String, Set<CropStatistics>> inventorySearch;
 
     @Override
     public void initialize(URL location, ResourceBundle resources) {
         this.cropDataService = new CropDataService();
+        this.warehouseService = new WarehouseService();
+        warehouseComboBox.getItems().setAll(ALL_WAREHOUSES);
+        warehouseComboBox.getSelectionModel().select(ALL_WAREHOUSES);
+        warehouseComboBox.setOnAction(e -> loadInventoryData());
+        setupSearchFilter();
+        loadWarehouses();
         loadInventoryData();
         refreshButton.setOnAction(e -> handleRefresh());
     }
@@ -52,17 +78,67 @@ public class InventoryController implements javafx.fxml.Initializable {
         loadInventoryData();
     }
 
+    private void loadWarehouses() {
+        Task<List<Warehouse>> loadTask = new Task<>() {
+            @Override
+            protected List<Warehouse> call() throws Exception {
+                return warehouseService.getAllWarehouses();
+            }
+        };
+
+        loadTask.setOnSucceeded(e -> {
+            Map<Integer, String> names = new HashMap<>();
+            List<Warehouse> items = new ArrayList<>();
+            items.add(ALL_WAREHOUSES);
+            for (Warehouse warehouse : loadTask.getValue()) {
+                names.put(warehouse.getWarehouseId(), warehouse.getName());
+                if (warehouse.isActive()) {
+                    items.add(warehouse);
+                }
+            }
+            warehouseNames = names;
+            warehouseComboBox.getItems().setAll(items);
+            warehouseComboBox.getSelectionModel().select(ALL_WAREHOUSES);
+            updateFlowPane(filteredData);
+        });
+
+        loadTask.setOnFailed(e -> LOGGER.log(Level.WARNING, "تعذر تحميل المخازن", loadTask.getException()));
+
+        new Thread(loadTask).start();
+    }
+
+    /** المخزن المختار، أو null لكل المخازن */
+    private Integer selectedWarehouseId() {
+        Warehouse selected = warehouseComboBox.getValue();
+        return selected == null || selected == ALL_WAREHOUSES ? null : selected.getWarehouseId();
+    }
+
     private void loadInventoryData() {
+        Integer warehouseId = selectedWarehouseId();
+        Map<Integer, Map<Integer, Double>> positions = new HashMap<>();
         Task<List<CropStatistics>> loadDataTask = new Task<>() {
             @Override
             protected List<CropStatistics> call() throws Exception {
-                return cropDataService.getAllCropStatistics();
+                List<CropStatistics> crops = cropDataService.getAllCropStatistics(warehouseId);
+                if (warehouseId == null) {
+                    // التوزيع على المخازن من أرصدة الذاكرة، بلا استعلام لكل محصول
+                    for (CropStatistics crop : crops) {
+                        positions.put(crop.getCropId(), warehouseService.getPositions(crop.getCropId()));
+                    }
+                }
+                return crops;
             }
         };
 
         loadDataTask.setOnSucceeded(e -> {
-            inventoryList.setAll(loadDataTask.getValue());
-            setupSearchFilter();
+            List<CropStatistics> crops = loadDataTask.getValue();
+            positionsByCrop = positions;
+            searchKeys = crops.stream()
+                .map(crop -> Map.entry(crop, SearchText.normalize(crop.getCropName())))
+                .toList();
+            inventoryList.setAll(crops);
+            inventorySearch.invalidate();
+            inventorySearch.submitNow(SearchText.normalize(searchField.getText()));
             updateTotalValue();
         });
 
@@ -74,17 +150,11 @@ public class InventoryController implements javafx.fxml.Initializable {
     }
 
     private void setupSearchFilter() {
-        FilteredList<CropStatistics> filteredData = new FilteredList<>(inventoryList, p -> true);
-
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredData.setPredicate(crop -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                String lowerCaseFilter = newValue.toLowerCase();
-                return crop.getCropName().toLowerCase().contains(lowerCaseFilter);
-            });
-        });
+        // المطابقة على المفاتيح المُطبعة في خيط خلفي بعد توقف الكتابة
+        inventorySearch = new SearchPipeline<>(query -> SearchText.matching(searchKeys, query), (query, matches) ->
+            filteredData.setPredicate(query.isEmpty() ? crop -> true : matches::contains));
+        searchField.textProperty().addListener((observable, oldValue, newValue) ->
+            inventorySearch.submit(SearchText.normalize(newValue)));
 
         // Bind the filtered data to the FlowPane
         updateFlowPane(filteredData);
@@ -125,6 +195,16 @@ public class InventoryController implements javafx.fxml.Initializable {
             createMetricRow("متوسط التكلفة:", FormatUtils.formatCurrency(stats.getAverageCost()) + " /كجم"),
             createMetricRow("القيمة الإجمالية:", FormatUtils.formatCurrency(stats.getInventoryValue()))
         );
+        Map<Integer, Double> positions = positionsByCrop.getOrDefault(stats.getCropId(), Map.of());
+        if (warehouseNames.size() > 1) {
+            positions.forEach((warehouseId, quantity) -> {
+                if (quantity > 0) {
+                    metrics.getChildren().add(createMetricRow(
+                        warehouseNames.getOrDefault(warehouseId, String.valueOf(warehouseId)) + ":",
+                        FormatUtils.formatQuantityWithUnit(quantity, "كجم")));
+                }
+            });
+        }
 
         card.getChildren().addAll(cropName, stockProgress, metrics);
         return card;
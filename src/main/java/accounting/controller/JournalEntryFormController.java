@@ -1,203 +1,217 @@
 package accounting.controller;
 
-import accounting.model.Contact;
-import accounting.model.FinancialAccount;
-import accounting.service.ContactDataService;
-import accounting.service.FinancialAccountDataService;
+import accounting.formatter.FormatUtils;
+import accounting.service.AccountDirectory;
 import accounting.service.FinancialTransactionDataService;
+import accounting.service.FinancialTransactionDataService.JournalLine;
+import accounting.util.ErrorHandler;
+import accounting.util.Money;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
-import javafx.fxml.Initializable;
-import javafx.scene.control.*;
-import javafx.scene.layout.GridPane;
+import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
+import javafx.scene.control.DatePicker;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
 import javafx.stage.Stage;
+import javafx.util.StringConverter;
 
-import java.net.URL;
 import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.ResourceBundle;
+import java.util.List;
 
-import java.util.logging.Logger;
+/**
+ * قيد يومية مركب: عدد غير محدود من السطور المدينة والدائنة برقم قيد واحد.
+ * منتقي الحسابات يبحث في AccountDirectory مع كل حرف بلا استعلام، والتحقق النهائي والترحيل في
+ * FinancialTransactionDataService.addCompoundJournalEntry
+ */
+public class JournalEntryFormController implements BaseFormController {
 
-public class JournalEntryFormController implements Initializable {
+    /** أقصى عدد نتائج في قائمة المنتقي */
+    private static final int PICKER_LIMIT = 50;
 
-    private static final Logger LOGGER = Logger.getLogger(JournalEntryFormController.class.getName());
+    private record LineRow(AccountDirectory.Entry account, long debit, long credit, String description) {
+    }
 
-    // FXML Components
-    @FXML private GridPane formGrid;
-    @FXML private ComboBox<String> transactionTypeComboBox;
     @FXML private DatePicker datePicker;
-    @FXML private TextArea descriptionArea;
-    @FXML private Label amountLabel;
-    @FXML private TextField amountField;
-    @FXML private Label fromAccountLabel;
-    @FXML private ComboBox<FinancialAccount> fromAccountComboBox;
-    @FXML private Label toAccountLabel;
-    @FXML private ComboBox<FinancialAccount> toAccountComboBox;
-    @FXML private Label contactLabel;
-    @FXML private ComboBox<Contact> contactComboBox;
-    @FXML private Label paidAmountLabel;
-    @FXML private TextField paidAmountField;
-
-    // Services
-    private final FinancialAccountDataService accountService = new FinancialAccountDataService();
-    private final ContactDataService contactService = new ContactDataService();
-
-    @Override
-    public void initialize(URL location, ResourceBundle resources) {
-        setupTransactionTypes();
-        loadInitialData();
-        setupFieldVisibility();
+    @FXML private TextField descriptionField;
+    @FXML private ComboBox<AccountDirectory.Entry> accountComboBox;
+    @FXML private TextField debitField;
+    @FXML private TextField creditField;
+    @FXML private TextField lineDescriptionField;
+    @FXML private TableView<LineRow> linesTable;
+    @FXML private TableColumn<LineRow, String> accountColumn;
+    @FXML private TableColumn<LineRow, String> debitColumn;
+    @FXML private TableColumn<LineRow, String> creditColumn;
+    @FXML private TableColumn<LineRow, String> lineDescriptionColumn;
+    @FXML private Label totalDebitLabel;
+    @FXML private Label totalCreditLabel;
+    @FXML private Label differenceLabel;
+    @FXML private Button saveButton;
+
+    private final ObservableList<LineRow> lines = FXCollections.observableArrayList();
+    private final FinancialTransactionDataService transactionService = new FinancialTransactionDataService();
+
+    private Stage dialogStage;
+    private boolean okClicked = false;
+
+    @FXML
+    private void initialize() {
+        datePicker.setValue(LocalDate.now());
+        setupAccountPicker();
+
+        accountColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(label(cell.getValue().account())));
+        debitColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(amount(cell.getValue().debit())));
+        creditColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(amount(cell.getValue().credit())));
+        lineDescriptionColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().description()));
+        linesTable.setItems(lines);
+        updateTotals();
     }
 
-    private void setupTransactionTypes() {
-        transactionTypeComboBox.setItems(FXCollections.observableArrayList(
-                "مصروف نقدي",
-                "إيداع رأس المال",
-                "فاتورة شراء (آجل)",
-                "فاتورة بيع (آجل)",
-                "سداد لمورد",
-                "تحصيل من عميل",
-                "قيد يومية يدوي"
-        ));
+    private static String label(AccountDirectory.Entry account) {
+        return account.accountId() + " - " + account.name();
     }
 
-    private void loadInitialData() {
-        try {
-            fromAccountComboBox.setItems(FXCollections.observableArrayList(accountService.getAllAccounts()));
-            toAccountComboBox.setItems(FXCollections.observableArrayList(accountService.getAllAccounts()));
-            contactComboBox.setItems(FXCollections.observableArrayList(contactService.getAllContacts()));
-            datePicker.setValue(LocalDate.now());
-        } catch (SQLException e) {
-            e.printStackTrace();
-            // Show error alert
-        }
+    private static String amount(long minor) {
+        return minor == 0 ? "" : FormatUtils.formatCurrency(Money.toMajor(minor));
     }
 
-    public void setInitialTransactionType(String type) {
-        if (type != null && !type.isEmpty()) {
-            transactionTypeComboBox.setValue(type);
-        }
-    }
+    private void setupAccountPicker() {
+        accountComboBox.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(AccountDirectory.Entry account) {
+                return account == null ? "" : label(account);
+            }
 
-    private void setupFieldVisibility() {
-        transactionTypeComboBox.valueProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal == null) return;
-
-            // Reset all fields to a default state
-            setFieldVisibility("fromAccount", false);
-            setFieldVisibility("toAccount", false);
-            setFieldVisibility("contact", false);
-            setFieldVisibility("paidAmount", false);
-            amountLabel.setText("المبلغ:");
-
-            switch (newVal) {
-                case "فاتورة شراء (آجل)":
-                    setFieldVisibility("contact", true);
-                    contactLabel.setText("المورد:");
-                    amountLabel.setText("إجمالي الفاتورة:");
-                    setFieldVisibility("paidAmount", true);
-                    break;
-                case "فاتورة بيع (آجل)":
-                    setFieldVisibility("contact", true);
-                    contactLabel.setText("العميل:");
-                    amountLabel.setText("إجمالي الفاتورة:");
-                    setFieldVisibility("paidAmount", true);
-                    break;
-                case "سداد لمورد":
-                case "تحصيل من عميل":
-                    setFieldVisibility("contact", true);
-                    contactLabel.setText(newVal.equals("سداد لمورد") ? "المورد:" : "العميل:");
-                    setFieldVisibility("fromAccount", true);
-                    fromAccountLabel.setText("حساب الدفع (البنك/الخزينة):");
-                    break;
-                case "مصروف نقدي":
-                    setFieldVisibility("toAccount", true);
-                    toAccountLabel.setText("حساب المصروف:");
-                    setFieldVisibility("fromAccount", true);
-                    fromAccountLabel.setText("حساب الدفع (البنك/الخزينة):");
-                    break;
-                case "إيداع رأس المال":
-                    setFieldVisibility("fromAccount", true);
-                    fromAccountLabel.setText("حساب الإيداع (البنك):");
-                    setFieldVisibility("toAccount", true);
-                    toAccountLabel.setText("حساب رأس المال:");
-                    break;
-                case "قيد يومية يدوي":
-                default:
-                    setFieldVisibility("fromAccount", true);
-                    fromAccountLabel.setText("من حساب (مدين):");
-                    setFieldVisibility("toAccount", true);
-                    toAccountLabel.setText("إلى حساب (دائن):");
-                    break;
+            @Override
+            public AccountDirectory.Entry fromString(String text) {
+                AccountDirectory.Entry selected = accountComboBox.getValue();
+                if (selected != null && label(selected).equals(text)) {
+                    return selected;
+                }
+                List<AccountDirectory.Entry> matches = search(text);
+                return matches.size() == 1 ? matches.get(0) : null;
             }
         });
-        // Trigger the listener for the initial value
-        transactionTypeComboBox.setValue("قيد يومية يدوي");
+        accountComboBox.getEditor().textProperty().addListener((obs, oldText, newText) -> {
+            AccountDirectory.Entry selected = accountComboBox.getValue();
+            if (selected != null && label(selected).equals(newText)) {
+                return;
+            }
+            accountComboBox.setItems(FXCollections.observableArrayList(search(newText)));
+            if (accountComboBox.getEditor().isFocused() && !accountComboBox.getItems().isEmpty()) {
+                accountComboBox.show();
+            }
+        });
+        accountComboBox.setItems(FXCollections.observableArrayList(search("")));
     }
 
-    private void setFieldVisibility(String fieldName, boolean isVisible) {
-        switch (fieldName) {
-            case "fromAccount":
-                fromAccountLabel.setVisible(isVisible);
-                fromAccountComboBox.setVisible(isVisible);
-                break;
-            case "toAccount":
-                toAccountLabel.setVisible(isVisible);
-                toAccountComboBox.setVisible(isVisible);
-                break;
-            case "contact":
-                contactLabel.setVisible(isVisible);
-                contactComboBox.setVisible(isVisible);
-                break;
-            case "paidAmount":
-                paidAmountLabel.setVisible(isVisible);
-                paidAmountField.setVisible(isVisible);
-                break;
+    private List<AccountDirectory.Entry> search(String text) {
+        try {
+            return AccountDirectory.search(text, PICKER_LIMIT);
+        } catch (SQLException e) {
+            ErrorHandler.showException("خطأ في تحميل البيانات", "فشل تحميل دليل الحسابات.", e);
+            return List.of();
         }
     }
 
-    public void processAndSaveEntry() {
-        String type = transactionTypeComboBox.getValue();
-        if (type == null || !validateInput(type)) {
-            // Show validation error
-            LOGGER.warning("Validation failed for journal entry.");
+    public void setDialogStage(Stage dialogStage) {
+        this.dialogStage = dialogStage;
+    }
+
+    public boolean isOkClicked() {
+        return okClicked;
+    }
+
+    @FXML
+    private void handleAddLine() {
+        AccountDirectory.Entry account = accountComboBox.getValue();
+        if (account == null) {
+            ErrorHandler.showWarning("سطر غير صالح", "يجب اختيار حساب من القائمة.");
             return;
         }
-
+        long debit;
+        long credit;
         try {
-            // This is where the logic for each transaction type will go.
-            // For now, we'll just print a success message.
-            LOGGER.info("Saving entry of type: " + type);
-            
-            // In a real implementation, you would call a service method here, e.g.:
-            // transactionService.createJournalEntry(buildEntryData());
-
-            closeDialog();
-        } catch (Exception e) {
-            e.printStackTrace();
-            // Show error alert
+            debit = parseAmount(debitField.getText());
+            credit = parseAmount(creditField.getText());
+        } catch (NumberFormatException e) {
+            ErrorHandler.showWarning("سطر غير صالح", "المبلغ يجب أن يكون رقماً.");
+            return;
+        }
+        if (debit < 0 || credit < 0 || (debit > 0) == (credit > 0)) {
+            ErrorHandler.showWarning("سطر غير صالح", "أدخل مبلغاً موجباً في المدين أو الدائن فقط.");
+            return;
         }
+        String description = lineDescriptionField.getText();
+        lines.add(new LineRow(account, debit, credit, description == null || description.isBlank() ? null : description.trim()));
+
+        accountComboBox.setValue(null);
+        accountComboBox.getEditor().clear();
+        debitField.clear();
+        creditField.clear();
+        lineDescriptionField.clear();
+        accountComboBox.requestFocus();
+        updateTotals();
     }
 
-    private boolean validateInput(String type) {
-        // Basic validation, can be expanded
-        if (datePicker.getValue() == null || descriptionArea.getText().isEmpty() || amountField.getText().isEmpty()) {
-            return false;
-        }
-        // Add more specific validation based on type
-        return true;
+    private static long parseAmount(String text) {
+        return text == null || text.isBlank() ? 0 : Money.toMinor(Double.parseDouble(text.trim()));
     }
 
-    private Runnable onCloseRequestHandler;
+    @FXML
+    private void handleRemoveLine() {
+        LineRow selected = linesTable.getSelectionModel().getSelectedItem();
+        if (selected != null) {
+            lines.remove(selected);
+            updateTotals();
+        }
+    }
 
-    public void setOnCloseRequestHandler(Runnable onCloseRequestHandler) {
-        this.onCloseRequestHandler = onCloseRequestHandler;
+    private void updateTotals() {
+        long debit = 0;
+        long credit = 0;
+        for (LineRow line : lines) {
+            debit += line.debit();
+            credit += line.credit();
+        }
+        totalDebitLabel.setText(FormatUtils.formatCurrency(Money.toMajor(debit)));
+        totalCreditLabel.setText(FormatUtils.formatCurrency(Money.toMajor(credit)));
+        boolean balanced = debit == credit;
+        differenceLabel.setText(balanced ? "متوازن" : "الفرق " + Money.format(Math.abs(debit - credit)));
+        differenceLabel.getStyleClass().removeAll("success-text", "danger-text");
+        differenceLabel.getStyleClass().add(balanced ? "success-text" : "danger-text");
+        saveButton.setDisable(lines.size() < 2 || !balanced);
     }
 
-    private void closeDialog() {
-        if (onCloseRequestHandler != null) {
-            onCloseRequestHandler.run();
+    @FXML
+    private void handleSave() {
+        if (datePicker.getValue() == null) {
+            ErrorHandler.showWarning("حقول غير صالحة", "تاريخ القيد غير صالح.");
+            return;
         }
+        List<JournalLine> entryLines = lines.stream()
+            .map(line -> new JournalLine(line.account().accountId(), Money.toMajor(line.debit()),
+                Money.toMajor(line.credit()), line.description()))
+            .toList();
+        try {
+            String ref = transactionService.addCompoundJournalEntry(datePicker.getValue(), descriptionField.getText(), entryLines);
+            ErrorHandler.showInfo("قيد مركب", "تم حفظ القيد " + ref + " (" + entryLines.size() + " سطر).");
+            okClicked = true;
+            dialogStage.close();
+        } catch (IllegalArgumentException e) {
+            ErrorHandler.showWarning("قيد مرفوض", e.getMessage());
+        } catch (SQLException e) {
+            ErrorHandler.showException("خطأ في الحفظ", "فشل حفظ القيد المركب.", e);
+        }
+    }
+
+    @FXML
+    private void handleCancel() {
+        dialogStage.close();
     }
-}
\ No newline at end of file
+}
@@ -2,10 +2,14 @@ package accounting.controller;
 
 import accounting.model.CashFlowEntry;
 import accounting.util.ErrorHandler;
+import accounting.util.LazyTableDataSource;
 import accounting.service.FinancialTransactionDataService;
+import accounting.service.FinancialTransactionDataService.LedgerTotals;
+import accounting.service.RecurringJournalService;
+import accounting.service.RecurringJournalService.Occurrence;
+import accounting.service.RecurringJournalService.PostingResult;
+import accounting.formatter.CellTextCache;
 import accounting.formatter.FormatUtils;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
 import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -41,7 +45,7 @@ public class JournalViewController {
     @FXML private Label openingBalanceLabel, totalInflowLabel, totalOutflowLabel, closingBalanceLabel;
 
     private FinancialTransactionDataService transactionService;
-    private ObservableList<CashFlowEntry> journalEntries = FXCollections.observableArrayList();
+    private final LazyTableDataSource<CashFlowEntry> journalEntries = new LazyTableDataSource<>();
     private double openingBalance;
 
     @FXML
@@ -64,7 +68,13 @@ public class JournalViewController {
         balanceColumn.setCellFactory(col -> createCurrencyCell(false));
         descriptionColumn.setCellFactory(col -> createDescriptionCell());
 
-        journalTable.setItems(journalEntries);
+        // الحركات تُجلب صفحةً صفحة، والرصيد الجاري يُحسب في SQL فلا يعتمد على الصفحات المحملة
+        journalEntries.sortable(dateColumn, "date")
+            .sortable(descriptionColumn, "description")
+            .sortable(inflowColumn, "inflow")
+            .sortable(outflowColumn, "outflow")
+            .sortable(balanceColumn, "balance")
+            .bind(journalTable);
     }
 
     @FXML
@@ -83,38 +93,36 @@ public class JournalViewController {
     private void loadJournalData() {
         LocalDate from = fromDatePicker.getValue();
         LocalDate to = toDatePicker.getValue();
+        String search = searchField.getText();
 
-        Task<List<CashFlowEntry>> loadDataTask = new Task<>() {
+        journalEntries.load(
+            () -> transactionService.countCashFlowEntries(from, to, search),
+            page -> transactionService.getCashFlowPage(from, to, search, page)
+        );
+
+        // الإجماليات تجميع SQL للفترة كلها، لا مجموع الصفوف المحملة
+        Task<LedgerTotals> totalsTask = new Task<>() {
             @Override
-            protected List<CashFlowEntry> call() throws Exception {
+            protected LedgerTotals call() throws Exception {
                 openingBalance = 0;
                 if (from != null) {
                     openingBalance = transactionService.getOpeningBalance(from);
                 }
-                return transactionService.getCashFlowEntries(from, to);
+                return transactionService.getCashFlowTotals(from, to);
             }
         };
 
-        loadDataTask.setOnSucceeded(e -> {
-            journalEntries.setAll(loadDataTask.getValue());
+        totalsTask.setOnSucceeded(e -> {
             openingBalanceLabel.setText(FormatUtils.formatCurrency(openingBalance));
-            updateStatisticalCards();
+            updateStatisticalCards(totalsTask.getValue());
         });
-
-        loadDataTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل دفتر اليومية.", (Exception) loadDataTask.getException()));
-        new Thread(loadDataTask).start();
+        totalsTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل دفتر اليومية.", (Exception) totalsTask.getException()));
+        new Thread(totalsTask).start();
     }
 
-    private void updateStatisticalCards() {
-        if (journalEntries.isEmpty()) {
-            totalInflowLabel.setText(FormatUtils.formatCurrency(0));
-            totalOutflowLabel.setText(FormatUtils.formatCurrency(0));
-            closingBalanceLabel.setText(FormatUtils.formatCurrency(openingBalance));
-            return;
-        }
-
-        double totalIn = journalEntries.stream().mapToDouble(CashFlowEntry::getInflow).sum();
-        double totalOut = journalEntries.stream().mapToDouble(CashFlowEntry::getOutflow).sum();
+    private void updateStatisticalCards(LedgerTotals totals) {
+        double totalIn = totals.getTotalDebit();
+        double totalOut = totals.getTotalCredit();
         double closingBalance = openingBalance + totalIn - totalOut;
 
         totalInflowLabel.setText(FormatUtils.formatCurrency(totalIn));
@@ -138,6 +146,58 @@ public class JournalViewController {
     @FXML private void handleNewPurchaseBill() { openModalForm("/fxml/PurchaseForm.fxml", "فاتورة شراء جديدة"); }
     @FXML private void handleNewExpense() { openModalForm("/fxml/ExpenseForm.fxml", "تسجيل مصروف جديد"); }
     @FXML private void handleNewPaymentReceipt() { openModalForm("/fxml/PaymentForm.fxml", "سند صرف/قبض جديد"); }
+    @FXML private void handleNewCompoundEntry() { openModalForm("/fxml/JournalEntryForm.fxml", "قيد يومية مركب"); }
+
+    /**
+     * ترحيل كل القيود المتكررة المستحقة حتى اليوم بعد عرضها للتأكيد (إقفال نهاية الشهر بنقرة واحدة)
+     */
+    @FXML
+    private void handlePostRecurring() {
+        RecurringJournalService recurringService = new RecurringJournalService();
+        LocalDate today = LocalDate.now();
+        List<Occurrence> due;
+        try {
+            due = recurringService.getDue(today);
+        } catch (SQLException e) {
+            ErrorHandler.showException("خطأ", "فشل تحميل القيود المتكررة.", e);
+            return;
+        }
+        if (due.isEmpty()) {
+            ErrorHandler.showInfo("القيود المتكررة", "لا توجد قيود متكررة مستحقة.");
+            return;
+        }
+        StringBuilder details = new StringBuilder();
+        for (Occurrence occurrence : due.subList(0, Math.min(due.size(), 15))) {
+            details.append(FormatUtils.formatDateForDisplay(occurrence.date())).append("  ")
+                .append(occurrence.templateName()).append("  ")
+                .append(FormatUtils.formatCurrency(occurrence.amount())).append('\n');
+        }
+        if (due.size() > 15) {
+            details.append("... و").append(due.size() - 15).append(" قيداً آخر");
+        }
+        Alert confirm = new Alert(Alert.AlertType.CONFIRMATION, details.toString(), ButtonType.OK, ButtonType.CANCEL);
+        confirm.setTitle("القيود المتكررة");
+        confirm.setHeaderText("ترحيل " + due.size() + " قيداً مستحقاً؟");
+        if (confirm.showAndWait().orElse(ButtonType.CANCEL) != ButtonType.OK) {
+            return;
+        }
+
+        Task<PostingResult> postTask = new Task<>() {
+            @Override
+            protected PostingResult call() throws Exception {
+                return recurringService.postDue(today);
+            }
+        };
+        postTask.setOnSucceeded(e -> {
+            PostingResult result = postTask.getValue();
+            String skipped = result.skippedTemplates().isEmpty() ? ""
+                : "\nلم تُرحل قوالب: " + String.join("، ", result.skippedTemplates().keySet());
+            ErrorHandler.showInfo("القيود المتكررة", "تم ترحيل " + result.posted() + " قيداً." + skipped);
+            loadJournalData();
+        });
+        postTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل ترحيل القيود المتكررة.", (Exception) postTask.getException()));
+        new Thread(postTask).start();
+    }
 
     private void openModalForm(String fxmlPath, String title) {
         try {
@@ -168,6 +228,8 @@ public class JournalViewController {
     // --- Custom Cell Factories ---
     private TableCell<CashFlowEntry, Double> createCurrencyCell(boolean isSuccess) {
         return new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
@@ -175,7 +237,7 @@ public class JournalViewController {
                     setText(null);
                     getStyleClass().removeAll("success-text", "danger-text");
                 } else {
-                    setText(FormatUtils.formatCurrency(item));
+                    setText(text.of(item));
                     getStyleClass().add(isSuccess ? "success-text" : "danger-text");
                 }
             }
@@ -190,7 +252,11 @@ public class JournalViewController {
                 if (empty || item == null) {
                     setGraphic(null);
                 } else {
-                    CashFlowEntry entry = getTableView().getItems().get(getIndex());
+                    CashFlowEntry entry = getTableRow().getItem();
+                    if (entry == null) {
+                        setGraphic(null);
+                        return;
+                    }
                     VBox vbox = new VBox(2);
                     Label descLabel = new Label(item);
                     descLabel.getStyleClass().add("description-label");
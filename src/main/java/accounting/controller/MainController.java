@@ -7,7 +7,10 @@ import java.util.ResourceBundle;
 import java.util.Timer;
 import java.util.TimerTask;
 
+import accounting.service.LedgerIntegrityMonitor;
+import accounting.util.AppMetrics;
 import accounting.util.ErrorHandler;
+import accounting.util.ImprovedDataManager;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -60,8 +63,18 @@ public class MainController implements Initializable {
             mainBorderPane.setNodeOrientation(NodeOrientation.RIGHT_TO_LEFT);
         }
         setupStatusBar();
-        // Set Journal as the default view
-        showJournal();
+        // The window shows immediately; the Journal (default view) opens once the
+        // database bootstrap started in ImprovedAccountingApp.init has finished.
+        viewTitleLabel.setText("جارٍ تجهيز قاعدة البيانات...");
+        ImprovedDataManager.bootstrapAsync().whenComplete((dataManager, error) -> Platform.runLater(() -> {
+            if (error != null) {
+                ErrorHandler.showException("خطأ في قاعدة البيانات", "فشلت تهيئة قاعدة البيانات",
+                    error instanceof Exception e ? e : new RuntimeException(error));
+            } else {
+                showJournal();
+                LedgerIntegrityMonitor.startDefault();
+            }
+        }));
     }
 
     public static void loadView(String fxmlPath, String title) {
@@ -90,7 +103,11 @@ public class MainController implements Initializable {
             // Deactivate menu button if another button is clicked
             reportsMenuBtn.getStyleClass().remove("active");
 
-            Parent view = FXMLLoader.load(getClass().getResource("/fxml/" + fxmlPath));
+            Parent view;
+            try (AppMetrics.Operation op = AppMetrics.begin("ui.load." + fxmlPath.replace(".fxml", ""))) {
+                view = FXMLLoader.load(getClass().getResource("/fxml/" + fxmlPath));
+                op.succeeded();
+            }
             contentArea.getChildren().setAll(view);
             viewTitleLabel.setText(title);
             
@@ -6,10 +6,14 @@ import accounting.model.PurchaseRecord;
 import accounting.service.ContactDataService;
 import accounting.service.CropDataService;
 import accounting.util.ErrorHandler;
+import accounting.util.LazyTableDataSource;
+import accounting.util.SearchPipeline;
 import accounting.service.PurchaseDataService;
+import accounting.service.PurchaseDataService.PurchaseFilter;
+import accounting.service.PurchaseDataService.PurchaseTotals;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -21,7 +25,6 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -48,21 +51,27 @@ public class PurchaseHistoryController {
     @FXML private Label totalPurchasesLabel, totalPaidLabel, totalBalanceLabel;
 
     private PurchaseDataService purchaseDataService;
-    private ObservableList<PurchaseRecord> purchasesList = FXCollections.observableArrayList();
+    private final LazyTableDataSource<PurchaseRecord> purchasesList = new LazyTableDataSource<>();
+    private SearchPipeline<PurchaseFilter, PurchaseTotals> purchasesSearch;
 
     @FXML
     public void initialize() {
         this.purchaseDataService = new PurchaseDataService();
+        this.purchasesSearch = new SearchPipeline<>(purchaseDataService::getPurchasesTotals, this::showPurchases);
+        purchasesSearch.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل سجل المشتريات.", (Exception) e));
         setupTableColumns();
         loadFilters();
+
+        // البحث أثناء الكتابة يمر بمهلة توقف، والنتيجة تُطبق فقط إن بقي النص كما هو
+        searchField.textProperty().addListener((obs, oldValue, newValue) -> purchasesSearch.submit(currentFilter()));
         loadPurchasesData();
     }
 
     private void setupTableColumns() {
         dateColumn.setCellValueFactory(new PropertyValueFactory<>("purchaseDate"));
         invoiceNumberColumn.setCellValueFactory(new PropertyValueFactory<>("invoiceNumber"));
-        supplierColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getSupplier().getName()));
-        cropColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCrop().getCropName()));
+        supplierColumn.setCellValueFactory(cell -> cell.getValue() == null ? null : new SimpleStringProperty(cell.getValue().getSupplier().getName()));
+        cropColumn.setCellValueFactory(cell -> cell.getValue() == null ? null : new SimpleStringProperty(cell.getValue().getCrop().getCropName()));
         unitPriceColumn.setCellValueFactory(new PropertyValueFactory<>("unitPrice"));
         totalAmountColumn.setCellValueFactory(new PropertyValueFactory<>("totalCost"));
         amountPaidColumn.setCellValueFactory(new PropertyValueFactory<>("amountPaid"));
@@ -84,15 +93,37 @@ public class PurchaseHistoryController {
         });
 
         addActionsToTable();
+
+        // الصفوف تُجلب صفحةً صفحة والترتيب يتم في SQL
+        purchasesList.sortable(dateColumn, "date")
+            .sortable(invoiceNumberColumn, "invoice")
+            .sortable(supplierColumn, "supplier")
+            .sortable(cropColumn, "crop")
+            .sortable(unitPriceColumn, "price")
+            .sortable(totalAmountColumn, "total")
+            .bind(purchasesTable);
     }
 
     private void loadFilters() {
-        try {
-            supplierFilterComboBox.setItems(FXCollections.observableArrayList(new ContactDataService().getAllContacts()));
-            cropFilterComboBox.setItems(FXCollections.observableArrayList(new CropDataService().getAllActiveCrops()));
-        } catch (SQLException e) {
-            ErrorHandler.showException("خطأ", "فشل تحميل بيانات الفلاتر.", e);
-        }
+        Task<Void> loadFiltersTask = new Task<>() {
+            private List<Contact> contacts;
+            private List<Crop> crops;
+
+            @Override
+            protected Void call() throws Exception {
+                contacts = new ContactDataService().getAllContacts();
+                crops = new CropDataService().getAllActiveCrops();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                supplierFilterComboBox.setItems(FXCollections.observableArrayList(contacts));
+                cropFilterComboBox.setItems(FXCollections.observableArrayList(crops));
+            }
+        };
+        loadFiltersTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل بيانات الفلاتر.", (Exception) loadFiltersTask.getException()));
+        new Thread(loadFiltersTask).start();
     }
 
     @FXML
@@ -110,31 +141,34 @@ public class PurchaseHistoryController {
         loadPurchasesData();
     }
 
+    /**
+     * تحميل صريح بالفلاتر الحالية (أول فتح، زر التطبيق، بعد حفظ مستند)
+     */
     private void loadPurchasesData() {
-        try {
-            List<PurchaseRecord> purchases = purchaseDataService.getPurchases(
-                fromDate.getValue(),
-                toDate.getValue(),
-                cropFilterComboBox.getValue() != null ? cropFilterComboBox.getValue().getCropId() : null,
-                supplierFilterComboBox.getValue() != null ? supplierFilterComboBox.getValue().getContactId() : null,
-                searchField.getText()
-            );
-            purchasesList.setAll(purchases);
-            purchasesTable.setItems(purchasesList);
-            updateTotals();
-        } catch (SQLException e) {
-            ErrorHandler.showException("خطأ", "فشل تحميل سجل المشتريات.", e);
-        }
+        purchasesSearch.invalidate();
+        purchasesSearch.submitNow(currentFilter());
     }
 
-    private void updateTotals() {
-        double totalPurchases = purchasesList.stream().mapToDouble(PurchaseRecord::getTotalCost).sum();
-        double totalPaid = purchasesList.stream().mapToDouble(purchase -> purchase.getAmountPaid()).sum();
-        double totalBalance = purchasesList.stream().mapToDouble(purchase -> purchase.getBalance()).sum();
+    private PurchaseFilter currentFilter() {
+        return new PurchaseFilter(
+            fromDate.getValue(),
+            toDate.getValue(),
+            cropFilterComboBox.getValue() != null ? cropFilterComboBox.getValue().getCropId() : null,
+            supplierFilterComboBox.getValue() != null ? supplierFilterComboBox.getValue().getContactId() : null,
+            searchField.getText()
+        );
+    }
+
+    private void showPurchases(PurchaseFilter filter, PurchaseTotals totals) {
+        // عدد الصفوف من استعلام المجاميع نفسه، والصفوف تُجلب صفحةً صفحة
+        purchasesList.load(totals::getCount, page -> purchaseDataService.getPurchasesPage(filter, page));
+        updateTotals(totals);
+    }
 
-        totalPurchasesLabel.setText(String.format("إجمالي المشتريات: %.2f", totalPurchases));
-        totalPaidLabel.setText(String.format("إجمالي المدفوع: %.2f", totalPaid));
-        totalBalanceLabel.setText(String.format("إجمالي المتبقي: %.2f", totalBalance));
+    private void updateTotals(PurchaseTotals totals) {
+        totalPurchasesLabel.setText(String.format("إجمالي المشتريات: %.2f", totals.getTotalCost()));
+        totalPaidLabel.setText(String.format("إجمالي المدفوع: %.2f", totals.getTotalPaid()));
+        totalBalanceLabel.setText(String.format("إجمالي المتبقي: %.2f", totals.getTotalBalance()));
     }
 
     private void addActionsToTable() {
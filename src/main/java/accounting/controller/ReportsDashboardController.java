@@ -39,4 +39,9 @@ public class ReportsDashboardController {
     private void generateGeneralLedger() {
         MainController.loadView("GeneralLedgerView.fxml", "دفتر الأستاذ العام");
     }
-}
\ No newline at end of file
+
+    @FXML
+    private void showDiagnostics() {
+        MainController.loadView("DiagnosticsView.fxml", "تشخيص الأداء");
+    }
+}
@@ -6,10 +6,14 @@ import accounting.model.SaleRecord;
 import accounting.service.ContactDataService;
 import accounting.service.CropDataService;
 import accounting.util.ErrorHandler;
+import accounting.util.LazyTableDataSource;
+import accounting.util.SearchPipeline;
 import accounting.service.SaleDataService;
+import accounting.service.SaleDataService.SaleFilter;
+import accounting.service.SaleDataService.SalesTotals;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -21,7 +25,6 @@ import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 import java.io.IOException;
-import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -48,21 +51,27 @@ public class SaleHistoryController {
     @FXML private Label totalSalesLabel, totalPaidLabel, totalBalanceLabel;
 
     private SaleDataService saleDataService;
-    private ObservableList<SaleRecord> salesList = FXCollections.observableArrayList();
+    private final LazyTableDataSource<SaleRecord> salesList = new LazyTableDataSource<>();
+    private SearchPipeline<SaleFilter, SalesTotals> salesSearch;
 
     @FXML
     public void initialize() {
         this.saleDataService = new SaleDataService();
+        this.salesSearch = new SearchPipeline<>(saleDataService::getSalesTotals, this::showSales);
+        salesSearch.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل سجل المبيعات.", (Exception) e));
         setupTableColumns();
         loadFilters();
+
+        // البحث أثناء الكتابة يمر بمهلة توقف، والنتيجة تُطبق فقط إن بقي النص كما هو
+        searchField.textProperty().addListener((obs, oldValue, newValue) -> salesSearch.submit(currentFilter()));
         loadSalesData();
     }
 
     private void setupTableColumns() {
         dateColumn.setCellValueFactory(new PropertyValueFactory<>("saleDate"));
         invoiceNumberColumn.setCellValueFactory(new PropertyValueFactory<>("saleInvoiceNumber"));
-        customerColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCustomer().getName()));
-        cropColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().getCrop().getCropName()));
+        customerColumn.setCellValueFactory(cell -> cell.getValue() == null ? null : new SimpleStringProperty(cell.getValue().getCustomer().getName()));
+        cropColumn.setCellValueFactory(cell -> cell.getValue() == null ? null : new SimpleStringProperty(cell.getValue().getCrop().getCropName()));
         sellingUnitPriceColumn.setCellValueFactory(new PropertyValueFactory<>("sellingUnitPrice"));
         totalAmountColumn.setCellValueFactory(new PropertyValueFactory<>("totalSaleAmount"));
         amountPaidColumn.setCellValueFactory(new PropertyValueFactory<>("amountPaid"));
@@ -85,15 +94,37 @@ public class SaleHistoryController {
         });
 
         addActionsToTable();
+
+        // الصفوف تُجلب صفحةً صفحة والترتيب يتم في SQL
+        salesList.sortable(dateColumn, "date")
+            .sortable(invoiceNumberColumn, "invoice")
+            .sortable(customerColumn, "customer")
+            .sortable(cropColumn, "crop")
+            .sortable(sellingUnitPriceColumn, "price")
+            .sortable(totalAmountColumn, "total")
+            .bind(salesTable);
     }
 
     private void loadFilters() {
-        try {
-            customerFilterComboBox.setItems(FXCollections.observableArrayList(new ContactDataService().getAllContacts()));
-            cropFilterComboBox.setItems(FXCollections.observableArrayList(new CropDataService().getAllActiveCrops()));
-        } catch (SQLException e) {
-            ErrorHandler.showException("خطأ", "فشل تحميل بيانات الفلاتر.", e);
-        }
+        Task<Void> loadFiltersTask = new Task<>() {
+            private List<Contact> contacts;
+            private List<Crop> crops;
+
+            @Override
+            protected Void call() throws Exception {
+                contacts = new ContactDataService().getAllContacts();
+                crops = new CropDataService().getAllActiveCrops();
+                return null;
+            }
+
+            @Override
+            protected void succeeded() {
+                customerFilterComboBox.setItems(FXCollections.observableArrayList(contacts));
+                cropFilterComboBox.setItems(FXCollections.observableArrayList(crops));
+            }
+        };
+        loadFiltersTask.setOnFailed(e -> ErrorHandler.showException("خطأ", "فشل تحميل بيانات الفلاتر.", (Exception) loadFiltersTask.getException()));
+        new Thread(loadFiltersTask).start();
     }
 
     @FXML
@@ -111,31 +142,34 @@ public class SaleHistoryController {
         loadSalesData();
     }
 
+    /**
+     * تحميل صريح بالفلاتر الحالية (أول فتح، زر التطبيق، بعد حفظ مستند)
+     */
     private void loadSalesData() {
-        try {
-            List<SaleRecord> sales = saleDataService.getSales(
-                fromDate.getValue(),
-                toDate.getValue(),
-                cropFilterComboBox.getValue() != null ? cropFilterComboBox.getValue().getCropId() : null,
-                customerFilterComboBox.getValue() != null ? customerFilterComboBox.getValue().getContactId() : null,
-                searchField.getText()
-            );
-            salesList.setAll(sales);
-            salesTable.setItems(salesList);
-            updateTotals();
-        } catch (SQLException e) {
-            ErrorHandler.showException("خطأ", "فشل تحميل سجل المبيعات.", e);
-        }
+        salesSearch.invalidate();
+        salesSearch.submitNow(currentFilter());
     }
 
-    private void updateTotals() {
-        double totalSales = salesList.stream().mapToDouble(SaleRecord::getTotalSaleAmount).sum();
-        double totalPaid = salesList.stream().mapToDouble(sale -> sale.getAmountPaid()).sum();
-        double totalBalance = salesList.stream().mapToDouble(sale -> sale.getBalance()).sum();
+    private SaleFilter currentFilter() {
+        return new SaleFilter(
+            fromDate.getValue(),
+            toDate.getValue(),
+            cropFilterComboBox.getValue() != null ? cropFilterComboBox.getValue().getCropId() : null,
+            customerFilterComboBox.getValue() != null ? customerFilterComboBox.getValue().getContactId() : null,
+            searchField.getText()
+        );
+    }
+
+    private void showSales(SaleFilter filter, SalesTotals totals) {
+        // عدد الصفوف من استعلام المجاميع نفسه، والصفوف تُجلب صفحةً صفحة
+        salesList.load(totals::getCount, page -> saleDataService.getSalesPage(filter, page));
+        updateTotals(totals);
+    }
 
-        totalSalesLabel.setText(String.format("إجمالي المبيعات: %.2f", totalSales));
-        totalPaidLabel.setText(String.format("إجمالي المدفوع: %.2f", totalPaid));
-        totalBalanceLabel.setText(String.format("إجمالي المتبقي: %.2f", totalBalance));
+    private void updateTotals(SalesTotals totals) {
+        totalSalesLabel.setText(String.format("إجمالي المبيعات: %.2f", totals.getTotalAmount()));
+        totalPaidLabel.setText(String.format("إجمالي المدفوع: %.2f", totals.getTotalPaid()));
+        totalBalanceLabel.setText(String.format("إجمالي المتبقي: %.2f", totals.getTotalBalance()));
     }
 
     private void addActionsToTable() {
@@ -2,6 +2,7 @@ package accounting.controller;
 
 import accounting.model.TrialBalanceEntry;
 import accounting.service.FinancialSummaryService;
+import accounting.formatter.CellTextCache;
 import accounting.formatter.FormatUtils;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
@@ -58,6 +59,8 @@ public class TrialBalanceController {
         // Debit Column
         debitColumn.setCellValueFactory(new PropertyValueFactory<>("totalDebit"));
         debitColumn.setCellFactory(column -> new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
@@ -65,7 +68,7 @@ public class TrialBalanceController {
                 if (item == null || empty || item == 0) {
                     setText(null);
                 } else {
-                    setText(FormatUtils.formatCurrency(item));
+                    setText(text.of(item));
                     getStyleClass().add("text-danger");
                 }
             }
@@ -74,6 +77,8 @@ public class TrialBalanceController {
         // Credit Column
         creditColumn.setCellValueFactory(new PropertyValueFactory<>("totalCredit"));
         creditColumn.setCellFactory(column -> new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
@@ -81,7 +86,7 @@ public class TrialBalanceController {
                 if (item == null || empty || item == 0) {
                     setText(null);
                 } else {
-                    setText(FormatUtils.formatCurrency(item));
+                    setText(text.of(item));
                     getStyleClass().add("text-success");
                 }
             }
@@ -134,10 +139,12 @@ public class TrialBalanceController {
 
     private void formatCurrencyCell(TableColumn<TrialBalanceEntry, Double> column) {
         column.setCellFactory(col -> new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
-                setText(empty || item == null ? "" : FormatUtils.formatCurrency(item));
+                setText(empty || item == null ? "" : text.of(item));
             }
         });
     }
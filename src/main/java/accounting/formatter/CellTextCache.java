@@ -0,0 +1,47 @@
+package accounting.formatter;
+
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * نص خلية جدول لآخر قيمة عرضتها.
+ *
+ * الجدول يعيد استخدام عدد الخلايا الظاهرة فقط ويستدعي updateItem كثيراً بنفس القيمة (إعادة
+ * الرسم، تغيير الحجم، التحديد)، فتُحفظ آخر قيمة ونصها ولا يُنسق من جديد إلا عند تغيرها أو
+ * تغير شكل الأرقام. التنسيق يكتب في مخزن الخلية نفسه، فلا ينشئ إلا النص الناتج.
+ *
+ * للاستخدام من خيط الواجهة فقط، مثل الخلية التي تملكه.
+ */
+public final class CellTextCache<T> {
+
+    private final BiConsumer<StringBuilder, ? super T> formatter;
+    private final StringBuilder buffer = new StringBuilder(24);
+    private T lastItem;
+    private String lastText;
+    private FormatUtils.Digits lastDigits;
+
+    /**
+     * @param formatter دالة تكتب القيمة في المخزن، مثل FormatUtils::appendCurrency
+     */
+    public CellTextCache(BiConsumer<StringBuilder, ? super T> formatter) {
+        this.formatter = formatter;
+    }
+
+    /**
+     * نص القيمة، أو null لقيمة فارغة
+     */
+    public String of(T item) {
+        if (item == null) {
+            return null;
+        }
+        FormatUtils.Digits digits = FormatUtils.getDisplayDigits();
+        if (lastText == null || digits != lastDigits || !Objects.equals(item, lastItem)) {
+            buffer.setLength(0);
+            formatter.accept(buffer, item);
+            lastItem = item;
+            lastText = buffer.toString();
+            lastDigits = digits;
+        }
+        return lastText;
+    }
+}
@@ -1,54 +1,287 @@
 package accounting.formatter;
 
+import accounting.util.Money;
+
 import java.text.DecimalFormat;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 import javafx.scene.control.TableCell;
 
+/**
+ * تنسيق المبالغ والتواريخ والكميات للعرض والتخزين.
+ *
+ * كل الدوال آمنة من أي خيط (مهام التقارير في الخلفية وخيط الواجهة معاً): لا تشارك كائن
+ * تنسيق قابلاً للتغيير. المسار الأساسي append* يكتب الأرقام مباشرة في StringBuilder يمرره
+ * المستدعي دون أي إنشاء كائنات، ودوال format* تستخدم مخزناً لكل خيط ثم تنشئ النص الناتج
+ * فقط. خلايا الجداول تحفظ نص آخر قيمة عرضتها (CellTextCache) فلا يُعاد التنسيق أثناء
+ * التمرير وإعادة الرسم لنفس القيمة.
+ *
+ * المبالغ تُقرب إلى القرش كما تُرحل (Money.toMinor: نصف القرش بعيداً عن الصفر)، فالمعروض
+ * يطابق المخزن. أرقام العرض لاتينية افتراضياً ويمكن تحويلها إلى الأرقام العربية الهندية
+ * (setDisplayDigits)؛ نص التخزين (formatDateForDatabase) لاتيني دائماً.
+ */
 public class FormatUtils {
 
-    private static final DecimalFormat CURRENCY_FORMAT = new DecimalFormat("#,##0.00");
     public static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    /** للسنوات خارج 1..9999 فقط؛ ما عداها يُكتب مباشرة */
+    private static final DateTimeFormatter DISPLAY_DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    /** أكبر مبلغ يُكتب بالقروش مباشرة؛ ما فوقه (أو NaN واللانهاية) يمر على DecimalFormat */
+    private static final double MAX_DIRECT = 1e15;
+
+    private static final ThreadLocal<DecimalFormat> FALLBACK_CURRENCY =
+        ThreadLocal.withInitial(() -> new DecimalFormat("#,##0.00"));
+    private static final ThreadLocal<StringBuilder> BUFFER = ThreadLocal.withInitial(() -> new StringBuilder(32));
+
+    /**
+     * شكل أرقام العرض
+     */
+    public enum Digits {
+        LATIN,
+        /** ٠١٢٣٤٥٦٧٨٩ مع الفاصلة العشرية ٫ وفاصل الآلاف ٬ */
+        ARABIC_INDIC
+    }
+
+    private static volatile Digits displayDigits = Digits.LATIN;
+
+    public static Digits getDisplayDigits() {
+        return displayDigits;
+    }
+
+    public static void setDisplayDigits(Digits digits) {
+        displayDigits = digits == null ? Digits.LATIN : digits;
+    }
 
     public static String formatCurrency(double value) {
-        return CURRENCY_FORMAT.format(value);
+        return appendCurrency(buffer(), value).toString();
     }
 
     public static String formatDateForDisplay(LocalDate date) {
         if (date == null) return "";
-        return date.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+        return appendDateForDisplay(buffer(), date).toString();
     }
 
     public static String formatNumber(Double number) {
         if (number == null) return "";
-        return String.format("%.2f", number);
+        return appendNumber(buffer(), number).toString();
     }
 
 
     public static String formatQuantityWithUnit(double quantity, String unit) {
-        return String.format("%.2f %s", quantity, unit);
+        return appendNumber(buffer(), quantity).append(' ').append(unit).toString();
     }
 
     public static String formatDateForDatabase(LocalDate date) {
         if (date == null) return null;
-        return date.format(DATE_FORMATTER);
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            return date.format(DATE_FORMATTER);
+        }
+        StringBuilder out = buffer();
+        appendPadded(out, year, 4).append('-');
+        appendPadded(out, date.getMonthValue(), 2).append('-');
+        return appendPadded(out, date.getDayOfMonth(), 2).toString();
+    }
+
+    // ------------------------------------------------------------------
+    // الكتابة في StringBuilder
+
+    /**
+     * مبلغ بالجنيه بفواصل الآلاف ورقمين عشريين: 1,234.50
+     */
+    public static StringBuilder appendCurrency(StringBuilder out, double value) {
+        if (!(Math.abs(value) < MAX_DIRECT)) {
+            int start = out.length();
+            out.append(FALLBACK_CURRENCY.get().format(value));
+            return localize(out, start);
+        }
+        return appendMinorCurrency(out, Money.toMinor(value));
+    }
+
+    /**
+     * مبلغ بالقروش بفواصل الآلاف ورقمين عشريين
+     */
+    public static StringBuilder appendMinorCurrency(StringBuilder out, long minor) {
+        int start = out.length();
+        if (minor < 0) {
+            out.append('-');
+        }
+        appendGrouped(out, Math.abs(minor / Money.MINOR_PER_UNIT));
+        out.append('.');
+        appendPadded(out, (int) Math.abs(minor % Money.MINOR_PER_UNIT), 2);
+        return localize(out, start);
+    }
+
+    /**
+     * رقم برقمين عشريين دون فواصل آلاف: 1234.50
+     */
+    public static StringBuilder appendNumber(StringBuilder out, double value) {
+        int start = out.length();
+        if (!(Math.abs(value) < MAX_DIRECT)) {
+            out.append(String.format(Locale.ROOT, "%.2f", value));
+            return localize(out, start);
+        }
+        long minor = Money.toMinor(value);
+        if (minor < 0) {
+            out.append('-');
+        }
+        out.append(Math.abs(minor / Money.MINOR_PER_UNIT)).append('.');
+        appendPadded(out, (int) Math.abs(minor % Money.MINOR_PER_UNIT), 2);
+        return localize(out, start);
+    }
+
+    /**
+     * تاريخ العرض dd/MM/yyyy
+     */
+    public static StringBuilder appendDateForDisplay(StringBuilder out, LocalDate date) {
+        int start = out.length();
+        int year = date.getYear();
+        if (year < 1 || year > 9999) {
+            out.append(date.format(DISPLAY_DATE_FORMATTER));
+        } else {
+            appendPadded(out, date.getDayOfMonth(), 2).append('/');
+            appendPadded(out, date.getMonthValue(), 2).append('/');
+            appendPadded(out, year, 4);
+        }
+        return localize(out, start);
+    }
+
+    private static StringBuilder buffer() {
+        StringBuilder out = BUFFER.get();
+        out.setLength(0);
+        return out;
     }
 
+    /** رقم موجب بفاصل كل ثلاث خانات */
+    private static void appendGrouped(StringBuilder out, long value) {
+        if (value < 1000) {
+            out.append(value);
+            return;
+        }
+        appendGrouped(out, value / 1000);
+        out.append(',');
+        appendPadded(out, (int) (value % 1000), 3);
+    }
+
+    /** رقم موجب بأصفار بادئة حتى width خانة */
+    private static StringBuilder appendPadded(StringBuilder out, int value, int width) {
+        for (int limit = 10, i = 1; i < width; i++, limit *= 10) {
+            if (value < limit) {
+                out.append('0');
+            }
+        }
+        return out.append(value);
+    }
+
+    /** تحويل ما كُتب من start إلى أرقام العرض المختارة */
+    private static StringBuilder localize(StringBuilder out, int start) {
+        if (displayDigits != Digits.ARABIC_INDIC) {
+            return out;
+        }
+        for (int i = start; i < out.length(); i++) {
+            char c = out.charAt(i);
+            if (c >= '0' && c <= '9') {
+                out.setCharAt(i, (char) ('\u0660' + (c - '0')));
+            } else if (c == '.') {
+                out.setCharAt(i, '\u066B');
+            } else if (c == ',') {
+                out.setCharAt(i, '\u066C');
+            }
+        }
+        return out;
+    }
+
+    /**
+     * قراءة تاريخ 'yyyy-MM-dd' مخزن: الأرقام تُقرأ مباشرة بلا محلل، وأي شكل آخر (أو تاريخ
+     * غير صالح) يمر على DATE_FORMATTER كما كان
+     */
     public static LocalDate parseDateFromDatabase(String dateString) {
         if (dateString == null || dateString.trim().isEmpty()) return null;
+        long packed = packDate(dateString);
+        if (packed >= 0) {
+            return LocalDate.of((int) (packed / 10000), (int) (packed / 100 % 100), (int) (packed % 100));
+        }
         return LocalDate.parse(dateString, DATE_FORMATTER);
     }
 
+    /**
+     * رقم اليوم epoch لتاريخ 'yyyy-MM-dd' مخزن دون إنشاء أي كائن
+     *
+     * @throws IllegalArgumentException إذا لم يكن النص تاريخاً صالحاً بهذا الشكل
+     */
+    public static long epochDayFromDatabase(CharSequence dateString) {
+        long packed = dateString == null ? -1 : packDate(dateString);
+        if (packed < 0) {
+            throw new IllegalArgumentException("تاريخ غير صالح: " + dateString);
+        }
+        int year = (int) (packed / 10000);
+        int month = (int) (packed / 100 % 100);
+        int day = (int) (packed % 100);
+        // أيام الأشهر من 1 مارس حتى يكون يوم 29 فبراير آخر السنة (خوارزمية days_from_civil)
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * التاريخ مضغوطاً في yyyyMMdd، أو -1 إذا لم يكن 'yyyy-MM-dd' بيوم موجود فعلاً
+     */
+    private static long packDate(CharSequence text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return -1;
+        }
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return -1;
+        }
+        return year * 10000L + month * 100L + day;
+    }
+
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
     public static <T> TableCell<T, Double> createCurrencyCell() {
         return new TableCell<>() {
+            private final CellTextCache<Double> text = new CellTextCache<>(FormatUtils::appendCurrency);
+
             @Override
             protected void updateItem(Double item, boolean empty) {
                 super.updateItem(item, empty);
-                if (empty || item == null) {
-                    setText(null);
-                } else {
-                    setText(formatCurrency(item));
-                }
+                setText(empty ? null : text.of(item));
+            }
+        };
+    }
+
+    public static <T> TableCell<T, LocalDate> createDateCell() {
+        return new TableCell<>() {
+            private final CellTextCache<LocalDate> text = new CellTextCache<>(FormatUtils::appendDateForDisplay);
+
+            @Override
+            protected void updateItem(LocalDate item, boolean empty) {
+                super.updateItem(item, empty);
+                setText(empty ? null : text.of(item));
             }
         };
     }
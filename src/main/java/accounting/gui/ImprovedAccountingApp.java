@@ -1,6 +1,9 @@
 package accounting.gui;
 
+import accounting.api.ApiServer;
 import accounting.controller.MainController;
+import accounting.util.ImprovedDataManager;
+import accounting.util.MetricsExporter;
 import javafx.application.Application;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
@@ -9,6 +12,7 @@ import javafx.scene.text.Font;
 import javafx.stage.Stage;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * التطبيق الرئيسي المحسن لإدارة حسابات المحاصيل الزراعية
@@ -64,8 +68,9 @@ public class ImprovedAccountingApp extends Application {
     @Override
     public void init() throws Exception {
         System.out.println("تهيئة التطبيق المحسن...");
-        // يمكن إضافة تهيئة قاعدة البيانات هنا
-        // DataManager.initializeDatabase();
+        // تبدأ تهيئة قاعدة البيانات وترحيلاتها في الخلفية بالتوازي مع تحميل الواجهة في start
+        ImprovedDataManager.bootstrapAsync();
+        MetricsExporter.start();
     }
 
     @Override
@@ -74,12 +79,17 @@ public class ImprovedAccountingApp extends Application {
         if (mainController != null) {
             mainController.cleanup();
         }
+        MetricsExporter.stop();
     }
 
     /**
-     * نقطة دخول التطبيق
+     * نقطة دخول التطبيق؛ مع --headless يعمل خادم HTTP فقط دون واجهة
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--headless")) {
+            ApiServer.main(args);
+            return;
+        }
         launch(args);
     }
 }
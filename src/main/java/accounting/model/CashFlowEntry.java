@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 public class CashFlowEntry {
 
+    private final int entryId;
     private final LocalDate date;
     private final String description;
     private final String type;
@@ -12,6 +13,11 @@ public class CashFlowEntry {
     private double balance;
 
     public CashFlowEntry(LocalDate date, String description, String type, double inflow, double outflow) {
+        this(0, date, description, type, inflow, outflow);
+    }
+
+    public CashFlowEntry(int entryId, LocalDate date, String description, String type, double inflow, double outflow) {
+        this.entryId = entryId;
         this.date = date;
         this.description = description;
         this.type = type;
@@ -20,6 +26,10 @@ public class CashFlowEntry {
     }
 
     // Getters
+    public int getEntryId() {
+        return entryId;
+    }
+
     public LocalDate getDate() {
         return date;
     }
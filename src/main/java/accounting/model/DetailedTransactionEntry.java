@@ -180,6 +180,9 @@ public class DetailedTransactionEntry {
             case "PURCHASE": return "شراء";
             case "PAYMENT": return "دفع";
             case "RECEIVE": return "قبض";
+            case "PAY": return "صرف";
+            case "SALE_RETURN": return "مرتجع مبيع";
+            case "PURCHASE_RETURN": return "مرتجع شراء";
             default: return type;
         }
     }
@@ -12,6 +12,8 @@ public class InventoryAdjustment {
     private double quantityKg;
     private String reason;
     private double cost;
+    private Long lotId;
+    private int warehouseId = Warehouse.DEFAULT_ID;
 
     public enum AdjustmentType {
         DAMAGE("تالف"),
@@ -47,4 +49,12 @@ public class InventoryAdjustment {
     
     public double getCost() { return cost; }
     public void setCost(double cost) { this.cost = cost; }
+
+    /** الدفعة التي يُشطب منها التالف أو العجز أولاً؛ null للصرف بترتيب الدفعات */
+    public Long getLotId() { return lotId; }
+    public void setLotId(Long lotId) { this.lotId = lotId; }
+
+    /** المخزن الذي جُرد */
+    public int getWarehouseId() { return warehouseId; }
+    public void setWarehouseId(int warehouseId) { this.warehouseId = warehouseId; }
 }
\ No newline at end of file
@@ -5,9 +5,15 @@ import java.time.LocalDate;
 /**
  * يمثل سطراً واحداً في كشف حساب (لعميل أو مورد).
  * هذا الكلاس يساعد على توحيد عرض أنواع مختلفة من الحركات (بيع، شراء، دفعات) في جدول واحد.
+ *
+ * يُحمَّل بمئات الآلاف في دفتر الأستاذ، لذلك حقوله أولية أو مراجع مشتركة: التواريخ والنصوص
+ * المتكررة تأتي من RowCache الخاص بالاستعلام، والكمية والسعر double بقيمة NaN بدلاً من Double.
+ * جداول العرض تقرأ الـ getters عبر PropertyValueFactory فتُنشأ الخصائص للخلايا الظاهرة فقط.
  */
 public class LedgerEntry {
 
+    private final int entryId;
+    private final int accountId;
     private final LocalDate date;
     private final String description;
     private final String reference; // رقم الفاتورة أو الإيصال
@@ -21,33 +27,27 @@ public class LedgerEntry {
     // Additional details for a more descriptive journal
     private final String contactName;
     private final String itemName;
-    private final Double quantity;
-    private final Double unitPrice;
-    private int entryId;
-    private int accountId;
+    private final double quantity;  // NaN = غير محدد
+    private final double unitPrice; // NaN = غير محدد
 
 
     public LedgerEntry(int entryId, String transactionRef, LocalDate entryDate, int accountId, double debit, double credit, String description, String sourceType, int sourceId) {
-        this.entryId = entryId;
-        this.reference = transactionRef;
-        this.date = entryDate;
-        this.accountId = accountId;
-        this.debit = debit;
-        this.credit = credit;
-        this.description = description;
-        this.sourceType = sourceType;
-        this.sourceId = sourceId;
-        this.balance = 0;
-        this.accountType = null;
-        this.contactName = null;
-        this.itemName = null;
-        this.quantity = null;
-        this.unitPrice = null;
+        this(entryId, accountId, entryDate, description, transactionRef, debit, credit, null, sourceType, sourceId,
+             null, null, null, null);
     }
 
-    public LedgerEntry(LocalDate date, String description, String reference, double debit, double credit, 
+    public LedgerEntry(LocalDate date, String description, String reference, double debit, double credit,
                        String accountType, String sourceType, int sourceId,
                        String contactName, String itemName, Double quantity, Double unitPrice) {
+        this(0, 0, date, description, reference, debit, credit, accountType, sourceType, sourceId,
+             contactName, itemName, quantity, unitPrice);
+    }
+
+    public LedgerEntry(int entryId, int accountId, LocalDate date, String description, String reference,
+                       double debit, double credit, String accountType, String sourceType, int sourceId,
+                       String contactName, String itemName, Double quantity, Double unitPrice) {
+        this.entryId = entryId;
+        this.accountId = accountId;
         this.date = date;
         this.description = description;
         this.reference = reference;
@@ -59,8 +59,8 @@ public class LedgerEntry {
         this.sourceId = sourceId;
         this.contactName = contactName;
         this.itemName = itemName;
-        this.quantity = quantity;
-        this.unitPrice = unitPrice;
+        this.quantity = quantity != null ? quantity : Double.NaN;
+        this.unitPrice = unitPrice != null ? unitPrice : Double.NaN;
     }
 
     // Getters
@@ -117,11 +117,11 @@ public class LedgerEntry {
     }
 
     public Double getQuantity() {
-        return quantity;
+        return Double.isNaN(quantity) ? null : quantity;
     }
 
     public Double getUnitPrice() {
-        return unitPrice;
+        return Double.isNaN(unitPrice) ? null : unitPrice;
     }
 
     // Setter for the running balance
@@ -49,6 +49,12 @@ public class PurchaseRecord {
     /** ملاحظات إضافية على الفاتورة */
     private String notes;
 
+    /** تاريخ انتهاء صلاحية الكمية المشتراة (دفعتها في المخزون)، أو null */
+    private LocalDate expiryDate;
+
+    /** المخزن الذي استلم الكمية */
+    private int warehouseId = Warehouse.DEFAULT_ID;
+
     private double amountPaid;
     private double balance;
     private String paymentStatus;
@@ -218,6 +224,21 @@ public class PurchaseRecord {
      */
     public void setNotes(String notes) { this.notes = notes; }
 
+    /**
+     * يحصل على تاريخ انتهاء صلاحية دفعة الشراء
+     * @return تاريخ الصلاحية أو null
+     */
+    public LocalDate getExpiryDate() { return expiryDate; }
+
+    /**
+     * يحدد تاريخ انتهاء صلاحية دفعة الشراء (يُستخدم لصرف الأقرب انتهاءً أولاً)
+     * @param expiryDate تاريخ الصلاحية أو null
+     */
+    public void setExpiryDate(LocalDate expiryDate) { this.expiryDate = expiryDate; }
+
+    public int getWarehouseId() { return warehouseId; }
+    public void setWarehouseId(int warehouseId) { this.warehouseId = warehouseId; }
+
     /**
      * يحسب الكمية بوحدة التسعير
      * @return الكمية بوحدة التسعير
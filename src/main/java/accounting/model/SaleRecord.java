@@ -53,6 +53,9 @@ public class SaleRecord {
     private double balance;
     private String paymentStatus;
 
+    /** المخزن الذي صُرفت منه الكمية */
+    private int warehouseId = Warehouse.DEFAULT_ID;
+
     // Constructors
     /**
      * مُنشئ افتراضي لسجل البيع
@@ -246,6 +249,9 @@ public class SaleRecord {
     public String getPaymentStatus() { return paymentStatus; }
     public void setPaymentStatus(String paymentStatus) { this.paymentStatus = paymentStatus; }
 
+    public int getWarehouseId() { return warehouseId; }
+    public void setWarehouseId(int warehouseId) { this.warehouseId = warehouseId; }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -1,28 +1,28 @@
 package accounting.model;
 
-import javafx.beans.property.SimpleDoubleProperty;
-import javafx.beans.property.SimpleIntegerProperty;
-import javafx.beans.property.SimpleStringProperty;
-
+/**
+ * سطر ميزان المراجعة لحساب واحد. قيم ثابتة بدون خصائص JavaFX؛
+ * جدول العرض يقرأ الـ getters عبر PropertyValueFactory.
+ */
 public class TrialBalanceEntry {
-    private final SimpleIntegerProperty accountId;
-    private final SimpleStringProperty accountName;
-    private final SimpleDoubleProperty totalDebit;
-    private final SimpleDoubleProperty totalCredit;
-    private final SimpleDoubleProperty finalBalance;
+    private final int accountId;
+    private final String accountName;
+    private final double totalDebit;
+    private final double totalCredit;
+    private final double finalBalance;
 
     public TrialBalanceEntry(int accountId, String accountName, double totalDebit, double totalCredit) {
-        this.accountId = new SimpleIntegerProperty(accountId);
-        this.accountName = new SimpleStringProperty(accountName);
-        this.totalDebit = new SimpleDoubleProperty(totalDebit);
-        this.totalCredit = new SimpleDoubleProperty(totalCredit);
-        this.finalBalance = new SimpleDoubleProperty(totalDebit - totalCredit);
+        this.accountId = accountId;
+        this.accountName = accountName;
+        this.totalDebit = totalDebit;
+        this.totalCredit = totalCredit;
+        this.finalBalance = totalDebit - totalCredit;
     }
 
     // Getters
-    public int getAccountId() { return accountId.get(); }
-    public String getAccountName() { return accountName.get(); }
-    public double getTotalDebit() { return totalDebit.get(); }
-    public double getTotalCredit() { return totalCredit.get(); }
-    public double getFinalBalance() { return finalBalance.get(); }
-}
\ No newline at end of file
+    public int getAccountId() { return accountId; }
+    public String getAccountName() { return accountName; }
+    public double getTotalDebit() { return totalDebit; }
+    public double getTotalCredit() { return totalCredit; }
+    public double getFinalBalance() { return finalBalance; }
+}
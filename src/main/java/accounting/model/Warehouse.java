@@ -0,0 +1,37 @@
+package accounting.model;
+
+/**
+ * موقع تخزين (مخزن). كل حركة مخزون وكل دفعة تتبع مخزناً واحداً، والمخزن الرئيسي
+ * (DEFAULT_ID) هو مخزن المستندات التي لا تحدد مخزناً.
+ */
+public class Warehouse {
+
+    /** المخزن الرئيسي الذي يُنشأ مع المخطط */
+    public static final int DEFAULT_ID = 1;
+
+    private int warehouseId;
+    private String name;
+    private boolean active = true;
+
+    public Warehouse() {}
+
+    public Warehouse(int warehouseId, String name, boolean active) {
+        this.warehouseId = warehouseId;
+        this.name = name;
+        this.active = active;
+    }
+
+    public int getWarehouseId() { return warehouseId; }
+    public void setWarehouseId(int warehouseId) { this.warehouseId = warehouseId; }
+
+    public String getName() { return name; }
+    public void setName(String name) { this.name = name; }
+
+    public boolean isActive() { return active; }
+    public void setActive(boolean active) { this.active = active; }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,143 @@
+package accounting.service;
+
+import accounting.model.FinancialAccount;
+import accounting.model.FinancialAccount.AccountType;
+import accounting.util.ImprovedDataManager;
+import accounting.util.SearchText;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * دليل الحسابات في الذاكرة: بيانات مرجعية تُقرأ عند كل قيد (هل الحساب موجود ونشط وقابل للترحيل؟)
+ * وعند كل حرف في منتقي الحسابات، وتتغير نادراً.
+ *
+ * اللقطة مصفوفات متوازية مرتبة برقم الحساب، فالتحقق من سطور قيد بحث ثنائي لكل سطر بلا استعلام،
+ * والبحث في المنتقي مرور على مفاتيح مطبعة مسبقاً (راجع SearchText). اللقطة غير قابلة للتعديل
+ * وتُستبدل كاملة: FinancialAccountDataService يسقطها بعد كل إضافة أو تعديل أو إيقاف، وتُبنى من
+ * جديد عند أول طلب. استبدال مدير قاعدة البيانات يسقطها فتُبنى من القاعدة الجديدة.
+ */
+public final class AccountDirectory {
+
+    private static volatile Snapshot current;
+
+    private AccountDirectory() {
+    }
+
+    /**
+     * حساب في الدليل؛ type قد يكون null لأنواع قديمة لا يعرفها AccountType. naturalSign يحول
+     * (مدين - دائن) إلى الرصيد المخزن في current_balance (راجع LedgerIntegrityService.naturalSign)
+     */
+    public record Entry(int accountId, String name, AccountType type, boolean active, int naturalSign) {
+
+        /** الحسابات الرئيسية لتنظيم الشجرة فقط ولا تقبل قيوداً */
+        public boolean isPostable() {
+            return active && type != AccountType.HEADER;
+        }
+
+        public FinancialAccount toAccount() {
+            FinancialAccount account = new FinancialAccount();
+            account.setAccountId(accountId);
+            account.setAccountName(name);
+            account.setAccountType(type);
+            return account;
+        }
+    }
+
+    private static final class Snapshot {
+        private final int[] ids;
+        private final Entry[] entries;
+        /** "رقم الحساب + الاسم" مطبعاً لكل حساب */
+        private final String[] keys;
+
+        Snapshot(List<Entry> loaded) {
+            this.entries = loaded.toArray(Entry[]::new);
+            Arrays.sort(entries, (a, b) -> Integer.compare(a.accountId(), b.accountId()));
+            this.ids = new int[entries.length];
+            this.keys = new String[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                ids[i] = entries[i].accountId();
+                keys[i] = SearchText.key(String.valueOf(ids[i]), entries[i].name());
+            }
+        }
+    }
+
+    private static Snapshot snapshot() throws SQLException {
+        Snapshot snapshot = current;
+        if (snapshot == null) {
+            List<Entry> loaded = new ArrayList<>();
+            try (Connection conn = ImprovedDataManager.getInstance().getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                     "SELECT account_id, account_name, account_type, COALESCE(is_active, 1) FROM financial_accounts")) {
+                while (rs.next()) {
+                    loaded.add(new Entry(rs.getInt(1), rs.getString(2), type(rs.getString(3)), rs.getBoolean(4),
+                        LedgerIntegrityService.naturalSign(rs.getInt(1), rs.getString(3))));
+                }
+            }
+            snapshot = new Snapshot(loaded);
+            current = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static AccountType type(String name) {
+        try {
+            return AccountType.valueOf(name);
+        } catch (IllegalArgumentException | NullPointerException e) {
+            return null;
+        }
+    }
+
+    /** بناء الدليل عند التشغيل قبل أول قيد */
+    public static void warmUp() throws SQLException {
+        snapshot();
+    }
+
+    /** إسقاط الدليل بعد تعديل شجرة الحسابات؛ يُبنى من جديد عند أول طلب */
+    public static void invalidate() {
+        current = null;
+    }
+
+    public static Entry get(int accountId) throws SQLException {
+        Snapshot snapshot = snapshot();
+        int index = Arrays.binarySearch(snapshot.ids, accountId);
+        return index >= 0 ? snapshot.entries[index] : null;
+    }
+
+    /**
+     * أول سطر حسابه غير موجود أو موقوف أو رئيسي، أو -1 إذا كانت كل الحسابات قابلة للترحيل
+     */
+    public static int firstUnpostable(int[] accountIds, int count) throws SQLException {
+        Snapshot snapshot = snapshot();
+        for (int i = 0; i < count; i++) {
+            int index = Arrays.binarySearch(snapshot.ids, accountIds[i]);
+            if (index < 0 || !snapshot.entries[index].isPostable()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * الحسابات القابلة للترحيل التي يطابق رقمها أو اسمها نص البحث، بترتيب رقم الحساب
+     *
+     * @param limit أقصى عدد نتائج؛ المنتقي لا يعرض أكثر من شاشة
+     */
+    public static List<Entry> search(String query, int limit) throws SQLException {
+        Snapshot snapshot = snapshot();
+        String normalized = SearchText.normalize(query);
+        List<Entry> matches = new ArrayList<>();
+        for (int i = 0; i < snapshot.entries.length && matches.size() < limit; i++) {
+            if (snapshot.entries[i].isPostable() && SearchText.matches(snapshot.keys[i], normalized)) {
+                matches.add(snapshot.entries[i]);
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,897 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.service.BankStatementReader.Format;
+import accounting.util.AppMetrics;
+import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
+import accounting.util.SearchText;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * استيراد كشوف البنك ومطابقتها مع سطور الدفتر العام على حساب البنك نفسه.
+ *
+ * الاستيراد يقرأ الكشف سطراً بسطر ويدرجه في دفعات؛ كل سطر يحمل معرفاً خارجياً (FITID في OFX،
+ * أو بصمة التاريخ والمبلغ والمرجع في CSV) فيكون إعادة استيراد الكشف نفسه بلا أثر.
+ *
+ * المطابقة الآلية تحمل السطور غير المطابقة من الطرفين مرة واحدة في مصفوفات، وتجمع سطور الدفتر
+ * في دلاء حسب المبلغ بالقروش (مرتبة بالتاريخ)، فيكون البحث عن المرشحين بحثاً ثنائياً داخل الدلو
+ * بدلاً من مقارنة كل سطر بكل قيد:
+ *   1. واحد لواحد: المبلغ نفسه داخل نافذة التاريخ، والأزواج تُرتب بدرجة تجمع قرب التاريخ وتشابه
+ *      المرجع والبيان، فتُحسم الالتباسات (مبلغان متساويان في يومين متقاربين) بالمرجع.
+ *   2. عدة قيود لسطر واحد (إيداع مجمع): بحث محدود عن مجموعة من MAX_GROUP_SIZE قيود على الأكثر
+ *      بين أقرب MAX_GROUP_CANDIDATES قيداً بالتاريخ، مجموعها يساوي مبلغ السطر تماماً.
+ *
+ * حالة المطابقة محفوظة: كل قيد مطابق له صف واحد في bank_reconciliation_matches، وحذف القيد
+ * (إعادة ترحيل المستند) يعيد سطر الكشف غير مطابق عند المطابقة التالية.
+ *
+ * الإشارة من منظور البنك: الإيداع موجب ويقابله مدين حساب البنك في الدفتر.
+ */
+public class BankReconciliationService {
+
+    /** نافذة التاريخ الافتراضية بالأيام حول تاريخ سطر الكشف */
+    public static final int DEFAULT_DATE_WINDOW = 3;
+    /** أقصى عدد قيود في مطابقة مجمعة */
+    public static final int MAX_GROUP_SIZE = 4;
+    /** عدد المرشحين الأقرب تاريخاً في البحث عن مجموعة؛ يحد كلفة البحث */
+    static final int MAX_GROUP_CANDIDATES = 12;
+    /** أقصى مرشحين لكل سطر في المطابقة الفردية */
+    private static final int MAX_PAIR_CANDIDATES = 8;
+    private static final int BATCH_SIZE = 500;
+
+    public enum MatchMethod {
+        AUTO("آلية"),
+        AUTO_GROUP("آلية مجمعة"),
+        MANUAL("يدوية");
+
+        private final String arabicName;
+
+        MatchMethod(String arabicName) {
+            this.arabicName = arabicName;
+        }
+
+        public String getArabicName() {
+            return arabicName;
+        }
+    }
+
+    public record ImportResult(int statementId, int imported, int duplicates, int skipped, List<String> problems) {
+    }
+
+    public record MatchResult(int oneToOne, int grouped, int unmatched) {
+    }
+
+    /**
+     * @param matchedEntryIds قيود الدفتر المطابقة، فارغة إذا لم يطابق السطر بعد
+     */
+    public record StatementLine(int lineId, int statementId, LocalDate date, double amount, String reference,
+                                String description, boolean matched, MatchMethod method, List<Integer> matchedEntryIds) {
+    }
+
+    /** سطر دفتر على حساب البنك لم يطابق أي سطر كشف؛ المبلغ بإشارة البنك (مدين - دائن) */
+    public record LedgerLine(int entryId, String transactionRef, LocalDate date, double amount, String description) {
+    }
+
+    public record Summary(int lines, int matchedLines, double unmatchedStatementTotal,
+                          int unreconciledEntries, double unreconciledLedgerTotal) {
+    }
+
+    private final ImprovedDataManager dataManager;
+
+    public BankReconciliationService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    // ------------------------------------------------------------------
+    // الاستيراد
+    // ------------------------------------------------------------------
+
+    public ImportResult importStatement(int accountId, Path file) throws SQLException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importStatement(accountId, file.getFileName().toString(), reader, Format.forFile(file));
+        } catch (IOException e) {
+            throw new SQLException("تعذرت قراءة كشف البنك: " + e.getMessage(), e);
+        }
+    }
+
+    public ImportResult importStatement(int accountId, String sourceName, Reader source, Format format) throws SQLException {
+        requireBankAccount(accountId);
+        try (AppMetrics.Operation op = AppMetrics.begin("reconciliation.import")) {
+            ImportResult result = dataManager.executeTransaction(conn -> {
+                int statementId = insertStatement(conn, accountId, sourceName, format);
+                List<String> problems = new ArrayList<>();
+                LineInserter inserter = new LineInserter(conn, statementId, accountId);
+                int skipped;
+                try (inserter) {
+                    skipped = BankStatementReader.read(source, format, inserter::add, problems);
+                    inserter.flush();
+                } catch (IOException e) {
+                    throw new SQLException("تعذرت قراءة كشف البنك: " + e.getMessage(), e);
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE bank_statements SET line_count = ?, period_from = ?, period_to = ? WHERE statement_id = ?")) {
+                    stmt.setInt(1, inserter.imported);
+                    stmt.setString(2, inserter.first != null ? FormatUtils.formatDateForDatabase(inserter.first) : null);
+                    stmt.setString(3, inserter.last != null ? FormatUtils.formatDateForDatabase(inserter.last) : null);
+                    stmt.setInt(4, statementId);
+                    stmt.executeUpdate();
+                }
+                return new ImportResult(statementId, inserter.imported, inserter.duplicates, skipped, List.copyOf(problems));
+            });
+            op.succeeded("STMT-" + result.statementId());
+            return result;
+        }
+    }
+
+    private static int insertStatement(Connection conn, int accountId, String sourceName, Format format) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO bank_statements (account_id, source_name, format) VALUES (?, ?, ?)",
+                Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, sourceName);
+            stmt.setString(3, format.name());
+            stmt.executeUpdate();
+            try (ResultSet keys = stmt.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new SQLException("تعذر إنشاء كشف البنك");
+                }
+                return keys.getInt(1);
+            }
+        }
+    }
+
+    /** إدراج سطور الكشف في دفعات؛ INSERT OR IGNORE على (الحساب، المعرف الخارجي) يتخطى المكرر */
+    private static final class LineInserter implements AutoCloseable {
+        private final PreparedStatement stmt;
+        private final int statementId;
+        private final int accountId;
+        /** تكرار البصمة نفسها داخل الملف (حركتان متطابقتان فعلاً في اليوم نفسه) */
+        private final Map<String, Integer> occurrences = new HashMap<>();
+        private int pending;
+        private int imported;
+        private int duplicates;
+        private LocalDate first;
+        private LocalDate last;
+
+        LineInserter(Connection conn, int statementId, int accountId) throws SQLException {
+            this.stmt = conn.prepareStatement("""
+                INSERT OR IGNORE INTO bank_statement_lines
+                    (statement_id, account_id, line_date, amount, reference, description, external_id)
+                VALUES (?, ?, ?, ?, ?, ?, ?)
+                """);
+            this.statementId = statementId;
+            this.accountId = accountId;
+        }
+
+        void add(BankStatementReader.Transaction transaction) throws SQLException {
+            String externalId;
+            if (transaction.externalId() != null) {
+                externalId = "ID:" + transaction.externalId();
+            } else {
+                String fingerprint = transaction.date() + "|" + transaction.amount() + "|"
+                    + SearchText.normalize(transaction.reference()) + "|" + SearchText.normalize(transaction.description());
+                externalId = fingerprint + "#" + occurrences.merge(fingerprint, 1, Integer::sum);
+            }
+            stmt.setInt(1, statementId);
+            stmt.setInt(2, accountId);
+            stmt.setString(3, FormatUtils.formatDateForDatabase(transaction.date()));
+            stmt.setLong(4, transaction.amount());
+            stmt.setString(5, transaction.reference());
+            stmt.setString(6, transaction.description());
+            stmt.setString(7, externalId);
+            stmt.addBatch();
+            if (first == null || transaction.date().isBefore(first)) {
+                first = transaction.date();
+            }
+            if (last == null || transaction.date().isAfter(last)) {
+                last = transaction.date();
+            }
+            if (++pending == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() throws SQLException {
+            if (pending > 0) {
+                for (int count : stmt.executeBatch()) {
+                    if (count > 0) {
+                        imported++;
+                    } else {
+                        duplicates++;
+                    }
+                }
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            stmt.close();
+        }
+    }
+
+    private void requireBankAccount(int accountId) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT account_type FROM financial_accounts WHERE account_id = ?")) {
+            stmt.setInt(1, accountId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || !"BANK".equals(rs.getString(1))) {
+                    throw new IllegalArgumentException("الحساب " + accountId + " ليس حساب بنك");
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // المطابقة الآلية
+    // ------------------------------------------------------------------
+
+    public MatchResult autoMatch(int accountId, LocalDate from, LocalDate to) throws SQLException {
+        return autoMatch(accountId, from, to, DEFAULT_DATE_WINDOW);
+    }
+
+    /**
+     * مطابقة سطور الكشف غير المطابقة بتاريخ بين from و to مع قيود الدفتر غير المطابقة بتاريخ
+     * داخل dateWindow يوماً من السطر
+     */
+    public MatchResult autoMatch(int accountId, LocalDate from, LocalDate to, int dateWindow) throws SQLException {
+        if (dateWindow < 0 || from.isAfter(to)) {
+            throw new IllegalArgumentException("نطاق المطابقة غير صالح");
+        }
+        requireBankAccount(accountId);
+        try (AppMetrics.Operation op = AppMetrics.begin("reconciliation.match")) {
+            MatchResult result = dataManager.executeTransaction(conn -> {
+                releaseStaleMatches(conn, accountId);
+                StatementSide lines = loadLines(conn, accountId, from, to);
+                LedgerSide entries = loadEntries(conn, accountId, from.minusDays(dateWindow), to.plusDays(dateWindow));
+                Matcher matcher = new Matcher(lines, entries, dateWindow);
+                matcher.matchPairs();
+                matcher.matchGroups();
+                persist(conn, lines, entries, matcher);
+                return new MatchResult(matcher.oneToOne, matcher.grouped, lines.size - matcher.oneToOne - matcher.grouped);
+            });
+            op.succeeded();
+            return result;
+        }
+    }
+
+    /** سطور الكشف التي حُذف أحد قيودها المطابقة تعود غير مطابقة وتُحذف كل مطابقاتها */
+    private static void releaseStaleMatches(Connection conn, int accountId) throws SQLException {
+        try (PreparedStatement release = conn.prepareStatement("""
+                UPDATE bank_statement_lines SET status = 'UNMATCHED'
+                WHERE account_id = ? AND status = 'MATCHED' AND line_id IN (
+                    SELECT m.line_id FROM bank_reconciliation_matches m
+                    LEFT JOIN general_ledger g ON g.entry_id = m.entry_id
+                    WHERE g.entry_id IS NULL OR g.account_id <> ?)
+                """);
+             PreparedStatement delete = conn.prepareStatement("""
+                DELETE FROM bank_reconciliation_matches WHERE line_id IN (
+                    SELECT line_id FROM bank_statement_lines WHERE account_id = ? AND status = 'UNMATCHED')
+                """)) {
+            release.setInt(1, accountId);
+            release.setInt(2, accountId);
+            if (release.executeUpdate() > 0) {
+                delete.setInt(1, accountId);
+                delete.executeUpdate();
+            }
+        }
+    }
+
+    /** سطور الكشف غير المطابقة في مصفوفات متوازية */
+    private static final class StatementSide {
+        int size;
+        int[] ids = new int[256];
+        long[] days = new long[256];
+        long[] amounts = new long[256];
+        String[] texts = new String[256];
+        String[] references = new String[256];
+
+        void add(int id, long day, long amount, String reference, String text) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                days = Arrays.copyOf(days, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+                references = Arrays.copyOf(references, capacity);
+            }
+            ids[size] = id;
+            days[size] = day;
+            amounts[size] = amount;
+            references[size] = reference;
+            texts[size++] = text;
+        }
+    }
+
+    /** قيود الدفتر غير المطابقة مرتبة بالتاريخ، والمبلغ بإشارة البنك */
+    private static final class LedgerSide {
+        int size;
+        int[] ids = new int[256];
+        long[] days = new long[256];
+        long[] amounts = new long[256];
+        String[] texts = new String[256];
+
+        void add(int id, long day, long amount, String text) {
+            if (size == ids.length) {
+                int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                days = Arrays.copyOf(days, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                texts = Arrays.copyOf(texts, capacity);
+            }
+            ids[size] = id;
+            days[size] = day;
+            amounts[size] = amount;
+            texts[size++] = text;
+        }
+    }
+
+    private static StatementSide loadLines(Connection conn, int accountId, LocalDate from, LocalDate to) throws SQLException {
+        StatementSide lines = new StatementSide();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT line_id, line_date, amount, reference, description FROM bank_statement_lines
+                WHERE account_id = ? AND status = 'UNMATCHED' AND line_date BETWEEN ? AND ?
+                ORDER BY line_date, line_id
+                """)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(3, FormatUtils.formatDateForDatabase(to));
+            stmt.setFetchSize(BATCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String reference = SearchText.normalize(rs.getString(4));
+                    lines.add(rs.getInt(1), FormatUtils.epochDayFromDatabase(rs.getString(2)), rs.getLong(3), reference,
+                        reference + " " + SearchText.normalize(rs.getString(5)));
+                }
+            }
+        }
+        return lines;
+    }
+
+    private static LedgerSide loadEntries(Connection conn, int accountId, LocalDate from, LocalDate to) throws SQLException {
+        LedgerSide entries = new LedgerSide();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT g.entry_id, g.entry_date, g.debit - g.credit, g.transaction_ref, g.description
+                FROM general_ledger g
+                LEFT JOIN bank_reconciliation_matches m ON m.entry_id = g.entry_id
+                WHERE g.account_id = ? AND g.entry_date BETWEEN ? AND ? AND m.entry_id IS NULL
+                ORDER BY g.entry_date, g.entry_id
+                """)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(3, FormatUtils.formatDateForDatabase(to));
+            stmt.setFetchSize(BATCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    long amount = rs.getLong(3);
+                    if (amount != 0) {
+                        entries.add(rs.getInt(1), FormatUtils.epochDayFromDatabase(rs.getString(2)), amount,
+                            SearchText.normalize(rs.getString(4)) + " " + SearchText.normalize(rs.getString(5)));
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /** محرك المطابقة على المصفوفات؛ لا يلمس قاعدة البيانات */
+    private static final class Matcher {
+        private final StatementSide lines;
+        private final LedgerSide entries;
+        private final int window;
+        /** فهارس القيود لكل مبلغ، مرتبة بالتاريخ لأن القيود محملة بالترتيب */
+        private final Map<Long, int[]> buckets = new HashMap<>();
+        private final boolean[] entryUsed;
+        private final boolean[] lineMatched;
+        /** لكل سطر مطابق: فهارس قيوده، والطريقة، والدرجة */
+        final int[][] lineEntries;
+        final double[] lineScores;
+        final MatchMethod[] lineMethods;
+        private final int[][] lineGrams;
+        private final int[][] entryGrams;
+        int oneToOne;
+        int grouped;
+
+        Matcher(StatementSide lines, LedgerSide entries, int window) {
+            this.lines = lines;
+            this.entries = entries;
+            this.window = window;
+            this.entryUsed = new boolean[entries.size];
+            this.lineMatched = new boolean[lines.size];
+            this.lineEntries = new int[lines.size][];
+            this.lineScores = new double[lines.size];
+            this.lineMethods = new MatchMethod[lines.size];
+            this.lineGrams = new int[lines.size][];
+            this.entryGrams = new int[entries.size][];
+
+            Map<Long, Integer> counts = new HashMap<>();
+            for (int e = 0; e < entries.size; e++) {
+                counts.merge(entries.amounts[e], 1, Integer::sum);
+            }
+            Map<Long, Integer> filled = new HashMap<>();
+            for (int e = 0; e < entries.size; e++) {
+                long amount = entries.amounts[e];
+                int[] bucket = buckets.computeIfAbsent(amount, a -> new int[counts.get(a)]);
+                int position = filled.merge(amount, 1, Integer::sum) - 1;
+                bucket[position] = e;
+            }
+        }
+
+        /**
+         * المرحلة الأولى: كل زوج (سطر، قيد) بالمبلغ نفسه داخل النافذة مرشح؛ الأزواج تُرتب بالدرجة
+         * تنازلياً وتُقبل بالترتيب ما دام طرفاها حرين
+         */
+        void matchPairs() {
+            int pairCount = 0;
+            int[] pairLines = new int[Math.max(16, lines.size)];
+            int[] pairEntries = new int[pairLines.length];
+            double[] pairScores = new double[pairLines.length];
+            for (int l = 0; l < lines.size; l++) {
+                int[] bucket = buckets.get(lines.amounts[l]);
+                if (bucket == null) {
+                    continue;
+                }
+                long day = lines.days[l];
+                int start = lowerBound(bucket, day - window);
+                int added = 0;
+                // الأقرب تاريخاً أولاً: من موضع التاريخ نفسه نحو الطرفين
+                int right = lowerBound(bucket, day);
+                int left = right - 1;
+                while (added < MAX_PAIR_CANDIDATES) {
+                    int e;
+                    boolean takeRight = right < bucket.length && entries.days[bucket[right]] <= day + window;
+                    boolean takeLeft = left >= start;
+                    if (takeRight && takeLeft) {
+                        takeRight = entries.days[bucket[right]] - day <= day - entries.days[bucket[left]];
+                    }
+                    if (takeRight) {
+                        e = bucket[right++];
+                    } else if (takeLeft) {
+                        e = bucket[left--];
+                    } else {
+                        break;
+                    }
+                    if (pairCount == pairLines.length) {
+                        int capacity = pairCount * 2;
+                        pairLines = Arrays.copyOf(pairLines, capacity);
+                        pairEntries = Arrays.copyOf(pairEntries, capacity);
+                        pairScores = Arrays.copyOf(pairScores, capacity);
+                    }
+                    pairLines[pairCount] = l;
+                    pairEntries[pairCount] = e;
+                    pairScores[pairCount++] = score(l, e, Math.abs(entries.days[e] - day));
+                    added++;
+                }
+            }
+
+            // مفتاح الترتيب: الدرجة (معكوسة ومكممة) في البتات العليا ورقم الزوج في السفلى،
+            // فيبقى الترتيب ثابتاً عند تساوي الدرجات (الأقدم تاريخاً أولاً)
+            long[] order = new long[pairCount];
+            for (int p = 0; p < pairCount; p++) {
+                long quantized = Math.round((1.0 - pairScores[p]) * (1 << 20));
+                order[p] = quantized << 32 | p;
+            }
+            Arrays.sort(order);
+            for (long key : order) {
+                int p = (int) key;
+                int l = pairLines[p];
+                int e = pairEntries[p];
+                if (!lineMatched[l] && !entryUsed[e]) {
+                    lineMatched[l] = true;
+                    entryUsed[e] = true;
+                    lineEntries[l] = new int[] {e};
+                    lineScores[l] = pairScores[p];
+                    lineMethods[l] = MatchMethod.AUTO;
+                    oneToOne++;
+                }
+            }
+        }
+
+        /** المرحلة الثانية: عدة قيود بالإشارة نفسها وأصغر قيمة، مجموعها مبلغ السطر تماماً */
+        void matchGroups() {
+            int[] candidates = new int[MAX_GROUP_CANDIDATES];
+            long[] distances = new long[MAX_GROUP_CANDIDATES];
+            int[] chosen = new int[MAX_GROUP_SIZE];
+            for (int l = 0; l < lines.size; l++) {
+                if (lineMatched[l]) {
+                    continue;
+                }
+                long day = lines.days[l];
+                long amount = lines.amounts[l];
+                int count = 0;
+                int first = lowerBoundDay(day - window);
+                for (int e = first; e < entries.size && entries.days[e] <= day + window; e++) {
+                    long value = entries.amounts[e];
+                    if (entryUsed[e] || Long.signum(value) != Long.signum(amount) || Math.abs(value) >= Math.abs(amount)) {
+                        continue;
+                    }
+                    long distance = Math.abs(entries.days[e] - day);
+                    if (count < candidates.length) {
+                        candidates[count] = e;
+                        distances[count++] = distance;
+                    } else {
+                        int farthest = 0;
+                        for (int c = 1; c < count; c++) {
+                            if (distances[c] > distances[farthest]) {
+                                farthest = c;
+                            }
+                        }
+                        if (distance < distances[farthest]) {
+                            candidates[farthest] = e;
+                            distances[farthest] = distance;
+                        }
+                    }
+                }
+                if (count < 2) {
+                    continue;
+                }
+                int size = findSubset(candidates, count, 0, amount, chosen, 0);
+                if (size >= 2) {
+                    int[] group = Arrays.copyOf(chosen, size);
+                    for (int e : group) {
+                        entryUsed[e] = true;
+                    }
+                    lineMatched[l] = true;
+                    lineEntries[l] = group;
+                    lineMethods[l] = MatchMethod.AUTO_GROUP;
+                    double similarity = 0;
+                    long distance = 0;
+                    for (int e : group) {
+                        similarity = Math.max(similarity, similarity(l, e));
+                        distance = Math.max(distance, Math.abs(entries.days[e] - day));
+                    }
+                    lineScores[l] = combine(similarity, distance);
+                    grouped++;
+                }
+            }
+        }
+
+        /** بحث بالعمق عن مجموعة مجموعها remaining؛ يعيد حجمها أو 0 */
+        private int findSubset(int[] candidates, int count, int from, long remaining, int[] chosen, int depth) {
+            if (remaining == 0) {
+                return depth;
+            }
+            if (depth == MAX_GROUP_SIZE) {
+                return 0;
+            }
+            for (int c = from; c < count; c++) {
+                long value = entries.amounts[candidates[c]];
+                if (Math.abs(value) > Math.abs(remaining)) {
+                    continue;
+                }
+                chosen[depth] = candidates[c];
+                int size = findSubset(candidates, count, c + 1, remaining - value, chosen, depth + 1);
+                if (size > 0) {
+                    return size;
+                }
+            }
+            return 0;
+        }
+
+        private double score(int line, int entry, long distance) {
+            return combine(similarity(line, entry), distance);
+        }
+
+        private double combine(double similarity, long distance) {
+            return 0.5 * similarity + 0.5 * (1.0 - distance / (double) (window + 1));
+        }
+
+        /**
+         * تشابه المرجع والبيان: 1 إذا ظهر مرجع الكشف في القيد، وإلا معامل Dice على الثنائيات.
+         * المرجع الغائب عن القيد يُنصف التشابه، فلا يقترب شيك 1001 من قيد شيك 1002 لتشابه النص
+         */
+        private double similarity(int line, int entry) {
+            String reference = lines.references[line];
+            boolean hasReference = reference.length() >= 3;
+            if (hasReference && entries.texts[entry].contains(reference)) {
+                return 1.0;
+            }
+            if (lineGrams[line] == null) {
+                lineGrams[line] = bigrams(lines.texts[line]);
+            }
+            if (entryGrams[entry] == null) {
+                entryGrams[entry] = bigrams(entries.texts[entry]);
+            }
+            double dice = dice(lineGrams[line], entryGrams[entry]);
+            return hasReference ? dice / 2 : dice;
+        }
+
+        private int lowerBound(int[] bucket, long day) {
+            int low = 0;
+            int high = bucket.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (entries.days[bucket[mid]] < day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private int lowerBoundDay(long day) {
+            int low = 0;
+            int high = entries.size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (entries.days[mid] < day) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    /** ثنائيات الحروف (بدون المسافات) مرمزة في int ومرتبة */
+    static int[] bigrams(String text) {
+        String compact = text.replace(" ", "");
+        if (compact.length() < 2) {
+            return new int[0];
+        }
+        int[] grams = new int[compact.length() - 1];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = compact.charAt(i) << 16 | compact.charAt(i + 1);
+        }
+        Arrays.sort(grams);
+        return grams;
+    }
+
+    static double dice(int[] a, int[] b) {
+        if (a.length == 0 || b.length == 0) {
+            return 0;
+        }
+        int common = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return 2.0 * common / (a.length + b.length);
+    }
+
+    private static void persist(Connection conn, StatementSide lines, LedgerSide entries, Matcher matcher) throws SQLException {
+        try (PreparedStatement status = conn.prepareStatement("UPDATE bank_statement_lines SET status = 'MATCHED' WHERE line_id = ?");
+             PreparedStatement match = conn.prepareStatement(
+                 "INSERT INTO bank_reconciliation_matches (entry_id, line_id, method, score) VALUES (?, ?, ?, ?)")) {
+            int pending = 0;
+            for (int l = 0; l < lines.size; l++) {
+                if (matcher.lineEntries[l] == null) {
+                    continue;
+                }
+                status.setInt(1, lines.ids[l]);
+                status.addBatch();
+                for (int e : matcher.lineEntries[l]) {
+                    match.setInt(1, entries.ids[e]);
+                    match.setInt(2, lines.ids[l]);
+                    match.setString(3, matcher.lineMethods[l].name());
+                    match.setDouble(4, matcher.lineScores[l]);
+                    match.addBatch();
+                }
+                if (++pending == BATCH_SIZE) {
+                    status.executeBatch();
+                    match.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                status.executeBatch();
+                match.executeBatch();
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // المطابقة اليدوية
+    // ------------------------------------------------------------------
+
+    /**
+     * مطابقة سطر كشف مع قيد أو أكثر يدوياً. القيود يجب أن تكون على حساب السطر وغير مطابقة،
+     * ومجموعها (مدين - دائن) يساوي مبلغ السطر تماماً
+     */
+    public void match(int lineId, List<Integer> entryIds) throws SQLException {
+        if (entryIds.isEmpty()) {
+            throw new IllegalArgumentException("لم تُحدد قيود للمطابقة");
+        }
+        dataManager.executeTransaction(conn -> {
+            int accountId;
+            long amount;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT account_id, amount, status FROM bank_statement_lines WHERE line_id = ?")) {
+                stmt.setInt(1, lineId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        throw new SQLException("سطر الكشف غير موجود: " + lineId);
+                    }
+                    if ("MATCHED".equals(rs.getString(3))) {
+                        throw new SQLException("سطر الكشف مطابق بالفعل");
+                    }
+                    accountId = rs.getInt(1);
+                    amount = rs.getLong(2);
+                }
+            }
+
+            long total = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    SELECT g.account_id, g.debit - g.credit, m.line_id FROM general_ledger g
+                    LEFT JOIN bank_reconciliation_matches m ON m.entry_id = g.entry_id
+                    WHERE g.entry_id = ?
+                    """)) {
+                for (int entryId : entryIds) {
+                    stmt.setInt(1, entryId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (!rs.next() || rs.getInt(1) != accountId) {
+                            throw new SQLException("القيد " + entryId + " ليس على حساب البنك نفسه");
+                        }
+                        if (rs.getObject(3) != null) {
+                            throw new SQLException("القيد " + entryId + " مطابق بالفعل");
+                        }
+                        total += rs.getLong(2);
+                    }
+                }
+            }
+            if (total != amount) {
+                throw new SQLException("مجموع القيود " + Money.format(total)
+                    + " لا يساوي مبلغ سطر الكشف " + Money.format(amount));
+            }
+
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO bank_reconciliation_matches (entry_id, line_id, method, score) VALUES (?, ?, ?, 1)")) {
+                for (int entryId : entryIds) {
+                    stmt.setInt(1, entryId);
+                    stmt.setInt(2, lineId);
+                    stmt.setString(3, MatchMethod.MANUAL.name());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            setStatus(conn, lineId, "MATCHED");
+            return null;
+        });
+    }
+
+    /** إلغاء مطابقة سطر (آلية أو يدوية) فيعود هو وقيوده للمطابقة */
+    public void unmatch(int lineId) throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM bank_reconciliation_matches WHERE line_id = ?")) {
+                stmt.setInt(1, lineId);
+                stmt.executeUpdate();
+            }
+            setStatus(conn, lineId, "UNMATCHED");
+            return null;
+        });
+    }
+
+    private static void setStatus(Connection conn, int lineId, String status) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE bank_statement_lines SET status = ? WHERE line_id = ?")) {
+            stmt.setString(1, status);
+            stmt.setInt(2, lineId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // الاستعلامات
+    // ------------------------------------------------------------------
+
+    public List<StatementLine> getStatementLines(int accountId, LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+            SELECT l.line_id, l.statement_id, l.line_date, l.amount, l.reference, l.description, l.status,
+                   m.method, m.entry_id
+            FROM bank_statement_lines l
+            LEFT JOIN bank_reconciliation_matches m ON m.line_id = l.line_id
+            WHERE l.account_id = ? AND l.line_date BETWEEN ? AND ?
+            ORDER BY l.line_date, l.line_id, m.entry_id
+            """;
+        List<StatementLine> result = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(3, FormatUtils.formatDateForDatabase(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                int currentId = -1;
+                List<Integer> entryIds = null;
+                while (rs.next()) {
+                    int lineId = rs.getInt("line_id");
+                    if (lineId != currentId) {
+                        currentId = lineId;
+                        entryIds = new ArrayList<>();
+                        String method = rs.getString("method");
+                        result.add(new StatementLine(lineId, rs.getInt("statement_id"),
+                            FormatUtils.parseDateFromDatabase(rs.getString("line_date")),
+                            Money.toMajor(rs.getLong("amount")), rs.getString("reference"), rs.getString("description"),
+                            "MATCHED".equals(rs.getString("status")), method != null ? MatchMethod.valueOf(method) : null,
+                            entryIds));
+                    }
+                    int entryId = rs.getInt("entry_id");
+                    if (!rs.wasNull()) {
+                        entryIds.add(entryId);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** قيود حساب البنك في الفترة التي لا يقابلها سطر كشف (شيكات معلقة، إيداعات في الطريق) */
+    public List<LedgerLine> getUnreconciledEntries(int accountId, LocalDate from, LocalDate to) throws SQLException {
+        String sql = """
+            SELECT g.entry_id, g.transaction_ref, g.entry_date, g.debit - g.credit AS amount, g.description
+            FROM general_ledger g
+            LEFT JOIN bank_reconciliation_matches m ON m.entry_id = g.entry_id
+            WHERE g.account_id = ? AND g.entry_date BETWEEN ? AND ? AND m.entry_id IS NULL
+            ORDER BY g.entry_date, g.entry_id
+            """;
+        List<LedgerLine> result = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(3, FormatUtils.formatDateForDatabase(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(new LedgerLine(rs.getInt("entry_id"), rs.getString("transaction_ref"),
+                        FormatUtils.parseDateFromDatabase(rs.getString("entry_date")),
+                        Money.toMajor(rs.getLong("amount")), rs.getString("description")));
+                }
+            }
+        }
+        return result;
+    }
+
+    public Summary getSummary(int accountId, LocalDate from, LocalDate to) throws SQLException {
+        String linesSql = """
+            SELECT COUNT(*), COALESCE(SUM(status = 'MATCHED'), 0),
+                   COALESCE(SUM(CASE WHEN status = 'UNMATCHED' THEN amount ELSE 0 END), 0)
+            FROM bank_statement_lines WHERE account_id = ? AND line_date BETWEEN ? AND ?
+            """;
+        String entriesSql = """
+            SELECT COUNT(*), COALESCE(SUM(g.debit - g.credit), 0)
+            FROM general_ledger g
+            LEFT JOIN bank_reconciliation_matches m ON m.entry_id = g.entry_id
+            WHERE g.account_id = ? AND g.entry_date BETWEEN ? AND ? AND m.entry_id IS NULL
+            """;
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement lines = conn.prepareStatement(linesSql);
+             PreparedStatement entries = conn.prepareStatement(entriesSql)) {
+            for (PreparedStatement stmt : List.of(lines, entries)) {
+                stmt.setInt(1, accountId);
+                stmt.setString(2, FormatUtils.formatDateForDatabase(from));
+                stmt.setString(3, FormatUtils.formatDateForDatabase(to));
+            }
+            try (ResultSet l = lines.executeQuery(); ResultSet e = entries.executeQuery()) {
+                l.next();
+                e.next();
+                return new Summary(l.getInt(1), l.getInt(2), Money.toMajor(l.getLong(3)), e.getInt(1),
+                    Money.toMajor(e.getLong(2)));
+            }
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.Money;
+import accounting.util.SearchText;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * قراءة كشوف البنك سطراً بسطر دون تحميل الملف في الذاكرة؛ كل حركة تُسلم للمستقبل فور قراءتها
+ * (راجع BankReconciliationService.importStatement).
+ *
+ * CSV: السطر الأول رأس الأعمدة، والأعمدة تُعرف بأسمائها العربية أو الإنجليزية الشائعة (التاريخ،
+ * المبلغ أو مدين/دائن، المرجع، البيان)، والفاصل فاصلة أو فاصلة منقوطة أو Tab حسب الرأس.
+ * المبلغ بإشارة البنك: الإيداع موجب والسحب سالب؛ عمود المدين في كشف البنك سحب.
+ *
+ * OFX: كل STMTTRN حركة (DTPOSTED، TRNAMT، FITID، NAME، MEMO، CHECKNUM/REFNUM)، بصيغة SGML
+ * (بلا وسوم إغلاق للحقول) أو XML، وأكثر من وسم في السطر الواحد.
+ *
+ * السطر الذي لا يُقرأ تاريخه أو مبلغه يُتخطى ويُسجل في problems، ولا يوقف بقية الكشف.
+ */
+public final class BankStatementReader {
+
+    public enum Format {
+        CSV,
+        OFX;
+
+        /** الصيغة من امتداد الملف؛ غير OFX/QFX يُقرأ CSV */
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            return name.endsWith(".ofx") || name.endsWith(".qfx") ? OFX : CSV;
+        }
+    }
+
+    /**
+     * حركة مقروءة من الكشف
+     *
+     * @param amount بالقروش، الإيداع موجب
+     * @param externalId معرف الحركة في الكشف (FITID)، أو null إذا لم يحمله الكشف
+     */
+    public record Transaction(LocalDate date, long amount, String reference, String description, String externalId) {
+    }
+
+    /** مستقبل الحركات؛ عادةً إدراج في دفعة SQL */
+    @FunctionalInterface
+    public interface Sink {
+        void accept(Transaction transaction) throws SQLException;
+    }
+
+    /** أقصى عدد من المشكلات المحفوظة؛ البقية تُعد فقط */
+    private static final int MAX_PROBLEMS = 50;
+
+    private static final Set<String> DATE_HEADERS = headers("date", "posting date", "transaction date", "value date",
+        "التاريخ", "تاريخ العملية", "تاريخ القيد", "تاريخ الحركة");
+    private static final Set<String> AMOUNT_HEADERS = headers("amount", "المبلغ", "القيمة");
+    private static final Set<String> DEBIT_HEADERS = headers("debit", "withdrawal", "withdrawals", "مدين", "سحب", "مسحوبات");
+    private static final Set<String> CREDIT_HEADERS = headers("credit", "deposit", "deposits", "دائن", "ايداع", "إيداعات");
+    private static final Set<String> REFERENCE_HEADERS = headers("reference", "ref", "cheque", "check", "المرجع",
+        "رقم المرجع", "رقم الشيك");
+    private static final Set<String> DESCRIPTION_HEADERS = headers("description", "details", "memo", "narrative",
+        "البيان", "الوصف", "التفاصيل");
+
+    private static final DateTimeFormatter[] DATE_FORMATS = {
+        DateTimeFormatter.ofPattern("d/M/uuuu"),
+        DateTimeFormatter.ofPattern("d-M-uuuu"),
+        DateTimeFormatter.ofPattern("d.M.uuuu"),
+        DateTimeFormatter.ofPattern("uuuu/M/d")
+    };
+
+    private static final Pattern OFX_TAG = Pattern.compile("<(/?)([A-Za-z0-9.]+)>([^<]*)");
+
+    private BankStatementReader() {
+    }
+
+    /**
+     * @param problems تُضاف إليها أسباب تخطي السطور (حتى MAX_PROBLEMS)
+     * @return عدد السطور المتخطاة
+     * @throws IOException إذا تعذرت القراءة أو لم يكن للكشف رأس صالح
+     */
+    public static int read(Reader source, Format format, Sink sink, List<String> problems) throws IOException, SQLException {
+        BufferedReader reader = source instanceof BufferedReader buffered ? buffered : new BufferedReader(source);
+        return format == Format.OFX ? readOfx(reader, sink, problems) : readCsv(reader, sink, problems);
+    }
+
+    // ------------------------------------------------------------------
+    // CSV
+    // ------------------------------------------------------------------
+
+    private static int readCsv(BufferedReader reader, Sink sink, List<String> problems) throws IOException, SQLException {
+        String header = reader.readLine();
+        int lineNumber = 1;
+        while (header != null && header.isBlank()) {
+            header = reader.readLine();
+            lineNumber++;
+        }
+        if (header == null) {
+            throw new IOException("الكشف فارغ");
+        }
+        if (header.startsWith("\uFEFF")) {
+            header = header.substring(1);
+        }
+        char delimiter = delimiter(header);
+        List<String> columns = split(header, delimiter);
+        int date = column(columns, DATE_HEADERS);
+        int amount = column(columns, AMOUNT_HEADERS);
+        int debit = column(columns, DEBIT_HEADERS);
+        int credit = column(columns, CREDIT_HEADERS);
+        int reference = column(columns, REFERENCE_HEADERS);
+        int description = column(columns, DESCRIPTION_HEADERS);
+        if (date < 0 || (amount < 0 && debit < 0 && credit < 0)) {
+            throw new IOException("رأس الكشف لا يحوي عمود التاريخ والمبلغ: " + header);
+        }
+
+        int skipped = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            List<String> fields = split(line, delimiter);
+            try {
+                LocalDate day = parseDate(field(fields, date));
+                long value = amount >= 0
+                    ? parseAmount(field(fields, amount))
+                    : parseAmountOrZero(field(fields, credit)) - parseAmountOrZero(field(fields, debit));
+                sink.accept(new Transaction(day, value, trimToNull(field(fields, reference)),
+                    trimToNull(field(fields, description)), null));
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                skipped++;
+                problem(problems, lineNumber, e.getMessage());
+            }
+        }
+        return skipped;
+    }
+
+    private static char delimiter(String header) {
+        char best = ',';
+        long bestCount = header.chars().filter(c -> c == ',').count();
+        for (char candidate : new char[] {';', '\t'}) {
+            long count = header.chars().filter(c -> c == candidate).count();
+            if (count > bestCount) {
+                best = candidate;
+                bestCount = count;
+            }
+        }
+        return best;
+    }
+
+    /** تقسيم سطر CSV مع الحقول بين علامتي تنصيص ("" داخلها علامة واحدة) */
+    static List<String> split(String line, char delimiter) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static Set<String> headers(String... names) {
+        return Set.of(Arrays.stream(names).map(SearchText::normalize).distinct().toArray(String[]::new));
+    }
+
+    private static int column(List<String> columns, Set<String> names) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (names.contains(SearchText.normalize(columns.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index >= 0 && index < fields.size() ? fields.get(index).trim() : "";
+    }
+
+    // ------------------------------------------------------------------
+    // OFX
+    // ------------------------------------------------------------------
+
+    private static int readOfx(BufferedReader reader, Sink sink, List<String> problems) throws IOException, SQLException {
+        int skipped = 0;
+        int lineNumber = 0;
+        Map<String, String> fields = null;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            Matcher tag = OFX_TAG.matcher(line);
+            while (tag.find()) {
+                boolean closing = !tag.group(1).isEmpty();
+                String name = tag.group(2).toUpperCase(Locale.ROOT);
+                if (name.equals("STMTTRN")) {
+                    if (!closing) {
+                        fields = new HashMap<>();
+                    } else if (fields != null) {
+                        try {
+                            sink.accept(ofxTransaction(fields));
+                        } catch (IllegalArgumentException | DateTimeParseException e) {
+                            skipped++;
+                            problem(problems, lineNumber, e.getMessage());
+                        }
+                        fields = null;
+                    }
+                } else if (fields != null && !closing) {
+                    String value = tag.group(3).trim();
+                    if (!value.isEmpty()) {
+                        fields.put(name, unescape(value));
+                    }
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private static Transaction ofxTransaction(Map<String, String> fields) {
+        String posted = fields.getOrDefault("DTPOSTED", "");
+        if (posted.length() < 8) {
+            throw new IllegalArgumentException("تاريخ OFX غير صالح: " + posted);
+        }
+        LocalDate date = LocalDate.of(Integer.parseInt(posted.substring(0, 4)), Integer.parseInt(posted.substring(4, 6)),
+            Integer.parseInt(posted.substring(6, 8)));
+        String reference = fields.getOrDefault("CHECKNUM", fields.get("REFNUM"));
+        String name = fields.get("NAME");
+        String memo = fields.get("MEMO");
+        String description = name == null ? memo : memo == null ? name : name + " " + memo;
+        return new Transaction(date, parseAmount(fields.getOrDefault("TRNAMT", "")), reference, description,
+            fields.get("FITID"));
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&amp;", "&");
+    }
+
+    // ------------------------------------------------------------------
+    // القيم
+    // ------------------------------------------------------------------
+
+    static LocalDate parseDate(String text) {
+        if (text.isEmpty()) {
+            throw new IllegalArgumentException("التاريخ فارغ");
+        }
+        String value = text.length() > 10 && text.charAt(4) == '-' ? text.substring(0, 10) : text;
+        if (value.length() == 10 && value.charAt(4) == '-') {
+            return FormatUtils.parseDateFromDatabase(value);
+        }
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value, format);
+            } catch (DateTimeParseException e) {
+                // الصيغة التالية
+            }
+        }
+        throw new IllegalArgumentException("تاريخ غير مفهوم: " + text);
+    }
+
+    /**
+     * مبلغ الكشف بالقروش: يقبل الأرقام العربية الهندية، وفواصل الآلاف، والفاصلة العشرية،
+     * والأقواس أو الشرطة للسالب، ورمز العملة
+     */
+    static long parseAmount(String text) {
+        StringBuilder digits = new StringBuilder(text.length());
+        boolean negative = false;
+        int lastComma = -1;
+        int lastDot = -1;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '٠' && c <= '٩') {
+                c = (char) ('0' + (c - '٠'));
+            } else if (c == '٫') {
+                c = '.'; // الفاصلة العشرية العربية
+            } else if (c == '٬') {
+                continue; // فاصل الآلاف العربي
+            }
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c == '.') {
+                lastDot = digits.length();
+                digits.append(c);
+            } else if (c == ',') {
+                lastComma = digits.length();
+                digits.append(c);
+            } else if (c == '-' || c == '(' || c == '−') {
+                negative = true;
+            }
+        }
+        String number = digits.toString();
+        if (lastComma >= 0 && lastDot < 0 && number.length() - lastComma - 1 == 2 && number.indexOf(',') == lastComma) {
+            number = number.replace(',', '.'); // 1234,50
+        } else {
+            number = number.replace(",", "");
+        }
+        if (number.isEmpty() || number.equals(".")) {
+            throw new IllegalArgumentException("مبلغ غير مفهوم: " + text);
+        }
+        long minor = Money.toMinor(Double.parseDouble(number));
+        return negative ? -minor : minor;
+    }
+
+    private static long parseAmountOrZero(String text) {
+        return text.isEmpty() ? 0 : Math.abs(parseAmount(text));
+    }
+
+    private static String trimToNull(String text) {
+        return text == null || text.isBlank() ? null : text.trim();
+    }
+
+    private static void problem(List<String> problems, int lineNumber, String message) {
+        if (problems.size() < MAX_PROBLEMS) {
+            problems.add("سطر " + lineNumber + ": " + message);
+        }
+    }
+}
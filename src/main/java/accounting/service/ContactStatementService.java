@@ -0,0 +1,527 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * محرك كشوف حسابات العملاء والموردين
+ *
+ * كل حركة تمس رصيد جهة تعامل (فاتورة، دفعة، مرتجع، سند قبض أو صرف) تُسجل داخل
+ * معاملة الترحيل نفسها في جدول contact_ledger بمبلغ موقّع: الموجب يزيد ما على
+ * الجهة لنا (مدين)، والسالب يزيد ما لها علينا (دائن).
+ *
+ * الكشف يُنتج بمسح واحد مرتب على الفهرس (contact_id, entry_date, line_id):
+ * الحركات السابقة لبداية الفترة تُجمع في رصيد أول المدة دون إخراجها، وحركات
+ * الفترة تُمرر مباشرة إلى المستمع مع الرصيد الجاري، ويُحسب تقادم الرصيد
+ * (0-30 / 31-60 / 61-90 / أكثر من 90 يوماً) بطريقة الوارد أولاً يُسدد أولاً
+ * في نفس المسح.
+ */
+public class ContactStatementService {
+
+    public static final String ENTRY_SALE = "SALE";
+    public static final String ENTRY_SALE_PAYMENT = "SALE_PAYMENT";
+    public static final String ENTRY_SALE_RETURN = "SALE_RETURN";
+    public static final String ENTRY_PURCHASE = "PURCHASE";
+    public static final String ENTRY_PURCHASE_PAYMENT = "PURCHASE_PAYMENT";
+    public static final String ENTRY_PURCHASE_RETURN = "PURCHASE_RETURN";
+    public static final String ENTRY_RECEIVE = "RECEIVE";
+    public static final String ENTRY_PAY = "PAY";
+
+    private static final double EPSILON = 0.005;
+
+    private static final String STATEMENT_COLUMNS = """
+        SELECT cl.line_id, cl.contact_id, cl.entry_date, cl.entry_type, cl.source_type, cl.source_id,
+               cl.reference, cr.crop_name, cl.quantity_kg, cl.unit, cl.unit_price, cl.description, cl.amount,
+               CASE cl.entry_type WHEN 'SALE' THEN s.amount_paid WHEN 'PURCHASE' THEN p.amount_paid END AS document_paid
+        FROM contact_ledger cl
+        LEFT JOIN crops cr ON cr.crop_id = cl.crop_id
+        LEFT JOIN sales s ON cl.entry_type = 'SALE' AND s.sale_id = cl.source_id
+        LEFT JOIN purchases p ON cl.entry_type = 'PURCHASE' AND p.purchase_id = cl.source_id
+        """;
+
+    private final ImprovedDataManager dataManager;
+
+    public ContactStatementService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    // ------------------------------------------------------------------
+    // تسجيل الحركات أثناء الترحيل (تستخدم اتصال المعاملة الحالية)
+    // ------------------------------------------------------------------
+
+    /**
+     * تسجيل حركة مستند يحمل صنفاً (فاتورة أو مرتجع) على حساب جهة التعامل
+     */
+    public void recordDocument(Connection conn, int contactId, LocalDate date, String entryType,
+                               String sourceType, int sourceId, String reference, int cropId,
+                               double quantityKg, String unit, Double unitPrice, String description,
+                               double amount) throws SQLException {
+        insertLine(conn, contactId, date, entryType, sourceType, sourceId, reference, cropId,
+            quantityKg, unit, unitPrice, description, amount);
+    }
+
+    /**
+     * تسجيل حركة نقدية (دفعة مع الفاتورة أو سند قبض/صرف) على حساب جهة التعامل
+     */
+    public void recordSettlement(Connection conn, int contactId, LocalDate date, String entryType,
+                                 String sourceType, int sourceId, String reference, String description,
+                                 double amount) throws SQLException {
+        insertLine(conn, contactId, date, entryType, sourceType, sourceId, reference, null,
+            null, null, null, description, amount);
+    }
+
+    /**
+     * حذف كل حركات مستند عند حذفه أو تعديله
+     */
+    public void removeSource(Connection conn, String sourceType, int sourceId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM contact_ledger WHERE source_type = ? AND source_id = ?")) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * جهة التعامل المرتبطة بفاتورة بيع، تُستخدم لترحيل المرتجعات
+     */
+    public int findSaleCustomerId(Connection conn, int saleId) throws SQLException {
+        return findContactId(conn, "SELECT customer_id FROM sales WHERE sale_id = ?", saleId);
+    }
+
+    /**
+     * جهة التعامل المرتبطة بفاتورة شراء، تُستخدم لترحيل المرتجعات
+     */
+    public int findPurchaseSupplierId(Connection conn, int purchaseId) throws SQLException {
+        return findContactId(conn, "SELECT supplier_id FROM purchases WHERE purchase_id = ?", purchaseId);
+    }
+
+    private int findContactId(Connection conn, String sql, int documentId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, documentId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        throw new SQLException("Document with ID " + documentId + " not found.");
+    }
+
+    private void insertLine(Connection conn, int contactId, LocalDate date, String entryType, String sourceType,
+                            int sourceId, String reference, Integer cropId, Double quantityKg, String unit,
+                            Double unitPrice, String description, double amount) throws SQLException {
+        String sql = """
+            INSERT INTO contact_ledger (contact_id, entry_date, entry_type, source_type, source_id, reference,
+                                        crop_id, quantity_kg, unit, unit_price, description, amount)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(date));
+            stmt.setString(3, entryType);
+            stmt.setString(4, sourceType);
+            stmt.setInt(5, sourceId);
+            stmt.setString(6, reference);
+            stmt.setObject(7, cropId);
+            stmt.setObject(8, quantityKg);
+            stmt.setString(9, unit);
+            stmt.setObject(10, unitPrice);
+            stmt.setString(11, description);
+            stmt.setDouble(12, amount);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // إنتاج الكشوف
+    // ------------------------------------------------------------------
+
+    /**
+     * بث كشف حساب جهة تعامل واحدة إلى المستمع وإرجاع ملخصه
+     */
+    public StatementSummary streamStatement(int contactId, LocalDate fromDate, LocalDate toDate,
+                                            StatementListener listener) throws SQLException {
+        String sql = STATEMENT_COLUMNS + """
+            WHERE cl.contact_id = ? AND cl.entry_date <= ?
+            ORDER BY cl.entry_date, cl.line_id
+            """;
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(toDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                StatementCursor cursor = new StatementCursor(contactId, fromDate, toDate, listener);
+                while (rs.next()) {
+                    cursor.accept(rs);
+                }
+                return cursor.finish();
+            }
+        }
+    }
+
+    /**
+     * بث كشوف كل جهات التعامل التي لها حركات حتى نهاية الفترة في مسح واحد،
+     * مرتبة حسب الجهة. الجهات التي لا حركات لها لا تُرسل إلى المستمع.
+     */
+    public void streamAllStatements(LocalDate fromDate, LocalDate toDate, StatementListener listener) throws SQLException {
+        String sql = STATEMENT_COLUMNS + """
+            WHERE cl.entry_date <= ?
+            ORDER BY cl.contact_id, cl.entry_date, cl.line_id
+            """;
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(toDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                StatementCursor cursor = null;
+                while (rs.next()) {
+                    int contactId = rs.getInt("contact_id");
+                    if (cursor == null || cursor.contactId != contactId) {
+                        if (cursor != null) {
+                            cursor.finish();
+                        }
+                        cursor = new StatementCursor(contactId, fromDate, toDate, listener);
+                    }
+                    cursor.accept(rs);
+                }
+                if (cursor != null) {
+                    cursor.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * عدد جهات التعامل التي لها حركات حتى تاريخ معين (لتقدير حجم الدفعات)
+     */
+    public int countContactsWithMovements(LocalDate toDate) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                 "SELECT COUNT(DISTINCT contact_id) FROM contact_ledger WHERE entry_date <= ?")) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(toDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * كشف حساب كامل في قائمة، للشاشات التي تعرض الكشف دفعة واحدة
+     */
+    public List<StatementLine> getStatementLines(int contactId, LocalDate fromDate, LocalDate toDate) throws SQLException {
+        List<StatementLine> lines = new ArrayList<>();
+        streamStatement(contactId, fromDate, toDate, lines::add);
+        return lines;
+    }
+
+    /**
+     * تقادم رصيد جهة التعامل في تاريخ معين
+     */
+    public AgingBuckets getAging(int contactId, LocalDate asOfDate) throws SQLException {
+        String sql = """
+            SELECT entry_date, amount FROM contact_ledger
+            WHERE contact_id = ? AND entry_date <= ?
+            ORDER BY entry_date, line_id
+            """;
+        AgingTracker tracker = new AgingTracker();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(asOfDate));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    tracker.add(FormatUtils.epochDayFromDatabase(rs.getString("entry_date")), rs.getDouble("amount"));
+                }
+            }
+        }
+        return tracker.bucketsAsOf(asOfDate);
+    }
+
+    /**
+     * حالة المسح لجهة تعامل واحدة: رصيد أول المدة، الرصيد الجاري والتقادم
+     */
+    private static final class StatementCursor {
+        private final int contactId;
+        private final LocalDate fromDate;
+        private final LocalDate toDate;
+        private final StatementListener listener;
+        private final AgingTracker aging = new AgingTracker();
+        private double openingBalance;
+        private double balance;
+        private double totalDebit;
+        private double totalCredit;
+        private int lineCount;
+        private boolean started;
+
+        StatementCursor(int contactId, LocalDate fromDate, LocalDate toDate, StatementListener listener) {
+            this.contactId = contactId;
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.listener = listener;
+        }
+
+        void accept(ResultSet rs) throws SQLException {
+            LocalDate date = FormatUtils.parseDateFromDatabase(rs.getString("entry_date"));
+            double amount = rs.getDouble("amount");
+            balance += amount;
+            aging.add(date.toEpochDay(), amount);
+
+            if (fromDate != null && date.isBefore(fromDate)) {
+                openingBalance = balance;
+                return;
+            }
+            start();
+            if (amount >= 0) {
+                totalDebit += amount;
+            } else {
+                totalCredit -= amount;
+            }
+            lineCount++;
+            listener.onLine(new StatementLine(
+                contactId,
+                date,
+                rs.getString("entry_type"),
+                rs.getString("source_type"),
+                rs.getInt("source_id"),
+                rs.getString("reference"),
+                rs.getString("crop_name"),
+                getNullableDouble(rs, "quantity_kg"),
+                rs.getString("unit"),
+                getNullableDouble(rs, "unit_price"),
+                getNullableDouble(rs, "document_paid"),
+                rs.getString("description"),
+                amount,
+                balance
+            ));
+        }
+
+        StatementSummary finish() {
+            start();
+            StatementSummary summary = new StatementSummary(contactId, openingBalance, balance, totalDebit,
+                totalCredit, lineCount, aging.bucketsAsOf(toDate));
+            listener.onStatementEnd(summary);
+            return summary;
+        }
+
+        private void start() {
+            if (!started) {
+                started = true;
+                listener.onStatementStart(contactId, openingBalance);
+            }
+        }
+
+        private static Double getNullableDouble(ResultSet rs, String column) throws SQLException {
+            double value = rs.getDouble(column);
+            return rs.wasNull() ? null : value;
+        }
+    }
+
+    /**
+     * تتبع البنود المفتوحة بطريقة الوارد أولاً يُسدد أولاً: البنود المفتوحة دائماً
+     * بنفس الإشارة، وكل حركة بالإشارة المعاكسة تُسدد أقدمها أولاً.
+     */
+    private static final class AgingTracker {
+        private final ArrayDeque<OpenItem> openItems = new ArrayDeque<>();
+
+        void add(long epochDay, double amount) {
+            double remaining = amount;
+            while (Math.abs(remaining) > EPSILON && !openItems.isEmpty()
+                    && Math.signum(openItems.peekFirst().amount) != Math.signum(remaining)) {
+                OpenItem oldest = openItems.peekFirst();
+                if (Math.abs(oldest.amount) <= Math.abs(remaining)) {
+                    remaining += oldest.amount;
+                    openItems.pollFirst();
+                } else {
+                    oldest.amount += remaining;
+                    remaining = 0;
+                }
+            }
+            if (Math.abs(remaining) > EPSILON) {
+                openItems.addLast(new OpenItem(epochDay, remaining));
+            }
+        }
+
+        AgingBuckets bucketsAsOf(LocalDate asOfDate) {
+            double current = 0;
+            double days31To60 = 0;
+            double days61To90 = 0;
+            double over90 = 0;
+            for (OpenItem item : openItems) {
+                long age = asOfDate == null ? 0 : asOfDate.toEpochDay() - item.epochDay;
+                if (age <= 30) {
+                    current += item.amount;
+                } else if (age <= 60) {
+                    days31To60 += item.amount;
+                } else if (age <= 90) {
+                    days61To90 += item.amount;
+                } else {
+                    over90 += item.amount;
+                }
+            }
+            return new AgingBuckets(current, days31To60, days61To90, over90);
+        }
+    }
+
+    private static final class OpenItem {
+        private final long epochDay;
+        private double amount;
+
+        OpenItem(long epochDay, double amount) {
+            this.epochDay = epochDay;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * مستمع يستقبل سطور الكشف أثناء المسح دون تجميعها في الذاكرة
+     */
+    @FunctionalInterface
+    public interface StatementListener {
+        void onLine(StatementLine line);
+
+        default void onStatementStart(int contactId, double openingBalance) {
+        }
+
+        default void onStatementEnd(StatementSummary summary) {
+        }
+    }
+
+    /**
+     * سطر في كشف الحساب
+     */
+    public static class StatementLine {
+        private final int contactId;
+        private final LocalDate date;
+        private final String entryType;
+        private final String sourceType;
+        private final int sourceId;
+        private final String reference;
+        private final String itemName;
+        private final Double quantityKg;
+        private final String unit;
+        private final Double unitPrice;
+        private final Double documentPaidAmount;
+        private final String description;
+        private final double amount;
+        private final double runningBalance;
+
+        public StatementLine(int contactId, LocalDate date, String entryType, String sourceType, int sourceId,
+                             String reference, String itemName, Double quantityKg, String unit, Double unitPrice,
+                             Double documentPaidAmount, String description, double amount, double runningBalance) {
+            this.contactId = contactId;
+            this.date = date;
+            this.entryType = entryType;
+            this.sourceType = sourceType;
+            this.sourceId = sourceId;
+            this.reference = reference;
+            this.itemName = itemName;
+            this.quantityKg = quantityKg;
+            this.unit = unit;
+            this.unitPrice = unitPrice;
+            this.documentPaidAmount = documentPaidAmount;
+            this.description = description;
+            this.amount = amount;
+            this.runningBalance = runningBalance;
+        }
+
+        public int getContactId() { return contactId; }
+        public LocalDate getDate() { return date; }
+        public String getEntryType() { return entryType; }
+        public String getSourceType() { return sourceType; }
+        public int getSourceId() { return sourceId; }
+        public String getReference() { return reference; }
+        public String getItemName() { return itemName; }
+        public Double getQuantityKg() { return quantityKg; }
+        public String getUnit() { return unit; }
+        public Double getUnitPrice() { return unitPrice; }
+        /** المبلغ المسدد مع الفاتورة نفسها (لسطور الفواتير فقط) */
+        public Double getDocumentPaidAmount() { return documentPaidAmount; }
+        public String getDescription() { return description; }
+        /** المبلغ الموقّع: موجب = مدين على الجهة، سالب = دائن لها */
+        public double getAmount() { return amount; }
+        public double getDebit() { return amount > 0 ? amount : 0; }
+        public double getCredit() { return amount < 0 ? -amount : 0; }
+        public double getRunningBalance() { return runningBalance; }
+        public boolean isDebit() { return amount > 0; }
+
+        /** وصف الحركة كما يظهر في كشف الحساب */
+        public String getReason() {
+            switch (entryType) {
+                case ENTRY_SALE: return "صادر له بضاعة";
+                case ENTRY_SALE_PAYMENT:
+                case ENTRY_RECEIVE: return "واصل منه نقدية";
+                case ENTRY_SALE_RETURN: return "مرتجع منه بضاعة";
+                case ENTRY_PURCHASE: return "وارد منه بضاعة";
+                case ENTRY_PURCHASE_PAYMENT:
+                case ENTRY_PAY: return "مدفوع له نقدية";
+                case ENTRY_PURCHASE_RETURN: return "مرتجع له بضاعة";
+                default: return entryType;
+            }
+        }
+    }
+
+    /**
+     * ملخص كشف حساب جهة تعامل
+     */
+    public static class StatementSummary {
+        private final int contactId;
+        private final double openingBalance;
+        private final double closingBalance;
+        private final double totalDebit;
+        private final double totalCredit;
+        private final int lineCount;
+        private final AgingBuckets aging;
+
+        public StatementSummary(int contactId, double openingBalance, double closingBalance, double totalDebit,
+                                double totalCredit, int lineCount, AgingBuckets aging) {
+            this.contactId = contactId;
+            this.openingBalance = openingBalance;
+            this.closingBalance = closingBalance;
+            this.totalDebit = totalDebit;
+            this.totalCredit = totalCredit;
+            this.lineCount = lineCount;
+            this.aging = aging;
+        }
+
+        public int getContactId() { return contactId; }
+        public double getOpeningBalance() { return openingBalance; }
+        public double getClosingBalance() { return closingBalance; }
+        public double getTotalDebit() { return totalDebit; }
+        public double getTotalCredit() { return totalCredit; }
+        public int getLineCount() { return lineCount; }
+        public AgingBuckets getAging() { return aging; }
+    }
+
+    /**
+     * أعمار الرصيد المفتوح. القيم موقّعة بنفس إشارة الرصيد.
+     */
+    public static class AgingBuckets {
+        private final double current;
+        private final double days31To60;
+        private final double days61To90;
+        private final double over90;
+
+        public AgingBuckets(double current, double days31To60, double days61To90, double over90) {
+            this.current = current;
+            this.days31To60 = days31To60;
+            this.days61To90 = days61To90;
+            this.over90 = over90;
+        }
+
+        /** من 0 إلى 30 يوماً */
+        public double getCurrent() { return current; }
+        public double getDays31To60() { return days31To60; }
+        public double getDays61To90() { return days61To90; }
+        public double getOver90() { return over90; }
+        public double getTotal() { return current + days31To60 + days61To90 + over90; }
+    }
+}
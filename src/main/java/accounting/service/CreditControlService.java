@@ -0,0 +1,609 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * مراقبة حد الائتمان للعملاء عند ترحيل المبيعات الآجلة.
+ *
+ * التعرض (exposure) لكل عميل هو صافي ذممه المفتوحة في contact_open_balances (فواتير مفتوحة
+ * ناقص أرصدة دائنة غير مخصصة)، محفوظاً بالقروش مع الحد والسياسة في ConcurrentHashMap. فحص
+ * البيع قراءة واحدة من الخريطة بلا استعلام.
+ *
+ * الفحص والحجز خطوة واحدة: البيع المقبول يحجز مبلغه على سطر العميل داخل
+ * ConcurrentHashMap.compute، فلا يمر بيعان متزامنان كل منهما تحت الحد ومجموعهما فوقه. الحجز
+ * يُفك عند انتهاء المعاملة؛ عند الاعتماد مع قراءة الرصيد المعتمد الذي صار يشمله، وعند الإلغاء وحده.
+ *
+ * الخريطة تعكس المعتمد فقط: كل تغيير في البنود المفتوحة (بيع، تحصيل، مرتجع، تعديل، حذف)
+ * يمر على OpenItemService الذي يبلغ هنا بفرق التعرض. الفرق يُحفظ للمعاملة الجارية (فيراه
+ * فحص بيع تالٍ في نفس الدفعة أو بعد حذف الفاتورة القديمة عند التعديل)، وبعد الاعتماد يُقرأ
+ * رصيد العميل المعتمد من جديد ويُكتب في الخريطة؛ الإلغاء يهمله. القراءة والكتابة تحت قفل
+ * واحد مع التحميل الكامل، فلا تكتب قراءة أقدم فوق أحدث. الخريطة تُبنى من دفتر البنود
+ * المفتوحة عند أول استخدام (warmUp عند التشغيل)، واستبدال مدير قاعدة البيانات يسقطها.
+ *
+ * السياسة لكل عميل (contacts.credit_policy) أو الافتراضية: BLOCK يرفض البيع الذي يتجاوز
+ * الحد إلا داخل override صريح بسبب، وWARN يسمح ويسجل. كل تجاوز يُسجل في credit_decisions
+ * (المرفوض بعد إلغاء معاملته حتى لا يضيع معها) ويُبلغ للمستمعين. حد صفر يعني بلا حد.
+ */
+public class CreditControlService {
+
+    private static final Logger LOGGER = Logger.getLogger(CreditControlService.class.getName());
+
+    /**
+     * ما يحدث عند تجاوز الحد
+     */
+    public enum Policy {
+        BLOCK,
+        WARN
+    }
+
+    /**
+     * نتيجة فحص تجاوز الحد
+     */
+    public enum Outcome {
+        WARNED,
+        BLOCKED,
+        OVERRIDDEN
+    }
+
+    private static final String LINE_SQL = """
+        SELECT c.contact_id, c.credit_limit, c.credit_policy,
+               COALESCE(b.open_invoices - b.unapplied_credits, 0) AS exposure
+        FROM contacts c
+        LEFT JOIN contact_open_balances b ON b.contact_id = c.contact_id AND b.side = 'AR'
+        """;
+
+    private static final Object LOCK = new Object();
+    private static final ThreadLocal<Pending> PENDING = new ThreadLocal<>();
+    private static final ThreadLocal<CreditOverride> OVERRIDE = new ThreadLocal<>();
+    private static final List<Consumer<CreditDecision>> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private static volatile Policy defaultPolicy = Policy.BLOCK;
+    private static volatile Lines current;
+
+    private final ImprovedDataManager dataManager;
+
+    public CreditControlService() {
+        this(ImprovedDataManager.getInstance());
+    }
+
+    CreditControlService(ImprovedDataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    // ------------------------------------------------------------------
+    // الإعدادات
+    // ------------------------------------------------------------------
+
+    public static Policy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    /**
+     * سياسة العملاء الذين لا تحدد لهم سياسة خاصة
+     */
+    public static void setDefaultPolicy(Policy policy) {
+        defaultPolicy = policy == null ? Policy.BLOCK : policy;
+    }
+
+    /**
+     * تعديل حد ائتمان العميل وسياسته (null = السياسة الافتراضية)
+     */
+    public void setCreditTerms(int contactId, double creditLimit, Policy policy) throws SQLException {
+        if (creditLimit < 0) {
+            throw new IllegalArgumentException("حد الائتمان لا يكون سالباً");
+        }
+        dataManager.executeTransaction(conn -> {
+            CreditStatus before = loadStatus(conn, contactId);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE contacts SET credit_limit = ?, credit_policy = ?, updated_at = CURRENT_TIMESTAMP WHERE contact_id = ?")) {
+                stmt.setDouble(1, Money.toMajor(Money.toMinor(creditLimit)));
+                if (policy != null) {
+                    stmt.setString(2, policy.name());
+                } else {
+                    stmt.setNull(2, Types.VARCHAR);
+                }
+                stmt.setInt(3, contactId);
+                if (stmt.executeUpdate() == 0) {
+                    throw new SQLException("Contact not found with ID: " + contactId);
+                }
+            }
+            dataManager.logAuditEntry("contacts", contactId, "UPDATE",
+                before != null ? describeTerms(before.getCreditLimit(), before.getPolicy()) : null,
+                describeTerms(creditLimit, policy), "SYSTEM", conn);
+            markChanged(contactId, 0);
+            return null;
+        });
+    }
+
+    private static String describeTerms(double creditLimit, Policy policy) {
+        return "credit_limit=" + FormatUtils.formatNumber(creditLimit) + ", credit_policy=" + (policy != null ? policy : "DEFAULT");
+    }
+
+    /**
+     * السماح بتجاوز حد عميل سياسته BLOCK للترحيلات التي تتم في هذا الخيط حتى إغلاق النطاق
+     *
+     * <pre>
+     * try (CreditControlService.CreditOverride o = CreditControlService.override("عميل قديم", "manager")) {
+     *     saleDataService.addSale(sale, null, 0);
+     * }
+     * </pre>
+     */
+    public static CreditOverride override(String reason, String userName) {
+        if (reason == null || reason.isBlank()) {
+            throw new IllegalArgumentException("تجاوز حد الائتمان يحتاج سبباً");
+        }
+        CreditOverride scope = new CreditOverride(reason, userName, OVERRIDE.get());
+        OVERRIDE.set(scope);
+        return scope;
+    }
+
+    public static void addListener(Consumer<CreditDecision> listener) {
+        LISTENERS.add(listener);
+    }
+
+    public static void removeListener(Consumer<CreditDecision> listener) {
+        LISTENERS.remove(listener);
+    }
+
+    // ------------------------------------------------------------------
+    // الفحص عند الترحيل (اتصال المعاملة الحالية)
+    // ------------------------------------------------------------------
+
+    /**
+     * فحص بيع آجل يزيد تعرض العميل بمقدار amount قبل ترحيله
+     *
+     * @throws CreditLimitExceededException إذا تجاوز الحد وسياسته BLOCK دون override
+     */
+    void checkSale(Connection conn, int contactId, String reference, double amount) throws SQLException {
+        long added = Money.toMinor(amount);
+        if (added <= 0) {
+            return;
+        }
+        Lines lines = lines(conn);
+        Pending pending = PENDING.get();
+        long ownDelta = pending != null ? pending.delta(contactId) : 0;
+        long ownReserved = pending != null && pending.reservedIn == lines ? pending.reserved(contactId) : 0;
+        CreditOverride scope = OVERRIDE.get();
+        CreditDecision[] decided = new CreditDecision[1];
+        boolean[] reserved = new boolean[1];
+
+        lines.byContact.computeIfPresent(contactId, (id, line) -> {
+            if (line.limit() <= 0) {
+                return line;
+            }
+            // حجوزات الخيوط الأخرى تُحسب؛ حجوزات هذه المعاملة ظاهرة في فرقها بعد ترحيل مستنداتها
+            long exposure = line.exposure() + line.reserved() - ownReserved + ownDelta;
+            if (exposure + added > line.limit()) {
+                Policy policy = line.policy() != null ? line.policy() : defaultPolicy;
+                Outcome outcome = policy == Policy.WARN ? Outcome.WARNED : scope != null ? Outcome.OVERRIDDEN : Outcome.BLOCKED;
+                decided[0] = new CreditDecision(0, contactId, reference, outcome, Money.toMajor(added),
+                    Money.toMajor(exposure), Money.toMajor(line.limit()), scope != null ? scope.reason : null,
+                    scope != null ? scope.userName : null, null);
+                if (outcome == Outcome.BLOCKED) {
+                    return line;
+                }
+            }
+            reserved[0] = true;
+            return line.withReserved(line.reserved() + added);
+        });
+
+        if (reserved[0]) {
+            pending().reserve(lines, contactId, added);
+        }
+        CreditDecision decision = decided[0];
+        if (decision == null) {
+            return;
+        }
+        Outcome outcome = decision.getOutcome();
+        if (outcome == Outcome.BLOCKED) {
+            // المعاملة ستُلغى؛ القرار يُسجل بعدها في معاملة مستقلة
+            dataManager.afterCompletion(committed -> {
+                dataManager.executeTransaction(auditConn -> {
+                    recordDecision(auditConn, decision);
+                    return null;
+                });
+                notifyListeners(decision);
+            });
+            throw new CreditLimitExceededException(decision);
+        }
+        recordDecision(conn, decision);
+        pending().decisions.add(decision);
+        LOGGER.info("تجاوز حد ائتمان العميل " + contactId + " (" + outcome + "): " + reference);
+    }
+
+    /**
+     * إبلاغ بتغير صافي ذمم العميل داخل المعاملة الحالية (من OpenItemService)
+     */
+    void exposureChanged(int contactId, double delta) throws SQLException {
+        markChanged(contactId, Money.toMinor(delta));
+    }
+
+    private void markChanged(int contactId, long deltaMinor) throws SQLException {
+        if (!dataManager.inTransaction()) {
+            refresh(contactId);
+            return;
+        }
+        Pending pending = pending();
+        pending.deltas.merge(contactId, deltaMinor, Long::sum);
+        pending.changed.add(contactId);
+    }
+
+    private Pending pending() {
+        Pending pending = PENDING.get();
+        if (pending == null) {
+            Pending created = new Pending();
+            PENDING.set(created);
+            dataManager.afterCompletion(committed -> finish(created, committed));
+            pending = created;
+        }
+        return pending;
+    }
+
+    private void finish(Pending pending, boolean committed) throws SQLException {
+        if (PENDING.get() == pending) {
+            PENDING.remove();
+        }
+        if (!committed) {
+            release(pending);
+            return;
+        }
+        Set<Integer> contacts = new LinkedHashSet<>(pending.changed);
+        contacts.addAll(pending.reservations.keySet());
+        for (int contactId : contacts) {
+            refresh(contactId, pending);
+        }
+        for (CreditDecision decision : pending.decisions) {
+            notifyListeners(decision);
+        }
+    }
+
+    private static void notifyListeners(CreditDecision decision) {
+        for (Consumer<CreditDecision> listener : LISTENERS) {
+            listener.accept(decision);
+        }
+    }
+
+    private static void recordDecision(Connection conn, CreditDecision decision) throws SQLException {
+        String sql = """
+            INSERT INTO credit_decisions (contact_id, reference, outcome, amount, exposure, credit_limit, reason, user_name)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, decision.getContactId());
+            stmt.setString(2, decision.getReference());
+            stmt.setString(3, decision.getOutcome().name());
+            stmt.setLong(4, Money.toMinor(decision.getAmount()));
+            stmt.setLong(5, Money.toMinor(decision.getExposure()));
+            stmt.setLong(6, Money.toMinor(decision.getCreditLimit()));
+            stmt.setString(7, decision.getReason());
+            stmt.setString(8, decision.getUserName());
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // الخريطة
+    // ------------------------------------------------------------------
+
+    /**
+     * بناء الخريطة من دفتر البنود المفتوحة (عند التشغيل، قبل أول بيع)
+     */
+    public static void warmUp() throws SQLException {
+        ImprovedDataManager dataManager = ImprovedDataManager.getInstance();
+        try (Connection conn = dataManager.getConnection()) {
+            lines(conn);
+        }
+    }
+
+    /**
+     * إسقاط الخريطة؛ تُبنى من جديد عند أول استخدام (بعد إعادة بناء دفتر البنود المفتوحة)
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    private static Lines lines(Connection conn) throws SQLException {
+        Lines lines = current;
+        if (lines == null) {
+            synchronized (LOCK) {
+                lines = current;
+                if (lines == null) {
+                    lines = new Lines();
+                    try (PreparedStatement stmt = conn.prepareStatement(LINE_SQL);
+                         ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            lines.byContact.put(rs.getInt("contact_id"), mapLine(rs, 0));
+                        }
+                    }
+                    current = lines;
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void refresh(int contactId) throws SQLException {
+        refresh(contactId, null);
+    }
+
+    /**
+     * قراءة الرصيد المعتمد لعميل واحد بعد اعتماد معاملة غيرته، مع فك حجز المعاملة الذي صار
+     * جزءاً منه. حجوزات المعاملات الأخرى تبقى على السطر
+     */
+    private void refresh(int contactId, Pending released) throws SQLException {
+        Lines lines = current;
+        if (lines == null) {
+            return; // تُبنى كاملة من المعتمد عند أول استخدام
+        }
+        long release = released != null && released.reservedIn == lines ? released.reserved(contactId) : 0;
+        synchronized (LOCK) {
+            try (Connection conn = dataManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(LINE_SQL + " WHERE c.contact_id = ?")) {
+                stmt.setInt(1, contactId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        CreditLine fresh = mapLine(rs, 0);
+                        lines.byContact.merge(contactId, fresh,
+                            (old, ignored) -> fresh.withReserved(Math.max(0, old.reserved() - release)));
+                    } else {
+                        lines.byContact.remove(contactId);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * فك حجوزات معاملة أُلغيت
+     */
+    private static void release(Pending pending) {
+        Lines lines = current;
+        if (lines == null || pending.reservedIn != lines) {
+            return; // الخريطة أُعيد بناؤها من المعتمد بلا حجوزات
+        }
+        pending.reservations.forEach((contactId, amount) -> lines.byContact.computeIfPresent(contactId,
+            (id, line) -> line.withReserved(Math.max(0, line.reserved() - amount))));
+    }
+
+    private static CreditLine mapLine(ResultSet rs, long reserved) throws SQLException {
+        String policy = rs.getString("credit_policy");
+        return new CreditLine(Money.toMinor(rs.getDouble("credit_limit")), policy != null ? Policy.valueOf(policy) : null,
+            Money.toMinor(rs.getDouble("exposure")), reserved);
+    }
+
+    // ------------------------------------------------------------------
+    // الاستعلامات
+    // ------------------------------------------------------------------
+
+    /**
+     * الحد والتعرض المعتمد والمحجوز والمتاح للعميل، من الخريطة
+     */
+    public CreditStatus getStatus(int contactId) throws SQLException {
+        try (Connection conn = dataManager.getConnection()) {
+            CreditLine line = lines(conn).byContact.get(contactId);
+            if (line == null) {
+                return null;
+            }
+            return new CreditStatus(contactId, Money.toMajor(line.limit()), line.policy(), Money.toMajor(line.exposure()),
+                Money.toMajor(line.reserved()));
+        }
+    }
+
+    private static CreditStatus loadStatus(Connection conn, int contactId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(LINE_SQL + " WHERE c.contact_id = ?")) {
+            stmt.setInt(1, contactId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                CreditLine line = mapLine(rs, 0);
+                return new CreditStatus(contactId, Money.toMajor(line.limit()), line.policy(), Money.toMajor(line.exposure()));
+            }
+        }
+    }
+
+    /**
+     * سجل تجاوزات حد العميل، الأحدث أولاً
+     */
+    public List<CreditDecision> getDecisions(int contactId) throws SQLException {
+        String sql = "SELECT * FROM credit_decisions WHERE contact_id = ? ORDER BY decision_id DESC";
+        List<CreditDecision> decisions = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    decisions.add(new CreditDecision(
+                        rs.getLong("decision_id"),
+                        rs.getInt("contact_id"),
+                        rs.getString("reference"),
+                        Outcome.valueOf(rs.getString("outcome")),
+                        Money.getAmount(rs, "amount"),
+                        Money.getAmount(rs, "exposure"),
+                        Money.getAmount(rs, "credit_limit"),
+                        rs.getString("reason"),
+                        rs.getString("user_name"),
+                        rs.getString("created_at")
+                    ));
+                }
+            }
+        }
+        return decisions;
+    }
+
+    // ------------------------------------------------------------------
+    // الأنواع
+    // ------------------------------------------------------------------
+
+    /**
+     * حد العميل وسياسته (null = الافتراضية) وتعرضه المعتمد، وما حجزته مبيعات مقبولة لم تنته
+     * معاملاتها بعد، بالقروش
+     */
+    private record CreditLine(long limit, Policy policy, long exposure, long reserved) {
+        CreditLine withReserved(long amount) {
+            return new CreditLine(limit, policy, exposure, amount);
+        }
+    }
+
+    private static final class Lines {
+        private final Map<Integer, CreditLine> byContact = new ConcurrentHashMap<>();
+    }
+
+    /** ما غيرته المعاملة الجارية في هذا الخيط ولم يُعتمد بعد */
+    private static final class Pending {
+        private final Map<Integer, Long> deltas = new HashMap<>();
+        private final Set<Integer> changed = new LinkedHashSet<>();
+        private final List<CreditDecision> decisions = new ArrayList<>();
+        private final Map<Integer, Long> reservations = new HashMap<>();
+        private Lines reservedIn;
+
+        long delta(int contactId) {
+            return deltas.getOrDefault(contactId, 0L);
+        }
+
+        long reserved(int contactId) {
+            return reservations.getOrDefault(contactId, 0L);
+        }
+
+        void reserve(Lines lines, int contactId, long amount) {
+            if (reservedIn != lines) {
+                // الخريطة أُعيد بناؤها؛ الحجوزات السابقة لم تعد عليها
+                reservations.clear();
+                reservedIn = lines;
+            }
+            reservations.merge(contactId, amount, Long::sum);
+        }
+    }
+
+    /**
+     * نطاق تجاوز الحد في الخيط الحالي؛ يُغلق بـ try-with-resources
+     */
+    public static final class CreditOverride implements AutoCloseable {
+        private final String reason;
+        private final String userName;
+        private final CreditOverride enclosing;
+
+        private CreditOverride(String reason, String userName, CreditOverride enclosing) {
+            this.reason = reason;
+            this.userName = userName;
+            this.enclosing = enclosing;
+        }
+
+        @Override
+        public void close() {
+            if (enclosing != null) {
+                OVERRIDE.set(enclosing);
+            } else {
+                OVERRIDE.remove();
+            }
+        }
+    }
+
+    /**
+     * رفض بيع يتجاوز حد ائتمان العميل
+     */
+    public static class CreditLimitExceededException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        private final transient CreditDecision decision;
+
+        public CreditLimitExceededException(CreditDecision decision) {
+            super("البيع يتجاوز حد ائتمان العميل: التعرض " + FormatUtils.formatCurrency(decision.getExposure())
+                + " + " + FormatUtils.formatCurrency(decision.getAmount()) + " من حد "
+                + FormatUtils.formatCurrency(decision.getCreditLimit()));
+            this.decision = decision;
+        }
+
+        public CreditDecision getDecision() {
+            return decision;
+        }
+    }
+
+    public static class CreditStatus {
+        private final int contactId;
+        private final double creditLimit;
+        private final Policy policy;
+        private final double exposure;
+        private final double reserved;
+
+        public CreditStatus(int contactId, double creditLimit, Policy policy, double exposure) {
+            this(contactId, creditLimit, policy, exposure, 0);
+        }
+
+        public CreditStatus(int contactId, double creditLimit, Policy policy, double exposure, double reserved) {
+            this.contactId = contactId;
+            this.creditLimit = creditLimit;
+            this.policy = policy;
+            this.exposure = exposure;
+            this.reserved = reserved;
+        }
+
+        public int getContactId() { return contactId; }
+        public double getCreditLimit() { return creditLimit; }
+        /** سياسة العميل الخاصة، أو null إذا كان يتبع الافتراضية */
+        public Policy getPolicy() { return policy; }
+        public double getExposure() { return exposure; }
+        /** مبيعات قُبلت في معاملات لم تنته بعد */
+        public double getReserved() { return reserved; }
+        public boolean hasLimit() { return creditLimit > 0; }
+        public double getAvailable() { return hasLimit() ? creditLimit - exposure - reserved : Double.POSITIVE_INFINITY; }
+    }
+
+    public static class CreditDecision {
+        private final long decisionId;
+        private final int contactId;
+        private final String reference;
+        private final Outcome outcome;
+        private final double amount;
+        private final double exposure;
+        private final double creditLimit;
+        private final String reason;
+        private final String userName;
+        private final String createdAt;
+
+        public CreditDecision(long decisionId, int contactId, String reference, Outcome outcome, double amount,
+                              double exposure, double creditLimit, String reason, String userName, String createdAt) {
+            this.decisionId = decisionId;
+            this.contactId = contactId;
+            this.reference = reference;
+            this.outcome = outcome;
+            this.amount = amount;
+            this.exposure = exposure;
+            this.creditLimit = creditLimit;
+            this.reason = reason;
+            this.userName = userName;
+            this.createdAt = createdAt;
+        }
+
+        public long getDecisionId() { return decisionId; }
+        public int getContactId() { return contactId; }
+        public String getReference() { return reference; }
+        public Outcome getOutcome() { return outcome; }
+        /** الزيادة المطلوبة في التعرض */
+        public double getAmount() { return amount; }
+        /** التعرض قبل المستند */
+        public double getExposure() { return exposure; }
+        public double getCreditLimit() { return creditLimit; }
+        public String getReason() { return reason; }
+        public String getUserName() { return userName; }
+        public String getCreatedAt() { return createdAt; }
+    }
+}
@@ -8,6 +8,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,6 +19,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import accounting.model.InventoryAdjustment;
+import accounting.util.AppMetrics;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 import java.lang.reflect.Type;
@@ -315,10 +317,29 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
      * @throws SQLException في حالة حدوث خطأ في قاعدة البيانات.
      */
     public List<CropStatistics> getAllCropStatistics() throws SQLException {
-        String query = """
+        return getAllCropStatistics(null);
+    }
+
+    /**
+     * إحصائيات المخزون لمخزن واحد أو لكل المخازن.
+     *
+     * بلا مخزن يبقى الاستعلام كما كان على رصيد inventory الموحد. مع المخزن يُقرأ رصيده من
+     * warehouse_stock وتُجمع مشترياته ومبيعاته وحدها؛ متوسط التكلفة يبقى الموحد لأن التقييم
+     * على مستوى المنشأة.
+     *
+     * @param warehouseId المخزن، أو null لكل المخازن
+     */
+    public List<CropStatistics> getAllCropStatistics(Integer warehouseId) throws SQLException {
+        List<Object> params = new ArrayList<>();
+        StringBuilder queryBuilder = new StringBuilder("""
             SELECT 
+                c.crop_id,
                 c.crop_name,
-                COALESCE(i.current_stock_kg, 0) as current_stock,
+            """);
+        queryBuilder.append(warehouseId == null
+            ? "    COALESCE(i.current_stock_kg, 0) as current_stock,\n"
+            : "    COALESCE(ws.quantity_kg, 0) as current_stock,\n");
+        queryBuilder.append("""
                 COALESCE(i.average_cost_per_kg, 0) as average_cost,
                 COALESCE(purchase_stats.total_purchased, 0) as total_purchased,
                 COALESCE(purchase_stats.total_purchase_cost, 0) as total_purchase_cost,
@@ -326,35 +347,59 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
                 COALESCE(sale_stats.total_sale_revenue, 0) as total_sale_revenue
             FROM crops c
             LEFT JOIN inventory i ON c.crop_id = i.crop_id
+            """);
+        if (warehouseId != null) {
+            queryBuilder.append("LEFT JOIN warehouse_stock ws ON ws.warehouse_id = ? AND ws.crop_id = c.crop_id\n");
+            params.add(warehouseId);
+        }
+        queryBuilder.append("""
             LEFT JOIN (
                 SELECT crop_id, SUM(quantity_kg) as total_purchased, SUM(total_cost) as total_purchase_cost
                 FROM purchases
+            """);
+        if (warehouseId != null) {
+            queryBuilder.append("WHERE warehouse_id = ?\n");
+            params.add(warehouseId);
+        }
+        queryBuilder.append("""
                 GROUP BY crop_id
             ) purchase_stats ON c.crop_id = purchase_stats.crop_id
             LEFT JOIN (
                 SELECT crop_id, SUM(quantity_sold_kg) as total_sold, SUM(total_sale_amount) as total_sale_revenue
                 FROM sales
+            """);
+        if (warehouseId != null) {
+            queryBuilder.append("WHERE warehouse_id = ?\n");
+            params.add(warehouseId);
+        }
+        queryBuilder.append("""
                 GROUP BY crop_id
             ) sale_stats ON c.crop_id = sale_stats.crop_id
             WHERE c.is_active = 1
             ORDER BY c.crop_name
-            """;
+            """);
 
         List<CropStatistics> allStats = new ArrayList<>();
         try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(query);
-             ResultSet rs = stmt.executeQuery()) {
+             PreparedStatement stmt = conn.prepareStatement(queryBuilder.toString())) {
 
-            while (rs.next()) {
-                allStats.add(new CropStatistics(
-                    rs.getString("crop_name"),
-                    rs.getDouble("current_stock"),
-                    rs.getDouble("average_cost"),
-                    rs.getDouble("total_purchased"),
-                    rs.getDouble("total_purchase_cost"),
-                    rs.getDouble("total_sold"),
-                    rs.getDouble("total_sale_revenue")
-                ));
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    allStats.add(new CropStatistics(
+                        rs.getInt("crop_id"),
+                        rs.getString("crop_name"),
+                        rs.getDouble("current_stock"),
+                        rs.getDouble("average_cost"),
+                        rs.getDouble("total_purchased"),
+                        rs.getDouble("total_purchase_cost"),
+                        rs.getDouble("total_sold"),
+                        rs.getDouble("total_sale_revenue")
+                    ));
+                }
             }
         }
         return allStats;
@@ -382,6 +427,7 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
      * فئة إحصائيات المحصول
      */
     public static class CropStatistics {
+        private final int cropId;
         private final String cropName;
         private final double currentStock;
         private final double averageCost;
@@ -393,6 +439,13 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
         public CropStatistics(String cropName, double currentStock, double averageCost,
                              double totalPurchased, double totalPurchaseCost,
                              double totalSold, double totalSaleRevenue) {
+            this(0, cropName, currentStock, averageCost, totalPurchased, totalPurchaseCost, totalSold, totalSaleRevenue);
+        }
+
+        public CropStatistics(int cropId, String cropName, double currentStock, double averageCost,
+                             double totalPurchased, double totalPurchaseCost,
+                             double totalSold, double totalSaleRevenue) {
+            this.cropId = cropId;
             this.cropName = cropName;
             this.currentStock = currentStock;
             this.averageCost = averageCost;
@@ -403,6 +456,8 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
         }
         
         // Getters
+        /** 0 إذا لم يُحمل مع الإحصائيات */
+        public int getCropId() { return cropId; }
         public String getCropName() { return cropName; }
         public double getCurrentStock() { return currentStock; }
         public double getAverageCost() { return averageCost; }
@@ -442,77 +497,92 @@ public class CropDataService extends AbstractDAO<Crop, Integer> {
      * تسجيل تسوية مخزون جديدة، وتحديث كمية المخزون ودفتر الأستاذ.
      */
     public int addInventoryAdjustment(InventoryAdjustment adjustment) throws SQLException {
-        return dataManager.executeTransaction(conn -> {
-            
-            // 1. حساب تكلفة الكمية المعدلة بناءً على متوسط التكلفة الحالي للمخزون
-            double unitCost = 0;
-            try (PreparedStatement costStmt = conn.prepareStatement("SELECT average_cost_per_kg FROM inventory WHERE crop_id = ?")) {
-                costStmt.setInt(1, adjustment.getCrop().getCropId());
-                try (ResultSet rs = costStmt.executeQuery()) {
-                    if (rs.next()) {
-                        unitCost = rs.getDouble("average_cost_per_kg");
-                    }
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.inventory_adjustment")) {
+            int adjustmentId = dataManager.executeTransaction(conn -> addInventoryAdjustmentLogic(conn, adjustment));
+            op.succeeded("INV-ADJ-" + adjustmentId);
+            return adjustmentId;
+        }
+    }
+
+    private int addInventoryAdjustmentLogic(Connection conn, InventoryAdjustment adjustment) throws SQLException {
+        
+        // 1. حساب تكلفة الكمية المعدلة بناءً على متوسط التكلفة الحالي للمخزون
+        double unitCost = 0;
+        try (PreparedStatement costStmt = conn.prepareStatement("SELECT average_cost_per_kg FROM inventory WHERE crop_id = ?")) {
+            costStmt.setInt(1, adjustment.getCrop().getCropId());
+            try (ResultSet rs = costStmt.executeQuery()) {
+                if (rs.next()) {
+                    unitCost = rs.getDouble("average_cost_per_kg");
                 }
             }
-            double totalCost = unitCost * adjustment.getQuantityKg();
-            adjustment.setCost(totalCost);
-
-            // 2. إضافة سجل التسوية
-            String sql = "INSERT INTO inventory_adjustments (crop_id, adjustment_date, adjustment_type, quantity_kg, reason, cost) VALUES (?, ?, ?, ?, ?, ?)";
-            int adjustmentId;
-            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setInt(1, adjustment.getCrop().getCropId());
-                stmt.setString(2, FormatUtils.formatDateForDatabase(adjustment.getAdjustmentDate()));
-                stmt.setString(3, adjustment.getAdjustmentType().name());
-                stmt.setDouble(4, adjustment.getQuantityKg());
-                stmt.setString(5, adjustment.getReason());
-                stmt.setDouble(6, totalCost);
-                
-                stmt.executeUpdate();
-
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        adjustmentId = rs.getInt(1);
-                    } else {
-                        throw new SQLException("Creating inventory adjustment failed, no ID obtained.");
-                    }
-                }
+        }
+        double totalCost = unitCost * adjustment.getQuantityKg();
+        adjustment.setCost(totalCost);
+
+        // 2. إضافة سجل التسوية
+        String sql = "INSERT INTO inventory_adjustments (crop_id, adjustment_date, adjustment_type, quantity_kg, reason, cost, season_id, lot_id, warehouse_id) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int adjustmentId;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, adjustment.getCrop().getCropId());
+            stmt.setString(2, FormatUtils.formatDateForDatabase(adjustment.getAdjustmentDate()));
+            stmt.setString(3, adjustment.getAdjustmentType().name());
+            stmt.setDouble(4, adjustment.getQuantityKg());
+            stmt.setString(5, adjustment.getReason());
+            stmt.setDouble(6, totalCost);
+            SeasonResolver.bindSeason(stmt, 7, conn, adjustment.getAdjustmentDate());
+            if (adjustment.getLotId() != null) {
+                stmt.setLong(8, adjustment.getLotId());
+            } else {
+                stmt.setNull(8, Types.INTEGER);
             }
+            stmt.setInt(9, adjustment.getWarehouseId());
 
-            // 3. تسجيل القيد المزدوج وتحديث الأرصدة
-            String transactionRef = "INV-ADJ-" + adjustmentId;
-            String description = "تسوية مخزون: " + adjustment.getAdjustmentType().getArabicName() + " لـ " + adjustment.getCrop().getCropName();
-            double quantityForUpdate = adjustment.getQuantityKg();
-
-            int debitAccountId;
-            int creditAccountId;
-            int inventoryAccountId = 10103; // ID حساب المخزون
-
-            if (adjustment.getAdjustmentType() == InventoryAdjustment.AdjustmentType.SURPLUS) {
-                // حالة الزيادة
-                debitAccountId = inventoryAccountId; // مدين: المخزون
-                creditAccountId = 40105; // دائن: حساب "أرباح فروقات المخزون"
-                quantityForUpdate = adjustment.getQuantityKg();
-                dataManager.updateAccountBalance(debitAccountId, totalCost, conn);
-                dataManager.updateAccountBalance(creditAccountId, totalCost, conn);
-            } else {
-                // حالة التلف أو العجز
-                creditAccountId = inventoryAccountId; // دائن: المخزون
-                debitAccountId = 50108; // مدين: حساب "خسائر المخزون"
-                quantityForUpdate = -quantityForUpdate; // الكمية بالسالب لأنها تنقص
-                dataManager.updateAccountBalance(creditAccountId, -totalCost, conn);
-                dataManager.updateAccountBalance(debitAccountId, totalCost, conn);
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    adjustmentId = rs.getInt(1);
+                } else {
+                    throw new SQLException("Creating inventory adjustment failed, no ID obtained.");
+                }
             }
+        }
 
-            dataManager.addLedgerEntry(conn, transactionRef, adjustment.getAdjustmentDate(), debitAccountId, totalCost, 0.0, description, "ADJUSTMENT", adjustmentId, adjustment.getAdjustmentType().name());
-            dataManager.addLedgerEntry(conn, transactionRef, adjustment.getAdjustmentDate(), creditAccountId, 0.0, totalCost, description, "ADJUSTMENT", adjustmentId, adjustment.getAdjustmentType().name());
+        // 3. تسجيل القيد المزدوج وتحديث الأرصدة
+        String transactionRef = "INV-ADJ-" + adjustmentId;
+        String description = "تسوية مخزون: " + adjustment.getAdjustmentType().getArabicName() + " لـ " + adjustment.getCrop().getCropName();
+        double quantityForUpdate = adjustment.getQuantityKg();
+
+        int debitAccountId;
+        int creditAccountId;
+        int inventoryAccountId = 10103; // ID حساب المخزون
+
+        if (adjustment.getAdjustmentType() == InventoryAdjustment.AdjustmentType.SURPLUS) {
+            // حالة الزيادة
+            debitAccountId = inventoryAccountId; // مدين: المخزون
+            creditAccountId = 40105; // دائن: حساب "أرباح فروقات المخزون"
+            quantityForUpdate = adjustment.getQuantityKg();
+            dataManager.updateAccountBalance(debitAccountId, totalCost, conn);
+            dataManager.updateAccountBalance(creditAccountId, totalCost, conn);
+        } else {
+            // حالة التلف أو العجز
+            creditAccountId = inventoryAccountId; // دائن: المخزون
+            debitAccountId = 50108; // مدين: حساب "خسائر المخزون"
+            quantityForUpdate = -quantityForUpdate; // الكمية بالسالب لأنها تنقص
+            dataManager.updateAccountBalance(creditAccountId, -totalCost, conn);
+            dataManager.updateAccountBalance(debitAccountId, totalCost, conn);
+        }
 
-            // 4. تحديث كمية المخزون
-            dataManager.updateInventory(adjustment.getCrop().getCropId(), quantityForUpdate, unitCost, "ADJUSTMENT", "INV_ADJUST", adjustmentId, conn);
+        dataManager.addLedgerEntry(conn, transactionRef, adjustment.getAdjustmentDate(), debitAccountId, totalCost, 0.0, description, "ADJUSTMENT", adjustmentId, adjustment.getAdjustmentType().name());
+        dataManager.addLedgerEntry(conn, transactionRef, adjustment.getAdjustmentDate(), creditAccountId, 0.0, totalCost, description, "ADJUSTMENT", adjustmentId, adjustment.getAdjustmentType().name());
 
-            dataManager.logAuditEntry("inventory_adjustments", adjustmentId, "INSERT", null, description, "SYSTEM", conn);
-            
-            return adjustmentId;
-        });
+        // 4. تحديث كمية المخزون
+        // التالف والعجز يُشطبان من الدفعة المحددة أولاً ثم بترتيب الصرف
+        dataManager.updateInventory(adjustment.getCrop().getCropId(), quantityForUpdate, unitCost, "ADJUSTMENT", "INV_ADJUST", adjustmentId,
+            adjustment.getWarehouseId(), adjustment.getLotId(), null, conn);
+
+        dataManager.logAuditEntry("inventory_adjustments", adjustmentId, "INSERT", null, description, "SYSTEM", conn);
+        
+        return adjustmentId;
     }
 }
\ No newline at end of file
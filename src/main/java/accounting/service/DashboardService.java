@@ -1,11 +1,14 @@
 package accounting.service;
 
+import accounting.formatter.FormatUtils;
 import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -15,44 +18,304 @@ import javafx.collections.ObservableList;
 import javafx.scene.chart.PieChart;
 import javafx.scene.chart.XYChart;
 
+/**
+ * مؤشرات لوحة القيادة
+ *
+ * كل المؤشرات تُقرأ من جدول ledger_daily_totals (مجموع المدين والدائن لكل حساب في
+ * كل يوم) الذي تحدثه مشغلات قاعدة البيانات مع كل قيد، فحجم ما يُقرأ يتناسب مع عدد
+ * أيام الفترة المعروضة لا مع حجم دفتر الأستاذ. الأرصدة اليومية تُستنتج بالرجوع من
+ * الرصيد الحالي للحسابات وطرح حركات الأيام اللاحقة.
+ */
 public class DashboardService {
 
+    private static final int COGS_ACCOUNT_ID = 50101;
+    private static final int NET_PROFIT_DAYS = 30;
+    private static final int CASH_FLOW_MONTHS = 6;
+    private static final DateTimeFormatter TREND_LABEL = DateTimeFormatter.ofPattern("dd/MM");
+
     private final ImprovedDataManager dataManager;
+    private final OpenItemService openItemService;
 
     public DashboardService() {
         this.dataManager = ImprovedDataManager.getInstance();
+        this.openItemService = new OpenItemService();
     }
 
     public DashboardSummary getDashboardSummary() throws SQLException {
-        return new DashboardSummary(10, 10, 10, 10);
+        double cash = Money.toMajor(getCurrentBalances().getOrDefault("CASH", 0L));
+        double receivables = openItemService.getOutstandingTotal(OpenItemService.SIDE_RECEIVABLE);
+        double payables = openItemService.getOutstandingTotal(OpenItemService.SIDE_PAYABLE);
+        long netProfit = 0;
+        for (DailyKpi day : getKpiSeries(NET_PROFIT_DAYS)) {
+            netProfit += Money.toMinor(day.getNetProfit());
+        }
+        return new DashboardSummary(cash, receivables, payables, Money.toMajor(netProfit));
+    }
+
+    /**
+     * سلسلة المؤشرات اليومية لآخر عدد من الأيام حتى اليوم، يوم لكل عنصر بالترتيب
+     */
+    public List<DailyKpi> getKpiSeries(int days) throws SQLException {
+        LocalDate today = LocalDate.now();
+        LocalDate firstDay = today.minusDays(Math.max(1, days) - 1L);
+
+        // حركات الفترة وما بعدها (تشمل القيود المؤرخة مستقبلاً) لإرجاع الأرصدة الحالية إلى أيام الفترة
+        String sql = """
+            SELECT d.entry_date,
+                   SUM(CASE WHEN a.account_type IN ('CASH', 'BANK') THEN d.debit_total - d.credit_total ELSE 0 END) AS cash,
+                   SUM(CASE WHEN a.account_type = 'ACCOUNTS_RECEIVABLE' THEN d.debit_total - d.credit_total ELSE 0 END) AS receivables,
+                   SUM(CASE WHEN a.account_type = 'ACCOUNTS_PAYABLE' THEN d.credit_total - d.debit_total ELSE 0 END) AS payables,
+                   SUM(CASE WHEN a.account_type = 'REVENUE' THEN d.credit_total - d.debit_total ELSE 0 END) AS revenue,
+                   SUM(CASE WHEN a.account_id = ? THEN d.debit_total - d.credit_total ELSE 0 END) AS cogs,
+                   SUM(CASE WHEN a.account_type = 'EXPENSE' AND a.account_id <> ? THEN d.debit_total - d.credit_total ELSE 0 END) AS expenses
+            FROM ledger_daily_totals d
+            JOIN financial_accounts a ON a.account_id = d.account_id
+            WHERE d.entry_date >= ?
+            GROUP BY d.entry_date
+            """;
+        // المجاميع بالقروش؛ تُحول إلى الجنيه عند إنشاء مؤشر اليوم فقط
+        Map<LocalDate, long[]> movements = new HashMap<>();
+        long[] afterToday = new long[3];
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, COGS_ACCOUNT_ID);
+            stmt.setInt(2, COGS_ACCOUNT_ID);
+            stmt.setString(3, FormatUtils.formatDateForDatabase(firstDay));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LocalDate date = FormatUtils.parseDateFromDatabase(rs.getString("entry_date"));
+                    long[] row = {
+                        rs.getLong("cash"), rs.getLong("receivables"), rs.getLong("payables"),
+                        rs.getLong("revenue"), rs.getLong("cogs"), rs.getLong("expenses")
+                    };
+                    if (date.isAfter(today)) {
+                        for (int i = 0; i < 3; i++) {
+                            afterToday[i] += row[i];
+                        }
+                    } else {
+                        movements.put(date, row);
+                    }
+                }
+            }
+        }
+
+        Map<String, Long> current = getCurrentBalances();
+        long cash = current.getOrDefault("CASH", 0L) - afterToday[0];
+        long receivables = current.getOrDefault("ACCOUNTS_RECEIVABLE", 0L) - afterToday[1];
+        long payables = current.getOrDefault("ACCOUNTS_PAYABLE", 0L) - afterToday[2];
+
+        List<DailyKpi> series = new ArrayList<>();
+        long[] quietDay = new long[6];
+        for (LocalDate date = today; !date.isBefore(firstDay); date = date.minusDays(1)) {
+            long[] row = movements.getOrDefault(date, quietDay);
+            series.add(0, new DailyKpi(date, Money.toMajor(cash), Money.toMajor(receivables), Money.toMajor(payables),
+                Money.toMajor(row[3]), Money.toMajor(row[4]), Money.toMajor(row[5])));
+            cash -= row[0];
+            receivables -= row[1];
+            payables -= row[2];
+        }
+        return series;
+    }
+
+    public List<XYChart.Data<String, Number>> getCashTrend(int days) throws SQLException {
+        List<XYChart.Data<String, Number>> trend = new ArrayList<>();
+        for (DailyKpi day : getKpiSeries(days)) {
+            trend.add(new XYChart.Data<>(day.getDate().format(TREND_LABEL), day.getCashBalance()));
+        }
+        return trend;
+    }
+
+    public List<XYChart.Data<String, Number>> getReceivablesTrend(int days) throws SQLException {
+        List<XYChart.Data<String, Number>> trend = new ArrayList<>();
+        for (DailyKpi day : getKpiSeries(days)) {
+            trend.add(new XYChart.Data<>(day.getDate().format(TREND_LABEL), day.getReceivables()));
+        }
+        return trend;
+    }
+
+    public List<XYChart.Data<String, Number>> getPayablesTrend(int days) throws SQLException {
+        List<XYChart.Data<String, Number>> trend = new ArrayList<>();
+        for (DailyKpi day : getKpiSeries(days)) {
+            trend.add(new XYChart.Data<>(day.getDate().format(TREND_LABEL), day.getPayables()));
+        }
+        return trend;
     }
 
-    public List<XYChart.Data<String, Number>> getCashTrend(int days) {
-        return new ArrayList<>();
+    public List<XYChart.Data<String, Number>> getNetProfitTrend(int days) throws SQLException {
+        List<XYChart.Data<String, Number>> trend = new ArrayList<>();
+        for (DailyKpi day : getKpiSeries(days)) {
+            trend.add(new XYChart.Data<>(day.getDate().format(TREND_LABEL), day.getNetProfit()));
+        }
+        return trend;
     }
 
-    public List<XYChart.Data<String, Number>> getReceivablesTrend(int days) {
-        return new ArrayList<>();
+    /**
+     * المقبوضات والمدفوعات النقدية الشهرية لآخر ستة أشهر
+     */
+    public ObservableList<XYChart.Series<String, Number>> getCashFlowSeries() throws SQLException {
+        LocalDate firstDay = LocalDate.now().withDayOfMonth(1).minusMonths(CASH_FLOW_MONTHS - 1L);
+        String sql = """
+            SELECT dd.month_key, SUM(d.debit_total) AS inflow, SUM(d.credit_total) AS outflow
+            FROM ledger_daily_totals d
+            JOIN financial_accounts a ON a.account_id = d.account_id
+            JOIN date_dim dd ON dd.calendar_date = d.entry_date
+            WHERE a.account_type IN ('CASH', 'BANK') AND d.entry_date >= ?
+            GROUP BY dd.month_key
+            ORDER BY dd.month_key
+            """;
+        XYChart.Series<String, Number> inflow = new XYChart.Series<>();
+        inflow.setName("المقبوضات");
+        XYChart.Series<String, Number> outflow = new XYChart.Series<>();
+        outflow.setName("المدفوعات");
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(firstDay));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int monthKey = rs.getInt("month_key");
+                    String month = String.format("%d-%02d", monthKey / 100, monthKey % 100);
+                    inflow.getData().add(new XYChart.Data<>(month, Money.getAmount(rs, "inflow")));
+                    outflow.getData().add(new XYChart.Data<>(month, Money.getAmount(rs, "outflow")));
+                }
+            }
+        }
+        return FXCollections.observableArrayList(List.of(inflow, outflow));
     }
 
-    public List<XYChart.Data<String, Number>> getPayablesTrend(int days) {
-        return new ArrayList<>();
+    /**
+     * توزيع المصروفات على الحسابات خلال آخر 30 يوماً
+     */
+    public List<PieChart.Data> getExpenseBreakdown() throws SQLException {
+        String sql = """
+            SELECT a.account_name, SUM(d.debit_total - d.credit_total) AS amount
+            FROM ledger_daily_totals d
+            JOIN financial_accounts a ON a.account_id = d.account_id
+            WHERE a.account_type = 'EXPENSE' AND d.entry_date >= ? AND d.entry_date <= ?
+            GROUP BY a.account_id, a.account_name
+            HAVING amount > 0
+            ORDER BY amount DESC
+            """;
+        List<PieChart.Data> breakdown = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(today.minusDays(NET_PROFIT_DAYS - 1L)));
+            stmt.setString(2, FormatUtils.formatDateForDatabase(today));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    breakdown.add(new PieChart.Data(rs.getString("account_name"), Money.getAmount(rs, "amount")));
+                }
+            }
+        }
+        return breakdown;
     }
 
-    public List<XYChart.Data<String, Number>> getNetProfitTrend(int days) {
-        return new ArrayList<>();
+    /**
+     * آخر المبيعات والمشتريات والدفعات المسجلة
+     */
+    public List<String> getRecentTransactions(int limit) throws SQLException {
+        String sql = """
+            SELECT * FROM (
+                SELECT * FROM (
+                    SELECT 'بيع' AS kind, s.sale_id AS doc_id, s.sale_date AS doc_date, c.name AS contact_name,
+                           s.total_sale_amount AS amount
+                    FROM sales s JOIN contacts c ON c.contact_id = s.customer_id
+                    ORDER BY s.sale_id DESC LIMIT ?)
+                UNION ALL
+                SELECT * FROM (
+                    SELECT 'شراء', p.purchase_id, p.purchase_date, c.name, p.total_cost
+                    FROM purchases p JOIN contacts c ON c.contact_id = p.supplier_id
+                    ORDER BY p.purchase_id DESC LIMIT ?)
+                UNION ALL
+                SELECT * FROM (
+                    SELECT CASE y.payment_type WHEN 'PAY' THEN 'دفع' ELSE 'تحصيل' END, y.payment_id, y.payment_date,
+                           c.name, y.amount
+                    FROM payments y JOIN contacts c ON c.contact_id = y.contact_id
+                    ORDER BY y.payment_id DESC LIMIT ?)
+            )
+            ORDER BY doc_date DESC, doc_id DESC
+            LIMIT ?
+            """;
+        List<String> recent = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 1; i <= 4; i++) {
+                stmt.setInt(i, limit);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    recent.add(rs.getString("kind") + " - " + rs.getString("contact_name") + " - "
+                        + FormatUtils.formatCurrency(rs.getDouble("amount")) + " ("
+                        + FormatUtils.formatDateForDisplay(FormatUtils.parseDateFromDatabase(rs.getString("doc_date"))) + ")");
+                }
+            }
+        }
+        return recent;
     }
 
-    public ObservableList<XYChart.Series<String, Number>> getCashFlowSeries() {
-        return FXCollections.observableArrayList();
+    /**
+     * إعادة بناء مخزن المؤشرات من دفتر الأستاذ بالكامل
+     */
+    public void rebuildKpiStore() throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            dataManager.rebuildLedgerDailyTotals(conn);
+            return null;
+        });
     }
 
-    public List<PieChart.Data> getExpenseBreakdown() {
-        return new ArrayList<>();
+    /**
+     * الأرصدة الحالية بالقروش مجمعة حسب نوع الحساب (الخزنة والبنوك تحت CASH)
+     */
+    private Map<String, Long> getCurrentBalances() throws SQLException {
+        String sql = """
+            SELECT CASE WHEN account_type IN ('CASH', 'BANK') THEN 'CASH' ELSE account_type END AS kind,
+                   SUM(current_balance) AS balance
+            FROM financial_accounts
+            WHERE account_type IN ('CASH', 'BANK', 'ACCOUNTS_RECEIVABLE', 'ACCOUNTS_PAYABLE')
+            GROUP BY kind
+            """;
+        Map<String, Long> balances = new HashMap<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                balances.put(rs.getString("kind"), rs.getLong("balance"));
+            }
+        }
+        return balances;
     }
 
-    public List<String> getRecentTransactions(int limit) {
-        return new ArrayList<>();
+    /**
+     * مؤشرات يوم واحد: أرصدة آخر اليوم ونتيجة نشاط اليوم
+     */
+    public static class DailyKpi {
+        private final LocalDate date;
+        private final double cashBalance;
+        private final double receivables;
+        private final double payables;
+        private final double revenue;
+        private final double costOfGoodsSold;
+        private final double expenses;
+
+        public DailyKpi(LocalDate date, double cashBalance, double receivables, double payables,
+                        double revenue, double costOfGoodsSold, double expenses) {
+            this.date = date;
+            this.cashBalance = cashBalance;
+            this.receivables = receivables;
+            this.payables = payables;
+            this.revenue = revenue;
+            this.costOfGoodsSold = costOfGoodsSold;
+            this.expenses = expenses;
+        }
+
+        public LocalDate getDate() { return date; }
+        public double getCashBalance() { return cashBalance; }
+        public double getReceivables() { return receivables; }
+        public double getPayables() { return payables; }
+        public double getRevenue() { return revenue; }
+        public double getCostOfGoodsSold() { return costOfGoodsSold; }
+        public double getExpenses() { return expenses; }
+        public double getNetProfit() { return revenue - costOfGoodsSold - expenses; }
     }
 
     public static class DashboardSummary {
@@ -84,4 +347,4 @@ public class DashboardService {
             return netProfit;
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,199 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * بُعد التاريخ: صف لكل يوم في date_dim بسماته محسوبة مسبقاً (رقم اليوم epoch، الشهر،
+ * الربع، أسبوع ISO، السنة والفترة المالية، الموسم).
+ *
+ * التجميع بالشهر أو الموسم يصبح ربطاً على calendar_date (المفتاح الأساسي، بنفس نص
+ * 'yyyy-MM-dd' المخزن في المستندات) ثم GROUP BY على أعمدة صحيحة، بدلاً من strftime لكل صف
+ * الذي يمنع استخدام فهارس التاريخ. شرط المدى يبقى على عمود المستند فيستخدم فهرسه.
+ *
+ * الجدول يغطي مدى متصلاً من السنوات: سنوات البيانات الموجودة عند إنشائه حتى السنة التالية
+ * للحالية، ويمتد بسنوات كاملة عند ترحيل قيد بتاريخ خارجه (ensureCovers من addLedgerEntry،
+ * وكل مستند يصل إلى الدفتر بتاريخه). موسم كل يوم يحدثه SeasonResolver مع وسم المستندات.
+ */
+public final class DateDimension {
+
+    /** أول شهر في السنة المالية؛ السنة المالية تُسمى بسنة بدايتها */
+    public static final int FISCAL_YEAR_START_MONTH = 1;
+
+    /** جداول المستندات وأعمدة تواريخها التي يحدد مداها أول إنشاء للجدول */
+    private static final String[][] DATED_TABLES = {
+        {"general_ledger", "entry_date"},
+        {"sales", "sale_date"},
+        {"purchases", "purchase_date"},
+        {"financial_transactions", "transaction_date"},
+        {"inventory_adjustments", "adjustment_date"}
+    };
+
+    private static final String POPULATE_SQL = """
+        WITH RECURSIVE days(d) AS (
+            SELECT ?
+            UNION ALL
+            SELECT date(d, '+1 day') FROM days WHERE d < ?
+        )
+        INSERT OR IGNORE INTO date_dim (calendar_date, epoch_day, year, month, month_key, quarter,
+                                        iso_year, iso_week, week_key, day_of_week, fiscal_year, fiscal_period)
+        SELECT d, epoch_day, y, m, y * 100 + m, (m + 2) / 3,
+               iso_year, iso_week, iso_year * 100 + iso_week, day_of_week,
+               CASE WHEN m >= ? THEN y ELSE y - 1 END,
+               (m - ? + 12) % 12 + 1
+        FROM (
+            SELECT d,
+                   CAST(julianday(d) - 2440587.5 AS INTEGER) AS epoch_day,
+                   CAST(substr(d, 1, 4) AS INTEGER) AS y,
+                   CAST(substr(d, 6, 2) AS INTEGER) AS m,
+                   CAST(strftime('%G', d) AS INTEGER) AS iso_year,
+                   CAST(strftime('%V', d) AS INTEGER) AS iso_week,
+                   CAST(strftime('%u', d) AS INTEGER) AS day_of_week
+            FROM days
+        )
+        """;
+
+    private static volatile Coverage covered;
+
+    private DateDimension() {
+    }
+
+    /**
+     * إنشاء الجدول وملؤه لمدى البيانات الموجودة (ترحيل المخطط)
+     */
+    public static void create(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS date_dim (
+                    calendar_date TEXT PRIMARY KEY,
+                    epoch_day INTEGER NOT NULL UNIQUE,
+                    year INTEGER NOT NULL,
+                    month INTEGER NOT NULL,
+                    month_key INTEGER NOT NULL,
+                    quarter INTEGER NOT NULL,
+                    iso_year INTEGER NOT NULL,
+                    iso_week INTEGER NOT NULL,
+                    week_key INTEGER NOT NULL,
+                    day_of_week INTEGER NOT NULL,
+                    fiscal_year INTEGER NOT NULL,
+                    fiscal_period INTEGER NOT NULL,
+                    season_id INTEGER
+                ) WITHOUT ROWID
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_date_dim_season ON date_dim (season_id, calendar_date)");
+        }
+
+        LocalDate today = LocalDate.now();
+        LocalDate earliest = today;
+        LocalDate latest = today;
+        for (String[] table : DATED_TABLES) {
+            String sql = "SELECT MIN(" + table[1] + "), MAX(" + table[1] + ") FROM " + table[0];
+            try (PreparedStatement stmt = conn.prepareStatement(sql); ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    earliest = earlier(earliest, FormatUtils.parseDateFromDatabase(rs.getString(1)));
+                    latest = later(latest, FormatUtils.parseDateFromDatabase(rs.getString(2)));
+                }
+            }
+        }
+        populate(conn, earliest.withDayOfYear(1), latest.plusYears(1).with(TemporalAdjusters.lastDayOfYear()),
+            SeasonResolver.load(conn));
+    }
+
+    /**
+     * التأكد من وجود صف اليوم قبل ترحيل مستند بتاريخه، بمد الجدول بسنوات كاملة متصلة
+     *
+     * @param conn اتصال المعاملة الحالية؛ الامتداد يُلغى معها إذا فشلت
+     */
+    public static void ensureCovers(Connection conn, LocalDate date) throws SQLException {
+        if (date == null) {
+            return;
+        }
+        long day = date.toEpochDay();
+        if (coverage(conn).contains(day)) {
+            return;
+        }
+        // المدى في الذاكرة لا يُحدث بعد الامتداد (قد تُلغى معاملته)، فالجدول نفسه هو المرجع
+        Coverage actual = load(conn);
+        if (actual.contains(day)) {
+            return;
+        }
+        LocalDate from = date.withDayOfYear(1);
+        LocalDate to = date.with(TemporalAdjusters.lastDayOfYear());
+        if (!actual.isEmpty()) {
+            if (day < actual.first()) {
+                to = LocalDate.ofEpochDay(actual.first() - 1);
+            } else {
+                from = LocalDate.ofEpochDay(actual.last() + 1);
+            }
+        }
+        populate(conn, from, to, SeasonResolver.index(conn));
+    }
+
+    /**
+     * إضافة أيام [from, to] الناقصة ووسمها بمواسمها
+     */
+    static void populate(Connection conn, LocalDate from, LocalDate to, SeasonResolver.Index seasons) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(POPULATE_SQL)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(2, FormatUtils.formatDateForDatabase(to));
+            stmt.setInt(3, FISCAL_YEAR_START_MONTH);
+            stmt.setInt(4, FISCAL_YEAR_START_MONTH);
+            stmt.executeUpdate();
+        }
+        SeasonResolver.tagCalendar(conn, seasons, from, to);
+    }
+
+    /**
+     * إسقاط المدى المحفوظ؛ يُقرأ من جديد عند أول ترحيل
+     */
+    public static void invalidate() {
+        covered = null;
+    }
+
+    private static Coverage coverage(Connection conn) throws SQLException {
+        Coverage coverage = covered;
+        if (coverage == null) {
+            coverage = load(conn);
+            covered = coverage;
+        }
+        return coverage;
+    }
+
+    private static Coverage load(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT MIN(epoch_day), MAX(epoch_day) FROM date_dim");
+             ResultSet rs = stmt.executeQuery()) {
+            if (rs.next() && rs.getObject(1) != null) {
+                return new Coverage(rs.getLong(1), rs.getLong(2));
+            }
+        }
+        return new Coverage(1, 0);
+    }
+
+    private static LocalDate earlier(LocalDate a, LocalDate b) {
+        return b != null && b.isBefore(a) ? b : a;
+    }
+
+    private static LocalDate later(LocalDate a, LocalDate b) {
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    /**
+     * المدى المتصل من أيام epoch الموجود في الجدول (فارغ إذا first > last)
+     */
+    private record Coverage(long first, long last) {
+        boolean contains(long day) {
+            return first <= day && day <= last;
+        }
+
+        boolean isEmpty() {
+            return first > last;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package accounting.service;
+
+import accounting.model.Contact;
+import accounting.model.SaleRecord;
+import accounting.service.ContactStatementService.StatementLine;
+import accounting.service.ContactStatementService.StatementSummary;
+import accounting.util.HtmlDocumentRenderer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+/**
+ * إنتاج كشوف الحسابات والفواتير دفعة واحدة (طباعة نهاية الشهر)
+ *
+ * البيانات تُجلب بمسح واحد لكل الدفعة، ثم يُرسل كل مستند إلى مجموعة خيوط بعدد
+ * أنوية المعالج لتوليده وكتابته. طابور المهام محدود، فإذا امتلأ يولد خيط القراءة
+ * المستند بنفسه، وبذلك لا يتجاوز ما في الذاكرة عدداً ثابتاً من المستندات مهما كان
+ * حجم الدفعة. المستندات تُكتب كملفات HTML قابلة للطباعة (راجع HtmlDocumentRenderer).
+ */
+public class DocumentBatchService {
+
+    private static final Logger LOGGER = Logger.getLogger(DocumentBatchService.class.getName());
+
+    private final ContactDataService contactDataService;
+    private final ContactStatementService contactStatementService;
+    private final SaleDataService saleDataService;
+    private final ReportDataService reportDataService;
+
+    public DocumentBatchService() {
+        this.contactDataService = new ContactDataService();
+        this.contactStatementService = new ContactStatementService();
+        this.saleDataService = new SaleDataService();
+        this.reportDataService = new ReportDataService();
+    }
+
+    /**
+     * توليد كشوف حساب لجهات التعامل المحددة، أو لكل من له حركات إذا كانت القائمة null
+     */
+    public BatchResult renderStatements(Collection<Integer> contactIds, LocalDate fromDate, LocalDate toDate,
+                                        Path outputDir, ProgressListener progress,
+                                        BooleanSupplier cancelled) throws SQLException, IOException {
+        Files.createDirectories(outputDir);
+        Map<Integer, String> contactNames = new HashMap<>();
+        for (Contact contact : contactDataService.getAllContacts()) {
+            contactNames.put(contact.getContactId(), contact.getName());
+        }
+        Set<Integer> requested = contactIds == null ? null : new LinkedHashSet<>(contactIds);
+        int total = requested != null ? requested.size() : contactStatementService.countContactsWithMovements(toDate);
+
+        try (BatchWriter writer = new BatchWriter(total, progress, cancelled)) {
+            Set<Integer> rendered = new LinkedHashSet<>();
+            try {
+                contactStatementService.streamAllStatements(fromDate, toDate, new ContactStatementService.StatementListener() {
+                    private List<StatementLine> lines = new ArrayList<>();
+
+                    @Override
+                    public void onLine(StatementLine line) {
+                        writer.checkCancelled();
+                        if (requested == null || requested.contains(line.getContactId())) {
+                            lines.add(line);
+                        }
+                    }
+
+                    @Override
+                    public void onStatementEnd(StatementSummary summary) {
+                        List<StatementLine> contactLines = lines;
+                        lines = new ArrayList<>();
+                        int contactId = summary.getContactId();
+                        if (requested != null && !requested.contains(contactId)) {
+                            return;
+                        }
+                        rendered.add(contactId);
+                        String name = contactNames.getOrDefault(contactId, String.valueOf(contactId));
+                        writer.submit(outputDir.resolve("statement-" + contactId + ".html"),
+                            () -> HtmlDocumentRenderer.renderStatement(name, fromDate, toDate, contactLines, summary));
+                    }
+                });
+
+                // جهات التعامل المطلوبة التي لا حركات لها تحصل على كشف برصيد صفري
+                if (requested != null) {
+                    for (Integer contactId : requested) {
+                        if (!rendered.contains(contactId)) {
+                            String name = contactNames.getOrDefault(contactId, String.valueOf(contactId));
+                            StatementSummary empty = new StatementSummary(contactId, 0, 0, 0, 0, 0,
+                                new ContactStatementService.AgingBuckets(0, 0, 0, 0));
+                            writer.submit(outputDir.resolve("statement-" + contactId + ".html"),
+                                () -> HtmlDocumentRenderer.renderStatement(name, fromDate, toDate, Collections.emptyList(), empty));
+                        }
+                    }
+                }
+            } catch (CancellationException e) {
+                LOGGER.info("Statement batch cancelled.");
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * توليد فواتير البيع الصادرة في فترة، لعميل محدد أو لكل العملاء إذا كان customerId null
+     */
+    public BatchResult renderSaleInvoices(LocalDate fromDate, LocalDate toDate, Integer customerId, Path outputDir,
+                                          ProgressListener progress, BooleanSupplier cancelled) throws SQLException, IOException {
+        Files.createDirectories(outputDir);
+        List<SaleRecord> sales = saleDataService.getSales(fromDate, toDate, null, customerId, null);
+        Map<Integer, Double> paidAmounts = reportDataService.getSalePaidAmounts(fromDate, toDate);
+
+        try (BatchWriter writer = new BatchWriter(sales.size(), progress, cancelled)) {
+            try {
+                for (SaleRecord sale : sales) {
+                    writer.checkCancelled();
+                    double paid = paidAmounts.getOrDefault(sale.getSaleId(), 0.0);
+                    writer.submit(outputDir.resolve("invoice-" + sale.getSaleId() + ".html"),
+                        () -> HtmlDocumentRenderer.renderSaleInvoice(sale, paid));
+                }
+            } catch (CancellationException e) {
+                LOGGER.info("Invoice batch cancelled.");
+            }
+            return writer.finish();
+        }
+    }
+
+    /**
+     * مجموعة خيوط بطابور محدود لتوليد المستندات وكتابتها مع تتبع التقدم والإلغاء
+     */
+    private static final class BatchWriter implements AutoCloseable {
+        private final int total;
+        private final ProgressListener progress;
+        private final BooleanSupplier cancelled;
+        private final ThreadPoolExecutor executor;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final ConcurrentLinkedQueue<Path> files = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<Exception> failures = new ConcurrentLinkedQueue<>();
+
+        BatchWriter(int total, ProgressListener progress, BooleanSupplier cancelled) {
+            this.total = total;
+            this.progress = progress;
+            this.cancelled = cancelled;
+            int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+
+        void checkCancelled() {
+            if (isCancelled()) {
+                throw new CancellationException();
+            }
+        }
+
+        private boolean isCancelled() {
+            return cancelled != null && cancelled.getAsBoolean();
+        }
+
+        void submit(Path file, DocumentSource source) {
+            checkCancelled();
+            executor.execute(() -> {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    Files.writeString(file, source.render(), StandardCharsets.UTF_8);
+                    files.add(file);
+                } catch (IOException | RuntimeException e) {
+                    failures.add(e);
+                }
+                if (progress != null) {
+                    progress.onProgress(completed.incrementAndGet(), total);
+                }
+            });
+        }
+
+        BatchResult finish() throws IOException {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+            }
+            Exception failure = failures.peek();
+            if (failure != null) {
+                throw new IOException("فشل توليد " + failures.size() + " مستند", failure);
+            }
+            List<Path> written = new ArrayList<>(files);
+            Collections.sort(written);
+            return new BatchResult(written, total, isCancelled());
+        }
+
+        @Override
+        public void close() {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface DocumentSource {
+        String render();
+    }
+
+    /**
+     * مستمع تقدم الدفعة، يُستدعى من خيوط التوليد بعد كتابة كل مستند
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int completed, int total);
+    }
+
+    /**
+     * نتيجة دفعة المستندات
+     */
+    public static class BatchResult {
+        private final List<Path> files;
+        private final int requested;
+        private final boolean cancelled;
+
+        public BatchResult(List<Path> files, int requested, boolean cancelled) {
+            this.files = files;
+            this.requested = requested;
+            this.cancelled = cancelled;
+        }
+
+        public List<Path> getFiles() { return files; }
+        public int getRequested() { return requested; }
+        public boolean isCancelled() { return cancelled; }
+    }
+}
@@ -3,6 +3,7 @@ package accounting.service;
 import accounting.dao.AbstractDAO;
 import accounting.formatter.FormatUtils;
 import accounting.model.FinancialAccount;
+import accounting.util.Money;
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
@@ -19,10 +20,10 @@ public class FinancialAccountDataService extends AbstractDAO<FinancialAccount, I
             rs.getInt("account_id"),
             rs.getString("account_name"),
             FinancialAccount.AccountType.valueOf(rs.getString("account_type")),
-            rs.getDouble("opening_balance"),
+            Money.getAmount(rs, "opening_balance"),
             FormatUtils.parseDateFromDatabase(rs.getString("opening_balance_date"))
         );
-        account.setCurrentBalance(rs.getDouble("current_balance"));
+        account.setCurrentBalance(Money.getAmount(rs, "current_balance"));
         return account;
     }
 
@@ -30,18 +31,18 @@ public class FinancialAccountDataService extends AbstractDAO<FinancialAccount, I
     protected void mapEntityToPreparedStatement(FinancialAccount account, PreparedStatement ps) throws SQLException {
         ps.setString(1, account.getAccountName());
         ps.setString(2, account.getAccountType().name());
-        ps.setDouble(3, account.getOpeningBalance());
+        ps.setLong(3, Money.toMinor(account.getOpeningBalance()));
         ps.setString(4, FormatUtils.formatDateForDatabase(account.getOpeningBalanceDate()));
-        ps.setDouble(5, account.getOpeningBalance());
+        ps.setLong(5, Money.toMinor(account.getOpeningBalance()));
     }
 
     @Override
     protected void mapEntityToUpdatePreparedStatement(FinancialAccount account, PreparedStatement ps) throws SQLException {
         ps.setString(1, account.getAccountName());
         ps.setString(2, account.getAccountType().name());
-        ps.setDouble(3, account.getOpeningBalance());
+        ps.setLong(3, Money.toMinor(account.getOpeningBalance()));
         ps.setString(4, FormatUtils.formatDateForDatabase(account.getOpeningBalanceDate()));
-        ps.setDouble(5, account.getCurrentBalance());
+        ps.setLong(5, Money.toMinor(account.getCurrentBalance()));
         ps.setInt(6, account.getAccountId());
     }
 
@@ -67,10 +68,12 @@ public class FinancialAccountDataService extends AbstractDAO<FinancialAccount, I
 
     public void addAccount(FinancialAccount account) throws SQLException {
         save(account);
+        AccountDirectory.invalidate();
     }
 
     public void updateAccount(FinancialAccount account) throws SQLException {
         update(account);
+        AccountDirectory.invalidate();
     }
 
     public void deleteAccount(int accountId) throws SQLException {
@@ -85,6 +88,7 @@ public class FinancialAccountDataService extends AbstractDAO<FinancialAccount, I
                 stmt.executeUpdate();
                 dataManager.logAuditEntry("financial_accounts", accountId, "DELETE", null, null, "SYSTEM", conn);
              }
+            dataManager.afterCompletion(committed -> AccountDirectory.invalidate());
             return null;
         });
     }
@@ -3,7 +3,9 @@ package accounting.service;
 import accounting.model.BalanceSheet;
 import accounting.model.IncomeStatement;
 import accounting.model.TrialBalanceEntry;
+import accounting.util.AppMetrics;
 import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
 import javafx.collections.FXCollections;
 import javafx.scene.chart.PieChart;
 
@@ -26,62 +28,71 @@ public class FinancialSummaryService {
     }
 
     public List<TrialBalanceEntry> getTrialBalance(LocalDate toDate) throws SQLException {
-        String sql = """
-            SELECT 
-                fa.account_id, 
-                fa.account_name, 
-                SUM(gl.debit) as total_debit, 
-                SUM(gl.credit) as total_credit
-            FROM general_ledger gl
-            JOIN financial_accounts fa ON gl.account_id = fa.account_id
-            WHERE gl.entry_date <= ?
-            GROUP BY fa.account_id, fa.account_name
-            ORDER BY fa.account_id;
-            """;
-        List<TrialBalanceEntry> entries = new ArrayList<>();
-        try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setString(1, toDate.toString());
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    entries.add(new TrialBalanceEntry(
-                        rs.getInt("account_id"),
-                        rs.getString("account_name"),
-                        rs.getDouble("total_debit"),
-                        rs.getDouble("total_credit")
-                    ));
+        try (AppMetrics.Operation op = AppMetrics.begin("report.trial_balance")) {
+            String sql = """
+                SELECT 
+                    fa.account_id, 
+                    fa.account_name, 
+                    SUM(gl.debit) as total_debit, 
+                    SUM(gl.credit) as total_credit
+                FROM general_ledger gl
+                JOIN financial_accounts fa ON gl.account_id = fa.account_id
+                WHERE gl.entry_date <= ?
+                GROUP BY fa.account_id, fa.account_name
+                ORDER BY fa.account_id;
+                """;
+            List<TrialBalanceEntry> entries = new ArrayList<>();
+            try (Connection conn = dataManager.getConnection();
+                 PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, toDate.toString());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        entries.add(new TrialBalanceEntry(
+                            rs.getInt("account_id"),
+                            rs.getString("account_name"),
+                            Money.getAmount(rs, "total_debit"),
+                            Money.getAmount(rs, "total_credit")
+                        ));
+                    }
                 }
             }
+            op.succeeded();
+            return entries;
         }
-        return entries;
     }
 
     public IncomeStatement getIncomeStatement(LocalDate fromDate, LocalDate toDate) throws SQLException {
-        Map<String, Double> revenues = getAccountBalances("REVENUE", fromDate, toDate);
-        Map<String, Double> expenses = getAccountBalances("EXPENSE", fromDate, toDate);
-        return new IncomeStatement(revenues, expenses);
+        try (AppMetrics.Operation op = AppMetrics.begin("report.income_statement")) {
+            Map<String, Double> revenues = getAccountBalances("REVENUE", fromDate, toDate);
+            Map<String, Double> expenses = getAccountBalances("EXPENSE", fromDate, toDate);
+            op.succeeded();
+            return new IncomeStatement(revenues, expenses);
+        }
     }
 
     public BalanceSheet getBalanceSheet(LocalDate toDate) throws SQLException {
-        LocalDate startOfYear = toDate.withDayOfYear(1);
-        IncomeStatement periodIncome = getIncomeStatement(startOfYear, toDate);
-        double retainedEarnings = periodIncome.getNetIncome();
-
-        Map<String, Double> assets = getAccountBalances("ASSET", null, toDate);
-        assets.putAll(getAccountBalances("CURRENT_ASSET", null, toDate));
-        assets.putAll(getAccountBalances("CASH", null, toDate));
-        assets.putAll(getAccountBalances("BANK", null, toDate));
-        assets.putAll(getAccountBalances("ACCOUNTS_RECEIVABLE", null, toDate));
-
-        Map<String, Double> liabilities = getAccountBalances("LIABILITY", null, toDate);
-        liabilities.putAll(getAccountBalances("ACCOUNTS_PAYABLE", null, toDate));
-
-        Map<String, Double> equity = getAccountBalances("EQUITY", null, toDate);
-
-        return new BalanceSheet(assets, liabilities, equity, retainedEarnings, 
-                                FXCollections.observableArrayList(), 
-                                FXCollections.observableArrayList(), 
-                                FXCollections.observableArrayList());
+        try (AppMetrics.Operation op = AppMetrics.begin("report.balance_sheet")) {
+            LocalDate startOfYear = toDate.withDayOfYear(1);
+            IncomeStatement periodIncome = getIncomeStatement(startOfYear, toDate);
+            double retainedEarnings = periodIncome.getNetIncome();
+
+            Map<String, Double> assets = getAccountBalances("ASSET", null, toDate);
+            assets.putAll(getAccountBalances("CURRENT_ASSET", null, toDate));
+            assets.putAll(getAccountBalances("CASH", null, toDate));
+            assets.putAll(getAccountBalances("BANK", null, toDate));
+            assets.putAll(getAccountBalances("ACCOUNTS_RECEIVABLE", null, toDate));
+
+            Map<String, Double> liabilities = getAccountBalances("LIABILITY", null, toDate);
+            liabilities.putAll(getAccountBalances("ACCOUNTS_PAYABLE", null, toDate));
+
+            Map<String, Double> equity = getAccountBalances("EQUITY", null, toDate);
+
+            op.succeeded();
+            return new BalanceSheet(assets, liabilities, equity, retainedEarnings, 
+                                    FXCollections.observableArrayList(), 
+                                    FXCollections.observableArrayList(), 
+                                    FXCollections.observableArrayList());
+        }
     }
 
     private Map<String, Double> getAccountBalances(String accountType, LocalDate fromDate, LocalDate toDate) throws SQLException {
@@ -104,7 +115,7 @@ public class FinancialSummaryService {
 
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    balances.put(rs.getString("account_name"), rs.getDouble("balance"));
+                    balances.put(rs.getString("account_name"), Money.getAmount(rs, "balance"));
                 }
             }
         }
@@ -5,6 +5,10 @@ import accounting.model.LedgerEntry;
 import accounting.model.CashFlowEntry;
 import accounting.formatter.FormatUtils;
 import accounting.util.ImprovedDataManager;
+import accounting.util.KeysetSort;
+import accounting.util.Money;
+import accounting.util.PageRequest;
+import accounting.util.RowCache;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -12,14 +16,68 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class FinancialTransactionDataService {
 
+    /** آخر ختم زمني استُخدم في أرقام القيود اليدوية والمصروفات */
+    private static final AtomicLong LAST_REFERENCE_STAMP = new AtomicLong();
+
+    /** أعمدة سطر الدفتر؛ general_ledger لا يخزن نوع الحساب فيُضم من شجرة الحسابات */
+    private static final String LEDGER_LINE_COLUMNS = """
+        SELECT gl.entry_id, gl.account_id, gl.entry_date, gl.description, gl.transaction_ref,
+               gl.debit, gl.credit, fa.account_type, gl.source_type, gl.source_id
+        FROM general_ledger gl
+        LEFT JOIN financial_accounts fa ON fa.account_id = gl.account_id
+        """;
+
+    /** أعمدة الترتيب المسموحة لصفحات دفتر الأستاذ */
+    private static final KeysetSort<LedgerEntry> LEDGER_SORT = new KeysetSort<LedgerEntry>("gl.entry_id", LedgerEntry::getEntryId)
+        .column("date", "gl.entry_date", line -> FormatUtils.formatDateForDatabase(line.getDate()))
+        .column("reference", "COALESCE(gl.transaction_ref, '')", line -> Objects.toString(line.getReference(), ""))
+        .column("description", "COALESCE(gl.description, '')", line -> Objects.toString(line.getDescription(), ""))
+        .column("debit", "gl.debit", line -> Money.toMinor(line.getDebit()))
+        .column("credit", "gl.credit", line -> Money.toMinor(line.getCredit()));
+
+    /**
+     * حركة النقدية والبنك بالرصيد الجاري محسوباً في SQL على كل التاريخ حتى نهاية الفترة،
+     * فيصح رصيد أي صفحة دون تحميل ما قبلها. فلاتر بداية الفترة والبحث تُطبق بعد الحساب.
+     */
+    private static final String CASH_FLOW_ROWS = """
+        SELECT * FROM (
+            SELECT gl.entry_id, gl.entry_date, gl.description, gl.source_type, gl.debit, gl.credit,
+                   SUM(gl.debit - gl.credit) OVER (ORDER BY gl.entry_date, gl.entry_id) AS balance
+            FROM general_ledger gl
+            JOIN financial_accounts fa ON gl.account_id = fa.account_id
+            WHERE fa.account_type IN ('CASH', 'BANK') AND (? IS NULL OR gl.entry_date <= ?)
+        ) cf
+        WHERE (? IS NULL OR cf.entry_date >= ?) AND (? IS NULL OR cf.description LIKE ?)
+        """;
+
+    private static final KeysetSort<CashFlowEntry> CASH_FLOW_SORT = new KeysetSort<CashFlowEntry>("cf.entry_id", CashFlowEntry::getEntryId)
+        .column("date", "cf.entry_date", entry -> FormatUtils.formatDateForDatabase(entry.getDate()))
+        .column("description", "COALESCE(cf.description, '')", entry -> Objects.toString(entry.getDescription(), ""))
+        .column("inflow", "cf.debit", entry -> Money.toMinor(entry.getInflow()))
+        .column("outflow", "cf.credit", entry -> Money.toMinor(entry.getOutflow()))
+        .column("balance", "cf.balance", entry -> Money.toMinor(entry.getBalance()));
+
     private final ImprovedDataManager dataManager;
+    private final SeasonAnalyticsService seasonAnalytics;
 
     public FinancialTransactionDataService() {
         this.dataManager = ImprovedDataManager.getInstance();
+        this.seasonAnalytics = new SeasonAnalyticsService();
+    }
+
+    /**
+     * ختم زمني بالملي ثانية لرقم القيد، يزيد دائماً حتى لا يتكرر الرقم عند تسجيل
+     * أكثر من قيد في نفس الملي ثانية (الحذف يتم برقم القيد)
+     */
+    private static long nextReferenceStamp() {
+        return LAST_REFERENCE_STAMP.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
     }
 
     public List<CashFlowEntry> getCashFlowEntries(LocalDate from, LocalDate to) throws SQLException {
@@ -57,11 +115,11 @@ public class FinancialTransactionDataService {
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
                     entries.add(new CashFlowEntry(
-                        LocalDate.parse(rs.getString("entry_date"), accounting.formatter.FormatUtils.DATE_FORMATTER),
+                        FormatUtils.parseDateFromDatabase(rs.getString("entry_date")),
                         rs.getString("description"),
                         rs.getString("source_type"),
-                        rs.getDouble("debit"), // Inflow is debit to cash/bank
-                        rs.getDouble("credit")  // Outflow is credit to cash/bank
+                        Money.getAmount(rs, "debit"), // Inflow is debit to cash/bank
+                        Money.getAmount(rs, "credit")  // Outflow is credit to cash/bank
                     ));
                 }
             }
@@ -76,10 +134,11 @@ public class FinancialTransactionDataService {
             openingBalance = getOpeningBalance(from);
         }
 
-        double runningBalance = openingBalance;
+        // الرصيد الجاري بالقروش حتى لا تتراكم بواقي التقريب على طول الكشف
+        long runningBalance = Money.toMinor(openingBalance);
         for (CashFlowEntry entry : entries) {
-            runningBalance += entry.getInflow() - entry.getOutflow();
-            entry.setBalance(runningBalance);
+            runningBalance += Money.toMinor(entry.getInflow()) - Money.toMinor(entry.getOutflow());
+            entry.setBalance(Money.toMajor(runningBalance));
         }
     }
 
@@ -94,7 +153,7 @@ public class FinancialTransactionDataService {
             stmt.setString(1, from.toString());
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("opening_balance");
+                    return Money.getAmount(rs, "opening_balance");
                 }
             }
         }
@@ -103,12 +162,9 @@ public class FinancialTransactionDataService {
     
 
     public List<LedgerEntry> getGeneralLedgerEntries(LocalDate from, LocalDate to) throws SQLException {
-        List<LedgerEntry> entries = new ArrayList<>();
-        String sql = """
-            SELECT *
-            FROM general_ledger
-            WHERE (? IS NULL OR entry_date >= ?) AND (? IS NULL OR entry_date <= ?)
-            ORDER BY entry_date, entry_id;
+        String sql = LEDGER_LINE_COLUMNS + """
+            WHERE (? IS NULL OR gl.entry_date >= ?) AND (? IS NULL OR gl.entry_date <= ?)
+            ORDER BY gl.entry_date, gl.entry_id
             """;
 
         try (Connection conn = dataManager.getConnection();
@@ -122,31 +178,206 @@ public class FinancialTransactionDataService {
             stmt.setString(3, toDate);
             stmt.setString(4, toDate);
 
+            return readLedgerLines(stmt);
+        }
+    }
+
+    /**
+     * كشف حساب مالي واحد بالرصيد الجاري، من مؤشر الحساب بدلاً من تحميل الدفتر كاملاً
+     */
+    public List<LedgerEntry> getAccountLedgerEntries(int accountId) throws SQLException {
+        String sql = LEDGER_LINE_COLUMNS + """
+            WHERE gl.account_id = ?
+            ORDER BY gl.entry_date, gl.entry_id
+            """;
+
+        List<LedgerEntry> entries;
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, accountId);
+            entries = readLedgerLines(stmt);
+        }
+        long runningBalance = 0;
+        for (LedgerEntry entry : entries) {
+            runningBalance += Money.toMinor(entry.getDebit()) - Money.toMinor(entry.getCredit());
+            entry.setBalance(Money.toMajor(runningBalance));
+        }
+        return entries;
+    }
+
+    /**
+     * صفحة من دفتر الأستاذ العام للفترة، مرتبة ومُصفحة في SQL
+     */
+    public List<LedgerEntry> getGeneralLedgerPage(LocalDate from, LocalDate to, PageRequest<LedgerEntry> page) throws SQLException {
+        StringBuilder sql = new StringBuilder(LEDGER_LINE_COLUMNS).append("WHERE 1=1");
+        List<Object> parameters = new ArrayList<>();
+        appendPeriod(sql, parameters, "gl.entry_date", from, to);
+        LEDGER_SORT.appendPage(sql, parameters, page);
+
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
+            return readLedgerLines(stmt);
+        }
+    }
+
+    /**
+     * عدد سطور الدفتر ومجموع المدين والدائن للفترة، من غير تحميل السطور
+     */
+    public LedgerTotals getGeneralLedgerTotals(LocalDate from, LocalDate to) throws SQLException {
+        StringBuilder sql = new StringBuilder("""
+            SELECT COUNT(*) AS line_count, COALESCE(SUM(debit), 0) AS total_debit, COALESCE(SUM(credit), 0) AS total_credit
+            FROM general_ledger
+            WHERE 1=1
+            """);
+        List<Object> parameters = new ArrayList<>();
+        appendPeriod(sql, parameters, "entry_date", from, to);
+        return readTotals(sql.toString(), parameters);
+    }
+
+    /**
+     * صفحة من حركة النقدية والبنك؛ رصيد كل سطر يشمل الرصيد الافتتاحي قبل الفترة
+     */
+    public List<CashFlowEntry> getCashFlowPage(LocalDate from, LocalDate to, String searchText,
+                                               PageRequest<CashFlowEntry> page) throws SQLException {
+        StringBuilder sql = new StringBuilder(CASH_FLOW_ROWS);
+        List<Object> parameters = cashFlowParameters(from, to, searchText);
+        CASH_FLOW_SORT.appendPage(sql, parameters, page);
+
+        List<CashFlowEntry> entries = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            bind(stmt, parameters);
             try (ResultSet rs = stmt.executeQuery()) {
+                RowCache cache = new RowCache();
                 while (rs.next()) {
-                    entries.add(new LedgerEntry(
-                        LocalDate.parse(rs.getString("entry_date")),
-                        rs.getString("description"),
-                        rs.getString("transaction_ref"),
-                        rs.getDouble("debit"),
-                        rs.getDouble("credit"),
-                        rs.getString("account_type"),
-                        rs.getString("source_type"),
-                        rs.getInt("source_id"),
-                        rs.getString("contact_name"),
-                        rs.getString("item_name"),
-                        rs.getObject("quantity", Double.class),
-                        rs.getObject("unit_price", Double.class)
-                    ));
+                    CashFlowEntry entry = new CashFlowEntry(
+                        rs.getInt("entry_id"),
+                        cache.date(rs.getString("entry_date")),
+                        cache.text(rs.getString("description")),
+                        cache.text(rs.getString("source_type")),
+                        Money.getAmount(rs, "debit"),
+                        Money.getAmount(rs, "credit")
+                    );
+                    entry.setBalance(Money.getAmount(rs, "balance"));
+                    entries.add(entry);
                 }
             }
         }
         return entries;
     }
 
+    public long countCashFlowEntries(LocalDate from, LocalDate to, String searchText) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT COUNT(*) FROM (" + CASH_FLOW_ROWS + ")")) {
+            bind(stmt, cashFlowParameters(from, to, searchText));
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /**
+     * إجمالي الداخل (مدين) والخارج (دائن) من النقدية والبنك في الفترة
+     */
+    public LedgerTotals getCashFlowTotals(LocalDate from, LocalDate to) throws SQLException {
+        StringBuilder sql = new StringBuilder("""
+            SELECT COUNT(*) AS line_count, COALESCE(SUM(gl.debit), 0) AS total_debit, COALESCE(SUM(gl.credit), 0) AS total_credit
+            FROM general_ledger gl
+            JOIN financial_accounts fa ON gl.account_id = fa.account_id
+            WHERE fa.account_type IN ('CASH', 'BANK')
+            """);
+        List<Object> parameters = new ArrayList<>();
+        appendPeriod(sql, parameters, "gl.entry_date", from, to);
+        return readTotals(sql.toString(), parameters);
+    }
+
+    private LedgerTotals readTotals(String sql, List<Object> parameters) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            bind(stmt, parameters);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return new LedgerTotals(rs.getLong("line_count"), Money.getAmount(rs, "total_debit"),
+                    Money.getAmount(rs, "total_credit"));
+            }
+        }
+    }
+
+    /**
+     * شروط الفترة تُضاف فقط عند تحديدها حتى يستخدم SQLite فهرس التاريخ للمدى
+     */
+    private static void appendPeriod(StringBuilder sql, List<Object> parameters, String dateColumn, LocalDate from, LocalDate to) {
+        if (from != null) {
+            sql.append(" AND ").append(dateColumn).append(" >= ?");
+            parameters.add(FormatUtils.formatDateForDatabase(from));
+        }
+        if (to != null) {
+            sql.append(" AND ").append(dateColumn).append(" <= ?");
+            parameters.add(FormatUtils.formatDateForDatabase(to));
+        }
+    }
+
+    private static List<Object> cashFlowParameters(LocalDate from, LocalDate to, String searchText) {
+        String fromDate = FormatUtils.formatDateForDatabase(from);
+        String toDate = FormatUtils.formatDateForDatabase(to);
+        String pattern = searchText == null || searchText.isBlank() ? null : "%" + searchText.trim() + "%";
+        return new ArrayList<>(Arrays.asList(toDate, toDate, fromDate, fromDate, pattern, pattern));
+    }
+
+    private static void bind(PreparedStatement stmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            stmt.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    /**
+     * مجاميع محسوبة في SQL لشريط الإجماليات أسفل الجداول المُصفحة
+     */
+    public static class LedgerTotals {
+        private final long count;
+        private final double totalDebit;
+        private final double totalCredit;
+
+        public LedgerTotals(long count, double totalDebit, double totalCredit) {
+            this.count = count;
+            this.totalDebit = totalDebit;
+            this.totalCredit = totalCredit;
+        }
+
+        public long getCount() { return count; }
+        public double getTotalDebit() { return totalDebit; }
+        public double getTotalCredit() { return totalCredit; }
+    }
+
+    private List<LedgerEntry> readLedgerLines(PreparedStatement stmt) throws SQLException {
+        List<LedgerEntry> entries = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            // سطرا القيد يتشاركان التاريخ والمرجع والوصف، والأنواع تتكرر في كل الدفتر
+            RowCache cache = new RowCache();
+            while (rs.next()) {
+                entries.add(new LedgerEntry(
+                    rs.getInt("entry_id"),
+                    rs.getInt("account_id"),
+                    cache.date(rs.getString("entry_date")),
+                    cache.text(rs.getString("description")),
+                    cache.text(rs.getString("transaction_ref")),
+                    Money.getAmount(rs, "debit"),
+                    Money.getAmount(rs, "credit"),
+                    cache.text(rs.getString("account_type")),
+                    cache.text(rs.getString("source_type")),
+                    rs.getInt("source_id"),
+                    null, null, null, null
+                ));
+            }
+        }
+        return entries;
+    }
+
     public String addJournalEntry(FinancialAccount debitAccount, FinancialAccount creditAccount, LocalDate date, String description, double amount) throws SQLException {
+        requireOpenPeriod(date);
         return dataManager.executeTransaction(conn -> {
-            String transactionRef = "MAN-" + System.currentTimeMillis();
+            String transactionRef = "MAN-" + nextReferenceStamp();
             
             // Debit Account
             dataManager.addLedgerEntry(conn, transactionRef, date, debitAccount.getAccountId(), amount, 0.0, description, "MANUAL", 0, "MANUAL");
@@ -160,10 +391,96 @@ public class FinancialTransactionDataService {
         });
     }
 
+    /**
+     * سطر في قيد مركب: مدين أو دائن فقط. description اختياري ويُستخدم وصف القيد إذا كان فارغاً
+     */
+    public record JournalLine(int accountId, double debit, double credit, String description) {
+    }
+
+    /**
+     * قيد يومية مركب بعدد غير محدود من السطور (مسير رواتب، توزيع مصروف على عدة حسابات)، برقم قيد واحد.
+     *
+     * التحقق كله قبل فتح المعاملة وعلى مصفوفات بالقروش: اتجاه كل سطر، التوازن بلا أخطاء تقريب،
+     * وصلاحية الحسابات من AccountDirectory بلا استعلام، والفترة من PeriodLock. أي خطأ يرفض القيد كله
+     * برقم السطر. الترحيل جملة إدراج واحدة منفذة دفعة، وتحديث رصيد واحد لكل حساب مهما تكرر في السطور
+     */
+    public String addCompoundJournalEntry(LocalDate date, String description, List<JournalLine> lines) throws SQLException {
+        if (date == null) {
+            throw new IllegalArgumentException("تاريخ القيد مطلوب");
+        }
+        int count = lines == null ? 0 : lines.size();
+        if (count < 2) {
+            throw new IllegalArgumentException("القيد المركب يحتاج سطرين على الأقل");
+        }
+        int[] accountIds = new int[count];
+        long[] debits = new long[count];
+        long[] credits = new long[count];
+        String[] descriptions = new String[count];
+        long balance = 0;
+        for (int i = 0; i < count; i++) {
+            JournalLine line = lines.get(i);
+            accountIds[i] = line.accountId();
+            debits[i] = Money.toMinor(line.debit());
+            credits[i] = Money.toMinor(line.credit());
+            if (debits[i] < 0 || credits[i] < 0 || (debits[i] > 0) == (credits[i] > 0)) {
+                throw new IllegalArgumentException("السطر " + (i + 1) + ": يجب أن يكون مديناً أو دائناً بمبلغ موجب");
+            }
+            descriptions[i] = line.description() == null || line.description().isBlank() ? description : line.description();
+            balance += debits[i] - credits[i];
+        }
+        if (balance != 0) {
+            throw new IllegalArgumentException("القيد غير متوازن: الفرق " + Money.format(Math.abs(balance)));
+        }
+        int unpostable = AccountDirectory.firstUnpostable(accountIds, count);
+        if (unpostable >= 0) {
+            throw new IllegalArgumentException("السطر " + (unpostable + 1) + ": الحساب " + accountIds[unpostable]
+                + " غير موجود أو موقوف أو حساب رئيسي لا يقبل قيوداً");
+        }
+        requireOpenPeriod(date);
+
+        // حساب + رقم السطر في long واحد، فالترتيب يجمع سطور كل حساب متجاورة بلا كائنات
+        long[] byAccount = new long[count];
+        for (int i = 0; i < count; i++) {
+            byAccount[i] = ((long) accountIds[i] << 32) | i;
+        }
+        Arrays.sort(byAccount);
+        int[] balanceAccounts = new int[count];
+        long[] deltas = new long[count];
+        int accounts = 0;
+        for (int i = 0; i < count; i++) {
+            int line = (int) byAccount[i];
+            int accountId = (int) (byAccount[i] >>> 32);
+            if (accounts == 0 || balanceAccounts[accounts - 1] != accountId) {
+                balanceAccounts[accounts++] = accountId;
+            }
+            deltas[accounts - 1] += debits[line] - credits[line];
+        }
+        // الأرصدة مخزنة بطبيعة الحساب: الدائن يزيد رصيد الالتزامات وحقوق الملكية والإيرادات
+        for (int i = 0; i < accounts; i++) {
+            deltas[i] *= AccountDirectory.get(balanceAccounts[i]).naturalSign();
+        }
+        int balanceCount = accounts;
+
+        return dataManager.executeTransaction(conn -> {
+            String transactionRef = "MAN-" + nextReferenceStamp();
+            dataManager.addLedgerEntries(conn, transactionRef, date, accountIds, debits, credits, descriptions, count,
+                "MANUAL", 0, "MANUAL");
+            dataManager.updateAccountBalances(conn, balanceAccounts, deltas, balanceCount);
+            return transactionRef;
+        });
+    }
+
+    private static void requireOpenPeriod(LocalDate date) throws SQLException {
+        if (date != null && PeriodLock.isLocked(date)) {
+            throw new IllegalArgumentException("الفترة حتى " + FormatUtils.formatDateForDisplay(PeriodLock.getLockedThrough())
+                + " مقفلة ولا تقبل قيوداً جديدة");
+        }
+    }
+
     public String addExpense(LocalDate date, double amount, String description, int expenseAccountId, int paymentAccountId) throws SQLException {
 
         return dataManager.executeTransaction(conn -> {
-            String transactionRef = "EXP-" + System.currentTimeMillis();
+            String transactionRef = "EXP-" + nextReferenceStamp();
             
             // Debit Expense Account
             dataManager.addLedgerEntry(conn, transactionRef, date, expenseAccountId, amount, 0.0, description, "EXPENSE", null, "EXPENSE");
@@ -172,6 +489,8 @@ public class FinancialTransactionDataService {
             // Credit Payment Account
             dataManager.addLedgerEntry(conn, transactionRef, date, paymentAccountId, 0.0, amount, description, "EXPENSE", null, "EXPENSE");
             dataManager.updateAccountBalance(paymentAccountId, -amount, conn);
+
+            seasonAnalytics.recordExpense(conn, date, amount);
             
             return transactionRef;
         });
@@ -187,6 +506,9 @@ public class FinancialTransactionDataService {
             for (LedgerEntry entry : entries) {
                 // Reverse the transaction by creating a new entry with opposite amounts
                 dataManager.updateAccountBalance(entry.getAccountId(), -entry.getDebit() + entry.getCredit(), conn);
+                if ("EXPENSE".equals(entry.getSourceType()) && entry.getDebit() > 0) {
+                    seasonAnalytics.recordExpense(conn, entry.getDate(), -entry.getDebit());
+                }
             }
 
             // Delete the original entries
@@ -0,0 +1,669 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Crop;
+import accounting.model.InventoryAdjustment;
+import accounting.model.Warehouse;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * مخزون الدفعات (lots): كل وارد (شراء، مرتجع بيع، زيادة جرد) ينشئ دفعة بتاريخها وتكلفتها
+ * وصلاحيتها، وكل منصرف يُخصص على الدفعات المفتوحة بترتيب FEFO (الأقرب انتهاءً أولاً) ثم FIFO
+ * (الأقدم ترحيلاً أولاً للدفعات بلا صلاحية).
+ *
+ * كل حركة مخزون تمر على ImprovedDataManager.updateInventory الذي يستدعي post هنا، فالدفعات
+ * تبقى مطابقة لرصيد inventory. التخصيصات تُحفظ في inventory_lot_consumptions حتى يُعاد ما
+ * صرفه البيع إلى دفعاته نفسها عند حذفه. الحركة تحفظ الدفعة التي أنشأتها أو استهدفتها (lot_id)
+ * وصلاحيتها، فدفتر الدفعات يُعاد بناؤه من inventory_movements بنفس أرقام الدفعات (rebuild).
+ *
+ * كل دفعة في مخزن واحد، والصرف من دفعات مخزن المستند وحده. التحويل بين مخزنين يصرف من دفعات
+ * المصدر وينشئ في الوجهة دفعة لكل جزء بنفس صلاحيته وتكلفته (transfer).
+ *
+ * الدفعات المفتوحة لكل (مخزن، محصول) محفوظة في الذاكرة في TreeSet مرتبة بترتيب الصرف مع فهرس
+ * بالرقم: التخصيص O(log n) لكل دفعة يمسها، والدفعة المستنفدة تخرج من الشجرة. الشجرة تُعدل في
+ * مكانها مع المعاملة الكاتبة (SQLite يقبل كاتباً واحداً في كل مرة)؛ إلغاء المعاملة يُسقط الأشجار
+ * التي مستها فتُحمل من الجدول عند أول استخدام. الأشجار مرتبطة بمدير قاعدة البيانات.
+ *
+ * التقييم المحاسبي يبقى بمتوسط التكلفة المتحرك (average_cost_per_kg)؛ تكلفة الدفعة لتقارير
+ * الدفعات والتالف.
+ */
+public class InventoryLotService {
+
+    private static final Logger LOGGER = Logger.getLogger(InventoryLotService.class.getName());
+
+    /** أقل كمية تُعد رصيداً؛ ما دونها فرق تقريب */
+    private static final double EPSILON = 1e-6;
+
+    /** حركات الوارد التي تعيد ما صرفه مستند سابق إلى دفعاته: المرجع ثم المستند الأصلي */
+    private static final Map<String, String> REVERSALS = Map.of("SALE_DELETE", "SALE");
+
+    /** ترتيب الصرف: ذات الصلاحية أولاً بالأقرب انتهاءً، ثم بترتيب الترحيل */
+    private static final Comparator<OpenLot> CONSUMPTION_ORDER = Comparator
+        .comparing((OpenLot lot) -> lot.expiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+        .thenComparingLong(lot -> lot.lotId);
+
+    private static final Object LOCK = new Object();
+    private static volatile Lots current;
+
+    private final ImprovedDataManager dataManager;
+
+    public InventoryLotService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    // ------------------------------------------------------------------
+    // الترحيل (من updateInventory، اتصال المعاملة الحالية)
+    // ------------------------------------------------------------------
+
+    /**
+     * تطبيق حركة مخزون على الدفعات
+     *
+     * @param lotId للوارد: رقم الدفعة (عند إعادة البناء) أو null لدفعة جديدة؛ للمنصرف: الدفعة
+     *              التي تُصرف أولاً أو null لتحديدها من المرجع (مرتجع/حذف شراء) أو بترتيب الصرف
+     * @return الدفعة التي أنشأتها الحركة أو استهدفتها، لتُحفظ مع الحركة
+     */
+    public static Long post(ImprovedDataManager manager, Connection conn, int warehouseId, int cropId, double quantity,
+                            double unitCost, String referenceType, int referenceId, Long lotId,
+                            LocalDate expiryDate) throws SQLException {
+        Lots lots = lots(manager);
+        CropLots crop = lots.crop(conn, warehouseId, cropId);
+        dropOnRollback(manager, lots, crop);
+        return apply(conn, crop, quantity, unitCost, referenceType, referenceId, lotId, expiryDate, LocalDate.now());
+    }
+
+    /**
+     * نقل كمية بين مخزنين (من ImprovedDataManager.transferInventory): تُصرف من دفعات المصدر
+     * بترتيب الصرف، ولكل جزء دفعة في الوجهة بصلاحيته وتكلفته، فيبقى ترتيب FEFO صحيحاً هناك.
+     * ما لا تغطيه دفعات المصدر (فرق قديم) يصل دفعة واحدة بلا صلاحية بالتكلفة البديلة.
+     *
+     * @return دفعات الوجهة بكمياتها، لتُحفظ كل منها في حركة وارد
+     */
+    public static List<Lot> transfer(ImprovedDataManager manager, Connection conn, int cropId, int fromWarehouseId,
+                                     int toWarehouseId, double quantity, double fallbackCost,
+                                     int transferId) throws SQLException {
+        Lots lots = lots(manager);
+        CropLots source = lots.crop(conn, fromWarehouseId, cropId);
+        CropLots target = lots.crop(conn, toWarehouseId, cropId);
+        dropOnRollback(manager, lots, source);
+        dropOnRollback(manager, lots, target);
+
+        LocalDate today = LocalDate.now();
+        List<OpenLot> pieces = new ArrayList<>();
+        double left = quantity;
+        synchronized (source) {
+            while (left > EPSILON && !source.queue.isEmpty()) {
+                OpenLot lot = source.queue.first();
+                double taken = take(conn, source, lot, left, "TRANSFER", transferId);
+                pieces.add(new OpenLot(0, toWarehouseId, cropId, today, lot.expiryDate, taken, lot.unitCost, "TRANSFER", transferId));
+                left -= taken;
+            }
+        }
+        if (left > EPSILON) {
+            LOGGER.warning("الدفعات المفتوحة للمحصول " + cropId + " في المخزن " + fromWarehouseId + " لا تغطي "
+                + FormatUtils.formatNumber(left) + " كجم من التحويل " + transferId);
+            pieces.add(new OpenLot(0, toWarehouseId, cropId, today, null, left, fallbackCost, "TRANSFER", transferId));
+        }
+
+        List<Lot> moved = new ArrayList<>();
+        synchronized (target) {
+            for (OpenLot lot : pieces) {
+                lot.lotId = insertLot(conn, lot, target.warehouseColumns);
+                lot.remainingKg = lot.quantityKg;
+                target.add(lot);
+                moved.add(lot.snapshot());
+            }
+        }
+        return moved;
+    }
+
+    private static void dropOnRollback(ImprovedDataManager manager, Lots lots, CropLots crop) {
+        manager.afterCompletion(committed -> {
+            if (!committed) {
+                lots.byKey.remove(crop.key);
+            }
+        });
+    }
+
+    private static Long apply(Connection conn, CropLots crop, double quantity, double unitCost,
+                              String referenceType, int referenceId, Long lotId, LocalDate expiryDate,
+                              LocalDate date) throws SQLException {
+        synchronized (crop) {
+            if (quantity > EPSILON) {
+                String reversed = REVERSALS.get(referenceType);
+                double remainder = reversed != null ? restore(conn, crop, reversed, referenceId, quantity) : quantity;
+                if (remainder <= EPSILON) {
+                    return null;
+                }
+                OpenLot lot = new OpenLot(lotId != null ? lotId : 0, crop.warehouseId, crop.cropId, date, expiryDate,
+                    remainder, unitCost, referenceType, referenceId);
+                lot.lotId = insertLot(conn, lot, crop.warehouseColumns);
+                lot.remainingKg = remainder;
+                crop.add(lot);
+                return lot.lotId;
+            }
+            if (quantity < -EPSILON) {
+                Long target = lotId != null ? lotId : defaultTarget(conn, referenceType, referenceId);
+                consume(conn, crop, -quantity, target, referenceType, referenceId);
+                return target;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * الدفعة التي يصرف منها مرتجع الشراء أو حذفه: دفعة فاتورة الشراء نفسها
+     */
+    private static Long defaultTarget(Connection conn, String referenceType, int referenceId) throws SQLException {
+        String sql = switch (referenceType) {
+            case "PURCHASE_DELETE" -> "SELECT lot_id FROM inventory_lots WHERE source_type = 'PURCHASE' AND source_id = ?";
+            case "PURCHASE_RETURN" -> """
+                SELECT l.lot_id FROM purchase_returns r
+                JOIN inventory_lots l ON l.source_type = 'PURCHASE' AND l.source_id = r.original_purchase_id
+                WHERE r.return_id = ?
+                """;
+            default -> null;
+        };
+        if (sql == null) {
+            return null;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, referenceId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static void consume(Connection conn, CropLots crop, double quantity, Long target,
+                                String referenceType, int referenceId) throws SQLException {
+        double left = quantity;
+        if (target != null) {
+            OpenLot lot = crop.open.get(target);
+            if (lot != null) {
+                left -= take(conn, crop, lot, left, referenceType, referenceId);
+            }
+        }
+        while (left > EPSILON && !crop.queue.isEmpty()) {
+            left -= take(conn, crop, crop.queue.first(), left, referenceType, referenceId);
+        }
+        if (left > EPSILON) {
+            // الرصيد نفسه يمنع الصرف بأكثر من المخزون؛ هذا فرق قديم بين الدفعات والرصيد
+            LOGGER.warning("الدفعات المفتوحة للمحصول " + crop.cropId + " في المخزن " + crop.warehouseId + " لا تغطي "
+                + FormatUtils.formatNumber(left) + " كجم من " + referenceType + "-" + referenceId);
+        }
+    }
+
+    private static double take(Connection conn, CropLots crop, OpenLot lot, double wanted,
+                               String referenceType, int referenceId) throws SQLException {
+        double taken = lot.remainingKg - wanted <= EPSILON ? lot.remainingKg : wanted;
+        lot.remainingKg = taken == lot.remainingKg ? 0 : lot.remainingKg - taken;
+        if (lot.remainingKg == 0) {
+            crop.remove(lot);
+        }
+        updateRemaining(conn, lot);
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "INSERT INTO inventory_lot_consumptions (lot_id, source_type, source_id, quantity_kg) VALUES (?, ?, ?, ?)")) {
+            stmt.setLong(1, lot.lotId);
+            stmt.setString(2, referenceType);
+            stmt.setInt(3, referenceId);
+            stmt.setDouble(4, taken);
+            stmt.executeUpdate();
+        }
+        return taken;
+    }
+
+    /**
+     * إعادة ما صرفه مستند إلى دفعاته نفسها
+     *
+     * @return ما بقي من الكمية بعد الإعادة (يصبح دفعة جديدة)
+     */
+    private static double restore(Connection conn, CropLots crop, String sourceType, int sourceId,
+                                  double quantity) throws SQLException {
+        Map<Long, Double> consumed = new LinkedHashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("""
+                SELECT lot_id, SUM(quantity_kg) FROM inventory_lot_consumptions
+                WHERE source_type = ? AND source_id = ? GROUP BY lot_id ORDER BY lot_id
+                """)) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumed.put(rs.getLong(1), rs.getDouble(2));
+                }
+            }
+        }
+        double left = quantity;
+        for (Map.Entry<Long, Double> entry : consumed.entrySet()) {
+            if (left <= EPSILON) {
+                break;
+            }
+            OpenLot lot = crop.open.get(entry.getKey());
+            if (lot == null) {
+                lot = loadLot(conn, crop, entry.getKey());
+                if (lot == null) {
+                    continue;
+                }
+            }
+            double back = Math.min(entry.getValue(), left);
+            crop.remove(lot);
+            lot.remainingKg += back;
+            crop.add(lot);
+            updateRemaining(conn, lot);
+            left -= back;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM inventory_lot_consumptions WHERE source_type = ? AND source_id = ?")) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            stmt.executeUpdate();
+        }
+        return left;
+    }
+
+    /**
+     * @param warehouseColumns false فقط لإعادة البناء على مخطط ما قبل المخازن (ترحيل الإصدار 9)
+     */
+    private static long insertLot(Connection conn, OpenLot lot, boolean warehouseColumns) throws SQLException {
+        String sql = warehouseColumns ? """
+            INSERT INTO inventory_lots (lot_id, crop_id, source_type, source_id, received_date, expiry_date,
+                                        quantity_kg, remaining_kg, unit_cost, warehouse_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """ : """
+            INSERT INTO inventory_lots (lot_id, crop_id, source_type, source_id, received_date, expiry_date,
+                                        quantity_kg, remaining_kg, unit_cost)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            if (lot.lotId > 0) {
+                stmt.setLong(1, lot.lotId);
+            } else {
+                stmt.setNull(1, Types.INTEGER);
+            }
+            stmt.setInt(2, lot.cropId);
+            stmt.setString(3, lot.sourceType);
+            stmt.setInt(4, lot.sourceId);
+            stmt.setString(5, FormatUtils.formatDateForDatabase(lot.receivedDate));
+            stmt.setString(6, FormatUtils.formatDateForDatabase(lot.expiryDate));
+            stmt.setDouble(7, lot.quantityKg);
+            stmt.setDouble(8, lot.quantityKg);
+            stmt.setDouble(9, lot.unitCost);
+            if (warehouseColumns) {
+                stmt.setInt(10, lot.warehouseId);
+            }
+            stmt.executeUpdate();
+            if (lot.lotId > 0) {
+                return lot.lotId;
+            }
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+                throw new SQLException("Creating inventory lot failed, no ID obtained.");
+            }
+        }
+    }
+
+    private static void updateRemaining(Connection conn, OpenLot lot) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("UPDATE inventory_lots SET remaining_kg = ? WHERE lot_id = ?")) {
+            stmt.setDouble(1, lot.remainingKg);
+            stmt.setLong(2, lot.lotId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // إعادة البناء
+    // ------------------------------------------------------------------
+
+    /**
+     * إعادة بناء الدفعات وتخصيصاتها من inventory_movements بترتيب الترحيل. الحركات القديمة
+     * التي لا تحمل رقم دفعة تأخذ رقم الدفعة التي أنشأتها أو استهدفتها.
+     *
+     * ترحيل الإصدار 9 يستدعيها قبل وجود أعمدة المخازن (الإصدار 10)، فتُعامل كل الحركات حينها
+     * كحركات المخزن الرئيسي كما كانت عند نشر ذلك الترحيل، ويعيد الإصدار 10 البناء بالمخازن
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM inventory_lot_consumptions");
+            stmt.executeUpdate("DELETE FROM inventory_lots");
+        }
+        boolean warehouseColumns = hasWarehouseColumns(conn);
+        Map<Long, CropLots> replay = new HashMap<>();
+        String sql = """
+            SELECT movement_id, %s AS warehouse_id, crop_id, quantity_kg, unit_cost, reference_type, reference_id,
+                   movement_date, lot_id, expiry_date
+            FROM inventory_movements ORDER BY movement_id
+            """.formatted(warehouseColumns ? "warehouse_id" : String.valueOf(Warehouse.DEFAULT_ID));
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql);
+             PreparedStatement stamp = conn.prepareStatement("UPDATE inventory_movements SET lot_id = ? WHERE movement_id = ?")) {
+            while (rs.next()) {
+                int warehouseId = rs.getInt("warehouse_id");
+                int cropId = rs.getInt("crop_id");
+                long storedLot = rs.getLong("lot_id");
+                Long lotId = rs.wasNull() ? null : storedLot;
+                CropLots crop = replay.computeIfAbsent(key(warehouseId, cropId), key -> new CropLots(warehouseId, cropId, warehouseColumns));
+                Long applied = apply(conn, crop, rs.getDouble("quantity_kg"), rs.getDouble("unit_cost"),
+                    rs.getString("reference_type"), rs.getInt("reference_id"), lotId,
+                    FormatUtils.parseDateFromDatabase(rs.getString("expiry_date")),
+                    FormatUtils.parseDateFromDatabase(rs.getString("movement_date")));
+                if (lotId == null && applied != null) {
+                    stamp.setLong(1, applied);
+                    stamp.setLong(2, rs.getLong("movement_id"));
+                    stamp.executeUpdate();
+                }
+            }
+        }
+    }
+
+    private static boolean hasWarehouseColumns(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT 1 FROM pragma_table_info('inventory_lots') WHERE name = 'warehouse_id'")) {
+            return rs.next();
+        }
+    }
+
+    /**
+     * إعادة بناء الدفعات بالكامل داخل معاملة واحدة
+     */
+    public void rebuildAll() throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            rebuild(conn);
+            dataManager.afterCompletion(committed -> invalidate());
+            return null;
+        });
+    }
+
+    /**
+     * إسقاط الدفعات المحفوظة في الذاكرة؛ تُحمل من الجدول عند أول استخدام
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    private static Lots lots(ImprovedDataManager owner) {
+        Lots lots = current;
+        if (lots == null || lots.owner != owner) {
+            synchronized (LOCK) {
+                lots = current;
+                if (lots == null || lots.owner != owner) {
+                    lots = new Lots(owner);
+                    current = lots;
+                }
+            }
+        }
+        return lots;
+    }
+
+    /** دفعة مستهلكة بالكامل من دفعات crop (لم تعد في الشجرة) */
+    private static OpenLot loadLot(Connection conn, CropLots crop, long lotId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM inventory_lots WHERE lot_id = ?")) {
+            stmt.setLong(1, lotId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapOpenLot(rs, crop.warehouseId) : null;
+            }
+        }
+    }
+
+    private static OpenLot mapOpenLot(ResultSet rs) throws SQLException {
+        return mapOpenLot(rs, rs.getInt("warehouse_id"));
+    }
+
+    private static OpenLot mapOpenLot(ResultSet rs, int warehouseId) throws SQLException {
+        OpenLot lot = new OpenLot(rs.getLong("lot_id"), warehouseId, rs.getInt("crop_id"),
+            FormatUtils.parseDateFromDatabase(rs.getString("received_date")),
+            FormatUtils.parseDateFromDatabase(rs.getString("expiry_date")),
+            rs.getDouble("quantity_kg"), rs.getDouble("unit_cost"), rs.getString("source_type"), rs.getInt("source_id"));
+        lot.remainingKg = rs.getDouble("remaining_kg");
+        return lot;
+    }
+
+    // ------------------------------------------------------------------
+    // الاستعلامات والتالف
+    // ------------------------------------------------------------------
+
+    /**
+     * الدفعات المفتوحة للمحصول في المخزن الرئيسي بترتيب صرفها، من الذاكرة
+     */
+    public List<Lot> getOpenLots(int cropId) throws SQLException {
+        return getOpenLots(Warehouse.DEFAULT_ID, cropId);
+    }
+
+    /**
+     * الدفعات المفتوحة للمحصول في المخزن بترتيب صرفها، من الذاكرة
+     */
+    public List<Lot> getOpenLots(int warehouseId, int cropId) throws SQLException {
+        CropLots crop;
+        try (Connection conn = dataManager.getConnection()) {
+            crop = lots(dataManager).crop(conn, warehouseId, cropId);
+        }
+        List<Lot> result = new ArrayList<>();
+        synchronized (crop) {
+            for (OpenLot lot : crop.queue) {
+                result.add(lot.snapshot());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * الدفعات المفتوحة التي انتهت صلاحيتها قبل التاريخ، من الجدول لكل المحاصيل
+     */
+    public List<Lot> getExpiredLots(LocalDate asOf) throws SQLException {
+        String sql = """
+            SELECT * FROM inventory_lots
+            WHERE remaining_kg > ? AND expiry_date IS NOT NULL AND expiry_date < ?
+            ORDER BY expiry_date, lot_id
+            """;
+        List<Lot> result = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setDouble(1, EPSILON);
+            stmt.setString(2, FormatUtils.formatDateForDatabase(asOf));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    result.add(mapOpenLot(rs).snapshot());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * شطب رصيد الدفعات المنتهية الصلاحية كتسوية تالف لكل دفعة
+     *
+     * @return أرقام التسويات المسجلة
+     */
+    public List<Integer> writeOffExpired(LocalDate asOf) throws SQLException {
+        CropDataService crops = new CropDataService();
+        List<Integer> adjustments = new ArrayList<>();
+        for (Lot lot : getExpiredLots(asOf)) {
+            InventoryAdjustment adjustment = new InventoryAdjustment();
+            Crop crop = new Crop();
+            crop.setCropId(lot.getCropId());
+            crop.setCropName(cropName(lot.getCropId()));
+            adjustment.setCrop(crop);
+            adjustment.setAdjustmentDate(asOf);
+            adjustment.setAdjustmentType(InventoryAdjustment.AdjustmentType.DAMAGE);
+            adjustment.setQuantityKg(lot.getRemainingKg());
+            adjustment.setLotId(lot.getLotId());
+            adjustment.setWarehouseId(lot.getWarehouseId());
+            adjustment.setReason("انتهاء صلاحية الدفعة " + lot.getLotId() + " في " + FormatUtils.formatDateForDisplay(lot.getExpiryDate()));
+            adjustments.add(crops.addInventoryAdjustment(adjustment));
+        }
+        return adjustments;
+    }
+
+    private String cropName(int cropId) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT crop_name FROM crops WHERE crop_id = ?")) {
+            stmt.setInt(1, cropId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : "";
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // الأنواع
+    // ------------------------------------------------------------------
+
+    /** مفتاح (مخزن، محصول) في خريطة الأشجار */
+    private static long key(int warehouseId, int cropId) {
+        return ((long) warehouseId << 32) | (cropId & 0xFFFFFFFFL);
+    }
+
+    private static final class Lots {
+        private final ImprovedDataManager owner;
+        private final Map<Long, CropLots> byKey = new ConcurrentHashMap<>();
+
+        Lots(ImprovedDataManager owner) {
+            this.owner = owner;
+        }
+
+        CropLots crop(Connection conn, int warehouseId, int cropId) throws SQLException {
+            long key = key(warehouseId, cropId);
+            CropLots crop = byKey.get(key);
+            if (crop != null) {
+                return crop;
+            }
+            synchronized (this) {
+                crop = byKey.get(key);
+                if (crop == null) {
+                    crop = new CropLots(warehouseId, cropId, true);
+                    try (PreparedStatement stmt = conn.prepareStatement(
+                            "SELECT * FROM inventory_lots WHERE warehouse_id = ? AND crop_id = ? AND remaining_kg > ?")) {
+                        stmt.setInt(1, warehouseId);
+                        stmt.setInt(2, cropId);
+                        stmt.setDouble(3, EPSILON);
+                        try (ResultSet rs = stmt.executeQuery()) {
+                            while (rs.next()) {
+                                crop.add(mapOpenLot(rs));
+                            }
+                        }
+                    }
+                    byKey.put(key, crop);
+                }
+                return crop;
+            }
+        }
+    }
+
+    /** الدفعات المفتوحة لمحصول في مخزن: شجرة بترتيب الصرف وفهرس بالرقم */
+    private static final class CropLots {
+        private final long key;
+        private final int warehouseId;
+        private final int cropId;
+        /** هل في المخطط عمود warehouse_id للدفعات (false فقط أثناء ترحيل الإصدار 9) */
+        private final boolean warehouseColumns;
+        private final TreeSet<OpenLot> queue = new TreeSet<>(CONSUMPTION_ORDER);
+        private final Map<Long, OpenLot> open = new HashMap<>();
+
+        CropLots(int warehouseId, int cropId, boolean warehouseColumns) {
+            this.key = key(warehouseId, cropId);
+            this.warehouseId = warehouseId;
+            this.cropId = cropId;
+            this.warehouseColumns = warehouseColumns;
+        }
+
+        void add(OpenLot lot) {
+            queue.add(lot);
+            open.put(lot.lotId, lot);
+        }
+
+        void remove(OpenLot lot) {
+            queue.remove(lot);
+            open.remove(lot.lotId);
+        }
+    }
+
+    /** دفعة في الشجرة؛ الرقم والصلاحية ثابتان لأنهما مفتاح الترتيب */
+    private static final class OpenLot {
+        private long lotId;
+        private final int warehouseId;
+        private final int cropId;
+        private final LocalDate receivedDate;
+        private final LocalDate expiryDate;
+        private final double quantityKg;
+        private final double unitCost;
+        private final String sourceType;
+        private final int sourceId;
+        private double remainingKg;
+
+        OpenLot(long lotId, int warehouseId, int cropId, LocalDate receivedDate, LocalDate expiryDate, double quantityKg,
+                double unitCost, String sourceType, int sourceId) {
+            this.lotId = lotId;
+            this.warehouseId = warehouseId;
+            this.cropId = cropId;
+            this.receivedDate = receivedDate;
+            this.expiryDate = expiryDate;
+            this.quantityKg = quantityKg;
+            this.unitCost = unitCost;
+            this.sourceType = sourceType;
+            this.sourceId = sourceId;
+        }
+
+        Lot snapshot() {
+            return new Lot(lotId, warehouseId, cropId, receivedDate, expiryDate, quantityKg, remainingKg, unitCost,
+                sourceType, sourceId);
+        }
+    }
+
+    public static class Lot {
+        private final long lotId;
+        private final int warehouseId;
+        private final int cropId;
+        private final LocalDate receivedDate;
+        private final LocalDate expiryDate;
+        private final double quantityKg;
+        private final double remainingKg;
+        private final double unitCost;
+        private final String sourceType;
+        private final int sourceId;
+
+        public Lot(long lotId, int warehouseId, int cropId, LocalDate receivedDate, LocalDate expiryDate, double quantityKg,
+                   double remainingKg, double unitCost, String sourceType, int sourceId) {
+            this.lotId = lotId;
+            this.warehouseId = warehouseId;
+            this.cropId = cropId;
+            this.receivedDate = receivedDate;
+            this.expiryDate = expiryDate;
+            this.quantityKg = quantityKg;
+            this.remainingKg = remainingKg;
+            this.unitCost = unitCost;
+            this.sourceType = sourceType;
+            this.sourceId = sourceId;
+        }
+
+        public long getLotId() { return lotId; }
+        public int getWarehouseId() { return warehouseId; }
+        public int getCropId() { return cropId; }
+        public LocalDate getReceivedDate() { return receivedDate; }
+        /** null إذا لم تحدد صلاحية */
+        public LocalDate getExpiryDate() { return expiryDate; }
+        public double getQuantityKg() { return quantityKg; }
+        public double getRemainingKg() { return remainingKg; }
+        public double getUnitCost() { return unitCost; }
+        public double getRemainingValue() { return remainingKg * unitCost; }
+        /** مرجع الحركة التي أنشأت الدفعة (PURCHASE، SALE_RETURN، INV_ADJUST، TRANSFER...) */
+        public String getSourceType() { return sourceType; }
+        public int getSourceId() { return sourceId; }
+    }
+}
@@ -0,0 +1,121 @@
+package accounting.service;
+
+import accounting.service.LedgerIntegrityService.BatchResult;
+import accounting.service.LedgerIntegrityService.IntegrityIssue;
+import accounting.util.AppMetrics;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * تشغيل LedgerIntegrityService في الخلفية بكلفة معالج محدودة.
+ *
+ * خيط واحد منخفض الأولوية ينفذ دفعة واحدة في كل مرة ثم يستريح: pause بين الدفعات ما دام
+ * هناك تأخر عن العلامة، و idleInterval بعد اللحاق بها. المسح الكامل للحسابات والمحاصيل
+ * يجري عند اللحاق بالعلامة وبحد أقصى مرة كل sweepInterval. الفروقات الجديدة تُسجل في
+ * السجل وفي عداد integrity.issues.detected، وعددها المفتوح في integrity.issues.open.
+ */
+public class LedgerIntegrityMonitor {
+
+    private static final Logger LOGGER = Logger.getLogger(LedgerIntegrityMonitor.class.getName());
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final Duration DEFAULT_PAUSE = Duration.ofMillis(250);
+    public static final Duration DEFAULT_IDLE_INTERVAL = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_SWEEP_INTERVAL = Duration.ofMinutes(15);
+
+    private static LedgerIntegrityMonitor running;
+
+    private final LedgerIntegrityService service;
+    private final int batchSize;
+    private final Duration pause;
+    private final Duration idleInterval;
+    private final Duration sweepInterval;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile int openIssues;
+    private volatile boolean stopped;
+    private long lastSweepNanos;
+    private boolean swept;
+
+    public LedgerIntegrityMonitor(LedgerIntegrityService service, int batchSize, Duration pause,
+                                  Duration idleInterval, Duration sweepInterval, ScheduledExecutorService scheduler) {
+        this.service = service;
+        this.batchSize = batchSize;
+        this.pause = pause;
+        this.idleInterval = idleInterval;
+        this.sweepInterval = sweepInterval;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * تشغيل المراقب الافتراضي مرة واحدة للتطبيق؛ يُستدعى بعد اكتمال تهيئة قاعدة البيانات
+     */
+    public static synchronized LedgerIntegrityMonitor startDefault() {
+        if (running == null) {
+            ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ledger-integrity");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            running = new LedgerIntegrityMonitor(new LedgerIntegrityService(), DEFAULT_BATCH_SIZE, DEFAULT_PAUSE,
+                DEFAULT_IDLE_INTERVAL, DEFAULT_SWEEP_INTERVAL, scheduler);
+            AppMetrics.getInstance().gauge("integrity.issues.open", () -> running.openIssues);
+            running.start();
+        }
+        return running;
+    }
+
+    public void start() {
+        stopped = false;
+        scheduler.schedule(this::tick, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        stopped = true;
+    }
+
+    public int getOpenIssueCount() {
+        return openIssues;
+    }
+
+    private void tick() {
+        if (stopped) {
+            return;
+        }
+        Duration next = idleInterval;
+        try {
+            BatchResult batch = service.verifyNextBatch(batchSize);
+            report(batch);
+            if (batch.isCaughtUp()) {
+                if (!swept || System.nanoTime() - lastSweepNanos >= sweepInterval.toNanos()) {
+                    report(service.sweep());
+                    swept = true;
+                    lastSweepNanos = System.nanoTime();
+                }
+            } else {
+                next = pause;
+            }
+            openIssues = service.getOpenIssues().size();
+        } catch (Exception e) {
+            LOGGER.warning("تعذر فحص سلامة الدفتر: " + e.getMessage());
+        }
+        if (!stopped) {
+            scheduler.schedule(this::tick, next.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void report(BatchResult result) {
+        if (result.getNewIssues().isEmpty()) {
+            return;
+        }
+        AppMetrics.getInstance().counter("integrity.issues.detected").add(result.getNewIssues().size());
+        for (IntegrityIssue issue : result.getNewIssues()) {
+            LOGGER.warning("فرق في سلامة الدفتر: " + issue);
+        }
+    }
+}
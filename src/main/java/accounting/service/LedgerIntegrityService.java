@@ -0,0 +1,556 @@
+package accounting.service;
+
+import accounting.util.AppMetrics;
+import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * التحقق المستمر من سلامة الدفتر: توازن كل قيد، ومطابقة الأرصدة المخزنة لمجاميع الدفتر،
+ * ومطابقة كميات المخزون لحركاته.
+ *
+ * financial_accounts.current_balance و inventory.current_stock_kg تُحدث يدوياً في كل عملية
+ * ترحيل، فأي خطأ فيها ينحرف بصمت. الفحص تزايدي: علامة (high-water mark) على entry_id و
+ * movement_id محفوظة في integrity_state، وكل دفعة تفحص السطور الجديدة بعدها فقط ومعها القيود
+ * والحسابات والأيام والمحاصيل التي مستها. الحذف لا يترك سطوراً جديدة، لذلك يكمله مسح
+ * (sweep) رخيص لكل الحسابات من ledger_daily_totals ولكل المحاصيل.
+ *
+ * الفروقات تُحفظ في integrity_issues بمفتاح (النوع، الموضوع) مع مراجع القيود التي مستها،
+ * وتُحذف عندما يمر الفحص التالي للموضوع نفسه. القراءة في معاملة واحدة (لقطة متسقة مع
+ * الترحيلات الجارية) والكتابة في معاملة قصيرة بعدها.
+ */
+public class LedgerIntegrityService {
+
+    /** أقصى سطور في الدفعة الواحدة؛ يحد كلفة كل خطوة وطول قوائم IN */
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final String LEDGER_MARK = "general_ledger";
+    private static final String MOVEMENT_MARK = "inventory_movements";
+    /** هامش كميات المخزون بالكيلو؛ المبالغ بالقروش فتُقارن بالتساوي التام */
+    private static final double QUANTITY_TOLERANCE = 0.005;
+    /** عدد المراجع المحفوظة مع كل فرق؛ الأحدث أولاً */
+    private static final int MAX_REFS = 20;
+
+    /**
+     * حسابات مقابلة (contra) رصيدها الطبيعي مدين رغم نوعها: مرتجعات المبيعات تُرحل
+     * بإشارة المدين في SaleDataService
+     */
+    private static final Set<Integer> DEBIT_NORMAL_CONTRA_ACCOUNTS = Set.of(40102);
+
+    public enum IssueKind {
+        UNBALANCED_REF("قيد غير متوازن"),
+        ACCOUNT_BALANCE("رصيد حساب لا يطابق الدفتر"),
+        DAILY_TOTALS("مجاميع يومية لا تطابق الدفتر"),
+        INVENTORY("مخزون لا يطابق الحركات");
+
+        private final String arabicName;
+
+        IssueKind(String arabicName) {
+            this.arabicName = arabicName;
+        }
+
+        public String getArabicName() {
+            return arabicName;
+        }
+    }
+
+    private final ImprovedDataManager dataManager;
+
+    public LedgerIntegrityService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    /**
+     * الإشارة التي تحول (مدين - دائن) إلى الرصيد الطبيعي المخزن في current_balance
+     */
+    static int naturalSign(int accountId, String accountType) {
+        if (DEBIT_NORMAL_CONTRA_ACCOUNTS.contains(accountId)) {
+            return 1;
+        }
+        return switch (accountType) {
+            case "LIABILITY", "CURRENT_LIABILITY", "ACCOUNTS_PAYABLE", "EQUITY", "REVENUE" -> -1;
+            default -> 1;
+        };
+    }
+
+    // ------------------------------------------------------------------
+    // الفحص
+
+    /**
+     * فحص الدفعة التالية بعد العلامة: حتى batchSize سطر قيد وحتى batchSize حركة مخزون
+     */
+    public BatchResult verifyNextBatch(int batchSize) throws SQLException {
+        int limit = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        try (AppMetrics.Operation op = AppMetrics.begin("integrity.batch")) {
+            Snapshot snapshot = dataManager.executeTransaction(conn -> readBatch(conn, limit));
+            List<IntegrityIssue> newIssues = dataManager.executeTransaction(conn -> {
+                List<IntegrityIssue> created = applyChecks(conn, snapshot.checks);
+                writeMark(conn, LEDGER_MARK, snapshot.ledgerMark);
+                writeMark(conn, MOVEMENT_MARK, snapshot.movementMark);
+                return created;
+            });
+            op.succeeded();
+            return new BatchResult(snapshot.entries, snapshot.movements, failures(snapshot.checks), newIssues,
+                snapshot.entries < limit && snapshot.movements < limit);
+        }
+    }
+
+    /**
+     * مسح كل الحسابات والمحاصيل دون العلامة؛ يلتقط ما تتركه عمليات الحذف والتعديل المباشر
+     */
+    public BatchResult sweep() throws SQLException {
+        try (AppMetrics.Operation op = AppMetrics.begin("integrity.sweep")) {
+            List<Check> checks = dataManager.executeTransaction(conn -> {
+                List<Check> all = new ArrayList<>(checkAccounts(conn, null, Map.of()));
+                all.addAll(checkInventory(conn, null, Map.of()));
+                return all;
+            });
+            List<IntegrityIssue> newIssues = dataManager.executeTransaction(conn -> applyChecks(conn, checks));
+            op.succeeded();
+            return new BatchResult(0, 0, failures(checks), newIssues, true);
+        }
+    }
+
+    public List<IntegrityIssue> getOpenIssues() throws SQLException {
+        String sql = """
+            SELECT kind, subject, label, expected, actual, refs, first_detected_at, last_detected_at
+            FROM integrity_issues
+            ORDER BY first_detected_at, kind, subject
+            """;
+        List<IntegrityIssue> issues = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                String refs = rs.getString("refs");
+                issues.add(new IntegrityIssue(IssueKind.valueOf(rs.getString("kind")), rs.getString("subject"),
+                    rs.getString("label"), rs.getDouble("expected"), rs.getDouble("actual"),
+                    refs == null || refs.isEmpty() ? List.of() : Arrays.asList(refs.split(", ")),
+                    rs.getString("first_detected_at"), rs.getString("last_detected_at")));
+            }
+        }
+        return issues;
+    }
+
+    /**
+     * آخر entry_id تم فحصه
+     */
+    public long getCheckedEntryId() throws SQLException {
+        try (Connection conn = dataManager.getConnection()) {
+            return readMark(conn, LEDGER_MARK);
+        }
+    }
+
+    private Snapshot readBatch(Connection conn, int limit) throws SQLException {
+        long ledgerMark = readMark(conn, LEDGER_MARK);
+        long movementMark = readMark(conn, MOVEMENT_MARK);
+
+        Map<String, Set<String>> refsByAccount = new HashMap<>();
+        Set<String> refs = new LinkedHashSet<>();
+        Map<String, Set<String>> refsByDay = new LinkedHashMap<>();
+        int entries = 0;
+        String sql = """
+            SELECT entry_id, transaction_ref, account_id, entry_date
+            FROM general_ledger WHERE entry_id > ? ORDER BY entry_id LIMIT ?
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, ledgerMark);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    entries++;
+                    ledgerMark = rs.getLong("entry_id");
+                    String ref = rs.getString("transaction_ref");
+                    String account = String.valueOf(rs.getInt("account_id"));
+                    refs.add(ref);
+                    addRef(refsByAccount, account, ref);
+                    addRef(refsByDay, account + "@" + rs.getString("entry_date"), ref);
+                }
+            }
+        }
+
+        Map<String, Set<String>> refsByCrop = new HashMap<>();
+        int movements = 0;
+        sql = """
+            SELECT movement_id, crop_id, reference_type, reference_id
+            FROM inventory_movements WHERE movement_id > ? ORDER BY movement_id LIMIT ?
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, movementMark);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    movements++;
+                    movementMark = rs.getLong("movement_id");
+                    addRef(refsByCrop, String.valueOf(rs.getInt("crop_id")),
+                        rs.getString("reference_type") + ":" + rs.getInt("reference_id"));
+                }
+            }
+        }
+
+        // الفروقات المفتوحة تُعاد في كل دفعة فيُغلق التصحيح دون انتظار المسح
+        Map<IssueKind, Set<String>> open = readOpenSubjects(conn);
+        Set<String> accounts = new LinkedHashSet<>(refsByAccount.keySet());
+        accounts.addAll(open.getOrDefault(IssueKind.ACCOUNT_BALANCE, Set.of()));
+        Set<String> crops = new LinkedHashSet<>(refsByCrop.keySet());
+        crops.addAll(open.getOrDefault(IssueKind.INVENTORY, Set.of()));
+        refs.addAll(open.getOrDefault(IssueKind.UNBALANCED_REF, Set.of()));
+        for (String day : open.getOrDefault(IssueKind.DAILY_TOTALS, Set.of())) {
+            refsByDay.putIfAbsent(day, Set.of());
+        }
+
+        List<Check> checks = new ArrayList<>(checkRefs(conn, refs));
+        checks.addAll(checkDailyTotals(conn, refsByDay));
+        if (!accounts.isEmpty()) {
+            checks.addAll(checkAccounts(conn, accounts, refsByAccount));
+        }
+        if (!crops.isEmpty()) {
+            checks.addAll(checkInventory(conn, crops, refsByCrop));
+        }
+        return new Snapshot(entries, movements, ledgerMark, movementMark, checks);
+    }
+
+    private static Map<IssueKind, Set<String>> readOpenSubjects(Connection conn) throws SQLException {
+        Map<IssueKind, Set<String>> open = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT kind, subject FROM integrity_issues");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                open.computeIfAbsent(IssueKind.valueOf(rs.getString("kind")), kind -> new LinkedHashSet<>())
+                    .add(rs.getString("subject"));
+            }
+        }
+        return open;
+    }
+
+    /**
+     * مرجع حُذفت كل سطوره لا يعود من الاستعلام، فيُسجل متوازناً (صفر مقابل صفر)
+     */
+    private List<Check> checkRefs(Connection conn, Collection<String> refs) throws SQLException {
+        List<Check> checks = new ArrayList<>();
+        if (refs.isEmpty()) {
+            return checks;
+        }
+        Set<String> missing = new LinkedHashSet<>(refs);
+        String sql = "SELECT transaction_ref, COALESCE(SUM(debit), 0) AS debit, COALESCE(SUM(credit), 0) AS credit "
+            + "FROM general_ledger WHERE transaction_ref IN (" + placeholders(refs.size()) + ") GROUP BY transaction_ref";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            for (String ref : refs) {
+                stmt.setString(i++, ref);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String ref = rs.getString("transaction_ref");
+                    missing.remove(ref);
+                    checks.add(new Check(IssueKind.UNBALANCED_REF, ref, ref,
+                        Money.getAmount(rs, "debit"), Money.getAmount(rs, "credit"), List.of(ref)));
+                }
+            }
+        }
+        for (String ref : missing) {
+            checks.add(new Check(IssueKind.UNBALANCED_REF, ref, ref, 0, 0, List.of(ref)));
+        }
+        return checks;
+    }
+
+    /**
+     * ledger_daily_totals مصدر مجاميع الحسابات في الفحص والتقارير؛ الأيام التي مستها الدفعة
+     * تُقارن بسطور الدفتر نفسها (فهرس idx_gl_account_date)
+     */
+    private List<Check> checkDailyTotals(Connection conn, Map<String, Set<String>> refsByDay) throws SQLException {
+        List<Check> checks = new ArrayList<>();
+        String sql = """
+            SELECT (SELECT COALESCE(SUM(debit), 0) - COALESCE(SUM(credit), 0)
+                    FROM general_ledger WHERE account_id = ? AND entry_date = ?) AS ledger_net,
+                   (SELECT COALESCE(SUM(debit_total - credit_total), 0)
+                    FROM ledger_daily_totals WHERE entry_date = ? AND account_id = ?) AS totals_net
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Set<String>> day : refsByDay.entrySet()) {
+                String[] parts = day.getKey().split("@", 2);
+                int accountId = Integer.parseInt(parts[0]);
+                stmt.setInt(1, accountId);
+                stmt.setString(2, parts[1]);
+                stmt.setString(3, parts[1]);
+                stmt.setInt(4, accountId);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    rs.next();
+                    checks.add(new Check(IssueKind.DAILY_TOTALS, day.getKey(), day.getKey(),
+                        Money.getAmount(rs, "ledger_net"), Money.getAmount(rs, "totals_net"), List.copyOf(day.getValue())));
+                }
+            }
+        }
+        return checks;
+    }
+
+    /**
+     * @param accountIds null لكل الحسابات
+     */
+    private List<Check> checkAccounts(Connection conn, Collection<String> accountIds,
+                                      Map<String, Set<String>> refsByAccount) throws SQLException {
+        String filter = accountIds == null ? "" : " IN (" + placeholders(accountIds.size()) + ")";
+        String sql = """
+            SELECT fa.account_id, fa.account_name, fa.account_type,
+                   COALESCE(fa.opening_balance, 0) AS opening_balance,
+                   COALESCE(fa.current_balance, 0) AS current_balance,
+                   COALESCE(t.net, 0) AS ledger_net
+            FROM financial_accounts fa
+            LEFT JOIN (SELECT account_id, SUM(debit_total - credit_total) AS net
+                       FROM ledger_daily_totals %s GROUP BY account_id) t ON t.account_id = fa.account_id
+            WHERE fa.account_type <> 'HEADER' %s
+            """.formatted(accountIds == null ? "" : "WHERE account_id" + filter,
+                          accountIds == null ? "" : "AND fa.account_id" + filter);
+        List<Check> checks = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (accountIds != null) {
+                int i = 1;
+                for (int pass = 0; pass < 2; pass++) {
+                    for (String accountId : accountIds) {
+                        stmt.setInt(i++, Integer.parseInt(accountId));
+                    }
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    int accountId = rs.getInt("account_id");
+                    long expected = rs.getLong("opening_balance")
+                        + naturalSign(accountId, rs.getString("account_type")) * rs.getLong("ledger_net");
+                    String subject = String.valueOf(accountId);
+                    checks.add(new Check(IssueKind.ACCOUNT_BALANCE, subject, rs.getString("account_name"),
+                        Money.toMajor(expected), Money.getAmount(rs, "current_balance"),
+                        List.copyOf(refsByAccount.getOrDefault(subject, Set.of()))));
+                }
+            }
+        }
+        return checks;
+    }
+
+    /**
+     * @param cropIds null لكل المحاصيل
+     */
+    private List<Check> checkInventory(Connection conn, Collection<String> cropIds,
+                                       Map<String, Set<String>> refsByCrop) throws SQLException {
+        String filter = cropIds == null ? "" : " WHERE c.crop_id IN (" + placeholders(cropIds.size()) + ")";
+        String sql = """
+            SELECT c.crop_id, c.crop_name,
+                   COALESCE((SELECT SUM(m.quantity_kg) FROM inventory_movements m WHERE m.crop_id = c.crop_id), 0) AS moved,
+                   COALESCE((SELECT i.current_stock_kg FROM inventory i WHERE i.crop_id = c.crop_id), 0) AS stock
+            FROM crops c
+            """ + filter;
+        List<Check> checks = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (cropIds != null) {
+                int i = 1;
+                for (String cropId : cropIds) {
+                    stmt.setInt(i++, Integer.parseInt(cropId));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    String subject = String.valueOf(rs.getInt("crop_id"));
+                    checks.add(new Check(IssueKind.INVENTORY, subject, rs.getString("crop_name"),
+                        rs.getDouble("moved"), rs.getDouble("stock"),
+                        List.copyOf(refsByCrop.getOrDefault(subject, Set.of()))));
+                }
+            }
+        }
+        return checks;
+    }
+
+    // ------------------------------------------------------------------
+    // حفظ النتائج
+
+    /**
+     * حفظ الفروقات وحذف ما مر فحصه
+     * @return الفروقات التي لم تكن مسجلة قبل هذا الفحص
+     */
+    private List<IntegrityIssue> applyChecks(Connection conn, List<Check> checks) throws SQLException {
+        List<IntegrityIssue> created = new ArrayList<>();
+        String existsSql = "SELECT 1 FROM integrity_issues WHERE kind = ? AND subject = ?";
+        String upsertSql = """
+            INSERT INTO integrity_issues (kind, subject, label, expected, actual, refs)
+            VALUES (?, ?, ?, ?, ?, ?)
+            ON CONFLICT (kind, subject) DO UPDATE SET
+                label = excluded.label,
+                expected = excluded.expected,
+                actual = excluded.actual,
+                refs = CASE WHEN excluded.refs = '' THEN integrity_issues.refs ELSE excluded.refs END,
+                last_detected_at = CURRENT_TIMESTAMP
+            """;
+        String resolveSql = "DELETE FROM integrity_issues WHERE kind = ? AND subject = ?";
+        try (PreparedStatement exists = conn.prepareStatement(existsSql);
+             PreparedStatement upsert = conn.prepareStatement(upsertSql);
+             PreparedStatement resolve = conn.prepareStatement(resolveSql)) {
+            for (Check check : checks) {
+                if (!check.failed()) {
+                    resolve.setString(1, check.kind.name());
+                    resolve.setString(2, check.subject);
+                    resolve.addBatch();
+                    continue;
+                }
+                IntegrityIssue issue = check.toIssue();
+                exists.setString(1, check.kind.name());
+                exists.setString(2, check.subject);
+                try (ResultSet rs = exists.executeQuery()) {
+                    if (!rs.next()) {
+                        created.add(issue);
+                    }
+                }
+                upsert.setString(1, check.kind.name());
+                upsert.setString(2, check.subject);
+                upsert.setString(3, check.label);
+                upsert.setDouble(4, check.expected);
+                upsert.setDouble(5, check.actual);
+                upsert.setString(6, String.join(", ", issue.getRefs()));
+                upsert.executeUpdate();
+            }
+            resolve.executeBatch();
+        }
+        return created;
+    }
+
+    private static long readMark(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT value FROM integrity_state WHERE name = ?")) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    private static void writeMark(Connection conn, String name, long value) throws SQLException {
+        String sql = "INSERT INTO integrity_state (name, value) VALUES (?, ?) ON CONFLICT (name) DO UPDATE SET value = excluded.value";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, name);
+            stmt.setLong(2, value);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static void addRef(Map<String, Set<String>> refs, String subject, String ref) {
+        Set<String> subjectRefs = refs.computeIfAbsent(subject, key -> new LinkedHashSet<>());
+        subjectRefs.remove(ref);
+        subjectRefs.add(ref);
+        if (subjectRefs.size() > MAX_REFS) {
+            subjectRefs.remove(subjectRefs.iterator().next());
+        }
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private static List<IntegrityIssue> failures(List<Check> checks) {
+        List<IntegrityIssue> issues = new ArrayList<>();
+        for (Check check : checks) {
+            if (check.failed()) {
+                issues.add(check.toIssue());
+            }
+        }
+        return issues;
+    }
+
+    private record Snapshot(int entries, int movements, long ledgerMark, long movementMark, List<Check> checks) {
+    }
+
+    private record Check(IssueKind kind, String subject, String label, double expected, double actual, List<String> refs) {
+        boolean failed() {
+            if (kind == IssueKind.INVENTORY) {
+                return Math.abs(expected - actual) > QUANTITY_TOLERANCE;
+            }
+            return Money.toMinor(expected) != Money.toMinor(actual);
+        }
+
+        IntegrityIssue toIssue() {
+            List<String> latestFirst = new ArrayList<>(refs);
+            Collections.reverse(latestFirst);
+            return new IntegrityIssue(kind, subject, label, expected, actual, latestFirst, null, null);
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // DTOs
+
+    /**
+     * فرق واحد: القيمة المتوقعة من المصدر (الدفتر أو الحركات) مقابل القيمة المخزنة
+     */
+    public static class IntegrityIssue {
+        private final IssueKind kind;
+        private final String subject;
+        private final String label;
+        private final double expected;
+        private final double actual;
+        private final List<String> refs;
+        private final String firstDetectedAt;
+        private final String lastDetectedAt;
+
+        public IntegrityIssue(IssueKind kind, String subject, String label, double expected, double actual,
+                              List<String> refs, String firstDetectedAt, String lastDetectedAt) {
+            this.kind = kind;
+            this.subject = subject;
+            this.label = label;
+            this.expected = expected;
+            this.actual = actual;
+            this.refs = List.copyOf(refs);
+            this.firstDetectedAt = firstDetectedAt;
+            this.lastDetectedAt = lastDetectedAt;
+        }
+
+        public IssueKind getKind() { return kind; }
+        public String getSubject() { return subject; }
+        public String getLabel() { return label; }
+        public double getExpected() { return expected; }
+        public double getActual() { return actual; }
+        public double getDifference() { return actual - expected; }
+        /** مراجع القيود أو الحركات التي مست الموضوع، الأحدث أولاً */
+        public List<String> getRefs() { return refs; }
+        public String getFirstDetectedAt() { return firstDetectedAt; }
+        public String getLastDetectedAt() { return lastDetectedAt; }
+
+        @Override
+        public String toString() {
+            return kind.getArabicName() + " [" + (label != null ? label : subject) + "] متوقع " + expected
+                + " مسجل " + actual + (refs.isEmpty() ? "" : " مراجع: " + String.join(", ", refs));
+        }
+    }
+
+    public static class BatchResult {
+        private final int entriesChecked;
+        private final int movementsChecked;
+        private final List<IntegrityIssue> issues;
+        private final List<IntegrityIssue> newIssues;
+        private final boolean caughtUp;
+
+        public BatchResult(int entriesChecked, int movementsChecked, List<IntegrityIssue> issues,
+                           List<IntegrityIssue> newIssues, boolean caughtUp) {
+            this.entriesChecked = entriesChecked;
+            this.movementsChecked = movementsChecked;
+            this.issues = issues;
+            this.newIssues = newIssues;
+            this.caughtUp = caughtUp;
+        }
+
+        public int getEntriesChecked() { return entriesChecked; }
+        public int getMovementsChecked() { return movementsChecked; }
+        /** كل الفروقات التي وجدها هذا الفحص */
+        public List<IntegrityIssue> getIssues() { return issues; }
+        /** الفروقات التي لم تكن مسجلة من قبل */
+        public List<IntegrityIssue> getNewIssues() { return newIssues; }
+        /** لا سطور جديدة بعد العلامة */
+        public boolean isCaughtUp() { return caughtUp; }
+    }
+}
@@ -0,0 +1,626 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.service.ContactStatementService.AgingBuckets;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * دفتر البنود المفتوحة للذمم المدينة (AR) والدائنة (AP)
+ *
+ * كل فاتورة بيع/شراء تُسجل كبند مفتوح برصيدها غير المسدد. الدفعات والمرتجعات
+ * تُخصص على فواتير محددة (تخصيص صريح) ثم يُوزع الباقي على أقدم الفواتير المفتوحة
+ * أولاً (FIFO)، وما يزيد يبقى رصيداً دائناً غير مخصص يُستهلك مع الفواتير التالية.
+ * كل تخصيص يُحفظ في open_item_allocations حتى يمكن عكسه بدقة عند حذف أي مستند.
+ *
+ * جدول contact_open_balances يحتفظ بإجمالي المفتوح لكل جهة تعامل ويُحدث مع كل
+ * ترحيل، فإجماليات الذمم وتنبيهات التأخير تُقرأ بعدد جهات التعامل لا بعدد الفواتير.
+ */
+public class OpenItemService {
+
+    public static final String SIDE_RECEIVABLE = "AR";
+    public static final String SIDE_PAYABLE = "AP";
+
+    private static final String KIND_INVOICE = "INVOICE";
+    private static final String KIND_CREDIT = "CREDIT";
+
+    private final ImprovedDataManager dataManager;
+    private final CreditControlService creditControl;
+
+    public OpenItemService() {
+        this(ImprovedDataManager.getInstance());
+    }
+
+    private OpenItemService(ImprovedDataManager dataManager) {
+        this.dataManager = dataManager;
+        this.creditControl = dataManager != null ? new CreditControlService(dataManager) : null;
+    }
+
+    /**
+     * حالة السداد كما تعرضها سجلات الفواتير، من قيمة الفاتورة والمتبقي منها
+     */
+    static String paymentStatusLabel(double amount, double openAmount) {
+        if (openAmount < 0.01) {
+            return "مدفوع";
+        }
+        return openAmount < amount - 0.01 ? "مدفوع جزئياً" : "غير مدفوع";
+    }
+
+    // ------------------------------------------------------------------
+    // الترحيل (يستخدم اتصال المعاملة الحالية)
+    // ------------------------------------------------------------------
+
+    /**
+     * تسجيل فاتورة كبند مفتوح مع ما سُدد منها عند إصدارها
+     */
+    public void postInvoice(Connection conn, String side, int contactId, String sourceType, int sourceId,
+                            String reference, LocalDate date, double amount, double settledAmount) throws SQLException {
+        long itemId = insertItem(conn, side, KIND_INVOICE, contactId, sourceType, sourceId, reference, date, amount);
+        double settled = Math.min(round(settledAmount), round(amount));
+        if (settled > 0) {
+            allocate(conn, itemId, sourceType, sourceId, date, settled);
+        }
+        applyCredits(conn, contactId, side);
+        refreshContactBalance(conn, contactId, side);
+    }
+
+    /**
+     * تسجيل دفعة أو مرتجع: يُخصص أولاً على الفواتير المحددة (مفتاح الخريطة هو رقم
+     * فاتورة البيع أو الشراء حسب الجانب) ثم على أقدم الفواتير المفتوحة
+     */
+    public void postCredit(Connection conn, String side, int contactId, String sourceType, int sourceId,
+                           String reference, LocalDate date, double amount,
+                           Map<Integer, Double> explicitAllocations) throws SQLException {
+        double remaining = round(amount);
+        if (explicitAllocations != null) {
+            String invoiceSourceType = SIDE_RECEIVABLE.equals(side) ? "SALE" : "PURCHASE";
+            for (Map.Entry<Integer, Double> target : explicitAllocations.entrySet()) {
+                if (remaining <= 0) {
+                    break;
+                }
+                OpenItem invoice = findItem(conn, KIND_INVOICE, invoiceSourceType, target.getKey());
+                if (invoice == null || invoice.getContactId() != contactId || invoice.getOpenAmount() <= 0) {
+                    continue;
+                }
+                double applied = Math.min(Math.min(round(target.getValue()), invoice.getOpenAmount()), remaining);
+                if (applied > 0) {
+                    allocate(conn, invoice.getItemId(), sourceType, sourceId, date, applied);
+                    remaining = round(remaining - applied);
+                }
+            }
+        }
+        if (remaining > 0) {
+            addToCredit(conn, side, contactId, sourceType, sourceId, reference, date, remaining);
+        }
+        applyCredits(conn, contactId, side);
+        refreshContactBalance(conn, contactId, side);
+    }
+
+    /**
+     * عكس كل أثر مستند عند حذفه: تُعاد المبالغ التي خصصها إلى الفواتير، وما خُصص
+     * على فواتيره من مستندات أخرى يعود رصيداً دائناً لأصحابه
+     */
+    public void removeSource(Connection conn, String sourceType, int sourceId) throws SQLException {
+        Set<String> affected = new LinkedHashSet<>();
+
+        // 1. المبالغ التي خصصها هذا المستند على فواتير
+        String allocationsSql = """
+            SELECT a.item_id, a.amount, i.contact_id, i.side
+            FROM open_item_allocations a JOIN open_items i ON i.item_id = a.item_id
+            WHERE a.source_type = ? AND a.source_id = ?
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(allocationsSql)) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    adjustOpenAmount(conn, rs.getLong("item_id"), rs.getDouble("amount"));
+                    affected.add(rs.getInt("contact_id") + ":" + rs.getString("side"));
+                }
+            }
+        }
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "DELETE FROM open_item_allocations WHERE source_type = ? AND source_id = ?")) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            stmt.executeUpdate();
+        }
+
+        // 2. البنود التي أنشأها المستند، وما خُصص عليها من مستندات أخرى يعود رصيداً دائناً
+        List<OpenItem> items = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM open_items WHERE source_type = ? AND source_id = ?")) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapItem(rs));
+                }
+            }
+        }
+        for (OpenItem item : items) {
+            affected.add(item.getContactId() + ":" + item.getSide());
+            String foreignSql = "SELECT source_type, source_id, allocation_date, amount FROM open_item_allocations WHERE item_id = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(foreignSql)) {
+                stmt.setLong(1, item.getItemId());
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        addToCredit(conn, item.getSide(), item.getContactId(), rs.getString("source_type"), rs.getInt("source_id"),
+                            null, FormatUtils.parseDateFromDatabase(rs.getString("allocation_date")), rs.getDouble("amount"));
+                    }
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM open_item_allocations WHERE item_id = ?")) {
+                stmt.setLong(1, item.getItemId());
+                stmt.executeUpdate();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM open_items WHERE item_id = ?")) {
+                stmt.setLong(1, item.getItemId());
+                stmt.executeUpdate();
+            }
+        }
+
+        // 3. إعادة التوزيع وتحديث الإجماليات لكل جهة تأثرت
+        for (String key : affected) {
+            String[] parts = key.split(":");
+            int contactId = Integer.parseInt(parts[0]);
+            applyCredits(conn, contactId, parts[1]);
+            refreshContactBalance(conn, contactId, parts[1]);
+        }
+    }
+
+    /**
+     * مطابقة الأرصدة الدائنة غير المخصصة مع أقدم الفواتير المفتوحة للجهة (FIFO)
+     */
+    private void applyCredits(Connection conn, int contactId, String side) throws SQLException {
+        List<OpenItem> credits = loadOpenItems(conn, contactId, side, KIND_CREDIT);
+        if (credits.isEmpty()) {
+            return;
+        }
+        List<OpenItem> invoices = loadOpenItems(conn, contactId, side, KIND_INVOICE);
+        int c = 0;
+        int i = 0;
+        while (c < credits.size() && i < invoices.size()) {
+            OpenItem credit = credits.get(c);
+            OpenItem invoice = invoices.get(i);
+            double applied = Math.min(credit.getOpenAmount(), invoice.getOpenAmount());
+            LocalDate allocationDate = credit.getDocDate().isAfter(invoice.getDocDate()) ? credit.getDocDate() : invoice.getDocDate();
+            allocate(conn, invoice.getItemId(), credit.getSourceType(), credit.getSourceId(), allocationDate, applied);
+            adjustOpenAmount(conn, credit.getItemId(), -applied);
+            credit.openAmount = round(credit.openAmount - applied);
+            invoice.openAmount = round(invoice.openAmount - applied);
+            if (credit.openAmount <= 0) {
+                c++;
+            }
+            if (invoice.openAmount <= 0) {
+                i++;
+            }
+        }
+    }
+
+    private void allocate(Connection conn, long itemId, String sourceType, int sourceId, LocalDate date,
+                          double amount) throws SQLException {
+        String sql = "INSERT INTO open_item_allocations (item_id, source_type, source_id, allocation_date, amount) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setLong(1, itemId);
+            stmt.setString(2, sourceType);
+            stmt.setInt(3, sourceId);
+            stmt.setString(4, FormatUtils.formatDateForDatabase(date));
+            stmt.setDouble(5, round(amount));
+            stmt.executeUpdate();
+        }
+        adjustOpenAmount(conn, itemId, -amount);
+    }
+
+    private void addToCredit(Connection conn, String side, int contactId, String sourceType, int sourceId,
+                             String reference, LocalDate date, double amount) throws SQLException {
+        OpenItem existing = findItem(conn, KIND_CREDIT, sourceType, sourceId);
+        if (existing != null && existing.getSide().equals(side)) {
+            adjustOpenAmount(conn, existing.getItemId(), amount);
+        } else {
+            insertItem(conn, side, KIND_CREDIT, contactId, sourceType, sourceId, reference, date, amount);
+        }
+    }
+
+    private long insertItem(Connection conn, String side, String kind, int contactId, String sourceType, int sourceId,
+                            String reference, LocalDate date, double amount) throws SQLException {
+        String sql = """
+            INSERT INTO open_items (side, item_kind, contact_id, source_type, source_id, reference, doc_date,
+                                    original_amount, open_amount)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, side);
+            stmt.setString(2, kind);
+            stmt.setInt(3, contactId);
+            stmt.setString(4, sourceType);
+            stmt.setInt(5, sourceId);
+            stmt.setString(6, reference);
+            stmt.setString(7, FormatUtils.formatDateForDatabase(date));
+            stmt.setDouble(8, round(amount));
+            stmt.setDouble(9, round(amount));
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+        }
+        throw new SQLException("Creating open item failed, no ID obtained.");
+    }
+
+    private void adjustOpenAmount(Connection conn, long itemId, double delta) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE open_items SET open_amount = ROUND(open_amount + ?, 2) WHERE item_id = ?")) {
+            stmt.setDouble(1, delta);
+            stmt.setLong(2, itemId);
+            stmt.executeUpdate();
+        }
+    }
+
+    private OpenItem findItem(Connection conn, String kind, String sourceType, int sourceId) throws SQLException {
+        String sql = "SELECT * FROM open_items WHERE source_type = ? AND source_id = ? AND item_kind = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, sourceType);
+            stmt.setInt(2, sourceId);
+            stmt.setString(3, kind);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? mapItem(rs) : null;
+            }
+        }
+    }
+
+    private List<OpenItem> loadOpenItems(Connection conn, int contactId, String side, String kind) throws SQLException {
+        String sql = """
+            SELECT * FROM open_items
+            WHERE contact_id = ? AND side = ? AND item_kind = ? AND open_amount > 0
+            ORDER BY doc_date, item_id
+            """;
+        List<OpenItem> items = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, side);
+            stmt.setString(3, kind);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    items.add(mapItem(rs));
+                }
+            }
+        }
+        return items;
+    }
+
+    private void refreshContactBalance(Connection conn, int contactId, String side) throws SQLException {
+        // فرق صافي الذمم يُبلغ لمراقبة الائتمان حتى يراه فحص أي بيع تالٍ في نفس المعاملة
+        double before = creditControl != null && SIDE_RECEIVABLE.equals(side) ? receivableNet(conn, contactId) : 0;
+        String sql = """
+            INSERT OR REPLACE INTO contact_open_balances (contact_id, side, open_invoices, unapplied_credits,
+                                                          open_invoice_count, oldest_open_date)
+            SELECT ?, ?,
+                   COALESCE(SUM(CASE WHEN item_kind = 'INVOICE' THEN open_amount END), 0),
+                   COALESCE(SUM(CASE WHEN item_kind = 'CREDIT' THEN open_amount END), 0),
+                   COUNT(CASE WHEN item_kind = 'INVOICE' THEN 1 END),
+                   MIN(CASE WHEN item_kind = 'INVOICE' THEN doc_date END)
+            FROM open_items
+            WHERE contact_id = ? AND side = ? AND open_amount > 0
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, side);
+            stmt.setInt(3, contactId);
+            stmt.setString(4, side);
+            stmt.executeUpdate();
+        }
+        if (creditControl != null && SIDE_RECEIVABLE.equals(side)) {
+            creditControl.exposureChanged(contactId, receivableNet(conn, contactId) - before);
+        }
+    }
+
+    /**
+     * صافي ذمم العميل المفتوحة (فواتير ناقص أرصدة دائنة) كما في contact_open_balances
+     */
+    private static double receivableNet(Connection conn, int contactId) throws SQLException {
+        String sql = "SELECT open_invoices - unapplied_credits FROM contact_open_balances WHERE contact_id = ? AND side = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, contactId);
+            stmt.setString(2, SIDE_RECEIVABLE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // إعادة البناء
+    // ------------------------------------------------------------------
+
+    /**
+     * إعادة بناء دفتر البنود المفتوحة من المستندات بترتيبها الزمني.
+     * تُستدعى عند إنشاء الجداول لأول مرة على قاعدة بيانات قائمة.
+     */
+    public static void rebuild(Connection conn) throws SQLException {
+        new OpenItemService(null).replayDocuments(conn);
+        CreditControlService.invalidate();
+    }
+
+    /**
+     * إعادة بناء دفتر البنود المفتوحة بالكامل داخل معاملة واحدة
+     */
+    public void rebuildAll() throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            replayDocuments(conn);
+            dataManager.afterCompletion(committed -> CreditControlService.invalidate());
+            return null;
+        });
+    }
+
+    private void replayDocuments(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM open_item_allocations");
+            stmt.executeUpdate("DELETE FROM open_items");
+            stmt.executeUpdate("DELETE FROM contact_open_balances");
+        }
+
+        String sql = """
+            SELECT 'SALE' AS kind, sale_id AS doc_id, customer_id AS contact_id, sale_date AS doc_date,
+                   total_sale_amount AS amount, COALESCE(amount_paid, 0) AS extra, sale_invoice_number AS reference, 0 AS seq
+            FROM sales
+            UNION ALL
+            SELECT 'PURCHASE', purchase_id, supplier_id, purchase_date, total_cost, COALESCE(amount_paid, 0), invoice_number, 0
+            FROM purchases
+            UNION ALL
+            SELECT 'SALE_RETURN', r.return_id, s.customer_id, r.return_date, r.refund_amount, r.original_sale_id,
+                   'SAL-RTN-' || r.return_id, 1
+            FROM sale_returns r JOIN sales s ON s.sale_id = r.original_sale_id
+            UNION ALL
+            SELECT 'PURCHASE_RETURN', r.return_id, p.supplier_id, r.return_date, r.returned_cost, r.original_purchase_id,
+                   'PUR-RTN-' || r.return_id, 1
+            FROM purchase_returns r JOIN purchases p ON p.purchase_id = r.original_purchase_id
+            UNION ALL
+            SELECT CASE payment_type WHEN 'PAY' THEN 'PAY' ELSE 'RECEIVE' END, payment_id, contact_id, payment_date,
+                   amount, 0, 'PAY-' || payment_id, 2
+            FROM payments
+            ORDER BY doc_date, seq, doc_id
+            """;
+        List<Object[]> events = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                events.add(new Object[] {
+                    rs.getString("kind"), rs.getInt("doc_id"), rs.getInt("contact_id"),
+                    FormatUtils.parseDateFromDatabase(rs.getString("doc_date")), rs.getDouble("amount"),
+                    rs.getDouble("extra"), rs.getString("reference")
+                });
+            }
+        }
+
+        for (Object[] event : events) {
+            String kind = (String) event[0];
+            int docId = (Integer) event[1];
+            int contactId = (Integer) event[2];
+            LocalDate date = (LocalDate) event[3];
+            double amount = (Double) event[4];
+            double extra = (Double) event[5];
+            String reference = (String) event[6];
+            switch (kind) {
+                case "SALE" -> postInvoice(conn, SIDE_RECEIVABLE, contactId, "SALE", docId, reference, date, amount, extra);
+                case "PURCHASE" -> postInvoice(conn, SIDE_PAYABLE, contactId, "PURCHASE", docId, reference, date, amount, extra);
+                case "SALE_RETURN" -> postCredit(conn, SIDE_RECEIVABLE, contactId, "SALE_RETURN", docId, reference, date,
+                    amount, Map.of((int) extra, amount));
+                case "PURCHASE_RETURN" -> postCredit(conn, SIDE_PAYABLE, contactId, "PURCHASE_RETURN", docId, reference, date,
+                    amount, Map.of((int) extra, amount));
+                case "RECEIVE" -> postCredit(conn, SIDE_RECEIVABLE, contactId, "PAYMENT", docId, reference, date, amount, null);
+                case "PAY" -> postCredit(conn, SIDE_PAYABLE, contactId, "PAYMENT", docId, reference, date, amount, null);
+                default -> { }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // الاستعلامات
+    // ------------------------------------------------------------------
+
+    /**
+     * الفواتير المفتوحة لجهة تعامل، الأقدم أولاً
+     */
+    public List<OpenItem> getOpenInvoices(int contactId, String side) throws SQLException {
+        try (Connection conn = dataManager.getConnection()) {
+            return loadOpenItems(conn, contactId, side, KIND_INVOICE);
+        }
+    }
+
+    /**
+     * صافي المفتوح لجانب كامل (فواتير مفتوحة ناقص أرصدة دائنة غير مخصصة)، من جدول الإجماليات
+     */
+    public double getOutstandingTotal(String side) throws SQLException {
+        String sql = "SELECT COALESCE(SUM(open_invoices - unapplied_credits), 0) FROM contact_open_balances WHERE side = ?";
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, side);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0.0;
+            }
+        }
+    }
+
+    /**
+     * أرصدة جهات التعامل المفتوحة لجانب معين، مع أقدم فاتورة مفتوحة لكل جهة
+     */
+    public List<ContactOpenBalance> getContactBalances(String side) throws SQLException {
+        String sql = """
+            SELECT b.contact_id, c.name, b.side, b.open_invoices, b.unapplied_credits, b.open_invoice_count, b.oldest_open_date
+            FROM contact_open_balances b JOIN contacts c ON c.contact_id = b.contact_id
+            WHERE b.side = ? AND (b.open_invoices > 0 OR b.unapplied_credits > 0)
+            ORDER BY b.oldest_open_date
+            """;
+        List<ContactOpenBalance> balances = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, side);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    balances.add(new ContactOpenBalance(
+                        rs.getInt("contact_id"),
+                        rs.getString("name"),
+                        rs.getString("side"),
+                        rs.getDouble("open_invoices"),
+                        rs.getDouble("unapplied_credits"),
+                        rs.getInt("open_invoice_count"),
+                        FormatUtils.parseDateFromDatabase(rs.getString("oldest_open_date"))
+                    ));
+                }
+            }
+        }
+        return balances;
+    }
+
+    /**
+     * أعمار الفواتير المفتوحة لجهة تعامل واحدة
+     */
+    public AgingBuckets getContactAging(int contactId, String side, LocalDate asOfDate) throws SQLException {
+        List<AgingBuckets> rows = queryAging(side, asOfDate, contactId);
+        return rows.isEmpty() ? new AgingBuckets(0, 0, 0, 0) : rows.get(0);
+    }
+
+    /**
+     * أعمار الفواتير المفتوحة لكل الجانب (الذمم المدينة أو الدائنة)
+     */
+    public AgingBuckets getOverallAging(String side, LocalDate asOfDate) throws SQLException {
+        List<AgingBuckets> rows = queryAging(side, asOfDate, null);
+        return rows.isEmpty() ? new AgingBuckets(0, 0, 0, 0) : rows.get(0);
+    }
+
+    private List<AgingBuckets> queryAging(String side, LocalDate asOfDate, Integer contactId) throws SQLException {
+        String sql = """
+            SELECT
+                COALESCE(SUM(CASE WHEN age <= 30 THEN open_amount END), 0) AS current_amount,
+                COALESCE(SUM(CASE WHEN age > 30 AND age <= 60 THEN open_amount END), 0) AS days_31_60,
+                COALESCE(SUM(CASE WHEN age > 60 AND age <= 90 THEN open_amount END), 0) AS days_61_90,
+                COALESCE(SUM(CASE WHEN age > 90 THEN open_amount END), 0) AS over_90
+            FROM (
+                SELECT open_amount, julianday(?) - julianday(doc_date) AS age
+                FROM open_items
+                WHERE side = ? AND item_kind = 'INVOICE' AND open_amount > 0
+            """ + (contactId != null ? " AND contact_id = ?" : "") + ")";
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(asOfDate));
+            stmt.setString(2, side);
+            if (contactId != null) {
+                stmt.setInt(3, contactId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return List.of(new AgingBuckets(rs.getDouble("current_amount"), rs.getDouble("days_31_60"),
+                        rs.getDouble("days_61_90"), rs.getDouble("over_90")));
+                }
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static OpenItem mapItem(ResultSet rs) throws SQLException {
+        return new OpenItem(
+            rs.getLong("item_id"),
+            rs.getString("side"),
+            rs.getString("item_kind"),
+            rs.getInt("contact_id"),
+            rs.getString("source_type"),
+            rs.getInt("source_id"),
+            rs.getString("reference"),
+            FormatUtils.parseDateFromDatabase(rs.getString("doc_date")),
+            rs.getDouble("original_amount"),
+            rs.getDouble("open_amount")
+        );
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    /**
+     * بند مفتوح: فاتورة أو رصيد دائن غير مخصص
+     */
+    public static class OpenItem {
+        private final long itemId;
+        private final String side;
+        private final String kind;
+        private final int contactId;
+        private final String sourceType;
+        private final int sourceId;
+        private final String reference;
+        private final LocalDate docDate;
+        private final double originalAmount;
+        private double openAmount;
+
+        public OpenItem(long itemId, String side, String kind, int contactId, String sourceType, int sourceId,
+                        String reference, LocalDate docDate, double originalAmount, double openAmount) {
+            this.itemId = itemId;
+            this.side = side;
+            this.kind = kind;
+            this.contactId = contactId;
+            this.sourceType = sourceType;
+            this.sourceId = sourceId;
+            this.reference = reference;
+            this.docDate = docDate;
+            this.originalAmount = originalAmount;
+            this.openAmount = openAmount;
+        }
+
+        public long getItemId() { return itemId; }
+        public String getSide() { return side; }
+        public String getKind() { return kind; }
+        public int getContactId() { return contactId; }
+        public String getSourceType() { return sourceType; }
+        public int getSourceId() { return sourceId; }
+        public String getReference() { return reference; }
+        public LocalDate getDocDate() { return docDate; }
+        public double getOriginalAmount() { return originalAmount; }
+        public double getOpenAmount() { return openAmount; }
+        public double getSettledAmount() { return originalAmount - openAmount; }
+    }
+
+    /**
+     * إجمالي المفتوح لجهة تعامل في جانب واحد
+     */
+    public static class ContactOpenBalance {
+        private final int contactId;
+        private final String contactName;
+        private final String side;
+        private final double openInvoices;
+        private final double unappliedCredits;
+        private final int openInvoiceCount;
+        private final LocalDate oldestOpenDate;
+
+        public ContactOpenBalance(int contactId, String contactName, String side, double openInvoices,
+                                  double unappliedCredits, int openInvoiceCount, LocalDate oldestOpenDate) {
+            this.contactId = contactId;
+            this.contactName = contactName;
+            this.side = side;
+            this.openInvoices = openInvoices;
+            this.unappliedCredits = unappliedCredits;
+            this.openInvoiceCount = openInvoiceCount;
+            this.oldestOpenDate = oldestOpenDate;
+        }
+
+        public int getContactId() { return contactId; }
+        public String getContactName() { return contactName; }
+        public String getSide() { return side; }
+        public double getOpenInvoices() { return openInvoices; }
+        public double getUnappliedCredits() { return unappliedCredits; }
+        public double getNetOutstanding() { return openInvoices - unappliedCredits; }
+        public int getOpenInvoiceCount() { return openInvoiceCount; }
+        public LocalDate getOldestOpenDate() { return oldestOpenDate; }
+    }
+}
@@ -3,25 +3,43 @@ package accounting.service;
 import accounting.model.Contact;
 import accounting.model.FinancialAccount;
 import accounting.model.Payment;
+import accounting.util.AppMetrics;
 import accounting.util.ImprovedDataManager;
 import accounting.formatter.FormatUtils;
 
 import java.sql.*;
 import java.time.LocalDate;
+import java.util.Map;
 
 public class PaymentDataService {
 
     private final ImprovedDataManager dataManager;
+    private final ContactStatementService contactStatements;
+    private final OpenItemService openItems;
 
     public PaymentDataService() {
         this.dataManager = ImprovedDataManager.getInstance();
+        this.contactStatements = new ContactStatementService();
+        this.openItems = new OpenItemService();
     }
 
     public int addPayment(Payment payment) throws SQLException {
-        return dataManager.executeTransaction(conn -> addPaymentLogic(conn, payment));
+        return addPayment(payment, null);
     }
 
-    private int addPaymentLogic(Connection conn, Payment payment) throws SQLException {
+    /**
+     * تسجيل دفعة مع تخصيصها على فواتير محددة (رقم فاتورة البيع أو الشراء -> المبلغ).
+     * ما يتبقى بعد التخصيص الصريح يُوزع على أقدم الفواتير المفتوحة.
+     */
+    public int addPayment(Payment payment, Map<Integer, Double> invoiceAllocations) throws SQLException {
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.payment")) {
+            int paymentId = dataManager.executeTransaction(conn -> addPaymentLogic(conn, payment, invoiceAllocations));
+            op.succeeded("PAY-" + paymentId);
+            return paymentId;
+        }
+    }
+
+    private int addPaymentLogic(Connection conn, Payment payment, Map<Integer, Double> invoiceAllocations) throws SQLException {
         String sql = "INSERT INTO payments (payment_date, contact_id, payment_account_id, amount, payment_type, description) VALUES (?, ?, ?, ?, ?, ?)";
         int paymentId;
         try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
@@ -57,6 +75,13 @@ public class PaymentDataService {
             dataManager.updateAccountBalance(accountsReceivableId, -payment.getAmount(), conn);
             dataManager.updateAccountBalance(payment.getPaymentAccount().getAccountId(), payment.getAmount(), conn);
         }
+
+        double contactAmount = "PAY".equals(payment.getPaymentType()) ? payment.getAmount() : -payment.getAmount();
+        contactStatements.recordSettlement(conn, payment.getContact().getContactId(), payment.getPaymentDate(), payment.getPaymentType(),
+            "PAYMENT", paymentId, transactionRef, payment.getDescription(), contactAmount);
+        String side = "PAY".equals(payment.getPaymentType()) ? OpenItemService.SIDE_PAYABLE : OpenItemService.SIDE_RECEIVABLE;
+        openItems.postCredit(conn, side, payment.getContact().getContactId(), "PAYMENT", paymentId, transactionRef,
+            payment.getPaymentDate(), payment.getAmount(), invoiceAllocations);
         return paymentId;
     }
 
@@ -87,6 +112,9 @@ public class PaymentDataService {
             deleteLedgerStmt.executeUpdate();
         }
 
+        contactStatements.removeSource(conn, "PAYMENT", paymentId);
+        openItems.removeSource(conn, "PAYMENT", paymentId);
+
         try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM payments WHERE payment_id = ?")) {
             deleteStmt.setInt(1, paymentId);
             int rowsAffected = deleteStmt.executeUpdate();
@@ -97,7 +125,7 @@ public class PaymentDataService {
     public void updatePayment(Payment payment) throws SQLException {
         dataManager.executeTransaction(conn -> {
             deletePaymentLogic(conn, payment.getPaymentId());
-            addPaymentLogic(conn, payment);
+            addPaymentLogic(conn, payment, null);
             return null;
         });
     }
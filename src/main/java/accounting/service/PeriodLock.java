@@ -0,0 +1,85 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+/**
+ * إقفال الفترات المحاسبية: بعد إقفال الشهر لا يُقبل قيد يدوي بتاريخ حتى locked_through (شاملاً).
+ *
+ * تاريخ الإقفال صف واحد في period_lock، ويُحفظ في الذاكرة رقم يوم (epoch day) فيكون فحص كل
+ * سطر مقارنة أعداد بلا استعلام. يُحدث بعد اعتماد تغيير الإقفال فقط، واستبدال مدير قاعدة البيانات
+ * يسقطه.
+ */
+public final class PeriodLock {
+
+    /** لا إقفال */
+    public static final long NONE = Long.MIN_VALUE;
+
+    private record Cached(long lockedThrough) {
+    }
+
+    private static volatile Cached current;
+
+    private PeriodLock() {
+    }
+
+    /** آخر يوم مقفل كرقم يوم، أو NONE */
+    public static long lockedThroughEpochDay() throws SQLException {
+        Cached cached = current;
+        if (cached == null) {
+            long lockedThrough = NONE;
+            try (Connection conn = ImprovedDataManager.getInstance().getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT locked_through FROM period_lock WHERE lock_id = 1")) {
+                if (rs.next() && rs.getString(1) != null) {
+                    lockedThrough = FormatUtils.epochDayFromDatabase(rs.getString(1));
+                }
+            }
+            cached = new Cached(lockedThrough);
+            current = cached;
+        }
+        return cached.lockedThrough();
+    }
+
+    /** آخر يوم مقفل، أو null إذا لم تُقفل أي فترة */
+    public static LocalDate getLockedThrough() throws SQLException {
+        long lockedThrough = lockedThroughEpochDay();
+        return lockedThrough == NONE ? null : LocalDate.ofEpochDay(lockedThrough);
+    }
+
+    public static boolean isLocked(LocalDate date) throws SQLException {
+        return date.toEpochDay() <= lockedThroughEpochDay();
+    }
+
+    /** إسقاط تاريخ الإقفال المحفوظ؛ يُقرأ من جديد عند أول فحص */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * إقفال كل ما حتى date، أو رفع الإقفال بـ null. الإقفال لا يُرحل شيئاً؛ يمنع القيود اليدوية فقط
+     */
+    public static void lockThrough(LocalDate date) throws SQLException {
+        ImprovedDataManager dataManager = ImprovedDataManager.getInstance();
+        dataManager.executeTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    INSERT INTO period_lock (lock_id, locked_through, updated_at) VALUES (1, ?, CURRENT_TIMESTAMP)
+                    ON CONFLICT (lock_id) DO UPDATE SET locked_through = excluded.locked_through, updated_at = CURRENT_TIMESTAMP
+                    """)) {
+                stmt.setString(1, date != null ? FormatUtils.formatDateForDatabase(date) : null);
+                stmt.executeUpdate();
+            }
+            dataManager.logAuditEntry("period_lock", 1, "UPDATE", null,
+                date != null ? FormatUtils.formatDateForDatabase(date) : null, "SYSTEM", conn);
+            dataManager.afterCompletion(committed -> current = null);
+            return null;
+        });
+    }
+}
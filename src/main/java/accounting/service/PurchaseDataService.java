@@ -3,10 +3,17 @@ package accounting.service;
 import accounting.dao.AbstractDAO;
 import accounting.formatter.FormatUtils;
 import accounting.model.*;
+import accounting.util.AppMetrics;
+import accounting.util.KeysetSort;
+import accounting.util.Money;
+import accounting.util.PageRequest;
+import accounting.util.RowCache;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 /**
@@ -25,35 +32,62 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
 
     private static final Logger LOGGER = Logger.getLogger(PurchaseDataService.class.getName());
 
+    /** صف سجل المشتريات مع المتبقي من بند الفاتورة المفتوح */
+    private static final String PURCHASE_ROWS = """
+        SELECT p.*, c.crop_name, ct.name as supplier_name, oi.open_amount
+        FROM purchases p
+        JOIN crops c ON p.crop_id = c.crop_id
+        JOIN contacts ct ON p.supplier_id = ct.contact_id
+        LEFT JOIN open_items oi ON oi.source_type = 'PURCHASE' AND oi.source_id = p.purchase_id AND oi.item_kind = 'INVOICE'
+        WHERE 1=1
+        """;
+
+    /** أعمدة الترتيب المسموحة لصفحات سجل المشتريات؛ الافتراضي الأحدث أولاً */
+    private static final KeysetSort<PurchaseRecord> PURCHASE_SORT = new KeysetSort<PurchaseRecord>("p.purchase_id", PurchaseRecord::getPurchaseId)
+        .column("date", "p.purchase_date", purchase -> FormatUtils.formatDateForDatabase(purchase.getPurchaseDate()))
+        .column("invoice", "COALESCE(p.invoice_number, '')", purchase -> Objects.toString(purchase.getInvoiceNumber(), ""))
+        .column("supplier", "ct.name", purchase -> purchase.getSupplier().getName())
+        .column("crop", "c.crop_name", purchase -> purchase.getCrop().getCropName())
+        .column("price", "p.unit_price", PurchaseRecord::getUnitPrice)
+        .column("total", "p.total_cost", PurchaseRecord::getTotalCost)
+        .byDefault("date", false);
+
+    private final SeasonAnalyticsService seasonAnalytics;
+    private final ContactStatementService contactStatements;
+    private final OpenItemService openItems;
+
     /**
      * مُنشئ خدمة بيانات المشتريات
      */
     public PurchaseDataService() {
         super("purchases");
+        this.seasonAnalytics = new SeasonAnalyticsService();
+        this.contactStatements = new ContactStatementService();
+        this.openItems = new OpenItemService();
     }
 
     @Override
     protected PurchaseRecord mapResultSetToEntity(ResultSet rs) throws SQLException {
+        return mapResultSetToPurchase(rs, new RowCache());
+    }
+
+    private PurchaseRecord mapResultSetToPurchase(ResultSet rs, RowCache cache) throws SQLException {
         PurchaseRecord purchase = new PurchaseRecord();
         purchase.setPurchaseId(rs.getInt("purchase_id"));
-        
-        Crop crop = new Crop();
-        crop.setCropId(rs.getInt("crop_id"));
-        crop.setCropName(rs.getString("crop_name"));
-        purchase.setCrop(crop);
-        
-        Contact supplier = new Contact();
-        supplier.setContactId(rs.getInt("supplier_id"));
-        supplier.setName(rs.getString("supplier_name"));
-        purchase.setSupplier(supplier);
-        
-        purchase.setPurchaseDate(FormatUtils.parseDateFromDatabase(rs.getString("purchase_date")));
+
+        // المحصول والمورد مرجعان مشتركان بين صفوف النتيجة نفسها
+        purchase.setCrop(cache.crop(rs.getInt("crop_id"), rs.getString("crop_name")));
+        purchase.setSupplier(cache.contact(rs.getInt("supplier_id"), rs.getString("supplier_name")));
+
+        purchase.setPurchaseDate(cache.date(rs.getString("purchase_date")));
         purchase.setQuantityKg(rs.getDouble("quantity_kg"));
-        purchase.setPricingUnit(rs.getString("pricing_unit"));
+        purchase.setPricingUnit(cache.text(rs.getString("pricing_unit")));
         purchase.setSpecificFactor(rs.getDouble("specific_factor"));
         purchase.setUnitPrice(rs.getDouble("unit_price"));
         purchase.setTotalCost(rs.getDouble("total_cost"));
         purchase.setInvoiceNumber(rs.getString("invoice_number"));
+        purchase.setExpiryDate(cache.date(rs.getString("expiry_date")));
+        purchase.setWarehouseId(rs.getInt("warehouse_id"));
         
         return purchase;
     }
@@ -115,8 +149,9 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
         String insertQuery = """
             INSERT INTO purchases (crop_id, supplier_id, purchase_date, quantity_kg,
                                  pricing_unit, specific_factor, unit_price, total_cost,
-                                 invoice_number, amount_paid, payment_status, notes)
-            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                                 invoice_number, amount_paid, payment_status, notes, season_id, expiry_date,
+                                 warehouse_id)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
             """;
         int purchaseId;
         try (PreparedStatement stmt = conn.prepareStatement(insertQuery, Statement.RETURN_GENERATED_KEYS)) {
@@ -132,6 +167,9 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
             stmt.setDouble(10, finalAmountPaid);
             stmt.setString(11, paymentStatus);
             stmt.setString(12, ""); // Notes
+            SeasonResolver.bindSeason(stmt, 13, conn, purchase.getPurchaseDate());
+            stmt.setString(14, FormatUtils.formatDateForDatabase(purchase.getExpiryDate()));
+            stmt.setInt(15, purchase.getWarehouseId());
             stmt.executeUpdate();
 
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
@@ -169,14 +207,30 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
 
         // 4. Update Inventory & Audit Log
         double unitCost = purchase.getQuantityKg() > 0 ? purchase.getTotalCost() / purchase.getQuantityKg() : 0;
-        dataManager.updateInventory(purchase.getCrop().getCropId(), purchase.getQuantityKg(), unitCost, "IN", "PURCHASE", purchaseId, conn);
+        dataManager.updateInventory(purchase.getCrop().getCropId(), purchase.getQuantityKg(), unitCost, "IN", "PURCHASE", purchaseId,
+            purchase.getWarehouseId(), null, purchase.getExpiryDate(), conn);
+        seasonAnalytics.recordPurchase(conn, purchase.getPurchaseDate(), purchase.getCrop().getCropId(), purchase.getTotalCost(), purchase.getQuantityKg());
+        int supplierId = purchase.getSupplier().getContactId();
+        contactStatements.recordDocument(conn, supplierId, purchase.getPurchaseDate(), ContactStatementService.ENTRY_PURCHASE, "PURCHASE", purchaseId,
+            purchase.getInvoiceNumber(), purchase.getCrop().getCropId(), purchase.getQuantityKg(), purchase.getPricingUnit(),
+            purchase.getUnitPrice(), "فاتورة رقم: " + purchase.getInvoiceNumber(), -purchase.getTotalCost());
+        if (finalAmountPaid > 0 && paymentAccount != null) {
+            contactStatements.recordSettlement(conn, supplierId, purchase.getPurchaseDate(), ContactStatementService.ENTRY_PURCHASE_PAYMENT, "PURCHASE", purchaseId,
+                purchase.getInvoiceNumber(), "دفعة لفاتورة شراء", finalAmountPaid);
+        }
+        openItems.postInvoice(conn, OpenItemService.SIDE_PAYABLE, supplierId, "PURCHASE", purchaseId, purchase.getInvoiceNumber(),
+            purchase.getPurchaseDate(), purchase.getTotalCost(), paymentAccount != null ? finalAmountPaid : 0);
         dataManager.logAuditEntry("purchases", purchaseId, "INSERT", null, purchase.getInvoiceNumber(), "SYSTEM", conn);
         
         return purchaseId;
     }
 
     public int addPurchase(PurchaseRecord purchase, FinancialAccount paymentAccount, double amountPaid) throws SQLException {
-        return dataManager.executeTransaction(conn -> addPurchaseLogic(conn, purchase, paymentAccount, amountPaid));
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.purchase")) {
+            int purchaseId = dataManager.executeTransaction(conn -> addPurchaseLogic(conn, purchase, paymentAccount, amountPaid));
+            op.succeeded("PUR-" + purchaseId);
+            return purchaseId;
+        }
     }
 
     public void updatePurchase(PurchaseRecord updatedPurchase) throws SQLException {
@@ -213,7 +267,7 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
             getLedgerStmt.setString(1, originalTransactionRef);
             try (ResultSet rs = getLedgerStmt.executeQuery()) {
                 while (rs.next()) {
-                    dataManager.addLedgerEntry(conn, reversalRef, LocalDate.now(), rs.getInt("account_id"), rs.getDouble("credit"), rs.getDouble("debit"), description, "PURCHASE_DELETE", purchaseId, "PURCHASE_DELETE");
+                    dataManager.addLedgerEntry(conn, reversalRef, LocalDate.now(), rs.getInt("account_id"), Money.getAmount(rs, "credit"), Money.getAmount(rs, "debit"), description, "PURCHASE_DELETE", purchaseId, "PURCHASE_DELETE");
                 }
             }
         }
@@ -222,7 +276,11 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
         dataManager.updateAccountBalance(accountsPayableId, -purchase.getTotalCost(), conn);
 
         double unitCost = purchase.getQuantityKg() > 0 ? purchase.getTotalCost() / purchase.getQuantityKg() : 0;
-        dataManager.updateInventory(purchase.getCrop().getCropId(), -purchase.getQuantityKg(), unitCost, "OUT", "PURCHASE_DELETE", purchaseId, conn);
+        dataManager.updateInventory(purchase.getCrop().getCropId(), -purchase.getQuantityKg(), unitCost, "OUT", "PURCHASE_DELETE", purchaseId,
+            purchase.getWarehouseId(), null, null, conn);
+        seasonAnalytics.recordPurchase(conn, purchase.getPurchaseDate(), purchase.getCrop().getCropId(), -purchase.getTotalCost(), -purchase.getQuantityKg());
+        contactStatements.removeSource(conn, "PURCHASE", purchaseId);
+        openItems.removeSource(conn, "PURCHASE", purchaseId);
 
         String deleteQuery = "DELETE FROM purchases WHERE purchase_id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(deleteQuery)) {
@@ -252,43 +310,157 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
         return null;
     }
 
-    public List<PurchaseRecord> getPurchases(LocalDate fromDate, LocalDate toDate, Integer cropId, Integer supplierId, String searchText) throws SQLException {
-        StringBuilder queryBuilder = new StringBuilder("SELECT p.*, c.crop_name, ct.name as supplier_name FROM purchases p JOIN crops c ON p.crop_id = c.crop_id JOIN contacts ct ON p.supplier_id = ct.contact_id WHERE 1=1");
-        List<Object> parameters = new ArrayList<>();
-        
-        if (fromDate != null) {
-            queryBuilder.append(" AND p.purchase_date >= ?");
-            parameters.add(FormatUtils.formatDateForDatabase(fromDate));
+    /**
+     * فلاتر سجل المشتريات؛ الحقول الفارغة لا تُقيد النتيجة
+     */
+    public static class PurchaseFilter {
+        private final LocalDate fromDate;
+        private final LocalDate toDate;
+        private final Integer cropId;
+        private final Integer supplierId;
+        private final String searchText;
+
+        public PurchaseFilter(LocalDate fromDate, LocalDate toDate, Integer cropId, Integer supplierId, String searchText) {
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.cropId = cropId;
+            this.supplierId = supplierId;
+            this.searchText = searchText;
         }
-        if (toDate != null) {
-            queryBuilder.append(" AND p.purchase_date <= ?");
-            parameters.add(FormatUtils.formatDateForDatabase(toDate));
+
+        private String searchKey() {
+            return searchText == null ? "" : searchText.trim();
         }
-        if (cropId != null) {
-            queryBuilder.append(" AND p.crop_id = ?");
-            parameters.add(cropId);
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            PurchaseFilter other = (PurchaseFilter) obj;
+            return Objects.equals(fromDate, other.fromDate) && Objects.equals(toDate, other.toDate)
+                && Objects.equals(cropId, other.cropId) && Objects.equals(supplierId, other.supplierId)
+                && searchKey().equals(other.searchKey());
         }
-        if (supplierId != null) {
-            queryBuilder.append(" AND p.supplier_id = ?");
-            parameters.add(supplierId);
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fromDate, toDate, cropId, supplierId, searchKey());
+        }
+
+        void appendTo(StringBuilder queryBuilder, List<Object> parameters) {
+            if (fromDate != null) {
+                queryBuilder.append(" AND p.purchase_date >= ?");
+                parameters.add(FormatUtils.formatDateForDatabase(fromDate));
+            }
+            if (toDate != null) {
+                queryBuilder.append(" AND p.purchase_date <= ?");
+                parameters.add(FormatUtils.formatDateForDatabase(toDate));
+            }
+            if (cropId != null) {
+                queryBuilder.append(" AND p.crop_id = ?");
+                parameters.add(cropId);
+            }
+            if (supplierId != null) {
+                queryBuilder.append(" AND p.supplier_id = ?");
+                parameters.add(supplierId);
+            }
+            if (searchText != null && !searchText.trim().isEmpty()) {
+                queryBuilder.append(" AND (p.invoice_number LIKE ? OR ct.name LIKE ?)");
+                String searchPattern = "%" + searchText.toLowerCase() + "%";
+                parameters.add(searchPattern);
+                parameters.add(searchPattern);
+            }
         }
-        if (searchText != null && !searchText.trim().isEmpty()) {
-            queryBuilder.append(" AND (p.invoice_number LIKE ? OR ct.name LIKE ?)");
-            String searchPattern = "%" + searchText.toLowerCase() + "%";
-            parameters.add(searchPattern);
-            parameters.add(searchPattern);
+    }
+
+    /**
+     * مجاميع سجل المشتريات للفلاتر الحالية، محسوبة في SQL
+     */
+    public static class PurchaseTotals {
+        private final long count;
+        private final double totalCost;
+        private final double totalPaid;
+        private final double totalBalance;
+
+        public PurchaseTotals(long count, double totalCost, double totalPaid, double totalBalance) {
+            this.count = count;
+            this.totalCost = totalCost;
+            this.totalPaid = totalPaid;
+            this.totalBalance = totalBalance;
         }
+
+        public long getCount() { return count; }
+        public double getTotalCost() { return totalCost; }
+        public double getTotalPaid() { return totalPaid; }
+        public double getTotalBalance() { return totalBalance; }
+    }
+
+    public List<PurchaseRecord> getPurchases(LocalDate fromDate, LocalDate toDate, Integer cropId, Integer supplierId, String searchText) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder(PURCHASE_ROWS);
+        List<Object> parameters = new ArrayList<>();
+        new PurchaseFilter(fromDate, toDate, cropId, supplierId, searchText).appendTo(queryBuilder, parameters);
         queryBuilder.append(" ORDER BY p.purchase_date DESC, p.purchase_id DESC");
-        
-        List<PurchaseRecord> purchases = new ArrayList<>();
+        return queryPurchases(queryBuilder.toString(), parameters);
+    }
+
+    /**
+     * صفحة من سجل المشتريات مرتبة ومُصفحة في SQL
+     */
+    public List<PurchaseRecord> getPurchasesPage(PurchaseFilter filter, PageRequest<PurchaseRecord> page) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder(PURCHASE_ROWS);
+        List<Object> parameters = new ArrayList<>();
+        filter.appendTo(queryBuilder, parameters);
+        PURCHASE_SORT.appendPage(queryBuilder, parameters, page);
+        return queryPurchases(queryBuilder.toString(), parameters);
+    }
+
+    public PurchaseTotals getPurchasesTotals(PurchaseFilter filter) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder("""
+            SELECT COUNT(*) AS purchase_count,
+                   COALESCE(SUM(p.total_cost), 0) AS total_cost,
+                   COALESCE(SUM(COALESCE(oi.open_amount, p.total_cost - COALESCE(p.amount_paid, 0))), 0) AS total_balance
+            FROM purchases p
+            JOIN crops c ON p.crop_id = c.crop_id
+            JOIN contacts ct ON p.supplier_id = ct.contact_id
+            LEFT JOIN open_items oi ON oi.source_type = 'PURCHASE' AND oi.source_id = p.purchase_id AND oi.item_kind = 'INVOICE'
+            WHERE 1=1
+            """);
+        List<Object> parameters = new ArrayList<>();
+        filter.appendTo(queryBuilder, parameters);
+
         try (Connection conn = dataManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(queryBuilder.toString())) {
             for (int i = 0; i < parameters.size(); i++) {
                 stmt.setObject(i + 1, parameters.get(i));
             }
             try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                double totalCost = rs.getDouble("total_cost");
+                double totalBalance = rs.getDouble("total_balance");
+                return new PurchaseTotals(rs.getLong("purchase_count"), totalCost, totalCost - totalBalance, totalBalance);
+            }
+        }
+    }
+
+    private List<PurchaseRecord> queryPurchases(String sql, List<Object> parameters) throws SQLException {
+        List<PurchaseRecord> purchases = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                RowCache cache = new RowCache();
                 while (rs.next()) {
-                    purchases.add(mapResultSetToEntity(rs));
+                    PurchaseRecord purchase = mapResultSetToPurchase(rs, cache);
+                    double open = rs.getDouble("open_amount");
+                    if (rs.wasNull()) {
+                        open = purchase.getTotalCost() - rs.getDouble("amount_paid");
+                    }
+                    purchase.setBalance(open);
+                    purchase.setAmountPaid(purchase.getTotalCost() - open);
+                    purchase.setPaymentStatus(OpenItemService.paymentStatusLabel(purchase.getTotalCost(), open));
+                    purchases.add(purchase);
                 }
             }
         }
@@ -367,54 +539,72 @@ public class PurchaseDataService extends AbstractDAO<PurchaseRecord, Integer> {
     }
 
     public int addPurchaseReturn(PurchaseReturn purchaseReturn) throws SQLException {
-        return dataManager.executeTransaction(conn -> {
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.purchase_return")) {
+            int returnId = dataManager.executeTransaction(conn -> addPurchaseReturnLogic(conn, purchaseReturn));
+            op.succeeded("PUR-RTN-" + returnId);
+            return returnId;
+        }
+    }
+
+    private int addPurchaseReturnLogic(Connection conn, PurchaseReturn purchaseReturn) throws SQLException {
+        
+        String sql = "INSERT INTO purchase_returns (original_purchase_id, return_date, crop_id, quantity_kg, return_reason, returned_cost) VALUES (?, ?, ?, ?, ?, ?)";
+        int returnId;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, purchaseReturn.getOriginalPurchase().getPurchaseId());
+            stmt.setString(2, FormatUtils.formatDateForDatabase(purchaseReturn.getReturnDate()));
+            stmt.setInt(3, purchaseReturn.getOriginalPurchase().getCrop().getCropId());
+            stmt.setDouble(4, purchaseReturn.getQuantityKg());
+            stmt.setString(5, purchaseReturn.getReturnReason());
+            stmt.setDouble(6, purchaseReturn.getReturnedCost());
             
-            String sql = "INSERT INTO purchase_returns (original_purchase_id, return_date, crop_id, quantity_kg, return_reason, returned_cost) VALUES (?, ?, ?, ?, ?, ?)";
-            int returnId;
-            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setInt(1, purchaseReturn.getOriginalPurchase().getPurchaseId());
-                stmt.setString(2, FormatUtils.formatDateForDatabase(purchaseReturn.getReturnDate()));
-                stmt.setInt(3, purchaseReturn.getOriginalPurchase().getCrop().getCropId());
-                stmt.setDouble(4, purchaseReturn.getQuantityKg());
-                stmt.setString(5, purchaseReturn.getReturnReason());
-                stmt.setDouble(6, purchaseReturn.getReturnedCost());
-                
-                stmt.executeUpdate();
-
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        returnId = rs.getInt(1);
-                    } else {
-                        throw new SQLException("Creating purchase return failed, no ID obtained.");
-                    }
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    returnId = rs.getInt(1);
+                } else {
+                    throw new SQLException("Creating purchase return failed, no ID obtained.");
                 }
             }
+        }
 
-            String transactionRef = "PUR-RTN-" + returnId;
-            String description = "مرتجع شراء للفاتورة رقم: " + purchaseReturn.getOriginalPurchase().getInvoiceNumber();
-            int accountsPayableId = 20101;
-            int inventoryAccountId = 10103;
-
-            dataManager.addLedgerEntry(conn, transactionRef, purchaseReturn.getReturnDate(), accountsPayableId, purchaseReturn.getReturnedCost(), 0.0, description, "PURCHASE_RETURN", returnId, "PURCHASE_RETURN");
-            dataManager.addLedgerEntry(conn, transactionRef, purchaseReturn.getReturnDate(), inventoryAccountId, 0.0, purchaseReturn.getReturnedCost(), description, "PURCHASE_RETURN", returnId, "PURCHASE_RETURN");
-
-            dataManager.updateAccountBalance(accountsPayableId, -purchaseReturn.getReturnedCost(), conn);
-            dataManager.updateAccountBalance(inventoryAccountId, -purchaseReturn.getReturnedCost(), conn);
-
-            double originalUnitCost = purchaseReturn.getOriginalPurchase().getQuantityKg() > 0 ? purchaseReturn.getOriginalPurchase().getTotalCost() / purchaseReturn.getOriginalPurchase().getQuantityKg() : 0;
-            dataManager.updateInventory(
-                purchaseReturn.getOriginalPurchase().getCrop().getCropId(), 
-                -purchaseReturn.getQuantityKg(),
-                originalUnitCost, 
-                "OUT", 
-                "PURCHASE_RETURN", 
-                returnId, 
-                conn
-            );
-
-            dataManager.logAuditEntry("purchase_returns", returnId, "INSERT", null, description, "SYSTEM", conn);
-            
-            return returnId;
-        });
+        String transactionRef = "PUR-RTN-" + returnId;
+        String description = "مرتجع شراء للفاتورة رقم: " + purchaseReturn.getOriginalPurchase().getInvoiceNumber();
+        int accountsPayableId = 20101;
+        int inventoryAccountId = 10103;
+
+        dataManager.addLedgerEntry(conn, transactionRef, purchaseReturn.getReturnDate(), accountsPayableId, purchaseReturn.getReturnedCost(), 0.0, description, "PURCHASE_RETURN", returnId, "PURCHASE_RETURN");
+        dataManager.addLedgerEntry(conn, transactionRef, purchaseReturn.getReturnDate(), inventoryAccountId, 0.0, purchaseReturn.getReturnedCost(), description, "PURCHASE_RETURN", returnId, "PURCHASE_RETURN");
+
+        dataManager.updateAccountBalance(accountsPayableId, -purchaseReturn.getReturnedCost(), conn);
+        dataManager.updateAccountBalance(inventoryAccountId, -purchaseReturn.getReturnedCost(), conn);
+
+        double originalUnitCost = purchaseReturn.getOriginalPurchase().getQuantityKg() > 0 ? purchaseReturn.getOriginalPurchase().getTotalCost() / purchaseReturn.getOriginalPurchase().getQuantityKg() : 0;
+        dataManager.updateInventory(
+            purchaseReturn.getOriginalPurchase().getCrop().getCropId(), 
+            -purchaseReturn.getQuantityKg(),
+            originalUnitCost, 
+            "OUT", 
+            "PURCHASE_RETURN", 
+            returnId, 
+            purchaseReturn.getOriginalPurchase().getWarehouseId(),
+            null,
+            null,
+            conn
+        );
+        seasonAnalytics.recordPurchase(conn, purchaseReturn.getReturnDate(), purchaseReturn.getOriginalPurchase().getCrop().getCropId(),
+            -purchaseReturn.getReturnedCost(), -purchaseReturn.getQuantityKg());
+        int supplierId = contactStatements.findPurchaseSupplierId(conn, purchaseReturn.getOriginalPurchase().getPurchaseId());
+        contactStatements.recordDocument(conn, supplierId, purchaseReturn.getReturnDate(), ContactStatementService.ENTRY_PURCHASE_RETURN,
+            "PURCHASE_RETURN", returnId, transactionRef, purchaseReturn.getOriginalPurchase().getCrop().getCropId(),
+            purchaseReturn.getQuantityKg(), null, null, purchaseReturn.getReturnReason(), purchaseReturn.getReturnedCost());
+        openItems.postCredit(conn, OpenItemService.SIDE_PAYABLE, supplierId, "PURCHASE_RETURN", returnId, transactionRef,
+            purchaseReturn.getReturnDate(), purchaseReturn.getReturnedCost(),
+            Map.of(purchaseReturn.getOriginalPurchase().getPurchaseId(), purchaseReturn.getReturnedCost()));
+
+        dataManager.logAuditEntry("purchase_returns", returnId, "INSERT", null, description, "SYSTEM", conn);
+        
+        return returnId;
     }
 }
\ No newline at end of file
@@ -0,0 +1,476 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.AppMetrics;
+import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * القيود المتكررة: قوالب قيود متعددة السطور (إيجار، إهلاك، مصاريف تخزين مستحقة) تُرحل تلقائياً
+ * حسب قاعدة تكرار يومية أو أسبوعية أو شهرية أو في نهاية الشهر.
+ *
+ * كل استحقاق (قالب، تاريخ) له مفتاح ثابت: صف في recurring_journal_postings بمفتاح أساسي
+ * (template_id, occurrence_date) ورقم قيد REC-قالب-تاريخ. الصف يُحجز بـ INSERT OR IGNORE قبل
+ * ترحيل السطور في المعاملة نفسها، فلا يُرحل استحقاق مرتين مهما تكرر التشغيل أو تزامن.
+ *
+ * التعويض (postDue): كل الاستحقاقات الفائتة حتى تاريخ معين لكل القوالب تُرحل في معاملة دفعة واحدة
+ * عند بدء التشغيل، وأرصدة الحسابات تُجمع وتُحدث مرة لكل حساب في نهاية الدفعة. posted_through
+ * في القالب يحفظ آخر تاريخ غُطي فلا يُعاد حساب الاستحقاقات من بداية القالب في كل تشغيل.
+ */
+public class RecurringJournalService {
+
+    private static final Logger LOGGER = Logger.getLogger(RecurringJournalService.class.getName());
+
+    public static final String SOURCE_TYPE = "RECURRING";
+
+    public enum Frequency {
+        DAILY("يومي"),
+        WEEKLY("أسبوعي"),
+        MONTHLY("شهري"),
+        END_OF_MONTH("نهاية الشهر");
+
+        private final String arabicName;
+
+        Frequency(String arabicName) {
+            this.arabicName = arabicName;
+        }
+
+        public String getArabicName() {
+            return arabicName;
+        }
+    }
+
+    /** سطر في القالب: أحد الطرفين موجب والآخر صفر */
+    public record TemplateLine(int accountId, double debit, double credit, String description) {
+    }
+
+    /**
+     * @param interval كل كم يوماً أو أسبوعاً أو شهراً
+     * @param dayOfMonth يوم الاستحقاق في القاعدة الشهرية؛ يُقصر إلى آخر الشهر في الأشهر الأقصر
+     * @param endDate آخر تاريخ استحقاق ممكن، أو null بلا نهاية
+     */
+    public record Template(int templateId, String name, String description, Frequency frequency, int interval,
+                           int dayOfMonth, LocalDate startDate, LocalDate endDate, boolean active,
+                           LocalDate postedThrough, List<TemplateLine> lines) {
+
+        /** تواريخ الاستحقاق بين from و to شاملة، بالترتيب */
+        public List<LocalDate> occurrences(LocalDate from, LocalDate to) {
+            LocalDate first = from.isBefore(startDate) ? startDate : from;
+            LocalDate last = endDate != null && endDate.isBefore(to) ? endDate : to;
+            List<LocalDate> dates = new ArrayList<>();
+            if (first.isAfter(last)) {
+                return dates;
+            }
+            switch (frequency) {
+                case DAILY, WEEKLY -> {
+                    long step = frequency == Frequency.DAILY ? interval : 7L * interval;
+                    long skip = (ChronoUnit.DAYS.between(startDate, first) + step - 1) / step;
+                    for (LocalDate date = startDate.plusDays(skip * step); !date.isAfter(last); date = date.plusDays(step)) {
+                        dates.add(date);
+                    }
+                }
+                case MONTHLY, END_OF_MONTH -> {
+                    YearMonth startMonth = YearMonth.from(startDate);
+                    long skip = Math.max(0, ChronoUnit.MONTHS.between(startMonth, YearMonth.from(first)) / interval - 1);
+                    for (long k = skip; ; k++) {
+                        YearMonth month = startMonth.plusMonths(k * interval);
+                        LocalDate date = frequency == Frequency.END_OF_MONTH
+                            ? month.atEndOfMonth()
+                            : month.atDay(Math.min(dayOfMonth, month.lengthOfMonth()));
+                        if (date.isAfter(last)) {
+                            break;
+                        }
+                        if (!date.isBefore(first)) {
+                            dates.add(date);
+                        }
+                    }
+                }
+            }
+            return dates;
+        }
+
+        public double getAmount() {
+            return lines.stream().mapToDouble(TemplateLine::debit).sum();
+        }
+    }
+
+    /** استحقاق قادم أو فائت لم يُرحل بعد */
+    public record Occurrence(int templateId, String templateName, LocalDate date, String transactionRef, double amount) {
+    }
+
+    /**
+     * @param skippedTemplates القوالب التي لم تُرحل (حساب موقوف مثلاً) مع السبب؛ بقية الدفعة تُرحل
+     */
+    public record PostingResult(List<String> transactionRefs, int alreadyPosted, Map<String, String> skippedTemplates) {
+        public int posted() {
+            return transactionRefs.size();
+        }
+    }
+
+    private final ImprovedDataManager dataManager;
+
+    public RecurringJournalService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    /** رقم القيد الثابت للاستحقاق؛ هو نفسه في كل تشغيل */
+    public static String transactionRef(int templateId, LocalDate date) {
+        return "REC-" + templateId + "-" + date.toString().replace("-", "");
+    }
+
+    // ------------------------------------------------------------------
+    // القوالب
+    // ------------------------------------------------------------------
+
+    /**
+     * @param dayOfMonth للقاعدة الشهرية؛ 0 يعني يوم تاريخ البداية
+     * @return رقم القالب
+     */
+    public int createTemplate(String name, String description, Frequency frequency, int interval, int dayOfMonth,
+                              LocalDate startDate, LocalDate endDate, List<TemplateLine> lines) throws SQLException {
+        int day = dayOfMonth > 0 || startDate == null ? dayOfMonth : startDate.getDayOfMonth();
+        validate(name, interval, day, startDate, endDate, lines);
+        requireActiveAccounts(lines);
+        return dataManager.executeTransaction(conn -> {
+            int templateId;
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    INSERT INTO recurring_journal_templates
+                        (name, description, frequency, interval_count, day_of_month, start_date, end_date)
+                    VALUES (?, ?, ?, ?, ?, ?, ?)
+                    """, Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, name.trim());
+                stmt.setString(2, description);
+                stmt.setString(3, frequency.name());
+                stmt.setInt(4, interval);
+                stmt.setInt(5, day);
+                stmt.setString(6, FormatUtils.formatDateForDatabase(startDate));
+                stmt.setString(7, endDate != null ? FormatUtils.formatDateForDatabase(endDate) : null);
+                stmt.executeUpdate();
+                try (ResultSet keys = stmt.getGeneratedKeys()) {
+                    if (!keys.next()) {
+                        throw new SQLException("تعذر إنشاء القالب");
+                    }
+                    templateId = keys.getInt(1);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("""
+                    INSERT INTO recurring_journal_lines (template_id, line_no, account_id, debit, credit, description)
+                    VALUES (?, ?, ?, ?, ?, ?)
+                    """)) {
+                for (int i = 0; i < lines.size(); i++) {
+                    TemplateLine line = lines.get(i);
+                    stmt.setInt(1, templateId);
+                    stmt.setInt(2, i + 1);
+                    stmt.setInt(3, line.accountId());
+                    stmt.setLong(4, Money.toMinor(line.debit()));
+                    stmt.setLong(5, Money.toMinor(line.credit()));
+                    stmt.setString(6, line.description());
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            dataManager.logAuditEntry("recurring_journal_templates", templateId, "INSERT", null, name, "SYSTEM", conn);
+            return templateId;
+        });
+    }
+
+    private static void validate(String name, int interval, int dayOfMonth, LocalDate startDate, LocalDate endDate,
+                                 List<TemplateLine> lines) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("اسم القالب مطلوب");
+        }
+        if (interval < 1 || dayOfMonth < 1 || dayOfMonth > 31) {
+            throw new IllegalArgumentException("قاعدة التكرار غير صالحة");
+        }
+        if (startDate == null || (endDate != null && endDate.isBefore(startDate))) {
+            throw new IllegalArgumentException("فترة القالب غير صالحة");
+        }
+        if (lines.size() < 2) {
+            throw new IllegalArgumentException("القيد يحتاج سطرين على الأقل");
+        }
+        long debit = 0;
+        long credit = 0;
+        for (TemplateLine line : lines) {
+            long lineDebit = Money.toMinor(line.debit());
+            long lineCredit = Money.toMinor(line.credit());
+            if (lineDebit < 0 || lineCredit < 0 || (lineDebit > 0) == (lineCredit > 0)) {
+                throw new IllegalArgumentException("كل سطر إما مدين أو دائن بمبلغ موجب");
+            }
+            debit += lineDebit;
+            credit += lineCredit;
+        }
+        if (debit != credit) {
+            throw new IllegalArgumentException("القيد غير متوازن: مدين " + Money.format(debit) + " ودائن " + Money.format(credit));
+        }
+    }
+
+    private void requireActiveAccounts(List<TemplateLine> lines) throws SQLException {
+        Map<Integer, Integer> active;
+        try (Connection conn = dataManager.getConnection()) {
+            active = activeAccounts(conn);
+        }
+        for (TemplateLine line : lines) {
+            if (!active.containsKey(line.accountId())) {
+                throw new IllegalArgumentException("الحساب " + line.accountId() + " غير موجود أو موقوف");
+            }
+        }
+    }
+
+    /**
+     * الحسابات النشطة مع إشارة رصيدها الطبيعي (راجع LedgerIntegrityService.naturalSign)
+     */
+    private static Map<Integer, Integer> activeAccounts(Connection conn) throws SQLException {
+        Map<Integer, Integer> active = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT account_id, account_type FROM financial_accounts WHERE is_active = 1")) {
+            while (rs.next()) {
+                active.put(rs.getInt(1), LedgerIntegrityService.naturalSign(rs.getInt(1), rs.getString(2)));
+            }
+        }
+        return active;
+    }
+
+    public void setActive(int templateId, boolean active) throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "UPDATE recurring_journal_templates SET is_active = ? WHERE template_id = ?")) {
+                stmt.setBoolean(1, active);
+                stmt.setInt(2, templateId);
+                if (stmt.executeUpdate() == 0) {
+                    throw new SQLException("القالب غير موجود: " + templateId);
+                }
+            }
+            dataManager.logAuditEntry("recurring_journal_templates", templateId, "UPDATE", null,
+                active ? "ACTIVE" : "INACTIVE", "SYSTEM", conn);
+            return null;
+        });
+    }
+
+    public List<Template> getTemplates() throws SQLException {
+        try (Connection conn = dataManager.getConnection()) {
+            return loadTemplates(conn, false);
+        }
+    }
+
+    private static List<Template> loadTemplates(Connection conn, boolean activeOnly) throws SQLException {
+        Map<Integer, List<TemplateLine>> lines = new TreeMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("""
+                 SELECT template_id, account_id, debit, credit, description FROM recurring_journal_lines
+                 ORDER BY template_id, line_no
+                 """)) {
+            while (rs.next()) {
+                lines.computeIfAbsent(rs.getInt("template_id"), id -> new ArrayList<>()).add(new TemplateLine(
+                    rs.getInt("account_id"), Money.getAmount(rs, "debit"), Money.getAmount(rs, "credit"),
+                    rs.getString("description")));
+            }
+        }
+        List<Template> templates = new ArrayList<>();
+        String sql = "SELECT * FROM recurring_journal_templates" + (activeOnly ? " WHERE is_active = 1" : "")
+            + " ORDER BY template_id";
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int templateId = rs.getInt("template_id");
+                templates.add(new Template(templateId, rs.getString("name"), rs.getString("description"),
+                    Frequency.valueOf(rs.getString("frequency")), rs.getInt("interval_count"), rs.getInt("day_of_month"),
+                    FormatUtils.parseDateFromDatabase(rs.getString("start_date")),
+                    FormatUtils.parseDateFromDatabase(rs.getString("end_date")), rs.getBoolean("is_active"),
+                    FormatUtils.parseDateFromDatabase(rs.getString("posted_through")),
+                    List.copyOf(lines.getOrDefault(templateId, List.of()))));
+            }
+        }
+        return templates;
+    }
+
+    // ------------------------------------------------------------------
+    // المعاينة والترحيل
+    // ------------------------------------------------------------------
+
+    /** الاستحقاقات غير المرحلة للقوالب النشطة بين from و to، بترتيب التاريخ */
+    public List<Occurrence> preview(LocalDate from, LocalDate to) throws SQLException {
+        List<Occurrence> occurrences = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection()) {
+            Set<String> posted = postedRefs(conn, from, to);
+            for (Template template : loadTemplates(conn, true)) {
+                for (LocalDate date : template.occurrences(from, to)) {
+                    String ref = transactionRef(template.templateId(), date);
+                    if (!posted.contains(ref)) {
+                        occurrences.add(new Occurrence(template.templateId(), template.name(), date, ref, template.getAmount()));
+                    }
+                }
+            }
+        }
+        occurrences.sort(Comparator.comparing(Occurrence::date).thenComparing(Occurrence::templateId));
+        return occurrences;
+    }
+
+    /** ما فات ولم يُرحل حتى through: ما سيرحله postDue(through) */
+    public List<Occurrence> getDue(LocalDate through) throws SQLException {
+        List<Occurrence> occurrences = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection()) {
+            List<Template> templates = loadTemplates(conn, true);
+            LocalDate earliest = through;
+            for (Template template : templates) {
+                LocalDate from = nextUnposted(template);
+                earliest = from.isBefore(earliest) ? from : earliest;
+            }
+            Set<String> posted = postedRefs(conn, earliest, through);
+            for (Template template : templates) {
+                for (LocalDate date : template.occurrences(nextUnposted(template), through)) {
+                    String ref = transactionRef(template.templateId(), date);
+                    if (!posted.contains(ref)) {
+                        occurrences.add(new Occurrence(template.templateId(), template.name(), date, ref, template.getAmount()));
+                    }
+                }
+            }
+        }
+        occurrences.sort(Comparator.comparing(Occurrence::date).thenComparing(Occurrence::templateId));
+        return occurrences;
+    }
+
+    private static LocalDate nextUnposted(Template template) {
+        return template.postedThrough() != null ? template.postedThrough().plusDays(1) : template.startDate();
+    }
+
+    private static Set<String> postedRefs(Connection conn, LocalDate from, LocalDate to) throws SQLException {
+        Set<String> refs = new HashSet<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT transaction_ref FROM recurring_journal_postings WHERE occurrence_date BETWEEN ? AND ?")) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(from));
+            stmt.setString(2, FormatUtils.formatDateForDatabase(to));
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    refs.add(rs.getString(1));
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * ترحيل كل الاستحقاقات الفائتة حتى through (شاملة) لكل القوالب النشطة في معاملة دفعة واحدة.
+     * التشغيل المتكرر آمن: ما رُحل من قبل يُعد في alreadyPosted ولا يُرحل ثانية
+     */
+    public PostingResult postDue(LocalDate through) throws SQLException {
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.recurring")) {
+            PostingResult result = dataManager.executeBatchTransaction(conn -> {
+                Map<Integer, Integer> active = activeAccounts(conn);
+                List<String> refs = new ArrayList<>();
+                Map<String, String> skipped = new LinkedHashMap<>();
+                Map<Integer, Long> balanceChanges = new TreeMap<>();
+                int alreadyPosted = 0;
+                try (PreparedStatement claim = conn.prepareStatement("""
+                        INSERT OR IGNORE INTO recurring_journal_postings (template_id, occurrence_date, transaction_ref)
+                        VALUES (?, ?, ?)
+                        """);
+                     PreparedStatement advance = conn.prepareStatement(
+                         "UPDATE recurring_journal_templates SET posted_through = ? WHERE template_id = ?")) {
+                    for (Template template : loadTemplates(conn, true)) {
+                        String problem = inactiveAccount(template, active);
+                        if (problem != null) {
+                            skipped.put(template.name(), problem);
+                            continue;
+                        }
+                        for (LocalDate date : template.occurrences(nextUnposted(template), through)) {
+                            String ref = transactionRef(template.templateId(), date);
+                            claim.setInt(1, template.templateId());
+                            claim.setString(2, FormatUtils.formatDateForDatabase(date));
+                            claim.setString(3, ref);
+                            if (claim.executeUpdate() == 0) {
+                                alreadyPosted++;
+                                continue;
+                            }
+                            postOccurrence(conn, template, date, ref, balanceChanges);
+                            refs.add(ref);
+                        }
+                        if (template.postedThrough() == null || through.isAfter(template.postedThrough())) {
+                            advance.setString(1, FormatUtils.formatDateForDatabase(through));
+                            advance.setInt(2, template.templateId());
+                            advance.addBatch();
+                        }
+                    }
+                    advance.executeBatch();
+                }
+                int[] accountIds = new int[balanceChanges.size()];
+                long[] deltas = new long[balanceChanges.size()];
+                int changed = 0;
+                for (Map.Entry<Integer, Long> change : balanceChanges.entrySet()) {
+                    accountIds[changed] = change.getKey();
+                    // فرق (مدين - دائن) بإشارة الرصيد الطبيعي: الدائن يزيد رصيد الالتزامات والإيرادات
+                    deltas[changed++] = active.get(change.getKey()) * change.getValue();
+                }
+                dataManager.updateAccountBalances(conn, accountIds, deltas, changed);
+                return new PostingResult(List.copyOf(refs), alreadyPosted, skipped);
+            });
+            op.succeeded();
+            if (!result.skippedTemplates().isEmpty()) {
+                LOGGER.warning("قوالب متكررة لم تُرحل: " + result.skippedTemplates());
+            }
+            return result;
+        }
+    }
+
+    private static String inactiveAccount(Template template, Map<Integer, Integer> active) {
+        for (TemplateLine line : template.lines()) {
+            if (!active.containsKey(line.accountId())) {
+                return "الحساب " + line.accountId() + " غير موجود أو موقوف";
+            }
+        }
+        return template.lines().size() < 2 ? "القالب بلا سطور" : null;
+    }
+
+    private void postOccurrence(Connection conn, Template template, LocalDate date, String ref,
+                                Map<Integer, Long> balanceChanges) throws SQLException {
+        int count = template.lines().size();
+        int[] accountIds = new int[count];
+        long[] debits = new long[count];
+        long[] credits = new long[count];
+        String[] descriptions = new String[count];
+        for (int i = 0; i < count; i++) {
+            TemplateLine line = template.lines().get(i);
+            accountIds[i] = line.accountId();
+            debits[i] = Money.toMinor(line.debit());
+            credits[i] = Money.toMinor(line.credit());
+            descriptions[i] = line.description() != null ? line.description()
+                : template.description() != null ? template.description() : template.name();
+            balanceChanges.merge(accountIds[i], debits[i] - credits[i], Long::sum);
+        }
+        dataManager.addLedgerEntries(conn, ref, date, accountIds, debits, credits, descriptions, count,
+            SOURCE_TYPE, template.templateId(), SOURCE_TYPE);
+    }
+
+    /**
+     * التعويض عند بدء التشغيل: ترحيل كل ما استحق حتى اليوم. الفشل لا يوقف التطبيق؛ يُعاد في التشغيل التالي
+     */
+    public static void postDueOnStartup() {
+        try {
+            PostingResult result = new RecurringJournalService().postDue(LocalDate.now());
+            if (result.posted() > 0) {
+                LOGGER.info("تم ترحيل " + result.posted() + " قيداً متكرراً مستحقاً");
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "تعذر ترحيل القيود المتكررة المستحقة", e);
+        }
+    }
+}
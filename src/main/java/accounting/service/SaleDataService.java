@@ -7,6 +7,11 @@ import accounting.model.Crop;
 import accounting.model.FinancialAccount;
 import accounting.model.SaleRecord;
 import accounting.model.SaleReturn;
+import accounting.util.AppMetrics;
+import accounting.util.KeysetSort;
+import accounting.util.Money;
+import accounting.util.PageRequest;
+import accounting.util.RowCache;
 
 import java.sql.*;
 import java.time.LocalDate;
@@ -15,14 +20,44 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.logging.Logger;
 
 public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
 
     private static final Logger LOGGER = Logger.getLogger(SaleDataService.class.getName());
 
+    /** صف سجل المبيعات مع المتبقي من بند الفاتورة المفتوح */
+    private static final String SALE_ROWS = """
+        SELECT s.*, c.crop_name, ct.name as customer_name, oi.open_amount
+        FROM sales s
+        JOIN crops c ON s.crop_id = c.crop_id
+        JOIN contacts ct ON s.customer_id = ct.contact_id
+        LEFT JOIN open_items oi ON oi.source_type = 'SALE' AND oi.source_id = s.sale_id AND oi.item_kind = 'INVOICE'
+        WHERE 1=1
+        """;
+
+    /** أعمدة الترتيب المسموحة لصفحات سجل المبيعات؛ الافتراضي الأحدث أولاً */
+    private static final KeysetSort<SaleRecord> SALE_SORT = new KeysetSort<SaleRecord>("s.sale_id", SaleRecord::getSaleId)
+        .column("date", "s.sale_date", sale -> FormatUtils.formatDateForDatabase(sale.getSaleDate()))
+        .column("invoice", "COALESCE(s.sale_invoice_number, '')", sale -> Objects.toString(sale.getSaleInvoiceNumber(), ""))
+        .column("customer", "ct.name", sale -> sale.getCustomer().getName())
+        .column("crop", "c.crop_name", sale -> sale.getCrop().getCropName())
+        .column("price", "s.selling_unit_price", SaleRecord::getSellingUnitPrice)
+        .column("total", "s.total_sale_amount", SaleRecord::getTotalSaleAmount)
+        .byDefault("date", false);
+
+    private final SeasonAnalyticsService seasonAnalytics;
+    private final ContactStatementService contactStatements;
+    private final OpenItemService openItems;
+    private final CreditControlService creditControl;
+
     public SaleDataService() {
         super("sales");
+        this.seasonAnalytics = new SeasonAnalyticsService();
+        this.contactStatements = new ContactStatementService();
+        this.openItems = new OpenItemService();
+        this.creditControl = new CreditControlService();
     }
 
     @Override
@@ -92,12 +127,18 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
     }
 
     public int addSale(SaleRecord sale, FinancialAccount paymentAccount, double amountReceived) throws SQLException {
-        return dataManager.executeTransaction(conn -> addSaleLogic(conn, sale, paymentAccount, amountReceived));
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.sale")) {
+            int saleId = dataManager.executeTransaction(conn -> addSaleLogic(conn, sale, paymentAccount, amountReceived));
+            op.succeeded("SAL-" + saleId);
+            return saleId;
+        }
     }
 
     private int addSaleLogic(Connection conn, SaleRecord sale, FinancialAccount paymentAccount, double amountReceived) throws SQLException {
         // 1. Determine payment status and final amount
         double finalAmountReceived = Math.min(amountReceived, sale.getTotalSaleAmount());
+        creditControl.checkSale(conn, sale.getCustomer().getContactId(), sale.getSaleInvoiceNumber(),
+            sale.getTotalSaleAmount() - (paymentAccount != null ? Math.max(finalAmountReceived, 0) : 0));
         String paymentStatus;
         if (finalAmountReceived <= 0) {
             paymentStatus = "PENDING";
@@ -108,7 +149,7 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
         }
 
         // 2. Insert the base sale record
-        String sql = "INSERT INTO sales(crop_id, customer_id, sale_date, quantity_sold_kg, selling_pricing_unit, specific_selling_factor, selling_unit_price, total_sale_amount, sale_invoice_number, amount_paid, payment_status) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        String sql = "INSERT INTO sales(crop_id, customer_id, sale_date, quantity_sold_kg, selling_pricing_unit, specific_selling_factor, selling_unit_price, total_sale_amount, sale_invoice_number, amount_paid, payment_status, season_id, warehouse_id) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         int saleId;
         try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             pstmt.setInt(1, sale.getCrop().getCropId());
@@ -122,6 +163,8 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
             pstmt.setString(9, sale.getSaleInvoiceNumber());
             pstmt.setDouble(10, finalAmountReceived);
             pstmt.setString(11, paymentStatus);
+            SeasonResolver.bindSeason(pstmt, 12, conn, sale.getSaleDate());
+            pstmt.setInt(13, sale.getWarehouseId());
             pstmt.executeUpdate();
 
             try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
@@ -181,8 +224,20 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
             dataManager.updateAccountBalance(accountsReceivableId, -finalAmountReceived, conn);
         }
 
-        // 5. Update Inventory & Audit Log
-        dataManager.updateInventory(sale.getCrop().getCropId(), -sale.getQuantitySoldKg(), unitCost, "OUT", "SALE", saleId, conn);
+        // 5. Update Inventory, Season Rollups, Contact Ledger & Audit Log
+        dataManager.updateInventory(sale.getCrop().getCropId(), -sale.getQuantitySoldKg(), unitCost, "OUT", "SALE", saleId,
+            sale.getWarehouseId(), null, null, conn);
+        seasonAnalytics.recordSale(conn, sale.getSaleDate(), sale.getCrop().getCropId(), sale.getTotalSaleAmount(), costOfGoodsSold, sale.getQuantitySoldKg());
+        int customerId = sale.getCustomer().getContactId();
+        contactStatements.recordDocument(conn, customerId, sale.getSaleDate(), ContactStatementService.ENTRY_SALE, "SALE", saleId,
+            sale.getSaleInvoiceNumber(), sale.getCrop().getCropId(), sale.getQuantitySoldKg(), sale.getSellingPricingUnit(),
+            sale.getSellingUnitPrice(), "فاتورة رقم: " + sale.getSaleInvoiceNumber(), sale.getTotalSaleAmount());
+        if (finalAmountReceived > 0 && paymentAccount != null) {
+            contactStatements.recordSettlement(conn, customerId, sale.getSaleDate(), ContactStatementService.ENTRY_SALE_PAYMENT, "SALE", saleId,
+                sale.getSaleInvoiceNumber(), "دفعة من العميل", -finalAmountReceived);
+        }
+        openItems.postInvoice(conn, OpenItemService.SIDE_RECEIVABLE, customerId, "SALE", saleId, sale.getSaleInvoiceNumber(),
+            sale.getSaleDate(), sale.getTotalSaleAmount(), paymentAccount != null ? finalAmountReceived : 0);
         dataManager.logAuditEntry("sales", saleId, "INSERT", null, sale.getSaleInvoiceNumber(), "SYSTEM", conn);
         
         return saleId;
@@ -223,7 +278,7 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
             cogsStmt.setString(1, transactionRef);
             try (ResultSet rs = cogsStmt.executeQuery()) {
                 if (rs.next()) {
-                    originalCostOfGoodsSold = rs.getDouble("debit");
+                    originalCostOfGoodsSold = Money.getAmount(rs, "debit");
                 }
             }
         }
@@ -256,7 +311,11 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
 
         // 4. Reverse inventory quantity
         double unitCost = (sale.getQuantitySoldKg() > 0) ? originalCostOfGoodsSold / sale.getQuantitySoldKg() : 0;
-        dataManager.updateInventory(sale.getCrop().getCropId(), sale.getQuantitySoldKg(), unitCost, "IN", "SALE_DELETE", saleId, conn);
+        dataManager.updateInventory(sale.getCrop().getCropId(), sale.getQuantitySoldKg(), unitCost, "IN", "SALE_DELETE", saleId,
+            sale.getWarehouseId(), null, null, conn);
+        seasonAnalytics.recordSale(conn, sale.getSaleDate(), sale.getCrop().getCropId(), -sale.getTotalSaleAmount(), -originalCostOfGoodsSold, -sale.getQuantitySoldKg());
+        contactStatements.removeSource(conn, "SALE", saleId);
+        openItems.removeSource(conn, "SALE", saleId);
 
         // 5. Delete General Ledger entries for the sale
         try (PreparedStatement deleteLedgerStmt = conn.prepareStatement("DELETE FROM general_ledger WHERE transaction_ref = ?")) {
@@ -275,79 +334,190 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
         }
     }
 
-    // Other methods (getSales, mapResultSetToSale, etc.) remain here...
+    /**
+     * فلاتر سجل المبيعات؛ الحقول الفارغة لا تُقيد النتيجة
+     */
+    public static class SaleFilter {
+        private final LocalDate fromDate;
+        private final LocalDate toDate;
+        private final Integer cropId;
+        private final Integer customerId;
+        private final String searchText;
+
+        public SaleFilter(LocalDate fromDate, LocalDate toDate, Integer cropId, Integer customerId, String searchText) {
+            this.fromDate = fromDate;
+            this.toDate = toDate;
+            this.cropId = cropId;
+            this.customerId = customerId;
+            this.searchText = searchText;
+        }
+
+        private String searchKey() {
+            return searchText == null ? "" : searchText.trim();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (obj == null || getClass() != obj.getClass()) return false;
+            SaleFilter other = (SaleFilter) obj;
+            return Objects.equals(fromDate, other.fromDate) && Objects.equals(toDate, other.toDate)
+                && Objects.equals(cropId, other.cropId) && Objects.equals(customerId, other.customerId)
+                && searchKey().equals(other.searchKey());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(fromDate, toDate, cropId, customerId, searchKey());
+        }
+
+        void appendTo(StringBuilder queryBuilder, List<Object> parameters) {
+            if (fromDate != null) {
+                queryBuilder.append(" AND s.sale_date >= ?");
+                parameters.add(FormatUtils.formatDateForDatabase(fromDate));
+            }
+            if (toDate != null) {
+                queryBuilder.append(" AND s.sale_date <= ?");
+                parameters.add(FormatUtils.formatDateForDatabase(toDate));
+            }
+            if (cropId != null) {
+                queryBuilder.append(" AND s.crop_id = ?");
+                parameters.add(cropId);
+            }
+            if (customerId != null) {
+                queryBuilder.append(" AND s.customer_id = ?");
+                parameters.add(customerId);
+            }
+            if (searchText != null && !searchText.trim().isEmpty()) {
+                queryBuilder.append(" AND (s.sale_invoice_number LIKE ? OR ct.name LIKE ?)");
+                String searchPattern = "%" + searchText.toLowerCase() + "%";
+                parameters.add(searchPattern);
+                parameters.add(searchPattern);
+            }
+        }
+    }
+
+    /**
+     * مجاميع سجل المبيعات للفلاتر الحالية، محسوبة في SQL
+     */
+    public static class SalesTotals {
+        private final long count;
+        private final double totalAmount;
+        private final double totalPaid;
+        private final double totalBalance;
+
+        public SalesTotals(long count, double totalAmount, double totalPaid, double totalBalance) {
+            this.count = count;
+            this.totalAmount = totalAmount;
+            this.totalPaid = totalPaid;
+            this.totalBalance = totalBalance;
+        }
+
+        public long getCount() { return count; }
+        public double getTotalAmount() { return totalAmount; }
+        public double getTotalPaid() { return totalPaid; }
+        public double getTotalBalance() { return totalBalance; }
+    }
+
     public List<SaleRecord> getSales(LocalDate fromDate, LocalDate toDate, Integer cropId, Integer customerId, String searchText) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder(SALE_ROWS);
+        List<Object> parameters = new ArrayList<>();
+        new SaleFilter(fromDate, toDate, cropId, customerId, searchText).appendTo(queryBuilder, parameters);
+        queryBuilder.append(" ORDER BY s.sale_date DESC, s.sale_id DESC");
+        return querySales(queryBuilder.toString(), parameters);
+    }
+
+    /**
+     * صفحة من سجل المبيعات مرتبة ومُصفحة في SQL
+     */
+    public List<SaleRecord> getSalesPage(SaleFilter filter, PageRequest<SaleRecord> page) throws SQLException {
+        StringBuilder queryBuilder = new StringBuilder(SALE_ROWS);
+        List<Object> parameters = new ArrayList<>();
+        filter.appendTo(queryBuilder, parameters);
+        SALE_SORT.appendPage(queryBuilder, parameters, page);
+        return querySales(queryBuilder.toString(), parameters);
+    }
+
+    public SalesTotals getSalesTotals(SaleFilter filter) throws SQLException {
         StringBuilder queryBuilder = new StringBuilder("""
-            SELECT s.*, c.crop_name, ct.name as customer_name
+            SELECT COUNT(*) AS sale_count,
+                   COALESCE(SUM(s.total_sale_amount), 0) AS total_amount,
+                   COALESCE(SUM(COALESCE(oi.open_amount, s.total_sale_amount - COALESCE(s.amount_paid, 0))), 0) AS total_balance
             FROM sales s
             JOIN crops c ON s.crop_id = c.crop_id
             JOIN contacts ct ON s.customer_id = ct.contact_id
+            LEFT JOIN open_items oi ON oi.source_type = 'SALE' AND oi.source_id = s.sale_id AND oi.item_kind = 'INVOICE'
             WHERE 1=1
             """);
-        
         List<Object> parameters = new ArrayList<>();
-        
-        if (fromDate != null) {
-            queryBuilder.append(" AND s.sale_date >= ?");
-            parameters.add(FormatUtils.formatDateForDatabase(fromDate));
-        }
-        if (toDate != null) {
-            queryBuilder.append(" AND s.sale_date <= ?");
-            parameters.add(FormatUtils.formatDateForDatabase(toDate));
-        }
-        if (cropId != null) {
-            queryBuilder.append(" AND s.crop_id = ?");
-            parameters.add(cropId);
-        }
-        if (customerId != null) {
-            queryBuilder.append(" AND s.customer_id = ?");
-            parameters.add(customerId);
-        }
-        if (searchText != null && !searchText.trim().isEmpty()) {
-            queryBuilder.append(" AND (s.sale_invoice_number LIKE ? OR ct.name LIKE ?)");
-            String searchPattern = "%" + searchText.toLowerCase() + "%";
-            parameters.add(searchPattern);
-            parameters.add(searchPattern);
+        filter.appendTo(queryBuilder, parameters);
+
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(queryBuilder.toString())) {
+            for (int i = 0; i < parameters.size(); i++) {
+                stmt.setObject(i + 1, parameters.get(i));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                double totalAmount = rs.getDouble("total_amount");
+                double totalBalance = rs.getDouble("total_balance");
+                return new SalesTotals(rs.getLong("sale_count"), totalAmount, totalAmount - totalBalance, totalBalance);
+            }
         }
-        queryBuilder.append(" ORDER BY s.sale_date DESC, s.sale_id DESC");
-        
+    }
+
+    private List<SaleRecord> querySales(String sql, List<Object> parameters) throws SQLException {
         List<SaleRecord> sales = new ArrayList<>();
         try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(queryBuilder.toString())) {
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             for (int i = 0; i < parameters.size(); i++) {
                 stmt.setObject(i + 1, parameters.get(i));
             }
             try (ResultSet rs = stmt.executeQuery()) {
+                RowCache cache = new RowCache();
                 while (rs.next()) {
-                    sales.add(mapResultSetToSale(rs));
+                    SaleRecord sale = mapResultSetToSale(rs, cache);
+                    applyOpenAmount(sale, rs);
+                    sales.add(sale);
                 }
             }
         }
         return sales;
     }
 
-    private SaleRecord mapResultSetToSale(ResultSet rs) throws SQLException {
-        Crop crop = new Crop();
-        crop.setCropId(rs.getInt("crop_id"));
-        crop.setCropName(rs.getString("crop_name"));
-        
-        Contact customer = new Contact();
-        customer.setContactId(rs.getInt("customer_id"));
-        customer.setName(rs.getString("customer_name"));
+    /**
+     * المسدد والمتبقي وحالة السداد من بند الفاتورة المفتوح (أو المسدد عند الإصدار إن لم يوجد البند)
+     */
+    private static void applyOpenAmount(SaleRecord sale, ResultSet rs) throws SQLException {
+        double open = rs.getDouble("open_amount");
+        if (rs.wasNull()) {
+            open = sale.getTotalSaleAmount() - rs.getDouble("amount_paid");
+        }
+        sale.setBalance(open);
+        sale.setAmountPaid(sale.getTotalSaleAmount() - open);
+        sale.setPaymentStatus(OpenItemService.paymentStatusLabel(sale.getTotalSaleAmount(), open));
+    }
 
-        return new SaleRecord(
+    private SaleRecord mapResultSetToSale(ResultSet rs, RowCache cache) throws SQLException {
+        // المحصول والعميل مرجعان مشتركان بين صفوف النتيجة نفسها
+        Crop crop = cache.crop(rs.getInt("crop_id"), rs.getString("crop_name"));
+        Contact customer = cache.contact(rs.getInt("customer_id"), rs.getString("customer_name"));
+
+        SaleRecord sale = new SaleRecord(
             rs.getInt("sale_id"),
             customer,
             crop,
             rs.getDouble("quantity_sold_kg"),
-            rs.getString("selling_pricing_unit"),
+            cache.text(rs.getString("selling_pricing_unit")),
             rs.getDouble("specific_selling_factor"),
             rs.getDouble("selling_unit_price"),
             rs.getDouble("total_sale_amount"),
-            FormatUtils.parseDateFromDatabase(rs.getString("sale_date")),
+            cache.date(rs.getString("sale_date")),
             rs.getString("sale_invoice_number"),
             rs.getString("notes")
         );
+        sale.setWarehouseId(rs.getInt("warehouse_id"));
+        return sale;
     }
 
     public Map<String, Double> getSalesStatistics(LocalDate fromDate, LocalDate toDate) throws SQLException {
@@ -373,18 +543,21 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
     }
 
     public Map<String, Number> getMonthlySalesForChart(int year) throws SQLException {
-        String sql = "SELECT strftime('%m', sale_date) as month, SUM(total_sale_amount) as monthly_total " +
-                     "FROM sales WHERE strftime('%Y', sale_date) = ? " +
-                     "GROUP BY month ORDER BY month";
+        // مدى السنة على فهرس sale_date، والشهر من date_dim بدلاً من strftime لكل صف
+        String sql = "SELECT d.month, SUM(s.total_sale_amount) as monthly_total " +
+                     "FROM sales s JOIN date_dim d ON d.calendar_date = s.sale_date " +
+                     "WHERE s.sale_date BETWEEN ? AND ? " +
+                     "GROUP BY d.month ORDER BY d.month";
         
         Map<String, Number> monthlySales = new LinkedHashMap<>();
         try (Connection conn = dataManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            stmt.setString(1, String.valueOf(year));
+            stmt.setString(1, FormatUtils.formatDateForDatabase(LocalDate.of(year, 1, 1)));
+            stmt.setString(2, FormatUtils.formatDateForDatabase(LocalDate.of(year, 12, 31)));
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    monthlySales.put(rs.getString("month"), rs.getDouble("monthly_total"));
+                    monthlySales.put(String.format("%02d", rs.getInt("month")), rs.getDouble("monthly_total"));
                 }
             }
         }
@@ -392,91 +565,108 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
     }
 
     public int addSaleReturn(SaleReturn saleReturn) throws SQLException {
-        return dataManager.executeTransaction(conn -> {
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.sale_return")) {
+            int returnId = dataManager.executeTransaction(conn -> addSaleReturnLogic(conn, saleReturn));
+            op.succeeded("SAL-RTN-" + returnId);
+            return returnId;
+        }
+    }
+
+    private int addSaleReturnLogic(Connection conn, SaleReturn saleReturn) throws SQLException {
+        
+        // 1. إضافة سجل المرتجع إلى قاعدة البيانات
+        String sql = "INSERT INTO sale_returns (original_sale_id, return_date, crop_id, quantity_kg, return_reason, refund_amount) VALUES (?, ?, ?, ?, ?, ?)";
+        int returnId;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setInt(1, saleReturn.getOriginalSale().getSaleId());
+            stmt.setString(2, FormatUtils.formatDateForDatabase(saleReturn.getReturnDate()));
+            stmt.setInt(3, saleReturn.getOriginalSale().getCrop().getCropId());
+            stmt.setDouble(4, saleReturn.getQuantityKg());
+            stmt.setString(5, saleReturn.getReturnReason());
+            stmt.setDouble(6, saleReturn.getRefundAmount());
             
-            // 1. إضافة سجل المرتجع إلى قاعدة البيانات
-            String sql = "INSERT INTO sale_returns (original_sale_id, return_date, crop_id, quantity_kg, return_reason, refund_amount) VALUES (?, ?, ?, ?, ?, ?)";
-            int returnId;
-            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
-                stmt.setInt(1, saleReturn.getOriginalSale().getSaleId());
-                stmt.setString(2, FormatUtils.formatDateForDatabase(saleReturn.getReturnDate()));
-                stmt.setInt(3, saleReturn.getOriginalSale().getCrop().getCropId());
-                stmt.setDouble(4, saleReturn.getQuantityKg());
-                stmt.setString(5, saleReturn.getReturnReason());
-                stmt.setDouble(6, saleReturn.getRefundAmount());
-                
-                stmt.executeUpdate();
-
-                try (ResultSet rs = stmt.getGeneratedKeys()) {
-                    if (rs.next()) {
-                        returnId = rs.getInt(1);
-                    } else {
-                        throw new SQLException("Creating sale return failed, no ID obtained.");
-                    }
+            stmt.executeUpdate();
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    returnId = rs.getInt(1);
+                } else {
+                    throw new SQLException("Creating sale return failed, no ID obtained.");
                 }
             }
+        }
 
-            // 2. تحديد الحسابات وحساب التكلفة
-            String transactionRef = "SAL-RTN-" + returnId;
-            String description = "مرتجع مبيعات من فاتورة رقم: " + saleReturn.getOriginalSale().getSaleInvoiceNumber();
-            int salesReturnAccountId = 40102;
-            int accountsReceivableId = 10104;
-            int inventoryAccountId = 10103;
-            int cogsAccountId = 50101;
-
-            double costOfReturnedGoods = 0;
-            String originalTransactionRef = "SAL-" + saleReturn.getOriginalSale().getSaleId();
-            String cogsQuery = "SELECT debit FROM general_ledger WHERE transaction_ref = ? AND account_id = ?";
-            
-            try (PreparedStatement cogsStmt = conn.prepareStatement(cogsQuery)) {
-                cogsStmt.setString(1, originalTransactionRef);
-                cogsStmt.setInt(2, cogsAccountId);
-                try (ResultSet rs = cogsStmt.executeQuery()) {
-                    if (rs.next()) {
-                        double totalCogs = rs.getDouble("debit");
-                        double originalQuantity = saleReturn.getOriginalSale().getQuantitySoldKg();
-                        if (originalQuantity > 0) {
-                            double costPerKg = totalCogs / originalQuantity;
-                            costOfReturnedGoods = costPerKg * saleReturn.getQuantityKg();
-                        }
+        // 2. تحديد الحسابات وحساب التكلفة
+        String transactionRef = "SAL-RTN-" + returnId;
+        String description = "مرتجع مبيعات من فاتورة رقم: " + saleReturn.getOriginalSale().getSaleInvoiceNumber();
+        int salesReturnAccountId = 40102;
+        int accountsReceivableId = 10104;
+        int inventoryAccountId = 10103;
+        int cogsAccountId = 50101;
+
+        double costOfReturnedGoods = 0;
+        String originalTransactionRef = "SAL-" + saleReturn.getOriginalSale().getSaleId();
+        String cogsQuery = "SELECT debit FROM general_ledger WHERE transaction_ref = ? AND account_id = ?";
+        
+        try (PreparedStatement cogsStmt = conn.prepareStatement(cogsQuery)) {
+            cogsStmt.setString(1, originalTransactionRef);
+            cogsStmt.setInt(2, cogsAccountId);
+            try (ResultSet rs = cogsStmt.executeQuery()) {
+                if (rs.next()) {
+                    double originalQuantity = saleReturn.getOriginalSale().getQuantitySoldKg();
+                    if (originalQuantity > 0) {
+                        costOfReturnedGoods = Money.toMajor(Money.share(rs.getLong("debit"),
+                            saleReturn.getQuantityKg(), originalQuantity));
                     }
                 }
             }
+        }
 
-            // 3. تسجيل القيود المحاسبية المزدوجة
-            dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), salesReturnAccountId, saleReturn.getRefundAmount(), 0.0, description, "SALE_RETURN", returnId, "SALE_RETURN");
-            dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), accountsReceivableId, 0.0, saleReturn.getRefundAmount(), description, "SALE_RETURN", returnId, "SALE_RETURN");
+        // 3. تسجيل القيود المحاسبية المزدوجة
+        dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), salesReturnAccountId, saleReturn.getRefundAmount(), 0.0, description, "SALE_RETURN", returnId, "SALE_RETURN");
+        dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), accountsReceivableId, 0.0, saleReturn.getRefundAmount(), description, "SALE_RETURN", returnId, "SALE_RETURN");
 
-            if (costOfReturnedGoods > 0) {
-                String cogsDescription = "عكس تكلفة بضاعة مرتجعة للفاتورة " + saleReturn.getOriginalSale().getSaleInvoiceNumber();
-                dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), inventoryAccountId, costOfReturnedGoods, 0.0, cogsDescription, "SALE_RETURN", returnId, "SALE_RETURN");
-                dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), cogsAccountId, 0.0, costOfReturnedGoods, cogsDescription, "SALE_RETURN", returnId, "SALE_RETURN");
-            }
+        if (costOfReturnedGoods > 0) {
+            String cogsDescription = "عكس تكلفة بضاعة مرتجعة للفاتورة " + saleReturn.getOriginalSale().getSaleInvoiceNumber();
+            dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), inventoryAccountId, costOfReturnedGoods, 0.0, cogsDescription, "SALE_RETURN", returnId, "SALE_RETURN");
+            dataManager.addLedgerEntry(conn, transactionRef, saleReturn.getReturnDate(), cogsAccountId, 0.0, costOfReturnedGoods, cogsDescription, "SALE_RETURN", returnId, "SALE_RETURN");
+        }
 
-            // 4. تحديث أرصدة الحسابات الإجمالية
-            dataManager.updateAccountBalance(salesReturnAccountId, saleReturn.getRefundAmount(), conn); // مرتجعات المبيعات تزيد (طبيعتها مدينة)
-            dataManager.updateAccountBalance(accountsReceivableId, -saleReturn.getRefundAmount(), conn); // الذمم المدينة تقل
-            if (costOfReturnedGoods > 0) {
-                dataManager.updateAccountBalance(inventoryAccountId, costOfReturnedGoods, conn); // المخزون يزيد
-                dataManager.updateAccountBalance(cogsAccountId, -costOfReturnedGoods, conn); // تكلفة البضاعة المباعة تقل
-            }
+        // 4. تحديث أرصدة الحسابات الإجمالية
+        dataManager.updateAccountBalance(salesReturnAccountId, saleReturn.getRefundAmount(), conn); // مرتجعات المبيعات تزيد (طبيعتها مدينة)
+        dataManager.updateAccountBalance(accountsReceivableId, -saleReturn.getRefundAmount(), conn); // الذمم المدينة تقل
+        if (costOfReturnedGoods > 0) {
+            dataManager.updateAccountBalance(inventoryAccountId, costOfReturnedGoods, conn); // المخزون يزيد
+            dataManager.updateAccountBalance(cogsAccountId, -costOfReturnedGoods, conn); // تكلفة البضاعة المباعة تقل
+        }
 
-            // 5. تحديث كمية المخزون (عملية إدارية)
-            double unitCostOfReturn = (saleReturn.getQuantityKg() > 0) ? costOfReturnedGoods / saleReturn.getQuantityKg() : 0;
-            dataManager.updateInventory(
-                saleReturn.getOriginalSale().getCrop().getCropId(), 
-                saleReturn.getQuantityKg(), // الكمية بالموجب لأنها تعود للمخزون
-                unitCostOfReturn, 
-                "IN", 
-                "SALE_RETURN", 
-                returnId, 
-                conn
-            );
-
-            dataManager.logAuditEntry("sale_returns", returnId, "INSERT", null, description, "SYSTEM", conn);
-            
-            return returnId;
-        });
+        // 5. تحديث كمية المخزون (عملية إدارية)
+        double unitCostOfReturn = (saleReturn.getQuantityKg() > 0) ? costOfReturnedGoods / saleReturn.getQuantityKg() : 0;
+        dataManager.updateInventory(
+            saleReturn.getOriginalSale().getCrop().getCropId(), 
+            saleReturn.getQuantityKg(), // الكمية بالموجب لأنها تعود للمخزون
+            unitCostOfReturn, 
+            "IN", 
+            "SALE_RETURN", 
+            returnId, 
+            saleReturn.getOriginalSale().getWarehouseId(),
+            null,
+            null,
+            conn
+        );
+        seasonAnalytics.recordSale(conn, saleReturn.getReturnDate(), saleReturn.getOriginalSale().getCrop().getCropId(),
+            -saleReturn.getRefundAmount(), -costOfReturnedGoods, -saleReturn.getQuantityKg());
+        int customerId = contactStatements.findSaleCustomerId(conn, saleReturn.getOriginalSale().getSaleId());
+        contactStatements.recordDocument(conn, customerId, saleReturn.getReturnDate(), ContactStatementService.ENTRY_SALE_RETURN,
+            "SALE_RETURN", returnId, transactionRef, saleReturn.getOriginalSale().getCrop().getCropId(),
+            saleReturn.getQuantityKg(), null, null, saleReturn.getReturnReason(), -saleReturn.getRefundAmount());
+        openItems.postCredit(conn, OpenItemService.SIDE_RECEIVABLE, customerId, "SALE_RETURN", returnId, transactionRef,
+            saleReturn.getReturnDate(), saleReturn.getRefundAmount(),
+            Map.of(saleReturn.getOriginalSale().getSaleId(), saleReturn.getRefundAmount()));
+
+        dataManager.logAuditEntry("sale_returns", returnId, "INSERT", null, description, "SYSTEM", conn);
+        
+        return returnId;
     }
 
     public SaleRecord getSaleById(int saleId) throws SQLException {
@@ -491,7 +681,7 @@ public class SaleDataService extends AbstractDAO<SaleRecord, Integer> {
             stmt.setInt(1, saleId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return mapResultSetToSale(rs);
+                    return mapResultSetToSale(rs, new RowCache());
                 }
             }
         }
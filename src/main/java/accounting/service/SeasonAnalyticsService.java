@@ -0,0 +1,399 @@
+package accounting.service;
+
+import accounting.model.Season;
+import accounting.util.ImprovedDataManager;
+import accounting.util.Money;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * تحليلات المواسم المجمعة مسبقاً
+ *
+ * تحتفظ هذه الخدمة بتجميعات لكل (موسم، محصول) في جدول season_crop_rollups:
+ * الإيرادات، تكلفة البضاعة المباعة، تكلفة المشتريات، الكميات والمصروفات.
+ * تُحدث التجميعات داخل نفس معاملة الترحيل، وعند إغلاق الموسم (COMPLETED)
+ * تُجمد في جدول season_snapshots كلقطة غير قابلة للتعديل.
+ * المصروفات العامة لا ترتبط بمحصول، لذا تُسجل على crop_id = 0.
+ */
+public class SeasonAnalyticsService {
+
+    private static final Logger LOGGER = Logger.getLogger(SeasonAnalyticsService.class.getName());
+
+    /** معرف المحصول المستخدم لتجميع المصروفات العامة للموسم */
+    public static final int SEASON_LEVEL_CROP_ID = 0;
+
+    private static final String ROLLUP_COLUMNS =
+        "crop_id, revenue, cost_of_sales, purchase_cost, quantity_sold_kg, quantity_purchased_kg, expenses";
+
+    private final ImprovedDataManager dataManager;
+
+    public SeasonAnalyticsService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    // ------------------------------------------------------------------
+    // تحديث التجميعات أثناء الترحيل (تستخدم اتصال المعاملة الحالية)
+    // ------------------------------------------------------------------
+
+    /**
+     * تسجيل أثر عملية بيع (أو عكسها بقيم سالبة) على تجميعات الموسم
+     */
+    public void recordSale(Connection conn, LocalDate saleDate, int cropId, double revenue,
+                           double costOfSales, double quantityKg) throws SQLException {
+        applyDelta(conn, saleDate, cropId, revenue, costOfSales, 0, quantityKg, 0, 0);
+    }
+
+    /**
+     * تسجيل أثر عملية شراء (أو عكسها بقيم سالبة) على تجميعات الموسم
+     */
+    public void recordPurchase(Connection conn, LocalDate purchaseDate, int cropId, double cost,
+                               double quantityKg) throws SQLException {
+        applyDelta(conn, purchaseDate, cropId, 0, 0, cost, 0, quantityKg, 0);
+    }
+
+    /**
+     * تسجيل مصروف عام على الموسم الذي يقع فيه تاريخه
+     */
+    public void recordExpense(Connection conn, LocalDate expenseDate, double amount) throws SQLException {
+        applyDelta(conn, expenseDate, SEASON_LEVEL_CROP_ID, 0, 0, 0, 0, 0, amount);
+    }
+
+    private void applyDelta(Connection conn, LocalDate date, int cropId, double revenue, double costOfSales,
+                            double purchaseCost, double quantitySold, double quantityPurchased,
+                            double expenses) throws SQLException {
+        if (date == null) {
+            return;
+        }
+        Integer seasonId = SeasonResolver.seasonIdFor(conn, date);
+        if (seasonId == null) {
+            return; // المستند خارج أي موسم معرف
+        }
+        String sql = """
+            INSERT INTO season_crop_rollups (season_id, crop_id, revenue, cost_of_sales, purchase_cost,
+                                             quantity_sold_kg, quantity_purchased_kg, expenses)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+            ON CONFLICT (season_id, crop_id) DO UPDATE SET
+                revenue = revenue + excluded.revenue,
+                cost_of_sales = cost_of_sales + excluded.cost_of_sales,
+                purchase_cost = purchase_cost + excluded.purchase_cost,
+                quantity_sold_kg = quantity_sold_kg + excluded.quantity_sold_kg,
+                quantity_purchased_kg = quantity_purchased_kg + excluded.quantity_purchased_kg,
+                expenses = expenses + excluded.expenses,
+                updated_at = CURRENT_TIMESTAMP
+            """;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, seasonId);
+            stmt.setInt(2, cropId);
+            stmt.setDouble(3, revenue);
+            stmt.setDouble(4, costOfSales);
+            stmt.setDouble(5, purchaseCost);
+            stmt.setDouble(6, quantitySold);
+            stmt.setDouble(7, quantityPurchased);
+            stmt.setDouble(8, expenses);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // إعادة البناء والتجميد
+    // ------------------------------------------------------------------
+
+    /**
+     * إعادة حساب تجميعات موسم واحد من الجداول الأساسية بعملية واحدة على مستوى المجموعات.
+     * مبالغ الدفتر بالقروش فتُقسم على Money.MINOR_PER_UNIT لتوافق مبالغ المستندات بالجنيه.
+     *
+     * الانتماء للموسم بنفس قاعدة الترحيل (SeasonResolver، الأحدث بداية عند التداخل) لا بمدى
+     * تواريخ الموسم: المبيعات والمشتريات بعمود season_id، والمرتجعات والمصروفات التي لا تحمله
+     * بموسم يومها في date_dim
+     */
+    public void rebuildSeason(Connection conn, Season season) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM season_crop_rollups WHERE season_id = ?")) {
+            stmt.setInt(1, season.getId());
+            stmt.executeUpdate();
+        }
+
+        String sql = """
+            INSERT INTO season_crop_rollups (season_id, crop_id, revenue, cost_of_sales, purchase_cost,
+                                             quantity_sold_kg, quantity_purchased_kg, expenses)
+            SELECT ?, crop_id, SUM(revenue), SUM(cogs), SUM(purchase_cost), SUM(qty_sold), SUM(qty_purchased), SUM(expenses)
+            FROM (
+                SELECT s.crop_id, s.total_sale_amount AS revenue,
+                       COALESCE((SELECT SUM(gl.debit) / %1$s FROM general_ledger gl
+                                 WHERE gl.source_type = 'SALE' AND gl.source_id = s.sale_id AND gl.account_id = 50101), 0) AS cogs,
+                       0 AS purchase_cost, s.quantity_sold_kg AS qty_sold, 0 AS qty_purchased, 0 AS expenses
+                FROM sales s WHERE s.season_id = ?
+                UNION ALL
+                SELECT r.crop_id, -r.refund_amount,
+                       -COALESCE((SELECT SUM(gl.credit) / %1$s FROM general_ledger gl
+                                  WHERE gl.source_type = 'SALE_RETURN' AND gl.source_id = r.return_id AND gl.account_id = 50101), 0),
+                       0, -r.quantity_kg, 0, 0
+                FROM date_dim d JOIN sale_returns r ON r.return_date = d.calendar_date WHERE d.season_id = ?
+                UNION ALL
+                SELECT p.crop_id, 0, 0, p.total_cost, 0, p.quantity_kg, 0
+                FROM purchases p WHERE p.season_id = ?
+                UNION ALL
+                SELECT r.crop_id, 0, 0, -r.returned_cost, 0, -r.quantity_kg, 0
+                FROM date_dim d JOIN purchase_returns r ON r.return_date = d.calendar_date WHERE d.season_id = ?
+                UNION ALL
+                SELECT 0, 0, 0, 0, 0, 0, gl.debit / %1$s
+                FROM date_dim d JOIN general_ledger gl ON gl.entry_date = d.calendar_date
+                WHERE d.season_id = ? AND gl.source_type = 'EXPENSE' AND gl.debit > 0
+            )
+            GROUP BY crop_id
+            """.formatted((double) Money.MINOR_PER_UNIT);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int index = 1; index <= 6; index++) {
+                stmt.setInt(index, season.getId());
+            }
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * إعادة بناء تجميعات جميع المواسم غير المجمدة (للبيانات التاريخية أو بعد الاستيراد)
+     */
+    public void rebuildAll() throws SQLException {
+        List<Season> seasons = new SeasonDataService().getAllSeasons();
+        dataManager.executeTransaction(conn -> {
+            for (Season season : seasons) {
+                rebuildSeason(conn, season);
+            }
+            return null;
+        });
+        LOGGER.info("تمت إعادة بناء تجميعات " + seasons.size() + " موسم");
+    }
+
+    /**
+     * تجميد نتائج الموسم في لقطة غير قابلة للتعديل. تُعاد أولاً مطابقة التجميعات
+     * مع الجداول الأساسية حتى تكون اللقطة صحيحة حتى لو سبقت بيانات إنشاء الموسم.
+     */
+    public void freezeSeason(Connection conn, Season season) throws SQLException {
+        rebuildSeason(conn, season);
+        String sql = "INSERT OR IGNORE INTO season_snapshots (season_id, " + ROLLUP_COLUMNS + ") "
+                   + "SELECT season_id, " + ROLLUP_COLUMNS + " FROM season_crop_rollups WHERE season_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, season.getId());
+            stmt.executeUpdate();
+        }
+        LOGGER.info("تم تجميد نتائج الموسم: " + season.getName());
+    }
+
+    /**
+     * إزالة اللقطة عند إعادة فتح موسم مكتمل، لتعود التقارير إلى التجميعات الحية
+     */
+    public void unfreezeSeason(Connection conn, int seasonId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM season_snapshots WHERE season_id = ?")) {
+            stmt.setInt(1, seasonId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * حذف جميع بيانات التحليل المرتبطة بالموسم
+     */
+    public void dropSeason(Connection conn, int seasonId) throws SQLException {
+        unfreezeSeason(conn, seasonId);
+        try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM season_crop_rollups WHERE season_id = ?")) {
+            stmt.setInt(1, seasonId);
+            stmt.executeUpdate();
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // القراءة
+    // ------------------------------------------------------------------
+
+    /**
+     * قراءة تجميعات الموسم بقراءة واحدة على المفتاح الأساسي: من اللقطة المجمدة إن وجدت،
+     * وإلا من التجميعات الحية.
+     */
+    public List<SeasonCropRollup> getSeasonRollups(int seasonId) throws SQLException {
+        String sql = """
+            SELECT r.*, c.crop_name FROM (
+                SELECT season_id, %1$s, 1 AS frozen FROM season_snapshots WHERE season_id = ?
+                UNION ALL
+                SELECT season_id, %1$s, 0 AS frozen FROM season_crop_rollups
+                WHERE season_id = ? AND NOT EXISTS (SELECT 1 FROM season_snapshots WHERE season_id = ?)
+            ) r
+            LEFT JOIN crops c ON r.crop_id = c.crop_id
+            ORDER BY r.crop_id
+            """.formatted(ROLLUP_COLUMNS);
+
+        List<SeasonCropRollup> rollups = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, seasonId);
+            stmt.setInt(2, seasonId);
+            stmt.setInt(3, seasonId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rollups.add(new SeasonCropRollup(
+                        rs.getInt("season_id"),
+                        rs.getInt("crop_id"),
+                        rs.getString("crop_name"),
+                        rs.getDouble("revenue"),
+                        rs.getDouble("cost_of_sales"),
+                        rs.getDouble("purchase_cost"),
+                        rs.getDouble("quantity_sold_kg"),
+                        rs.getDouble("quantity_purchased_kg"),
+                        rs.getDouble("expenses"),
+                        rs.getInt("frozen") == 1
+                    ));
+                }
+            }
+        }
+        return rollups;
+    }
+
+    /**
+     * الإجماليات على مستوى الموسم محسوبة من التجميعات
+     */
+    public SeasonCropRollup getSeasonTotals(int seasonId) throws SQLException {
+        return sum(seasonId, getSeasonRollups(seasonId));
+    }
+
+    /**
+     * مقارنة موسم بموسم سابق لكل محصول، بالإضافة إلى سطر للإجمالي (cropId = -1)
+     */
+    public List<SeasonComparison> compareSeasons(int seasonId, int previousSeasonId) throws SQLException {
+        List<SeasonCropRollup> current = getSeasonRollups(seasonId);
+        List<SeasonCropRollup> previous = getSeasonRollups(previousSeasonId);
+
+        Map<Integer, SeasonCropRollup[]> byCrop = new LinkedHashMap<>();
+        for (SeasonCropRollup rollup : current) {
+            byCrop.computeIfAbsent(rollup.getCropId(), k -> new SeasonCropRollup[2])[0] = rollup;
+        }
+        for (SeasonCropRollup rollup : previous) {
+            byCrop.computeIfAbsent(rollup.getCropId(), k -> new SeasonCropRollup[2])[1] = rollup;
+        }
+
+        List<SeasonComparison> comparisons = new ArrayList<>();
+        for (Map.Entry<Integer, SeasonCropRollup[]> entry : byCrop.entrySet()) {
+            SeasonCropRollup cur = entry.getValue()[0];
+            SeasonCropRollup prev = entry.getValue()[1];
+            String cropName = cur != null ? cur.getCropName() : prev.getCropName();
+            comparisons.add(new SeasonComparison(entry.getKey(), cropName,
+                cur != null ? cur : SeasonCropRollup.empty(seasonId, entry.getKey(), cropName),
+                prev != null ? prev : SeasonCropRollup.empty(previousSeasonId, entry.getKey(), cropName)));
+        }
+        comparisons.add(new SeasonComparison(-1, "الإجمالي", sum(seasonId, current), sum(previousSeasonId, previous)));
+        return comparisons;
+    }
+
+    private SeasonCropRollup sum(int seasonId, List<SeasonCropRollup> rollups) {
+        double revenue = 0, costOfSales = 0, purchaseCost = 0, quantitySold = 0, quantityPurchased = 0, expenses = 0;
+        boolean frozen = false;
+        for (SeasonCropRollup r : rollups) {
+            revenue += r.getRevenue();
+            costOfSales += r.getCostOfSales();
+            purchaseCost += r.getPurchaseCost();
+            quantitySold += r.getQuantitySoldKg();
+            quantityPurchased += r.getQuantityPurchasedKg();
+            expenses += r.getExpenses();
+            frozen = r.isFrozen();
+        }
+        return new SeasonCropRollup(seasonId, -1, "الإجمالي", revenue, costOfSales, purchaseCost,
+                                    quantitySold, quantityPurchased, expenses, frozen);
+    }
+
+    /**
+     * تجميعات محصول واحد في موسم واحد
+     */
+    public static class SeasonCropRollup {
+        private final int seasonId;
+        private final int cropId;
+        private final String cropName;
+        private final double revenue;
+        private final double costOfSales;
+        private final double purchaseCost;
+        private final double quantitySoldKg;
+        private final double quantityPurchasedKg;
+        private final double expenses;
+        private final boolean frozen;
+
+        public SeasonCropRollup(int seasonId, int cropId, String cropName, double revenue, double costOfSales,
+                                double purchaseCost, double quantitySoldKg, double quantityPurchasedKg,
+                                double expenses, boolean frozen) {
+            this.seasonId = seasonId;
+            this.cropId = cropId;
+            this.cropName = cropName;
+            this.revenue = revenue;
+            this.costOfSales = costOfSales;
+            this.purchaseCost = purchaseCost;
+            this.quantitySoldKg = quantitySoldKg;
+            this.quantityPurchasedKg = quantityPurchasedKg;
+            this.expenses = expenses;
+            this.frozen = frozen;
+        }
+
+        static SeasonCropRollup empty(int seasonId, int cropId, String cropName) {
+            return new SeasonCropRollup(seasonId, cropId, cropName, 0, 0, 0, 0, 0, 0, false);
+        }
+
+        public int getSeasonId() { return seasonId; }
+        public int getCropId() { return cropId; }
+        public String getCropName() { return cropName; }
+        public double getRevenue() { return revenue; }
+        public double getCostOfSales() { return costOfSales; }
+        public double getPurchaseCost() { return purchaseCost; }
+        public double getQuantitySoldKg() { return quantitySoldKg; }
+        public double getQuantityPurchasedKg() { return quantityPurchasedKg; }
+        public double getExpenses() { return expenses; }
+        public boolean isFrozen() { return frozen; }
+
+        public double getGrossProfit() {
+            return revenue - costOfSales;
+        }
+
+        public double getNetProfit() {
+            return revenue - costOfSales - expenses;
+        }
+    }
+
+    /**
+     * مقارنة محصول (أو الإجمالي) بين موسمين
+     */
+    public static class SeasonComparison {
+        private final int cropId;
+        private final String cropName;
+        private final SeasonCropRollup current;
+        private final SeasonCropRollup previous;
+
+        public SeasonComparison(int cropId, String cropName, SeasonCropRollup current, SeasonCropRollup previous) {
+            this.cropId = cropId;
+            this.cropName = cropName;
+            this.current = current;
+            this.previous = previous;
+        }
+
+        public int getCropId() { return cropId; }
+        public String getCropName() { return cropName; }
+        public SeasonCropRollup getCurrent() { return current; }
+        public SeasonCropRollup getPrevious() { return previous; }
+
+        public double getRevenueChange() {
+            return current.getRevenue() - previous.getRevenue();
+        }
+
+        public double getNetProfitChange() {
+            return current.getNetProfit() - previous.getNetProfit();
+        }
+
+        /**
+         * نسبة تغير الإيرادات، أو null إذا لم تكن هناك إيرادات في الموسم السابق
+         */
+        public Double getRevenueChangePercentage() {
+            if (previous.getRevenue() == 0) return null;
+            return (getRevenueChange() / Math.abs(previous.getRevenue())) * 100;
+        }
+    }
+}
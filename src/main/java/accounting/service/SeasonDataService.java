@@ -5,20 +5,28 @@ import accounting.util.ImprovedDataManager;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 public class SeasonDataService {
 
     private final ImprovedDataManager dataManager;
+    private final SeasonAnalyticsService seasonAnalytics;
 
     public SeasonDataService() {
         this.dataManager = ImprovedDataManager.getInstance();
+        this.seasonAnalytics = new SeasonAnalyticsService();
     }
 
     public void addSeason(Season season) throws SQLException {
         String sql = "INSERT INTO seasons (name, start_date, end_date, status) VALUES (?, ?, ?, ?)";
-        dataManager.executeTransaction(conn -> {
+        SeasonResolver.Index index = dataManager.executeTransaction(conn -> {
+            SeasonResolver.Index before = SeasonResolver.index(conn);
             try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
                 stmt.setString(1, season.getName());
                 stmt.setDate(2, Date.valueOf(season.getStartDate()));
@@ -32,13 +40,25 @@ public class SeasonDataService {
                     }
                 }
             }
-            return null;
+            // Documents already posted inside the new season's dates count towards it.
+            SeasonResolver.Index rebuilt = SeasonResolver.load(conn);
+            SeasonResolver.retag(conn, rebuilt, season.getStartDate(), season.getEndDate());
+            rebuildChanged(conn, before, rebuilt, season.getStartDate(), season.getEndDate(), season.getId());
+            seasonAnalytics.rebuildSeason(conn, season);
+            if (season.getStatus() == Season.Status.COMPLETED) {
+                seasonAnalytics.freezeSeason(conn, season);
+            }
+            return rebuilt;
         });
+        SeasonResolver.publish(index);
     }
 
     public void updateSeason(Season season) throws SQLException {
         String sql = "UPDATE seasons SET name = ?, start_date = ?, end_date = ?, status = ?, updated_at = CURRENT_TIMESTAMP WHERE season_id = ?";
-        dataManager.executeTransaction(conn -> {
+        SeasonResolver.Index index = dataManager.executeTransaction(conn -> {
+            SeasonResolver.Index before = SeasonResolver.index(conn);
+            Optional<Season> previous = findSeason(conn, season.getId());
+            Season.Status previousStatus = previous.map(Season::getStatus).orElse(null);
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setString(1, season.getName());
                 stmt.setDate(2, Date.valueOf(season.getStartDate()));
@@ -47,21 +67,118 @@ public class SeasonDataService {
                 stmt.setInt(5, season.getId());
                 stmt.executeUpdate();
             }
-            return null;
+
+            // Documents between the old and new dates move into or out of the season.
+            SeasonResolver.Index rebuilt = SeasonResolver.load(conn);
+            LocalDate from = season.getStartDate();
+            LocalDate to = season.getEndDate();
+            if (previous.isPresent()) {
+                from = min(from, previous.get().getStartDate());
+                to = max(to, previous.get().getEndDate());
+            }
+            SeasonResolver.retag(conn, rebuilt, from, to);
+            rebuildChanged(conn, before, rebuilt, from, to, season.getId());
+
+            boolean wasCompleted = previousStatus == Season.Status.COMPLETED;
+            boolean isCompleted = season.getStatus() == Season.Status.COMPLETED;
+            if (isCompleted && !wasCompleted) {
+                // Closing the season freezes its results into an immutable snapshot.
+                seasonAnalytics.freezeSeason(conn, season);
+            } else if (!isCompleted) {
+                if (wasCompleted) {
+                    seasonAnalytics.unfreezeSeason(conn, season.getId());
+                }
+                // Dates may have moved, so realign the live rollups.
+                seasonAnalytics.rebuildSeason(conn, season);
+            }
+            return rebuilt;
         });
+        SeasonResolver.publish(index);
     }
 
     public void deleteSeason(int seasonId) throws SQLException {
         // We should add a check here to ensure we are not deleting a season that has transactions associated with it.
         // For now, we will just delete it.
         String sql = "DELETE FROM seasons WHERE season_id = ?";
-        dataManager.executeTransaction(conn -> {
+        SeasonResolver.Index index = dataManager.executeTransaction(conn -> {
+            SeasonResolver.Index before = SeasonResolver.index(conn);
+            Optional<Season> previous = findSeason(conn, seasonId);
+            seasonAnalytics.dropSeason(conn, seasonId);
+            SeasonResolver.untag(conn, seasonId);
             try (PreparedStatement stmt = conn.prepareStatement(sql)) {
                 stmt.setInt(1, seasonId);
                 stmt.executeUpdate();
             }
-            return null;
+            // An overlapping season may now own the deleted season's dates.
+            SeasonResolver.Index rebuilt = SeasonResolver.load(conn);
+            if (previous.isPresent()) {
+                SeasonResolver.retag(conn, rebuilt, previous.get().getStartDate(), previous.get().getEndDate());
+                rebuildChanged(conn, before, rebuilt, previous.get().getStartDate(), previous.get().getEndDate(), seasonId);
+            }
+            return rebuilt;
         });
+        SeasonResolver.publish(index);
+    }
+
+    /**
+     * إعادة وسم كل المستندات بمواسمها حسب تواريخها (للبيانات التاريخية أو بعد الاستيراد)
+     *
+     * @return عدد المستندات التي تغير موسمها
+     */
+    public int retagDocuments() throws SQLException {
+        return SeasonResolver.retagAll();
+    }
+
+    private Optional<Season> findSeason(Connection conn, int seasonId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT * FROM seasons WHERE season_id = ?")) {
+            stmt.setInt(1, seasonId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Optional.of(mapRowToSeason(rs)) : Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * إعادة بناء تجميعات كل موسم آخر كسب أياماً أو خسرها في [from, to] بتغيير المواسم؛ الموسم
+     * المعدل نفسه (skipId) يعالجه المستدعي. الموسم الأقدم بداية يفقد أيام التداخل لموسم جديد
+     * ويستعيدها عند حذفه أو تقليصه
+     */
+    private void rebuildChanged(Connection conn, SeasonResolver.Index before, SeasonResolver.Index after,
+                                LocalDate from, LocalDate to, int skipId) throws SQLException {
+        Map<Integer, List<SeasonResolver.Segment>> owned = ownedDays(before, from, to);
+        Map<Integer, List<SeasonResolver.Segment>> owning = ownedDays(after, from, to);
+        Set<Integer> changed = new LinkedHashSet<>(owned.keySet());
+        changed.addAll(owning.keySet());
+        for (int seasonId : changed) {
+            if (seasonId == skipId || Objects.equals(owned.get(seasonId), owning.get(seasonId))) {
+                continue;
+            }
+            Optional<Season> season = findSeason(conn, seasonId);
+            if (season.isPresent()) {
+                seasonAnalytics.rebuildSeason(conn, season.get());
+            }
+        }
+    }
+
+    /** مقاطع كل موسم داخل [from, to] */
+    private static Map<Integer, List<SeasonResolver.Segment>> ownedDays(SeasonResolver.Index index, LocalDate from,
+                                                                        LocalDate to) {
+        Map<Integer, List<SeasonResolver.Segment>> owned = new HashMap<>();
+        for (SeasonResolver.Segment segment : index.segmentsBetween(from, to)) {
+            if (segment.seasonId() != null) {
+                owned.computeIfAbsent(segment.seasonId(), id -> new ArrayList<>()).add(new SeasonResolver.Segment(
+                    max(segment.start(), from), min(segment.end(), to), segment.seasonId()));
+            }
+        }
+        return owned;
+    }
+
+    private static LocalDate min(LocalDate a, LocalDate b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static LocalDate max(LocalDate a, LocalDate b) {
+        return a.isAfter(b) ? a : b;
     }
 
     public List<Season> getAllSeasons() throws SQLException {
@@ -79,17 +196,9 @@ public class SeasonDataService {
     }
 
     public Optional<Season> getSeasonById(int id) throws SQLException {
-        String sql = "SELECT * FROM seasons WHERE season_id = ?";
-        try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            stmt.setInt(1, id);
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(mapRowToSeason(rs));
-                }
-            }
+        try (Connection conn = dataManager.getConnection()) {
+            return findSeason(conn, id);
         }
-        return Optional.empty();
     }
     
     public Optional<Season> getActiveSeason() throws SQLException {
@@ -0,0 +1,286 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.logging.Logger;
+
+/**
+ * تحديد موسم المستند من تاريخه عند الترحيل، بفهرس فترات في الذاكرة.
+ *
+ * المواسم تُقسم مرة واحدة إلى مقاطع متتالية غير متداخلة تغطي كل التواريخ، لكل مقطع موسم
+ * واحد (أو لا موسم). إذا تداخل موسمان فالتاريخ للموسم الأحدث بداية، كما كان البحث القديم
+ * بترتيب start_date DESC. البحث بعدها floorEntry على TreeMap، أي O(log n) بلا استعلام.
+ *
+ * الفهرس ثابت لا يتغير بعد بنائه ويُستبدل كاملاً: SeasonDataService يبنيه من جديد داخل
+ * معاملة إضافة الموسم أو تعديله أو حذفه، ويعيد وسم المستندات في المدى المتأثر، ثم ينشره
+ * بعد الاعتماد. استبدال مدير قاعدة البيانات يسقط الفهرس فيُحمل من القاعدة الجديدة.
+ *
+ * إعادة الوسم على مستوى المجموعات: UPDATE واحد لكل (جدول، مقطع) على فهرس التاريخ، ولا
+ * يكتب إلا الصفوف التي تغير موسمها. أيام date_dim تُوسم بنفس الطريقة (راجع DateDimension).
+ */
+public final class SeasonResolver {
+
+    private static final Logger LOGGER = Logger.getLogger(SeasonResolver.class.getName());
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(1, 1, 1);
+    private static final LocalDate LAST_DAY = LocalDate.of(9999, 12, 31);
+
+    /** الجداول التي تحمل season_id وعمود التاريخ الذي يحدد موسمها */
+    private static final String[][] TAGGED_TABLES = {
+        {"sales", "sale_date"},
+        {"purchases", "purchase_date"},
+        {"financial_transactions", "transaction_date"},
+        {"inventory_adjustments", "adjustment_date"}
+    };
+
+    /** أيام بُعد التاريخ (DateDimension)، تُوسم مع المستندات ولا تُحسب معها */
+    private static final String[][] CALENDAR_TABLES = {
+        {"date_dim", "calendar_date"}
+    };
+
+    private static volatile Index current;
+
+    private SeasonResolver() {
+    }
+
+    /**
+     * موسم التاريخ، أو null إذا لم يقع في أي موسم
+     *
+     * @param conn اتصال المعاملة الحالية؛ يُستخدم فقط إذا لزم تحميل الفهرس
+     */
+    public static Integer seasonIdFor(Connection conn, LocalDate date) throws SQLException {
+        if (date == null) {
+            return null;
+        }
+        return index(conn).seasonIdFor(date);
+    }
+
+    /**
+     * ربط season_id في عبارة INSERT: رقم الموسم أو NULL
+     */
+    public static void bindSeason(PreparedStatement stmt, int parameterIndex, Connection conn,
+                                  LocalDate date) throws SQLException {
+        Integer seasonId = seasonIdFor(conn, date);
+        if (seasonId != null) {
+            stmt.setInt(parameterIndex, seasonId);
+        } else {
+            stmt.setNull(parameterIndex, Types.INTEGER);
+        }
+    }
+
+    /**
+     * الفهرس المنشور؛ على مسار الترحيل قراءة volatile فقط بلا getInstance المتزامن. استبدال مدير
+     * قاعدة البيانات يسقط الفهرس (راجع ImprovedDataManager.reinitializeForTest)
+     */
+    static Index index(Connection conn) throws SQLException {
+        Index index = current;
+        if (index == null) {
+            index = load(conn);
+            current = index;
+        }
+        return index;
+    }
+
+    /**
+     * بناء الفهرس من جدول المواسم كما يراه الاتصال (بما فيه تعديلات معاملته غير المعتمدة)
+     */
+    public static Index load(Connection conn) throws SQLException {
+        List<long[]> seasons = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT season_id, start_date, end_date FROM seasons");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                seasons.add(new long[] {
+                    rs.getInt("season_id"),
+                    rs.getDate("start_date").toLocalDate().toEpochDay(),
+                    rs.getDate("end_date").toLocalDate().toEpochDay()
+                });
+            }
+        }
+        return new Index(seasons);
+    }
+
+    /**
+     * اعتماد فهرس بُني داخل معاملة بعد نجاحها
+     */
+    public static void publish(Index index) {
+        current = index;
+    }
+
+    /**
+     * إسقاط الفهرس؛ يُحمل من جديد عند أول ترحيل
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * إعادة وسم المستندات وأيام بُعد التاريخ التي يقع تاريخها في [from, to] حسب الفهرس
+     *
+     * @return عدد المستندات التي تغير موسمها
+     */
+    public static int retag(Connection conn, Index index, LocalDate from, LocalDate to) throws SQLException {
+        int changed = retag(conn, index, from, to, TAGGED_TABLES);
+        tagCalendar(conn, index, from, to);
+        return changed;
+    }
+
+    /**
+     * إعادة وسم كل المستندات حسب الفهرس
+     */
+    public static int retag(Connection conn, Index index) throws SQLException {
+        return retag(conn, index, FIRST_DAY, LAST_DAY);
+    }
+
+    /**
+     * إعادة وسم المستندات وحدها (ترحيل المخطط 5 الذي يسبق date_dim)
+     */
+    public static int retagDocuments(Connection conn, Index index) throws SQLException {
+        return retag(conn, index, FIRST_DAY, LAST_DAY, TAGGED_TABLES);
+    }
+
+    /**
+     * وسم أيام date_dim في [from, to] بمواسمها
+     */
+    static void tagCalendar(Connection conn, Index index, LocalDate from, LocalDate to) throws SQLException {
+        retag(conn, index, from, to, CALENDAR_TABLES);
+    }
+
+    private static int retag(Connection conn, Index index, LocalDate from, LocalDate to,
+                             String[][] tables) throws SQLException {
+        int changed = 0;
+        for (Segment segment : index.segmentsBetween(from, to)) {
+            String start = FormatUtils.formatDateForDatabase(segment.start().isBefore(from) ? from : segment.start());
+            String end = FormatUtils.formatDateForDatabase(segment.end().isAfter(to) ? to : segment.end());
+            for (String[] table : tables) {
+                String sql = "UPDATE " + table[0] + " SET season_id = ? WHERE " + table[1]
+                    + " BETWEEN ? AND ? AND season_id IS NOT ?";
+                try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                    if (segment.seasonId() != null) {
+                        stmt.setInt(1, segment.seasonId());
+                        stmt.setInt(4, segment.seasonId());
+                    } else {
+                        stmt.setNull(1, Types.INTEGER);
+                        stmt.setNull(4, Types.INTEGER);
+                    }
+                    stmt.setString(2, start);
+                    stmt.setString(3, end);
+                    changed += stmt.executeUpdate();
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * فصل مستندات موسم عنه قبل حذفه
+     */
+    static void untag(Connection conn, int seasonId) throws SQLException {
+        for (String[][] tables : new String[][][] {TAGGED_TABLES, CALENDAR_TABLES}) {
+            for (String[] table : tables) {
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE " + table[0] + " SET season_id = NULL WHERE season_id = ?")) {
+                    stmt.setInt(1, seasonId);
+                    stmt.executeUpdate();
+                }
+            }
+        }
+    }
+
+    /**
+     * إعادة وسم كل المستندات التاريخية (بيانات سبقت الوسم التلقائي أو استيراد)
+     *
+     * @return عدد الصفوف التي تغير موسمها
+     */
+    public static int retagAll() throws SQLException {
+        ImprovedDataManager dataManager = ImprovedDataManager.getInstance();
+        Index[] rebuilt = new Index[1];
+        int changed = dataManager.executeTransaction(conn -> {
+            rebuilt[0] = load(conn);
+            return retag(conn, rebuilt[0]);
+        });
+        publish(rebuilt[0]);
+        LOGGER.info("تمت إعادة وسم " + changed + " مستند بمواسمها");
+        return changed;
+    }
+
+    /**
+     * مقطع متصل من التواريخ له موسم واحد (seasonId = null خارج المواسم)
+     */
+    public record Segment(LocalDate start, LocalDate end, Integer seasonId) {
+    }
+
+    /**
+     * الفهرس: مقاطع متتالية من FIRST_DAY إلى LAST_DAY مفتاحها تاريخ البداية
+     */
+    public static final class Index {
+        private final TreeMap<LocalDate, Segment> segments = new TreeMap<>();
+
+        /**
+         * @param seasons صفوف {season_id, start_day, end_day} بأيام epoch
+         */
+        Index(List<long[]> seasons) {
+            TreeSet<Long> bounds = new TreeSet<>();
+            bounds.add(FIRST_DAY.toEpochDay());
+            for (long[] season : seasons) {
+                if (season[2] < season[1]) {
+                    continue; // موسم بتاريخ نهاية قبل بدايته لا يغطي أي يوم
+                }
+                bounds.add(season[1]);
+                if (season[2] < LAST_DAY.toEpochDay()) {
+                    bounds.add(season[2] + 1);
+                }
+            }
+            Segment previous = null;
+            for (Long start : bounds) {
+                Long next = bounds.higher(start);
+                long end = next != null ? next - 1 : LAST_DAY.toEpochDay();
+                Integer seasonId = covering(seasons, start);
+                if (previous != null && Objects.equals(previous.seasonId(), seasonId)) {
+                    previous = new Segment(previous.start(), LocalDate.ofEpochDay(end), seasonId);
+                } else {
+                    previous = new Segment(LocalDate.ofEpochDay(start), LocalDate.ofEpochDay(end), seasonId);
+                }
+                segments.put(previous.start(), previous);
+            }
+        }
+
+        /** الموسم الأحدث بداية بين المواسم التي تغطي اليوم */
+        private static Integer covering(List<long[]> seasons, long day) {
+            long[] best = null;
+            for (long[] season : seasons) {
+                if (season[1] <= day && day <= season[2]
+                        && (best == null || season[1] > best[1] || (season[1] == best[1] && season[0] > best[0]))) {
+                    best = season;
+                }
+            }
+            return best != null ? (int) best[0] : null;
+        }
+
+        public Integer seasonIdFor(LocalDate date) {
+            Map.Entry<LocalDate, Segment> entry = segments.floorEntry(date);
+            return entry != null ? entry.getValue().seasonId() : null;
+        }
+
+        public List<Segment> segmentsBetween(LocalDate from, LocalDate to) {
+            LocalDate first = segments.floorKey(from);
+            return List.copyOf(segments.subMap(first != null ? first : from, true, to, true).values());
+        }
+
+        public List<Segment> getSegments() {
+            return List.copyOf(segments.values());
+        }
+    }
+}
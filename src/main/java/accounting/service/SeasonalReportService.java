@@ -1,82 +1,120 @@
 package accounting.service;
 
 import accounting.model.Season;
-import accounting.util.ImprovedDataManager;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import accounting.service.SeasonAnalyticsService.SeasonComparison;
+import accounting.service.SeasonAnalyticsService.SeasonCropRollup;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 public class SeasonalReportService {
 
-    private final ImprovedDataManager dataManager;
+    private final SeasonDataService seasonDataService;
+    private final SeasonAnalyticsService seasonAnalytics;
 
     public SeasonalReportService() {
-        this.dataManager = ImprovedDataManager.getInstance();
+        this.seasonDataService = new SeasonDataService();
+        this.seasonAnalytics = new SeasonAnalyticsService();
     }
 
     public List<Season> getAllSeasons() throws SQLException {
-        List<Season> seasons = new ArrayList<>();
-        String sql = "SELECT * FROM seasons ORDER BY start_date DESC";
-        try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                Season season = new Season();
-                season.setId(rs.getInt("season_id"));
-                season.setName(rs.getString("season_name"));
-                season.setStartDate(rs.getDate("start_date").toLocalDate());
-                season.setEndDate(rs.getDate("end_date").toLocalDate());
-                season.setStatus(Season.Status.valueOf(rs.getString("status")));
-                seasons.add(season);
-            }
-        }
-        return seasons;
+        return seasonDataService.getAllSeasons();
     }
 
+    /**
+     * إنشاء تقرير الموسم من التجميعات المحسوبة مسبقاً (أو اللقطة المجمدة للمواسم المكتملة)
+     */
     public SeasonReport generateSeasonReport(int seasonId) throws SQLException {
-        // This is a placeholder implementation
-        return null;
+        Season season = seasonDataService.getSeasonById(seasonId)
+            .orElseThrow(() -> new SQLException("Season not found with ID: " + seasonId));
+        List<SeasonCropRollup> rollups = seasonAnalytics.getSeasonRollups(seasonId);
+
+        double totalRevenue = 0;
+        double totalCostOfSales = 0;
+        double totalExpenses = 0;
+        List<CropSeasonAnalysis> cropAnalyses = new ArrayList<>();
+        for (SeasonCropRollup rollup : rollups) {
+            totalRevenue += rollup.getRevenue();
+            totalCostOfSales += rollup.getCostOfSales();
+            totalExpenses += rollup.getExpenses();
+            if (rollup.getCropId() != SeasonAnalyticsService.SEASON_LEVEL_CROP_ID) {
+                cropAnalyses.add(toCropAnalysis(rollup));
+            }
+        }
+        cropAnalyses.sort(Comparator.comparingDouble(CropSeasonAnalysis::getNetProfit).reversed());
+
+        double totalCost = totalCostOfSales + totalExpenses;
+        SeasonStatistics statistics = new SeasonStatistics(season.getStartDate(), season.getEndDate(),
+                                                           totalRevenue, totalCost, totalRevenue - totalCost);
+        return new SeasonReport(statistics, cropAnalyses, buildInsights(cropAnalyses, totalRevenue, totalExpenses));
     }
 
     public Map<String, Double> getSeasonPerformance(int seasonId) throws SQLException {
         Map<String, Double> performanceData = new HashMap<>();
-        String sql = """
-            SELECT 
-                (SELECT COALESCE(SUM(total_sale_amount), 0) FROM sales WHERE season_id = ?) as total_revenue,
-                (SELECT COALESCE(SUM(total_cost), 0) FROM purchases WHERE season_id = ?) as total_cost,
-                (SELECT COALESCE(SUM(amount), 0) FROM financial_transactions WHERE season_id = ? AND transaction_type = 'EXPENSE') as total_expenses
-            """;
-
-        try (Connection conn = dataManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, seasonId);
-            stmt.setInt(2, seasonId);
-            stmt.setInt(3, seasonId);
-
-            try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    double totalRevenue = rs.getDouble("total_revenue");
-                    double totalCost = rs.getDouble("total_cost");
-                    double totalExpenses = rs.getDouble("total_expenses");
-                    double netProfit = totalRevenue - (totalCost + totalExpenses);
-
-                    performanceData.put("totalRevenue", totalRevenue);
-                    performanceData.put("totalCost", totalCost);
-                    performanceData.put("totalExpenses", totalExpenses);
-                    performanceData.put("netProfit", netProfit);
-                }
-            }
-        }
+        SeasonCropRollup totals = seasonAnalytics.getSeasonTotals(seasonId);
+
+        double totalRevenue = totals.getRevenue();
+        double totalCost = totals.getPurchaseCost();
+        double totalExpenses = totals.getExpenses();
+        double netProfit = totalRevenue - (totalCost + totalExpenses);
+
+        performanceData.put("totalRevenue", totalRevenue);
+        performanceData.put("totalCost", totalCost);
+        performanceData.put("totalExpenses", totalExpenses);
+        performanceData.put("netProfit", netProfit);
         return performanceData;
     }
 
+    /**
+     * مقارنة أداء موسم بموسم سابق لكل محصول
+     */
+    public List<SeasonComparison> compareSeasons(int seasonId, int previousSeasonId) throws SQLException {
+        return seasonAnalytics.compareSeasons(seasonId, previousSeasonId);
+    }
+
+    private CropSeasonAnalysis toCropAnalysis(SeasonCropRollup rollup) {
+        double revenue = rollup.getRevenue();
+        double cost = rollup.getCostOfSales();
+        double netProfit = revenue - cost;
+        double profitMargin = revenue > 0 ? (netProfit / revenue) * 100 : 0;
+        double roi = cost > 0 ? (netProfit / cost) * 100 : 0;
+        return new CropSeasonAnalysis(rollup.getCropName(), revenue, cost, netProfit, profitMargin, roi,
+                                      ratePerformance(profitMargin, revenue));
+    }
+
+    private String ratePerformance(double profitMargin, double revenue) {
+        if (revenue <= 0) return "بدون مبيعات";
+        if (profitMargin >= 25) return "ممتاز";
+        if (profitMargin >= 15) return "جيد";
+        if (profitMargin >= 5) return "متوسط";
+        return "ضعيف";
+    }
+
+    private List<SeasonInsight> buildInsights(List<CropSeasonAnalysis> analyses, double totalRevenue, double totalExpenses) {
+        List<SeasonInsight> insights = new ArrayList<>();
+        if (analyses.isEmpty()) {
+            insights.add(new SeasonInsight("لا توجد حركات مسجلة خلال هذا الموسم."));
+            return insights;
+        }
+        CropSeasonAnalysis best = analyses.get(0);
+        CropSeasonAnalysis worst = analyses.get(analyses.size() - 1);
+        insights.add(new SeasonInsight(String.format("أعلى محصول ربحية: %s بصافي ربح %.2f وهامش %.1f%%.",
+            best.getCropName(), best.getNetProfit(), best.getProfitMargin())));
+        if (analyses.size() > 1) {
+            insights.add(new SeasonInsight(String.format("أقل محصول ربحية: %s بصافي ربح %.2f.",
+                worst.getCropName(), worst.getNetProfit())));
+        }
+        if (totalRevenue > 0 && totalExpenses > 0) {
+            insights.add(new SeasonInsight(String.format("المصروفات العامة تمثل %.1f%% من إيرادات الموسم.",
+                (totalExpenses / totalRevenue) * 100)));
+        }
+        return insights;
+    }
+
     public static class SeasonReport {
         private final SeasonStatistics statistics;
         private final List<CropSeasonAnalysis> cropAnalyses;
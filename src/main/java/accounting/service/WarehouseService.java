@@ -0,0 +1,370 @@
+package accounting.service;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Warehouse;
+import accounting.util.AppMetrics;
+import accounting.util.ImprovedDataManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * المخازن وأرصدتها والتحويل بينها.
+ *
+ * رصيد كل (مخزن، محصول) في warehouse_stock، يحدثه ImprovedDataManager.updateInventory مع كل
+ * حركة مخزون، ورصيد inventory يبقى الموحد لكل المخازن فلا تتغير استعلامات المخزن الواحد.
+ * التحويل مستند في inventory_transfers يُرحل طرفاه (الصرف من المصدر والوارد في الوجهة، مع
+ * دفعاتهما) في معاملة واحدة.
+ *
+ * الأرصدة محفوظة في الذاكرة مقسمة على شرائح بالمحصول، لكل شريحة قفلها، فقراءة محصول لا تنتظر
+ * تحديث محصول آخر. لكل محصول أرصدة مخازنه ومجموعها الموحد، والمجموع يُجمع من أرصدة المخازن
+ * عند التحديث لا عند كل قراءة. المعاملة تسجل المفاتيح التي مستها، وبعد الاعتماد يُقرأ رصيدها
+ * المعتمد من الجدول ويُكتب في شريحته تحت قفلها (فلا تكتب قراءة أقدم فوق أحدث)؛ الإلغاء لا
+ * يمس الذاكرة. التحميل الكامل يأخذ قفل الكتابة والتحديثات قفل القراءة، فلا يضيع تحديث في
+ * أرصدة يُعاد تحميلها. الأرصدة مرتبطة بمدير قاعدة البيانات الذي حُملت منه.
+ */
+public class WarehouseService {
+
+    private static final int STRIPES = 16;
+
+    /** أقل كمية تُعد رصيداً؛ ما دونها فرق تقريب */
+    private static final double EPSILON = 1e-6;
+
+    private static final ReadWriteLock LOAD_LOCK = new ReentrantReadWriteLock();
+    private static final ThreadLocal<Set<Long>> PENDING = new ThreadLocal<>();
+
+    private static volatile Positions current;
+
+    private final ImprovedDataManager dataManager;
+
+    public WarehouseService() {
+        this.dataManager = ImprovedDataManager.getInstance();
+    }
+
+    // ------------------------------------------------------------------
+    // المخازن
+    // ------------------------------------------------------------------
+
+    public Warehouse addWarehouse(String name) throws SQLException {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("اسم المخزن مطلوب");
+        }
+        return dataManager.executeTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO warehouses (name) VALUES (?)",
+                    Statement.RETURN_GENERATED_KEYS)) {
+                stmt.setString(1, name.trim());
+                stmt.executeUpdate();
+                try (ResultSet rs = stmt.getGeneratedKeys()) {
+                    if (!rs.next()) {
+                        throw new SQLException("Creating warehouse failed, no ID obtained.");
+                    }
+                    Warehouse warehouse = new Warehouse(rs.getInt(1), name.trim(), true);
+                    dataManager.logAuditEntry("warehouses", warehouse.getWarehouseId(), "INSERT", null, warehouse.getName(),
+                        "SYSTEM", conn);
+                    return warehouse;
+                }
+            }
+        });
+    }
+
+    public List<Warehouse> getAllWarehouses() throws SQLException {
+        List<Warehouse> warehouses = new ArrayList<>();
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT warehouse_id, name, is_active FROM warehouses ORDER BY warehouse_id")) {
+            while (rs.next()) {
+                warehouses.add(new Warehouse(rs.getInt("warehouse_id"), rs.getString("name"), rs.getBoolean("is_active")));
+            }
+        }
+        return warehouses;
+    }
+
+    // ------------------------------------------------------------------
+    // التحويل
+    // ------------------------------------------------------------------
+
+    /**
+     * تحويل كمية من مخزن إلى آخر. الرصيد الموحد وقيمة المخزون لا يتغيران؛ الدفعات تنتقل
+     * بصلاحيتها وتكلفتها (راجع InventoryLotService.transfer).
+     *
+     * @return رقم مستند التحويل
+     */
+    public int transfer(int cropId, int fromWarehouseId, int toWarehouseId, double quantityKg, LocalDate transferDate,
+                        String notes) throws SQLException {
+        if (fromWarehouseId == toWarehouseId) {
+            throw new IllegalArgumentException("التحويل يكون بين مخزنين مختلفين");
+        }
+        if (quantityKg <= 0) {
+            throw new IllegalArgumentException("كمية التحويل يجب أن تكون أكبر من صفر");
+        }
+        try (AppMetrics.Operation op = AppMetrics.begin("posting.inventory_transfer")) {
+            int transferId = dataManager.executeTransaction(conn ->
+                transferLogic(conn, cropId, fromWarehouseId, toWarehouseId, quantityKg, transferDate, notes));
+            op.succeeded("TRF-" + transferId);
+            return transferId;
+        }
+    }
+
+    private int transferLogic(Connection conn, int cropId, int fromWarehouseId, int toWarehouseId, double quantityKg,
+                              LocalDate transferDate, String notes) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT is_active FROM warehouses WHERE warehouse_id = ?")) {
+            stmt.setInt(1, toWarehouseId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || !rs.getBoolean(1)) {
+                    throw new SQLException("المخزن " + toWarehouseId + " غير موجود أو غير نشط");
+                }
+            }
+        }
+        double available = stockInTransaction(conn, fromWarehouseId, cropId);
+        if (available + EPSILON < quantityKg) {
+            throw new SQLException("رصيد المخزن " + fromWarehouseId + " (" + FormatUtils.formatNumber(available)
+                + " كجم) لا يكفي لتحويل " + FormatUtils.formatNumber(quantityKg) + " كجم");
+        }
+
+        String sql = """
+            INSERT INTO inventory_transfers (transfer_date, crop_id, from_warehouse_id, to_warehouse_id, quantity_kg, notes)
+            VALUES (?, ?, ?, ?, ?, ?)
+            """;
+        int transferId;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setString(1, FormatUtils.formatDateForDatabase(transferDate));
+            stmt.setInt(2, cropId);
+            stmt.setInt(3, fromWarehouseId);
+            stmt.setInt(4, toWarehouseId);
+            stmt.setDouble(5, quantityKg);
+            stmt.setString(6, notes);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new SQLException("Creating inventory transfer failed, no ID obtained.");
+                }
+                transferId = rs.getInt(1);
+            }
+        }
+
+        dataManager.transferInventory(cropId, fromWarehouseId, toWarehouseId, quantityKg, transferId, conn);
+        dataManager.logAuditEntry("inventory_transfers", transferId, "INSERT", null,
+            FormatUtils.formatNumber(quantityKg) + " كجم من " + fromWarehouseId + " إلى " + toWarehouseId, "SYSTEM", conn);
+        return transferId;
+    }
+
+    private static double stockInTransaction(Connection conn, int warehouseId, int cropId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT quantity_kg FROM warehouse_stock WHERE warehouse_id = ? AND crop_id = ?")) {
+            stmt.setInt(1, warehouseId);
+            stmt.setInt(2, cropId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getDouble(1) : 0;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------
+    // الأرصدة (من الذاكرة)
+    // ------------------------------------------------------------------
+
+    /**
+     * رصيد المحصول المعتمد في المخزن
+     */
+    public double getStock(int warehouseId, int cropId) throws SQLException {
+        Stripe stripe = positions(dataManager).stripe(cropId);
+        synchronized (stripe) {
+            CropPosition position = stripe.byCrop.get(cropId);
+            Double quantity = position != null ? position.byWarehouse.get(warehouseId) : null;
+            return quantity != null ? quantity : 0;
+        }
+    }
+
+    /**
+     * رصيد المحصول في كل مخزن يحمل له رصيداً، بترتيب رقم المخزن
+     */
+    public Map<Integer, Double> getPositions(int cropId) throws SQLException {
+        Stripe stripe = positions(dataManager).stripe(cropId);
+        synchronized (stripe) {
+            CropPosition position = stripe.byCrop.get(cropId);
+            return position != null ? new TreeMap<>(position.byWarehouse) : new TreeMap<>();
+        }
+    }
+
+    /**
+     * الرصيد الموحد للمحصول في كل المخازن
+     */
+    public double getConsolidatedStock(int cropId) throws SQLException {
+        Stripe stripe = positions(dataManager).stripe(cropId);
+        synchronized (stripe) {
+            CropPosition position = stripe.byCrop.get(cropId);
+            return position != null ? position.total : 0;
+        }
+    }
+
+    /**
+     * الرصيد الموحد لكل محصول، من مجاميع المحاصيل دون المرور على أرصدة المخازن
+     */
+    public Map<Integer, Double> getConsolidatedStock() throws SQLException {
+        Map<Integer, Double> totals = new TreeMap<>();
+        for (Stripe stripe : positions(dataManager).stripes) {
+            synchronized (stripe) {
+                stripe.byCrop.forEach((cropId, position) -> totals.put(cropId, position.total));
+            }
+        }
+        return totals;
+    }
+
+    // ------------------------------------------------------------------
+    // تحديث الذاكرة
+    // ------------------------------------------------------------------
+
+    /**
+     * إبلاغ بتغير رصيد (مخزن، محصول) داخل المعاملة الحالية (من updateInventory)؛ يُقرأ رصيده
+     * المعتمد بعد اعتمادها
+     */
+    public static void positionChanged(ImprovedDataManager manager, int warehouseId, int cropId) throws SQLException {
+        long key = key(warehouseId, cropId);
+        if (!manager.inTransaction()) {
+            refresh(manager, Set.of(key));
+            return;
+        }
+        Set<Long> pending = PENDING.get();
+        if (pending == null) {
+            Set<Long> created = new LinkedHashSet<>();
+            PENDING.set(created);
+            manager.afterCompletion(committed -> {
+                if (PENDING.get() == created) {
+                    PENDING.remove();
+                }
+                if (committed) {
+                    refresh(manager, created);
+                }
+            });
+            pending = created;
+        }
+        pending.add(key);
+    }
+
+    private static void refresh(ImprovedDataManager manager, Set<Long> keys) throws SQLException {
+        if (current == null || current.owner != manager) {
+            return; // تُحمل كاملة من المعتمد عند أول استخدام
+        }
+        LOAD_LOCK.readLock().lock();
+        try {
+            Positions positions = current;
+            if (positions == null || positions.owner != manager) {
+                return;
+            }
+            try (Connection conn = manager.getConnection()) {
+                for (long key : keys) {
+                    int warehouseId = (int) (key >>> 32);
+                    int cropId = (int) key;
+                    Stripe stripe = positions.stripe(cropId);
+                    synchronized (stripe) {
+                        stripe.position(cropId).set(warehouseId, stockInTransaction(conn, warehouseId, cropId));
+                    }
+                }
+            }
+        } finally {
+            LOAD_LOCK.readLock().unlock();
+        }
+    }
+
+    /**
+     * تحميل الأرصدة قبل أول استخدام (عند التشغيل)
+     */
+    public static void warmUp() throws SQLException {
+        positions(ImprovedDataManager.getInstance());
+    }
+
+    /**
+     * إسقاط الأرصدة المحفوظة في الذاكرة؛ تُحمل من الجدول عند أول استخدام
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    private static Positions positions(ImprovedDataManager owner) throws SQLException {
+        Positions positions = current;
+        if (positions != null && positions.owner == owner) {
+            return positions;
+        }
+        LOAD_LOCK.writeLock().lock();
+        try {
+            positions = current;
+            if (positions == null || positions.owner != owner) {
+                positions = new Positions(owner);
+                try (Connection conn = owner.getConnection();
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT warehouse_id, crop_id, quantity_kg FROM warehouse_stock")) {
+                    while (rs.next()) {
+                        int cropId = rs.getInt("crop_id");
+                        positions.stripe(cropId).position(cropId).set(rs.getInt("warehouse_id"), rs.getDouble("quantity_kg"));
+                    }
+                }
+                current = positions;
+            }
+            return positions;
+        } finally {
+            LOAD_LOCK.writeLock().unlock();
+        }
+    }
+
+    /** مفتاح (مخزن، محصول) في المعاملة الجارية */
+    private static long key(int warehouseId, int cropId) {
+        return ((long) warehouseId << 32) | (cropId & 0xFFFFFFFFL);
+    }
+
+    // ------------------------------------------------------------------
+    // الأنواع
+    // ------------------------------------------------------------------
+
+    private static final class Positions {
+        private final ImprovedDataManager owner;
+        private final Stripe[] stripes = new Stripe[STRIPES];
+
+        Positions(ImprovedDataManager owner) {
+            this.owner = owner;
+            for (int i = 0; i < STRIPES; i++) {
+                stripes[i] = new Stripe();
+            }
+        }
+
+        Stripe stripe(int cropId) {
+            return stripes[Math.floorMod(cropId, STRIPES)];
+        }
+    }
+
+    /** محاصيل الشريحة؛ الشريحة نفسها قفلها */
+    private static final class Stripe {
+        private final Map<Integer, CropPosition> byCrop = new HashMap<>();
+
+        CropPosition position(int cropId) {
+            return byCrop.computeIfAbsent(cropId, id -> new CropPosition());
+        }
+    }
+
+    /** أرصدة محصول في المخازن ومجموعها */
+    private static final class CropPosition {
+        private final Map<Integer, Double> byWarehouse = new TreeMap<>();
+        private double total;
+
+        void set(int warehouseId, double quantity) {
+            byWarehouse.put(warehouseId, quantity);
+            double sum = 0;
+            for (double value : byWarehouse.values()) {
+                sum += value;
+            }
+            total = sum;
+        }
+    }
+}
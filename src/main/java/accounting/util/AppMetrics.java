@@ -0,0 +1,200 @@
+package accounting.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * سجل مقاييس التطبيق: عدادات ومؤقتات ومقاييس لحظية (gauges)
+ *
+ * العمليات التجارية (ترحيل المستندات، إنشاء التقارير، تحميل الشاشات) تُقاس عبر begin:
+ *
+ *   try (AppMetrics.Operation op = AppMetrics.begin("posting.sale")) {
+ *       int saleId = ...;
+ *       op.succeeded("SAL-" + saleId);
+ *   }
+ *
+ * كل عملية تُسجل في مؤقت باسمها (والفاشلة في عداد name.errors) وتُصدر حدث
+ * BusinessOperationEvent في JDK Flight Recorder يحمل رقم القيد والمدة، فيمكن ربط
+ * بطء مستند بعينه بجمع المهملات وانتظار الاتصالات في نفس التسجيل.
+ * MetricsExporter يصدر السجل بصيغة Prometheus أو JSON.
+ */
+public final class AppMetrics {
+
+    private static final AppMetrics INSTANCE = new AppMetrics();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+    private AppMetrics() {
+        registerJvmGauges();
+    }
+
+    public static AppMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * بدء قياس عملية تجارية؛ تُغلق بـ try-with-resources
+     */
+    public static Operation begin(String name) {
+        return new Operation(INSTANCE, name);
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, k -> new Counter());
+    }
+
+    public Timer timer(String name) {
+        return timers.computeIfAbsent(name, k -> new Timer());
+    }
+
+    /**
+     * تسجيل مقياس لحظي يُقرأ عند التصدير (يستبدل أي مقياس سابق بنفس الاسم)
+     */
+    public void gauge(String name, Supplier<Number> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    public Map<String, Counter> getCounters() {
+        return new TreeMap<>(counters);
+    }
+
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    /**
+     * قراءة كل المقاييس اللحظية الآن (المقاييس التي تفشل قراءتها تُتجاهل)
+     */
+    public Map<String, Double> readGauges() {
+        Map<String, Double> values = new TreeMap<>();
+        gauges.forEach((name, supplier) -> {
+            try {
+                Number value = supplier.get();
+                if (value != null) {
+                    values.put(name, value.doubleValue());
+                }
+            } catch (RuntimeException e) {
+                // مصدر المقياس غير متاح حالياً (مثلاً التجميع مغلق)
+            }
+        });
+        return values;
+    }
+
+    public void reset() {
+        counters.clear();
+        timers.clear();
+    }
+
+    private void registerJvmGauges() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm.heap.used.bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm.heap.committed.bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm.threads.live", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        gauge("jvm.gc.collections", () -> ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionCount).filter(c -> c > 0).sum());
+        gauge("jvm.gc.time.ms", () -> ManagementFactory.getGarbageCollectorMXBeans().stream()
+            .mapToLong(GarbageCollectorMXBean::getCollectionTime).filter(t -> t > 0).sum());
+        gauge("sql.pool.wait.count", () -> QueryMetrics.getInstance().getPoolWaitStats().getCount());
+        gauge("sql.pool.wait.p99.ms", () -> QueryMetrics.getInstance().getPoolWaitStats().getP99Millis());
+    }
+
+    /**
+     * عداد تراكمي
+     */
+    public static final class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * مؤقت: عدد المرات ومدرج الزمن
+     */
+    public static final class Timer {
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        public void recordNanos(long nanos) {
+            histogram.recordNanos(nanos);
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public double getTotalSeconds() {
+            return histogram.getSumMicros() / 1_000_000.0;
+        }
+
+        public double getPercentileSeconds(double percentile) {
+            return histogram.percentileMicros(percentile) / 1_000_000.0;
+        }
+
+        public double getMaxSeconds() {
+            return histogram.getMaxMicros() / 1_000_000.0;
+        }
+    }
+
+    /**
+     * عملية تجارية جارية. ما لم يُستدع succeeded قبل الإغلاق تُحتسب فاشلة
+     */
+    public static final class Operation implements AutoCloseable {
+        private final AppMetrics registry;
+        private final String name;
+        private final long started;
+        private final BusinessOperationEvent event;
+        private String transactionRef;
+        private boolean success;
+
+        private Operation(AppMetrics registry, String name) {
+            this.registry = registry;
+            this.name = name;
+            this.event = new BusinessOperationEvent();
+            this.event.begin();
+            this.started = System.nanoTime();
+        }
+
+        public void succeeded() {
+            this.success = true;
+        }
+
+        public void succeeded(String transactionRef) {
+            this.transactionRef = transactionRef;
+            this.success = true;
+        }
+
+        @Override
+        public void close() {
+            long elapsed = System.nanoTime() - started;
+            registry.timer(name).recordNanos(elapsed);
+            if (!success) {
+                registry.counter(name + ".errors").increment();
+            }
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.operation = name;
+                event.transactionRef = transactionRef;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package accounting.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * حدث JDK Flight Recorder لكل عملية تجارية (ترحيل مستند، تقرير، تحميل شاشة)
+ *
+ *   java -XX:StartFlightRecording=filename=agri.jfr ...
+ *   jfr print --events accounting.BusinessOperation agri.jfr
+ */
+@Name("accounting.BusinessOperation")
+@Label("Business Operation")
+@Category({"Agricultural Accounting"})
+@Description("Posting, report or screen load with its transaction reference and duration")
+public class BusinessOperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Transaction Reference")
+    String transactionRef;
+
+    @Label("Succeeded")
+    boolean success;
+}
@@ -0,0 +1,19 @@
+package accounting.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+/**
+ * حدث JDK Flight Recorder عند انتظار اتصال من التجميع أطول من الحد
+ */
+@Name("accounting.ConnectionWait")
+@Label("Connection Pool Wait")
+@Category({"Agricultural Accounting"})
+@Description("Time spent waiting for a pooled database connection")
+@Threshold("10 ms")
+public class ConnectionWaitEvent extends Event {
+}
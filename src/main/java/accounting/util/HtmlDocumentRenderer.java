@@ -0,0 +1,210 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.SaleRecord;
+import accounting.service.ContactStatementService.AgingBuckets;
+import accounting.service.ContactStatementService.StatementLine;
+import accounting.service.ContactStatementService.StatementSummary;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * مولد مستندات HTML قابلة للطباعة (كشوف حساب وفواتير) باتجاه من اليمين لليسار
+ *
+ * المستندات مقسمة إلى صفحات A4 عبر CSS الطباعة، مع تكرار رأس الجدول ونقل
+ * الرصيد بين الصفحات، بحيث يمكن طباعتها أو حفظها PDF من أي متصفح.
+ * كل الدوال هنا بلا حالة مشتركة وآمنة للاستخدام من عدة خيوط في نفس الوقت.
+ */
+public class HtmlDocumentRenderer {
+
+    /** عدد سطور الحركات في كل صفحة مطبوعة */
+    public static final int ROWS_PER_PAGE = 28;
+
+    private static final String STYLE = """
+        @page { size: A4; margin: 15mm 12mm; }
+        body { font-family: 'Segoe UI', Tahoma, 'Arial', sans-serif; font-size: 11pt; color: #222; margin: 0; }
+        .page { page-break-after: always; }
+        .page:last-child { page-break-after: auto; }
+        .header { display: flex; justify-content: space-between; border-bottom: 2px solid #2c3e50; padding-bottom: 6px; margin-bottom: 10px; }
+        .title { font-size: 16pt; font-weight: bold; }
+        .muted { color: #666; font-size: 9pt; }
+        table { width: 100%; border-collapse: collapse; }
+        th, td { border: 1px solid #bbb; padding: 4px 6px; text-align: right; }
+        th { background: #ecf0f1; }
+        td.num { direction: ltr; text-align: left; white-space: nowrap; }
+        tr.carry td { background: #fafafa; font-style: italic; }
+        .totals { margin-top: 10px; }
+        .footer { margin-top: 8px; text-align: center; }
+        """;
+
+    private HtmlDocumentRenderer() {
+    }
+
+    /**
+     * كشف حساب جهة تعامل مقسم إلى صفحات
+     */
+    public static String renderStatement(String contactName, LocalDate fromDate, LocalDate toDate,
+                                         List<StatementLine> lines, StatementSummary summary) {
+        int pageCount = Math.max(1, (lines.size() + ROWS_PER_PAGE - 1) / ROWS_PER_PAGE);
+        StringBuilder html = new StringBuilder(2048 + lines.size() * 256);
+        openDocument(html, "كشف حساب - " + contactName);
+
+        double carriedBalance = summary.getOpeningBalance();
+        for (int page = 0; page < pageCount; page++) {
+            html.append("<div class=\"page\">");
+            appendHeader(html, "كشف حساب", contactName,
+                "الفترة من " + formatDate(fromDate) + " إلى " + formatDate(toDate));
+
+            html.append("<table><thead><tr>")
+                .append("<th>التاريخ</th><th>البيان</th><th>الصنف</th><th>الكمية</th><th>السعر</th>")
+                .append("<th>مدين</th><th>دائن</th><th>الرصيد</th>")
+                .append("</tr></thead><tbody>");
+            html.append("<tr class=\"carry\"><td colspan=\"7\">")
+                .append(page == 0 ? "رصيد أول المدة" : "رصيد منقول")
+                .append("</td>");
+            appendBalanceCell(html, carriedBalance).append("</tr>");
+
+            int end = Math.min(lines.size(), (page + 1) * ROWS_PER_PAGE);
+            for (int i = page * ROWS_PER_PAGE; i < end; i++) {
+                StatementLine line = lines.get(i);
+                appendDate(html.append("<tr><td>"), line.getDate()).append("</td>")
+                    .append("<td>").append(escape(line.getReason()));
+                if (line.getReference() != null && !line.getReference().isEmpty()) {
+                    html.append(" <span class=\"muted\">(").append(escape(line.getReference())).append(")</span>");
+                }
+                html.append("</td><td>").append(escape(line.getItemName())).append("</td>");
+                appendOptionalCell(html, line.getQuantityKg());
+                appendOptionalCell(html, line.getUnitPrice());
+                appendOptionalCell(html, line.getDebit() > 0 ? line.getDebit() : null);
+                appendOptionalCell(html, line.getCredit() > 0 ? line.getCredit() : null);
+                appendBalanceCell(html, line.getRunningBalance()).append("</tr>");
+                carriedBalance = line.getRunningBalance();
+            }
+            html.append("</tbody></table>");
+
+            if (page == pageCount - 1) {
+                appendStatementTotals(html, summary);
+            }
+            appendFooter(html, page + 1, pageCount);
+            html.append("</div>");
+        }
+
+        closeDocument(html);
+        return html.toString();
+    }
+
+    /**
+     * فاتورة بيع في صفحة واحدة
+     */
+    public static String renderSaleInvoice(SaleRecord sale, double amountPaid) {
+        String customerName = sale.getCustomer() != null ? sale.getCustomer().getName() : "";
+        String cropName = sale.getCrop() != null ? sale.getCrop().getCropName() : "";
+        double remaining = sale.getTotalSaleAmount() - amountPaid;
+
+        StringBuilder html = new StringBuilder(2048);
+        openDocument(html, "فاتورة بيع " + sale.getSaleInvoiceNumber());
+        html.append("<div class=\"page\">");
+        appendHeader(html, "فاتورة بيع رقم " + escape(sale.getSaleInvoiceNumber()), customerName,
+            "التاريخ: " + formatDate(sale.getSaleDate()));
+
+        html.append("<table><thead><tr><th>الصنف</th><th>الكمية (كجم)</th><th>الوحدة</th><th>سعر الوحدة</th><th>الإجمالي</th></tr></thead><tbody>")
+            .append("<tr><td>").append(escape(cropName)).append("</td>");
+        appendAmountCell(html, sale.getQuantitySoldKg())
+            .append("<td>").append(escape(sale.getSellingPricingUnit())).append("</td>");
+        appendAmountCell(html, sale.getSellingUnitPrice());
+        appendAmountCell(html, sale.getTotalSaleAmount()).append("</tr></tbody></table>");
+
+        html.append("<table class=\"totals\"><tbody><tr><th>الإجمالي</th>");
+        appendAmountCell(html, sale.getTotalSaleAmount()).append("</tr><tr><th>المدفوع</th>");
+        appendAmountCell(html, amountPaid).append("</tr><tr><th>المتبقي</th>");
+        appendAmountCell(html, remaining).append("</tr></tbody></table>");
+        appendFooter(html, 1, 1);
+        html.append("</div>");
+        closeDocument(html);
+        return html.toString();
+    }
+
+    private static void appendStatementTotals(StringBuilder html, StatementSummary summary) {
+        AgingBuckets aging = summary.getAging();
+        html.append("<table class=\"totals\"><tbody><tr><th>إجمالي المدين</th>");
+        appendAmountCell(html, summary.getTotalDebit()).append("<th>إجمالي الدائن</th>");
+        appendAmountCell(html, summary.getTotalCredit()).append("<th>الرصيد الختامي</th>");
+        appendBalanceCell(html, summary.getClosingBalance()).append("</tr></tbody></table>");
+        html.append("<table class=\"totals\"><thead><tr>")
+            .append("<th>0 - 30 يوم</th><th>31 - 60 يوم</th><th>61 - 90 يوم</th><th>أكثر من 90 يوم</th>")
+            .append("</tr></thead><tbody><tr>");
+        appendAmountCell(html, Math.abs(aging.getCurrent()));
+        appendAmountCell(html, Math.abs(aging.getDays31To60()));
+        appendAmountCell(html, Math.abs(aging.getDays61To90()));
+        appendAmountCell(html, Math.abs(aging.getOver90())).append("</tr></tbody></table>");
+    }
+
+    private static void openDocument(StringBuilder html, String title) {
+        html.append("<!DOCTYPE html><html lang=\"ar\" dir=\"rtl\"><head><meta charset=\"UTF-8\"><title>")
+            .append(escape(title))
+            .append("</title><style>").append(STYLE).append("</style></head><body>");
+    }
+
+    private static void closeDocument(StringBuilder html) {
+        html.append("</body></html>");
+    }
+
+    private static void appendHeader(StringBuilder html, String title, String contactName, String subtitle) {
+        html.append("<div class=\"header\"><div><div class=\"title\">").append(title).append("</div>")
+            .append("<div>").append(escape(contactName)).append("</div></div>")
+            .append("<div class=\"muted\">").append(escape(subtitle)).append("</div></div>");
+    }
+
+    private static void appendFooter(StringBuilder html, int page, int pageCount) {
+        html.append("<div class=\"footer muted\">صفحة ").append(page).append(" من ").append(pageCount).append("</div>");
+    }
+
+    // الأرقام والتواريخ تُكتب في html مباشرة عبر FormatUtils فتتبع أرقام العرض المختارة
+
+    private static String formatDate(LocalDate date) {
+        return date == null ? "" : FormatUtils.formatDateForDisplay(date);
+    }
+
+    private static StringBuilder appendDate(StringBuilder html, LocalDate date) {
+        return date == null ? html : FormatUtils.appendDateForDisplay(html, date);
+    }
+
+    private static StringBuilder appendAmountCell(StringBuilder html, double value) {
+        return FormatUtils.appendCurrency(html.append("<td class=\"num\">"), value).append("</td>");
+    }
+
+    private static StringBuilder appendOptionalCell(StringBuilder html, Double value) {
+        return value == null ? html.append("<td class=\"num\"></td>") : appendAmountCell(html, value);
+    }
+
+    /** الرصيد الموجب عليه والسالب له، كما في كشف الحساب المعروض */
+    private static StringBuilder appendBalanceCell(StringBuilder html, double balance) {
+        html.append("<td class=\"num\">");
+        if (Math.abs(balance) < 0.005) {
+            html.append("خالص");
+        } else {
+            FormatUtils.appendCurrency(html, Math.abs(balance)).append(balance > 0 ? " عليه" : " له");
+        }
+        return html.append("</td>");
+    }
+
+    static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                case '\'' -> escaped.append("&#39;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
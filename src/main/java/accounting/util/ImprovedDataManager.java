@@ -4,18 +4,34 @@ import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
 
 import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import javax.sql.DataSource;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import accounting.formatter.FormatUtils;
+import accounting.model.Warehouse;
+import accounting.service.AccountDirectory;
+import accounting.service.CreditControlService;
+import accounting.service.DateDimension;
+import accounting.service.InventoryLotService;
+import accounting.service.OpenItemService;
+import accounting.service.PeriodLock;
+import accounting.service.RecurringJournalService;
+import accounting.service.SeasonResolver;
+import accounting.service.WarehouseService;
 
 /**
  * مدير قاعدة البيانات المحسن مع تجميع الاتصالات وإدارة المعاملات
@@ -25,7 +41,15 @@ public class ImprovedDataManager {
     private static final Logger LOGGER = Logger.getLogger(ImprovedDataManager.class.getName());
 
     private static HikariDataSource dataSource;
+    /** التجميع مغلفاً بقياس الاستعلامات، ومنه تُؤخذ كل الاتصالات */
+    private static DataSource connections;
     private static ImprovedDataManager instance;
+    private static CompletableFuture<ImprovedDataManager> bootstrap;
+
+    /** اتصال معاملة الدفعة الجارية في الخيط الحالي (راجع executeBatchTransaction) */
+    private static final ThreadLocal<BoundConnection> BOUND_CONNECTION = new ThreadLocal<>();
+    /** مستمعو نهاية المعاملة الجارية في الخيط الحالي (راجع afterCompletion) */
+    private static final ThreadLocal<List<CompletionListener>> COMPLETION_LISTENERS = new ThreadLocal<>();
 
     private ImprovedDataManager() {
         // Private constructor to prevent instantiation
@@ -51,9 +75,7 @@ public class ImprovedDataManager {
             LOGGER.info("Using pre-configured DataSource.");
             // Ensure schema is created on the pre-configured datasource
             try (Connection conn = getConnection()) {
-                createTables(conn);
-                createIndexes(conn);
-                createDefaultAccounts(conn);
+                migrateSchema(conn);
             } catch (SQLException e) {
                 ErrorHandler.showError("Database Error", "Failed to create schema on pre-configured database", e.getMessage(), e);
                 throw new RuntimeException("Failed to create schema on pre-configured database", e);
@@ -77,13 +99,16 @@ public class ImprovedDataManager {
             config.setMinimumIdle(5);
             config.setLeakDetectionThreshold(15000);
             config.setConnectionTimeout(30000);
+            // WAL يسمح للقراءات (الواجهة وخادم HTTP) بالتوازي مع كاتب واحد دون SQLITE_BUSY
+            config.addDataSourceProperty("journal_mode", "WAL");
+            config.addDataSourceProperty("busy_timeout", "5000");
 
             dataSource = new HikariDataSource(config);
+            connections = new InstrumentedDataSource(dataSource);
+            registerPoolGauges();
 
             try (Connection conn = getConnection()) {
-                createTables(conn);
-                createIndexes(conn);
-                createDefaultAccounts(conn);
+                migrateSchema(conn);
             }
             LOGGER.info("تم تهيئة قاعدة البيانات بنجاح");
         } catch (Exception e) {
@@ -92,11 +117,443 @@ public class ImprovedDataManager {
         }
     }
 
+    /**
+     * ترحيلات المخطط بالترتيب. الإصدار 1 هو المخطط الأساسي كما كان يُنشأ عند كل تشغيل
+     * (وهو آمن على القواعد القديمة التي لا تحمل user_version)، وما بعده يُضاف هنا.
+     */
+    static SchemaMigrator schemaMigrations(ImprovedDataManager manager) {
+        return new SchemaMigrator()
+            .add(1, "baseline schema", conn -> {
+                manager.createTables(conn);
+                manager.createIndexes(conn);
+                manager.createDefaultAccounts(conn);
+            })
+            .add(2, "general ledger account index", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_gl_account_date ON general_ledger (account_id, entry_date, entry_id)");
+                }
+            })
+            .add(3, "general ledger date index for paged views", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_gl_date ON general_ledger (entry_date, entry_id)");
+                }
+            })
+            .add(4, "ledger integrity verifier state", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_gl_ref ON general_ledger (transaction_ref)");
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS integrity_state (
+                            name TEXT PRIMARY KEY,
+                            value INTEGER NOT NULL
+                        ) WITHOUT ROWID
+                        """);
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS integrity_issues (
+                            kind TEXT NOT NULL,
+                            subject TEXT NOT NULL,
+                            label TEXT,
+                            expected REAL NOT NULL,
+                            actual REAL NOT NULL,
+                            refs TEXT NOT NULL DEFAULT '',
+                            first_detected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            last_detected_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            PRIMARY KEY (kind, subject)
+                        ) WITHOUT ROWID
+                        """);
+                }
+            })
+            .add(5, "stamp season_id on historical documents", conn ->
+                SeasonResolver.retagDocuments(conn, SeasonResolver.load(conn)))
+            .add(6, "ledger and balance amounts in minor units", manager::convertMoneyToMinorUnits)
+            .add(7, "calendar date dimension", DateDimension::create)
+            .add(8, "customer credit control", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE contacts ADD COLUMN credit_policy TEXT");
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS credit_decisions (
+                            decision_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            contact_id INTEGER NOT NULL,
+                            reference TEXT,
+                            outcome TEXT NOT NULL CHECK (outcome IN ('WARNED', 'BLOCKED', 'OVERRIDDEN')),
+                            amount INTEGER NOT NULL,
+                            exposure INTEGER NOT NULL,
+                            credit_limit INTEGER NOT NULL,
+                            reason TEXT,
+                            user_name TEXT,
+                            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (contact_id) REFERENCES contacts (contact_id)
+                        )
+                        """);
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_credit_decisions_contact ON credit_decisions (contact_id, decision_id)");
+                }
+            })
+            .add(9, "inventory lots", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE purchases ADD COLUMN expiry_date DATE");
+                    stmt.execute("ALTER TABLE inventory_adjustments ADD COLUMN lot_id INTEGER");
+                    stmt.execute("ALTER TABLE inventory_movements ADD COLUMN lot_id INTEGER");
+                    stmt.execute("ALTER TABLE inventory_movements ADD COLUMN expiry_date DATE");
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS inventory_lots (
+                            lot_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            crop_id INTEGER NOT NULL,
+                            source_type TEXT NOT NULL,
+                            source_id INTEGER NOT NULL,
+                            received_date DATE NOT NULL,
+                            expiry_date DATE,
+                            quantity_kg REAL NOT NULL,
+                            remaining_kg REAL NOT NULL CHECK (remaining_kg >= 0),
+                            unit_cost REAL NOT NULL DEFAULT 0,
+                            FOREIGN KEY (crop_id) REFERENCES crops (crop_id)
+                        )
+                        """);
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS inventory_lot_consumptions (
+                            consumption_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            lot_id INTEGER NOT NULL,
+                            source_type TEXT NOT NULL,
+                            source_id INTEGER NOT NULL,
+                            quantity_kg REAL NOT NULL,
+                            FOREIGN KEY (lot_id) REFERENCES inventory_lots (lot_id)
+                        )
+                        """);
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_lots_open ON inventory_lots (crop_id, lot_id) WHERE remaining_kg > 0");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_lots_source ON inventory_lots (source_type, source_id)");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_lot_consumptions_source ON inventory_lot_consumptions (source_type, source_id)");
+                }
+                InventoryLotService.rebuild(conn);
+            })
+            .add(10, "warehouses and inter-warehouse transfers", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS warehouses (
+                            warehouse_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            name TEXT NOT NULL UNIQUE,
+                            is_active BOOLEAN DEFAULT 1,
+                            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                        )
+                        """);
+                    stmt.execute("INSERT OR IGNORE INTO warehouses (warehouse_id, name) VALUES (" + Warehouse.DEFAULT_ID + ", 'المخزن الرئيسي')");
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS warehouse_stock (
+                            warehouse_id INTEGER NOT NULL,
+                            crop_id INTEGER NOT NULL,
+                            quantity_kg REAL NOT NULL DEFAULT 0 CHECK (quantity_kg >= 0),
+                            PRIMARY KEY (warehouse_id, crop_id),
+                            FOREIGN KEY (warehouse_id) REFERENCES warehouses (warehouse_id),
+                            FOREIGN KEY (crop_id) REFERENCES crops (crop_id)
+                        ) WITHOUT ROWID
+                        """);
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS inventory_transfers (
+                            transfer_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            transfer_date DATE NOT NULL,
+                            crop_id INTEGER NOT NULL,
+                            from_warehouse_id INTEGER NOT NULL,
+                            to_warehouse_id INTEGER NOT NULL CHECK (to_warehouse_id <> from_warehouse_id),
+                            quantity_kg REAL NOT NULL CHECK (quantity_kg > 0),
+                            notes TEXT,
+                            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (crop_id) REFERENCES crops (crop_id),
+                            FOREIGN KEY (from_warehouse_id) REFERENCES warehouses (warehouse_id),
+                            FOREIGN KEY (to_warehouse_id) REFERENCES warehouses (warehouse_id)
+                        )
+                        """);
+                    for (String table : new String[] {"sales", "purchases", "inventory_adjustments", "inventory_movements", "inventory_lots"}) {
+                        stmt.execute("ALTER TABLE " + table + " ADD COLUMN warehouse_id INTEGER NOT NULL DEFAULT " + Warehouse.DEFAULT_ID);
+                    }
+                    stmt.execute("INSERT INTO warehouse_stock (warehouse_id, crop_id, quantity_kg) "
+                        + "SELECT " + Warehouse.DEFAULT_ID + ", crop_id, SUM(current_stock_kg) FROM inventory GROUP BY crop_id");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_sales_warehouse_crop ON sales (warehouse_id, crop_id)");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_purchases_warehouse_crop ON purchases (warehouse_id, crop_id)");
+                    stmt.execute("DROP INDEX IF EXISTS idx_inventory_lots_open");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_inventory_lots_open ON inventory_lots (warehouse_id, crop_id, lot_id) WHERE remaining_kg > 0");
+                }
+                InventoryLotService.rebuild(conn);
+            })
+            .add(11, "bank statements and reconciliation", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS bank_statements (
+                            statement_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            account_id INTEGER NOT NULL,
+                            source_name TEXT,
+                            format TEXT NOT NULL CHECK (format IN ('CSV', 'OFX')),
+                            period_from DATE,
+                            period_to DATE,
+                            line_count INTEGER NOT NULL DEFAULT 0,
+                            imported_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (account_id) REFERENCES financial_accounts (account_id)
+                        )
+                        """);
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS bank_statement_lines (
+                            line_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            statement_id INTEGER NOT NULL,
+                            account_id INTEGER NOT NULL,
+                            line_date DATE NOT NULL,
+                            amount INTEGER NOT NULL,
+                            reference TEXT,
+                            description TEXT,
+                            external_id TEXT NOT NULL,
+                            status TEXT NOT NULL DEFAULT 'UNMATCHED' CHECK (status IN ('UNMATCHED', 'MATCHED')),
+                            UNIQUE (account_id, external_id),
+                            FOREIGN KEY (statement_id) REFERENCES bank_statements (statement_id),
+                            FOREIGN KEY (account_id) REFERENCES financial_accounts (account_id)
+                        )
+                        """);
+                    // كل قيد يطابق سطر كشف واحداً على الأكثر؛ السطر قد يطابق عدة قيود (إيداع مجمع)
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS bank_reconciliation_matches (
+                            entry_id INTEGER PRIMARY KEY,
+                            line_id INTEGER NOT NULL,
+                            method TEXT NOT NULL CHECK (method IN ('AUTO', 'AUTO_GROUP', 'MANUAL')),
+                            score REAL,
+                            matched_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            FOREIGN KEY (line_id) REFERENCES bank_statement_lines (line_id)
+                        )
+                        """);
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_bank_lines_status ON bank_statement_lines (account_id, status, line_date)");
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_bank_matches_line ON bank_reconciliation_matches (line_id)");
+                }
+            })
+            .add(12, "recurring journal templates", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS recurring_journal_templates (
+                            template_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                            name TEXT NOT NULL UNIQUE,
+                            description TEXT,
+                            frequency TEXT NOT NULL CHECK (frequency IN ('DAILY', 'WEEKLY', 'MONTHLY', 'END_OF_MONTH')),
+                            interval_count INTEGER NOT NULL DEFAULT 1 CHECK (interval_count >= 1),
+                            day_of_month INTEGER NOT NULL DEFAULT 1 CHECK (day_of_month BETWEEN 1 AND 31),
+                            start_date DATE NOT NULL,
+                            end_date DATE,
+                            posted_through DATE,
+                            is_active BOOLEAN DEFAULT 1,
+                            created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                        )
+                        """);
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS recurring_journal_lines (
+                            template_id INTEGER NOT NULL,
+                            line_no INTEGER NOT NULL,
+                            account_id INTEGER NOT NULL,
+                            debit INTEGER NOT NULL DEFAULT 0 CHECK (debit >= 0),
+                            credit INTEGER NOT NULL DEFAULT 0 CHECK (credit >= 0),
+                            description TEXT,
+                            PRIMARY KEY (template_id, line_no),
+                            FOREIGN KEY (template_id) REFERENCES recurring_journal_templates (template_id),
+                            FOREIGN KEY (account_id) REFERENCES financial_accounts (account_id)
+                        ) WITHOUT ROWID
+                        """);
+                    // مفتاح عدم التكرار: استحقاق واحد لكل قالب وتاريخ
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS recurring_journal_postings (
+                            template_id INTEGER NOT NULL,
+                            occurrence_date DATE NOT NULL,
+                            transaction_ref TEXT NOT NULL UNIQUE,
+                            posted_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                            PRIMARY KEY (template_id, occurrence_date),
+                            FOREIGN KEY (template_id) REFERENCES recurring_journal_templates (template_id)
+                        ) WITHOUT ROWID
+                        """);
+                    stmt.execute("CREATE INDEX IF NOT EXISTS idx_recurring_postings_date ON recurring_journal_postings (occurrence_date)");
+                }
+            })
+            .add(13, "accounting period lock", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS period_lock (
+                            lock_id INTEGER PRIMARY KEY CHECK (lock_id = 1),
+                            locked_through DATE,
+                            updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                        )
+                        """);
+                }
+            });
+    }
+
+    /** أعمدة المبالغ المخزنة بالقروش (راجع Money): الجدول ثم أعمدته */
+    private static final String[][] MINOR_UNIT_COLUMNS = {
+        {"financial_accounts", "opening_balance", "current_balance"},
+        {"general_ledger", "debit", "credit"},
+        {"ledger_daily_totals", "debit_total", "credit_total"}
+    };
+
+    /**
+     * تحويل مبالغ الدفتر والأرصدة من REAL بالجنيه إلى INTEGER بالقروش.
+     *
+     * SQLite لا يغير نوع عمود قائم، فيُنشأ كل جدول من جديد بتعريفه المخزن بعد تبديل النوع،
+     * وتُنسخ صفوفه مقربة إلى القرش، ثم يأخذ اسم القديم وتُعاد فهارسه. مشغلات الدفتر تكتب في
+     * ledger_daily_totals فتُحذف قبل النسخ وتُعاد بعده، وعداد AUTOINCREMENT يُحفظ حتى لا
+     * تتكرر أرقام قيود محذوفة (علامة فحص السلامة تعتمد عليها).
+     */
+    private void convertMoneyToMinorUnits(Connection conn) throws SQLException {
+        List<String> triggers = new ArrayList<>();
+        try (Statement stmt = conn.createStatement()) {
+            for (String[] table : MINOR_UNIT_COLUMNS) {
+                for (String[] trigger : schemaObjects(conn, "trigger", table[0])) {
+                    triggers.add(trigger[1]);
+                    stmt.execute("DROP TRIGGER " + trigger[0]);
+                }
+            }
+            for (String[] table : MINOR_UNIT_COLUMNS) {
+                String name = table[0];
+                String rebuilt = name + "_minor";
+                String createSql = schemaObjects(conn, "table", name).get(0)[1]
+                    .replaceFirst("^CREATE TABLE (IF NOT EXISTS )?\"?" + name + "\"?", "CREATE TABLE " + rebuilt);
+                List<String> columns = new ArrayList<>();
+                List<String> values = new ArrayList<>();
+                try (ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + name + ")")) {
+                    while (rs.next()) {
+                        columns.add(rs.getString("name"));
+                    }
+                }
+                for (String column : columns) {
+                    boolean money = Arrays.asList(table).subList(1, table.length).contains(column);
+                    if (money) {
+                        createSql = createSql.replaceFirst("\\b" + column + "(\\s+)REAL\\b", column + "$1INTEGER");
+                    }
+                    values.add(money ? "CAST(ROUND(" + column + " * " + Money.MINOR_PER_UNIT + ") AS INTEGER)" : column);
+                }
+                List<String[]> indexes = schemaObjects(conn, "index", name);
+                Long sequence = autoIncrementSequence(conn, name);
+
+                stmt.execute(createSql);
+                stmt.executeUpdate("INSERT INTO " + rebuilt + " (" + String.join(", ", columns) + ") SELECT "
+                    + String.join(", ", values) + " FROM " + name);
+                stmt.execute("DROP TABLE " + name);
+                stmt.execute("ALTER TABLE " + rebuilt + " RENAME TO " + name);
+                for (String[] index : indexes) {
+                    stmt.execute(index[1]);
+                }
+                if (sequence != null) {
+                    try (PreparedStatement seq = conn.prepareStatement(
+                            "UPDATE sqlite_sequence SET seq = MAX(seq, ?) WHERE name = ?")) {
+                        seq.setLong(1, sequence);
+                        seq.setString(2, name);
+                        seq.executeUpdate();
+                    }
+                }
+            }
+            for (String trigger : triggers) {
+                stmt.execute(trigger);
+            }
+        }
+    }
+
+    /**
+     * كائنات المخطط المعرفة صراحة على جدول: {الاسم، نص الإنشاء}. الفهارس التلقائية بلا نص فتُستثنى
+     */
+    private static List<String[]> schemaObjects(Connection conn, String type, String table) throws SQLException {
+        List<String[]> objects = new ArrayList<>();
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT name, sql FROM sqlite_master WHERE type = ? AND tbl_name = ? AND sql IS NOT NULL")) {
+            stmt.setString(1, type);
+            stmt.setString(2, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    objects.add(new String[] {rs.getString("name"), rs.getString("sql")});
+                }
+            }
+        }
+        return objects;
+    }
+
+    private static Long autoIncrementSequence(Connection conn, String table) throws SQLException {
+        if (!schemaObjectExists(conn, "sqlite_sequence")) {
+            return null;
+        }
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT seq FROM sqlite_sequence WHERE name = ?")) {
+            stmt.setString(1, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : null;
+            }
+        }
+    }
+
+    private static boolean schemaObjectExists(Connection conn, String name) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE name = ?")) {
+            stmt.setString(1, name);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private void migrateSchema(Connection conn) throws SQLException {
+        try (AppMetrics.Operation op = AppMetrics.begin("startup.schema")) {
+            int applied = schemaMigrations(this).migrate(conn);
+            if (applied > 0) {
+                LOGGER.info("تم تحديث مخطط قاعدة البيانات إلى الإصدار " + SchemaMigrator.currentVersion(conn));
+            }
+            op.succeeded();
+        }
+    }
+
+    /**
+     * تهيئة قاعدة البيانات في خيط خلفي أثناء رسم الواجهة. أول من يطلب getInstance
+     * قبل اكتمالها ينتظرها (getInstance متزامنة) بدلاً من تكرارها.
+     */
+    public static synchronized CompletableFuture<ImprovedDataManager> bootstrapAsync() {
+        if (bootstrap == null) {
+            bootstrap = new CompletableFuture<>();
+            Thread thread = new Thread(() -> {
+                try {
+                    ImprovedDataManager manager = getInstance();
+                    warmUpCaches();
+                    RecurringJournalService.postDueOnStartup();
+                    bootstrap.complete(manager);
+                } catch (Throwable e) {
+                    bootstrap.completeExceptionally(e);
+                }
+            }, "db-bootstrap");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return bootstrap;
+    }
+
+    /**
+     * تحميل الحالة التي تُقرأ عند كل ترحيل (حدود الائتمان وأرصدة المخازن ودليل الحسابات) قبل أول استخدام، على خيط التهيئة.
+     * الفشل هنا لا يوقف التطبيق: الحالة تُحمل عند أول استخدام.
+     */
+    public static void warmUpCaches() {
+        try {
+            CreditControlService.warmUp();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "تعذر تحميل حدود الائتمان مسبقاً", e);
+        }
+        try {
+            WarehouseService.warmUp();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "تعذر تحميل أرصدة المخازن مسبقاً", e);
+        }
+        try {
+            AccountDirectory.warmUp();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "تعذر تحميل دليل الحسابات مسبقاً", e);
+        }
+    }
+
     /**
      * الحصول على اتصال من التجميع
      */
     public Connection getConnection() throws SQLException {
-        return dataSource.getConnection();
+        BoundConnection bound = BOUND_CONNECTION.get();
+        return bound != null ? bound.shared : connections.getConnection();
+    }
+
+    /**
+     * مقاييس التجميع اللحظية (الاتصالات المستخدمة والخاملة والخيوط المنتظرة)
+     */
+    private static void registerPoolGauges() {
+        HikariDataSource pool = dataSource;
+        AppMetrics metrics = AppMetrics.getInstance();
+        metrics.gauge("db.pool.active", () -> pool.getHikariPoolMXBean().getActiveConnections());
+        metrics.gauge("db.pool.idle", () -> pool.getHikariPoolMXBean().getIdleConnections());
+        metrics.gauge("db.pool.pending", () -> pool.getHikariPoolMXBean().getThreadsAwaitingConnection());
     }
 
     /**
@@ -113,6 +570,10 @@ public class ImprovedDataManager {
      * إنشاء جداول قاعدة البيانات المحسنة
      */
     public void createTables(Connection conn) throws SQLException {
+        boolean contactLedgerExisted = tableExists(conn, "contact_ledger");
+        boolean openItemsExisted = tableExists(conn, "open_items");
+        boolean ledgerDailyTotalsExisted = tableExists(conn, "ledger_daily_totals");
+
         String[] createTableQueries = {
             // جدول المحاصيل المحسن
             """
@@ -378,8 +839,169 @@ public class ImprovedDataManager {
                 FOREIGN KEY (contact_id) REFERENCES contacts (contact_id),
                 FOREIGN KEY (payment_account_id) REFERENCES financial_accounts (account_id)
             )
+            """,
+
+            // تجميعات المواسم لكل محصول، تُحدث مع كل عملية ترحيل
+            """
+            CREATE TABLE IF NOT EXISTS season_crop_rollups (
+                season_id INTEGER NOT NULL,
+                crop_id INTEGER NOT NULL,
+                revenue REAL NOT NULL DEFAULT 0,
+                cost_of_sales REAL NOT NULL DEFAULT 0,
+                purchase_cost REAL NOT NULL DEFAULT 0,
+                quantity_sold_kg REAL NOT NULL DEFAULT 0,
+                quantity_purchased_kg REAL NOT NULL DEFAULT 0,
+                expenses REAL NOT NULL DEFAULT 0,
+                updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (season_id, crop_id),
+                FOREIGN KEY (season_id) REFERENCES seasons (season_id)
+            )
+            """,
+
+            // لقطة مجمدة لنتائج الموسم عند إغلاقه (غير قابلة للتعديل)
+            """
+            CREATE TABLE IF NOT EXISTS season_snapshots (
+                season_id INTEGER NOT NULL,
+                crop_id INTEGER NOT NULL,
+                revenue REAL NOT NULL,
+                cost_of_sales REAL NOT NULL,
+                purchase_cost REAL NOT NULL,
+                quantity_sold_kg REAL NOT NULL,
+                quantity_purchased_kg REAL NOT NULL,
+                expenses REAL NOT NULL,
+                frozen_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                PRIMARY KEY (season_id, crop_id),
+                FOREIGN KEY (season_id) REFERENCES seasons (season_id)
+            )
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS trg_season_snapshots_immutable
+            BEFORE UPDATE ON season_snapshots
+            BEGIN
+                SELECT RAISE(ABORT, 'season snapshots are immutable');
+            END
+            """,
+
+            // دفتر حركات جهات التعامل: مبلغ موقّع لكل حركة تمس رصيد العميل/المورد
+            // (موجب = مدين على الجهة، سالب = دائن لها) لإنتاج الكشوف بمسح واحد
+            """
+            CREATE TABLE IF NOT EXISTS contact_ledger (
+                line_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                contact_id INTEGER NOT NULL,
+                entry_date DATE NOT NULL,
+                entry_type TEXT NOT NULL,
+                source_type TEXT NOT NULL,
+                source_id INTEGER NOT NULL,
+                reference TEXT,
+                crop_id INTEGER,
+                quantity_kg REAL,
+                unit TEXT,
+                unit_price REAL,
+                description TEXT,
+                amount REAL NOT NULL,
+                FOREIGN KEY (contact_id) REFERENCES contacts (contact_id)
+            )
+            """,
+
+            // البنود المفتوحة للذمم: فواتير بمبالغها غير المسددة وأرصدة دائنة غير مخصصة
+            """
+            CREATE TABLE IF NOT EXISTS open_items (
+                item_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                side TEXT NOT NULL CHECK (side IN ('AR', 'AP')),
+                item_kind TEXT NOT NULL CHECK (item_kind IN ('INVOICE', 'CREDIT')),
+                contact_id INTEGER NOT NULL,
+                source_type TEXT NOT NULL,
+                source_id INTEGER NOT NULL,
+                reference TEXT,
+                doc_date DATE NOT NULL,
+                original_amount REAL NOT NULL,
+                open_amount REAL NOT NULL CHECK (open_amount >= 0),
+                FOREIGN KEY (contact_id) REFERENCES contacts (contact_id)
+            )
+            """,
+
+            // تخصيصات السداد: أي مستند سدد كم من أي فاتورة، لعكسها بدقة عند الحذف
+            """
+            CREATE TABLE IF NOT EXISTS open_item_allocations (
+                allocation_id INTEGER PRIMARY KEY AUTOINCREMENT,
+                item_id INTEGER NOT NULL,
+                source_type TEXT NOT NULL,
+                source_id INTEGER NOT NULL,
+                allocation_date DATE NOT NULL,
+                amount REAL NOT NULL,
+                FOREIGN KEY (item_id) REFERENCES open_items (item_id)
+            )
+            """,
+
+            // إجمالي المفتوح لكل جهة تعامل، يُحدث مع كل ترحيل
+            """
+            CREATE TABLE IF NOT EXISTS contact_open_balances (
+                contact_id INTEGER NOT NULL,
+                side TEXT NOT NULL,
+                open_invoices REAL NOT NULL DEFAULT 0,
+                unapplied_credits REAL NOT NULL DEFAULT 0,
+                open_invoice_count INTEGER NOT NULL DEFAULT 0,
+                oldest_open_date DATE,
+                PRIMARY KEY (contact_id, side)
+            )
+            """,
+
+            // مجاميع دفتر الأستاذ اليومية لكل حساب: مصدر مؤشرات لوحة القيادة،
+            // تُحدثها المشغلات التالية مع كل إضافة أو تعديل أو حذف لقيد
+            """
+            CREATE TABLE IF NOT EXISTS ledger_daily_totals (
+                entry_date DATE NOT NULL,
+                account_id INTEGER NOT NULL,
+                debit_total REAL NOT NULL DEFAULT 0,
+                credit_total REAL NOT NULL DEFAULT 0,
+                entry_count INTEGER NOT NULL DEFAULT 0,
+                PRIMARY KEY (entry_date, account_id)
+            ) WITHOUT ROWID
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS trg_gl_daily_totals_insert
+            AFTER INSERT ON general_ledger
+            BEGIN
+                INSERT INTO ledger_daily_totals (entry_date, account_id, debit_total, credit_total, entry_count)
+                VALUES (NEW.entry_date, NEW.account_id, COALESCE(NEW.debit, 0), COALESCE(NEW.credit, 0), 1)
+                ON CONFLICT (entry_date, account_id) DO UPDATE SET
+                    debit_total = debit_total + excluded.debit_total,
+                    credit_total = credit_total + excluded.credit_total,
+                    entry_count = entry_count + 1;
+            END
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS trg_gl_daily_totals_delete
+            AFTER DELETE ON general_ledger
+            BEGIN
+                UPDATE ledger_daily_totals SET
+                    debit_total = debit_total - COALESCE(OLD.debit, 0),
+                    credit_total = credit_total - COALESCE(OLD.credit, 0),
+                    entry_count = entry_count - 1
+                WHERE entry_date = OLD.entry_date AND account_id = OLD.account_id;
+                DELETE FROM ledger_daily_totals
+                WHERE entry_date = OLD.entry_date AND account_id = OLD.account_id AND entry_count <= 0;
+            END
+            """,
+            """
+            CREATE TRIGGER IF NOT EXISTS trg_gl_daily_totals_update
+            AFTER UPDATE OF entry_date, account_id, debit, credit ON general_ledger
+            BEGIN
+                UPDATE ledger_daily_totals SET
+                    debit_total = debit_total - COALESCE(OLD.debit, 0),
+                    credit_total = credit_total - COALESCE(OLD.credit, 0),
+                    entry_count = entry_count - 1
+                WHERE entry_date = OLD.entry_date AND account_id = OLD.account_id;
+                DELETE FROM ledger_daily_totals
+                WHERE entry_date = OLD.entry_date AND account_id = OLD.account_id AND entry_count <= 0;
+                INSERT INTO ledger_daily_totals (entry_date, account_id, debit_total, credit_total, entry_count)
+                VALUES (NEW.entry_date, NEW.account_id, COALESCE(NEW.debit, 0), COALESCE(NEW.credit, 0), 1)
+                ON CONFLICT (entry_date, account_id) DO UPDATE SET
+                    debit_total = debit_total + excluded.debit_total,
+                    credit_total = credit_total + excluded.credit_total,
+                    entry_count = entry_count + 1;
+            END
             """
-            
         };
         
         for (String query : createTableQueries) {
@@ -388,22 +1010,116 @@ public class ImprovedDataManager {
             }
         }
         
-        // Add columns if they don't exist for backward compatibility
+        // Add columns if they don't exist for backward compatibility with databases created
+        // before schema versioning; this now runs once, as part of migration 1.
+        // Each ALTER runs on its own: a single shared try block stopped at the first
+        // "duplicate column name" and silently skipped every column after it.
+        String[] alterQueries = {
+            "ALTER TABLE general_ledger ADD COLUMN source_type TEXT;",
+            "ALTER TABLE general_ledger ADD COLUMN source_id INTEGER;",
+            "ALTER TABLE general_ledger ADD COLUMN transaction_type TEXT;",
+            "ALTER TABLE financial_transactions ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);",
+            "ALTER TABLE purchases ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);",
+            "ALTER TABLE sales ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);",
+            "ALTER TABLE inventory_adjustments ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);"
+        };
+        for (String query : alterQueries) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute(query);
+            } catch (SQLException e) {
+                // Ignore "duplicate column name" error, which is expected if the columns already exist.
+                if (!e.getMessage().contains("duplicate column name")) {
+                    throw e;
+                }
+            }
+        }
+
+        if (!contactLedgerExisted) {
+            backfillContactLedger(conn);
+        }
+        if (!openItemsExisted) {
+            OpenItemService.rebuild(conn);
+        }
+        if (!ledgerDailyTotalsExisted) {
+            rebuildLedgerDailyTotals(conn);
+        }
+    }
+
+    /**
+     * إعادة حساب المجاميع اليومية لدفتر الأستاذ من القيود مباشرة. تُستدعى عند إنشاء
+     * الجدول لأول مرة، ومن أمر إعادة بناء مؤشرات لوحة القيادة.
+     */
+    public void rebuildLedgerDailyTotals(Connection conn) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("ALTER TABLE general_ledger ADD COLUMN source_type TEXT;");
-            stmt.execute("ALTER TABLE general_ledger ADD COLUMN source_id INTEGER;");
-            stmt.execute("ALTER TABLE general_ledger ADD COLUMN transaction_type TEXT;");
-            stmt.execute("ALTER TABLE financial_transactions ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);");
-            stmt.execute("ALTER TABLE purchases ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);");
-            stmt.execute("ALTER TABLE sales ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);");
-            stmt.execute("ALTER TABLE inventory_adjustments ADD COLUMN season_id INTEGER REFERENCES seasons(season_id);");
-        } catch (SQLException e) {
-            // Ignore "duplicate column name" error, which is expected if the columns already exist.
-            if (!e.getMessage().contains("duplicate column name")) {
-                throw e;
+            stmt.executeUpdate("DELETE FROM ledger_daily_totals");
+            stmt.executeUpdate("""
+                INSERT INTO ledger_daily_totals (entry_date, account_id, debit_total, credit_total, entry_count)
+                SELECT entry_date, account_id, COALESCE(SUM(debit), 0), COALESCE(SUM(credit), 0), COUNT(*)
+                FROM general_ledger
+                GROUP BY entry_date, account_id
+                """);
+        }
+    }
+
+    private boolean tableExists(Connection conn, String tableName) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?")) {
+            stmt.setString(1, tableName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
             }
         }
     }
+
+    /**
+     * تعبئة دفتر حركات جهات التعامل من المستندات الموجودة عند إنشائه لأول مرة
+     * على قاعدة بيانات قديمة. بعد ذلك تُحدثه خدمات الترحيل مباشرة.
+     */
+    private void backfillContactLedger(Connection conn) throws SQLException {
+        String sql = """
+            INSERT INTO contact_ledger (contact_id, entry_date, entry_type, source_type, source_id, reference,
+                                        crop_id, quantity_kg, unit, unit_price, description, amount)
+            SELECT contact_id, entry_date, entry_type, source_type, source_id, reference,
+                   crop_id, quantity_kg, unit, unit_price, description, amount
+            FROM (
+                SELECT customer_id AS contact_id, sale_date AS entry_date, 'SALE' AS entry_type, 'SALE' AS source_type,
+                       sale_id AS source_id, sale_invoice_number AS reference, crop_id, quantity_sold_kg AS quantity_kg,
+                       selling_pricing_unit AS unit, selling_unit_price AS unit_price,
+                       'فاتورة رقم: ' || COALESCE(sale_invoice_number, '') AS description,
+                       total_sale_amount AS amount, 0 AS seq
+                FROM sales
+                UNION ALL
+                SELECT customer_id, sale_date, 'SALE_PAYMENT', 'SALE', sale_id, sale_invoice_number,
+                       NULL, NULL, NULL, NULL, 'دفعة من العميل', -amount_paid, 1
+                FROM sales WHERE amount_paid > 0
+                UNION ALL
+                SELECT s.customer_id, r.return_date, 'SALE_RETURN', 'SALE_RETURN', r.return_id, 'SAL-RTN-' || r.return_id,
+                       r.crop_id, r.quantity_kg, NULL, NULL, r.return_reason, -r.refund_amount, 2
+                FROM sale_returns r JOIN sales s ON s.sale_id = r.original_sale_id
+                UNION ALL
+                SELECT supplier_id, purchase_date, 'PURCHASE', 'PURCHASE', purchase_id, invoice_number,
+                       crop_id, quantity_kg, pricing_unit, unit_price, 'فاتورة رقم: ' || COALESCE(invoice_number, ''),
+                       -total_cost, 0
+                FROM purchases
+                UNION ALL
+                SELECT supplier_id, purchase_date, 'PURCHASE_PAYMENT', 'PURCHASE', purchase_id, invoice_number,
+                       NULL, NULL, NULL, NULL, 'دفعة لفاتورة شراء', amount_paid, 1
+                FROM purchases WHERE amount_paid > 0
+                UNION ALL
+                SELECT p.supplier_id, r.return_date, 'PURCHASE_RETURN', 'PURCHASE_RETURN', r.return_id, 'PUR-RTN-' || r.return_id,
+                       r.crop_id, r.quantity_kg, NULL, NULL, r.return_reason, r.returned_cost, 2
+                FROM purchase_returns r JOIN purchases p ON p.purchase_id = r.original_purchase_id
+                UNION ALL
+                SELECT contact_id, payment_date, payment_type, 'PAYMENT', payment_id, 'PAY-' || payment_id,
+                       NULL, NULL, NULL, NULL, description,
+                       CASE payment_type WHEN 'PAY' THEN amount ELSE -amount END, 3
+                FROM payments
+            )
+            ORDER BY entry_date, seq, source_id
+            """;
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
     
     /**
      * إنشاء المؤشرات لتحسين الأداء
@@ -422,7 +1138,17 @@ public class ImprovedDataManager {
             "CREATE INDEX IF NOT EXISTS idx_inventory_movements_crop ON inventory_movements (crop_id)",
             "CREATE INDEX IF NOT EXISTS idx_audit_log_table_record ON audit_log (table_name, record_id)",
             "CREATE INDEX IF NOT EXISTS idx_audit_log_timestamp ON audit_log (timestamp)",
-            "CREATE INDEX IF NOT EXISTS idx_gl_source ON general_ledger (source_type, source_id)"
+            "CREATE INDEX IF NOT EXISTS idx_gl_source ON general_ledger (source_type, source_id)",
+            "CREATE INDEX IF NOT EXISTS idx_sales_season ON sales (season_id)",
+            "CREATE INDEX IF NOT EXISTS idx_purchases_season ON purchases (season_id)",
+            "CREATE INDEX IF NOT EXISTS idx_transactions_season ON financial_transactions (season_id)",
+            "CREATE INDEX IF NOT EXISTS idx_inventory_adjustments_season ON inventory_adjustments (season_id)",
+            "CREATE INDEX IF NOT EXISTS idx_contact_ledger_timeline ON contact_ledger (contact_id, entry_date, line_id)",
+            "CREATE INDEX IF NOT EXISTS idx_contact_ledger_source ON contact_ledger (source_type, source_id)",
+            "CREATE INDEX IF NOT EXISTS idx_open_items_source ON open_items (source_type, source_id)",
+            "CREATE INDEX IF NOT EXISTS idx_open_items_open ON open_items (contact_id, side, item_kind, doc_date, item_id) WHERE open_amount > 0",
+            "CREATE INDEX IF NOT EXISTS idx_open_item_allocations_item ON open_item_allocations (item_id)",
+            "CREATE INDEX IF NOT EXISTS idx_open_item_allocations_source ON open_item_allocations (source_type, source_id)"
         };
         
         for (String query : indexQueries) {
@@ -436,22 +1162,137 @@ public class ImprovedDataManager {
      * تنفيذ معاملة قاعدة بيانات مع إدارة تلقائية للمعاملات
      */
     public <T> T executeTransaction(DatabaseTransaction<T> transaction) throws SQLException {
-        try (Connection conn = getConnection()){
-            conn.setAutoCommit(false);
+        BoundConnection bound = BOUND_CONNECTION.get();
+        if (bound != null) {
+            // داخل معاملة دفعة: العملية جزء منها وتُعتمد أو تُلغى معها
+            return transaction.execute(bound.shared);
+        }
+        List<CompletionListener> enclosing = COMPLETION_LISTENERS.get();
+        List<CompletionListener> listeners = new ArrayList<>();
+        COMPLETION_LISTENERS.set(listeners);
+        boolean committed = false;
+        try {
+            T result;
+            try (Connection conn = getConnection()){
+                conn.setAutoCommit(false);
+                try {
+                    result = transaction.execute(conn);
+                    conn.commit();
+                    committed = true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw new SQLException("Transaction failed due to unexpected exception", e);
+                }
+            }
+            return result;
+        } finally {
+            COMPLETION_LISTENERS.set(enclosing);
+            notifyCompletion(listeners, committed);
+        }
+    }
+
+    /**
+     * عمل يُنفذ بعد انتهاء المعاملة الجارية في هذا الخيط وإغلاق اتصالها: بعد الاعتماد
+     * (committed = true) أو بعد الإلغاء. في معاملة دفعة ينتظر نهاية الدفعة كلها، وخارج أي
+     * معاملة يُنفذ فوراً كأنه اعتُمد.
+     *
+     * للحالة التي تعيش خارج قاعدة البيانات (ذاكرة، إشعارات) ولا يجوز أن ترى تعديلات معاملة
+     * قد تُلغى.
+     */
+    public void afterCompletion(CompletionListener listener) {
+        List<CompletionListener> listeners = COMPLETION_LISTENERS.get();
+        if (listeners != null) {
+            listeners.add(listener);
+        } else {
+            notifyCompletion(List.of(listener), true);
+        }
+    }
+
+    /**
+     * هل يجري هذا الخيط معاملة (عادية أو دفعة) لم تنته بعد
+     */
+    public boolean inTransaction() {
+        return COMPLETION_LISTENERS.get() != null;
+    }
+
+    private static void notifyCompletion(List<CompletionListener> listeners, boolean committed) {
+        for (CompletionListener listener : listeners) {
             try {
-                T result = transaction.execute(conn);
-                conn.commit();
-                return result;
-            } catch (SQLException e) {
-                conn.rollback();
-                throw e;
+                listener.completed(committed);
             } catch (Exception e) {
-                conn.rollback();
-                throw new SQLException("Transaction failed due to unexpected exception", e);
+                // المعاملة انتهت بالفعل؛ فشل المستمع لا يغير نتيجتها
+                LOGGER.log(Level.WARNING, "فشل تنفيذ عمل ما بعد المعاملة", e);
             }
-        } 
+        }
     }
     
+    /**
+     * تنفيذ عدة عمليات (كل منها قد تفتح معاملتها الخاصة) في معاملة واحدة على اتصال واحد.
+     *
+     * أثناء التنفيذ تعيد getConnection و executeTransaction في نفس الخيط نفس الاتصال،
+     * فتعمل خدمات الترحيل كما هي لكن باعتماد واحد للدفعة كلها بدلاً من اعتماد لكل مستند.
+     * فشل أي عملية يلغي الدفعة كاملة.
+     */
+    public <T> T executeBatchTransaction(DatabaseTransaction<T> batch) throws SQLException {
+        BoundConnection bound = BOUND_CONNECTION.get();
+        if (bound != null) {
+            return batch.execute(bound.shared);
+        }
+        List<CompletionListener> enclosing = COMPLETION_LISTENERS.get();
+        List<CompletionListener> listeners = new ArrayList<>();
+        COMPLETION_LISTENERS.set(listeners);
+        boolean committed = false;
+        try {
+            T result;
+            try (Connection conn = connections.getConnection()) {
+                conn.setAutoCommit(false);
+                BOUND_CONNECTION.set(new BoundConnection(conn));
+                try {
+                    result = batch.execute(BOUND_CONNECTION.get().shared);
+                    conn.commit();
+                    committed = true;
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                } catch (Exception e) {
+                    conn.rollback();
+                    throw new SQLException("Batch transaction failed due to unexpected exception", e);
+                } finally {
+                    BOUND_CONNECTION.remove();
+                }
+            }
+            return result;
+        } finally {
+            COMPLETION_LISTENERS.set(enclosing);
+            notifyCompletion(listeners, committed);
+        }
+    }
+
+    /**
+     * اتصال معاملة الدفعة المرتبط بالخيط الحالي، ونسخة منه لا تُغلق عند close
+     * حتى لا تغلقه الخدمات التي تستخدم try-with-resources
+     */
+    private static final class BoundConnection {
+        private final Connection shared;
+
+        BoundConnection(Connection target) {
+            this.shared = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        }
+    }
+
     /**
      * واجهة للمعاملات
      * 
@@ -472,6 +1313,14 @@ public class ImprovedDataManager {
          */
         T execute(Connection conn) throws SQLException;
     }
+
+    /**
+     * مستمع نهاية المعاملة (راجع afterCompletion)
+     */
+    @FunctionalInterface
+    public interface CompletionListener {
+        void completed(boolean committed) throws Exception;
+    }
     
     
     /**
@@ -502,6 +1351,30 @@ public class ImprovedDataManager {
      */
     public void updateInventory(int cropId, double quantityChange, double unitCost, 
                                String movementType, String referenceType, int referenceId, Connection conn) throws SQLException {
+        updateInventory(cropId, quantityChange, unitCost, movementType, referenceType, referenceId, null, null, conn);
+    }
+
+    /**
+     * تحديث رصيد المخزون ودفعاته في المخزن الرئيسي
+     */
+    public void updateInventory(int cropId, double quantityChange, double unitCost, String movementType,
+                                String referenceType, int referenceId, Long lotId, LocalDate expiryDate,
+                                Connection conn) throws SQLException {
+        updateInventory(cropId, quantityChange, unitCost, movementType, referenceType, referenceId, Warehouse.DEFAULT_ID,
+            lotId, expiryDate, conn);
+    }
+
+    /**
+     * تحديث رصيد المخزون ودفعاته (راجع InventoryLotService) ورصيد المخزن (راجع WarehouseService).
+     * رصيد inventory يبقى الموحد لكل المخازن؛ warehouse_stock يرفض صرف ما ليس في المخزن.
+     *
+     * @param warehouseId المخزن الذي دخلت إليه الكمية أو خرجت منه
+     * @param lotId الدفعة التي يُصرف منها أولاً (تالف دفعة بعينها)، أو null
+     * @param expiryDate صلاحية الدفعة التي ينشئها الوارد، أو null
+     */
+    public void updateInventory(int cropId, double quantityChange, double unitCost, String movementType,
+                                String referenceType, int referenceId, int warehouseId, Long lotId, LocalDate expiryDate,
+                                Connection conn) throws SQLException {
         // ... (الكود الداخلي لهذه الدالة يبقى كما هو)
         // This is the private worker method, we just need to make it public and accept a connection
         String updateInventoryQuery = "INSERT OR REPLACE INTO inventory (crop_id, current_stock_kg, average_cost_per_kg, last_updated) VALUES (?, COALESCE((SELECT current_stock_kg FROM inventory WHERE crop_id = ?), 0) + ?, CASE WHEN ? > 0 THEN (COALESCE((SELECT current_stock_kg * average_cost_per_kg FROM inventory WHERE crop_id = ?), 0) + (? * ?)) / (COALESCE((SELECT current_stock_kg FROM inventory WHERE crop_id = ?), 0) + ?) ELSE COALESCE((SELECT average_cost_per_kg FROM inventory WHERE crop_id = ?), 0) END, CURRENT_TIMESTAMP)";
@@ -519,16 +1392,83 @@ public class ImprovedDataManager {
             stmt.setInt(10, cropId);
             stmt.executeUpdate();
         }
-        
-        String insertMovementQuery = "INSERT INTO inventory_movements (crop_id, movement_type, quantity_kg, unit_cost, reference_type, reference_id, movement_date) VALUES (?, ?, ?, ?, ?, ?, DATE('now'))";
+        updateWarehouseStock(warehouseId, cropId, quantityChange, conn);
+
+        Long movementLot = InventoryLotService.post(this, conn, warehouseId, cropId, quantityChange, unitCost, referenceType,
+            referenceId, lotId, expiryDate);
+        insertMovement(warehouseId, cropId, movementType, quantityChange, unitCost, referenceType, referenceId,
+            movementLot, expiryDate, conn);
+    }
+
+    /**
+     * ترحيل طرفي تحويل بين مخزنين في معاملة المستند: رصيد المخزنين، حركة صرف واحدة من
+     * المصدر، وحركة وارد لكل دفعة وصلت الوجهة (برقمها وصلاحيتها وتكلفتها، فتُعاد كما هي عند
+     * إعادة بناء الدفعات). الرصيد الموحد في inventory ومتوسط تكلفته لا يتغيران.
+     */
+    public void transferInventory(int cropId, int fromWarehouseId, int toWarehouseId, double quantity, int transferId,
+                                  Connection conn) throws SQLException {
+        double averageCost = 0;
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT average_cost_per_kg FROM inventory WHERE crop_id = ?")) {
+            stmt.setInt(1, cropId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    averageCost = rs.getDouble(1);
+                }
+            }
+        }
+        updateWarehouseStock(fromWarehouseId, cropId, -quantity, conn);
+        updateWarehouseStock(toWarehouseId, cropId, quantity, conn);
+
+        List<InventoryLotService.Lot> moved = InventoryLotService.transfer(this, conn, cropId, fromWarehouseId, toWarehouseId,
+            quantity, averageCost, transferId);
+        insertMovement(fromWarehouseId, cropId, "OUT", -quantity, averageCost, "TRANSFER", transferId, null, null, conn);
+        for (InventoryLotService.Lot lot : moved) {
+            insertMovement(toWarehouseId, cropId, "IN", lot.getQuantityKg(), lot.getUnitCost(), "TRANSFER", transferId,
+                lot.getLotId(), lot.getExpiryDate(), conn);
+        }
+    }
+
+    private void updateWarehouseStock(int warehouseId, int cropId, double quantityChange, Connection conn) throws SQLException {
+        // ليس UPSERT: قيد CHECK يُفحص على الصف المقترح قبل ON CONFLICT فيرفض الفرق السالب
+        int updated;
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "UPDATE warehouse_stock SET quantity_kg = quantity_kg + ? WHERE warehouse_id = ? AND crop_id = ?")) {
+            stmt.setDouble(1, quantityChange);
+            stmt.setInt(2, warehouseId);
+            stmt.setInt(3, cropId);
+            updated = stmt.executeUpdate();
+        }
+        if (updated == 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO warehouse_stock (warehouse_id, crop_id, quantity_kg) VALUES (?, ?, ?)")) {
+                stmt.setInt(1, warehouseId);
+                stmt.setInt(2, cropId);
+                stmt.setDouble(3, quantityChange);
+                stmt.executeUpdate();
+            }
+        }
+        WarehouseService.positionChanged(this, warehouseId, cropId);
+    }
+
+    private void insertMovement(int warehouseId, int cropId, String movementType, double quantity, double unitCost,
+                                String referenceType, int referenceId, Long lotId, LocalDate expiryDate,
+                                Connection conn) throws SQLException {
+        String insertMovementQuery = "INSERT INTO inventory_movements (crop_id, movement_type, quantity_kg, unit_cost, reference_type, reference_id, movement_date, lot_id, expiry_date, warehouse_id) VALUES (?, ?, ?, ?, ?, ?, DATE('now'), ?, ?, ?)";
         
         try (PreparedStatement stmt = conn.prepareStatement(insertMovementQuery)) {
             stmt.setInt(1, cropId);
             stmt.setString(2, movementType);
-            stmt.setDouble(3, quantityChange);
+            stmt.setDouble(3, quantity);
             stmt.setDouble(4, unitCost);
             stmt.setString(5, referenceType);
             stmt.setInt(6, referenceId);
+            if (lotId != null) {
+                stmt.setLong(7, lotId);
+            } else {
+                stmt.setNull(7, Types.INTEGER);
+            }
+            stmt.setString(8, FormatUtils.formatDateForDatabase(expiryDate));
+            stmt.setInt(9, warehouseId);
             stmt.executeUpdate();
         }
     }
@@ -539,7 +1479,7 @@ public class ImprovedDataManager {
     public void updateAccountBalance(int accountId, double amount, Connection conn) throws SQLException {
         String query = "UPDATE financial_accounts SET current_balance = current_balance + ?, updated_at = CURRENT_TIMESTAMP WHERE account_id = ?";
         try (PreparedStatement stmt = conn.prepareStatement(query)) {
-            stmt.setDouble(1, amount);
+            stmt.setLong(1, Money.toMinor(amount));
             stmt.setInt(2, accountId);
             int rowsAffected = stmt.executeUpdate();
             if (rowsAffected == 0) {
@@ -555,8 +1495,8 @@ public class ImprovedDataManager {
     	String query = """
     			INSERT INTO financial_transactions (account_id, transaction_date, transaction_type, 
                    description, amount, related_contact_id, 
-                   related_purchase_id, related_sale_id, reference_number)
-    			VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)
+                   related_purchase_id, related_sale_id, reference_number, season_id)
+    			VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
     			""";
 
     	try (PreparedStatement stmt = conn.prepareStatement(query)) {
@@ -580,6 +1520,7 @@ public class ImprovedDataManager {
     			}
 
     			stmt.setString(9, referenceNumber);
+    			SeasonResolver.bindSeason(stmt, 10, conn, date);
 
     			stmt.executeUpdate();
     	}
@@ -588,12 +1529,14 @@ public class ImprovedDataManager {
     public void addLedgerEntry(Connection conn, String transactionRef, LocalDate entryDate,
             int accountId, double debit, double credit, String description, String sourceType, Integer sourceId, String transactionType) throws SQLException {
     	String sql = "INSERT INTO general_ledger (transaction_ref, entry_date, account_id, debit, credit, description, source_type, source_id, transaction_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        // تقارير الشهر والموسم تربط تاريخ القيد بـ date_dim
+        DateDimension.ensureCovers(conn, entryDate);
     	try (PreparedStatement stmt = conn.prepareStatement(sql)) {
     		stmt.setString(1, transactionRef);
     		stmt.setString(2, FormatUtils.formatDateForDatabase(entryDate));
     		stmt.setInt(3, accountId);
-    		stmt.setDouble(4, debit);
-    		stmt.setDouble(5, credit);
+    		stmt.setLong(4, Money.toMinor(debit));
+    		stmt.setLong(5, Money.toMinor(credit));
     		stmt.setString(6, description);
             stmt.setString(7, sourceType);
             if (sourceId != null) {
@@ -614,7 +1557,7 @@ public class ImprovedDataManager {
      * @throws SQLException
      */
     private void createDefaultAccounts(Connection conn) throws SQLException {
-        String sql = "INSERT OR IGNORE INTO financial_accounts (account_id, account_name, account_type, is_active, opening_balance, opening_balance_date) VALUES (?, ?, ?, 1, 0.0, ?)";
+        String sql = "INSERT OR IGNORE INTO financial_accounts (account_id, account_name, account_type, is_active, opening_balance, opening_balance_date) VALUES (?, ?, ?, 1, 0, ?)";
         
         // تاريخ اليوم كرصيد افتتاحي
         String today = FormatUtils.formatDateForDatabase(LocalDate.now());
@@ -673,6 +1616,12 @@ public class ImprovedDataManager {
             instance.shutdown();
             instance = null;
         }
+        bootstrap = null;
+        SeasonResolver.invalidate();
+        CreditControlService.invalidate();
+        DateDimension.invalidate();
+        AccountDirectory.invalidate();
+        PeriodLock.invalidate();
         if (dataSource != null) {
             dataSource.close();
         }
@@ -684,9 +1633,63 @@ public class ImprovedDataManager {
         config.setPoolName("TestPool"); // Use a different pool name for tests
 
         dataSource = new HikariDataSource(config);
+        connections = new InstrumentedDataSource(dataSource);
+        registerPoolGauges();
         LOGGER.info("DataSource configured for testing with URL: " + testJdbcUrl);
     }
 
+    /**
+     * ترحيل كل سطور قيد واحد بجملة إدراج واحدة منفذة دفعة (executeBatch)، بدلاً من جملة لكل سطر.
+     * المبالغ بالقروش، والمصفوفات متوازية وطولها الفعال count
+     */
+    public void addLedgerEntries(Connection conn, String transactionRef, LocalDate entryDate, int[] accountIds,
+            long[] debits, long[] credits, String[] descriptions, int count,
+            String sourceType, Integer sourceId, String transactionType) throws SQLException {
+        String sql = "INSERT INTO general_ledger (transaction_ref, entry_date, account_id, debit, credit, description, source_type, source_id, transaction_type) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        DateDimension.ensureCovers(conn, entryDate);
+        String date = FormatUtils.formatDateForDatabase(entryDate);
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < count; i++) {
+                stmt.setString(1, transactionRef);
+                stmt.setString(2, date);
+                stmt.setInt(3, accountIds[i]);
+                stmt.setLong(4, debits[i]);
+                stmt.setLong(5, credits[i]);
+                stmt.setString(6, descriptions[i]);
+                stmt.setString(7, sourceType);
+                if (sourceId != null) {
+                    stmt.setInt(8, sourceId);
+                } else {
+                    stmt.setNull(8, Types.INTEGER);
+                }
+                stmt.setString(9, transactionType);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+        LOGGER.info("تم إضافة قيد دفتر الأستاذ " + transactionRef + " (" + count + " سطر)");
+    }
+
+    /**
+     * تحديث أرصدة عدة حسابات دفعة واحدة؛ الفروق بالقروش، وكل حساب مرة واحدة
+     */
+    public void updateAccountBalances(Connection conn, int[] accountIds, long[] deltas, int count) throws SQLException {
+        String query = "UPDATE financial_accounts SET current_balance = current_balance + ?, updated_at = CURRENT_TIMESTAMP WHERE account_id = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(query)) {
+            for (int i = 0; i < count; i++) {
+                stmt.setLong(1, deltas[i]);
+                stmt.setInt(2, accountIds[i]);
+                stmt.addBatch();
+            }
+            int[] updated = stmt.executeBatch();
+            for (int i = 0; i < updated.length; i++) {
+                if (updated[i] == 0) {
+                    throw new SQLException("لم يتم العثور على الحساب المالي رقم: " + accountIds[i]);
+                }
+            }
+        }
+    }
+
     // This is the old method, we'll keep it for now to avoid breaking other parts of the code
     // that might not pass the source type and id. We can phase it out later.
     public void addLedgerEntry(Connection conn, String transactionRef, LocalDate entryDate,
@@ -700,7 +1703,7 @@ public class ImprovedDataManager {
             stmt.setInt(1, accountId);
             try (ResultSet rs = stmt.executeQuery()) {
                 if (rs.next()) {
-                    return rs.getDouble("total");
+                    return Money.getAmount(rs, "total");
                 }
             }
         }
@@ -727,10 +1730,10 @@ public class ImprovedDataManager {
                     entries.add(new accounting.model.LedgerEntry(
                         rs.getInt("entry_id"),
                         rs.getString("transaction_ref"),
-                        LocalDate.parse(rs.getString("entry_date"), accounting.formatter.FormatUtils.DATE_FORMATTER),
+                        FormatUtils.parseDateFromDatabase(rs.getString("entry_date")),
                         rs.getInt("account_id"),
-                        rs.getDouble("debit"),
-                        rs.getDouble("credit"),
+                        Money.getAmount(rs, "debit"),
+                        Money.getAmount(rs, "credit"),
                         rs.getString("description"),
                         rs.getString("source_type"),
                         rs.getInt("source_id")
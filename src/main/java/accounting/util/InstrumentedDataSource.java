@@ -0,0 +1,94 @@
+package accounting.util;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+
+/**
+ * مصدر اتصالات يغلف التجميع ويقيس كل استعلام في QueryMetrics
+ *
+ * الاتصال والعبارات ونتائج الاستعلام تُغلف بأصناف تمرر كل الاستدعاءات مباشرة
+ * (InstrumentedConnection وInstrumentedStatement وInstrumentedResultSet) وتضيف فقط قياس الزمن
+ * وعدد الصفوف وأنواع المعاملات المربوطة.
+ * عند إيقاف التتبع يعيد الاتصالات من التجميع بدون تغليف.
+ */
+public final class InstrumentedDataSource implements DataSource {
+
+    private final DataSource target;
+    private final QueryMetrics metrics;
+
+    public InstrumentedDataSource(DataSource target) {
+        this(target, QueryMetrics.getInstance());
+    }
+
+    InstrumentedDataSource(DataSource target, QueryMetrics metrics) {
+        this.target = target;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (!metrics.isEnabled()) {
+            return target.getConnection();
+        }
+        ConnectionWaitEvent event = new ConnectionWaitEvent();
+        event.begin();
+        long started = System.nanoTime();
+        Connection connection = target.getConnection();
+        metrics.recordPoolWait(System.nanoTime() - started);
+        event.commit();
+        return new InstrumentedConnection(connection, metrics);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        if (!metrics.isEnabled()) {
+            return target.getConnection(username, password);
+        }
+        ConnectionWaitEvent event = new ConnectionWaitEvent();
+        event.begin();
+        long started = System.nanoTime();
+        Connection connection = target.getConnection(username, password);
+        metrics.recordPoolWait(System.nanoTime() - started);
+        event.commit();
+        return new InstrumentedConnection(connection, metrics);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return target.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        target.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        target.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return target.getLoginTimeout();
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return target.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(target) ? iface.cast(target) : target.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(target) || target.isWrapperFor(iface);
+    }
+}
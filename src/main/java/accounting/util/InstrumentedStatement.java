@@ -0,0 +1,429 @@
+package accounting.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * عبارة تمرر كل الاستدعاءات كما هي وتقيس كل تنفيذ في QueryMetrics. زمن الاستعلام يُحسب من
+ * التنفيذ حتى انتهاء صفوفه أو إغلاق نتيجته أو العبارة، لأن SQLite ينفذ الخطوات أثناء next()
+ */
+class InstrumentedStatement<S extends Statement> implements Statement {
+
+    /** تنفيذ يُقاس؛ استدعاء العبارة الأصلية */
+    @FunctionalInterface
+    interface Execution<T> {
+        T run() throws SQLException;
+    }
+
+    /** أقصى رقم معامل يُحفظ نوعه */
+    private static final int MAX_PARAMETERS = 999;
+
+    final S delegate;
+    final String preparedSql;
+    private final Connection connection;
+    private final QueryMetrics metrics;
+    private int[] parameterCodes = ParameterShape.NONE;
+    private int parameterCount;
+    /** المصفوفة مسلمة لاستعلام مفتوح، فتُنسخ قبل أول تعديل بعده */
+    private boolean parameterCodesShared;
+    private QueryTimer openQuery;
+
+    InstrumentedStatement(S delegate, Connection connection, QueryMetrics metrics, String preparedSql) {
+        this.delegate = delegate;
+        this.connection = connection;
+        this.metrics = metrics;
+        this.preparedSql = preparedSql;
+    }
+
+    final void remember(int parameterIndex, int code) {
+        if (parameterIndex < 1 || parameterIndex > MAX_PARAMETERS) {
+            return;
+        }
+        if (parameterCodesShared || parameterIndex > parameterCodes.length) {
+            int length = Math.max(parameterIndex, Math.max(parameterCodes.length, 8));
+            parameterCodes = Arrays.copyOf(parameterCodes, Math.min(length, MAX_PARAMETERS));
+            parameterCodesShared = false;
+        }
+        parameterCodes[parameterIndex - 1] = code;
+        parameterCount = Math.max(parameterCount, parameterIndex);
+    }
+
+    final void forgetParameters() {
+        if (parameterCodesShared) {
+            parameterCodes = ParameterShape.NONE;
+            parameterCodesShared = false;
+        } else {
+            Arrays.fill(parameterCodes, 0, parameterCount, 0);
+        }
+        parameterCount = 0;
+    }
+
+    final ResultSet query(String sql, Execution<ResultSet> execution) throws SQLException {
+        finishOpenQuery();
+        long started = System.nanoTime();
+        ResultSet resultSet;
+        try {
+            resultSet = execution.run();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordExecution(sql, System.nanoTime() - started, 0, true, parameterCodes, parameterCount);
+            throw e;
+        }
+        parameterCodesShared = true;
+        openQuery = new QueryTimer(metrics, sql, parameterCodes, parameterCount, started);
+        return new InstrumentedResultSet(resultSet, this, openQuery);
+    }
+
+    final <T> T update(String sql, Execution<T> execution) throws SQLException {
+        finishOpenQuery();
+        long started = System.nanoTime();
+        T result;
+        try {
+            result = execution.run();
+        } catch (SQLException | RuntimeException e) {
+            metrics.recordExecution(sql, System.nanoTime() - started, 0, true, parameterCodes, parameterCount);
+            throw e;
+        }
+        metrics.recordExecution(sql, System.nanoTime() - started, updatedRows(result), false, parameterCodes, parameterCount);
+        return result;
+    }
+
+    private void finishOpenQuery() {
+        if (openQuery != null) {
+            openQuery.finish();
+            openQuery = null;
+        }
+    }
+
+    private static long updatedRows(Object result) {
+        if (result instanceof Integer count) {
+            return count;
+        }
+        if (result instanceof Long count) {
+            return count;
+        }
+        if (result instanceof int[] counts) {
+            return Arrays.stream(counts).filter(c -> c > 0).asLongStream().sum();
+        }
+        if (result instanceof long[] counts) {
+            return Arrays.stream(counts).filter(c -> c > 0).sum();
+        }
+        return 0;
+    }
+
+    /**
+     * استعلام مفتوح: يُسجل مرة واحدة عند انتهاء الصفوف أو إغلاق النتيجة أو العبارة
+     */
+    static final class QueryTimer {
+        private final QueryMetrics metrics;
+        private final String sql;
+        private final int[] parameterCodes;
+        private final int parameterCount;
+        private final long started;
+        private long rows;
+        private boolean finished;
+
+        QueryTimer(QueryMetrics metrics, String sql, int[] parameterCodes, int parameterCount, long started) {
+            this.metrics = metrics;
+            this.sql = sql;
+            this.parameterCodes = parameterCodes;
+            this.parameterCount = parameterCount;
+            this.started = started;
+        }
+
+        void countRow() {
+            rows++;
+        }
+
+        void finish() {
+            if (!finished) {
+                finished = true;
+                metrics.recordExecution(sql, System.nanoTime() - started, rows, false, parameterCodes, parameterCount);
+            }
+        }
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return query(sql, () -> delegate.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return update(sql, () -> delegate.executeUpdate(sql));
+    }
+
+    @Override
+    public void close() throws SQLException {
+        finishOpenQuery();
+        delegate.close();
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return delegate.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        delegate.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return delegate.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        delegate.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        delegate.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return delegate.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        delegate.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        delegate.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        delegate.setCursorName(name);
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return update(sql, () -> delegate.execute(sql));
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return delegate.getResultSet();
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return delegate.getUpdateCount();
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        return delegate.getMoreResults();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        delegate.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return delegate.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        delegate.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return delegate.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return delegate.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return delegate.getResultSetType();
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        delegate.addBatch(sql);
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        delegate.clearBatch();
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        return update(preparedSql, () -> delegate.executeBatch());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        return delegate.getMoreResults(current);
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return delegate.getGeneratedKeys();
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return update(sql, () -> delegate.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return update(sql, () -> delegate.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return update(sql, () -> delegate.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return update(sql, () -> delegate.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return update(sql, () -> delegate.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return update(sql, () -> delegate.execute(sql, columnNames));
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return delegate.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        delegate.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return delegate.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        delegate.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return delegate.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return delegate.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        delegate.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return delegate.getLargeMaxRows();
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        return update(preparedSql, () -> delegate.executeLargeBatch());
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        return update(sql, () -> delegate.executeLargeUpdate(sql));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return update(sql, () -> delegate.executeLargeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return update(sql, () -> delegate.executeLargeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        return update(sql, () -> delegate.executeLargeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public String enquoteLiteral(String val) throws SQLException {
+        return delegate.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+        return delegate.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(String identifier) throws SQLException {
+        return delegate.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(String val) throws SQLException {
+        return delegate.enquoteNCharLiteral(val);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(delegate) ? iface.cast(delegate) : delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+    }
+}
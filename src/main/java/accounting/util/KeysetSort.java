@@ -0,0 +1,70 @@
+package accounting.util;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * أعمدة الترتيب المسموح بها لاستعلام مُصفح، وبناء ذيل SQL للصفحة منها.
+ *
+ * مفاتيح الترتيب تأتي من الواجهة فلا تدخل SQL مباشرة: كل مفتاح مربوط بتعبير ثابت هنا.
+ * يُضاف رقم الصف (idColumn) دائماً كترتيب ثانوي ليكون الترتيب كاملاً ويصلح كمفتاح keyset.
+ * التعبيرات التي قد تكون NULL تُكتب مع COALESCE لأن مقارنة الصفوف في SQLite مع NULL لا تصح.
+ */
+public final class KeysetSort<T> {
+
+    private record Column<T>(String expression, Function<T, Object> valueOf) {
+    }
+
+    private final String idColumn;
+    private final Function<T, Object> idOf;
+    private final Map<String, Column<T>> columns = new LinkedHashMap<>();
+    private String defaultKey;
+    private boolean defaultAscending = true;
+
+    public KeysetSort(String idColumn, Function<T, Object> idOf) {
+        this.idColumn = idColumn;
+        this.idOf = idOf;
+    }
+
+    public KeysetSort<T> column(String key, String expression, Function<T, Object> valueOf) {
+        columns.put(key, new Column<>(expression, valueOf));
+        if (defaultKey == null) {
+            defaultKey = key;
+        }
+        return this;
+    }
+
+    public KeysetSort<T> byDefault(String key, boolean ascending) {
+        if (!columns.containsKey(key)) {
+            throw new IllegalArgumentException("Unknown sort key: " + key);
+        }
+        this.defaultKey = key;
+        this.defaultAscending = ascending;
+        return this;
+    }
+
+    /**
+     * يضيف شرط keyset (إن وُجد after) ثم ORDER BY و LIMIT/OFFSET.
+     * يُفترض أن sql ينتهي بشرط WHERE يمكن إلحاق AND به.
+     */
+    public void appendPage(StringBuilder sql, List<Object> parameters, PageRequest<T> page) {
+        String key = page.sortKey() != null && columns.containsKey(page.sortKey()) ? page.sortKey() : defaultKey;
+        boolean ascending = key.equals(page.sortKey()) ? page.ascending() : defaultAscending;
+        Column<T> column = columns.get(key);
+        String direction = ascending ? "ASC" : "DESC";
+
+        if (page.after() != null) {
+            sql.append(" AND (").append(column.expression()).append(", ").append(idColumn).append(")")
+               .append(ascending ? " > " : " < ").append("(?, ?)");
+            parameters.add(column.valueOf().apply(page.after()));
+            parameters.add(idOf.apply(page.after()));
+        }
+        sql.append(" ORDER BY ").append(column.expression()).append(' ').append(direction)
+           .append(", ").append(idColumn).append(' ').append(direction)
+           .append(" LIMIT ? OFFSET ?");
+        parameters.add(page.limit());
+        parameters.add(page.after() != null ? 0L : page.offset());
+    }
+}
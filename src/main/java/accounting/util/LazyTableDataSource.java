@@ -0,0 +1,319 @@
+package accounting.util;
+
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * مصدر بيانات لجدول TableView يجلب الصفوف صفحةً صفحة عند ظهورها فقط.
+ *
+ * قائمة العناصر التي يراها الجدول حجمها عدد الصفوف الكلي (استعلام COUNT)، لكنها لا تحمل
+ * إلا نافذة محدودة من الصفحات الأحدث استخداماً. عندما يطلب الجدول صفاً غير محمل تُعاد null
+ * (صف فارغ مؤقتاً) وتُجلب صفحته في الخلفية ثم يُعاد رسم صفوفها. الذاكرة ثابتة مهما كان
+ * عدد الصفوف: maxCachedPages × pageSize صفاً على الأكثر.
+ *
+ * الترتيب بالنقر على رأس العمود يُرسل إلى SQL عبر مفتاح العمود (sortable)؛ الأعمدة غير
+ * المسجلة لا تقبل الترتيب. المجاميع لا تُحسب من الصفوف هنا بل باستعلامات تجميع منفصلة.
+ *
+ * الصفحة التي فشل جلبها تبقى صفوفاً فارغة ولا يُعاد طلبها حتى refresh()، فلا يتكرر الاستعلام
+ * المعطوب ورسالة الخطأ مع كل رسم للجدول. نتائج الطلبات السابقة لآخر refresh() تُهمل، نجحت أو فشلت.
+ *
+ * كل الحالة تُعدل في خيط الواجهة؛ الجلب فقط في خيط الخلفية.
+ */
+public class LazyTableDataSource<T> {
+
+    /**
+     * جلب صفحة لمجموعة فلاتر محددة؛ يُنشأ من جديد عند تغير الفلاتر
+     */
+    @FunctionalInterface
+    public interface RowSource<T> {
+        List<T> fetch(PageRequest<T> request) throws Exception;
+    }
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    public static final int DEFAULT_CACHED_PAGES = 20;
+    /** حد مفاتيح keyset المحفوظة لأطراف الصفحات؛ بعده يُستخدم offset للصفحات البعيدة */
+    private static final int MAX_PAGE_TAILS = 4096;
+
+    /** خيط جلب واحد مشترك بين كل الجداول؛ SQLite يخدم قارئاً واحداً بكفاءة أعلى من عدة قراء */
+    private static ExecutorService sharedLoader;
+
+    private final int pageSize;
+    private final int maxCachedPages;
+    private final Executor loader;
+    private final Executor uiThread;
+    private final Rows rows = new Rows();
+    private final Map<Integer, List<T>> pages;
+    private final Map<Integer, T> pageTails;
+    private final Set<Integer> pending = new HashSet<>();
+    private final Set<Integer> failed = new HashSet<>();
+    private final Map<TableColumn<T, ?>, String> sortKeys = new HashMap<>();
+    private final ReadOnlyIntegerWrapper rowCount = new ReadOnlyIntegerWrapper(0);
+
+    private TableView<T> table;
+    private Callable<Long> counter;
+    private RowSource<T> source;
+    private long generation;
+    private String sortKey;
+    private boolean ascending = true;
+    private Consumer<Throwable> onFailed = error -> ErrorHandler.showException("خطأ في تحميل البيانات",
+        "فشل تحميل صفوف الجدول.", error instanceof Exception e ? e : new RuntimeException(error));
+
+    public LazyTableDataSource() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES, sharedLoader(), Platform::runLater);
+    }
+
+    /**
+     * @param loader   منفذ الاستعلامات (خيط خلفي)
+     * @param uiThread منفذ تطبيق النتائج (خيط الواجهة)
+     */
+    public LazyTableDataSource(int pageSize, int maxCachedPages, Executor loader, Executor uiThread) {
+        this.pageSize = pageSize;
+        this.maxCachedPages = maxCachedPages;
+        this.loader = loader;
+        this.uiThread = uiThread;
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<T>> eldest) {
+                return size() > LazyTableDataSource.this.maxCachedPages;
+            }
+        };
+        this.pageTails = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+                return size() > MAX_PAGE_TAILS;
+            }
+        };
+    }
+
+    private static synchronized ExecutorService sharedLoader() {
+        if (sharedLoader == null) {
+            sharedLoader = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "lazy-table-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedLoader;
+    }
+
+    /**
+     * ربط الجدول بالمصدر ونقل الترتيب من مقارنة العناصر في الذاكرة إلى SQL
+     */
+    public void bind(TableView<T> table) {
+        this.table = table;
+        table.setItems(rows);
+        table.setSortPolicy(view -> {
+            List<TableColumn<T, ?>> order = view.getSortOrder();
+            String key = null;
+            boolean asc = true;
+            if (!order.isEmpty()) {
+                TableColumn<T, ?> column = order.get(0);
+                key = sortKeys.get(column);
+                if (key == null) {
+                    return false;
+                }
+                asc = column.getSortType() == TableColumn.SortType.ASCENDING;
+            }
+            if (!Objects.equals(key, sortKey) || asc != ascending) {
+                sortKey = key;
+                ascending = asc;
+                refresh();
+            }
+            return true;
+        });
+        for (TableColumn<T, ?> column : table.getColumns()) {
+            column.setSortable(sortKeys.containsKey(column));
+        }
+    }
+
+    /**
+     * تسجيل عمود قابل للترتيب بمفتاح الترتيب الذي تعرفه الخدمة. يُستدعى قبل bind.
+     */
+    public LazyTableDataSource<T> sortable(TableColumn<T, ?> column, String key) {
+        sortKeys.put(column, key);
+        column.setSortable(true);
+        return this;
+    }
+
+    public void setOnFailed(Consumer<Throwable> onFailed) {
+        this.onFailed = onFailed;
+    }
+
+    public ObservableList<T> getRows() {
+        return rows;
+    }
+
+    public ReadOnlyIntegerProperty rowCountProperty() {
+        return rowCount.getReadOnlyProperty();
+    }
+
+    /**
+     * استبدال المصدر (فلاتر جديدة) وإعادة العد
+     *
+     * @param counter استعلام COUNT لنفس الفلاتر
+     * @param rows    جلب صفحة من النتيجة
+     */
+    public void load(Callable<Long> counter, RowSource<T> rows) {
+        this.counter = counter;
+        this.source = rows;
+        refresh();
+    }
+
+    /**
+     * إعادة العد وإسقاط الصفحات المحملة مع إبقاء نفس المصدر (بعد إضافة أو حذف مستند)
+     */
+    public void refresh() {
+        if (source == null) {
+            return;
+        }
+        long requestGeneration = ++generation;
+        pages.clear();
+        pageTails.clear();
+        pending.clear();
+        failed.clear();
+        Callable<Long> countQuery = counter;
+        loader.execute(() -> {
+            try {
+                long total = countQuery.call();
+                uiThread.execute(() -> {
+                    if (requestGeneration == generation) {
+                        rows.resize((int) Math.min(Integer.MAX_VALUE, total));
+                    }
+                });
+            } catch (Exception e) {
+                uiThread.execute(() -> {
+                    if (requestGeneration == generation) {
+                        onFailed.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    /** عدد الصفوف المحملة في الذاكرة حالياً */
+    int cachedRowCount() {
+        return pages.values().stream().mapToInt(List::size).sum();
+    }
+
+    private T rowAt(int index) {
+        int page = index / pageSize;
+        List<T> rowsOfPage = pages.get(page);
+        if (rowsOfPage == null) {
+            requestPage(page);
+            // قد تكتمل الصفحة فوراً إذا كان المنفذ متزامناً
+            rowsOfPage = pages.get(page);
+            if (rowsOfPage == null) {
+                return null;
+            }
+        }
+        int offsetInPage = index - page * pageSize;
+        return offsetInPage < rowsOfPage.size() ? rowsOfPage.get(offsetInPage) : null;
+    }
+
+    private void requestPage(int page) {
+        if (source == null || failed.contains(page) || !pending.add(page)) {
+            return;
+        }
+        T after = page > 0 ? pageTails.get(page - 1) : null;
+        PageRequest<T> request = new PageRequest<>(after, (long) page * pageSize, pageSize, sortKey, ascending);
+        long requestGeneration = generation;
+        RowSource<T> pageSource = source;
+        loader.execute(() -> {
+            try {
+                List<T> fetched = pageSource.fetch(request);
+                uiThread.execute(() -> {
+                    if (requestGeneration == generation) {
+                        pending.remove(page);
+                        applyPage(page, fetched);
+                    }
+                });
+            } catch (Exception e) {
+                uiThread.execute(() -> {
+                    if (requestGeneration == generation) {
+                        pending.remove(page);
+                        failed.add(page);
+                        onFailed.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private void applyPage(int page, List<T> fetched) {
+        pages.put(page, fetched);
+        if (!fetched.isEmpty()) {
+            pageTails.put(page, fetched.get(fetched.size() - 1));
+        }
+        int from = page * pageSize;
+        int to = Math.min(rows.size(), from + fetched.size());
+        if (from < to) {
+            rows.replaced(from, to);
+        }
+    }
+
+    /**
+     * القائمة التي يراها الجدول: الحجم الكلي، والعناصر من نافذة الصفحات
+     */
+    private final class Rows extends ObservableListBase<T> {
+        private int size;
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return rowAt(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        /**
+         * تُبلغ بفرق الحجم فقط؛ الصفوف الباقية أُسقطت صفحاتها فيُعاد رسم الظاهر منها
+         */
+        void resize(int newSize) {
+            int oldSize = size;
+            size = newSize;
+            rowCount.set(newSize);
+            if (newSize != oldSize) {
+                beginChange();
+                if (newSize < oldSize) {
+                    nextRemove(newSize, Collections.nCopies(oldSize - newSize, null));
+                } else {
+                    nextAdd(oldSize, newSize);
+                }
+                endChange();
+            }
+            if (table != null) {
+                table.refresh();
+            }
+        }
+
+        void replaced(int from, int to) {
+            beginChange();
+            nextReplace(from, to, Collections.nCopies(to - from, null));
+            endChange();
+        }
+    }
+}
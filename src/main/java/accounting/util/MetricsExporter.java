@@ -0,0 +1,232 @@
+package accounting.util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * تصدير مقاييس التطبيق (AppMetrics) ومقاييس الاستعلامات (QueryMetrics)
+ *
+ * بصيغة Prometheus النصية أو JSON، إلى ملف يُحدث دورياً وعند الإغلاق، وعبر نقطة
+ * HTTP محلية اختيارية (127.0.0.1 فقط) على /metrics و /metrics.json.
+ *
+ * الإعدادات من خصائص النظام:
+ *   accounting.metrics.file=application_metrics.json  (none لإيقاف الملف؛ امتداد .prom لصيغة Prometheus)
+ *   accounting.metrics.port=9464                       (بدون قيمة لا تُفتح النقطة)
+ */
+public final class MetricsExporter {
+
+    private static final Logger LOGGER = Logger.getLogger(MetricsExporter.class.getName());
+    private static final String PREFIX = "agri_";
+    /** أكثر بصمات الاستعلامات كلفة فقط، حتى يبقى حجم التصدير ثابتاً */
+    private static final int MAX_EXPORTED_QUERIES = 50;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private static ScheduledExecutorService fileWriter;
+    private static HttpServer httpServer;
+
+    private MetricsExporter() {
+    }
+
+    /**
+     * تشغيل التصدير حسب خصائص النظام (يُستدعى مرة عند بدء التطبيق)
+     */
+    public static synchronized void start() {
+        String file = System.getProperty("accounting.metrics.file", "application_metrics.json");
+        if (fileWriter == null && !"none".equalsIgnoreCase(file)) {
+            Path path = Path.of(file);
+            fileWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-file-writer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            fileWriter.scheduleAtFixedRate(() -> writeQuietly(path), 1, 1, TimeUnit.MINUTES);
+        }
+
+        Integer port = Integer.getInteger("accounting.metrics.port");
+        if (httpServer == null && port != null) {
+            try {
+                startHttpEndpoint(port);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to start metrics endpoint on port " + port, e);
+            }
+        }
+    }
+
+    /**
+     * إيقاف التصدير مع كتابة الملف مرة أخيرة
+     */
+    public static synchronized void stop() {
+        if (fileWriter != null) {
+            fileWriter.shutdownNow();
+            fileWriter = null;
+            writeQuietly(Path.of(System.getProperty("accounting.metrics.file", "application_metrics.json")));
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    public static synchronized int startHttpEndpoint(int port) throws IOException {
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        httpServer.createContext("/metrics", exchange -> {
+            boolean json = exchange.getRequestURI().getPath().endsWith(".json");
+            respond(exchange, json ? toJson() : toPrometheus(),
+                json ? "application/json; charset=utf-8" : "text/plain; version=0.0.4; charset=utf-8");
+        });
+        httpServer.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-endpoint");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        httpServer.start();
+        LOGGER.info("Metrics endpoint listening on http://127.0.0.1:" + httpServer.getAddress().getPort() + "/metrics");
+        return httpServer.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String body, String contentType) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * كتابة التصدير إلى ملف (بشكل ذري عبر ملف مؤقت)؛ الامتداد .prom يعني صيغة Prometheus
+     */
+    public static void writeTo(Path path) throws IOException {
+        String content = path.toString().endsWith(".prom") ? toPrometheus() : toJson();
+        Path absolute = path.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeQuietly(Path path) {
+        try {
+            writeTo(path);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to write metrics file " + path, e);
+        }
+    }
+
+    public static String toPrometheus() {
+        AppMetrics metrics = AppMetrics.getInstance();
+        StringBuilder out = new StringBuilder(4096);
+
+        for (Map.Entry<String, AppMetrics.Counter> entry : metrics.getCounters().entrySet()) {
+            String name = PREFIX + sanitize(entry.getKey()) + "_total";
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(entry.getValue().get()).append('\n');
+        }
+        for (Map.Entry<String, AppMetrics.Timer> entry : metrics.getTimers().entrySet()) {
+            String name = PREFIX + sanitize(entry.getKey()) + "_seconds";
+            AppMetrics.Timer timer = entry.getValue();
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(number(timer.getPercentileSeconds(quantile * 100))).append('\n');
+            }
+            out.append(name).append("_sum ").append(number(timer.getTotalSeconds())).append('\n');
+            out.append(name).append("_count ").append(timer.getCount()).append('\n');
+        }
+        for (Map.Entry<String, Double> entry : metrics.readGauges().entrySet()) {
+            String name = PREFIX + sanitize(entry.getKey());
+            out.append("# TYPE ").append(name).append(" gauge\n");
+            out.append(name).append(' ').append(number(entry.getValue())).append('\n');
+        }
+
+        List<QueryMetrics.QueryStats> queries = QueryMetrics.getInstance().getQueryStats();
+        if (!queries.isEmpty()) {
+            String name = PREFIX + "sql_query_seconds";
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (QueryMetrics.QueryStats query : queries.subList(0, Math.min(MAX_EXPORTED_QUERIES, queries.size()))) {
+                String label = "{query=\"" + escapeLabel(query.getSql()) + "\"}";
+                out.append(name).append("_sum").append(label).append(' ').append(number(query.getTotalMillis() / 1000.0)).append('\n');
+                out.append(name).append("_count").append(label).append(' ').append(query.getCount()).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    public static String toJson() {
+        AppMetrics metrics = AppMetrics.getInstance();
+        JsonObject root = new JsonObject();
+        root.addProperty("timestamp", Instant.now().toString());
+
+        JsonObject counters = new JsonObject();
+        metrics.getCounters().forEach((name, counter) -> counters.addProperty(name, counter.get()));
+        root.add("counters", counters);
+
+        JsonObject timers = new JsonObject();
+        metrics.getTimers().forEach((name, timer) -> {
+            JsonObject json = new JsonObject();
+            json.addProperty("count", timer.getCount());
+            json.addProperty("totalSeconds", timer.getTotalSeconds());
+            json.addProperty("p50Seconds", timer.getPercentileSeconds(50));
+            json.addProperty("p95Seconds", timer.getPercentileSeconds(95));
+            json.addProperty("p99Seconds", timer.getPercentileSeconds(99));
+            json.addProperty("maxSeconds", timer.getMaxSeconds());
+            timers.add(name, json);
+        });
+        root.add("timers", timers);
+
+        JsonObject gauges = new JsonObject();
+        metrics.readGauges().forEach(gauges::addProperty);
+        root.add("gauges", gauges);
+
+        JsonArray queries = new JsonArray();
+        List<QueryMetrics.QueryStats> stats = QueryMetrics.getInstance().getQueryStats();
+        for (QueryMetrics.QueryStats query : stats.subList(0, Math.min(MAX_EXPORTED_QUERIES, stats.size()))) {
+            JsonObject json = new JsonObject();
+            json.addProperty("sql", query.getSql());
+            json.addProperty("count", query.getCount());
+            json.addProperty("totalMillis", query.getTotalMillis());
+            json.addProperty("p95Millis", query.getP95Millis());
+            json.addProperty("maxMillis", query.getMaxMillis());
+            json.addProperty("rows", query.getRows());
+            json.addProperty("errors", query.getErrors());
+            queries.add(json);
+        }
+        root.add("queries", queries);
+
+        Gson gson = new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create();
+        return gson.toJson(root);
+    }
+
+    private static String sanitize(String name) {
+        return name.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", " ");
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.US, "%.6f", value);
+    }
+}
@@ -0,0 +1,155 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * المبالغ بالقروش (الوحدة الصغرى) في long بدلاً من double بالجنيه.
+ *
+ * أعمدة الدفتر والأرصدة INTEGER بالقروش، فالجمع في SQL وفي Java دقيق لا يترك بواقي تقريب،
+ * وفحص مثل HAVING balance != 0 يعني صفراً فعلاً. التحويل من double يقرب مرة واحدة عند
+ * حدود الترحيل (نصف القرش بعيداً عن الصفر)، والقراءة تعيد الجنيه للنماذج والواجهة.
+ *
+ * الحساب اليومي على long بالدوال الثابتة دون أي إنشاء كائنات؛ القيمة Money نفسها للمواضع
+ * التي تحتاج كائناً (مفاتيح، مقارنة، عرض).
+ */
+public final class Money implements Comparable<Money> {
+
+    /** قروش في الجنيه */
+    public static final long MINOR_PER_UNIT = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    /** أكبر قيمة بالجنيه يمكن تحويلها دون تجاوز long */
+    private static final double MAX_MAJOR = Long.MAX_VALUE / (double) MINOR_PER_UNIT;
+    /** هامش يزيل خطأ التمثيل الثنائي قبل التقريب: 1.005 * 100 = 100.49999999999999 */
+    private static final double BINARY_NOISE = 1e-6;
+
+    private final long minor;
+
+    private Money(long minor) {
+        this.minor = minor;
+    }
+
+    public static Money ofMinor(long minor) {
+        return minor == 0 ? ZERO : new Money(minor);
+    }
+
+    public static Money of(double amount) {
+        return ofMinor(toMinor(amount));
+    }
+
+    public long getMinor() {
+        return minor;
+    }
+
+    public double toDouble() {
+        return toMajor(minor);
+    }
+
+    public Money plus(Money other) {
+        return ofMinor(add(minor, other.minor));
+    }
+
+    public Money minus(Money other) {
+        return ofMinor(subtract(minor, other.minor));
+    }
+
+    public Money negate() {
+        return ofMinor(Math.negateExact(minor));
+    }
+
+    public boolean isZero() {
+        return minor == 0;
+    }
+
+    public int signum() {
+        return Long.signum(minor);
+    }
+
+    // ------------------------------------------------------------------
+    // الحساب على القروش مباشرة
+
+    /**
+     * تحويل مبلغ بالجنيه إلى قروش بتقريب نصف القرش بعيداً عن الصفر
+     */
+    public static long toMinor(double amount) {
+        if (!Double.isFinite(amount) || Math.abs(amount) >= MAX_MAJOR) {
+            throw new ArithmeticException("مبلغ خارج النطاق: " + amount);
+        }
+        return round(amount * MINOR_PER_UNIT);
+    }
+
+    public static double toMajor(long minor) {
+        return minor / (double) MINOR_PER_UNIT;
+    }
+
+    public static long add(long a, long b) {
+        return Math.addExact(a, b);
+    }
+
+    public static long subtract(long a, long b) {
+        return Math.subtractExact(a, b);
+    }
+
+    /**
+     * مبلغ مضروب في معامل (سعر وحدة، نسبة) ومقرب إلى القرش
+     */
+    public static long multiply(long minor, double factor) {
+        double product = minor * factor;
+        if (!Double.isFinite(product) || Math.abs(product) >= Long.MAX_VALUE) {
+            throw new ArithmeticException("مبلغ خارج النطاق: " + minor + " × " + factor);
+        }
+        return round(product);
+    }
+
+    /**
+     * نصيب جزء من مبلغ كلي بنسبة part / whole، مثل تكلفة الكمية المرتجعة من تكلفة الفاتورة
+     */
+    public static long share(long total, double part, double whole) {
+        if (whole == 0) {
+            return 0;
+        }
+        return multiply(total, part / whole);
+    }
+
+    /**
+     * قراءة عمود بالقروش (أو مجموعه) من نتيجة استعلام بالجنيه
+     */
+    public static double getAmount(ResultSet rs, String column) throws SQLException {
+        return toMajor(rs.getLong(column));
+    }
+
+    public static String format(long minor) {
+        return FormatUtils.formatCurrency(toMajor(minor));
+    }
+
+    private static long round(double scaled) {
+        long magnitude = (long) Math.floor(Math.abs(scaled) + 0.5 + BINARY_NOISE);
+        return scaled < 0 ? -magnitude : magnitude;
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minor, other.minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        return minor == ((Money) o).minor;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minor);
+    }
+
+    @Override
+    public String toString() {
+        return format(minor);
+    }
+}
@@ -0,0 +1,21 @@
+package accounting.util;
+
+/**
+ * طلب صفحة من نتيجة مرتبة.
+ *
+ * إذا عُرف آخر صف في الصفحة السابقة (after) تُقرأ الصفحة بمفتاح الترتيب بعده مباشرة
+ * (keyset) فيبقى الاستعلام سريعاً مهما بعدت الصفحة؛ وإلا يُستخدم offset، كما عند القفز
+ * بشريط التمرير إلى منتصف الجدول.
+ *
+ * @param after    آخر صف في الصفحة السابقة، أو null
+ * @param offset   عدد الصفوف المتخطاة عند غياب after
+ * @param limit    حجم الصفحة
+ * @param sortKey  مفتاح الترتيب كما تعرفه الخدمة، أو null للترتيب الافتراضي
+ * @param ascending اتجاه الترتيب (يُتجاهل مع الترتيب الافتراضي)
+ */
+public record PageRequest<T>(T after, long offset, int limit, String sortKey, boolean ascending) {
+
+    public static <T> PageRequest<T> first(int limit) {
+        return new PageRequest<>(null, 0, limit, null, true);
+    }
+}
@@ -0,0 +1,100 @@
+package accounting.util;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * أنواع المعاملات المربوطة كأرقام صغيرة: النوع في أدنى خمس بتات والطول (للنص والبيانات الثنائية)
+ * فوقها. العبارة تحفظ رقماً لكل معامل، ولا يُبنى النص "[TEXT(8), INTEGER]" إلا لاستعلام بطيء.
+ * الصفر معامل لم يُربط.
+ */
+final class ParameterShape {
+
+    enum Kind {
+        UNSET, NULL, INTEGER, REAL, TEXT, BLOB, DATE, TIME, TIMESTAMP, STREAM, CLOB, ARRAY, OBJECT
+    }
+
+    static final int[] NONE = new int[0];
+
+    private static final int KIND_BITS = 5;
+    private static final int KIND_MASK = (1 << KIND_BITS) - 1;
+    private static final int MAX_LENGTH = Integer.MAX_VALUE >>> KIND_BITS;
+
+    static final int NULL = of(Kind.NULL);
+    static final int INTEGER = of(Kind.INTEGER);
+    static final int REAL = of(Kind.REAL);
+    static final int DATE = of(Kind.DATE);
+    static final int TIME = of(Kind.TIME);
+    static final int TIMESTAMP = of(Kind.TIMESTAMP);
+    static final int STREAM = of(Kind.STREAM);
+    static final int CLOB = of(Kind.CLOB);
+    static final int ARRAY = of(Kind.ARRAY);
+    static final int OBJECT = of(Kind.OBJECT);
+
+    private ParameterShape() {
+    }
+
+    private static int of(Kind kind) {
+        return kind.ordinal();
+    }
+
+    static int text(CharSequence value) {
+        return value == null ? NULL : Kind.TEXT.ordinal() | Math.min(value.length(), MAX_LENGTH) << KIND_BITS;
+    }
+
+    static int blob(byte[] value) {
+        return value == null ? NULL : Kind.BLOB.ordinal() | Math.min(value.length, MAX_LENGTH) << KIND_BITS;
+    }
+
+    /** رمز قيمة setObject بنفس تصنيف الدوال المحددة النوع */
+    static int classify(Object value) {
+        if (value == null) {
+            return NULL;
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte
+                || value instanceof Boolean) {
+            return INTEGER;
+        }
+        if (value instanceof Number) {
+            return REAL;
+        }
+        if (value instanceof CharSequence text) {
+            return text(text);
+        }
+        if (value instanceof byte[] bytes) {
+            return blob(bytes);
+        }
+        if (value instanceof java.sql.Timestamp || value instanceof LocalDateTime) {
+            return TIMESTAMP;
+        }
+        if (value instanceof java.sql.Date || value instanceof LocalDate) {
+            return DATE;
+        }
+        if (value instanceof java.sql.Time || value instanceof LocalTime) {
+            return TIME;
+        }
+        return OBJECT;
+    }
+
+    /** وصف أول count معاملاً، مثل [TEXT(8), INTEGER] */
+    static String describe(int[] codes, int count) {
+        StringBuilder shape = new StringBuilder(2 + count * 10).append('[');
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                shape.append(", ");
+            }
+            int code = codes[i];
+            Kind kind = Kind.values()[code & KIND_MASK];
+            if (kind == Kind.UNSET) {
+                shape.append("null");
+            } else {
+                shape.append(kind.name());
+                if (kind == Kind.TEXT || kind == Kind.BLOB) {
+                    shape.append('(').append(code >>> KIND_BITS).append(')');
+                }
+            }
+        }
+        return shape.append(']').toString();
+    }
+}
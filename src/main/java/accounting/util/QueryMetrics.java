@@ -0,0 +1,257 @@
+package accounting.util;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * مقاييس تنفيذ الاستعلامات على مستوى JDBC
+ *
+ * يجمع InstrumentedDataSource لكل بصمة استعلام (نص SQL بعد استبدال القيم الحرفية بـ ?)
+ * عدد مرات التنفيذ والزمن الكلي ومدرج الزمن والصفوف المعادة والأخطاء، إضافة إلى
+ * زمن انتظار الاتصال من التجميع. الاستعلامات التي تتجاوز حد البطء تُكتب في سجل
+ * الاستعلامات البطيئة مع أنواع المعاملات المربوطة (لا قيمها) وتُحفظ آخرها للعرض.
+ *
+ * الإعدادات من خصائص النظام:
+ *   accounting.sql.instrumentation=false  لإيقاف التتبع
+ *   accounting.sql.slowQueryMillis=250    حد الاستعلام البطيء
+ */
+public final class QueryMetrics {
+
+    private static final Logger SLOW_QUERY_LOGGER = Logger.getLogger("accounting.sql.slow");
+    private static final QueryMetrics INSTANCE = new QueryMetrics();
+
+    private static final int MAX_FINGERPRINTS = 2_000;
+    private static final int MAX_SLOW_QUERIES = 100;
+    private static final int MAX_SQL_LENGTH_IN_LOG = 2_000;
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("(?<![\\w.])-?\\d+(?:\\.\\d+)?(?![\\w.])");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)+\\s*\\)");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final Map<String, String> fingerprintCache = new ConcurrentHashMap<>();
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final LatencyHistogram poolWait = new LatencyHistogram();
+    private final ConcurrentLinkedDeque<SlowQuery> slowQueries = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger slowQueryCount = new AtomicInteger();
+
+    private volatile boolean enabled = !"false".equalsIgnoreCase(System.getProperty("accounting.sql.instrumentation"));
+    private volatile long slowQueryThresholdNanos = Long.getLong("accounting.sql.slowQueryMillis", 250L) * 1_000_000L;
+
+    private QueryMetrics() {
+    }
+
+    public static QueryMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getSlowQueryThresholdMillis() {
+        return slowQueryThresholdNanos / 1_000_000L;
+    }
+
+    public void setSlowQueryThresholdMillis(long millis) {
+        this.slowQueryThresholdNanos = Math.max(0, millis) * 1_000_000L;
+    }
+
+    /**
+     * بصمة الاستعلام: القيم الحرفية وقوائم IN تُستبدل حتى تُجمع الاستعلامات المتشابهة معاً
+     */
+    public String fingerprint(String sql) {
+        if (sql == null) {
+            return "?";
+        }
+        String cached = fingerprintCache.get(sql);
+        if (cached != null) {
+            return cached;
+        }
+        String normalized = STRING_LITERAL.matcher(sql).replaceAll("?");
+        normalized = NUMBER_LITERAL.matcher(normalized).replaceAll("?");
+        normalized = WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+        normalized = IN_LIST.matcher(normalized).replaceAll("(?+)");
+        if (fingerprintCache.size() < MAX_FINGERPRINTS) {
+            fingerprintCache.put(sql, normalized);
+        }
+        return normalized;
+    }
+
+    void recordPoolWait(long nanos) {
+        poolWait.recordNanos(nanos);
+    }
+
+    /**
+     * تسجيل تنفيذ واحد (للاستعلامات يشمل الزمن قراءة الصفوف حتى إغلاق النتيجة).
+     * رموز المعاملات تتحول إلى نص فقط إذا كان الاستعلام بطيئاً
+     */
+    void recordExecution(String sql, long nanos, long rows, boolean failed, int[] parameterCodes, int parameterCount) {
+        String fingerprint = fingerprint(sql);
+        Stats entry = stats.get(fingerprint);
+        if (entry == null) {
+            // البصمات غير المحدودة (SQL مبني بالدمج) تُجمع تحت بند واحد حتى لا تنمو الذاكرة
+            String key = stats.size() < MAX_FINGERPRINTS ? fingerprint : "(other)";
+            entry = stats.computeIfAbsent(key, k -> new Stats());
+        }
+        entry.latency.recordNanos(nanos);
+        entry.rows.add(Math.max(0, rows));
+        if (failed) {
+            entry.errors.increment();
+        }
+
+        if (nanos >= slowQueryThresholdNanos) {
+            SlowQuery slow = new SlowQuery(LocalDateTime.now(), fingerprint, nanos / 1_000_000.0, rows,
+                ParameterShape.describe(parameterCodes, parameterCount), failed);
+            slowQueries.addFirst(slow);
+            if (slowQueryCount.incrementAndGet() > MAX_SLOW_QUERIES) {
+                if (slowQueries.pollLast() != null) {
+                    slowQueryCount.decrementAndGet();
+                }
+            }
+            SLOW_QUERY_LOGGER.warning(slow.toString());
+        }
+    }
+
+    /**
+     * لقطة المقاييس لكل بصمة مرتبة حسب الزمن الكلي تنازلياً
+     */
+    public List<QueryStats> getQueryStats() {
+        List<QueryStats> result = new ArrayList<>(stats.size());
+        stats.forEach((fingerprint, entry) -> result.add(new QueryStats(fingerprint, entry)));
+        result.sort(Comparator.comparingDouble(QueryStats::getTotalMillis).reversed());
+        return result;
+    }
+
+    public PoolWaitStats getPoolWaitStats() {
+        return new PoolWaitStats(poolWait);
+    }
+
+    /**
+     * آخر الاستعلامات البطيئة (الأحدث أولاً)
+     */
+    public List<SlowQuery> getSlowQueries() {
+        return new ArrayList<>(slowQueries);
+    }
+
+    public void reset() {
+        stats.clear();
+        poolWait.reset();
+        slowQueries.clear();
+        slowQueryCount.set(0);
+    }
+
+    private static final class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+    }
+
+    /**
+     * مقاييس بصمة استعلام واحدة (الأزمنة بالمللي ثانية)
+     */
+    public static class QueryStats {
+        private final String sql;
+        private final long count;
+        private final double totalMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+        private final long rows;
+        private final long errors;
+
+        private QueryStats(String sql, Stats stats) {
+            this.sql = sql;
+            this.count = stats.latency.getCount();
+            this.totalMillis = stats.latency.getSumMicros() / 1_000.0;
+            this.p50Millis = stats.latency.percentileMicros(50) / 1_000.0;
+            this.p95Millis = stats.latency.percentileMicros(95) / 1_000.0;
+            this.p99Millis = stats.latency.percentileMicros(99) / 1_000.0;
+            this.maxMillis = stats.latency.getMaxMicros() / 1_000.0;
+            this.rows = stats.rows.sum();
+            this.errors = stats.errors.sum();
+        }
+
+        public String getSql() { return sql; }
+        public long getCount() { return count; }
+        public double getTotalMillis() { return totalMillis; }
+        public double getAverageMillis() { return count == 0 ? 0 : totalMillis / count; }
+        public double getP50Millis() { return p50Millis; }
+        public double getP95Millis() { return p95Millis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getMaxMillis() { return maxMillis; }
+        public long getRows() { return rows; }
+        public long getErrors() { return errors; }
+    }
+
+    /**
+     * زمن انتظار الاتصال من التجميع (بالمللي ثانية)
+     */
+    public static class PoolWaitStats {
+        private final long count;
+        private final double averageMillis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        private PoolWaitStats(LatencyHistogram histogram) {
+            this.count = histogram.getCount();
+            this.averageMillis = count == 0 ? 0 : histogram.getSumMicros() / 1_000.0 / count;
+            this.p99Millis = histogram.percentileMicros(99) / 1_000.0;
+            this.maxMillis = histogram.getMaxMicros() / 1_000.0;
+        }
+
+        public long getCount() { return count; }
+        public double getAverageMillis() { return averageMillis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getMaxMillis() { return maxMillis; }
+    }
+
+    /**
+     * استعلام تجاوز حد البطء، مع أنواع معاملاته المربوطة مثل [INTEGER, TEXT(10), NULL]
+     */
+    public static class SlowQuery {
+        private final LocalDateTime timestamp;
+        private final String sql;
+        private final double millis;
+        private final long rows;
+        private final String parameterShape;
+        private final boolean failed;
+
+        private SlowQuery(LocalDateTime timestamp, String sql, double millis, long rows, String parameterShape, boolean failed) {
+            this.timestamp = timestamp;
+            this.sql = sql;
+            this.millis = millis;
+            this.rows = rows;
+            this.parameterShape = parameterShape;
+            this.failed = failed;
+        }
+
+        public LocalDateTime getTimestamp() { return timestamp; }
+        public String getSql() { return sql; }
+        public double getMillis() { return millis; }
+        public long getRows() { return rows; }
+        public String getParameterShape() { return parameterShape; }
+        public boolean isFailed() { return failed; }
+
+        @Override
+        public String toString() {
+            String text = sql.length() > MAX_SQL_LENGTH_IN_LOG ? sql.substring(0, MAX_SQL_LENGTH_IN_LOG) + "..." : sql;
+            return String.format("Slow query %.1f ms, rows=%d%s: %s params=%s",
+                millis, rows, failed ? ", FAILED" : "", text, parameterShape);
+        }
+    }
+}
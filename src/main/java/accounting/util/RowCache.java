@@ -0,0 +1,64 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Contact;
+import accounting.model.Crop;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * توحيد القيم المتكررة أثناء قراءة نتيجة استعلام كبيرة.
+ *
+ * كل صف من JDBC يعيد نسخة جديدة من النص والتاريخ حتى لو تكررت القيمة في آلاف الصفوف
+ * (نوع المصدر، اسم العميل، تاريخ اليوم، مرجع القيد المشترك بين سطريه). هنا تُحفظ أول
+ * نسخة وتُعاد لبقية الصفوف، ويُحلل التاريخ مرة واحدة لكل قيمة مختلفة. كذلك مراجع المحاصيل
+ * وجهات التعامل المختصرة (الرقم والاسم) تُشارك بين الصفوف بدلاً من كائن لكل صف.
+ *
+ * النطاق استعلام واحد: يُنشأ قبل حلقة القراءة ويُترك بعدها، فلا يحتفظ بشيء بعد انتهاء التحميل.
+ * المراجع المشتركة للقراءة فقط؛ من يريد تعديل محصول أو جهة تعامل يحمّلها من خدمتها.
+ */
+public final class RowCache {
+
+    private final Map<String, String> texts = new HashMap<>();
+    private final Map<String, LocalDate> dates = new HashMap<>();
+    private final Map<Integer, Crop> crops = new HashMap<>();
+    private final Map<Integer, Contact> contacts = new HashMap<>();
+
+    public String text(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = texts.putIfAbsent(value, value);
+        return shared != null ? shared : value;
+    }
+
+    /**
+     * @param databaseDate التاريخ كما يُخزن في قاعدة البيانات (yyyy-MM-dd)
+     */
+    public LocalDate date(String databaseDate) {
+        if (databaseDate == null) {
+            return null;
+        }
+        return dates.computeIfAbsent(databaseDate, FormatUtils::parseDateFromDatabase);
+    }
+
+    public Crop crop(int cropId, String cropName) {
+        return crops.computeIfAbsent(cropId, id -> {
+            Crop crop = new Crop();
+            crop.setCropId(id);
+            crop.setCropName(text(cropName));
+            return crop;
+        });
+    }
+
+    public Contact contact(int contactId, String name) {
+        return contacts.computeIfAbsent(contactId, id -> {
+            Contact contact = new Contact();
+            contact.setContactId(id);
+            contact.setName(text(name));
+            return contact;
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package accounting.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * ترحيلات مخطط قاعدة البيانات مرقمة بالإصدار ومحفوظة في PRAGMA user_version.
+ *
+ * عند التشغيل يُقرأ الإصدار الحالي وتُنفذ الترحيلات الأحدث منه فقط، كل منها في معاملة
+ * مستقلة ترفع user_version عند اعتمادها. إذا كانت القاعدة محدثة فالكلفة استعلام PRAGMA واحد.
+ * أي تعديل جديد على المخطط يُضاف كترحيل جديد بإصدار أعلى، ولا يُعدل ترحيل سبق نشره.
+ */
+public class SchemaMigrator {
+
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigrator.class.getName());
+
+    @FunctionalInterface
+    public interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    public record Migration(int version, String description, MigrationStep step) {
+    }
+
+    private final List<Migration> migrations = new ArrayList<>();
+
+    public SchemaMigrator add(int version, String description, MigrationStep step) {
+        if (version <= 0) {
+            throw new IllegalArgumentException("Migration version must be positive: " + version);
+        }
+        if (migrations.stream().anyMatch(m -> m.version() == version)) {
+            throw new IllegalArgumentException("Duplicate migration version: " + version);
+        }
+        migrations.add(new Migration(version, description, step));
+        migrations.sort(Comparator.comparingInt(Migration::version));
+        return this;
+    }
+
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).version();
+    }
+
+    public List<Migration> getMigrations() {
+        return List.copyOf(migrations);
+    }
+
+    /**
+     * تنفيذ الترحيلات المعلقة فقط
+     * @return عدد الترحيلات التي نُفذت (صفر إذا كانت القاعدة محدثة)
+     */
+    public int migrate(Connection conn) throws SQLException {
+        int current = currentVersion(conn);
+        if (current >= getLatestVersion()) {
+            return 0;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        int applied = 0;
+        try {
+            conn.setAutoCommit(false);
+            for (Migration migration : migrations) {
+                if (migration.version() <= current) {
+                    continue;
+                }
+                long started = System.nanoTime();
+                try {
+                    migration.step().apply(conn);
+                    setVersion(conn, migration.version());
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw new SQLException("Schema migration " + migration.version() + " (" + migration.description()
+                        + ") failed: " + e.getMessage(), e);
+                }
+                applied++;
+                LOGGER.info(String.format("تم تطبيق ترحيل المخطط %d (%s) في %d ms", migration.version(),
+                    migration.description(), (System.nanoTime() - started) / 1_000_000));
+            }
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        return applied;
+    }
+
+    public static int currentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static void setVersion(Connection conn, int version) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // لا يقبل PRAGMA معاملات مربوطة؛ الإصدار رقم صحيح من الكود وليس من المستخدم
+            stmt.execute("PRAGMA user_version = " + version);
+        }
+    }
+}
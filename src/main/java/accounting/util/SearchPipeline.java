@@ -0,0 +1,157 @@
+package accounting.util;
+
+import javafx.application.Platform;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * تشغيل البحث أثناء الكتابة دون تجميد الواجهة.
+ *
+ * كل submit يلغي الطلب السابق: الاستعلام لا يبدأ إلا بعد توقف الكتابة مدة debounce، ويعمل
+ * في خيط خلفي، ونتيجته تُطبق في خيط الواجهة فقط إن بقي طلبها هو الأحدث؛ النتائج المتأخرة
+ * لطلبات قديمة تُهمل. آخر النتائج تُحفظ بمفتاح الطلب فيعود الحذف بمسافة للخلف فوراً.
+ *
+ * المفتاح K يجب أن يعرف equals/hashCode (نص مُطبع أو كائن فلاتر). الذاكرة المؤقتة لا تعرف
+ * متى تتغير البيانات: يجب استدعاء invalidate بعد الإضافة أو الحذف أو إعادة التحميل.
+ *
+ * submit و submitNow و invalidate تُستدعى من خيط الواجهة.
+ */
+public class SearchPipeline<K, R> {
+
+    @FunctionalInterface
+    public interface Query<K, R> {
+        R run(K key) throws Exception;
+    }
+
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofMillis(250);
+    public static final int DEFAULT_CACHED_RESULTS = 16;
+
+    /** خيط واحد مشترك للانتظار والاستعلام؛ الطلبات تُلغى قبل أن تتراكم */
+    private static ScheduledExecutorService sharedScheduler;
+
+    private final Duration debounce;
+    private final Query<K, R> query;
+    private final BiConsumer<K, R> onResult;
+    private final ScheduledExecutorService scheduler;
+    private final Executor uiThread;
+    private final Map<K, R> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    private ScheduledFuture<?> pending;
+    private Consumer<Throwable> onFailed = error -> ErrorHandler.showException("خطأ في البحث",
+        "فشل تنفيذ البحث.", error instanceof Exception e ? e : new RuntimeException(error));
+
+    public SearchPipeline(Query<K, R> query, BiConsumer<K, R> onResult) {
+        this(DEFAULT_DEBOUNCE, DEFAULT_CACHED_RESULTS, query, onResult, sharedScheduler(), Platform::runLater);
+    }
+
+    /**
+     * @param scheduler منفذ الانتظار والاستعلام (خيط خلفي)
+     * @param uiThread  منفذ تطبيق النتائج (خيط الواجهة)
+     */
+    public SearchPipeline(Duration debounce, int maxCachedResults, Query<K, R> query, BiConsumer<K, R> onResult,
+                          ScheduledExecutorService scheduler, Executor uiThread) {
+        this.debounce = debounce;
+        this.query = query;
+        this.onResult = onResult;
+        this.scheduler = scheduler;
+        this.uiThread = uiThread;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, R> eldest) {
+                return size() > maxCachedResults;
+            }
+        };
+    }
+
+    private static synchronized ScheduledExecutorService sharedScheduler() {
+        if (sharedScheduler == null) {
+            sharedScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "search-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedScheduler;
+    }
+
+    public void setOnFailed(Consumer<Throwable> onFailed) {
+        this.onFailed = onFailed;
+    }
+
+    /**
+     * طلب أثناء الكتابة: من الذاكرة المؤقتة فوراً إن وُجد، وإلا بعد مهلة التوقف
+     */
+    public void submit(K key) {
+        long request = supersede();
+        R cached = cache.get(key);
+        if (cached != null) {
+            onResult.accept(key, cached);
+            return;
+        }
+        schedule(request, key, debounce.toMillis());
+    }
+
+    /**
+     * طلب صريح (زر تطبيق، أول تحميل، بعد حفظ مستند): بلا انتظار ولا ذاكرة مؤقتة
+     */
+    public void submitNow(K key) {
+        schedule(supersede(), key, 0);
+    }
+
+    /**
+     * إسقاط النتائج المحفوظة بعد تغير البيانات
+     */
+    public void invalidate() {
+        cache.clear();
+    }
+
+    /**
+     * إلغاء أي طلب منتظر أو جارٍ دون طلب جديد
+     */
+    public void cancel() {
+        supersede();
+    }
+
+    private long supersede() {
+        long request = generation.incrementAndGet();
+        if (pending != null) {
+            pending.cancel(true);
+            pending = null;
+        }
+        return request;
+    }
+
+    private void schedule(long request, K key, long delayMillis) {
+        pending = scheduler.schedule(() -> run(request, key), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(long request, K key) {
+        if (request != generation.get()) {
+            return;
+        }
+        try {
+            R result = query.run(key);
+            uiThread.execute(() -> {
+                if (request == generation.get()) {
+                    cache.put(key, result);
+                    onResult.accept(key, result);
+                }
+            });
+        } catch (Exception e) {
+            if (request == generation.get() && !Thread.currentThread().isInterrupted()) {
+                uiThread.execute(() -> onFailed.accept(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package accounting.util;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * مفاتيح البحث النصي في القوائم المحملة في الذاكرة.
+ *
+ * مفتاح الصف يُحسب مرة واحدة عند التحميل (normalize/key) ونص البحث مرة لكل بحث، فالمطابقة
+ * بعدها contains فقط بلا toLowerCase لكل صف مع كل حرف. التطبيع يوحد أشكال الهمزة والتاء
+ * المربوطة والألف المقصورة ويحذف التشكيل والتطويل، فيجد "احمد" الاسم "أحمد".
+ */
+public final class SearchText {
+
+    /** فاصل الحقول داخل المفتاح؛ لا يبقى في نص بحث مُطبع فلا تمتد المطابقة عبر حقلين */
+    private static final char FIELD_SEPARATOR = '\n';
+
+    private SearchText() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if ((c >= '\u064B' && c <= '\u0652') || c == '\u0640') {
+                continue; // التشكيل والتطويل
+            }
+            switch (c) {
+                case 'أ', 'إ', 'آ', 'ٱ' -> c = 'ا';
+                case 'ة' -> c = 'ه';
+                case 'ى' -> c = 'ي';
+                case 'ؤ' -> c = 'و';
+                case 'ئ' -> c = 'ي';
+                default -> c = Character.toLowerCase(c);
+            }
+            if (pendingSpace) {
+                normalized.append(' ');
+                pendingSpace = false;
+            }
+            normalized.append(c);
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * مفتاح بحث لصف من عدة حقول (الاسم، الهاتف، ...)؛ الحقول الفارغة تُتجاهل
+     */
+    public static String key(String... fields) {
+        StringBuilder key = new StringBuilder();
+        for (String field : fields) {
+            String normalized = normalize(field);
+            if (!normalized.isEmpty()) {
+                if (key.length() > 0) {
+                    key.append(FIELD_SEPARATOR);
+                }
+                key.append(normalized);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param key   مفتاح الصف من key أو normalize
+     * @param query نص بحث مُطبع مسبقاً؛ الفارغ يطابق كل الصفوف
+     */
+    public static boolean matches(String key, String query) {
+        return query.isEmpty() || key.contains(query);
+    }
+
+    /**
+     * الصفوف المطابقة من قائمة (صف، مفتاح) محسوبة مسبقاً؛ تصلح للتشغيل في خيط خلفي
+     */
+    public static <T> Set<T> matching(List<Map.Entry<T, String>> keys, String query) {
+        Set<T> matches = new HashSet<>();
+        for (Map.Entry<T, String> entry : keys) {
+            if (matches(entry.getValue(), query)) {
+                matches.add(entry.getKey());
+            }
+        }
+        return matches;
+    }
+}
@@ -2,7 +2,10 @@ package accounting.util;
 
 import accounting.model.*;
 import accounting.service.CropDataService;
+import accounting.service.LedgerIntegrityService;
+import accounting.service.OpenItemService;
 import accounting.service.PurchaseDataService;
+import accounting.service.WarehouseService;
 import accounting.formatter.FormatUtils;
 
 import java.sql.SQLException;
@@ -19,14 +22,23 @@ import java.util.logging.Level;
 public class SmartAlertSystem {
     
     private static final Logger LOGGER = Logger.getLogger(SmartAlertSystem.class.getName());
+
+    /** عدد الأيام التي تُعتبر بعدها الفاتورة غير المسددة متأخرة */
+    private static final int PAYMENT_DUE_DAYS = 30;
     
     private final CropDataService cropDataService;
     private final PurchaseDataService purchaseDataService;
+    private final OpenItemService openItemService;
+    private final LedgerIntegrityService integrityService;
+    private final WarehouseService warehouseService;
     private final ImprovedDataManager dataManager;
     
     public SmartAlertSystem() {
         this.cropDataService = new CropDataService();
         this.purchaseDataService = new PurchaseDataService();
+        this.openItemService = new OpenItemService();
+        this.integrityService = new LedgerIntegrityService();
+        this.warehouseService = new WarehouseService();
         this.dataManager = ImprovedDataManager.getInstance();
     }
     
@@ -53,6 +65,9 @@ public class SmartAlertSystem {
         
         // تنبيهات الجودة
         alerts.addAll(getQualityAlerts());
+
+        // فروقات سلامة الدفتر
+        alerts.addAll(getIntegrityAlerts());
         
         // ترتيب التنبيهات حسب الأولوية والتاريخ
         alerts.sort((a, b) -> {
@@ -72,8 +87,12 @@ public class SmartAlertSystem {
         
         try {
             List<Crop> crops = cropDataService.getAllActiveCrops();
+            List<Warehouse> warehouses = warehouseService.getAllWarehouses().stream().filter(Warehouse::isActive).toList();
             
             for (Crop crop : crops) {
+                if (warehouses.size() > 1) {
+                    alerts.addAll(getWarehouseStockAlerts(crop, warehouses));
+                }
                 CropDataService.CropStatistics stats = cropDataService.getCropStatistics(
                     crop.getCropId(), 
                     LocalDate.now().minusMonths(6), 
@@ -128,6 +147,41 @@ public class SmartAlertSystem {
         return alerts;
     }
     
+    /**
+     * نفاد المحصول في مخزن بينما يحمله مخزن آخر: الحدود الدنيا والقصوى تبقى على الرصيد الموحد،
+     * وهنا يُقترح التحويل من المخزن الأكبر رصيداً. الأرصدة من ذاكرة WarehouseService.
+     */
+    private List<SmartAlert> getWarehouseStockAlerts(Crop crop, List<Warehouse> warehouses) throws SQLException {
+        List<SmartAlert> alerts = new ArrayList<>();
+        Map<Integer, Double> positions = warehouseService.getPositions(crop.getCropId());
+        Warehouse richest = null;
+        double richestStock = 0;
+        for (Warehouse warehouse : warehouses) {
+            double stock = positions.getOrDefault(warehouse.getWarehouseId(), 0.0);
+            if (stock > richestStock) {
+                richest = warehouse;
+                richestStock = stock;
+            }
+        }
+        if (richest == null) {
+            return alerts; // نفاد المحصول كله يظهر في تنبيه الرصيد الموحد
+        }
+        for (Warehouse warehouse : warehouses) {
+            if (positions.getOrDefault(warehouse.getWarehouseId(), 0.0) <= 0) {
+                alerts.add(new SmartAlert(
+                    AlertType.INVENTORY_LOW,
+                    AlertPriority.MEDIUM,
+                    "نفاد " + crop.getCropName() + " في " + warehouse.getName(),
+                    "لا يوجد رصيد من " + crop.getCropName() + " في " + warehouse.getName() + " بينما يحمل "
+                        + richest.getName() + " " + FormatUtils.formatQuantityWithUnit(richestStock, "كجم") + ".",
+                    "يُنصح بتحويل كمية من " + richest.getName() + " إلى " + warehouse.getName() + " قبل الشراء.",
+                    LocalDate.now()
+                ));
+            }
+        }
+        return alerts;
+    }
+
     /**
      * تنبيهات الأسعار الذكية
      */
@@ -245,12 +299,64 @@ public class SmartAlertSystem {
     private List<SmartAlert> getPaymentAlerts() {
         List<SmartAlert> alerts = new ArrayList<>();
         
-        // هذه ستحتاج لتطوير نظام إدارة الذمم في المستقبل
-        // يمكن إضافة تنبيهات للفواتير المستحقة والمدفوعات المتأخرة
+        try {
+            // أرصدة العملاء المفتوحة من دفتر البنود المفتوحة: صف واحد لكل عميل
+            LocalDate today = LocalDate.now();
+            for (OpenItemService.ContactOpenBalance balance : openItemService.getContactBalances(OpenItemService.SIDE_RECEIVABLE)) {
+                if (balance.getOldestOpenDate() == null || balance.getNetOutstanding() <= 0) {
+                    continue;
+                }
+                long overdueDays = ChronoUnit.DAYS.between(balance.getOldestOpenDate(), today);
+                if (overdueDays <= PAYMENT_DUE_DAYS) {
+                    continue;
+                }
+                alerts.add(new SmartAlert(
+                    AlertType.PAYMENT_DUE,
+                    overdueDays > 90 ? AlertPriority.HIGH : AlertPriority.MEDIUM,
+                    "مستحقات متأخرة على " + balance.getContactName(),
+                    String.format("على العميل %s مبلغ %s في %d فاتورة مفتوحة، أقدمها منذ %d يوم.",
+                        balance.getContactName(), FormatUtils.formatCurrency(balance.getNetOutstanding()),
+                        balance.getOpenInvoiceCount(), overdueDays),
+                    "يُنصح بالتواصل مع العميل لتحصيل الفواتير الأقدم أولاً.",
+                    today
+                ));
+            }
+        } catch (Exception e) {
+            LOGGER.warning("خطأ في إنشاء تنبيهات المدفوعات: " + e.getMessage());
+        }
         
         return alerts;
     }
     
+    /**
+     * فروقات سلامة الدفتر المفتوحة كما سجلها LedgerIntegrityMonitor
+     */
+    private List<SmartAlert> getIntegrityAlerts() {
+        List<SmartAlert> alerts = new ArrayList<>();
+
+        try {
+            LocalDate today = LocalDate.now();
+            for (LedgerIntegrityService.IntegrityIssue issue : integrityService.getOpenIssues()) {
+                String subject = issue.getLabel() != null ? issue.getLabel() : issue.getSubject();
+                alerts.add(new SmartAlert(
+                    AlertType.LEDGER_INTEGRITY,
+                    AlertPriority.CRITICAL,
+                    issue.getKind().getArabicName() + ": " + subject,
+                    String.format("القيمة المتوقعة %.2f والمسجلة %.2f (فرق %.2f).",
+                        issue.getExpected(), issue.getActual(), issue.getDifference()),
+                    issue.getRefs().isEmpty()
+                        ? "راجع آخر العمليات المحذوفة أو المعدلة على هذا البند."
+                        : "راجع المستندات: " + String.join("، ", issue.getRefs()),
+                    today
+                ));
+            }
+        } catch (Exception e) {
+            LOGGER.warning("خطأ في قراءة فروقات سلامة الدفتر: " + e.getMessage());
+        }
+
+        return alerts;
+    }
+
     /**
      * تنبيهات الجودة والتخزين
      */
@@ -333,7 +439,8 @@ public class SmartAlertSystem {
         SEASONAL_REMINDER("تذكير موسمي"),
         PROFITABILITY_WARNING("تحذير ربحية"),
         PAYMENT_DUE("استحقاق دفع"),
-        QUALITY_WARNING("تحذير جودة");
+        QUALITY_WARNING("تحذير جودة"),
+        LEDGER_INTEGRITY("سلامة الدفتر");
         
         private final String arabicName;
         
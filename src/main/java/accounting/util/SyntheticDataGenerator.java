@@ -0,0 +1,449 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.DailyPrice;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.PurchaseReturn;
+import accounting.model.SaleRecord;
+import accounting.model.SaleReturn;
+import accounting.model.Season;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.DailyPriceService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import accounting.service.SeasonDataService;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * مولد بيانات تجريبية لاختبارات الحجم والأداء
+ *
+ * ينتج سنوات من المحاصيل وجهات التعامل والمواسم والمشتريات والمبيعات والمرتجعات
+ * والدفعات والمصروفات والأسعار اليومية. كل المستندات تمر عبر خدمات الترحيل الفعلية
+ * فتكون القيود والأرصدة والمخزون وكشوف الحساب متسقة، لكن مستندات كل يوم تُعتمد
+ * في معاملة واحدة (executeBatchTransaction) بدلاً من معاملة لكل مستند.
+ *
+ * نفس البذرة ونفس الإعدادات تعطي نفس البيانات دائماً. توزيع العملاء غير متساوٍ
+ * عمداً (قلة من العملاء لهم معظم الحركات) كما في المواقع الكبيرة الفعلية.
+ *
+ * من سطر الأوامر (على قاعدة بيانات فارغة):
+ *   SyntheticDataGenerator jdbc:sqlite:/path/large.db 1000000 [seed] [years]
+ */
+public class SyntheticDataGenerator {
+
+    private static final Logger LOGGER = Logger.getLogger(SyntheticDataGenerator.class.getName());
+
+    private static final String[] CROP_NAMES = {
+        "طماطم", "بطاطس", "خيار", "بصل", "فلفل", "باذنجان", "كوسة", "جزر", "ليمون", "برتقال", "عنب", "فراولة"
+    };
+    private static final int CASH_ACCOUNT_ID = 10101;
+    private static final int EXPENSE_ACCOUNT_ID = 50102;
+    /** متوسط قيود دفتر الأستاذ لكل فاتورة بيع مع ما يصاحبها من مشتريات ودفعات ومرتجعات */
+    private static final double LEDGER_LINES_PER_SALE = 6.7;
+    /** قيود المصروفات اليومية */
+    private static final double LEDGER_LINES_PER_DAY = 3.0;
+
+    private final Config config;
+    private final ImprovedDataManager dataManager;
+    private final CropDataService cropDataService;
+    private final ContactDataService contactDataService;
+    private final SeasonDataService seasonDataService;
+    private final PurchaseDataService purchaseDataService;
+    private final SaleDataService saleDataService;
+    private final PaymentDataService paymentDataService;
+    private final FinancialTransactionDataService transactionDataService;
+    private final DailyPriceService dailyPriceService;
+
+    public SyntheticDataGenerator(Config config) {
+        this.config = config;
+        this.dataManager = ImprovedDataManager.getInstance();
+        this.cropDataService = new CropDataService();
+        this.contactDataService = new ContactDataService();
+        this.seasonDataService = new SeasonDataService();
+        this.purchaseDataService = new PurchaseDataService();
+        this.saleDataService = new SaleDataService();
+        this.paymentDataService = new PaymentDataService();
+        this.transactionDataService = new FinancialTransactionDataService();
+        this.dailyPriceService = new DailyPriceService();
+    }
+
+    /**
+     * توليد البيانات في قاعدة البيانات الحالية (يُفترض أنها فارغة)
+     */
+    public Result generate(ProgressListener progress) throws SQLException {
+        long startedAt = System.currentTimeMillis();
+        Random random = new Random(config.seed);
+        Result result = new Result();
+
+        // سجلات INFO لكل قيد تضاعف زمن التوليد
+        Logger applicationLogger = Logger.getLogger("accounting");
+        Level previousLevel = applicationLogger.getLevel();
+        applicationLogger.setLevel(Level.WARNING);
+        try {
+            FinancialAccount cash = new FinancialAccountDataService().getAllAccounts().stream()
+                .filter(a -> a.getAccountId() == CASH_ACCOUNT_ID).findFirst()
+                .orElseThrow(() -> new SQLException("Cash account " + CASH_ACCOUNT_ID + " not found."));
+            World world = createMasterData(random, cash);
+            List<Season> seasons = createSeasons();
+
+            LocalDate endDate = config.startDate.plusDays(config.days - 1L);
+            int day = 0;
+            for (LocalDate date = config.startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+                LocalDate current = date;
+                dataManager.executeBatchTransaction(conn -> {
+                    generateDay(current, random, world, result);
+                    return null;
+                });
+                day++;
+                if (progress != null) {
+                    progress.onProgress(day, config.days);
+                }
+            }
+
+            completePastSeasons(seasons);
+        } finally {
+            applicationLogger.setLevel(previousLevel);
+        }
+
+        result.ledgerLines = countLedgerLines();
+        result.elapsedMillis = System.currentTimeMillis() - startedAt;
+        return result;
+    }
+
+    private World createMasterData(Random random, FinancialAccount cash) throws SQLException {
+        World world = new World(cash);
+        for (int i = 0; i < config.crops; i++) {
+            String name = CROP_NAMES[i % CROP_NAMES.length] + (i >= CROP_NAMES.length ? " " + (i / CROP_NAMES.length + 1) : "");
+            int cropId = cropDataService.addCrop(new Crop(0, name, List.of("كيلو"), Map.of()));
+            world.crops.add(cropDataService.getCropById(cropId));
+            world.prices.add(2.0 + random.nextInt(800) / 100.0);
+            world.stock.add(0.0);
+        }
+        for (int i = 1; i <= config.suppliers; i++) {
+            world.suppliers.add(contactDataService.addContact(
+                new Contact(0, "مورد " + i, String.format("0100%06d", i), "", true, false)).orElseThrow());
+        }
+        for (int i = 1; i <= config.customers; i++) {
+            world.customers.add(contactDataService.addContact(
+                new Contact(0, "عميل " + i, String.format("0110%06d", i), "", false, true)).orElseThrow());
+        }
+        return world;
+    }
+
+    /**
+     * موسمان لكل سنة في الفترة (شتوي وصيفي)، تُنشأ قبل المستندات وتُقفل الماضية منها في النهاية
+     */
+    private List<Season> createSeasons() throws SQLException {
+        List<Season> seasons = new ArrayList<>();
+        LocalDate today = LocalDate.now();
+        LocalDate endDate = config.startDate.plusDays(config.days - 1L);
+        for (int year = config.startDate.getYear(); year <= endDate.getYear(); year++) {
+            LocalDate[][] ranges = {
+                {LocalDate.of(year, 1, 1), LocalDate.of(year, 6, 30)},
+                {LocalDate.of(year, 7, 1), LocalDate.of(year, 12, 31)}
+            };
+            String[] names = {"الموسم الشتوي " + year, "الموسم الصيفي " + year};
+            for (int i = 0; i < ranges.length; i++) {
+                Season.Status status = ranges[i][0].isAfter(today) ? Season.Status.UPCOMING : Season.Status.ACTIVE;
+                Season season = new Season(0, names[i], ranges[i][0], ranges[i][1], status);
+                seasonDataService.addSeason(season);
+                seasons.add(season);
+            }
+        }
+        return seasons;
+    }
+
+    private void completePastSeasons(List<Season> seasons) throws SQLException {
+        LocalDate today = LocalDate.now();
+        for (Season season : seasons) {
+            if (season.getEndDate().isBefore(today)) {
+                season.setStatus(Season.Status.COMPLETED);
+                seasonDataService.updateSeason(season);
+            }
+        }
+    }
+
+    private void generateDay(LocalDate date, Random random, World world, Result result) throws SQLException {
+        // الأسعار اليومية: مسار عشوائي حول السعر السابق
+        for (int c = 0; c < world.crops.size(); c++) {
+            double previous = world.prices.get(c);
+            double close = round(Math.max(0.5, previous * (0.97 + random.nextDouble() * 0.06)));
+            double high = round(Math.max(previous, close) * (1 + random.nextDouble() * 0.02));
+            double low = round(Math.min(previous, close) * (1 - random.nextDouble() * 0.02));
+            dailyPriceService.addOrUpdatePrice(new DailyPrice(0, world.crops.get(c).getCropId(), date,
+                previous, high, low, close, round((previous + close) / 2)));
+            world.prices.set(c, close);
+            result.dailyPrices++;
+        }
+
+        int sales = (int) Math.round(config.salesPerDay * (0.7 + random.nextDouble() * 0.6));
+        for (int i = 0; i < sales; i++) {
+            int c = random.nextInt(world.crops.size());
+            Crop crop = world.crops.get(c);
+            double quantity = 10 + random.nextInt(490);
+            if (world.stock.get(c) < quantity) {
+                restock(date, random, world, c, quantity, result);
+            }
+
+            Contact customer = pickSkewed(random, world.customers);
+            double unitPrice = round(world.prices.get(c) * (0.9 + random.nextDouble() * 0.2));
+            SaleRecord sale = new SaleRecord();
+            sale.setCrop(crop);
+            sale.setCustomer(customer);
+            sale.setSaleDate(date);
+            sale.setQuantitySoldKg(quantity);
+            sale.setSellingPricingUnit("كيلو");
+            sale.setSpecificSellingFactor(1.0);
+            sale.setSellingUnitPrice(unitPrice);
+            sale.setTotalSaleAmount(round(quantity * unitPrice));
+            sale.setSaleInvoiceNumber("GS-" + (result.sales + 1));
+            int paymentShape = random.nextInt(10);
+            double received = paymentShape < 4 ? sale.getTotalSaleAmount() : paymentShape < 7 ? round(sale.getTotalSaleAmount() / 2) : 0;
+            saleDataService.addSale(sale, world.cash, received);
+            world.stock.set(c, world.stock.get(c) - quantity);
+            world.recentSales.add(sale);
+            if (world.recentSales.size() > 200) {
+                world.recentSales.remove(0);
+            }
+            result.sales++;
+
+            if (random.nextInt(100) < 2 && !world.recentSales.isEmpty()) {
+                SaleRecord original = world.recentSales.remove(random.nextInt(world.recentSales.size()));
+                double returnedQuantity = Math.max(1, Math.floor(original.getQuantitySoldKg() * (0.05 + random.nextDouble() * 0.15)));
+                SaleReturn saleReturn = new SaleReturn();
+                saleReturn.setOriginalSale(original);
+                saleReturn.setReturnDate(date);
+                saleReturn.setQuantityKg(returnedQuantity);
+                saleReturn.setReturnReason("تالف");
+                saleReturn.setRefundAmount(round(returnedQuantity * original.getSellingUnitPrice()));
+                saleDataService.addSaleReturn(saleReturn);
+                int returnedCrop = world.crops.indexOf(original.getCrop());
+                world.stock.set(returnedCrop, world.stock.get(returnedCrop) + returnedQuantity);
+                result.saleReturns++;
+            }
+        }
+
+        // تحصيلات من العملاء ودفعات للموردين
+        int receipts = (int) Math.round(sales * 0.3);
+        for (int i = 0; i < receipts; i++) {
+            addPayment(world, pickSkewed(random, world.customers), "RECEIVE", date, 100 + random.nextInt(1900));
+            result.payments++;
+        }
+        int supplierPayments = Math.max(sales > 0 ? 1 : 0, (int) Math.round(sales * 0.05));
+        for (int i = 0; i < supplierPayments; i++) {
+            addPayment(world, world.suppliers.get(random.nextInt(world.suppliers.size())), "PAY", date, 500 + random.nextInt(4500));
+            result.payments++;
+        }
+
+        // مصروفات تشغيل يومية
+        int expenses = 1 + random.nextInt(2);
+        for (int i = 0; i < expenses; i++) {
+            transactionDataService.addExpense(date, 50 + random.nextInt(950), "مصروفات تشغيل", EXPENSE_ACCOUNT_ID, CASH_ACCOUNT_ID);
+            result.expenses++;
+        }
+    }
+
+    private void restock(LocalDate date, Random random, World world, int c, double needed, Result result) throws SQLException {
+        Contact supplier = world.suppliers.get(random.nextInt(world.suppliers.size()));
+        double quantity = Math.ceil(needed * 4 + random.nextInt(2000));
+        double unitPrice = round(world.prices.get(c) * (0.6 + random.nextDouble() * 0.2));
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(world.crops.get(c));
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(date);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(unitPrice);
+        purchase.setTotalCost(round(quantity * unitPrice));
+        purchase.setInvoiceNumber("GP-" + (result.purchases + 1));
+        double paid = random.nextBoolean() ? round(purchase.getTotalCost() * random.nextDouble()) : 0;
+        purchaseDataService.addPurchase(purchase, paid > 0 ? world.cash : null, paid);
+        world.stock.set(c, world.stock.get(c) + quantity);
+        result.purchases++;
+
+        if (random.nextInt(100) < 3) {
+            double returnedQuantity = Math.floor(quantity * 0.05);
+            if (returnedQuantity >= 1 && world.stock.get(c) - returnedQuantity >= needed) {
+                PurchaseReturn purchaseReturn = new PurchaseReturn();
+                purchaseReturn.setOriginalPurchase(purchase);
+                purchaseReturn.setReturnDate(date);
+                purchaseReturn.setQuantityKg(returnedQuantity);
+                purchaseReturn.setReturnReason("مخالف للمواصفات");
+                purchaseReturn.setReturnedCost(round(returnedQuantity * unitPrice));
+                purchaseDataService.addPurchaseReturn(purchaseReturn);
+                world.stock.set(c, world.stock.get(c) - returnedQuantity);
+                result.purchaseReturns++;
+            }
+        }
+    }
+
+    private void addPayment(World world, Contact contact, String type, LocalDate date, double amount) throws SQLException {
+        Payment payment = new Payment();
+        payment.setContact(contact);
+        payment.setPaymentAccount(world.cash);
+        payment.setPaymentDate(date);
+        payment.setAmount(amount);
+        payment.setPaymentType(type);
+        payment.setDescription("RECEIVE".equals(type) ? "تحصيل من العميل" : "دفعة للمورد");
+        paymentDataService.addPayment(payment);
+    }
+
+    /** اختيار غير متساوٍ: العناصر الأولى تحصل على معظم الحركات */
+    private static <T> T pickSkewed(Random random, List<T> items) {
+        double r = random.nextDouble();
+        return items.get(Math.min(items.size() - 1, (int) (items.size() * r * r * r)));
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private long countLedgerLines() throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM general_ledger")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 2) {
+            System.err.println("Usage: SyntheticDataGenerator <jdbc-url> <target-ledger-lines> [seed] [years]");
+            System.exit(2);
+        }
+        long targetLines = Long.parseLong(args[1]);
+        int years = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+        Config config = Config.forLedgerLines(targetLines, years);
+        if (args.length > 2) {
+            config.seed(Long.parseLong(args[2]));
+        }
+
+        ImprovedDataManager.reinitializeForTest(args[0]);
+        ImprovedDataManager.getInstance();
+        Result result = new SyntheticDataGenerator(config).generate((completed, total) -> {
+            if (completed % 30 == 0 || completed == total) {
+                LOGGER.info("Generated " + completed + "/" + total + " days");
+            }
+        });
+        System.out.println(result);
+        ImprovedDataManager.getInstance().shutdown();
+    }
+
+    /**
+     * حالة التوليد أثناء التشغيل: البيانات الأساسية والأسعار والمخزون المتاح لكل محصول
+     */
+    private static final class World {
+        private final FinancialAccount cash;
+        private final List<Crop> crops = new ArrayList<>();
+        private final List<Double> prices = new ArrayList<>();
+        private final List<Double> stock = new ArrayList<>();
+        private final List<Contact> suppliers = new ArrayList<>();
+        private final List<Contact> customers = new ArrayList<>();
+        private final List<SaleRecord> recentSales = new ArrayList<>();
+
+        World(FinancialAccount cash) {
+            this.cash = cash;
+        }
+    }
+
+    /**
+     * مستمع تقدم التوليد، يُستدعى بعد اعتماد كل يوم
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(int completedDays, int totalDays);
+    }
+
+    /**
+     * إعدادات التوليد
+     */
+    public static class Config {
+        private long seed = 42;
+        private LocalDate startDate = LocalDate.now().minusYears(3).withDayOfYear(1);
+        private int days = 3 * 365;
+        private int crops = 8;
+        private int suppliers = 40;
+        private int customers = 200;
+        private double salesPerDay = 20;
+
+        /**
+         * إعدادات تنتج تقريباً العدد المطلوب من قيود دفتر الأستاذ على عدد من السنوات
+         * تنتهي اليوم، مع زيادة عدد جهات التعامل مع الحجم
+         */
+        public static Config forLedgerLines(long targetLedgerLines, int years) {
+            Config config = new Config();
+            config.days = Math.max(1, years * 365);
+            config.startDate = LocalDate.now().minusDays(config.days - 1L);
+            double perDay = (double) targetLedgerLines / config.days - LEDGER_LINES_PER_DAY;
+            config.salesPerDay = Math.max(0, perDay / LEDGER_LINES_PER_SALE);
+            double totalSales = config.salesPerDay * config.days;
+            config.customers = (int) Math.max(20, Math.min(50_000, totalSales / 50));
+            config.suppliers = Math.max(5, config.customers / 5);
+            config.crops = CROP_NAMES.length;
+            return config;
+        }
+
+        public Config seed(long seed) { this.seed = seed; return this; }
+        public Config startDate(LocalDate startDate) { this.startDate = startDate; return this; }
+        public Config days(int days) { this.days = days; return this; }
+        public Config crops(int crops) { this.crops = crops; return this; }
+        public Config suppliers(int suppliers) { this.suppliers = suppliers; return this; }
+        public Config customers(int customers) { this.customers = customers; return this; }
+        public Config salesPerDay(double salesPerDay) { this.salesPerDay = salesPerDay; return this; }
+
+        public long getSeed() { return seed; }
+        public LocalDate getStartDate() { return startDate; }
+        public int getDays() { return days; }
+        public double getSalesPerDay() { return salesPerDay; }
+    }
+
+    /**
+     * ملخص ما تم توليده
+     */
+    public static class Result {
+        private int sales;
+        private int saleReturns;
+        private int purchases;
+        private int purchaseReturns;
+        private int payments;
+        private int expenses;
+        private int dailyPrices;
+        private long ledgerLines;
+        private long elapsedMillis;
+
+        public int getSales() { return sales; }
+        public int getSaleReturns() { return saleReturns; }
+        public int getPurchases() { return purchases; }
+        public int getPurchaseReturns() { return purchaseReturns; }
+        public int getPayments() { return payments; }
+        public int getExpenses() { return expenses; }
+        public int getDailyPrices() { return dailyPrices; }
+        public long getLedgerLines() { return ledgerLines; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("sales=%d, saleReturns=%d, purchases=%d, purchaseReturns=%d, payments=%d, expenses=%d, "
+                    + "dailyPrices=%d, ledgerLines=%d, elapsed=%dms",
+                sales, saleReturns, purchases, purchaseReturns, payments, expenses, dailyPrices, ledgerLines, elapsedMillis);
+        }
+    }
+}
@@ -7,6 +7,9 @@ module accounting.improved {
     requires org.slf4j;
     requires org.slf4j.simple;
     requires java.logging;
+    requires java.management;
+    requires jdk.jfr;
+    requires jdk.httpserver;
     requires org.xerial.sqlitejdbc;
 
     // *** الأسطر الجديدة المطلوبة ***
@@ -21,7 +24,10 @@ module accounting.improved {
     opens accounting.gui to javafx.fxml, javafx.graphics;
     opens accounting.util to javafx.base;
     // *** سطر مهم جداً لربط النماذج بالواجهة ***
-    opens accounting.model to javafx.base, javafx.fxml;
+    opens accounting.model to javafx.base, javafx.fxml, com.google.gson;
+    // تسلسل استجابات واجهة HTTP بـ Gson
+    opens accounting.service to com.google.gson;
+    opens accounting.api to com.google.gson;
 
     exports accounting.gui;
     exports accounting.model;
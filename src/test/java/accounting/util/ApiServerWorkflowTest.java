@@ -0,0 +1,157 @@
+package accounting.util;
+
+import accounting.api.ApiServer;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Headless API Server Workflow Test")
+public class ApiServerWorkflowTest {
+
+    private ImprovedDataManager dataManager;
+    private ApiServer server;
+    private String baseUrl;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        server = new ApiServer();
+        int port = server.start("127.0.0.1", 0);
+        baseUrl = "http://127.0.0.1:" + port + "/api/v1";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+        dataManager.shutdown();
+    }
+
+    private record Response(int status, JsonElement body) {
+    }
+
+    private Response call(String method, String path, String json) throws IOException {
+        return call(method, path, json, "application/json");
+    }
+
+    private Response call(String method, String path, String json, String contentType) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(baseUrl + path).toURL().openConnection();
+        connection.setRequestMethod(method);
+        if (json != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int status = connection.getResponseCode();
+        try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            String text = in == null ? "" : new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            return new Response(status, text.isEmpty() ? null : JsonParser.parseString(text));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    @DisplayName("إنشاء المستندات عبر HTTP يمر بنفس الترحيل وتظهر في التقارير")
+    void postsDocumentsThroughServiceLayer() throws Exception {
+        Response supplier = call("POST", "/contacts", "{\"name\":\"مورد\",\"is_supplier\":true}");
+        assertEquals(201, supplier.status());
+        int supplierId = supplier.body().getAsJsonObject().get("contact_id").getAsInt();
+        int customerId = call("POST", "/contacts", "{\"name\":\"عميل\",\"is_customer\":true}")
+            .body().getAsJsonObject().get("contact_id").getAsInt();
+
+        Response crop = call("POST", "/crops",
+            "{\"crop_name\":\"قمح\",\"allowed_pricing_units\":[\"كيلو\",\"أردب\"],\"conversion_factors\":{\"كيلو\":1,\"أردب\":[150]}}");
+        assertEquals(201, crop.status());
+        int cropId = crop.body().getAsJsonObject().get("crop_id").getAsInt();
+
+        String today = LocalDate.now().toString();
+        Response purchase = call("POST", "/purchases", "{\"crop_id\":" + cropId + ",\"supplier_id\":" + supplierId
+            + ",\"purchase_date\":\"" + today + "\",\"quantity_kg\":300,\"pricing_unit\":\"أردب\",\"unit_price\":1500}");
+        assertEquals(201, purchase.status());
+        assertEquals(3000.0, purchase.body().getAsJsonObject().get("total_cost").getAsDouble(), 0.001);
+
+        Response sale = call("POST", "/sales", "{\"crop_id\":" + cropId + ",\"customer_id\":" + customerId
+            + ",\"sale_date\":\"" + today + "\",\"quantity_sold_kg\":100,\"selling_unit_price\":12,"
+            + "\"amount_received\":500,\"payment_account_id\":10101}");
+        assertEquals(201, sale.status());
+        assertEquals(1200.0, sale.body().getAsJsonObject().get("total_sale_amount").getAsDouble(), 0.001);
+
+        JsonArray trialBalance = call("GET", "/reports/trial-balance", null).body().getAsJsonArray();
+        double debit = 0;
+        double credit = 0;
+        for (JsonElement row : trialBalance) {
+            debit += row.getAsJsonObject().get("total_debit").getAsDouble();
+            credit += row.getAsJsonObject().get("total_credit").getAsDouble();
+        }
+        assertTrue(debit > 0);
+        assertEquals(debit, credit, 0.001);
+
+        JsonArray receivables = call("GET", "/receivables", null).body().getAsJsonArray();
+        JsonObject balance = receivables.get(0).getAsJsonObject();
+        assertEquals(customerId, balance.get("contact_id").getAsInt());
+        assertEquals(700.0, balance.get("open_invoices").getAsDouble(), 0.001);
+
+        assertEquals(1, call("GET", "/sales?customer_id=" + customerId, null).body().getAsJsonArray().size());
+    }
+
+    @Test
+    @DisplayName("الأخطاء تُعاد برموز HTTP مناسبة والقراءات المتوازية تنجح")
+    void mapsErrorsAndServesConcurrentReads() throws Exception {
+        Response missing = call("GET", "/contacts/9999", null);
+        assertEquals(404, missing.status());
+        assertTrue(missing.body().getAsJsonObject().has("detail"));
+
+        assertEquals(400, call("POST", "/contacts", "{\"phone\":\"1\"}").status());
+        assertEquals(400, call("POST", "/contacts", "not json").status());
+        assertEquals(400, call("GET", "/reports/income-statement?from=yesterday", null).status());
+        assertEquals(404, call("GET", "/unknown", null).status());
+        assertEquals(400, call("POST", "/contacts", "{\"name\":\"عميل\",\"is_customer\":[true,false]}").status());
+        assertEquals(400, call("POST", "/journal/compound-entries", "{\"entry_date\":\"2025-01-01\","
+            + "\"lines\":[{\"account_id\":{},\"debit\":1},{\"account_id\":10101,\"credit\":1}]}").status());
+        assertEquals(415, call("POST", "/contacts", "{\"name\":\"عميل\"}", "text/plain").status());
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                String path = i % 2 == 0 ? "/reports/balance-sheet" : "/financial-accounts";
+                results.add(pool.submit(() -> call("GET", path, null).status()));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(200, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("الخادم لا يستمع على عنوان غير محلي بلا رمز دخول")
+    void refusesRemoteBindWithoutToken() {
+        ApiServer remote = new ApiServer();
+        assertThrows(IllegalStateException.class, () -> remote.start("0.0.0.0", 0));
+    }
+}
@@ -0,0 +1,151 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.FinancialSummaryService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Application Metrics Workflow Test")
+public class AppMetricsWorkflowTest {
+
+    private ImprovedDataManager dataManager;
+    private SaleDataService saleDataService;
+    private FinancialAccount cash;
+    private Crop crop;
+    private Contact customer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        saleDataService = new SaleDataService();
+
+        CropDataService cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "ذرة", List.of("كيلو"), Map.of())));
+        cash = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(LocalDate.now().minusDays(3));
+        purchase.setQuantityKg(100.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(2.0);
+        purchase.setTotalCost(200.0);
+        purchase.setInvoiceNumber("P-1");
+        new PurchaseDataService().addPurchase(purchase, null, 0);
+
+        AppMetrics.getInstance().reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        MetricsExporter.stop();
+        dataManager.shutdown();
+    }
+
+    private SaleRecord newSale(double quantity) {
+        SaleRecord sale = new SaleRecord();
+        sale.setCrop(crop);
+        sale.setCustomer(customer);
+        sale.setSaleDate(LocalDate.now());
+        sale.setQuantitySoldKg(quantity);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(5.0);
+        sale.setTotalSaleAmount(quantity * 5.0);
+        sale.setSaleInvoiceNumber("S-" + quantity);
+        return sale;
+    }
+
+    @Test
+    @DisplayName("الترحيل يُسجل في المؤقت، والفاشل في عداد الأخطاء، ويصدر حدث JFR برقم القيد")
+    void postingRecordsTimersErrorsAndFlightRecorderEvents() throws Exception {
+        int saleId;
+        Path recordingFile = Files.createTempFile("agri-metrics", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(BusinessOperationEvent.class);
+            recording.start();
+            saleId = saleDataService.addSale(newSale(10), cash, 0);
+            assertThrows(SQLException.class, () -> saleDataService.addSale(newSale(10_000), cash, 0));
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        AppMetrics metrics = AppMetrics.getInstance();
+        assertEquals(2, metrics.getTimers().get("posting.sale").getCount());
+        assertEquals(1, metrics.getCounters().get("posting.sale.errors").get());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(recordingFile);
+        Files.deleteIfExists(recordingFile);
+        RecordedEvent posted = events.stream()
+            .filter(e -> "accounting.BusinessOperation".equals(e.getEventType().getName()))
+            .filter(e -> ("SAL-" + saleId).equals(e.getString("transactionRef")))
+            .findFirst().orElseThrow();
+        assertEquals("posting.sale", posted.getString("operation"));
+        assertTrue(posted.getBoolean("success"));
+        assertTrue(events.stream().anyMatch(e -> "accounting.BusinessOperation".equals(e.getEventType().getName())
+            && !e.getBoolean("success")));
+    }
+
+    @Test
+    @DisplayName("التصدير بصيغة Prometheus و JSON وعبر نقطة HTTP المحلية")
+    void exportsPrometheusJsonAndHttp() throws Exception {
+        saleDataService.addSale(newSale(5), cash, 25);
+        new FinancialSummaryService().getTrialBalance(LocalDate.now());
+
+        String prometheus = MetricsExporter.toPrometheus();
+        assertTrue(prometheus.contains("agri_posting_sale_seconds_count 1"));
+        assertTrue(prometheus.contains("agri_report_trial_balance_seconds_count 1"));
+        assertTrue(prometheus.contains("# TYPE agri_jvm_heap_used_bytes gauge"));
+        assertTrue(prometheus.contains("agri_db_pool_active"));
+        assertTrue(prometheus.contains("agri_sql_query_seconds_count{query=\""));
+
+        JsonObject json = JsonParser.parseString(MetricsExporter.toJson()).getAsJsonObject();
+        assertEquals(1, json.getAsJsonObject("timers").getAsJsonObject("posting.sale").get("count").getAsLong());
+
+        Path file = Files.createTempFile("agri-metrics", ".prom");
+        MetricsExporter.writeTo(file);
+        assertTrue(Files.readString(file).contains("agri_posting_sale_seconds_count 1"));
+        Files.deleteIfExists(file);
+
+        int port = MetricsExporter.startHttpEndpoint(0);
+        try (InputStream in = URI.create("http://127.0.0.1:" + port + "/metrics").toURL().openStream()) {
+            String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            assertTrue(body.contains("agri_posting_sale_seconds_count 1"));
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.service.BankReconciliationService;
+import accounting.service.BankReconciliationService.ImportResult;
+import accounting.service.BankReconciliationService.MatchMethod;
+import accounting.service.BankReconciliationService.MatchResult;
+import accounting.service.BankReconciliationService.StatementLine;
+import accounting.service.BankReconciliationService.Summary;
+import accounting.service.BankStatementReader.Format;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Bank Reconciliation Workflow Test")
+public class BankReconciliationWorkflowTest {
+
+    private static final int BANK = 10102;
+    private static final int CASH = 10101;
+    private static final LocalDate DAY = LocalDate.of(2025, 7, 1);
+
+    private ImprovedDataManager dataManager;
+    private BankReconciliationService service;
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:bank_reconciliation?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        service = new BankReconciliationService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    /** قيد على البنك: الموجب إيداع (مدين البنك) والسالب سحب */
+    private void post(String ref, LocalDate date, double amount, String description) throws SQLException {
+        dataManager.executeTransaction(conn -> {
+            double debit = Math.max(amount, 0);
+            double credit = Math.max(-amount, 0);
+            dataManager.addLedgerEntry(conn, ref, date, BANK, debit, credit, description);
+            dataManager.addLedgerEntry(conn, ref, date, CASH, credit, debit, description);
+            return null;
+        });
+    }
+
+    private int entryId(String ref) throws SQLException {
+        return Integer.parseInt(scalar("SELECT entry_id FROM general_ledger WHERE account_id = " + BANK
+            + " AND transaction_ref = '" + ref + "'"));
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private ImportResult importCsv(String csv) throws SQLException {
+        return service.importStatement(BANK, "statement.csv", new StringReader(csv), Format.CSV);
+    }
+
+    private Map<String, StatementLine> linesByReference() throws SQLException {
+        return service.getStatementLines(BANK, DAY.minusDays(30), DAY.plusDays(30)).stream()
+            .filter(line -> line.reference() != null)
+            .collect(Collectors.toMap(StatementLine::reference, Function.identity(), (first, second) -> first));
+    }
+
+    @Test
+    @DisplayName("استيراد CSV و OFX بأعمدتهما وإشاراتهما، وإعادة الاستيراد لا تكرر السطور")
+    void importIsStreamingAndIdempotent() throws SQLException {
+        String csv = """
+            \uFEFFالتاريخ;البيان;المرجع;مدين;دائن
+            01/07/2025;"إيداع نقدي; فرع الدقي";D-1;;"1,250.50"
+            02/07/2025;شيك مسحوب;CHQ-7;٣٠٠;
+            03/07/2025;رسوم;F-1;(15.75);
+            تاريخ خاطئ;سطر تالف;X;10;
+            03/07/2025;رسوم;F-1;(15.75);
+            """;
+        ImportResult first = importCsv(csv);
+        assertEquals(4, first.imported());
+        assertEquals(0, first.duplicates());
+        assertEquals(1, first.skipped());
+        assertEquals(1, first.problems().size());
+
+        Map<String, StatementLine> lines = linesByReference();
+        assertEquals(1250.50, lines.get("D-1").amount(), 1e-9);
+        assertEquals("إيداع نقدي; فرع الدقي", lines.get("D-1").description());
+        assertEquals(-300.0, lines.get("CHQ-7").amount(), 1e-9);
+        assertEquals("2", scalar("SELECT COUNT(*) FROM bank_statement_lines WHERE reference = 'F-1' AND amount = -1575"));
+
+        ImportResult again = importCsv(csv);
+        assertEquals(0, again.imported());
+        assertEquals(4, again.duplicates());
+        assertEquals("4", scalar("SELECT COUNT(*) FROM bank_statement_lines"));
+        assertEquals("2025-07-01|2025-07-03|4", scalar("SELECT period_from || '|' || period_to || '|' || line_count "
+            + "FROM bank_statements WHERE statement_id = " + first.statementId()));
+
+        String ofx = """
+            OFXHEADER:100
+            <OFX><BANKMSGSRSV1><STMTTRNRS><STMTRS><BANKTRANLIST>
+            <STMTTRN><TRNTYPE>CREDIT<DTPOSTED>20250705120000<TRNAMT>2000.00<FITID>A1<NAME>تحويل وارد<MEMO>عميل</STMTTRN>
+            <STMTTRN>
+            <TRNTYPE>CHECK
+            <DTPOSTED>20250706
+            <TRNAMT>-450.25
+            <FITID>A2
+            <CHECKNUM>1001
+            </STMTTRN>
+            </BANKTRANLIST></STMTRS></STMTTRNRS></BANKMSGSRSV1></OFX>
+            """;
+        assertEquals(2, service.importStatement(BANK, "july.ofx", new StringReader(ofx), Format.OFX).imported());
+        assertEquals(2, service.importStatement(BANK, "july.ofx", new StringReader(ofx), Format.OFX).duplicates());
+        lines = linesByReference();
+        assertEquals(-450.25, lines.get("1001").amount(), 1e-9);
+        assertEquals(DAY.plusDays(5), lines.get("1001").date());
+        assertEquals("تحويل وارد عميل", service.getStatementLines(BANK, DAY.plusDays(4), DAY.plusDays(4)).get(0).description());
+
+        assertThrows(IllegalArgumentException.class,
+            () -> service.importStatement(CASH, "cash.csv", new StringReader(csv), Format.CSV));
+    }
+
+    @Test
+    @DisplayName("المطابقة الفردية بالمبلغ والنافذة، والمرجع يحسم بين مبلغين متساويين")
+    void oneToOneMatchingUsesReferences() throws SQLException {
+        post("PAY-1", DAY, -500, "شيك رقم CHQ-1001 للمورد");
+        post("PAY-2", DAY.plusDays(1), -500, "شيك رقم CHQ-1002 للمورد");
+        post("RCV-1", DAY.plusDays(2), 800, "تحصيل من عميل");
+        post("RCV-2", DAY.plusDays(20), 800, "تحصيل خارج النافذة");
+        // التواريخ وحدها تقابل الشيكين عكسياً؛ المرجع يصححها
+        importCsv("""
+            date,amount,reference,description
+            2025-07-01,-500,CHQ-1002,cheque
+            2025-07-02,-500,CHQ-1001,cheque
+            2025-07-04,800,DEP-9,deposit
+            2025-07-10,999,UNK-1,unknown
+            """);
+
+        MatchResult result = service.autoMatch(BANK, DAY, DAY.plusDays(10));
+        assertEquals(new MatchResult(3, 0, 1), result);
+        Map<String, StatementLine> lines = linesByReference();
+        assertEquals(List.of(entryId("PAY-2")), lines.get("CHQ-1002").matchedEntryIds());
+        assertEquals(List.of(entryId("PAY-1")), lines.get("CHQ-1001").matchedEntryIds());
+        assertEquals(MatchMethod.AUTO, lines.get("CHQ-1001").method());
+
+        // المطابق لا يُعاد؛ الجولة الثانية لا تجد جديداً
+        assertEquals(new MatchResult(0, 0, 1), service.autoMatch(BANK, DAY, DAY.plusDays(10)));
+        assertEquals(List.of("RCV-2"), service.getUnreconciledEntries(BANK, DAY, DAY.plusDays(30)).stream()
+            .map(BankReconciliationService.LedgerLine::transactionRef).toList());
+    }
+
+    @Test
+    @DisplayName("الإيداع المجمع يطابق عدة قيود مجموعها مبلغه تماماً")
+    void groupedDepositMatchesSeveralEntries() throws SQLException {
+        post("R-1", DAY, 300, "تحصيل 1");
+        post("R-2", DAY.plusDays(1), 200, "تحصيل 2");
+        post("R-3", DAY.plusDays(1), 150, "تحصيل 3");
+        post("R-4", DAY.plusDays(1), 120, "تحصيل 4");
+        post("P-1", DAY.plusDays(1), -50, "سحب");
+        importCsv("""
+            date,amount,reference,description
+            2025-07-02,650,DEP-1,إيداع مجمع
+            """);
+
+        assertEquals(new MatchResult(0, 1, 0), service.autoMatch(BANK, DAY, DAY.plusDays(5)));
+        StatementLine line = linesByReference().get("DEP-1");
+        assertEquals(MatchMethod.AUTO_GROUP, line.method());
+        assertEquals(List.of(entryId("R-1"), entryId("R-2"), entryId("R-3")), line.matchedEntryIds());
+        assertEquals(2, service.getUnreconciledEntries(BANK, DAY, DAY.plusDays(5)).size());
+    }
+
+    @Test
+    @DisplayName("المطابقة اليدوية تتحقق من المجموع، وحذف القيد المطابق يعيد السطر للمطابقة")
+    void manualMatchingAndStaleEntries() throws SQLException {
+        post("A", DAY, 100, "أ");
+        post("B", DAY.plusDays(10), 250, "ب");
+        post("C", DAY.plusDays(12), 100, "ج");
+        importCsv("""
+            date,amount,reference,description
+            2025-07-01,350,M-1,تسوية
+            2025-07-13,100,M-2,
+            """);
+        int manualLine = linesByReference().get("M-1").lineId();
+
+        assertThrows(SQLException.class, () -> service.match(manualLine, List.of(entryId("A"))));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM bank_reconciliation_matches"));
+        service.match(manualLine, List.of(entryId("A"), entryId("B")));
+        StatementLine matched = linesByReference().get("M-1");
+        assertTrue(matched.matched());
+        assertEquals(MatchMethod.MANUAL, matched.method());
+        assertThrows(SQLException.class, () -> service.match(manualLine, List.of(entryId("C"))));
+
+        assertEquals(new MatchResult(1, 0, 0), service.autoMatch(BANK, DAY, DAY.plusDays(20)));
+        Summary summary = service.getSummary(BANK, DAY, DAY.plusDays(20));
+        assertEquals(new Summary(2, 2, 0.0, 0, 0.0), summary);
+
+        // إعادة ترحيل المستند تحذف قيده؛ السطر يعود غير مطابق ويُطابق القيد الجديد
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("DELETE FROM general_ledger WHERE transaction_ref = 'C'")) {
+            stmt.executeUpdate();
+        }
+        post("C2", DAY.plusDays(12), 100, "ج معدل");
+        assertEquals(new MatchResult(1, 0, 0), service.autoMatch(BANK, DAY, DAY.plusDays(20)));
+        assertEquals(List.of(entryId("C2")), linesByReference().get("M-2").matchedEntryIds());
+
+        service.unmatch(manualLine);
+        assertFalse(linesByReference().get("M-1").matched());
+        assertEquals(new Summary(2, 1, 350.0, 2, 350.0), service.getSummary(BANK, DAY, DAY.plusDays(20)));
+    }
+
+    @Test
+    @DisplayName("20 ألف سطر كشف تُستورد وتُطابق مع 20 ألف قيد في ثوانٍ")
+    void matchesTwentyThousandLinesQuickly() throws SQLException {
+        int count = 20_000;
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        dataManager.executeTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO general_ledger "
+                    + "(transaction_ref, entry_date, account_id, debit, credit, description) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < count; i++) {
+                    long amount = 1000 + (i % 700) * 25L;
+                    boolean deposit = i % 3 != 0;
+                    stmt.setString(1, "TX-" + i);
+                    stmt.setString(2, FormatUtils.formatDateForDatabase(start.plusDays(i / 60)));
+                    stmt.setInt(3, BANK);
+                    stmt.setLong(4, deposit ? amount : 0);
+                    stmt.setLong(5, deposit ? 0 : amount);
+                    stmt.setString(6, "حركة " + i);
+                    stmt.addBatch();
+                    if (i % 1000 == 999) {
+                        stmt.executeBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            return null;
+        });
+
+        StringBuilder csv = new StringBuilder("date,amount,reference,description\n");
+        for (int i = 0; i < count; i++) {
+            long amount = 1000 + (i % 700) * 25L;
+            // البنك يقيد بعد يوم أو يومين من الدفتر
+            csv.append(start.plusDays(i / 60 + i % 3)).append(',')
+                .append(Money.toMajor(i % 3 != 0 ? amount : -amount)).append(',')
+                .append("TX-").append(i).append(",bank line\n");
+        }
+
+        long began = System.nanoTime();
+        ImportResult imported = importCsv(csv.toString());
+        MatchResult result = service.autoMatch(BANK, start, start.plusYears(1));
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        assertEquals(count, imported.imported());
+        assertEquals(count, result.oneToOne());
+        assertEquals(0, result.unmatched());
+        assertEquals("0", scalar("SELECT COUNT(*) FROM bank_reconciliation_matches m "
+            + "JOIN bank_statement_lines l ON l.line_id = m.line_id "
+            + "JOIN general_ledger g ON g.entry_id = m.entry_id WHERE l.reference <> g.transaction_ref"));
+        assertTrue(seconds < 20, "استغرق الاستيراد والمطابقة " + seconds + " ثانية");
+    }
+}
@@ -0,0 +1,198 @@
+package accounting.util;
+
+import accounting.model.FinancialAccount;
+import accounting.model.FinancialAccount.AccountType;
+import accounting.service.AccountDirectory;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.FinancialTransactionDataService.JournalLine;
+import accounting.service.LedgerIntegrityService;
+import accounting.service.LedgerIntegrityService.BatchResult;
+import accounting.service.PeriodLock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Compound Journal Workflow Test")
+public class CompoundJournalWorkflowTest {
+
+    private static final int CASH = 10101;
+    private static final int BANK = 10102;
+    private static final int PAYABLES = 20101;
+    private static final int SALES = 40101;
+    private static final int SALES_RETURNS = 40102;
+    private static final int GENERAL_EXPENSES = 50102;
+    private static final int INVENTORY_LOSSES = 50108;
+    private static final int EXPENSES_HEADER = 5;
+
+    private ImprovedDataManager dataManager;
+    private FinancialTransactionDataService service;
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:compound_journals?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        service = new FinancialTransactionDataService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private String ledgerCount() throws SQLException {
+        return scalar("SELECT COUNT(*) FROM general_ledger");
+    }
+
+    @Test
+    @DisplayName("مسير رواتب بمئتي سطر يُرحل برقم قيد واحد وتحديث رصيد واحد لكل حساب")
+    void payrollPostsAsOneEntry() throws SQLException {
+        List<JournalLine> lines = new ArrayList<>();
+        for (int i = 0; i < 198; i++) {
+            lines.add(new JournalLine(i % 2 == 0 ? GENERAL_EXPENSES : INVENTORY_LOSSES, 100.10, 0, "راتب عامل " + (i + 1)));
+        }
+        lines.add(new JournalLine(CASH, 0, 9909.90, null));
+        lines.add(new JournalLine(BANK, 0, 9909.90, "تحويل بنكي"));
+
+        String ref = service.addCompoundJournalEntry(LocalDate.of(2025, 3, 31), "رواتب مارس", lines);
+
+        assertTrue(ref.startsWith("MAN-"));
+        assertEquals("200", scalar("SELECT COUNT(*) FROM general_ledger WHERE transaction_ref = '" + ref + "'"));
+        assertEquals("0", scalar("SELECT SUM(debit) - SUM(credit) FROM general_ledger WHERE transaction_ref = '" + ref + "'"));
+        assertEquals("990990", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + GENERAL_EXPENSES));
+        assertEquals("990990", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + INVENTORY_LOSSES));
+        assertEquals("-990990", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + CASH));
+        assertEquals("-990990", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + BANK));
+        assertEquals("رواتب مارس", scalar("SELECT description FROM general_ledger WHERE account_id = " + CASH));
+        assertEquals("راتب عامل 2", scalar("SELECT description FROM general_ledger WHERE account_id = " + INVENTORY_LOSSES
+            + " ORDER BY entry_id LIMIT 1"));
+
+        assertTrue(service.deleteJournalEntry(ref));
+        assertEquals("0", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + GENERAL_EXPENSES));
+    }
+
+    @Test
+    @DisplayName("الدائن يزيد رصيد الالتزامات والإيرادات، والمرتجعات المدينة بطبيعتها، ويمر القيد بفحص السلامة")
+    void balancesFollowNaturalSide() throws SQLException {
+        service.addCompoundJournalEntry(LocalDate.of(2025, 4, 10), "مشتريات وإيرادات", List.of(
+            new JournalLine(GENERAL_EXPENSES, 100, 0, null),
+            new JournalLine(PAYABLES, 0, 100, null),
+            new JournalLine(CASH, 250, 0, null),
+            new JournalLine(SALES_RETURNS, 30, 0, null),
+            new JournalLine(SALES, 0, 280, null)));
+
+        assertEquals("10000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + PAYABLES));
+        assertEquals("28000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + SALES));
+        assertEquals("3000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + SALES_RETURNS));
+        assertEquals("10000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + GENERAL_EXPENSES));
+        assertEquals("25000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + CASH));
+
+        LedgerIntegrityService integrity = new LedgerIntegrityService();
+        BatchResult batch = integrity.verifyNextBatch(LedgerIntegrityService.MAX_BATCH_SIZE);
+        assertTrue(batch.isCaughtUp());
+        assertEquals(List.of(), batch.getIssues());
+        assertEquals(List.of(), integrity.sweep().getIssues());
+    }
+
+    @Test
+    @DisplayName("القيد المخالف يُرفض كله برقم السطر قبل كتابة أي شيء")
+    void invalidEntriesWriteNothing() throws SQLException {
+        LocalDate date = LocalDate.of(2025, 3, 31);
+        String before = ledgerCount();
+
+        IllegalArgumentException unbalanced = assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(
+            date, "غير متوازن", List.of(new JournalLine(GENERAL_EXPENSES, 0.1, 0, null), new JournalLine(GENERAL_EXPENSES, 0.2, 0, null),
+                new JournalLine(CASH, 0, 0.31, null))));
+        assertTrue(unbalanced.getMessage().contains("غير متوازن"));
+
+        IllegalArgumentException twoSided = assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(
+            date, "سطر بطرفين", List.of(new JournalLine(GENERAL_EXPENSES, 10, 0, null), new JournalLine(CASH, 5, 15, null))));
+        assertTrue(twoSided.getMessage().startsWith("السطر 2"));
+
+        IllegalArgumentException header = assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(
+            date, "حساب رئيسي", List.of(new JournalLine(GENERAL_EXPENSES, 10, 0, null), new JournalLine(EXPENSES_HEADER, 0, 10, null))));
+        assertTrue(header.getMessage().startsWith("السطر 2"));
+
+        assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(
+            date, "حساب مجهول", List.of(new JournalLine(99999, 10, 0, null), new JournalLine(CASH, 0, 10, null))));
+        assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(
+            date, "سطر واحد", List.of(new JournalLine(CASH, 0, 0, null))));
+
+        assertEquals(before, ledgerCount());
+        assertEquals("0", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + CASH));
+    }
+
+    @Test
+    @DisplayName("الفترة المقفلة ترفض القيود اليدوية البسيطة والمركبة، ورفع الإقفال يعيدها")
+    void lockedPeriodRejectsEntries() throws SQLException {
+        List<JournalLine> lines = List.of(new JournalLine(GENERAL_EXPENSES, 50, 0, null), new JournalLine(CASH, 0, 50, null));
+        assertNull(PeriodLock.getLockedThrough());
+
+        PeriodLock.lockThrough(LocalDate.of(2025, 3, 31));
+        assertEquals(LocalDate.of(2025, 3, 31), PeriodLock.getLockedThrough());
+        assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(LocalDate.of(2025, 3, 31), "مارس", lines));
+        FinancialAccount expense = AccountDirectory.get(GENERAL_EXPENSES).toAccount();
+        FinancialAccount cash = AccountDirectory.get(CASH).toAccount();
+        assertThrows(IllegalArgumentException.class, () -> service.addJournalEntry(expense, cash, LocalDate.of(2025, 1, 5), "يناير", 10));
+        assertEquals("0", ledgerCount());
+
+        assertNotNull(service.addCompoundJournalEntry(LocalDate.of(2025, 4, 1), "أبريل", lines));
+
+        PeriodLock.lockThrough(null);
+        assertFalse(PeriodLock.isLocked(LocalDate.of(2025, 3, 31)));
+        assertNotNull(service.addCompoundJournalEntry(LocalDate.of(2025, 3, 31), "مارس", lines));
+        assertEquals("4", ledgerCount());
+    }
+
+    @Test
+    @DisplayName("منتقي الحسابات يبحث بالرقم والاسم ويتحدث بعد إضافة حساب أو إيقافه")
+    void directorySearchFollowsAccountChanges() throws SQLException {
+        assertEquals(List.of(GENERAL_EXPENSES), AccountDirectory.search("50102", 10).stream()
+            .map(AccountDirectory.Entry::accountId).toList());
+        assertTrue(AccountDirectory.search("", 500).stream().noneMatch(entry -> entry.accountId() == EXPENSES_HEADER));
+        assertFalse(AccountDirectory.get(EXPENSES_HEADER).isPostable());
+
+        FinancialAccountDataService accounts = new FinancialAccountDataService();
+        accounts.addAccount(new FinancialAccount(0, "وقود الجرارات", AccountType.EXPENSE, 0, LocalDate.of(2025, 1, 1)));
+        List<AccountDirectory.Entry> found = AccountDirectory.search("وقود", 10);
+        assertEquals(1, found.size());
+        int fuel = found.get(0).accountId();
+        assertEquals(List.of(fuel), AccountDirectory.search(String.valueOf(fuel), 10).stream()
+            .map(AccountDirectory.Entry::accountId).toList());
+
+        String ref = service.addCompoundJournalEntry(LocalDate.of(2025, 5, 1), "وقود", List.of(
+            new JournalLine(fuel, 75, 0, null), new JournalLine(CASH, 0, 75, null)));
+        assertNotNull(ref);
+
+        // الحساب بحركات لا يُوقف، ويبقى في المنتقي
+        assertThrows(SQLException.class, () -> accounts.deleteAccount(fuel));
+        assertEquals(1, AccountDirectory.search("وقود", 10).size());
+
+        accounts.addAccount(new FinancialAccount(0, "أسمدة", AccountType.EXPENSE, 0, LocalDate.of(2025, 1, 1)));
+        int fertilizer = AccountDirectory.search("أسمدة", 10).get(0).accountId();
+        accounts.deleteAccount(fertilizer);
+        assertTrue(AccountDirectory.search("أسمدة", 10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> service.addCompoundJournalEntry(LocalDate.of(2025, 5, 2), "أسمدة", List.of(
+            new JournalLine(fertilizer, 75, 0, null), new JournalLine(CASH, 0, 75, null))));
+        assertEquals(PAYABLES, AccountDirectory.get(PAYABLES).accountId());
+    }
+}
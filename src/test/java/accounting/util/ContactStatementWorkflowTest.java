@@ -0,0 +1,208 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.ContactStatementEntry;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.model.SaleReturn;
+import accounting.service.ContactDataService;
+import accounting.service.ContactStatementService;
+import accounting.service.ContactStatementService.AgingBuckets;
+import accounting.service.ContactStatementService.StatementLine;
+import accounting.service.ContactStatementService.StatementSummary;
+import accounting.service.CropDataService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Contact Statement Engine Workflow Test")
+public class ContactStatementWorkflowTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 6, 30);
+
+    private ImprovedDataManager dataManager;
+    private CropDataService cropDataService;
+    private ContactDataService contactDataService;
+    private FinancialAccountDataService financialAccountDataService;
+    private PurchaseDataService purchaseDataService;
+    private SaleDataService saleDataService;
+    private PaymentDataService paymentDataService;
+    private ContactStatementService contactStatementService;
+
+    private Crop crop;
+    private FinancialAccount cash;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        cropDataService = new CropDataService();
+        contactDataService = new ContactDataService();
+        financialAccountDataService = new FinancialAccountDataService();
+        purchaseDataService = new PurchaseDataService();
+        saleDataService = new SaleDataService();
+        paymentDataService = new PaymentDataService();
+        contactStatementService = new ContactStatementService();
+
+        int cropId = cropDataService.addCrop(new Crop(0, "طماطم", List.of("كيلو"), Map.of()));
+        crop = cropDataService.getCropById(cropId);
+        cash = financialAccountDataService.getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Customer statement merges all movements with opening balance, running balance and aging")
+    void testCustomerStatement() throws SQLException {
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        addPurchase(supplier, AS_OF.minusDays(120), 200.0, 2000.0);
+
+        SaleRecord oldSale = addSale(customer, AS_OF.minusDays(100), 100.0, 1000.0, "S-1", 200.0);
+        addPayment(customer, "RECEIVE", AS_OF.minusDays(50), 300.0);
+        addSale(customer, AS_OF.minusDays(10), 50.0, 500.0, "S-2", 0);
+
+        SaleReturn saleReturn = new SaleReturn();
+        saleReturn.setOriginalSale(oldSale);
+        saleReturn.setReturnDate(AS_OF.minusDays(5));
+        saleReturn.setQuantityKg(10.0);
+        saleReturn.setReturnReason("تالف");
+        saleReturn.setRefundAmount(100.0);
+        saleDataService.addSaleReturn(saleReturn);
+
+        List<StatementLine> lines = new ArrayList<>();
+        double[] opening = new double[1];
+        StatementSummary summary = contactStatementService.streamStatement(customer.getContactId(), AS_OF.minusDays(60), AS_OF,
+            new ContactStatementService.StatementListener() {
+                @Override
+                public void onStatementStart(int contactId, double openingBalance) {
+                    opening[0] = openingBalance;
+                }
+
+                @Override
+                public void onLine(StatementLine line) {
+                    lines.add(line);
+                }
+            });
+
+        assertEquals(800.0, opening[0], 0.001, "Opening balance should be the sale minus the payment received with it.");
+        assertEquals(3, lines.size());
+        assertEquals(ContactStatementService.ENTRY_RECEIVE, lines.get(0).getEntryType());
+        assertEquals(500.0, lines.get(0).getRunningBalance(), 0.001);
+        assertEquals(ContactStatementService.ENTRY_SALE, lines.get(1).getEntryType());
+        assertEquals(1000.0, lines.get(1).getRunningBalance(), 0.001);
+        assertEquals(ContactStatementService.ENTRY_SALE_RETURN, lines.get(2).getEntryType());
+        assertEquals(900.0, summary.getClosingBalance(), 0.001);
+
+        AgingBuckets aging = summary.getAging();
+        assertEquals(500.0, aging.getCurrent(), 0.001);
+        assertEquals(0.0, aging.getDays31To60(), 0.001);
+        assertEquals(0.0, aging.getDays61To90(), 0.001);
+        assertEquals(400.0, aging.getOver90(), 0.001, "Credits settle the oldest invoice first.");
+        assertEquals(summary.getClosingBalance(), aging.getTotal(), 0.001);
+
+        // The table-facing statement keeps its opening row and balance descriptions
+        List<ContactStatementEntry> entries = contactDataService.getContactStatement(customer.getContactId(), AS_OF.minusDays(60), AS_OF);
+        assertEquals(4, entries.size());
+        assertEquals("رصيد أول المدة", entries.get(0).getReason());
+        assertEquals("الباقي عليه", entries.get(3).getBalanceDescription());
+        assertEquals(900.0, entries.get(3).getBalance(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Supplier balances, deletions and the all-contacts batch scan")
+    void testSupplierStatementAndBatch() throws SQLException {
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+
+        addPurchase(supplier, AS_OF.minusDays(40), 100.0, 1000.0);
+        addPayment(supplier, "PAY", AS_OF.minusDays(20), 400.0);
+        SaleRecord sale = addSale(customer, AS_OF.minusDays(3), 10.0, 150.0, "S-1", 0);
+
+        List<ContactStatementEntry> entries = contactDataService.getContactStatement(supplier.getContactId(), AS_OF.minusDays(60), AS_OF);
+        ContactStatementEntry last = entries.get(entries.size() - 1);
+        assertEquals("الباقي له", last.getBalanceDescription());
+        assertEquals(600.0, last.getBalance(), 0.001);
+        assertEquals(-600.0, contactStatementService.getAging(supplier.getContactId(), AS_OF).getDays31To60(), 0.001);
+
+        saleDataService.deleteSale(sale.getSaleId());
+        assertTrue(contactStatementService.getStatementLines(customer.getContactId(), AS_OF.minusDays(60), AS_OF).isEmpty(),
+            "Deleting a document should remove its statement lines.");
+
+        List<StatementSummary> summaries = new ArrayList<>();
+        contactStatementService.streamAllStatements(AS_OF.minusDays(60), AS_OF, new ContactStatementService.StatementListener() {
+            @Override
+            public void onLine(StatementLine line) {
+            }
+
+            @Override
+            public void onStatementEnd(StatementSummary summary) {
+                summaries.add(summary);
+            }
+        });
+        assertEquals(1, summaries.size());
+        assertEquals(supplier.getContactId(), summaries.get(0).getContactId());
+        assertEquals(-600.0, summaries.get(0).getClosingBalance(), 0.001);
+    }
+
+    private void addPurchase(Contact supplier, LocalDate date, double quantity, double total) throws SQLException {
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(date);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(total / quantity);
+        purchase.setTotalCost(total);
+        purchase.setInvoiceNumber("P-" + date);
+        purchaseDataService.addPurchase(purchase, null, 0);
+    }
+
+    private SaleRecord addSale(Contact customer, LocalDate date, double quantity, double total, String invoice,
+                               double received) throws SQLException {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(date);
+        sale.setQuantitySoldKg(quantity);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(total / quantity);
+        sale.setTotalSaleAmount(total);
+        sale.setSaleInvoiceNumber(invoice);
+        saleDataService.addSale(sale, cash, received);
+        return sale;
+    }
+
+    private void addPayment(Contact contact, String type, LocalDate date, double amount) throws SQLException {
+        Payment payment = new Payment();
+        payment.setContact(contact);
+        payment.setPaymentAccount(cash);
+        payment.setPaymentDate(date);
+        payment.setAmount(amount);
+        payment.setPaymentType(type);
+        payment.setDescription("سند");
+        paymentDataService.addPayment(payment);
+    }
+}
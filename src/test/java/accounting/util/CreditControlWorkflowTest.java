@@ -0,0 +1,298 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.model.SaleReturn;
+import accounting.service.ContactDataService;
+import accounting.service.CreditControlService;
+import accounting.service.CreditControlService.CreditDecision;
+import accounting.service.CreditControlService.CreditLimitExceededException;
+import accounting.service.CreditControlService.CreditStatus;
+import accounting.service.CreditControlService.Outcome;
+import accounting.service.CreditControlService.Policy;
+import accounting.service.CropDataService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.OpenItemService;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Credit Control Workflow Test")
+public class CreditControlWorkflowTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 3, 10);
+
+    private ImprovedDataManager dataManager;
+    private SaleDataService saleDataService;
+    private PaymentDataService paymentDataService;
+    private CreditControlService creditControl;
+    private final List<CreditDecision> notified = new ArrayList<>();
+    private final Consumer<CreditDecision> listener = notified::add;
+
+    private Crop crop;
+    private FinancialAccount cash;
+    private Contact customer;
+    private int invoices;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:credit_control?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        CropDataService cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        saleDataService = new SaleDataService();
+        paymentDataService = new PaymentDataService();
+        creditControl = new CreditControlService();
+        CreditControlService.addListener(listener);
+
+        crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بطاطس", List.of("كيلو"), Map.of())));
+        cash = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(DAY.minusDays(30));
+        purchase.setQuantityKg(10_000.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(1.0);
+        purchase.setTotalCost(10_000.0);
+        purchase.setInvoiceNumber("P-1");
+        new PurchaseDataService().addPurchase(purchase, null, 0);
+
+        creditControl.setCreditTerms(customer.getContactId(), 1000, null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        CreditControlService.removeListener(listener);
+        CreditControlService.setDefaultPolicy(Policy.BLOCK);
+        dataManager.shutdown();
+    }
+
+    private SaleRecord sale(double total) {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(DAY);
+        sale.setQuantitySoldKg(10.0);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(total / 10.0);
+        sale.setTotalSaleAmount(total);
+        sale.setSaleInvoiceNumber("S-" + (++invoices));
+        return sale;
+    }
+
+    private SaleRecord addSale(double total, double received) throws SQLException {
+        SaleRecord sale = sale(total);
+        saleDataService.addSale(sale, cash, received);
+        return sale;
+    }
+
+    private double exposure() throws SQLException {
+        return creditControl.getStatus(customer.getContactId()).getExposure();
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    @Test
+    @DisplayName("بيع يتجاوز الحد يُرفض ولا يُرحل شيء منه، والرفض يبقى مسجلاً")
+    void saleOverLimitIsBlocked() throws SQLException {
+        addSale(600, 0);
+        // المحصل عند البيع لا يدخل في التعرض
+        addSale(500, 200);
+        assertEquals(900.0, exposure(), 0.001);
+
+        CreditLimitExceededException blocked = assertThrows(CreditLimitExceededException.class, () -> addSale(150, 0));
+        assertEquals(Outcome.BLOCKED, blocked.getDecision().getOutcome());
+        assertEquals("2", scalar("SELECT COUNT(*) FROM sales"));
+        assertEquals(900.0, exposure(), 0.001);
+
+        List<CreditDecision> decisions = creditControl.getDecisions(customer.getContactId());
+        assertEquals(1, decisions.size());
+        assertEquals(Outcome.BLOCKED, decisions.get(0).getOutcome());
+        assertEquals("S-3", decisions.get(0).getReference());
+        assertEquals(150.0, decisions.get(0).getAmount(), 0.001);
+        assertEquals(900.0, decisions.get(0).getExposure(), 0.001);
+        assertEquals(1000.0, decisions.get(0).getCreditLimit(), 0.001);
+        assertEquals(1, notified.size());
+
+        // عميل بلا حد لا يُفحص
+        creditControl.setCreditTerms(customer.getContactId(), 0, null);
+        addSale(5000, 0);
+        assertEquals(5900.0, exposure(), 0.001);
+    }
+
+    @Test
+    @DisplayName("التحصيل والمرتجع يخفضان التعرض، وتعديل الفاتورة يُفحص بعد عكس القديمة")
+    void settlementsReleaseCredit() throws SQLException {
+        SaleRecord first = addSale(900, 0);
+        assertThrows(CreditLimitExceededException.class, () -> addSale(200, 0));
+
+        Payment payment = new Payment();
+        payment.setContact(customer);
+        payment.setPaymentAccount(cash);
+        payment.setPaymentDate(DAY);
+        payment.setAmount(300.0);
+        payment.setPaymentType("RECEIVE");
+        payment.setDescription("تحصيل");
+        paymentDataService.addPayment(payment, null);
+        assertEquals(600.0, exposure(), 0.001);
+        SaleRecord second = addSale(200, 0);
+
+        SaleReturn saleReturn = new SaleReturn();
+        saleReturn.setOriginalSale(first);
+        saleReturn.setReturnDate(DAY);
+        saleReturn.setQuantityKg(1.0);
+        saleReturn.setReturnReason("تالف");
+        saleReturn.setRefundAmount(100.0);
+        saleDataService.addSaleReturn(saleReturn);
+        assertEquals(700.0, exposure(), 0.001);
+
+        // 200 تصبح 500: الفاتورة القديمة تُعكس قبل فحص الجديدة فيصل التعرض إلى الحد تماماً
+        second.setTotalSaleAmount(500.0);
+        second.setSellingUnitPrice(50.0);
+        saleDataService.updateSale(second, cash, 0);
+        assertEquals(1000.0, exposure(), 0.001);
+
+        assertEquals(scalar("SELECT open_invoices - unapplied_credits FROM contact_open_balances "
+            + "WHERE side = 'AR' AND contact_id = " + customer.getContactId()), "1000.0");
+    }
+
+    @Test
+    @DisplayName("سياسة التحذير والتجاوز الصريح يسمحان بالبيع ويسجلان القرار مع معاملته")
+    void warnAndOverrideRecordDecisions() throws SQLException {
+        creditControl.setCreditTerms(customer.getContactId(), 1000, Policy.WARN);
+        addSale(1500, 0);
+        assertEquals(1500.0, exposure(), 0.001);
+
+        creditControl.setCreditTerms(customer.getContactId(), 1000, null);
+        assertThrows(CreditLimitExceededException.class, () -> addSale(100, 0));
+        try (CreditControlService.CreditOverride override = CreditControlService.override("عميل قديم", "manager")) {
+            addSale(100, 0);
+        }
+        assertThrows(CreditLimitExceededException.class, () -> addSale(100, 0));
+
+        CreditControlService.setDefaultPolicy(Policy.WARN);
+        addSale(100, 0);
+
+        List<CreditDecision> decisions = creditControl.getDecisions(customer.getContactId());
+        assertEquals(List.of(Outcome.WARNED, Outcome.BLOCKED, Outcome.OVERRIDDEN, Outcome.BLOCKED, Outcome.WARNED),
+            decisions.stream().map(CreditDecision::getOutcome).toList().reversed());
+        assertEquals("عميل قديم", decisions.get(2).getReason());
+        assertEquals("manager", decisions.get(2).getUserName());
+        assertEquals(5, notified.size());
+        assertEquals("1", scalar("SELECT COUNT(*) FROM audit_log WHERE table_name = 'contacts' AND operation = 'UPDATE' "
+            + "AND new_values LIKE '%credit_policy=WARN%'"));
+    }
+
+    @Test
+    @DisplayName("الدفعة ترى ما رحلته قبل اعتمادها، وإلغاؤها لا يترك أثراً في التعرض")
+    void batchSeesPendingExposureAndRollsBack() throws SQLException {
+        assertThrows(CreditLimitExceededException.class, () -> dataManager.executeBatchTransaction(conn -> {
+            saleDataService.addSale(sale(600), cash, 0);
+            saleDataService.addSale(sale(600), cash, 0);
+            return null;
+        }));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM sales"));
+        assertEquals(0.0, exposure(), 0.001);
+        assertEquals(Outcome.BLOCKED, creditControl.getDecisions(customer.getContactId()).get(0).getOutcome());
+
+        dataManager.executeBatchTransaction(conn -> {
+            saleDataService.addSale(sale(600), cash, 0);
+            assertEquals(0.0, exposure(), 0.001, "غير المعتمد لا يظهر في الخريطة");
+            saleDataService.addSale(sale(400), cash, 0);
+            return null;
+        });
+        assertEquals(1000.0, exposure(), 0.001);
+    }
+
+    @Test
+    @DisplayName("الخريطة تُبنى من دفتر البنود المفتوحة بعد إعادة بنائه أو تعديل الحد مباشرة")
+    void linesReloadFromOpenItems() throws SQLException {
+        addSale(800, 0);
+        new OpenItemService().rebuildAll();
+        assertEquals(800.0, exposure(), 0.001);
+
+        try (Connection conn = dataManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE contacts SET credit_limit = 5000 WHERE contact_id = " + customer.getContactId());
+        }
+        assertEquals(1000.0, creditControl.getStatus(customer.getContactId()).getCreditLimit(), 0.001);
+        CreditControlService.invalidate();
+        assertEquals(5000.0, creditControl.getStatus(customer.getContactId()).getCreditLimit(), 0.001);
+        assertEquals(4200.0, creditControl.getStatus(customer.getContactId()).getAvailable(), 0.001);
+        addSale(4000, 0);
+    }
+
+    /** حالة العميل كما يراها خيط آخر (خارج معاملة هذا الخيط) */
+    private CreditStatus statusFrom(ExecutorService other) throws SQLException {
+        try {
+            return other.submit(() -> creditControl.getStatus(customer.getContactId())).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    @Test
+    @DisplayName("البيع المقبول يحجز مبلغه حتى انتهاء معاملته، والإلغاء يفك الحجز")
+    void acceptedSaleReservesUntilCompletion() throws SQLException {
+        assertEquals(0.0, exposure(), 0.001);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        try {
+            CreditStatus[] seen = new CreditStatus[1];
+            SQLException rolledBack = assertThrows(SQLException.class, () -> dataManager.executeBatchTransaction(conn -> {
+                saleDataService.addSale(sale(600), cash, 0);
+                seen[0] = statusFrom(other);
+                throw new SQLException("إلغاء");
+            }));
+            assertEquals("إلغاء", rolledBack.getMessage());
+            assertEquals(0.0, seen[0].getExposure(), 0.001);
+            assertEquals(600.0, seen[0].getReserved(), 0.001);
+            assertEquals(400.0, seen[0].getAvailable(), 0.001);
+            CreditStatus afterRollback = statusFrom(other);
+            assertEquals(0.0, afterRollback.getReserved(), 0.001);
+            assertEquals(1000.0, afterRollback.getAvailable(), 0.001);
+
+            addSale(600, 0);
+            CreditStatus afterCommit = statusFrom(other);
+            assertEquals(600.0, afterCommit.getExposure(), 0.001);
+            assertEquals(0.0, afterCommit.getReserved(), 0.001);
+            assertThrows(CreditLimitExceededException.class, () -> addSale(600, 0));
+        } finally {
+            other.shutdown();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.DashboardService;
+import accounting.service.DashboardService.DailyKpi;
+import accounting.service.DashboardService.DashboardSummary;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Dashboard KPI Store Workflow Test")
+public class DashboardKpiWorkflowTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    private ImprovedDataManager dataManager;
+    private DashboardService dashboardService;
+    private SaleDataService saleDataService;
+    private SaleRecord sale;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        dashboardService = new DashboardService();
+        saleDataService = new SaleDataService();
+
+        CropDataService cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        Crop crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بصل", List.of("كيلو"), Map.of())));
+        FinancialAccount cash = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(TODAY.minusDays(5));
+        purchase.setQuantityKg(100.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(10.0);
+        purchase.setTotalCost(1000.0);
+        purchase.setInvoiceNumber("P-1");
+        new PurchaseDataService().addPurchase(purchase, cash, 400.0);
+
+        sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(TODAY.minusDays(2));
+        sale.setQuantitySoldKg(50.0);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(16.0);
+        sale.setTotalSaleAmount(800.0);
+        sale.setSaleInvoiceNumber("S-1");
+        saleDataService.addSale(sale, cash, 300.0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Daily series and summary follow ledger postings incrementally")
+    void testIncrementalSeries() throws SQLException {
+        List<DailyKpi> series = dashboardService.getKpiSeries(7);
+        assertEquals(7, series.size());
+        assertEquals(TODAY.minusDays(6), series.get(0).getDate());
+        assertEquals(TODAY, series.get(6).getDate());
+
+        DailyKpi beforePurchase = series.get(0);
+        DailyKpi purchaseDay = series.get(1);
+        DailyKpi saleDay = series.get(4);
+        assertEquals(0.0, beforePurchase.getCashBalance(), 0.001);
+        assertEquals(-400.0, purchaseDay.getCashBalance(), 0.001);
+        assertEquals(600.0, purchaseDay.getPayables(), 0.001);
+        assertEquals(-100.0, saleDay.getCashBalance(), 0.001);
+        assertEquals(500.0, saleDay.getReceivables(), 0.001);
+        assertEquals(800.0, saleDay.getRevenue(), 0.001);
+        assertEquals(500.0, saleDay.getCostOfGoodsSold(), 0.001);
+        assertEquals(300.0, saleDay.getNetProfit(), 0.001);
+
+        DashboardSummary summary = dashboardService.getDashboardSummary();
+        assertEquals(-100.0, summary.getCashBalance(), 0.001);
+        assertEquals(500.0, summary.getReceivables(), 0.001);
+        assertEquals(600.0, summary.getPayables(), 0.001);
+        assertEquals(300.0, summary.getNetProfit(), 0.001);
+
+        assertEquals(2, dashboardService.getRecentTransactions(10).size());
+        assertTrue(dashboardService.getRecentTransactions(10).get(0).startsWith("بيع"));
+
+        saleDataService.deleteSale(sale.getSaleId());
+        DailyKpi afterDelete = dashboardService.getKpiSeries(7).get(4);
+        assertEquals(0.0, afterDelete.getRevenue(), 0.001, "Deleting ledger entries must flow into the daily totals.");
+        assertEquals(0.0, afterDelete.getNetProfit(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Rebuilding from the general ledger reproduces the incremental store")
+    void testRebuild() throws SQLException {
+        List<DailyKpi> incremental = dashboardService.getKpiSeries(30);
+
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM ledger_daily_totals");
+        }
+        assertEquals(0.0, dashboardService.getKpiSeries(30).get(25).getRevenue(), 0.001);
+
+        dashboardService.rebuildKpiStore();
+        List<DailyKpi> rebuilt = dashboardService.getKpiSeries(30);
+        for (int i = 0; i < incremental.size(); i++) {
+            assertEquals(incremental.get(i).getCashBalance(), rebuilt.get(i).getCashBalance(), 0.001);
+            assertEquals(incremental.get(i).getReceivables(), rebuilt.get(i).getReceivables(), 0.001);
+            assertEquals(incremental.get(i).getNetProfit(), rebuilt.get(i).getNetProfit(), 0.001);
+        }
+        assertFalse(dashboardService.getExpenseBreakdown().isEmpty(), "Cost of goods sold appears in the expense breakdown.");
+    }
+}
@@ -0,0 +1,189 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Season;
+import accounting.service.SaleDataService;
+import accounting.service.SeasonDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.temporal.IsoFields;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Date Dimension Workflow Test")
+public class DateDimensionWorkflowTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 6, 20);
+    private static final int CASH = 10101;
+    private static final int CAPITAL = 30101;
+
+    private ImprovedDataManager dataManager;
+    private SeasonDataService seasonDataService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:date_dim?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        seasonDataService = new SeasonDataService();
+        new SyntheticDataGenerator(new SyntheticDataGenerator.Config()
+            .seed(11)
+            .startDate(START)
+            .days(20)
+            .salesPerDay(3)
+            .crops(2)
+            .suppliers(2)
+            .customers(3)).generate(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private String scalar(String sql, Object... params) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private int seasonId(String name) throws SQLException {
+        return seasonDataService.getAllSeasons().stream()
+            .filter(season -> season.getName().equals(name)).findFirst().orElseThrow().getId();
+    }
+
+    private void assertContiguous() throws SQLException {
+        assertEquals("0", scalar("SELECT MAX(epoch_day) - MIN(epoch_day) + 1 - COUNT(*) FROM date_dim"));
+    }
+
+    @Test
+    @DisplayName("كل يوم في الجدول يطابق حساب java.time لسماته، والمدى متصل يغطي المستندات")
+    void attributesMatchJavaTime() throws SQLException {
+        assertEquals("2024-01-01", scalar("SELECT MIN(calendar_date) FROM date_dim"));
+        assertEquals(FormatUtils.formatDateForDatabase(LocalDate.now().plusYears(1).withMonth(12).withDayOfMonth(31)),
+            scalar("SELECT MAX(calendar_date) FROM date_dim"));
+        assertContiguous();
+        assertEquals("0", scalar("SELECT COUNT(*) FROM sales s LEFT JOIN date_dim d ON d.calendar_date = s.sale_date "
+            + "WHERE d.calendar_date IS NULL"));
+
+        // نهاية السنة تقع في الأسبوع الأول من سنة ISO التالية
+        assertEquals("2025|1|202501|4|202412|1", scalar("SELECT iso_year || '|' || iso_week || '|' || week_key || '|' "
+            + "|| quarter || '|' || month_key || '|' || day_of_week FROM date_dim WHERE calendar_date = '2024-12-30'"));
+
+        int rows = 0;
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM date_dim");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                LocalDate date = LocalDate.parse(rs.getString("calendar_date"));
+                assertEquals(date.toEpochDay(), rs.getLong("epoch_day"), date.toString());
+                assertEquals(date.getYear() * 100 + date.getMonthValue(), rs.getInt("month_key"), date.toString());
+                assertEquals(date.get(IsoFields.QUARTER_OF_YEAR), rs.getInt("quarter"), date.toString());
+                assertEquals(date.get(IsoFields.WEEK_BASED_YEAR), rs.getInt("iso_year"), date.toString());
+                assertEquals(date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR), rs.getInt("iso_week"), date.toString());
+                assertEquals(date.getDayOfWeek().getValue(), rs.getInt("day_of_week"), date.toString());
+                assertEquals(date.getYear(), rs.getInt("fiscal_year"), date.toString());
+                assertEquals(date.getMonthValue(), rs.getInt("fiscal_period"), date.toString());
+                rows++;
+            }
+        }
+        assertTrue(rows > 365 * 2);
+    }
+
+    @Test
+    @DisplayName("موسم اليوم يتبع المواسم عند إضافتها وحذفها")
+    void seasonFollowsSeasonChanges() throws SQLException {
+        String winter = String.valueOf(seasonId("الموسم الشتوي 2024"));
+        String summer = String.valueOf(seasonId("الموسم الصيفي 2024"));
+        String seasonOf = "SELECT season_id FROM date_dim WHERE calendar_date = ?";
+        assertEquals(winter, scalar(seasonOf, "2024-06-26"));
+        assertEquals(summer, scalar(seasonOf, "2024-07-02"));
+        assertNull(scalar(seasonOf, "2025-01-01"));
+
+        Season promo = new Season(0, "عروض نهاية يونيو", LocalDate.of(2024, 6, 25), LocalDate.of(2024, 7, 3), Season.Status.ACTIVE);
+        seasonDataService.addSeason(promo);
+        assertEquals(String.valueOf(promo.getId()), scalar(seasonOf, "2024-06-26"));
+        assertEquals(summer, scalar(seasonOf, "2024-07-02"));
+
+        seasonDataService.deleteSeason(promo.getId());
+        assertEquals(winter, scalar(seasonOf, "2024-06-26"));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM date_dim WHERE season_id = ?", promo.getId()));
+    }
+
+    @Test
+    @DisplayName("مبيعات الشهر بالربط مع date_dim تطابق التجميع على نص التاريخ")
+    void monthlySalesUseDimension() throws SQLException {
+        Map<String, Double> expected = new LinkedHashMap<>();
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT substr(sale_date, 6, 2) AS month, SUM(total_sale_amount) "
+                 + "FROM sales WHERE sale_date LIKE '2024-%' GROUP BY month ORDER BY month");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                expected.put(rs.getString(1), rs.getDouble(2));
+            }
+        }
+        assertEquals(2, expected.size());
+
+        Map<String, Number> chart = new SaleDataService().getMonthlySalesForChart(2024);
+        assertEquals(expected.keySet(), chart.keySet());
+        expected.forEach((month, total) -> assertEquals(total, chart.get(month).doubleValue(), 0.001, month));
+        assertTrue(new SaleDataService().getMonthlySalesForChart(2023).isEmpty());
+    }
+
+    @Test
+    @DisplayName("قيد بتاريخ خارج الجدول يمده بسنوات متصلة، والامتداد يُلغى مع معاملته")
+    void postingExtendsDimension() throws SQLException {
+        assertThrows(SQLException.class, () -> dataManager.executeTransaction(conn -> {
+            dataManager.addLedgerEntry(conn, "OLD-1", LocalDate.of(2005, 3, 1), CASH, 10, 0, "قيد ملغى");
+            throw new IllegalStateException("إلغاء");
+        }));
+        assertEquals("2024-01-01", scalar("SELECT MIN(calendar_date) FROM date_dim"));
+
+        dataManager.executeTransaction(conn -> {
+            dataManager.addLedgerEntry(conn, "OLD-2", LocalDate.of(2010, 3, 1), CASH, 10, 0, "رصيد قديم");
+            dataManager.addLedgerEntry(conn, "OLD-2", LocalDate.of(2010, 3, 1), CAPITAL, 0, 10, "رصيد قديم");
+            return null;
+        });
+        assertEquals("2010-01-01", scalar("SELECT MIN(calendar_date) FROM date_dim"));
+        assertContiguous();
+
+        dataManager.executeTransaction(conn -> {
+            dataManager.addLedgerEntry(conn, "NEXT-1", LocalDate.now().plusYears(3), CASH, 10, 0, "قيد مستقبلي");
+            dataManager.addLedgerEntry(conn, "NEXT-1", LocalDate.now().plusYears(3), CAPITAL, 0, 10, "قيد مستقبلي");
+            return null;
+        });
+        assertEquals(FormatUtils.formatDateForDatabase(LocalDate.now().plusYears(3).withMonth(12).withDayOfMonth(31)),
+            scalar("SELECT MAX(calendar_date) FROM date_dim"));
+        assertContiguous();
+    }
+
+    @Test
+    @DisplayName("قارئ التاريخ السريع يطابق DATE_FORMATTER ويرفض ما ليس تاريخاً")
+    void fastDecoderMatchesFormatter() {
+        for (LocalDate date = LocalDate.of(1896, 1, 1); date.getYear() < 2105; date = date.plusDays(1)) {
+            String text = date.format(FormatUtils.DATE_FORMATTER);
+            assertEquals(date, FormatUtils.parseDateFromDatabase(text));
+            assertEquals(date.toEpochDay(), FormatUtils.epochDayFromDatabase(text), text);
+        }
+        assertEquals(LocalDate.parse("2023-02-30", FormatUtils.DATE_FORMATTER), FormatUtils.parseDateFromDatabase("2023-02-30"));
+        assertNull(FormatUtils.parseDateFromDatabase(" "));
+        assertThrows(IllegalArgumentException.class, () -> FormatUtils.epochDayFromDatabase("2023-02-29"));
+        assertThrows(IllegalArgumentException.class, () -> FormatUtils.epochDayFromDatabase("2023-1-01"));
+        assertThrows(IllegalArgumentException.class, () -> FormatUtils.epochDayFromDatabase(null));
+    }
+}
@@ -0,0 +1,154 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.DocumentBatchService;
+import accounting.service.DocumentBatchService.BatchResult;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Batch Document Rendering Workflow Test")
+public class DocumentBatchWorkflowTest {
+
+    private static final LocalDate FROM = LocalDate.of(2025, 5, 1);
+    private static final LocalDate TO = LocalDate.of(2025, 5, 31);
+
+    @TempDir
+    Path outputDir;
+
+    private ImprovedDataManager dataManager;
+    private DocumentBatchService documentBatchService;
+    private List<Integer> customerIds;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        documentBatchService = new DocumentBatchService();
+
+        CropDataService cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        SaleDataService saleDataService = new SaleDataService();
+        Crop crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "خيار", List.of("كيلو"), Map.of())));
+        FinancialAccount cash = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "00", "", true, false)).orElseThrow();
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(FROM.minusDays(10));
+        purchase.setQuantityKg(10000.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(2.0);
+        purchase.setTotalCost(20000.0);
+        purchase.setInvoiceNumber("P-1");
+        new PurchaseDataService().addPurchase(purchase, null, 0);
+
+        customerIds = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            Contact customer = contactDataService.addContact(new Contact(0, "عميل <" + i + ">", "0" + i, "", false, true)).orElseThrow();
+            customerIds.add(customer.getContactId());
+            for (int day = 1; day <= 12 * i; day += 2) {
+                SaleRecord sale = new SaleRecord();
+                sale.setCustomer(customer);
+                sale.setCrop(crop);
+                sale.setSaleDate(FROM.plusDays(day % 30));
+                sale.setQuantitySoldKg(10.0);
+                sale.setSellingPricingUnit("كيلو");
+                sale.setSpecificSellingFactor(1.0);
+                sale.setSellingUnitPrice(5.0);
+                sale.setTotalSaleAmount(50.0);
+                sale.setSaleInvoiceNumber("S-" + i + "-" + day);
+                saleDataService.addSale(sale, cash, day % 4 == 1 ? 50.0 : 0);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        FormatUtils.setDisplayDigits(FormatUtils.Digits.LATIN);
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Statements for many contacts are rendered in parallel as paginated RTL HTML")
+    void testRenderStatements() throws SQLException, IOException {
+        AtomicInteger lastProgress = new AtomicInteger();
+        BatchResult result = documentBatchService.renderStatements(null, FROM, TO, outputDir,
+            (completed, total) -> lastProgress.accumulateAndGet(completed, Math::max), () -> false);
+
+        assertFalse(result.isCancelled());
+        assertEquals(6, result.getRequested(), "Every contact with movements, including the supplier.");
+        assertEquals(6, result.getFiles().size());
+        assertEquals(6, lastProgress.get());
+
+        String busiest = Files.readString(outputDir.resolve("statement-" + customerIds.get(4) + ".html"), StandardCharsets.UTF_8);
+        assertTrue(busiest.contains("dir=\"rtl\""));
+        assertTrue(busiest.contains("عميل &lt;5&gt;"), "Contact names must be HTML-escaped.");
+        assertTrue(busiest.contains("رصيد منقول"), "Long statements should carry the balance over to the next page.");
+        assertTrue(busiest.contains("صفحة 2 من 2"));
+    }
+
+    @Test
+    @DisplayName("Invoices render from one bulk fetch and cancelled batches stop early")
+    void testRenderInvoicesAndCancel() throws SQLException, IOException {
+        BatchResult invoices = documentBatchService.renderSaleInvoices(FROM, TO, customerIds.get(0), outputDir.resolve("invoices"), null, null);
+        assertEquals(6, invoices.getFiles().size());
+        String invoice = Files.readString(invoices.getFiles().get(0), StandardCharsets.UTF_8);
+        assertTrue(invoice.contains("فاتورة بيع رقم"));
+
+        BatchResult cancelled = documentBatchService.renderStatements(customerIds, FROM, TO, outputDir.resolve("cancelled"), null, () -> true);
+        assertTrue(cancelled.isCancelled());
+        assertTrue(cancelled.getFiles().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Amounts and dates follow the chosen display digits like the rest of the app")
+    void testRenderFollowsDisplayDigits() {
+        SaleRecord sale = new SaleRecord();
+        sale.setSaleDate(LocalDate.of(2025, 5, 7));
+        sale.setQuantitySoldKg(1234.5);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSellingUnitPrice(2.0);
+        sale.setTotalSaleAmount(2469.0);
+        sale.setSaleInvoiceNumber("S-9");
+
+        String latin = HtmlDocumentRenderer.renderSaleInvoice(sale, 469.0);
+        assertTrue(latin.contains("التاريخ: 07/05/2025"));
+        assertTrue(latin.contains(">1,234.50<"));
+        assertTrue(latin.contains(">2,000.00<"));
+
+        FormatUtils.setDisplayDigits(FormatUtils.Digits.ARABIC_INDIC);
+        String arabic = HtmlDocumentRenderer.renderSaleInvoice(sale, 469.0);
+        assertTrue(arabic.contains("التاريخ: ٠٧/٠٥/٢٠٢٥"));
+        assertTrue(arabic.contains(">١٬٢٣٤٫٥٠<"));
+        assertFalse(arabic.contains("2,469.00"));
+    }
+}
@@ -0,0 +1,139 @@
+package accounting.util;
+
+import accounting.formatter.CellTextCache;
+import accounting.formatter.FormatUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.text.DecimalFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Formatting Workflow Test")
+public class FormattingWorkflowTest {
+
+    @AfterEach
+    void tearDown() {
+        FormatUtils.setDisplayDigits(FormatUtils.Digits.LATIN);
+    }
+
+    @Test
+    @DisplayName("المبالغ تطابق نمط #,##0.00 السابق، والتقريب على القرش كما يُرحل")
+    void currencyMatchesPreviousPattern() {
+        DecimalFormat previous = new DecimalFormat("#,##0.00");
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            double value = random.nextLong(-1_000_000_000_000L, 1_000_000_000_000L) / 100.0;
+            assertEquals(previous.format(value), FormatUtils.formatCurrency(value), String.valueOf(value));
+        }
+        assertEquals("0.00", FormatUtils.formatCurrency(0));
+        assertEquals("999.99", FormatUtils.formatCurrency(999.99));
+        assertEquals("1,000.00", FormatUtils.formatCurrency(1000));
+        assertEquals("-1,000,000.05", FormatUtils.formatCurrency(-1_000_000.05));
+        // نصف القرش بعيداً عن الصفر مثل Money.toMinor، وصفر سالب لا يظهر بإشارة
+        assertEquals("1.01", FormatUtils.formatCurrency(1.005));
+        assertEquals("-0.13", FormatUtils.formatCurrency(-0.125));
+        assertEquals("0.00", FormatUtils.formatCurrency(-0.001));
+        assertEquals(previous.format(1e17), FormatUtils.formatCurrency(1e17));
+        assertEquals(previous.format(Double.NaN), FormatUtils.formatCurrency(Double.NaN));
+        assertEquals("12.35", Money.format(1235));
+
+        assertEquals("1234.50", FormatUtils.formatNumber(1234.5));
+        assertEquals("-0.50", FormatUtils.formatNumber(-0.5));
+        assertEquals("", FormatUtils.formatNumber(null));
+        assertEquals("12.35 كجم", FormatUtils.formatQuantityWithUnit(12.345, "كجم"));
+    }
+
+    @Test
+    @DisplayName("التواريخ تطابق dd/MM/yyyy و yyyy-MM-dd")
+    void datesMatchFormatters() {
+        DateTimeFormatter display = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+        for (LocalDate date = LocalDate.of(1, 1, 1); date.getYear() < 10000; date = date.plusDays(37)) {
+            assertEquals(date.format(display), FormatUtils.formatDateForDisplay(date));
+            assertEquals(date.format(FormatUtils.DATE_FORMATTER), FormatUtils.formatDateForDatabase(date));
+        }
+        LocalDate farFuture = LocalDate.of(12345, 6, 7);
+        assertEquals(farFuture.format(display), FormatUtils.formatDateForDisplay(farFuture));
+        assertEquals("", FormatUtils.formatDateForDisplay(null));
+        assertNull(FormatUtils.formatDateForDatabase(null));
+    }
+
+    @Test
+    @DisplayName("الأرقام العربية الهندية للعرض فقط، ونص التخزين يبقى لاتينياً")
+    void arabicIndicDigits() {
+        FormatUtils.setDisplayDigits(FormatUtils.Digits.ARABIC_INDIC);
+        assertEquals("١٬٢٣٤٫٥٠", FormatUtils.formatCurrency(1234.5));
+        assertEquals("-٠٫٠٥", FormatUtils.formatNumber(-0.05));
+        assertEquals("٠٧/٠٣/٢٠٢٤", FormatUtils.formatDateForDisplay(LocalDate.of(2024, 3, 7)));
+        assertEquals("2024-03-07", FormatUtils.formatDateForDatabase(LocalDate.of(2024, 3, 7)));
+        assertEquals(LocalDate.of(2024, 3, 7), FormatUtils.parseDateFromDatabase("2024-03-07"));
+    }
+
+    @Test
+    @DisplayName("التنسيق من عدة خيوط معاً لا يخلط النتائج")
+    void formattingIsThreadSafe() throws Exception {
+        DecimalFormat previous = new DecimalFormat("#,##0.00");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                long seed = t;
+                results.add(pool.submit(() -> {
+                    Random random = new Random(seed);
+                    int mismatches = 0;
+                    for (int i = 0; i < 20_000; i++) {
+                        double value = random.nextLong(-100_000_000_000L, 100_000_000_000L) / 100.0;
+                        String expected;
+                        synchronized (previous) {
+                            expected = previous.format(value);
+                        }
+                        LocalDate date = LocalDate.ofEpochDay(random.nextInt(40_000));
+                        if (!expected.equals(FormatUtils.formatCurrency(value))
+                                || !date.format(FormatUtils.DATE_FORMATTER).equals(FormatUtils.formatDateForDatabase(date))) {
+                            mismatches++;
+                        }
+                    }
+                    return mismatches;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(0, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("الخلية تعيد نص آخر قيمة دون تنسيق جديد حتى تتغير القيمة أو شكل الأرقام")
+    void cellTextIsCachedPerValue() {
+        int[] formatted = {0};
+        CellTextCache<Double> cell = new CellTextCache<>((out, value) -> {
+            formatted[0]++;
+            FormatUtils.appendCurrency(out, value);
+        });
+
+        String first = cell.of(1500.0);
+        assertEquals("1,500.00", first);
+        assertSame(first, cell.of(1500.0));
+        assertEquals(1, formatted[0]);
+
+        assertEquals("20.00", cell.of(20.0));
+        assertNull(cell.of(null));
+        assertEquals("20.00", cell.of(20.0));
+        assertEquals(2, formatted[0]);
+
+        FormatUtils.setDisplayDigits(FormatUtils.Digits.ARABIC_INDIC);
+        assertEquals("٢٠٫٠٠", cell.of(20.0));
+        assertEquals(3, formatted[0]);
+    }
+}
@@ -0,0 +1,219 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.InventoryAdjustment;
+import accounting.model.PurchaseRecord;
+import accounting.model.PurchaseReturn;
+import accounting.model.SaleRecord;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.InventoryLotService;
+import accounting.service.InventoryLotService.Lot;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Inventory Lot Workflow Test")
+public class InventoryLotWorkflowTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 5, 1);
+
+    private ImprovedDataManager dataManager;
+    private CropDataService cropDataService;
+    private PurchaseDataService purchaseDataService;
+    private SaleDataService saleDataService;
+    private InventoryLotService lotService;
+
+    private Crop crop;
+    private Contact supplier;
+    private Contact customer;
+    private int invoices;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:inventory_lots?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        purchaseDataService = new PurchaseDataService();
+        saleDataService = new SaleDataService();
+        lotService = new InventoryLotService();
+
+        crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "طماطم", List.of("كيلو"), Map.of())));
+        supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private PurchaseRecord purchase(double quantity, double unitCost, LocalDate expiry) throws SQLException {
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(DAY);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(unitCost);
+        purchase.setTotalCost(quantity * unitCost);
+        purchase.setInvoiceNumber("P-" + (++invoices));
+        purchase.setExpiryDate(expiry);
+        purchaseDataService.addPurchase(purchase, null, 0);
+        return purchase;
+    }
+
+    private SaleRecord sale(double quantity) throws SQLException {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(DAY);
+        sale.setQuantitySoldKg(quantity);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(10.0);
+        sale.setTotalSaleAmount(quantity * 10.0);
+        sale.setSaleInvoiceNumber("S-" + (++invoices));
+        saleDataService.addSale(sale, null, 0);
+        return sale;
+    }
+
+    private String remaining() throws SQLException {
+        StringBuilder text = new StringBuilder();
+        for (Lot lot : lotService.getOpenLots(crop.getCropId())) {
+            text.append(lot.getSourceId()).append('=').append(FormatUtils.formatNumber(lot.getRemainingKg())).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private void assertLotsMatchStock() throws SQLException {
+        assertEquals(Double.parseDouble(scalar("SELECT current_stock_kg FROM inventory WHERE crop_id = " + crop.getCropId())),
+            Double.parseDouble(scalar("SELECT COALESCE(SUM(remaining_kg), 0) FROM inventory_lots WHERE crop_id = " + crop.getCropId())),
+            1e-6);
+    }
+
+    @Test
+    @DisplayName("البيع يصرف الأقرب انتهاءً أولاً ثم الأقدم، وحذفه يعيد الكمية إلى دفعاتها")
+    void salesConsumeFefoThenFifo() throws SQLException {
+        PurchaseRecord plain = purchase(100, 2.0, null);
+        PurchaseRecord late = purchase(100, 3.0, DAY.plusDays(10));
+        PurchaseRecord early = purchase(100, 4.0, DAY.plusDays(5));
+        assertEquals(early.getPurchaseId() + "=100.00 " + late.getPurchaseId() + "=100.00 " + plain.getPurchaseId() + "=100.00", remaining());
+
+        SaleRecord first = sale(150);
+        assertEquals(late.getPurchaseId() + "=50.00 " + plain.getPurchaseId() + "=100.00", remaining());
+        sale(80);
+        assertEquals(plain.getPurchaseId() + "=70.00", remaining());
+        assertLotsMatchStock();
+
+        saleDataService.deleteSale(first.getSaleId());
+        assertEquals(early.getPurchaseId() + "=100.00 " + late.getPurchaseId() + "=50.00 " + plain.getPurchaseId() + "=70.00", remaining());
+        assertLotsMatchStock();
+        assertEquals(3, Integer.parseInt(scalar("SELECT COUNT(*) FROM inventory_lots")));
+    }
+
+    @Test
+    @DisplayName("مرتجع الشراء وحذفه يصرفان من دفعة الفاتورة نفسها")
+    void purchaseReturnsHitTheirLot() throws SQLException {
+        PurchaseRecord older = purchase(100, 2.0, null);
+        PurchaseRecord newer = purchase(100, 2.5, null);
+
+        PurchaseReturn purchaseReturn = new PurchaseReturn();
+        purchaseReturn.setOriginalPurchase(newer);
+        purchaseReturn.setReturnDate(DAY);
+        purchaseReturn.setQuantityKg(30.0);
+        purchaseReturn.setReturnReason("تالف عند الاستلام");
+        purchaseReturn.setReturnedCost(75.0);
+        purchaseDataService.addPurchaseReturn(purchaseReturn);
+        assertEquals(older.getPurchaseId() + "=100.00 " + newer.getPurchaseId() + "=70.00", remaining());
+
+        purchaseDataService.deletePurchase(older.getPurchaseId());
+        assertEquals(newer.getPurchaseId() + "=70.00", remaining());
+        assertLotsMatchStock();
+    }
+
+    @Test
+    @DisplayName("التالف يُشطب من دفعته بتسوية مخزون، والمنتهي الصلاحية يُشطب دفعة دفعة")
+    void spoilageWritesOffLots() throws SQLException {
+        PurchaseRecord keep = purchase(100, 2.0, DAY.plusDays(30));
+        PurchaseRecord spoiled = purchase(50, 2.0, DAY.plusDays(40));
+        PurchaseRecord expired = purchase(40, 2.0, DAY.plusDays(3));
+        sale(10);
+
+        long spoiledLot = lotService.getOpenLots(crop.getCropId()).stream()
+            .filter(lot -> lot.getSourceId() == spoiled.getPurchaseId()).findFirst().orElseThrow().getLotId();
+        InventoryAdjustment damage = new InventoryAdjustment();
+        damage.setCrop(crop);
+        damage.setAdjustmentDate(DAY.plusDays(1));
+        damage.setAdjustmentType(InventoryAdjustment.AdjustmentType.DAMAGE);
+        damage.setQuantityKg(20.0);
+        damage.setReason("عفن");
+        damage.setLotId(spoiledLot);
+        int damageId = cropDataService.addInventoryAdjustment(damage);
+        assertEquals(expired.getPurchaseId() + "=30.00 " + keep.getPurchaseId() + "=100.00 " + spoiled.getPurchaseId() + "=30.00", remaining());
+        assertEquals(String.valueOf(spoiledLot), scalar("SELECT lot_id FROM inventory_adjustments WHERE adjustment_id = " + damageId));
+
+        assertTrue(lotService.writeOffExpired(DAY.plusDays(3)).isEmpty());
+        List<Integer> adjustments = lotService.writeOffExpired(DAY.plusDays(4));
+        assertEquals(1, adjustments.size());
+        assertEquals(keep.getPurchaseId() + "=100.00 " + spoiled.getPurchaseId() + "=30.00", remaining());
+        assertEquals("DAMAGE|30.0", scalar("SELECT adjustment_type || '|' || quantity_kg FROM inventory_adjustments "
+            + "WHERE adjustment_id = " + adjustments.get(0)));
+        assertLotsMatchStock();
+    }
+
+    @Test
+    @DisplayName("إعادة البناء من الحركات تطابق الترحيل بنفس أرقام الدفعات، والإلغاء لا يمس الذاكرة")
+    void rebuildMatchesIncrementalPosting() throws SQLException {
+        dataManager.executeBatchTransaction(conn -> {
+            for (int i = 0; i < 500; i++) {
+                purchase(10, 1.0 + i % 7, i % 3 == 0 ? null : DAY.plusDays(500 - i));
+            }
+            return null;
+        });
+        SaleRecord big = sale(2345);
+        sale(17.5);
+        saleDataService.deleteSale(big.getSaleId());
+        sale(1200);
+        String before = remaining();
+        assertEquals(500, Integer.parseInt(scalar("SELECT COUNT(*) FROM inventory_lots")));
+
+        assertThrows(SQLException.class, () -> dataManager.executeBatchTransaction(conn -> {
+            sale(100);
+            purchase(5, 1.0, DAY);
+            throw new IllegalStateException("إلغاء");
+        }));
+        assertEquals(before, remaining());
+
+        lotService.rebuildAll();
+        assertEquals(before, remaining());
+        assertEquals("0", scalar("SELECT COUNT(*) FROM inventory_movements WHERE quantity_kg > 0 AND lot_id IS NULL "
+            + "AND reference_type <> 'SALE_DELETE'"));
+        assertLotsMatchStock();
+    }
+}
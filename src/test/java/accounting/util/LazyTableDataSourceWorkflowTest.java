@@ -0,0 +1,212 @@
+package accounting.util;
+
+import accounting.model.CashFlowEntry;
+import accounting.model.LedgerEntry;
+import accounting.model.SaleRecord;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.FinancialTransactionDataService.LedgerTotals;
+import accounting.service.SaleDataService;
+import accounting.service.SaleDataService.SaleFilter;
+import accounting.service.SaleDataService.SalesTotals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Lazy Table Data Source Workflow Test")
+public class LazyTableDataSourceWorkflowTest {
+
+    private static final int PAGE_SIZE = 50;
+
+    private ImprovedDataManager dataManager;
+    private FinancialTransactionDataService transactionService;
+    private LocalDate start;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        transactionService = new FinancialTransactionDataService();
+        start = LocalDate.now().minusDays(40);
+        new SyntheticDataGenerator(new SyntheticDataGenerator.Config()
+            .seed(23)
+            .startDate(start)
+            .days(30)
+            .salesPerDay(6)
+            .crops(3)
+            .suppliers(3)
+            .customers(6)).generate(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    /** منفذان متزامنان: الصفحة تُجلب وتُطبق داخل get نفسها */
+    private static <T> LazyTableDataSource<T> directSource(int cachedPages) {
+        return new LazyTableDataSource<>(PAGE_SIZE, cachedPages, Runnable::run, Runnable::run);
+    }
+
+    @Test
+    @DisplayName("التمرير في الدفتر كاملاً يعطي نفس السطور بذاكرة محدودة بعدد الصفحات")
+    void scrollingThroughLedgerKeepsMemoryBounded() throws SQLException {
+        List<LedgerEntry> all = transactionService.getGeneralLedgerEntries(null, null);
+        assertTrue(all.size() > PAGE_SIZE * 5);
+
+        LazyTableDataSource<LedgerEntry> source = directSource(3);
+        source.load(() -> transactionService.getGeneralLedgerTotals(null, null).getCount(),
+            page -> transactionService.getGeneralLedgerPage(null, null, page));
+        assertEquals(all.size(), source.getRows().size());
+        assertEquals(all.size(), source.rowCountProperty().get());
+
+        for (int i = 0; i < all.size(); i++) {
+            LedgerEntry row = source.getRows().get(i);
+            assertNotNull(row);
+            assertEquals(all.get(i).getEntryId(), row.getEntryId());
+            assertTrue(source.cachedRowCount() <= 3 * PAGE_SIZE);
+        }
+
+        // القفز إلى آخر الجدول بلا صفحات سابقة محملة يمر عبر offset
+        LazyTableDataSource<LedgerEntry> jump = directSource(3);
+        jump.load(() -> (long) all.size(), page -> transactionService.getGeneralLedgerPage(null, null, page));
+        assertEquals(all.get(all.size() - 1).getEntryId(), jump.getRows().get(all.size() - 1).getEntryId());
+    }
+
+    @Test
+    @DisplayName("صفحة keyset تطابق صفحة offset في كل ترتيب مدعوم")
+    void keysetAndOffsetPagesMatch() throws SQLException {
+        for (String key : List.of("date", "reference", "description", "debit", "credit")) {
+            for (boolean ascending : new boolean[] { true, false }) {
+                List<LedgerEntry> first = transactionService.getGeneralLedgerPage(null, null,
+                    new PageRequest<>(null, 0, PAGE_SIZE, key, ascending));
+                LedgerEntry tail = first.get(first.size() - 1);
+
+                List<LedgerEntry> byOffset = transactionService.getGeneralLedgerPage(null, null,
+                    new PageRequest<>(null, PAGE_SIZE, PAGE_SIZE, key, ascending));
+                List<LedgerEntry> byKeyset = transactionService.getGeneralLedgerPage(null, null,
+                    new PageRequest<>(tail, PAGE_SIZE, PAGE_SIZE, key, ascending));
+                assertEquals(ids(byOffset), ids(byKeyset), key + (ascending ? " asc" : " desc"));
+            }
+        }
+
+        SaleDataService saleService = new SaleDataService();
+        SaleFilter filter = new SaleFilter(null, null, null, null, null);
+        List<SaleRecord> firstSales = saleService.getSalesPage(filter, new PageRequest<>(null, 0, PAGE_SIZE, "customer", true));
+        List<SaleRecord> offsetSales = saleService.getSalesPage(filter, new PageRequest<>(null, PAGE_SIZE, PAGE_SIZE, "customer", true));
+        List<SaleRecord> keysetSales = saleService.getSalesPage(filter,
+            new PageRequest<>(firstSales.get(firstSales.size() - 1), PAGE_SIZE, PAGE_SIZE, "customer", true));
+        assertEquals(offsetSales.stream().map(SaleRecord::getSaleId).toList(),
+            keysetSales.stream().map(SaleRecord::getSaleId).toList());
+    }
+
+    @Test
+    @DisplayName("المجاميع من SQL تطابق مجموع الصفوف، ورصيد صفحة النقدية يشمل الافتتاحي")
+    void aggregatesMatchLoadedRows() throws SQLException {
+        LocalDate from = start.plusDays(10);
+        LocalDate to = start.plusDays(20);
+
+        List<LedgerEntry> lines = transactionService.getGeneralLedgerEntries(from, to);
+        LedgerTotals ledgerTotals = transactionService.getGeneralLedgerTotals(from, to);
+        assertEquals(lines.size(), ledgerTotals.getCount());
+        assertEquals(lines.stream().mapToDouble(LedgerEntry::getDebit).sum(), ledgerTotals.getTotalDebit(), 0.01);
+        assertEquals(lines.stream().mapToDouble(LedgerEntry::getCredit).sum(), ledgerTotals.getTotalCredit(), 0.01);
+
+        List<CashFlowEntry> cashFlow = transactionService.getCashFlowEntries(from, to);
+        assertEquals(cashFlow.size(), transactionService.countCashFlowEntries(from, to, null));
+        List<CashFlowEntry> page = transactionService.getCashFlowPage(from, to, null,
+            new PageRequest<>(null, 0, cashFlow.size() + 1, null, true));
+        assertEquals(cashFlow.size(), page.size());
+        for (int i = 0; i < page.size(); i++) {
+            assertEquals(cashFlow.get(i).getBalance(), page.get(i).getBalance(), 0.01);
+        }
+        LedgerTotals cashTotals = transactionService.getCashFlowTotals(from, to);
+        assertEquals(cashFlow.stream().mapToDouble(CashFlowEntry::getInflow).sum(), cashTotals.getTotalDebit(), 0.01);
+
+        SaleDataService saleService = new SaleDataService();
+        List<SaleRecord> sales = saleService.getSales(from, to, null, null, null);
+        SalesTotals salesTotals = saleService.getSalesTotals(new SaleFilter(from, to, null, null, null));
+        assertEquals(sales.size(), salesTotals.getCount());
+        assertEquals(sales.stream().mapToDouble(SaleRecord::getTotalSaleAmount).sum(), salesTotals.getTotalAmount(), 0.01);
+        assertEquals(sales.stream().mapToDouble(SaleRecord::getBalance).sum(), salesTotals.getTotalBalance(), 0.01);
+        assertEquals(salesTotals.getTotalAmount(), salesTotals.getTotalPaid() + salesTotals.getTotalBalance(), 0.01);
+    }
+
+    @Test
+    @DisplayName("الصفحة الفاشلة تبقى فارغة برسالة واحدة حتى التحديث، وفشل طلب قديم لا يُعرض")
+    void failedPageIsNotRequestedAgainUntilRefresh() {
+        List<Runnable> queued = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        AtomicInteger fetches = new AtomicInteger();
+        AtomicBoolean broken = new AtomicBoolean(true);
+
+        LazyTableDataSource<Integer> source = new LazyTableDataSource<>(PAGE_SIZE, 3, queued::add, Runnable::run);
+        source.setOnFailed(failures::add);
+        source.load(() -> 3L * PAGE_SIZE, page -> {
+            fetches.incrementAndGet();
+            if (broken.get() && page.offset() == 0) {
+                throw new SQLException("no such column");
+            }
+            List<Integer> rows = new ArrayList<>();
+            for (int i = 0; i < page.limit(); i++) {
+                rows.add((int) page.offset() + i);
+            }
+            return rows;
+        });
+        runAll(queued);
+
+        for (int i = 0; i < 5; i++) {
+            assertNull(source.getRows().get(i));
+            runAll(queued);
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(1, failures.size());
+        assertNull(source.getRows().get(PAGE_SIZE));
+        runAll(queued);
+        assertEquals(PAGE_SIZE, source.getRows().get(PAGE_SIZE));
+        assertEquals(2, fetches.get());
+
+        // طلب معلق قبل refresh يفشل بعده: لا رسالة ولا علامة فشل على المصدر الجديد
+        source.refresh();
+        assertNull(source.getRows().get(0));
+        source.refresh();
+        runAll(queued);
+        assertEquals(3, fetches.get());
+        assertEquals(1, failures.size());
+        assertNull(source.getRows().get(0));
+        runAll(queued);
+        assertEquals(4, fetches.get());
+        assertEquals(2, failures.size());
+
+        broken.set(false);
+        source.refresh();
+        runAll(queued);
+        assertNull(source.getRows().get(0));
+        runAll(queued);
+        assertEquals(0, source.getRows().get(0));
+        assertEquals(2, failures.size());
+    }
+
+    private static void runAll(List<Runnable> queued) {
+        while (!queued.isEmpty()) {
+            queued.remove(0).run();
+        }
+    }
+
+    private static List<Integer> ids(List<LedgerEntry> lines) {
+        List<Integer> ids = new ArrayList<>();
+        for (LedgerEntry line : lines) {
+            ids.add(line.getEntryId());
+        }
+        return ids;
+    }
+}
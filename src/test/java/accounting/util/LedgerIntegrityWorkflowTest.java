@@ -0,0 +1,177 @@
+package accounting.util;
+
+import accounting.service.LedgerIntegrityMonitor;
+import accounting.service.LedgerIntegrityService;
+import accounting.service.LedgerIntegrityService.BatchResult;
+import accounting.service.LedgerIntegrityService.IntegrityIssue;
+import accounting.service.LedgerIntegrityService.IssueKind;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Ledger Integrity Workflow Test")
+public class LedgerIntegrityWorkflowTest {
+
+    private static final int BATCH = 100;
+
+    private ImprovedDataManager dataManager;
+    private LedgerIntegrityService integrityService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        integrityService = new LedgerIntegrityService();
+        new SyntheticDataGenerator(new SyntheticDataGenerator.Config()
+            .seed(41)
+            .startDate(LocalDate.now().minusDays(20))
+            .days(15)
+            .salesPerDay(4)
+            .crops(3)
+            .suppliers(2)
+            .customers(4)).generate(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private BatchResult catchUp() throws SQLException {
+        BatchResult batch;
+        do {
+            batch = integrityService.verifyNextBatch(BATCH);
+        } while (!batch.isCaughtUp());
+        return batch;
+    }
+
+    private long maxEntryId() throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(entry_id) FROM general_ledger")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate(sql);
+        }
+    }
+
+    private IntegrityIssue openIssue(IssueKind kind, String subject) throws SQLException {
+        return integrityService.getOpenIssues().stream()
+            .filter(issue -> issue.getKind() == kind && issue.getSubject().equals(subject))
+            .findFirst().orElse(null);
+    }
+
+    @Test
+    @DisplayName("بيانات الترحيل السليمة تمر بالفحص التزايدي والمسح، والعلامة تتقدم دفعةً دفعة")
+    void postedDataIsConsistentAndMarkAdvances() throws SQLException {
+        BatchResult first = integrityService.verifyNextBatch(BATCH);
+        assertEquals(BATCH, first.getEntriesChecked());
+        assertFalse(first.isCaughtUp());
+        assertTrue(integrityService.getCheckedEntryId() >= BATCH);
+
+        catchUp();
+        assertEquals(maxEntryId(), integrityService.getCheckedEntryId());
+        assertEquals(List.of(), integrityService.sweep().getIssues());
+        assertEquals(List.of(), integrityService.getOpenIssues());
+
+        // لا سطور جديدة: الدفعة التالية لا تفحص شيئاً
+        BatchResult idle = integrityService.verifyNextBatch(BATCH);
+        assertEquals(0, idle.getEntriesChecked());
+        assertTrue(idle.isCaughtUp());
+    }
+
+    @Test
+    @DisplayName("قيد غير متوازن ورصيد منحرف يُكتشفان مع المرجع، ويُحذفان بعد التصحيح")
+    void unbalancedRefAndBalanceDriftAreReportedWithRefs() throws SQLException {
+        catchUp();
+
+        // سطر مدين بلا دائن وبلا تحديث للرصيد
+        dataManager.executeTransaction(conn -> {
+            dataManager.addLedgerEntry(conn, "MAN-BROKEN", LocalDate.now(), 10101, 75.0, 0.0, "قيد ناقص");
+            return null;
+        });
+        BatchResult batch = integrityService.verifyNextBatch(BATCH);
+        assertEquals(1, batch.getEntriesChecked());
+        assertEquals(2, batch.getNewIssues().size());
+
+        IntegrityIssue unbalanced = openIssue(IssueKind.UNBALANCED_REF, "MAN-BROKEN");
+        assertNotNull(unbalanced);
+        assertEquals(75.0, unbalanced.getExpected(), 0.001);
+        assertEquals(0.0, unbalanced.getActual(), 0.001);
+
+        IntegrityIssue cash = openIssue(IssueKind.ACCOUNT_BALANCE, "10101");
+        assertNotNull(cash);
+        assertEquals(-75.0, cash.getDifference(), 0.001);
+        assertEquals(List.of("MAN-BROKEN"), cash.getRefs());
+
+        // إكمال القيد وتصحيح الرصيد: الفحص التالي يغلق الفرقين
+        dataManager.executeTransaction(conn -> {
+            dataManager.addLedgerEntry(conn, "MAN-BROKEN", LocalDate.now(), 30101, 0.0, 75.0, "قيد ناقص");
+            dataManager.updateAccountBalance(10101, 75.0, conn);
+            dataManager.updateAccountBalance(30101, 75.0, conn);
+            return null;
+        });
+        assertEquals(List.of(), integrityService.verifyNextBatch(BATCH).getIssues());
+        assertEquals(List.of(), integrityService.getOpenIssues());
+    }
+
+    @Test
+    @DisplayName("تعديل الأرصدة والمخزون خارج الترحيل يلتقطه المسح، والمراقب يلحق بالدفتر في الخلفية")
+    void sweepCatchesDirectEditsAndMonitorCatchesUp() throws Exception {
+        catchUp();
+        // الأرصدة مخزنة بالقروش: 12000 = 120 جنيهاً
+        execute("UPDATE financial_accounts SET current_balance = current_balance + 12000 WHERE account_id = 10104");
+        execute("UPDATE inventory SET current_stock_kg = current_stock_kg + 5 WHERE crop_id = (SELECT MIN(crop_id) FROM inventory)");
+
+        assertEquals(0, integrityService.verifyNextBatch(BATCH).getIssues().size());
+        BatchResult sweep = integrityService.sweep();
+        assertEquals(2, sweep.getNewIssues().size());
+        assertEquals(120.0, openIssue(IssueKind.ACCOUNT_BALANCE, "10104").getDifference(), 0.001);
+        assertEquals(1, sweep.getIssues().stream().filter(issue -> issue.getKind() == IssueKind.INVENTORY).count());
+
+        // مسح ثانٍ لا يكرر الفرق كجديد
+        assertEquals(0, integrityService.sweep().getNewIssues().size());
+        assertEquals(2, integrityService.getOpenIssues().size());
+
+        execute("UPDATE financial_accounts SET current_balance = current_balance - 12000 WHERE account_id = 10104");
+        execute("UPDATE inventory SET current_stock_kg = current_stock_kg - 5 WHERE crop_id = (SELECT MIN(crop_id) FROM inventory)");
+        integrityService.sweep();
+        assertEquals(List.of(), integrityService.getOpenIssues());
+
+        // المراقب: من علامة الصفر إلى آخر سطر بدفعات صغيرة في خيطه
+        execute("DELETE FROM integrity_state");
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        LedgerIntegrityMonitor monitor = new LedgerIntegrityMonitor(integrityService, 50, Duration.ZERO,
+            Duration.ofSeconds(30), Duration.ofMinutes(15), scheduler);
+        try {
+            monitor.start();
+            long target = maxEntryId();
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (integrityService.getCheckedEntryId() < target && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(target, integrityService.getCheckedEntryId());
+        } finally {
+            monitor.stop();
+            scheduler.shutdownNow();
+        }
+    }
+}
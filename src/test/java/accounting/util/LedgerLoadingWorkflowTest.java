@@ -0,0 +1,95 @@
+package accounting.util;
+
+import accounting.model.LedgerEntry;
+import accounting.model.SaleRecord;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Ledger Loading Workflow Test")
+public class LedgerLoadingWorkflowTest {
+
+    private ImprovedDataManager dataManager;
+    private FinancialTransactionDataService transactionService;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        transactionService = new FinancialTransactionDataService();
+        new SyntheticDataGenerator(new SyntheticDataGenerator.Config()
+            .seed(11)
+            .startDate(LocalDate.now().minusDays(40))
+            .days(30)
+            .salesPerDay(5)
+            .crops(3)
+            .suppliers(3)
+            .customers(6)).generate(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("سطور الدفتر تتشارك التاريخ والمرجع والأنواع بدلاً من نسخة لكل سطر")
+    void ledgerLinesShareRepeatedValues() throws SQLException {
+        List<LedgerEntry> lines = transactionService.getGeneralLedgerEntries(null, null);
+        assertFalse(lines.isEmpty());
+        assertEquals(lines.stream().mapToDouble(LedgerEntry::getDebit).sum(),
+            lines.stream().mapToDouble(LedgerEntry::getCredit).sum(), 0.01);
+
+        Map<String, LedgerEntry> firstByRef = new HashMap<>();
+        int sharedPairs = 0;
+        for (LedgerEntry line : lines) {
+            assertTrue(line.getEntryId() > 0);
+            assertNotNull(line.getAccountType());
+            LedgerEntry first = firstByRef.putIfAbsent(line.getReference(), line);
+            if (first != null) {
+                assertSame(first.getReference(), line.getReference());
+                assertSame(first.getDate(), line.getDate());
+                sharedPairs++;
+            }
+        }
+        assertTrue(sharedPairs > 0);
+        assertSame(lines.get(0).getSourceType(), lines.stream()
+            .filter(l -> l.getSourceType().equals(lines.get(0).getSourceType())).reduce((a, b) -> b).orElseThrow().getSourceType());
+
+        List<SaleRecord> sales = new SaleDataService().getSales(null, null, null, null, null);
+        Map<Integer, SaleRecord> firstByCustomer = new HashMap<>();
+        for (SaleRecord sale : sales) {
+            SaleRecord first = firstByCustomer.putIfAbsent(sale.getCustomer().getContactId(), sale);
+            if (first != null) {
+                assertSame(first.getCustomer(), sale.getCustomer());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("كشف الحساب المالي يحمل سطور الحساب وحده برصيد جارٍ")
+    void accountLedgerLoadsOnlyThatAccount() throws SQLException {
+        List<LedgerEntry> cash = transactionService.getAccountLedgerEntries(10101);
+        assertFalse(cash.isEmpty());
+        double running = 0;
+        for (LedgerEntry line : cash) {
+            assertEquals(10101, line.getAccountId());
+            running += line.getDebit() - line.getCredit();
+            assertEquals(running, line.getBalance(), 0.001);
+        }
+        long cashLines = transactionService.getGeneralLedgerEntries(null, null).stream()
+            .filter(l -> l.getAccountId() == 10101).count();
+        assertEquals(cashLines, cash.size());
+    }
+}
@@ -0,0 +1,149 @@
+package accounting.util;
+
+import accounting.model.IncomeStatement;
+import accounting.model.TrialBalanceEntry;
+import accounting.service.FinancialSummaryService;
+import accounting.service.FinancialTransactionDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Money Workflow Test")
+public class MoneyWorkflowTest {
+
+    private static final int CASH = 10101;
+    private static final int GENERAL_EXPENSES = 50102;
+
+    private ImprovedDataManager dataManager;
+
+    @AfterEach
+    void tearDown() {
+        if (dataManager != null) {
+            dataManager.shutdown();
+        }
+    }
+
+    private static String scalar(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private static String columnType(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) {
+                    return rs.getString("type");
+                }
+            }
+            return null;
+        }
+    }
+
+    @Test
+    @DisplayName("الحساب بالقروش دقيق، والتقريب نصف قرش بعيداً عن الصفر")
+    void minorUnitArithmeticIsExact() {
+        assertEquals(101, Money.toMinor(1.005));
+        assertEquals(-101, Money.toMinor(-1.005));
+        assertEquals(Money.toMinor(0.3), Money.toMinor(0.1) + Money.toMinor(0.2));
+        assertEquals(123.45, Money.toMajor(12345));
+        assertEquals(333, Money.share(1000, 1, 3));
+        assertEquals(0, Money.share(1000, 1, 0));
+        assertEquals(1875, Money.multiply(1250, 1.5));
+
+        assertEquals(Money.of(0.3), Money.of(0.1).plus(Money.of(0.2)));
+        assertSame(Money.ZERO, Money.of(0.2).minus(Money.of(0.2)));
+        assertTrue(Money.of(-5).compareTo(Money.of(5)) < 0);
+        assertThrows(ArithmeticException.class, () -> Money.toMinor(Double.NaN));
+        assertThrows(ArithmeticException.class, () -> Money.toMinor(1e17));
+        assertThrows(ArithmeticException.class, () -> Money.add(Long.MAX_VALUE, 1));
+    }
+
+    @Test
+    @DisplayName("مجاميع الدفتر والأرصدة تبقى دقيقة مهما تكررت الكسور")
+    void ledgerAggregatesAreExact() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:money_exact?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        FinancialTransactionDataService transactions = new FinancialTransactionDataService();
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < 10; i++) {
+            transactions.addExpense(today, 0.1, "مصروف صغير", GENERAL_EXPENSES, CASH);
+        }
+
+        try (Connection conn = dataManager.getConnection()) {
+            assertEquals("integer", scalar(conn, "SELECT DISTINCT typeof(debit) FROM general_ledger"));
+            assertEquals("100", scalar(conn, "SELECT SUM(debit) FROM general_ledger WHERE account_id = " + GENERAL_EXPENSES));
+            assertEquals("-100", scalar(conn, "SELECT current_balance FROM financial_accounts WHERE account_id = " + CASH));
+        }
+
+        FinancialSummaryService summary = new FinancialSummaryService();
+        IncomeStatement income = summary.getIncomeStatement(today.withDayOfYear(1), today);
+        assertEquals(1.0, income.getExpenseDetails().get("مصروفات عمومية وإدارية"));
+        assertEquals(-1.0, income.getNetIncome());
+        TrialBalanceEntry cash = summary.getTrialBalance(today).stream()
+            .filter(entry -> entry.getAccountId() == CASH).findFirst().orElseThrow();
+        assertEquals(1.0, cash.getTotalCredit());
+    }
+
+    @Test
+    @DisplayName("قاعدة قديمة بمبالغ REAL تتحول إلى قروش مع بقاء أرقام القيود والفهارس والمشغلات")
+    void legacyRealAmountsAreConverted() throws SQLException {
+        String url = "jdbc:sqlite:file:money_legacy?mode=memory&cache=shared";
+        try (Connection legacy = DriverManager.getConnection(url); Statement stmt = legacy.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE financial_accounts (
+                    account_id INTEGER PRIMARY KEY AUTOINCREMENT, account_name TEXT NOT NULL UNIQUE,
+                    account_type TEXT NOT NULL, account_number TEXT, bank_name TEXT,
+                    opening_balance REAL DEFAULT 0, opening_balance_date DATE, current_balance REAL DEFAULT 0,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, updated_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+                    is_active BOOLEAN DEFAULT 1)
+                """);
+            stmt.execute("""
+                CREATE TABLE general_ledger (
+                    entry_id INTEGER PRIMARY KEY AUTOINCREMENT, transaction_ref TEXT NOT NULL, entry_date DATE NOT NULL,
+                    account_id INTEGER NOT NULL, debit REAL DEFAULT 0, credit REAL DEFAULT 0, description TEXT,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)
+                """);
+            stmt.execute("INSERT INTO financial_accounts (account_id, account_name, account_type, opening_balance, current_balance) "
+                + "VALUES (10101, 'الخزنة الرئيسية', 'CASH', 0.1, 0.1 + 0.2)");
+            stmt.execute("INSERT INTO financial_accounts (account_id, account_name, account_type, current_balance) "
+                + "VALUES (30101, 'رأس المال', 'EQUITY', 0.2)");
+            stmt.execute("INSERT INTO general_ledger (transaction_ref, entry_date, account_id, debit, credit) "
+                + "VALUES ('OLD-1', '2024-01-01', 10101, 0.1 + 0.1, 0), ('OLD-1', '2024-01-01', 30101, 0, 0.2), "
+                + "('OLD-2', '2024-01-02', 10101, 9.99, 0)");
+            // آخر قيد محذوف: رقمه لا يُعاد استخدامه بعد التحويل
+            stmt.execute("DELETE FROM general_ledger WHERE transaction_ref = 'OLD-2'");
+
+            ImprovedDataManager.reinitializeForTest(url);
+            dataManager = ImprovedDataManager.getInstance();
+        }
+
+        try (Connection conn = dataManager.getConnection()) {
+            for (String[] column : new String[][] {{"general_ledger", "debit"}, {"general_ledger", "credit"},
+                    {"ledger_daily_totals", "debit_total"}, {"financial_accounts", "current_balance"}}) {
+                assertEquals("INTEGER", columnType(conn, column[0], column[1]), column[0] + "." + column[1]);
+            }
+            assertEquals("20", scalar(conn, "SELECT debit FROM general_ledger WHERE transaction_ref = 'OLD-1' AND account_id = 10101"));
+            assertEquals("30", scalar(conn, "SELECT current_balance FROM financial_accounts WHERE account_id = 10101"));
+            assertEquals("10", scalar(conn, "SELECT opening_balance FROM financial_accounts WHERE account_id = 10101"));
+            assertEquals("20", scalar(conn, "SELECT debit_total FROM ledger_daily_totals WHERE account_id = 10101"));
+            assertEquals("3", scalar(conn, "SELECT seq FROM sqlite_sequence WHERE name = 'general_ledger'"));
+            assertEquals("idx_gl_account_date", scalar(conn,
+                "SELECT name FROM sqlite_master WHERE type = 'index' AND name = 'idx_gl_account_date'"));
+
+            // المشغلات أُعيدت: قيد جديد يحدث المجاميع اليومية بالقروش
+            dataManager.addLedgerEntry(conn, "NEW-1", LocalDate.of(2024, 1, 1), 10101, 0.05, 0, "قيد جديد");
+            assertEquals("25", scalar(conn, "SELECT debit_total FROM ledger_daily_totals WHERE account_id = 10101"));
+            assertEquals("4", scalar(conn, "SELECT MAX(entry_id) FROM general_ledger"));
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.Payment;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.model.SaleReturn;
+import accounting.service.ContactDataService;
+import accounting.service.ContactStatementService.AgingBuckets;
+import accounting.service.CropDataService;
+import accounting.service.DashboardService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.OpenItemService;
+import accounting.service.OpenItemService.ContactOpenBalance;
+import accounting.service.OpenItemService.OpenItem;
+import accounting.service.PaymentDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Open Item Receivables/Payables Workflow Test")
+public class OpenItemWorkflowTest {
+
+    private static final LocalDate AS_OF = LocalDate.of(2025, 6, 30);
+
+    private ImprovedDataManager dataManager;
+    private ContactDataService contactDataService;
+    private PurchaseDataService purchaseDataService;
+    private SaleDataService saleDataService;
+    private PaymentDataService paymentDataService;
+    private OpenItemService openItemService;
+
+    private Crop crop;
+    private FinancialAccount cash;
+    private Contact supplier;
+    private Contact customer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        CropDataService cropDataService = new CropDataService();
+        contactDataService = new ContactDataService();
+        purchaseDataService = new PurchaseDataService();
+        saleDataService = new SaleDataService();
+        paymentDataService = new PaymentDataService();
+        openItemService = new OpenItemService();
+
+        crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بطاطس", List.of("كيلو"), Map.of())));
+        cash = new FinancialAccountDataService().getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        addPurchase(AS_OF.minusDays(150), 1000.0, 5000.0, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Receipts settle the oldest invoices first, explicit allocations and returns hit their invoice, deletes reverse")
+    void testReceivableAllocations() throws SQLException {
+        SaleRecord first = addSale(AS_OF.minusDays(100), 1000.0, "S-1", 200.0);
+        SaleRecord second = addSale(AS_OF.minusDays(45), 600.0, "S-2", 0);
+        SaleRecord third = addSale(AS_OF.minusDays(5), 400.0, "S-3", 0);
+
+        // FIFO: 500 settles what remains of the oldest invoice first
+        Payment fifo = addPayment(customer, "RECEIVE", AS_OF.minusDays(30), 500.0, null);
+        List<OpenItem> open = openItemService.getOpenInvoices(customer.getContactId(), OpenItemService.SIDE_RECEIVABLE);
+        assertEquals(3, open.size());
+        assertEquals(300.0, open.get(0).getOpenAmount(), 0.001);
+        assertEquals(first.getSaleId(), open.get(0).getSourceId());
+
+        // Explicit: 400 goes to the newest invoice even though older ones are open
+        addPayment(customer, "RECEIVE", AS_OF.minusDays(2), 400.0, Map.of(third.getSaleId(), 400.0));
+        open = openItemService.getOpenInvoices(customer.getContactId(), OpenItemService.SIDE_RECEIVABLE);
+        assertEquals(2, open.size());
+        assertEquals(second.getSaleId(), open.get(1).getSourceId());
+
+        // A return settles its own invoice
+        SaleReturn saleReturn = new SaleReturn();
+        saleReturn.setOriginalSale(second);
+        saleReturn.setReturnDate(AS_OF.minusDays(1));
+        saleReturn.setQuantityKg(10.0);
+        saleReturn.setReturnReason("تالف");
+        saleReturn.setRefundAmount(100.0);
+        saleDataService.addSaleReturn(saleReturn);
+
+        AgingBuckets aging = openItemService.getContactAging(customer.getContactId(), OpenItemService.SIDE_RECEIVABLE, AS_OF);
+        assertEquals(0.0, aging.getCurrent(), 0.001);
+        assertEquals(500.0, aging.getDays31To60(), 0.001);
+        assertEquals(300.0, aging.getOver90(), 0.001);
+        assertEquals(800.0, openItemService.getOutstandingTotal(OpenItemService.SIDE_RECEIVABLE), 0.001);
+        assertEquals(800.0, new DashboardService().getDashboardSummary().getReceivables(), 0.001);
+
+        // Deleting the FIFO receipt reopens exactly what it had settled
+        paymentDataService.deletePayment(fifo.getPaymentId());
+        open = openItemService.getOpenInvoices(customer.getContactId(), OpenItemService.SIDE_RECEIVABLE);
+        assertEquals(800.0, open.get(0).getOpenAmount(), 0.001);
+
+        // Deleting an invoice turns receipts applied to it into credit that settles the next oldest invoice
+        addPayment(customer, "RECEIVE", AS_OF.minusDays(1), 800.0, Map.of(first.getSaleId(), 800.0));
+        saleDataService.deleteSale(first.getSaleId());
+        open = openItemService.getOpenInvoices(customer.getContactId(), OpenItemService.SIDE_RECEIVABLE);
+        assertTrue(open.isEmpty(), "The freed 800 should settle the remaining 500 on S-2.");
+        assertEquals(-300.0, openItemService.getOutstandingTotal(OpenItemService.SIDE_RECEIVABLE), 0.001,
+            "The rest stays as an unapplied credit for the customer.");
+    }
+
+    @Test
+    @DisplayName("Payables, per-contact balances and a full rebuild agree with incremental posting")
+    void testPayablesAndRebuild() throws SQLException {
+        addPurchase(AS_OF.minusDays(20), 100.0, 1000.0, 250.0);
+        addPayment(supplier, "PAY", AS_OF.minusDays(10), 1000.0, null);
+        addSale(AS_OF.minusDays(70), 900.0, "S-1", 0);
+
+        List<ContactOpenBalance> payables = openItemService.getContactBalances(OpenItemService.SIDE_PAYABLE);
+        assertEquals(1, payables.size());
+        assertEquals(4750.0, payables.get(0).getNetOutstanding(), 0.001);
+        assertEquals(AS_OF.minusDays(150), payables.get(0).getOldestOpenDate());
+        assertEquals(4750.0, openItemService.getOverallAging(OpenItemService.SIDE_PAYABLE, AS_OF).getTotal(), 0.001);
+
+        List<ContactOpenBalance> receivables = openItemService.getContactBalances(OpenItemService.SIDE_RECEIVABLE);
+        assertEquals(1, receivables.size());
+        assertEquals(1, receivables.get(0).getOpenInvoiceCount());
+
+        double payableBefore = openItemService.getOutstandingTotal(OpenItemService.SIDE_PAYABLE);
+        double receivableBefore = openItemService.getOutstandingTotal(OpenItemService.SIDE_RECEIVABLE);
+        try (Connection conn = dataManager.getConnection()) {
+            OpenItemService.rebuild(conn);
+        }
+        assertEquals(payableBefore, openItemService.getOutstandingTotal(OpenItemService.SIDE_PAYABLE), 0.001);
+        assertEquals(receivableBefore, openItemService.getOutstandingTotal(OpenItemService.SIDE_RECEIVABLE), 0.001);
+        assertEquals(2, openItemService.getOpenInvoices(supplier.getContactId(), OpenItemService.SIDE_PAYABLE).size());
+    }
+
+    private void addPurchase(LocalDate date, double quantity, double total, double paid) throws SQLException {
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(date);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(total / quantity);
+        purchase.setTotalCost(total);
+        purchase.setInvoiceNumber("P-" + date);
+        purchaseDataService.addPurchase(purchase, paid > 0 ? cash : null, paid);
+    }
+
+    private SaleRecord addSale(LocalDate date, double total, String invoice, double received) throws SQLException {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(date);
+        sale.setQuantitySoldKg(50.0);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(total / 50.0);
+        sale.setTotalSaleAmount(total);
+        sale.setSaleInvoiceNumber(invoice);
+        saleDataService.addSale(sale, cash, received);
+        return sale;
+    }
+
+    private Payment addPayment(Contact contact, String type, LocalDate date, double amount,
+                               Map<Integer, Double> allocations) throws SQLException {
+        Payment payment = new Payment();
+        payment.setContact(contact);
+        payment.setPaymentAccount(cash);
+        payment.setPaymentDate(date);
+        payment.setAmount(amount);
+        payment.setPaymentType(type);
+        payment.setDescription("سند");
+        paymentDataService.addPayment(payment, allocations);
+        return payment;
+    }
+}
@@ -0,0 +1,161 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.service.ContactDataService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Query Instrumentation Workflow Test")
+public class QueryMetricsWorkflowTest {
+
+    private ImprovedDataManager dataManager;
+    private QueryMetrics metrics;
+    private long originalThreshold;
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        metrics = QueryMetrics.getInstance();
+        originalThreshold = metrics.getSlowQueryThresholdMillis();
+        metrics.reset();
+    }
+
+    @AfterEach
+    void tearDown() {
+        metrics.setSlowQueryThresholdMillis(originalThreshold);
+        dataManager.shutdown();
+    }
+
+    private QueryMetrics.QueryStats statsFor(String fingerprint) {
+        return metrics.getQueryStats().stream()
+            .filter(s -> s.getSql().equals(fingerprint)).findFirst()
+            .orElseThrow(() -> new AssertionError("No stats for " + fingerprint));
+    }
+
+    @Test
+    @DisplayName("الاستعلامات المتشابهة تُجمع تحت بصمة واحدة مع عدد الصفوف والزمن")
+    void recordsPerFingerprintStats() throws SQLException {
+        ContactDataService contactDataService = new ContactDataService();
+        for (int i = 1; i <= 3; i++) {
+            contactDataService.addContact(new Contact(0, "عميل " + i, "0" + i, "", false, true));
+        }
+
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement()) {
+            for (int id = 1; id <= 3; id++) {
+                try (ResultSet rs = stmt.executeQuery("SELECT name FROM contacts WHERE contact_id = " + id + " OR name = 'x'")) {
+                    while (rs.next()) {
+                        assertNotNull(rs.getString(1));
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement("SELECT name FROM contacts WHERE contact_id IN (?, ?, ?)")) {
+                ps.setInt(1, 1);
+                ps.setInt(2, 2);
+                ps.setInt(3, 3);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        assertNotNull(rs.getString(1));
+                    }
+                }
+            }
+        }
+
+        QueryMetrics.QueryStats literals = statsFor("SELECT name FROM contacts WHERE contact_id = ? OR name = ?");
+        assertEquals(3, literals.getCount());
+        assertEquals(3, literals.getRows());
+        assertTrue(literals.getP50Millis() <= literals.getP99Millis());
+        assertTrue(literals.getP99Millis() <= literals.getMaxMillis());
+
+        QueryMetrics.QueryStats inList = statsFor("SELECT name FROM contacts WHERE contact_id IN (?+)");
+        assertEquals(1, inList.getCount());
+        assertEquals(3, inList.getRows());
+
+        assertTrue(metrics.getPoolWaitStats().getCount() > 0);
+    }
+
+    @Test
+    @DisplayName("سجل الاستعلامات البطيئة يحفظ أنواع المعاملات لا قيمها، والأخطاء تُحتسب")
+    void slowQueryLogRecordsParameterShapes() throws SQLException {
+        metrics.setSlowQueryThresholdMillis(0);
+
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM contacts WHERE name = ? AND contact_id > ?")) {
+            ps.setString(1, "سري جداً");
+            ps.setInt(2, 5);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+            }
+        }
+
+        QueryMetrics.SlowQuery slow = metrics.getSlowQueries().stream()
+            .filter(q -> q.getSql().startsWith("SELECT COUNT(*) FROM contacts WHERE name = ?")).findFirst().orElseThrow();
+        assertEquals("[TEXT(8), INTEGER]", slow.getParameterShape());
+        assertFalse(slow.toString().contains("سري"));
+        assertEquals(1, slow.getRows());
+
+        assertThrows(SQLException.class, () -> {
+            try (Connection conn = dataManager.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                stmt.executeQuery("SELECT * FROM no_such_table");
+            }
+        });
+        assertEquals(1, statsFor("SELECT * FROM no_such_table").getErrors());
+    }
+
+    @Test
+    @DisplayName("إعادة ربط المعاملات والنتيجة مفتوحة لا تغير أنواع الاستعلام السابق")
+    void rebindingKeepsOpenQueryShape() throws SQLException {
+        metrics.setSlowQueryThresholdMillis(0);
+        String sql = "SELECT contact_id FROM contacts WHERE name = ? OR contact_id = ?";
+
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, "أ");
+            ps.setLong(2, 1);
+            ResultSet first = ps.executeQuery();
+            ps.setBytes(1, new byte[] {1, 2, 3});
+            ps.setNull(2, java.sql.Types.INTEGER);
+            assertFalse(first.next());
+            ps.clearParameters();
+            ps.setDouble(2, 1.5);
+            try (ResultSet second = ps.executeQuery()) {
+                assertFalse(second.next());
+            }
+            assertTrue(conn.isWrapperFor(org.sqlite.SQLiteConnection.class));
+            assertSame(conn, ps.getConnection());
+        }
+
+        assertEquals(List.of("[null, REAL]", "[TEXT(1), INTEGER]"), metrics.getSlowQueries().stream()
+            .filter(q -> q.getSql().equals(sql)).map(QueryMetrics.SlowQuery::getParameterShape).toList());
+    }
+
+    @Test
+    @DisplayName("المدرج التكراري يعطي نسباً مئوية ضمن دقة الفئات")
+    void histogramPercentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 10_000; micros++) {
+            histogram.recordMicros(micros);
+        }
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000, histogram.getMaxMicros());
+        assertEquals(5_000, histogram.percentileMicros(50), 5_000 * 0.125);
+        assertEquals(9_900, histogram.percentileMicros(99), 9_900 * 0.125);
+        for (long value : new long[] {0, 7, 8, 15, 16, 1_000_000, Long.MAX_VALUE}) {
+            long midpoint = LatencyHistogram.bucketMidpoint(LatencyHistogram.bucketIndex(value));
+            assertEquals(value, midpoint, Math.max(1, value * 0.125));
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package accounting.util;
+
+import accounting.service.LedgerIntegrityService;
+import accounting.service.LedgerIntegrityService.BatchResult;
+import accounting.service.RecurringJournalService;
+import accounting.service.RecurringJournalService.Frequency;
+import accounting.service.RecurringJournalService.Occurrence;
+import accounting.service.RecurringJournalService.PostingResult;
+import accounting.service.RecurringJournalService.Template;
+import accounting.service.RecurringJournalService.TemplateLine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Recurring Journal Workflow Test")
+public class RecurringJournalWorkflowTest {
+
+    private static final int CASH = 10101;
+    private static final int PAYABLES = 20101;
+    private static final int GENERAL_EXPENSES = 50102;
+    private static final int INVENTORY_LOSSES = 50108;
+
+    private ImprovedDataManager dataManager;
+    private RecurringJournalService service;
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:recurring_journals?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        service = new RecurringJournalService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private int rent(LocalDate start) throws SQLException {
+        return service.createTemplate("إيجار المخزن", "إيجار شهري", Frequency.MONTHLY, 1, 31, start, null, List.of(
+            new TemplateLine(GENERAL_EXPENSES, 1000, 0, null),
+            new TemplateLine(CASH, 0, 1000, null)));
+    }
+
+    private int storageAccrual(LocalDate start) throws SQLException {
+        return service.createTemplate("مصاريف تخزين مستحقة", null, Frequency.END_OF_MONTH, 1, 0, start, null, List.of(
+            new TemplateLine(GENERAL_EXPENSES, 400, 0, "تبريد"),
+            new TemplateLine(INVENTORY_LOSSES, 100, 0, "فاقد تخزين"),
+            new TemplateLine(PAYABLES, 0, 500, "مستحق لشركة التخزين")));
+    }
+
+    @Test
+    @DisplayName("قواعد التكرار: اليوم 31 يُقصر في الأشهر الأقصر، ونهاية الشهر، والأسبوعي والفاصل")
+    void occurrenceRules() throws SQLException {
+        rent(LocalDate.of(2025, 1, 31));
+        storageAccrual(LocalDate.of(2025, 1, 15));
+        service.createTemplate("حراسة", null, Frequency.WEEKLY, 2, 0, LocalDate.of(2025, 1, 6), LocalDate.of(2025, 2, 28), List.of(
+            new TemplateLine(GENERAL_EXPENSES, 50, 0, null), new TemplateLine(CASH, 0, 50, null)));
+
+        List<Template> templates = service.getTemplates();
+        assertEquals(List.of(LocalDate.of(2025, 1, 31), LocalDate.of(2025, 2, 28), LocalDate.of(2025, 3, 31), LocalDate.of(2025, 4, 30)),
+            templates.get(0).occurrences(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 4, 30)));
+        assertEquals(List.of(LocalDate.of(2024, 2, 29)), new Template(0, "x", null, Frequency.MONTHLY, 1, 31,
+            LocalDate.of(2023, 12, 31), null, true, null, List.of()).occurrences(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 2, 29)));
+        assertEquals(List.of(LocalDate.of(2025, 3, 31), LocalDate.of(2025, 4, 30)),
+            templates.get(1).occurrences(LocalDate.of(2025, 3, 1), LocalDate.of(2025, 5, 30)));
+        assertEquals(List.of(LocalDate.of(2025, 1, 20), LocalDate.of(2025, 2, 3), LocalDate.of(2025, 2, 17)),
+            templates.get(2).occurrences(LocalDate.of(2025, 1, 7), LocalDate.of(2025, 12, 31)));
+
+        assertThrows(IllegalArgumentException.class, () -> service.createTemplate("غير متوازن", null, Frequency.DAILY, 1, 0,
+            LocalDate.of(2025, 1, 1), null, List.of(new TemplateLine(GENERAL_EXPENSES, 10, 0, null), new TemplateLine(CASH, 0, 9, null))));
+        assertThrows(IllegalArgumentException.class, () -> service.createTemplate("حساب مجهول", null, Frequency.DAILY, 1, 0,
+            LocalDate.of(2025, 1, 1), null, List.of(new TemplateLine(99999, 10, 0, null), new TemplateLine(CASH, 0, 10, null))));
+    }
+
+    @Test
+    @DisplayName("التعويض يرحل كل الفائت في دفعة واحدة، والتشغيل المتكرر لا يرحل أي استحقاق مرتين")
+    void catchUpIsIdempotent() throws SQLException {
+        int rentId = rent(LocalDate.of(2025, 1, 31));
+        int accrualId = storageAccrual(LocalDate.of(2025, 1, 1));
+        LocalDate through = LocalDate.of(2025, 4, 30);
+
+        List<Occurrence> due = service.getDue(through);
+        assertEquals(8, due.size());
+        assertEquals(RecurringJournalService.transactionRef(rentId, LocalDate.of(2025, 2, 28)), due.get(2).transactionRef());
+
+        PostingResult first = service.postDue(through);
+        assertEquals(8, first.posted());
+        assertEquals(due.stream().map(Occurrence::transactionRef).sorted().toList(), first.transactionRefs().stream().sorted().toList());
+        assertEquals("20", scalar("SELECT COUNT(*) FROM general_ledger WHERE source_type = 'RECURRING'"));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM (SELECT transaction_ref FROM general_ledger "
+            + "GROUP BY transaction_ref HAVING SUM(debit) <> SUM(credit))"));
+        assertEquals("-400000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + CASH));
+        assertEquals("560000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + GENERAL_EXPENSES));
+        assertEquals("200000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + PAYABLES));
+        assertEquals("مستحق لشركة التخزين", scalar("SELECT description FROM general_ledger WHERE account_id = " + PAYABLES + " LIMIT 1"));
+
+        assertTrue(service.getDue(through).isEmpty());
+        assertEquals(0, service.postDue(through).posted());
+
+        // حتى لو فُقد مؤشر التقدم، مفتاح الاستحقاق يمنع الترحيل الثاني
+        dataManager.executeTransaction(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE recurring_journal_templates SET posted_through = NULL");
+            }
+            return null;
+        });
+        PostingResult again = service.postDue(through);
+        assertEquals(0, again.posted());
+        assertEquals(8, again.alreadyPosted());
+        assertEquals("20", scalar("SELECT COUNT(*) FROM general_ledger WHERE source_type = 'RECURRING'"));
+
+        PostingResult may = service.postDue(LocalDate.of(2025, 5, 31));
+        assertEquals(List.of(RecurringJournalService.transactionRef(rentId, LocalDate.of(2025, 5, 31)),
+            RecurringJournalService.transactionRef(accrualId, LocalDate.of(2025, 5, 31))), may.transactionRefs());
+    }
+
+    @Test
+    @DisplayName("الاستحقاق الدائن لحساب التزام يزيد رصيده الطبيعي ويمر بفحص السلامة")
+    void liabilityAccrualFollowsNaturalBalance() throws SQLException {
+        storageAccrual(LocalDate.of(2025, 1, 1));
+        assertEquals(3, service.postDue(LocalDate.of(2025, 3, 31)).posted());
+
+        assertEquals("150000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + PAYABLES));
+        assertEquals("150000", scalar("SELECT SUM(credit) - SUM(debit) FROM general_ledger WHERE account_id = " + PAYABLES));
+        assertEquals("120000", scalar("SELECT current_balance FROM financial_accounts WHERE account_id = " + GENERAL_EXPENSES));
+
+        LedgerIntegrityService integrity = new LedgerIntegrityService();
+        BatchResult batch = integrity.verifyNextBatch(LedgerIntegrityService.MAX_BATCH_SIZE);
+        assertTrue(batch.isCaughtUp());
+        assertEquals(List.of(), batch.getIssues());
+        assertEquals(List.of(), integrity.getOpenIssues());
+        assertEquals(List.of(), integrity.sweep().getIssues());
+    }
+
+    @Test
+    @DisplayName("المعاينة تعرض القادم فقط، والقالب الموقوف أو بحساب موقوف لا يوقف بقية الدفعة")
+    void previewAndSkippedTemplates() throws SQLException {
+        int rentId = rent(LocalDate.of(2025, 1, 31));
+        int accrualId = storageAccrual(LocalDate.of(2025, 1, 1));
+        service.postDue(LocalDate.of(2025, 1, 31));
+
+        List<Occurrence> upcoming = service.preview(LocalDate.of(2025, 1, 1), LocalDate.of(2025, 3, 31));
+        assertEquals(4, upcoming.size());
+        assertEquals(LocalDate.of(2025, 2, 28), upcoming.get(0).date());
+        assertEquals(1000.0, upcoming.get(0).amount(), 1e-9);
+
+        dataManager.executeTransaction(conn -> {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE financial_accounts SET is_active = 0 WHERE account_id = " + INVENTORY_LOSSES);
+            }
+            return null;
+        });
+        PostingResult result = service.postDue(LocalDate.of(2025, 2, 28));
+        assertEquals(List.of(RecurringJournalService.transactionRef(rentId, LocalDate.of(2025, 2, 28))), result.transactionRefs());
+        assertTrue(result.skippedTemplates().containsKey("مصاريف تخزين مستحقة"));
+        assertEquals(1, service.getDue(LocalDate.of(2025, 2, 28)).size());
+
+        service.setActive(accrualId, false);
+        assertTrue(service.getDue(LocalDate.of(2025, 2, 28)).isEmpty());
+        assertEquals(0, service.postDue(LocalDate.of(2025, 2, 28)).posted());
+        assertFalse(service.getTemplates().get(1).active());
+    }
+}
@@ -0,0 +1,114 @@
+package accounting.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Schema Migration Workflow Test")
+public class SchemaMigrationWorkflowTest {
+
+    private static final String URL = "jdbc:sqlite:file::memory:?cache=shared";
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest(URL);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ImprovedDataManager.getInstance().shutdown();
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equals(rs.getString("name"))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    @Test
+    @DisplayName("القاعدة الجديدة تصل لآخر إصدار، والتشغيل التالي لا ينفذ أي ترحيل")
+    void freshDatabaseIsVersionedAndSecondStartIsNoOp() throws SQLException {
+        ImprovedDataManager dataManager = ImprovedDataManager.getInstance();
+        SchemaMigrator migrator = ImprovedDataManager.schemaMigrations(dataManager);
+        try (Connection conn = dataManager.getConnection()) {
+            assertEquals(migrator.getLatestVersion(), SchemaMigrator.currentVersion(conn));
+            assertEquals(0, migrator.migrate(conn));
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM financial_accounts WHERE account_id = 10101")) {
+                assertTrue(rs.next());
+                assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("قاعدة قديمة بلا user_version تُرقى بإضافة الأعمدة الناقصة مع بقاء بياناتها")
+    void legacyDatabaseIsUpgradedInPlace() throws SQLException {
+        try (Connection legacy = DriverManager.getConnection(URL); Statement stmt = legacy.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE sales (
+                    sale_id INTEGER PRIMARY KEY AUTOINCREMENT, crop_id INTEGER NOT NULL, customer_id INTEGER NOT NULL,
+                    sale_date TEXT NOT NULL, quantity_sold_kg REAL NOT NULL, selling_pricing_unit TEXT NOT NULL,
+                    specific_selling_factor REAL NOT NULL, selling_unit_price REAL NOT NULL, total_sale_amount REAL NOT NULL,
+                    amount_paid REAL DEFAULT 0.0, payment_status TEXT DEFAULT 'PENDING', sale_invoice_number TEXT,
+                    notes TEXT, created_at TEXT DEFAULT CURRENT_TIMESTAMP, updated_at TEXT DEFAULT CURRENT_TIMESTAMP)
+                """);
+            stmt.execute("INSERT INTO sales (crop_id, customer_id, sale_date, quantity_sold_kg, selling_pricing_unit, "
+                + "specific_selling_factor, selling_unit_price, total_sale_amount) VALUES (1, 1, '2024-01-01', 10, 'كيلو', 1, 5, 50)");
+            assertEquals(0, SchemaMigrator.currentVersion(legacy));
+
+            try (Connection conn = ImprovedDataManager.getInstance().getConnection()) {
+                assertTrue(SchemaMigrator.currentVersion(conn) >= 1);
+                assertTrue(hasColumn(conn, "sales", "season_id"));
+                try (ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM sales")) {
+                    assertTrue(rs.next());
+                    assertEquals(1, rs.getInt(1));
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("فشل ترحيل يلغي تغييراته ويبقي الإصدار على آخر ترحيل ناجح")
+    void failedMigrationRollsBackAndKeepsVersion() throws SQLException {
+        SchemaMigrator migrator = new SchemaMigrator()
+            .add(2, "broken", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("INSERT INTO migration_probe (value) VALUES ('partial')");
+                    stmt.execute("INSERT INTO no_such_table VALUES (1)");
+                }
+            })
+            .add(1, "probe table", conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE migration_probe (value TEXT)");
+                }
+            });
+        assertThrows(IllegalArgumentException.class, () -> migrator.add(2, "duplicate", conn -> { }));
+
+        // قاعدة منفصلة حتى لا يلمس الإصدار التجريبي قاعدة التطبيق
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:file:migration_probe?mode=memory&cache=shared")) {
+            SQLException error = assertThrows(SQLException.class, () -> migrator.migrate(conn));
+            assertTrue(error.getMessage().contains("Schema migration 2"));
+            assertEquals(1, SchemaMigrator.currentVersion(conn));
+            try (ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*) FROM migration_probe")) {
+                assertTrue(rs.next());
+                assertEquals(0, rs.getInt(1));
+            }
+            assertTrue(conn.getAutoCommit());
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package accounting.util;
+
+import accounting.service.SaleDataService.SaleFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Search Pipeline Workflow Test")
+public class SearchPipelineWorkflowTest {
+
+    private ScheduledExecutorService scheduler;
+    /** طابور يقوم مقام خيط الواجهة: الاختبار ينفذ ما يصل إليه */
+    private BlockingQueue<Runnable> uiQueue;
+    private List<String> queries;
+    private List<String> applied;
+
+    @BeforeEach
+    void setUp() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        uiQueue = new LinkedBlockingQueue<>();
+        queries = new CopyOnWriteArrayList<>();
+        applied = new ArrayList<>();
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private SearchPipeline<String, String> pipeline(SearchPipeline.Query<String, String> query) {
+        return new SearchPipeline<>(Duration.ofMillis(80), 4, query,
+            (key, result) -> applied.add(result), scheduler, uiQueue::add);
+    }
+
+    private void drainUi() throws InterruptedException {
+        Runnable task = uiQueue.poll(2, TimeUnit.SECONDS);
+        assertNotNull(task, "لم تصل نتيجة إلى خيط الواجهة");
+        task.run();
+        Runnable extra;
+        while ((extra = uiQueue.poll(150, TimeUnit.MILLISECONDS)) != null) {
+            extra.run();
+        }
+    }
+
+    @Test
+    @DisplayName("الكتابة المتتابعة تنتج استعلاماً واحداً للنص الأخير، والمكرر يُخدم من الذاكرة")
+    void typingIsDebouncedAndRepeatedQueriesAreCached() throws InterruptedException {
+        SearchPipeline<String, String> search = pipeline(key -> {
+            queries.add(key);
+            return "result:" + key;
+        });
+
+        for (String prefix : List.of("ا", "اح", "احم", "احمد")) {
+            search.submit(prefix);
+        }
+        drainUi();
+        assertEquals(List.of("احمد"), queries);
+        assertEquals(List.of("result:احمد"), applied);
+
+        search.submit("احمد");
+        assertEquals(List.of("result:احمد", "result:احمد"), applied);
+        assertEquals(1, queries.size());
+
+        search.invalidate();
+        search.submit("احمد");
+        drainUi();
+        assertEquals(2, queries.size());
+    }
+
+    @Test
+    @DisplayName("نتيجة استعلام قديم تُهمل إذا وصل طلب أحدث قبل انتهائه")
+    void staleResultsAreDiscarded() throws InterruptedException {
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        CountDownLatch releaseSlow = new CountDownLatch(1);
+        ScheduledExecutorService slowScheduler = Executors.newScheduledThreadPool(2);
+        try {
+            SearchPipeline<String, String> search = new SearchPipeline<>(Duration.ZERO, 4, key -> {
+                if (key.equals("slow")) {
+                    slowStarted.countDown();
+                    releaseSlow.await();
+                }
+                return key;
+            }, (key, result) -> applied.add(result), slowScheduler, uiQueue::add);
+
+            search.submitNow("slow");
+            assertTrue(slowStarted.await(2, TimeUnit.SECONDS));
+            search.submitNow("fast");
+            releaseSlow.countDown();
+            drainUi();
+            assertEquals(List.of("fast"), applied);
+        } finally {
+            slowScheduler.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("مفاتيح البحث المُطبعة تتجاهل الهمزات والتشكيل والمسافات وحالة الأحرف")
+    void normalizedKeysMatchArabicVariants() {
+        assertEquals("احمد علي", SearchText.normalize("  أحمدُ   علي "));
+        assertEquals("مزرعه", SearchText.normalize("مزرعـة"));
+        assertEquals("tomato", SearchText.normalize("ToMaTo"));
+
+        String key = SearchText.key("إبراهيم المصري", "0100-555", null);
+        assertTrue(SearchText.matches(key, SearchText.normalize("ابراهيم")));
+        assertTrue(SearchText.matches(key, SearchText.normalize("0100")));
+        assertTrue(SearchText.matches(key, ""));
+        assertFalse(SearchText.matches(key, SearchText.normalize("المصري 0100")));
+
+        assertEquals(1, SearchText.matching(List.of(Map.entry(1, key), Map.entry(2, SearchText.key("سعيد"))),
+            SearchText.normalize("ابراهيم")).size());
+
+        // فلاتر السجل تصلح مفتاحاً للذاكرة المؤقتة: المسافات حول نص البحث لا تغير الطلب
+        LocalDate today = LocalDate.now();
+        assertEquals(new SaleFilter(today, null, 1, null, " INV "), new SaleFilter(today, null, 1, null, "INV"));
+        assertNotEquals(new SaleFilter(today, null, 1, null, "INV"), new SaleFilter(today, null, 2, null, "INV"));
+    }
+}
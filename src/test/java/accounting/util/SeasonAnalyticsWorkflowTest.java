@@ -0,0 +1,247 @@
+package accounting.util;
+
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.FinancialAccount;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.model.Season;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.FinancialAccountDataService;
+import accounting.service.FinancialTransactionDataService;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import accounting.service.SeasonAnalyticsService;
+import accounting.service.SeasonAnalyticsService.SeasonComparison;
+import accounting.service.SeasonDataService;
+import accounting.service.SeasonalReportService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Season Analytics Rollup Workflow Test")
+public class SeasonAnalyticsWorkflowTest {
+
+    private ImprovedDataManager dataManager;
+    private CropDataService cropDataService;
+    private ContactDataService contactDataService;
+    private FinancialAccountDataService financialAccountDataService;
+    private FinancialTransactionDataService financialTransactionDataService;
+    private PurchaseDataService purchaseDataService;
+    private SaleDataService saleDataService;
+    private SeasonDataService seasonDataService;
+    private SeasonAnalyticsService seasonAnalyticsService;
+    private SeasonalReportService seasonalReportService;
+
+    @BeforeEach
+    void setUp() {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        cropDataService = new CropDataService();
+        contactDataService = new ContactDataService();
+        financialAccountDataService = new FinancialAccountDataService();
+        financialTransactionDataService = new FinancialTransactionDataService();
+        purchaseDataService = new PurchaseDataService();
+        saleDataService = new SaleDataService();
+        seasonDataService = new SeasonDataService();
+        seasonAnalyticsService = new SeasonAnalyticsService();
+        seasonalReportService = new SeasonalReportService();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    @Test
+    @DisplayName("Postings update season rollups and completing a season freezes them")
+    void testSeasonRollupsAndSnapshot() throws SQLException {
+        LocalDate seasonStart = LocalDate.of(2025, 3, 1);
+        Season previous = new Season(0, "صيف 2024", LocalDate.of(2024, 3, 1), LocalDate.of(2024, 8, 31), Season.Status.COMPLETED);
+        seasonDataService.addSeason(previous);
+        Season season = new Season(0, "صيف 2025", seasonStart, LocalDate.of(2025, 8, 31), Season.Status.ACTIVE);
+        seasonDataService.addSeason(season);
+
+        int cropId = cropDataService.addCrop(new Crop(0, "بطاطس", List.of("كيلو"), Map.of()));
+        Crop crop = cropDataService.getCropById(cropId);
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        FinancialAccount cash = financialAccountDataService.getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(seasonStart.plusDays(1));
+        purchase.setQuantityKg(100.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(10.0);
+        purchase.setTotalCost(1000.0);
+        purchase.setInvoiceNumber("P-1");
+        purchaseDataService.addPurchase(purchase, null, 0);
+
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(seasonStart.plusDays(5));
+        sale.setQuantitySoldKg(40.0);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(15.0);
+        sale.setTotalSaleAmount(600.0);
+        sale.setSaleInvoiceNumber("S-1");
+        saleDataService.addSale(sale, cash, 0);
+
+        financialTransactionDataService.addExpense(seasonStart.plusDays(6), 50.0, "نقل", 50102, 10101);
+
+        // Live rollups reflect every posting
+        Map<String, Double> performance = seasonalReportService.getSeasonPerformance(season.getId());
+        assertEquals(600.0, performance.get("totalRevenue"), 0.001);
+        assertEquals(1000.0, performance.get("totalCost"), 0.001);
+        assertEquals(50.0, performance.get("totalExpenses"), 0.001);
+
+        SeasonalReportService.SeasonReport report = seasonalReportService.generateSeasonReport(season.getId());
+        assertEquals(1, report.getCropAnalyses().size());
+        assertEquals(400.0, report.getCropAnalyses().get(0).getTotalCost(), 0.001, "Crop cost should be the COGS of 40 kg @ 10.");
+        assertEquals(600.0 - 400.0 - 50.0, report.getStatistics().getNetProfit(), 0.001);
+
+        // Completing the season freezes the results
+        season.setStatus(Season.Status.COMPLETED);
+        seasonDataService.updateSeason(season);
+
+        SaleRecord lateSale = new SaleRecord();
+        lateSale.setCustomer(customer);
+        lateSale.setCrop(crop);
+        lateSale.setSaleDate(seasonStart.plusDays(10));
+        lateSale.setQuantitySoldKg(10.0);
+        lateSale.setSellingPricingUnit("كيلو");
+        lateSale.setSpecificSellingFactor(1.0);
+        lateSale.setSellingUnitPrice(20.0);
+        lateSale.setTotalSaleAmount(200.0);
+        lateSale.setSaleInvoiceNumber("S-2");
+        saleDataService.addSale(lateSale, cash, 0);
+
+        List<SeasonAnalyticsService.SeasonCropRollup> frozen = seasonAnalyticsService.getSeasonRollups(season.getId());
+        assertTrue(frozen.stream().allMatch(SeasonAnalyticsService.SeasonCropRollup::isFrozen));
+        assertEquals(600.0, seasonAnalyticsService.getSeasonTotals(season.getId()).getRevenue(), 0.001,
+            "Completed season report should read the frozen snapshot.");
+
+        // Season-over-season comparison includes a totals row
+        List<SeasonComparison> comparison = seasonalReportService.compareSeasons(season.getId(), previous.getId());
+        SeasonComparison total = comparison.get(comparison.size() - 1);
+        assertEquals(600.0, total.getRevenueChange(), 0.001);
+        assertNull(total.getRevenueChangePercentage());
+    }
+
+    private void postSale(Crop crop, Contact customer, FinancialAccount cash, LocalDate date, double total,
+                          String invoice) throws SQLException {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(date);
+        sale.setQuantitySoldKg(10.0);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(total / 10.0);
+        sale.setTotalSaleAmount(total);
+        sale.setSaleInvoiceNumber(invoice);
+        saleDataService.addSale(sale, cash, 0);
+    }
+
+    @Test
+    @DisplayName("Rebuilding overlapping seasons attributes documents like posting does")
+    void rebuildMatchesPostingForOverlappingSeasons() throws SQLException {
+        Season spring = new Season(0, "ربيع 2025", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 6, 30), Season.Status.ACTIVE);
+        seasonDataService.addSeason(spring);
+        // The promotion starts later, so May belongs to it and not to spring
+        Season promo = new Season(0, "عروض مايو", LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31), Season.Status.ACTIVE);
+        seasonDataService.addSeason(promo);
+
+        Crop crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بطاطس", List.of("كيلو"), Map.of())));
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        FinancialAccount cash = financialAccountDataService.getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(LocalDate.of(2025, 3, 2));
+        purchase.setQuantityKg(100.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(10.0);
+        purchase.setTotalCost(1000.0);
+        purchase.setInvoiceNumber("P-1");
+        purchaseDataService.addPurchase(purchase, null, 0);
+
+        postSale(crop, customer, cash, LocalDate.of(2025, 4, 10), 300.0, "S-1");
+        postSale(crop, customer, cash, LocalDate.of(2025, 5, 10), 600.0, "S-2");
+        financialTransactionDataService.addExpense(LocalDate.of(2025, 5, 12), 50.0, "نقل", 50102, 10101);
+
+        assertEquals(300.0, seasonAnalyticsService.getSeasonTotals(spring.getId()).getRevenue(), 0.001);
+        assertEquals(600.0, seasonAnalyticsService.getSeasonTotals(promo.getId()).getRevenue(), 0.001);
+
+        seasonAnalyticsService.rebuildAll();
+
+        SeasonAnalyticsService.SeasonCropRollup springTotals = seasonAnalyticsService.getSeasonTotals(spring.getId());
+        SeasonAnalyticsService.SeasonCropRollup promoTotals = seasonAnalyticsService.getSeasonTotals(promo.getId());
+        assertEquals(300.0, springTotals.getRevenue(), 0.001);
+        assertEquals(1000.0, springTotals.getPurchaseCost(), 0.001);
+        assertEquals(0.0, springTotals.getExpenses(), 0.001);
+        assertEquals(600.0, promoTotals.getRevenue(), 0.001);
+        assertEquals(50.0, promoTotals.getExpenses(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Adding or removing an overlapping season moves its days out of and back into the older season")
+    void overlappingSeasonChangesRebuildNeighbours() throws SQLException {
+        Season spring = new Season(0, "ربيع 2025", LocalDate.of(2025, 3, 1), LocalDate.of(2025, 6, 30), Season.Status.ACTIVE);
+        seasonDataService.addSeason(spring);
+        Crop crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بطاطس", List.of("كيلو"), Map.of())));
+        Contact customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        FinancialAccount cash = financialAccountDataService.getAllAccounts().stream()
+            .filter(a -> a.getAccountId() == 10101).findFirst().orElseThrow();
+        Contact supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(LocalDate.of(2025, 3, 2));
+        purchase.setQuantityKg(100.0);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(10.0);
+        purchase.setTotalCost(1000.0);
+        purchase.setInvoiceNumber("P-1");
+        purchaseDataService.addPurchase(purchase, null, 0);
+
+        postSale(crop, customer, cash, LocalDate.of(2025, 4, 10), 300.0, "S-1");
+        postSale(crop, customer, cash, LocalDate.of(2025, 5, 10), 600.0, "S-2");
+        assertEquals(900.0, seasonAnalyticsService.getSeasonTotals(spring.getId()).getRevenue(), 0.001);
+
+        Season promo = new Season(0, "عروض مايو", LocalDate.of(2025, 5, 1), LocalDate.of(2025, 5, 31), Season.Status.ACTIVE);
+        seasonDataService.addSeason(promo);
+        assertEquals(300.0, seasonAnalyticsService.getSeasonTotals(spring.getId()).getRevenue(), 0.001);
+        assertEquals(600.0, seasonAnalyticsService.getSeasonTotals(promo.getId()).getRevenue(), 0.001);
+
+        promo.setStartDate(LocalDate.of(2025, 5, 15));
+        seasonDataService.updateSeason(promo);
+        assertEquals(900.0, seasonAnalyticsService.getSeasonTotals(spring.getId()).getRevenue(), 0.001);
+        assertEquals(0.0, seasonAnalyticsService.getSeasonTotals(promo.getId()).getRevenue(), 0.001);
+
+        promo.setStartDate(LocalDate.of(2025, 5, 1));
+        seasonDataService.updateSeason(promo);
+        seasonDataService.deleteSeason(promo.getId());
+        assertEquals(900.0, seasonAnalyticsService.getSeasonTotals(spring.getId()).getRevenue(), 0.001);
+    }
+}
@@ -0,0 +1,143 @@
+package accounting.util;
+
+import accounting.model.Season;
+import accounting.service.SeasonDataService;
+import accounting.service.SeasonResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Season Resolver Workflow Test")
+public class SeasonResolverWorkflowTest {
+
+    private static final LocalDate START = LocalDate.of(2024, 6, 20);
+
+    private ImprovedDataManager dataManager;
+    private SeasonDataService seasonDataService;
+    private int winter;
+    private int summer;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file::memory:?cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        seasonDataService = new SeasonDataService();
+        // المولد ينشئ الموسمين الشتوي والصيفي قبل المستندات، فتُوسم عند الترحيل
+        new SyntheticDataGenerator(new SyntheticDataGenerator.Config()
+            .seed(7)
+            .startDate(START)
+            .days(20)
+            .salesPerDay(3)
+            .crops(2)
+            .suppliers(2)
+            .customers(3)).generate(null);
+        winter = seasonId("الموسم الشتوي 2024");
+        summer = seasonId("الموسم الصيفي 2024");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private int seasonId(String name) throws SQLException {
+        return seasonDataService.getAllSeasons().stream()
+            .filter(season -> season.getName().equals(name)).findFirst().orElseThrow().getId();
+    }
+
+    private long count(String sql, Object... params) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+
+    /** المستندات التي لا يطابق موسمها المتوقع لمدى التواريخ */
+    private long mistagged(String table, String dateColumn, String from, String to, Integer expected) throws SQLException {
+        return count("SELECT COUNT(*) FROM " + table + " WHERE " + dateColumn + " BETWEEN ? AND ? AND season_id IS NOT ?",
+            from, to, expected);
+    }
+
+    @Test
+    @DisplayName("الفهرس يغطي كل التواريخ: الفجوات بلا موسم، والتداخل للموسم الأحدث بداية")
+    void indexResolvesGapsAndOverlaps() throws SQLException {
+        Season promo = new Season(0, "عروض نهاية يونيو", LocalDate.of(2024, 6, 25), LocalDate.of(2024, 7, 3), Season.Status.ACTIVE);
+        seasonDataService.addSeason(promo);
+
+        try (Connection conn = dataManager.getConnection()) {
+            SeasonResolver.Index index = SeasonResolver.load(conn);
+            assertNull(index.seasonIdFor(LocalDate.of(2023, 12, 31)));
+            assertEquals(winter, index.seasonIdFor(LocalDate.of(2024, 1, 1)));
+            assertEquals(winter, index.seasonIdFor(LocalDate.of(2024, 6, 24)));
+            assertEquals(promo.getId(), index.seasonIdFor(LocalDate.of(2024, 6, 25)));
+            assertEquals(promo.getId(), index.seasonIdFor(LocalDate.of(2024, 6, 30)));
+            // الصيفي يبدأ بعد العروض فيأخذ أيامه المشتركة معها
+            assertEquals(summer, index.seasonIdFor(LocalDate.of(2024, 7, 1)));
+            assertEquals(summer, index.seasonIdFor(LocalDate.of(2024, 12, 31)));
+            assertNull(index.seasonIdFor(LocalDate.of(2025, 1, 1)));
+            // مقطع قبل المواسم، شتوي، عروض، صيفي، مقطع بعدها
+            assertEquals(5, index.getSegments().size());
+        }
+        assertEquals(promo.getId(), SeasonResolver.seasonIdFor(null, LocalDate.of(2024, 6, 28)));
+    }
+
+    @Test
+    @DisplayName("المستندات تُوسم عند الترحيل، وتعديل المواسم وحذفها يعيد وسم المدى المتأثر فقط")
+    void postingAndSeasonChangesKeepTagsCurrent() throws SQLException {
+        assertTrue(count("SELECT COUNT(*) FROM sales") > 0);
+        for (String[] table : new String[][] {{"sales", "sale_date"}, {"purchases", "purchase_date"}}) {
+            assertEquals(0, mistagged(table[0], table[1], "2024-06-20", "2024-06-30", winter), table[0]);
+            assertEquals(0, mistagged(table[0], table[1], "2024-07-01", "2024-07-09", summer), table[0]);
+        }
+
+        // موسم متداخل يأخذ أيامه من الشتوي فقط (الصيفي أحدث بداية منه)، وحذفه يعيدها إليه
+        Season promo = new Season(0, "عروض نهاية يونيو", LocalDate.of(2024, 6, 25), LocalDate.of(2024, 7, 3), Season.Status.ACTIVE);
+        seasonDataService.addSeason(promo);
+        assertTrue(count("SELECT COUNT(*) FROM sales WHERE season_id = ?", promo.getId()) > 0);
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-25", "2024-06-30", promo.getId()));
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-20", "2024-06-24", winter));
+        assertEquals(0, mistagged("sales", "sale_date", "2024-07-01", "2024-07-03", summer));
+
+        // تقليص الموسم يعيد الأيام الخارجة منه إلى الشتوي
+        promo.setEndDate(LocalDate.of(2024, 6, 27));
+        seasonDataService.updateSeason(promo);
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-28", "2024-06-30", winter));
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-25", "2024-06-27", promo.getId()));
+
+        seasonDataService.deleteSeason(promo.getId());
+        assertEquals(0, count("SELECT COUNT(*) FROM sales WHERE season_id = ?", promo.getId()));
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-20", "2024-06-30", winter));
+    }
+
+    @Test
+    @DisplayName("إعادة الوسم الجماعية تصلح السجل التاريخي ولا تكتب ما هو صحيح أصلاً")
+    void bulkRetagRestoresHistory() throws SQLException {
+        long tagged = count("SELECT COUNT(*) FROM sales WHERE season_id IS NOT NULL")
+            + count("SELECT COUNT(*) FROM purchases WHERE season_id IS NOT NULL");
+        try (Connection conn = dataManager.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("UPDATE sales SET season_id = NULL");
+            stmt.executeUpdate("UPDATE purchases SET season_id = NULL");
+        }
+
+        assertEquals(tagged, seasonDataService.retagDocuments());
+        assertEquals(0, mistagged("sales", "sale_date", "2024-06-20", "2024-06-30", winter));
+        assertEquals(0, mistagged("purchases", "purchase_date", "2024-07-01", "2024-07-09", summer));
+        assertEquals(0, seasonDataService.retagDocuments());
+    }
+}
@@ -0,0 +1,105 @@
+package accounting.util;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Synthetic Data Generator Workflow Test")
+public class SyntheticDataWorkflowTest {
+
+    private static final String JDBC_URL = "jdbc:sqlite:file::memory:?cache=shared";
+
+    @AfterEach
+    void tearDown() {
+        ImprovedDataManager.getInstance().shutdown();
+    }
+
+    private SyntheticDataGenerator.Config smallConfig(long seed) {
+        return new SyntheticDataGenerator.Config()
+            .seed(seed)
+            .startDate(LocalDate.now().minusDays(90))
+            .days(60)
+            .salesPerDay(6)
+            .crops(4)
+            .suppliers(5)
+            .customers(25);
+    }
+
+    private String ledgerFingerprint() throws SQLException {
+        try (Connection conn = ImprovedDataManager.getInstance().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT COUNT(*), ROUND(SUM(debit), 2), ROUND(SUM(credit), 2), ROUND(SUM(debit * account_id), 2) FROM general_ledger")) {
+            rs.next();
+            return rs.getLong(1) + "|" + rs.getDouble(2) + "|" + rs.getDouble(3) + "|" + rs.getDouble(4);
+        }
+    }
+
+    private long count(String sql) throws SQLException {
+        try (Connection conn = ImprovedDataManager.getInstance().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Test
+    @DisplayName("نفس البذرة تعطي نفس البيانات، والقيود متوازنة وكل أنواع المستندات موجودة")
+    void generatesDeterministicBalancedData() throws SQLException {
+        ImprovedDataManager.reinitializeForTest(JDBC_URL);
+        ImprovedDataManager.getInstance();
+        SyntheticDataGenerator.Result first = new SyntheticDataGenerator(smallConfig(7)).generate(null);
+        String firstLedger = ledgerFingerprint();
+
+        assertTrue(first.getSales() > 0);
+        assertTrue(first.getPurchases() > 0);
+        assertTrue(first.getPayments() > 0);
+        assertTrue(first.getExpenses() > 0);
+        assertEquals(60L * 4, first.getDailyPrices());
+        assertEquals(first.getLedgerLines(), count("SELECT COUNT(*) FROM general_ledger"));
+        assertEquals(first.getSales(), count("SELECT COUNT(*) FROM sales"));
+        assertTrue(count("SELECT COUNT(*) FROM seasons WHERE status = 'COMPLETED'") > 0, "المواسم المنتهية تُقفل بعد التوليد");
+
+        String[] sums = firstLedger.split("\\|");
+        assertEquals(Double.parseDouble(sums[1]), Double.parseDouble(sums[2]), 0.01, "مجموع المدين يساوي مجموع الدائن");
+
+        ImprovedDataManager.getInstance().shutdown();
+        ImprovedDataManager.reinitializeForTest(JDBC_URL);
+        ImprovedDataManager.getInstance();
+        SyntheticDataGenerator.Result second = new SyntheticDataGenerator(smallConfig(7)).generate(null);
+
+        assertEquals(first.getSales(), second.getSales());
+        assertEquals(first.getSaleReturns(), second.getSaleReturns());
+        assertEquals(first.getPurchases(), second.getPurchases());
+        assertEquals(first.getPayments(), second.getPayments());
+        assertEquals(firstLedger, ledgerFingerprint());
+    }
+
+    @Test
+    @DisplayName("فشل أي مستند داخل الدفعة يلغي كل مستندات الدفعة")
+    void batchTransactionRollsBackAsAUnit() throws SQLException {
+        ImprovedDataManager.reinitializeForTest(JDBC_URL);
+        ImprovedDataManager dataManager = ImprovedDataManager.getInstance();
+        long before = count("SELECT COUNT(*) FROM contacts");
+
+        assertThrows(SQLException.class, () -> dataManager.executeBatchTransaction(conn -> {
+            dataManager.executeTransaction(inner -> {
+                try (Statement stmt = inner.createStatement()) {
+                    stmt.executeUpdate("INSERT INTO contacts (name, is_customer) VALUES ('عميل مؤقت', 1)");
+                }
+                return null;
+            });
+            throw new SQLException("simulated failure");
+        }));
+
+        assertEquals(before, count("SELECT COUNT(*) FROM contacts"));
+    }
+}
@@ -0,0 +1,230 @@
+package accounting.util;
+
+import accounting.formatter.FormatUtils;
+import accounting.model.Contact;
+import accounting.model.Crop;
+import accounting.model.PurchaseRecord;
+import accounting.model.SaleRecord;
+import accounting.model.Warehouse;
+import accounting.service.ContactDataService;
+import accounting.service.CropDataService;
+import accounting.service.CropDataService.CropStatistics;
+import accounting.service.InventoryLotService;
+import accounting.service.InventoryLotService.Lot;
+import accounting.service.PurchaseDataService;
+import accounting.service.SaleDataService;
+import accounting.service.WarehouseService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Warehouse Workflow Test")
+public class WarehouseWorkflowTest {
+
+    private static final LocalDate DAY = LocalDate.of(2025, 6, 1);
+    private static final int MAIN = Warehouse.DEFAULT_ID;
+
+    private ImprovedDataManager dataManager;
+    private CropDataService cropDataService;
+    private PurchaseDataService purchaseDataService;
+    private SaleDataService saleDataService;
+    private InventoryLotService lotService;
+    private WarehouseService warehouseService;
+
+    private Crop crop;
+    private Contact supplier;
+    private Contact customer;
+    private int east;
+    private int invoices;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        ImprovedDataManager.reinitializeForTest("jdbc:sqlite:file:warehouses?mode=memory&cache=shared");
+        dataManager = ImprovedDataManager.getInstance();
+        cropDataService = new CropDataService();
+        ContactDataService contactDataService = new ContactDataService();
+        purchaseDataService = new PurchaseDataService();
+        saleDataService = new SaleDataService();
+        lotService = new InventoryLotService();
+        warehouseService = new WarehouseService();
+
+        crop = cropDataService.getCropById(cropDataService.addCrop(new Crop(0, "بصل", List.of("كيلو"), Map.of())));
+        supplier = contactDataService.addContact(new Contact(0, "مورد", "1", "", true, false)).orElseThrow();
+        customer = contactDataService.addContact(new Contact(0, "عميل", "2", "", false, true)).orElseThrow();
+        east = warehouseService.addWarehouse("مخزن الشرقية").getWarehouseId();
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataManager.shutdown();
+    }
+
+    private PurchaseRecord purchase(int warehouseId, double quantity, double unitCost, LocalDate expiry) throws SQLException {
+        PurchaseRecord purchase = new PurchaseRecord();
+        purchase.setCrop(crop);
+        purchase.setSupplier(supplier);
+        purchase.setPurchaseDate(DAY);
+        purchase.setQuantityKg(quantity);
+        purchase.setPricingUnit("كيلو");
+        purchase.setSpecificFactor(1.0);
+        purchase.setUnitPrice(unitCost);
+        purchase.setTotalCost(quantity * unitCost);
+        purchase.setInvoiceNumber("P-" + (++invoices));
+        purchase.setExpiryDate(expiry);
+        purchase.setWarehouseId(warehouseId);
+        purchaseDataService.addPurchase(purchase, null, 0);
+        return purchase;
+    }
+
+    private SaleRecord sale(int warehouseId, double quantity) throws SQLException {
+        SaleRecord sale = new SaleRecord();
+        sale.setCustomer(customer);
+        sale.setCrop(crop);
+        sale.setSaleDate(DAY);
+        sale.setQuantitySoldKg(quantity);
+        sale.setSellingPricingUnit("كيلو");
+        sale.setSpecificSellingFactor(1.0);
+        sale.setSellingUnitPrice(10.0);
+        sale.setTotalSaleAmount(quantity * 10.0);
+        sale.setSaleInvoiceNumber("S-" + (++invoices));
+        sale.setWarehouseId(warehouseId);
+        saleDataService.addSale(sale, null, 0);
+        return sale;
+    }
+
+    /** الدفعات المفتوحة في المخزن: الكمية@الصلاحية@التكلفة بترتيب الصرف */
+    private String lots(int warehouseId) throws SQLException {
+        StringBuilder text = new StringBuilder();
+        for (Lot lot : lotService.getOpenLots(warehouseId, crop.getCropId())) {
+            text.append(FormatUtils.formatNumber(lot.getRemainingKg())).append('@')
+                .append(lot.getExpiryDate() != null ? lot.getExpiryDate() : "-").append('@')
+                .append(FormatUtils.formatNumber(lot.getUnitCost())).append(' ');
+        }
+        return text.toString().trim();
+    }
+
+    private String scalar(String sql) throws SQLException {
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    private Map<Integer, Double> storedPositions() throws SQLException {
+        Map<Integer, Double> positions = new TreeMap<>();
+        try (Connection conn = dataManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT warehouse_id, quantity_kg FROM warehouse_stock WHERE crop_id = " + crop.getCropId())) {
+            while (rs.next()) {
+                positions.put(rs.getInt(1), rs.getDouble(2));
+            }
+        }
+        return positions;
+    }
+
+    private CropStatistics statistics(Integer warehouseId) throws SQLException {
+        return cropDataService.getAllCropStatistics(warehouseId).stream()
+            .filter(stats -> stats.getCropId() == crop.getCropId()).findFirst().orElseThrow();
+    }
+
+    @Test
+    @DisplayName("كل مستند يتحرك في مخزنه، والبيع من مخزن لا يحمل الكمية يُرفض كاملاً")
+    void documentsPostToTheirWarehouse() throws SQLException {
+        purchase(MAIN, 100, 2.0, null);
+        purchase(east, 50, 2.0, null);
+        assertEquals(Map.of(MAIN, 100.0, east, 50.0), warehouseService.getPositions(crop.getCropId()));
+        assertEquals(150.0, warehouseService.getConsolidatedStock(crop.getCropId()), 1e-9);
+        assertEquals("150.0", scalar("SELECT current_stock_kg FROM inventory WHERE crop_id = " + crop.getCropId()));
+
+        // الرصيد الموحد يكفي، لكن مخزن الشرقية لا يحمل 80
+        assertThrows(SQLException.class, () -> sale(east, 80));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM sales"));
+        assertEquals(50.0, warehouseService.getStock(east, crop.getCropId()), 1e-9);
+
+        SaleRecord fromEast = sale(east, 30);
+        assertEquals(east, saleDataService.getSaleById(fromEast.getSaleId()).getWarehouseId());
+        assertEquals(20.0, warehouseService.getStock(east, crop.getCropId()), 1e-9);
+        saleDataService.deleteSale(fromEast.getSaleId());
+        assertEquals(50.0, warehouseService.getStock(east, crop.getCropId()), 1e-9);
+        sale(east, 30);
+
+        CropStatistics eastStats = statistics(east);
+        assertEquals(20.0, eastStats.getCurrentStock(), 1e-9);
+        assertEquals(50.0, eastStats.getTotalPurchased(), 1e-9);
+        assertEquals(30.0, eastStats.getTotalSold(), 1e-9);
+        CropStatistics all = statistics(null);
+        assertEquals(120.0, all.getCurrentStock(), 1e-9);
+        assertEquals(150.0, all.getTotalPurchased(), 1e-9);
+        assertEquals(all.getAverageCost(), eastStats.getAverageCost(), 1e-9);
+    }
+
+    @Test
+    @DisplayName("التحويل ينقل الدفعات بصلاحيتها وتكلفتها ولا يغير الرصيد الموحد، وإعادة البناء تطابقه")
+    void transferMovesLots() throws SQLException {
+        purchase(MAIN, 100, 2.0, null);
+        purchase(MAIN, 100, 3.0, DAY.plusDays(10));
+
+        int transferId = warehouseService.transfer(crop.getCropId(), MAIN, east, 150, DAY, "تغذية فرع الشرقية");
+        assertEquals("50.00@-@2.00", lots(MAIN));
+        assertEquals("100.00@" + DAY.plusDays(10) + "@3.00 50.00@-@2.00", lots(east));
+        assertEquals(Map.of(MAIN, 50.0, east, 150.0), warehouseService.getPositions(crop.getCropId()));
+        assertEquals("200.0", scalar("SELECT current_stock_kg FROM inventory WHERE crop_id = " + crop.getCropId()));
+        assertEquals("0.0", scalar("SELECT SUM(quantity_kg) FROM inventory_movements WHERE reference_type = 'TRANSFER' "
+            + "AND reference_id = " + transferId));
+
+        // الصرف في الوجهة يبدأ بالأقرب انتهاءً
+        sale(east, 120);
+        assertEquals("30.00@-@2.00", lots(east));
+
+        String main = lots(MAIN);
+        String eastLots = lots(east);
+        lotService.rebuildAll();
+        assertEquals(main, lots(MAIN));
+        assertEquals(eastLots, lots(east));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM inventory_movements WHERE quantity_kg > 0 AND lot_id IS NULL "
+            + "AND reference_type <> 'SALE_DELETE'"));
+    }
+
+    @Test
+    @DisplayName("الأرصدة في الذاكرة تطابق الجدول، والتحويل الملغى أو الزائد عن الرصيد لا يترك أثراً")
+    void positionsFollowCommittedState() throws SQLException {
+        purchase(MAIN, 80, 2.0, null);
+        assertThrows(SQLException.class, () -> warehouseService.transfer(crop.getCropId(), MAIN, east, 81, DAY, null));
+        assertThrows(IllegalArgumentException.class, () -> warehouseService.transfer(crop.getCropId(), east, east, 1, DAY, null));
+
+        assertThrows(SQLException.class, () -> dataManager.executeBatchTransaction(conn -> {
+            warehouseService.transfer(crop.getCropId(), MAIN, east, 30, DAY, null);
+            purchase(east, 10, 2.0, null);
+            throw new IllegalStateException("إلغاء");
+        }));
+        assertEquals(Map.of(MAIN, 80.0), warehouseService.getPositions(crop.getCropId()));
+        assertEquals("0", scalar("SELECT COUNT(*) FROM inventory_transfers"));
+        assertEquals("80.00@-@2.00", lots(MAIN));
+        assertEquals("", lots(east));
+
+        dataManager.executeBatchTransaction(conn -> {
+            warehouseService.transfer(crop.getCropId(), MAIN, east, 30, DAY, null);
+            sale(east, 5);
+            return null;
+        });
+        assertEquals(storedPositions(), warehouseService.getPositions(crop.getCropId()));
+        assertEquals(Map.of(MAIN, 50.0, east, 25.0), warehouseService.getPositions(crop.getCropId()));
+        assertEquals(75.0, warehouseService.getConsolidatedStock().get(crop.getCropId()), 1e-9);
+
+        WarehouseService.invalidate();
+        assertEquals(storedPositions(), warehouseService.getPositions(crop.getCropId()));
+    }
+}